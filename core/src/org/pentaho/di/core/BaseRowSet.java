@@ -50,6 +50,8 @@ abstract class BaseRowSet implements Comparable<RowSet>, RowSet {
   protected volatile String remoteSlaveServerName;
   private ReadWriteLock lock;
 
+  private volatile RowSetListener rowSetListener;
+
   public BaseRowSet() {
     // not done putting data into this RowSet
     done = new AtomicBoolean( false );
@@ -136,6 +138,37 @@ abstract class BaseRowSet implements Comparable<RowSet>, RowSet {
   @Override
   public void setDone() {
     done.set( true );
+    fireDone();
+  }
+
+  @Override
+  public void setRowSetListener( RowSetListener rowSetListener ) {
+    this.rowSetListener = rowSetListener;
+  }
+
+  @Override
+  public RowSetListener getRowSetListener() {
+    return rowSetListener;
+  }
+
+  /**
+   * Implementations call this after a row was made available to the reading side.
+   */
+  protected void fireRowAdded() {
+    RowSetListener listener = rowSetListener;
+    if ( listener != null ) {
+      listener.rowAdded( this );
+    }
+  }
+
+  /**
+   * Notify the listener that no more rows will be added.
+   */
+  protected void fireDone() {
+    RowSetListener listener = rowSetListener;
+    if ( listener != null ) {
+      listener.done( this );
+    }
   }
 
   /*
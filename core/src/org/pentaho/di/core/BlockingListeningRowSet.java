@@ -80,6 +80,9 @@ public class BlockingListeningRowSet extends BaseRowSet implements Comparable<Ro
       blocking.set( true );
       boolean b = queArray.offer( rowData, time, tu );
       blocking.set( false );
+      if ( b ) {
+        fireRowAdded();
+      }
       return b;
     } catch ( InterruptedException e ) {
       blocking.set( false );
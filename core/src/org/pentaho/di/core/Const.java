@@ -136,6 +136,11 @@ public class Const {
    */
   public static final int ROWS_IN_ROWSET = 10000;
 
+  /**
+   * The maximum number of rows a step converts at once when it needs the values of lazily converted fields
+   */
+  public static final int LAZY_CONVERSION_BLOCK_SIZE = 500;
+
   /**
    * Fetch size in rows when querying a database
    */
@@ -839,6 +844,23 @@ public class Const {
    */
   public static final String KETTLE_PLUGIN_PACKAGES = "KETTLE_PLUGIN_PACKAGES";
 
+  /**
+   * Set this variable to Y to disable the persistent index of the plugin folders. The jar files in the plugin folders
+   * are then scanned for plugin annotations at every startup.
+   */
+  public static final String KETTLE_DISABLE_PLUGIN_INDEX = "KETTLE_DISABLE_PLUGIN_INDEX";
+
+  /**
+   * Set this variable to Y to read transformation and job files with the streaming (StAX) XML loader.
+   */
+  public static final String KETTLE_XML_STREAMING_LOADER = "KETTLE_XML_STREAMING_LOADER";
+
+  /**
+   * The maximum number of parsed transformation and job files to keep in memory, 0 (the default) disables the cache.
+   * Cached files are only parsed again when they are modified.
+   */
+  public static final String KETTLE_XML_METADATA_CACHE_SIZE = "KETTLE_XML_METADATA_CACHE_SIZE";
+
   /**
    * Name of the environment variable that contains the size of the transformation rowset size. This overwrites values
    * that you set transformation settings.
@@ -940,6 +962,78 @@ public class Const {
    */
   public static final String KETTLE_BATCHING_ROWSET = "KETTLE_BATCHING_ROWSET";
 
+  /**
+   * Set this variable to BLOCKING to force the use of the classic blocking row set on all hops of a transformation.
+   * The default (RING_BUFFER) uses a lock-free ring buffer on hops that connect one step copy to one other step copy.
+   */
+  public static final String KETTLE_ROWSET_IMPL = "KETTLE_ROWSET_IMPL";
+
+  /**
+   * Value of the KETTLE_ROWSET_IMPL variable that forces the use of blocking row sets.
+   */
+  public static final String ROWSET_IMPL_BLOCKING = "BLOCKING";
+
+  /**
+   * Value of the KETTLE_ROWSET_IMPL variable that allows the use of ring buffer row sets on copy to copy hops.
+   */
+  public static final String ROWSET_IMPL_RING_BUFFER = "RING_BUFFER";
+
+  /**
+   * Set this variable to select the way the steps of Normal transformations are run, overriding the default of
+   * transformations that don't specify a step scheduler themselves: THREADS (one thread per step copy, the default),
+   * POOL (all step copies share a bounded pool of worker threads) or VIRTUAL (one virtual thread per step copy, Java 21
+   * or later).
+   */
+  public static final String KETTLE_STEP_SCHEDULER = "KETTLE_STEP_SCHEDULER";
+
+  /**
+   * The number of worker threads of the shared pool used by the POOL step scheduler. (default = the number of
+   * available processors)
+   */
+  public static final String KETTLE_STEP_SCHEDULER_POOL_SIZE = "KETTLE_STEP_SCHEDULER_POOL_SIZE";
+
+  /**
+   * Set this variable to Y to hand the next steps a frozen copy of the row metadata that can be read without locking
+   * instead of a modifiable one. Only for transformations where no step changes the layout of its input row metadata.
+   * (default = N)
+   */
+  public static final String KETTLE_FROZEN_ROW_META = "KETTLE_FROZEN_ROW_META";
+
+  /**
+   * Set this variable to N to send the rows of clustered remote steps one by one instead of in column-wise encoded,
+   * Snappy compressed blocks. Both ends agree on the protocol when they connect. (default = Y)
+   */
+  public static final String KETTLE_REMOTE_STEP_BLOCK_TRANSFER = "KETTLE_REMOTE_STEP_BLOCK_TRANSFER";
+
+  /**
+   * The maximum number of rows in a block sent to a clustered remote step. (default = 1000)
+   */
+  public static final String KETTLE_REMOTE_STEP_BLOCK_SIZE = "KETTLE_REMOTE_STEP_BLOCK_SIZE";
+
+  /**
+   * The number of blocks a clustered remote step accepts before it has passed on the rows of earlier ones.
+   * (default = 4)
+   */
+  public static final String KETTLE_REMOTE_STEP_BLOCK_CREDITS = "KETTLE_REMOTE_STEP_BLOCK_CREDITS";
+
+  /**
+   * A step copy that partitions its output is reported as skewed when its largest partition received this many times
+   * the average number of rows per partition. Set it to 0 to disable the check. (default = 2.0)
+   */
+  public static final String KETTLE_PARTITION_SKEW_THRESHOLD = "KETTLE_PARTITION_SKEW_THRESHOLD";
+
+  /**
+   * The number of main stream rows the Join Rows step joins at once with the other streams when it uses the block
+   * nested loop or hash join strategy. (default = 10000)
+   */
+  public static final String KETTLE_JOIN_ROWS_BLOCK_SIZE = "KETTLE_JOIN_ROWS_BLOCK_SIZE";
+
+  /**
+   * Set this variable to N to interpret all the calculations of the Calculator step instead of compiling the arithmetic
+   * calculations on Integer and Number fields into a class for the row layout. (default = Y)
+   */
+  public static final String KETTLE_COMPILE_CALCULATIONS = "KETTLE_COMPILE_CALCULATIONS";
+
   /**
    * Set this variable to Y to disable standard Kettle logging to the console. (stdout)
    */
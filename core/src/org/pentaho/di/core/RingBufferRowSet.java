@@ -0,0 +1,289 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A lock-free row buffer for hops that connect exactly one step copy to one other step copy. There is only ever one
+ * thread putting rows into this row set and one thread reading them, so instead of a lock and conditions we use a ring
+ * buffer with a padded read and write sequence.<br>
+ * <br>
+ * A thread that can't proceed (buffer full or empty) first spins, then yields and finally parks until the other side
+ * signals progress or the timeout expires.<br>
+ * <br>
+ * <b>NOTE:</b> Never use this row set when more than one thread can write to or read from it.
+ */
+public class RingBufferRowSet extends BaseRowSet implements Comparable<RowSet>, RowSet {
+
+  private static final int SPIN_TRIES = 100;
+  private static final int YIELD_TRIES = 100;
+
+  /** Upper limit for a single park so that a lost signal can never stall a thread for long */
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+  private final Object[][] buffer;
+  private final int mask;
+  private final int capacity;
+
+  /** The sequence of the next row to read, only written by the consumer */
+  private final Sequence head;
+
+  /** The sequence of the next row to write, only written by the producer */
+  private final Sequence tail;
+
+  /** Producer-local copy of the head to avoid reading the volatile on every put */
+  private long cachedHead;
+
+  /** Consumer-local copy of the tail to avoid reading the volatile on every get */
+  private long cachedTail;
+
+  private volatile Thread waitingProducer;
+  private volatile Thread waitingConsumer;
+
+  private int timeoutPut;
+  private int timeoutGet;
+
+  /**
+   * Create a new ring buffer row set with maxSize capacity.
+   *
+   * @param maxSize
+   */
+  public RingBufferRowSet( int maxSize ) {
+    super();
+
+    capacity = Math.max( 1, maxSize );
+
+    // The ring itself is sized to a power of 2 so that we can mask instead of calculating a modulo
+    //
+    int ringSize = 1;
+    while ( ringSize < capacity ) {
+      ringSize <<= 1;
+    }
+    buffer = new Object[ringSize][];
+    mask = ringSize - 1;
+
+    head = new Sequence();
+    tail = new Sequence();
+
+    timeoutGet = Const.toInt( System.getProperty( Const.KETTLE_ROWSET_GET_TIMEOUT ), Const.TIMEOUT_GET_MILLIS );
+    timeoutPut = Const.toInt( System.getProperty( Const.KETTLE_ROWSET_PUT_TIMEOUT ), Const.TIMEOUT_PUT_MILLIS );
+  }
+
+  @Override
+  public boolean putRow( RowMetaInterface rowMeta, Object[] rowData ) {
+    return putRowWait( rowMeta, rowData, timeoutPut, TimeUnit.MILLISECONDS );
+  }
+
+  @Override
+  public boolean putRowWait( RowMetaInterface rowMeta, Object[] rowData, long time, TimeUnit tu ) {
+    this.rowMeta = rowMeta;
+    if ( rowData == null ) {
+      return false;
+    }
+
+    long t = tail.get();
+    if ( t - cachedHead >= capacity ) {
+      cachedHead = head.get();
+      if ( t - cachedHead >= capacity && !waitForSpace( t, tu.toNanos( time ) ) ) {
+        return false;
+      }
+    }
+
+    buffer[(int) t & mask] = rowData;
+    tail.set( t + 1 );
+    fireRowAdded();
+
+    Thread consumer = waitingConsumer;
+    if ( consumer != null ) {
+      LockSupport.unpark( consumer );
+    }
+    return true;
+  }
+
+  @Override
+  public Object[] getRow() {
+    return getRowWait( timeoutGet, TimeUnit.MILLISECONDS );
+  }
+
+  @Override
+  public Object[] getRowImmediate() {
+    long h = head.get();
+    if ( h >= cachedTail ) {
+      cachedTail = tail.get();
+      if ( h >= cachedTail ) {
+        return null;
+      }
+    }
+    return take( h );
+  }
+
+  @Override
+  public Object[] getRowWait( long timeout, TimeUnit tu ) {
+    long h = head.get();
+    if ( h >= cachedTail ) {
+      cachedTail = tail.get();
+      if ( h >= cachedTail && !waitForRow( h, tu.toNanos( timeout ) ) ) {
+        return null;
+      }
+    }
+    return take( h );
+  }
+
+  private Object[] take( long h ) {
+    int index = (int) h & mask;
+    Object[] row = buffer[index];
+    buffer[index] = null;
+    head.set( h + 1 );
+
+    Thread producer = waitingProducer;
+    if ( producer != null ) {
+      LockSupport.unpark( producer );
+    }
+    return row;
+  }
+
+  /**
+   * Wait until the consumer has freed up a slot in the ring.
+   *
+   * @return true if there is room for a new row, false if we timed out or were interrupted.
+   */
+  private boolean waitForSpace( long t, long timeoutNanos ) {
+    long deadline = System.nanoTime() + timeoutNanos;
+    int tries = 0;
+    while ( true ) {
+      cachedHead = head.get();
+      if ( t - cachedHead < capacity ) {
+        return true;
+      }
+      if ( timeoutNanos <= 0 ) {
+        return false;
+      }
+      if ( tries < SPIN_TRIES ) {
+        tries++;
+      } else if ( tries < SPIN_TRIES + YIELD_TRIES ) {
+        tries++;
+        Thread.yield();
+      } else {
+        long remaining = deadline - System.nanoTime();
+        if ( remaining <= 0 || Thread.currentThread().isInterrupted() ) {
+          return false;
+        }
+        waitingProducer = Thread.currentThread();
+        cachedHead = head.get();
+        if ( t - cachedHead >= capacity ) {
+          LockSupport.parkNanos( this, Math.min( remaining, MAX_PARK_NANOS ) );
+        }
+        waitingProducer = null;
+      }
+    }
+  }
+
+  /**
+   * Wait until the producer has published a new row or signaled that it's done.
+   *
+   * @return true if a row is available, false if we timed out, were interrupted or no more rows will arrive.
+   */
+  private boolean waitForRow( long h, long timeoutNanos ) {
+    long deadline = System.nanoTime() + timeoutNanos;
+    int tries = 0;
+    while ( true ) {
+      // Check done before the tail so that a row published right before setDone() is never missed.
+      //
+      boolean finished = done.get();
+      cachedTail = tail.get();
+      if ( h < cachedTail ) {
+        return true;
+      }
+      if ( finished || timeoutNanos <= 0 ) {
+        return false;
+      }
+      if ( tries < SPIN_TRIES ) {
+        tries++;
+      } else if ( tries < SPIN_TRIES + YIELD_TRIES ) {
+        tries++;
+        Thread.yield();
+      } else {
+        long remaining = deadline - System.nanoTime();
+        if ( remaining <= 0 || Thread.currentThread().isInterrupted() ) {
+          return false;
+        }
+        waitingConsumer = Thread.currentThread();
+        cachedTail = tail.get();
+        if ( h >= cachedTail && !done.get() ) {
+          LockSupport.parkNanos( this, Math.min( remaining, MAX_PARK_NANOS ) );
+        }
+        waitingConsumer = null;
+      }
+    }
+  }
+
+  @Override
+  public void setDone() {
+    super.setDone();
+
+    Thread consumer = waitingConsumer;
+    if ( consumer != null ) {
+      LockSupport.unpark( consumer );
+    }
+  }
+
+  @Override
+  public int size() {
+    // Read the head first: it can only move towards the tail so the result is never negative.
+    //
+    long h = head.get();
+    long t = tail.get();
+    return (int) Math.min( Math.max( t - h, 0L ), capacity );
+  }
+
+  /**
+   * Only call this method when neither the producing nor the consuming step is running.
+   */
+  @Override
+  public void clear() {
+    for ( int i = 0; i < buffer.length; i++ ) {
+      buffer[i] = null;
+    }
+    head.set( 0L );
+    tail.set( 0L );
+    cachedHead = 0L;
+    cachedTail = 0L;
+    done.set( false );
+  }
+
+  /**
+   * A sequence that is padded so that the head and tail of the ring don't end up on the same cache line. Otherwise the
+   * producer and consumer would keep invalidating each other's cache line (false sharing).
+   */
+  @SuppressWarnings( "unused" )
+  private static final class Sequence extends AtomicLong {
+    private static final long serialVersionUID = -2563124830384652442L;
+
+    private long p1, p2, p3, p4, p5, p6, p7;
+  }
+}
@@ -154,4 +154,22 @@ public interface RowSet {
    * Clear this rowset: remove all rows and remove the "done" flag.
    */
   public abstract void clear();
+
+  /**
+   * Sets the listener that gets notified when rows become available in this row set or when it is done. This is
+   * typically the step that reads from the row set, so there is only one. Row sets that don't support listeners
+   * ignore it, their readers fall back to waiting with a time-out.
+   *
+   * @param rowSetListener
+   *          the listener or null to stop notifications
+   */
+  default void setRowSetListener( RowSetListener rowSetListener ) {
+  }
+
+  /**
+   * @return the listener that gets notified about new rows, or null if there is none
+   */
+  default RowSetListener getRowSetListener() {
+    return null;
+  }
 }
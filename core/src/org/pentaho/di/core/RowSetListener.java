@@ -22,6 +22,28 @@
 
 package org.pentaho.di.core;
 
+/**
+ * Gets notified about state changes of a row set. Listeners are called on the thread that changes the row set so
+ * implementations should return as quickly as possible.
+ */
 public interface RowSetListener {
   public void isEmpty( RowSet rowSet );
+
+  /**
+   * Called after a row (or a batch of rows) became available to the consumer of the row set.
+   *
+   * @param rowSet
+   *          the row set that received data
+   */
+  default void rowAdded( RowSet rowSet ) {
+  }
+
+  /**
+   * Called after the row set was flagged as done: no more rows will be added to it.
+   *
+   * @param rowSet
+   *          the row set that is done
+   */
+  default void done( RowSet rowSet ) {
+  }
 }
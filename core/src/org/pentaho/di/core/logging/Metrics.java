@@ -114,6 +114,19 @@ public class Metrics implements MetricsInterface {
   public static Metrics METRIC_PLUGIN_REGISTRY_PLUGIN_TYPE_REGISTRATION_STOP = new Metrics(
     MetricsSnapshotType.STOP, "METRIC_PLUGIN_REGISTRY_PLUGIN_TYPE_REGISTRATION",
     "Register plugins of a certain type" );
+  public static Metrics METRIC_PLUGIN_REGISTRY_SAVE_PLUGIN_INDEX_START = new Metrics(
+    MetricsSnapshotType.START, "METRIC_PLUGIN_REGISTRY_SAVE_PLUGIN_INDEX", "Save the plugin index" );
+  public static Metrics METRIC_PLUGIN_REGISTRY_SAVE_PLUGIN_INDEX_STOP = new Metrics(
+    MetricsSnapshotType.STOP, "METRIC_PLUGIN_REGISTRY_SAVE_PLUGIN_INDEX", "Save the plugin index" );
+
+  // Kettle environment...
+  //
+  public static Metrics METRIC_KETTLE_ENVIRONMENT_INIT_PHASE_START = new Metrics(
+    MetricsSnapshotType.START, "METRIC_KETTLE_ENVIRONMENT_INIT_PHASE",
+    "Initialize a part of the Kettle environment" );
+  public static Metrics METRIC_KETTLE_ENVIRONMENT_INIT_PHASE_STOP = new Metrics(
+    MetricsSnapshotType.STOP, "METRIC_KETTLE_ENVIRONMENT_INIT_PHASE",
+    "Initialize a part of the Kettle environment" );
 
   // Transformation
   //
@@ -134,6 +147,84 @@ public class Metrics implements MetricsInterface {
   public static Metrics METRIC_STEP_INIT_STOP = new Metrics(
     MetricsSnapshotType.STOP, "METRIC_STEP_INIT", "Initialize a step" );
 
+  // Sort rows
+  //
+  public static Metrics METRIC_STEP_SORT_RUNS = new Metrics(
+    MetricsSnapshotType.COUNT, "METRIC_STEP_SORT_RUNS", "Number of sorted runs written to disk" );
+  public static Metrics METRIC_STEP_SORT_MERGE_PASSES = new Metrics(
+    MetricsSnapshotType.COUNT, "METRIC_STEP_SORT_MERGE_PASSES", "Number of merge passes over the sorted runs" );
+  public static Metrics METRIC_STEP_SORT_SPILLED_BYTES = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_STEP_SORT_SPILLED_BYTES", "Bytes spilled to disk per merge pass" );
+
+  // Stream lookup
+  //
+  public static Metrics METRIC_STEP_STREAM_LOOKUP_MEMORY_USED = new Metrics(
+    MetricsSnapshotType.MAX, "METRIC_STEP_STREAM_LOOKUP_MEMORY_USED",
+    "Estimated memory used by the stream lookup table (bytes)" );
+  public static Metrics METRIC_STEP_STREAM_LOOKUP_LOAD_FACTOR = new Metrics(
+    MetricsSnapshotType.MAX, "METRIC_STEP_STREAM_LOOKUP_LOAD_FACTOR", "Load factor of the stream lookup table (%)" );
+  public static Metrics METRIC_STEP_STREAM_LOOKUP_PROBE_LENGTH = new Metrics(
+    MetricsSnapshotType.MAX, "METRIC_STEP_STREAM_LOOKUP_PROBE_LENGTH",
+    "Longest probe sequence in the stream lookup table (slots)" );
+  public static Metrics METRIC_STEP_STREAM_LOOKUP_SPILLED_PARTITIONS = new Metrics(
+    MetricsSnapshotType.COUNT, "METRIC_STEP_STREAM_LOOKUP_SPILLED_PARTITIONS",
+    "Number of lookup partitions processed from disk" );
+
+  // Memory group by
+  //
+  public static Metrics METRIC_STEP_MEMORY_GROUP_BY_SPILLS = new Metrics(
+    MetricsSnapshotType.COUNT, "METRIC_STEP_MEMORY_GROUP_BY_SPILLS",
+    "Number of times the memory group by started to spill rows to disk" );
+  public static Metrics METRIC_STEP_MEMORY_GROUP_BY_SPILLED_ROWS = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_STEP_MEMORY_GROUP_BY_SPILLED_ROWS", "Rows spilled to disk per aggregation pass" );
+  public static Metrics METRIC_STEP_MEMORY_GROUP_BY_PEAK_MEMORY = new Metrics(
+    MetricsSnapshotType.MAX, "METRIC_STEP_MEMORY_GROUP_BY_PEAK_MEMORY",
+    "Peak memory used by the memory group by aggregation (bytes)" );
+
+  // Database lookup
+  //
+  public static Metrics METRIC_STEP_DATABASE_LOOKUP_CACHE_HITS = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_STEP_DATABASE_LOOKUP_CACHE_HITS", "Number of lookups answered from the cache" );
+  public static Metrics METRIC_STEP_DATABASE_LOOKUP_CACHE_MISSES = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_STEP_DATABASE_LOOKUP_CACHE_MISSES",
+    "Number of lookups that were not found in the cache" );
+  public static Metrics METRIC_STEP_DATABASE_LOOKUP_CACHE_EVICTIONS = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_STEP_DATABASE_LOOKUP_CACHE_EVICTIONS",
+    "Number of entries removed from the cache to respect its limits" );
+  public static Metrics METRIC_STEP_DATABASE_LOOKUP_CACHE_MEMORY_USED = new Metrics(
+    MetricsSnapshotType.MAX, "METRIC_STEP_DATABASE_LOOKUP_CACHE_MEMORY_USED",
+    "Estimated memory used by the lookup cache (bytes)" );
+  public static Metrics METRIC_STEP_DATABASE_LOOKUP_BATCHES = new Metrics(
+    MetricsSnapshotType.COUNT, "METRIC_STEP_DATABASE_LOOKUP_BATCHES", "Number of batch lookup queries" );
+  public static Metrics METRIC_STEP_DATABASE_LOOKUP_BATCH_TIME = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_STEP_DATABASE_LOOKUP_BATCH_TIME", "Time spent in batch lookup queries (ms)" );
+  public static Metrics METRIC_STEP_DATABASE_LOOKUP_BATCH_MAX_TIME = new Metrics(
+    MetricsSnapshotType.MAX, "METRIC_STEP_DATABASE_LOOKUP_BATCH_MAX_TIME", "Slowest batch lookup query (ms)" );
+
+  // Modified Java Script Value
+  //
+  public static Metrics METRIC_STEP_SCRIPT_ROW_COUNT = new Metrics(
+    MetricsSnapshotType.COUNT, "METRIC_STEP_SCRIPT_ROW_COUNT", "Number of rows processed by the script" );
+  public static Metrics METRIC_STEP_SCRIPT_ROW_SUM_TIME = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_STEP_SCRIPT_ROW_SUM_TIME", "Time spent executing the script (total, us)" );
+  public static Metrics METRIC_STEP_SCRIPT_ROW_MAX_TIME = new Metrics(
+    MetricsSnapshotType.MAX, "METRIC_STEP_SCRIPT_ROW_MAX_TIME", "Time spent executing the script (max per row, us)" );
+
+  // Transformation executor
+  //
+  public static Metrics METRIC_STEP_TRANS_EXECUTOR_GROUP_COUNT = new Metrics(
+    MetricsSnapshotType.COUNT, "METRIC_STEP_TRANS_EXECUTOR_GROUP_COUNT",
+    "Number of groups of rows executed by the transformation executor" );
+  public static Metrics METRIC_STEP_TRANS_EXECUTOR_GROUP_SUM_TIME = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_STEP_TRANS_EXECUTOR_GROUP_SUM_TIME",
+    "Time spent executing groups of rows (total, us)" );
+  public static Metrics METRIC_STEP_TRANS_EXECUTOR_OVERHEAD_SUM_TIME = new Metrics(
+    MetricsSnapshotType.SUM, "METRIC_STEP_TRANS_EXECUTOR_OVERHEAD_SUM_TIME",
+    "Time spent preparing the transformation for the groups of rows (total, us)" );
+  public static Metrics METRIC_STEP_TRANS_EXECUTOR_OVERHEAD_MAX_TIME = new Metrics(
+    MetricsSnapshotType.MAX, "METRIC_STEP_TRANS_EXECUTOR_OVERHEAD_MAX_TIME",
+    "Time spent preparing the transformation for a group of rows (max per group, us)" );
+
   // Logging back-end
   //
   public static Metrics METRIC_CENTRAL_LOG_STORE_TIMEOUT_CLEAN_TIME = new Metrics(
@@ -47,7 +47,6 @@ import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.i18n.LanguageChoice;
-import org.scannotation.AnnotationDB;
 import org.w3c.dom.Node;
 
 public abstract class BasePluginType implements PluginTypeInterface {
@@ -252,20 +251,21 @@ public abstract class BasePluginType implements PluginTypeInterface {
           //
           FileObject[] fileObjects = jarFileCache.getFileObjects( pluginFolder );
           if ( fileObjects != null ) {
+            PluginIndex pluginIndex = jarFileCache.getPluginIndex( pluginFolder );
             for ( FileObject fileObject : fileObjects ) {
 
-              // These are the jar files : find annotations in it...
+              // These are the jar files : find annotations in it, or look them up in the plugin index...
               //
-              AnnotationDB annotationDB = jarFileCache.getAnnotationDB( fileObject );
+              Map<String, Set<String>> annotationIndex = jarFileCache.getAnnotationIndex( pluginFolder, fileObject );
 
               // These are the jar files : find annotations in it...
               //
-              Set<String> impls = annotationDB.getAnnotationIndex().get( annotationClassName );
+              Set<String> impls = annotationIndex.get( annotationClassName );
               if ( impls != null ) {
 
                 for ( String fil : impls ) {
                   classFiles.add( new JarFileAnnotationPlugin( fil, fileObject.getURL(), fileObject
-                    .getParent().getURL() ) );
+                    .getParent().getURL(), pluginIndex ) );
                 }
               }
             }
@@ -556,6 +556,12 @@ public abstract class BasePluginType implements PluginTypeInterface {
     List<JarFileAnnotationPlugin> jarFilePlugins = findAnnotatedClassFiles( pluginType.getName() );
     for ( JarFileAnnotationPlugin jarFilePlugin : jarFilePlugins ) {
 
+      // See if we can register the plugin from the plugin index without loading its class
+      //
+      if ( registerIndexedPlugin( jarFilePlugin ) ) {
+        continue;
+      }
+
       URLClassLoader urlClassLoader =
         createUrlClassLoader( jarFilePlugin.getJarFile(), getClass().getClassLoader() );
 
@@ -564,44 +570,18 @@ public abstract class BasePluginType implements PluginTypeInterface {
         if ( clazz == null ) {
           throw new KettlePluginException( "Unable to load class: " + jarFilePlugin.getClassName() );
         }
-        List<String> libraries = new ArrayList<String>();
+        List<String> libraries;
         java.lang.annotation.Annotation annotation = null;
         try {
           annotation = clazz.getAnnotation( pluginType );
-
-          String jarFilename = URLDecoder.decode( jarFilePlugin.getJarFile().getFile(), "UTF-8" );
-          libraries.add( jarFilename );
-          FileObject fileObject = KettleVFS.getFileObject( jarFilename );
-          FileObject parentFolder = fileObject.getParent();
-          String parentFolderName = KettleVFS.getFilename( parentFolder );
-          String libFolderName = null;
-          if ( parentFolderName.endsWith( Const.FILE_SEPARATOR + "lib" ) ) {
-            libFolderName = parentFolderName;
-          } else {
-            libFolderName = parentFolderName + Const.FILE_SEPARATOR + "lib";
-          }
-
-          PluginFolder folder = new PluginFolder( libFolderName, false, false, searchLibDir );
-          FileObject[] jarFiles = folder.findJarFiles( true );
-
-          if ( jarFiles != null ) {
-            for ( FileObject jarFile : jarFiles ) {
-
-              String fileName = KettleVFS.getFilename( jarFile );
-
-              // If the plugin is in the lib folder itself, we'll ignore it here
-              if ( fileObject.equals( jarFile ) ) {
-                continue;
-              }
-              libraries.add( fileName );
-            }
-          }
+          libraries = findPluginLibraries( jarFilePlugin.getJarFile() );
         } catch ( Exception e ) {
           throw new KettlePluginException( "Unexpected error loading class "
             + clazz.getName() + " of plugin type: " + pluginType, e );
         }
 
         handlePluginAnnotation( clazz, annotation, libraries, false, jarFilePlugin.getPluginFolder() );
+        indexPlugin( jarFilePlugin, clazz, annotation );
       } catch ( Exception e ) {
         // Ignore for now, don't know if it's even possible.
         LogChannel.GENERAL.logError(
@@ -614,6 +594,114 @@ public abstract class BasePluginType implements PluginTypeInterface {
     }
   }
 
+  /**
+   * Find the jar file of a plugin and the jar files in the lib folder next to it.
+   *
+   * @param jarFile
+   *          the jar file of the plugin
+   * @return the file names of the libraries of the plugin
+   */
+  private List<String> findPluginLibraries( URL jarFile ) throws Exception {
+    List<String> libraries = new ArrayList<String>();
+    String jarFilename = URLDecoder.decode( jarFile.getFile(), "UTF-8" );
+    libraries.add( jarFilename );
+    FileObject fileObject = KettleVFS.getFileObject( jarFilename );
+    FileObject parentFolder = fileObject.getParent();
+    String parentFolderName = KettleVFS.getFilename( parentFolder );
+    String libFolderName = null;
+    if ( parentFolderName.endsWith( Const.FILE_SEPARATOR + "lib" ) ) {
+      libFolderName = parentFolderName;
+    } else {
+      libFolderName = parentFolderName + Const.FILE_SEPARATOR + "lib";
+    }
+
+    PluginFolder folder = new PluginFolder( libFolderName, false, false, searchLibDir );
+    FileObject[] jarFiles = folder.findJarFiles( true );
+
+    if ( jarFiles != null ) {
+      for ( FileObject libJarFile : jarFiles ) {
+
+        String fileName = KettleVFS.getFilename( libJarFile );
+
+        // If the plugin is in the lib folder itself, we'll ignore it here
+        if ( fileObject.equals( libJarFile ) ) {
+          continue;
+        }
+        libraries.add( fileName );
+      }
+    }
+    return libraries;
+  }
+
+  /**
+   * Register a plugin as it was described in the plugin index of its folder. The plugin class isn't loaded: that only
+   * happens when the plugin is used.
+   *
+   * @return true if the plugin was registered, false if it has to be registered from its annotation
+   */
+  private boolean registerIndexedPlugin( JarFileAnnotationPlugin jarFilePlugin ) {
+    PluginIndex pluginIndex = jarFilePlugin.getPluginIndex();
+    if ( pluginIndex == null || !isIndexable() ) {
+      return false;
+    }
+    PluginIndex.PluginDescriptor descriptor =
+      pluginIndex.getPlugin( jarFilePlugin.getJarFile(), getClass(), jarFilePlugin.getClassName() );
+    if ( descriptor == null ) {
+      return false;
+    }
+
+    try {
+      PluginMainClassType mainType = getClass().getAnnotation( PluginMainClassType.class );
+      PluginInterface plugin =
+        descriptor.createPlugin( getClass(), mainType.value(), getClass().getClassLoader(),
+          findPluginLibraries( jarFilePlugin.getJarFile() ), jarFilePlugin.getPluginFolder() );
+      if ( descriptor.getParentFirstPatterns() != null ) {
+        registry.addParentClassLoaderPatterns( plugin, descriptor.getParentFirstPatterns() );
+      }
+      registry.registerPlugin( this.getClass(), plugin );
+      return true;
+    } catch ( Exception e ) {
+      LogChannel.GENERAL.logDetailed( "Unable to register plugin class "
+        + jarFilePlugin.getClassName() + " from the plugin index, loading it instead: " + e.getMessage() );
+      return false;
+    }
+  }
+
+  /**
+   * Remember a plugin that was just registered from its annotation in the plugin index of its folder.
+   */
+  private void indexPlugin( JarFileAnnotationPlugin jarFilePlugin, Class<?> clazz, Annotation annotation ) {
+    PluginIndex pluginIndex = jarFilePlugin.getPluginIndex();
+    if ( pluginIndex == null || annotation == null || !isIndexable() ) {
+      return;
+    }
+    String[] ids = extractID( annotation ).split( "," );
+    PluginInterface plugin = registry.getPlugin( this.getClass(), ids[0] );
+    PluginMainClassType mainType = getClass().getAnnotation( PluginMainClassType.class );
+    if ( plugin == null || !clazz.getName().equals( plugin.getClassMap().get( mainType.value() ) ) ) {
+      return;
+    }
+    ParentFirst parentFirstAnnotation = clazz.getAnnotation( ParentFirst.class );
+    pluginIndex.putPlugin( jarFilePlugin.getJarFile(), getClass(), clazz.getName(), plugin,
+      parentFirstAnnotation == null ? null : parentFirstAnnotation.patterns() );
+  }
+
+  /**
+   * Plugins can only be registered from the plugin index if this plugin type registers them the standard way: plugin
+   * types that override {@link #handlePluginAnnotation(Class, Annotation, List, boolean, URL)} always load the plugin
+   * classes.
+   *
+   * @return true if the plugins of this type can be registered from the plugin index
+   */
+  protected boolean isIndexable() {
+    try {
+      return getClass().getMethod( "handlePluginAnnotation", Class.class, Annotation.class, List.class,
+        boolean.class, URL.class ).getDeclaringClass() == BasePluginType.class;
+    } catch ( NoSuchMethodException e ) {
+      return false;
+    }
+  }
+
   /**
    * Handle an annotated plugin
    *
@@ -28,6 +28,7 @@ public class JarFileAnnotationPlugin {
   private URL jarFile;
   private URL pluginFolder;
   private String className;
+  private PluginIndex pluginIndex;
 
   /**
    * @param jarFile
@@ -40,6 +41,21 @@ public class JarFileAnnotationPlugin {
     this.pluginFolder = pluginFolder;
   }
 
+  /**
+   * @param className
+   *          the annotated class
+   * @param jarFile
+   *          the jar file containing the class
+   * @param pluginFolder
+   *          the folder of the jar file
+   * @param pluginIndex
+   *          the persistent index of the plugin folder or null if there is none
+   */
+  public JarFileAnnotationPlugin( String className, URL jarFile, URL pluginFolder, PluginIndex pluginIndex ) {
+    this( className, jarFile, pluginFolder );
+    this.pluginIndex = pluginIndex;
+  }
+
   @Override
   public String toString() {
     return jarFile.toString();
@@ -72,4 +88,11 @@ public class JarFileAnnotationPlugin {
     return className;
   }
 
+  /**
+   * @return the persistent index of the plugin folder or null if there is none
+   */
+  public PluginIndex getPluginIndex() {
+    return pluginIndex;
+  }
+
 }
@@ -25,10 +25,16 @@ package org.pentaho.di.core.plugins;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
+import org.apache.commons.vfs2.FileContent;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.util.EnvUtil;
 import org.scannotation.AnnotationDB;
 
 public class JarFileCache {
@@ -39,9 +45,13 @@ public class JarFileCache {
 
   private final Map<FileObject, AnnotationDB> annotationMap;
 
+  /** The persistent plugin indexes by plugin folder name */
+  private final Map<String, PluginIndex> indexMap;
+
   private JarFileCache() {
     annotationMap = new HashMap<FileObject, AnnotationDB>();
     folderMap = new HashMap<PluginFolderInterface, FileObject[]>();
+    indexMap = new HashMap<String, PluginIndex>();
   }
 
   public static JarFileCache getInstance() {
@@ -61,6 +71,74 @@ public class JarFileCache {
     return result;
   }
 
+  /**
+   * Get the class names by annotation class name of a jar file in a plugin folder. The jar file is only scanned if it
+   * isn't in the plugin index of the folder yet or if it changed since it was indexed.
+   *
+   * @param pluginFolder
+   *          the plugin folder the jar file was found in
+   * @param fileObject
+   *          the jar file
+   * @return the annotation index of the jar file
+   */
+  public Map<String, Set<String>> getAnnotationIndex( PluginFolderInterface pluginFolder, FileObject fileObject )
+    throws FileSystemException, IOException {
+    PluginIndex pluginIndex = getPluginIndex( pluginFolder );
+    if ( pluginIndex == null ) {
+      return getAnnotationDB( fileObject ).getAnnotationIndex();
+    }
+
+    String url = fileObject.getURL().toString();
+    FileContent content = fileObject.getContent();
+    long size = content.getSize();
+    long lastModified = content.getLastModifiedTime();
+
+    Map<String, Set<String>> annotationIndex = pluginIndex.getAnnotationIndex( url, size, lastModified );
+    if ( annotationIndex == null ) {
+      annotationIndex = getAnnotationDB( fileObject ).getAnnotationIndex();
+      pluginIndex.putAnnotationIndex( url, size, lastModified, annotationIndex );
+    }
+    return annotationIndex;
+  }
+
+  /**
+   * @return the persistent plugin index of the given folder or null if the plugin index is disabled
+   */
+  public PluginIndex getPluginIndex( PluginFolderInterface pluginFolder ) {
+    if ( !isPluginIndexEnabled() ) {
+      return null;
+    }
+    PluginIndex pluginIndex = indexMap.get( pluginFolder.getFolder() );
+    if ( pluginIndex == null ) {
+      pluginIndex = new PluginIndex( pluginFolder.getFolder(), PluginIndex.getIndexFile( pluginFolder.getFolder() ) );
+      pluginIndex.load();
+      indexMap.put( pluginFolder.getFolder(), pluginIndex );
+    }
+    return pluginIndex;
+  }
+
+  /**
+   * Write the plugin indexes that changed. The index is only a cache, so failing to write it isn't fatal.
+   */
+  public void saveIndexes() {
+    for ( PluginIndex pluginIndex : indexMap.values() ) {
+      try {
+        if ( pluginIndex.isChanged() ) {
+          pluginIndex.save();
+          LogChannel.GENERAL.logDetailed( "Updated plugin index '"
+            + pluginIndex.getIndexFile() + "' of plugin folder '" + pluginIndex.getFolder() + "'" );
+        }
+      } catch ( KettleException e ) {
+        LogChannel.GENERAL.logDetailed( "Unable to save the plugin index of plugin folder '"
+          + pluginIndex.getFolder() + "' : " + e.getMessage() );
+      }
+    }
+  }
+
+  private static boolean isPluginIndexEnabled() {
+    return !"Y".equalsIgnoreCase( EnvUtil.getSystemProperty( Const.KETTLE_DISABLE_PLUGIN_INDEX, "N" ) );
+  }
+
   public FileObject[] getFileObjects( PluginFolderInterface pluginFolderInterface ) throws KettleFileException {
     FileObject[] result = folderMap.get( pluginFolderInterface );
     if ( result == null ) {
@@ -73,5 +151,6 @@ public class JarFileCache {
   public void clear() {
     annotationMap.clear();
     folderMap.clear();
+    indexMap.clear();
   }
 }
@@ -0,0 +1,515 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.plugins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.i18n.LanguageChoice;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * A persistent index of the plugin jar files in a plugin folder. For every jar file it remembers the classes that carry
+ * a plugin annotation and the plugins that were registered from those classes. As long as the size and the last
+ * modification time of a jar file don't change, the next startup can register its plugins straight from the index: the
+ * jar file isn't scanned and the plugin classes aren't loaded until they are used for the first time.<br>
+ * <br>
+ * The index is stored in the plugin-index folder of the Kettle home directory, one file per plugin folder. It is
+ * discarded when it was written by another version of Kettle. The registered plugins are discarded as well when the
+ * locale changed since their names and descriptions are translated.
+ */
+public class PluginIndex {
+
+  public static final String XML_TAG = "plugin-index";
+
+  public static final String INDEX_FOLDER = "plugin-index";
+
+  private static final String INDEX_VERSION = "1";
+
+  private final String folder;
+  private final File indexFile;
+
+  /** The indexed jar files by URL */
+  private final Map<String, JarFileEntry> jarFiles;
+
+  private boolean changed;
+
+  /**
+   * @param folder
+   *          the plugin folder to index
+   * @param indexFile
+   *          the file to store the index in
+   */
+  public PluginIndex( String folder, File indexFile ) {
+    this.folder = folder;
+    this.indexFile = indexFile;
+    this.jarFiles = new LinkedHashMap<String, JarFileEntry>();
+  }
+
+  /**
+   * @return the index file for the given plugin folder in the Kettle home directory
+   */
+  public static File getIndexFile( String folder ) {
+    String baseName = new File( folder ).getName().replaceAll( "[^a-zA-Z0-9_\\-]", "_" );
+    return new File( Const.getKettleDirectory() + Const.FILE_SEPARATOR + INDEX_FOLDER, baseName
+      + "-" + Integer.toHexString( folder.hashCode() ) + ".xml" );
+  }
+
+  /**
+   * Read the index from its file. A missing, unreadable or outdated index file simply results in an empty index.
+   */
+  public void load() {
+    jarFiles.clear();
+    changed = false;
+    if ( !indexFile.exists() ) {
+      return;
+    }
+
+    try {
+      Document document = XMLHandler.loadXMLFile( indexFile );
+      Node indexNode = XMLHandler.getSubNode( document, XML_TAG );
+      if ( indexNode == null
+        || !INDEX_VERSION.equals( XMLHandler.getTagValue( indexNode, "index-version" ) )
+        || !Const.NVL( Const.VERSION, "" ).equals(
+          Const.NVL( XMLHandler.getTagValue( indexNode, "kettle-version" ), "" ) )
+        || !folder.equals( XMLHandler.getTagValue( indexNode, "folder" ) ) ) {
+        changed = true;
+        return;
+      }
+      boolean sameLocale = getLocale().equals( XMLHandler.getTagValue( indexNode, "locale" ) );
+
+      for ( Node jarNode : XMLHandler.getNodes( indexNode, JarFileEntry.XML_TAG ) ) {
+        JarFileEntry entry = new JarFileEntry( jarNode, sameLocale );
+        jarFiles.put( entry.url, entry );
+      }
+      changed = !sameLocale;
+    } catch ( Exception e ) {
+      // A corrupt index is rebuilt from scratch
+      //
+      jarFiles.clear();
+      changed = true;
+    }
+  }
+
+  /**
+   * Write the index to its file if it changed. Jar files that weren't looked up since the index was loaded are no
+   * longer in the plugin folder and are left out.
+   *
+   * @throws KettleException
+   *           in case the index file can't be written
+   */
+  public void save() throws KettleException {
+    if ( !changed ) {
+      return;
+    }
+
+    StringBuilder xml = new StringBuilder( 10000 );
+    xml.append( XMLHandler.getXMLHeader() );
+    xml.append( XMLHandler.openTag( XML_TAG ) ).append( Const.CR );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "index-version", INDEX_VERSION ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "kettle-version", Const.VERSION ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "folder", folder ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "locale", getLocale() ) );
+    for ( JarFileEntry entry : jarFiles.values() ) {
+      if ( entry.verified ) {
+        entry.appendXML( xml );
+      }
+    }
+    xml.append( XMLHandler.closeTag( XML_TAG ) ).append( Const.CR );
+
+    // Write to a temporary file first so that another JVM never reads a half written index
+    //
+    File tempFile = null;
+    try {
+      File indexFolder = indexFile.getParentFile();
+      if ( indexFolder != null ) {
+        indexFolder.mkdirs();
+      }
+      tempFile = File.createTempFile( indexFile.getName(), ".tmp", indexFolder );
+      OutputStream outputStream = new FileOutputStream( tempFile );
+      try {
+        outputStream.write( xml.toString().getBytes( StandardCharsets.UTF_8 ) );
+      } finally {
+        outputStream.close();
+      }
+      Files.move( tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+      tempFile = null;
+      changed = false;
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to write plugin index file '" + indexFile + "'", e );
+    } finally {
+      if ( tempFile != null ) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Look up the annotation index of a jar file.
+   *
+   * @param url
+   *          the URL of the jar file
+   * @param size
+   *          the current size of the jar file
+   * @param lastModified
+   *          the current last modification time of the jar file
+   * @return the class names by annotation class name or null if the jar file isn't indexed or changed since it was
+   */
+  public Map<String, Set<String>> getAnnotationIndex( String url, long size, long lastModified ) {
+    JarFileEntry entry = jarFiles.get( url );
+    if ( entry == null ) {
+      return null;
+    }
+    if ( entry.size != size || entry.lastModified != lastModified ) {
+      jarFiles.remove( url );
+      changed = true;
+      return null;
+    }
+    entry.verified = true;
+    return entry.annotationIndex;
+  }
+
+  /**
+   * Store the annotation index of a jar file, replacing everything that was known about it before.
+   *
+   * @param url
+   *          the URL of the jar file
+   * @param size
+   *          the size of the jar file
+   * @param lastModified
+   *          the last modification time of the jar file
+   * @param annotationIndex
+   *          the class names by annotation class name
+   */
+  public void putAnnotationIndex( String url, long size, long lastModified,
+    Map<String, Set<String>> annotationIndex ) {
+    JarFileEntry entry = new JarFileEntry( url, size, lastModified );
+    for ( Map.Entry<String, Set<String>> annotation : annotationIndex.entrySet() ) {
+      entry.annotationIndex.put( annotation.getKey(), new LinkedHashSet<String>( annotation.getValue() ) );
+    }
+    entry.verified = true;
+    jarFiles.put( url, entry );
+    changed = true;
+  }
+
+  /**
+   * Look up a plugin that was registered from a class in an indexed jar file.
+   *
+   * @return the plugin descriptor or null if the plugin isn't indexed or the jar file changed
+   */
+  public PluginDescriptor getPlugin( URL jarFile, Class<? extends PluginTypeInterface> pluginType,
+    String className ) {
+    JarFileEntry entry = jarFiles.get( jarFile.toString() );
+    if ( entry == null || !entry.verified ) {
+      return null;
+    }
+    return entry.plugins.get( getPluginKey( pluginType.getName(), className ) );
+  }
+
+  /**
+   * Remember a plugin that was registered from a class in an indexed jar file.
+   *
+   * @param jarFile
+   *          the jar file containing the plugin class
+   * @param pluginType
+   *          the plugin type
+   * @param className
+   *          the annotated plugin class
+   * @param plugin
+   *          the registered plugin
+   * @param parentFirstPatterns
+   *          the parent first class loader patterns of the plugin or null if there are none
+   */
+  public void putPlugin( URL jarFile, Class<? extends PluginTypeInterface> pluginType, String className,
+    PluginInterface plugin, String[] parentFirstPatterns ) {
+    JarFileEntry entry = jarFiles.get( jarFile.toString() );
+    if ( entry == null || !entry.verified ) {
+      return;
+    }
+    PluginDescriptor descriptor = new PluginDescriptor( pluginType.getName(), className, plugin, parentFirstPatterns );
+    entry.plugins.put( getPluginKey( pluginType.getName(), className ), descriptor );
+    changed = true;
+  }
+
+  /**
+   * @return true if the index changed since it was loaded or saved
+   */
+  public boolean isChanged() {
+    return changed;
+  }
+
+  /**
+   * @return the plugin folder of this index
+   */
+  public String getFolder() {
+    return folder;
+  }
+
+  /**
+   * @return the file the index is stored in
+   */
+  public File getIndexFile() {
+    return indexFile;
+  }
+
+  private static String getPluginKey( String pluginTypeName, String className ) {
+    return pluginTypeName + "/" + className;
+  }
+
+  private static String getLocale() {
+    return LanguageChoice.getInstance().getDefaultLocale().toString();
+  }
+
+  private static class JarFileEntry {
+    private static final String XML_TAG = "jar";
+
+    private final String url;
+    private final long size;
+    private final long lastModified;
+    private final Map<String, Set<String>> annotationIndex;
+    private final Map<String, PluginDescriptor> plugins;
+
+    /** true once the jar file was found to be unchanged */
+    private boolean verified;
+
+    private JarFileEntry( String url, long size, long lastModified ) {
+      this.url = url;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.annotationIndex = new HashMap<String, Set<String>>();
+      this.plugins = new LinkedHashMap<String, PluginDescriptor>();
+    }
+
+    private JarFileEntry( Node jarNode, boolean readPlugins ) {
+      this( XMLHandler.getTagValue( jarNode, "url" ), Long.parseLong( XMLHandler.getTagValue( jarNode, "size" ) ),
+        Long.parseLong( XMLHandler.getTagValue( jarNode, "last-modified" ) ) );
+
+      for ( Node annotationNode : XMLHandler.getNodes( jarNode, "annotation" ) ) {
+        Set<String> classNames = new LinkedHashSet<String>();
+        for ( Node classNode : XMLHandler.getNodes( annotationNode, "class" ) ) {
+          classNames.add( XMLHandler.getNodeValue( classNode ) );
+        }
+        annotationIndex.put( XMLHandler.getTagValue( annotationNode, "name" ), classNames );
+      }
+
+      if ( readPlugins ) {
+        for ( Node pluginNode : XMLHandler.getNodes( jarNode, PluginDescriptor.XML_TAG ) ) {
+          PluginDescriptor descriptor = new PluginDescriptor( pluginNode );
+          plugins.put( getPluginKey( descriptor.pluginType, descriptor.className ), descriptor );
+        }
+      }
+    }
+
+    private void appendXML( StringBuilder xml ) {
+      xml.append( "  " ).append( XMLHandler.openTag( XML_TAG ) ).append( Const.CR );
+      xml.append( "    " ).append( XMLHandler.addTagValue( "url", url ) );
+      xml.append( "    " ).append( XMLHandler.addTagValue( "size", size ) );
+      xml.append( "    " ).append( XMLHandler.addTagValue( "last-modified", lastModified ) );
+      for ( Map.Entry<String, Set<String>> annotation : annotationIndex.entrySet() ) {
+        xml.append( "    " ).append( XMLHandler.openTag( "annotation" ) ).append( Const.CR );
+        xml.append( "      " ).append( XMLHandler.addTagValue( "name", annotation.getKey() ) );
+        for ( String className : annotation.getValue() ) {
+          xml.append( "      " ).append( XMLHandler.addTagValue( "class", className ) );
+        }
+        xml.append( "    " ).append( XMLHandler.closeTag( "annotation" ) ).append( Const.CR );
+      }
+      for ( PluginDescriptor descriptor : plugins.values() ) {
+        descriptor.appendXML( xml );
+      }
+      xml.append( "  " ).append( XMLHandler.closeTag( XML_TAG ) ).append( Const.CR );
+    }
+  }
+
+  /**
+   * Everything that is needed to register a plugin without loading its class.
+   */
+  public static class PluginDescriptor {
+    private static final String XML_TAG = "plugin";
+
+    private final String pluginType;
+    private final String className;
+    private final String[] ids;
+    private final String category;
+    private final String name;
+    private final String description;
+    private final String imageFile;
+    private final boolean separateClassLoaderNeeded;
+    private final String classLoaderGroup;
+    private final String errorHelpFile;
+    private final String documentationUrl;
+    private final String casesUrl;
+    private final String forumUrl;
+
+    /** The class names by the class name of the interface or type they implement */
+    private final Map<String, String> classMap;
+
+    private final String[] parentFirstPatterns;
+
+    private PluginDescriptor( String pluginType, String className, PluginInterface plugin,
+      String[] parentFirstPatterns ) {
+      this.pluginType = pluginType;
+      this.className = className;
+      this.ids = plugin.getIds();
+      this.category = plugin.getCategory();
+      this.name = plugin.getName();
+      this.description = plugin.getDescription();
+      this.imageFile = plugin.getImageFile();
+      this.separateClassLoaderNeeded = plugin.isSeparateClassLoaderNeeded();
+      this.classLoaderGroup = plugin.getClassLoaderGroup();
+      this.errorHelpFile = plugin.getErrorHelpFile();
+      this.documentationUrl = plugin.getDocumentationUrl();
+      this.casesUrl = plugin.getCasesUrl();
+      this.forumUrl = plugin.getForumUrl();
+      this.classMap = new LinkedHashMap<String, String>();
+      for ( Map.Entry<Class<?>, String> entry : plugin.getClassMap().entrySet() ) {
+        classMap.put( entry.getKey().getName(), entry.getValue() );
+      }
+      this.parentFirstPatterns = parentFirstPatterns;
+    }
+
+    private PluginDescriptor( Node pluginNode ) {
+      this.pluginType = XMLHandler.getTagValue( pluginNode, "type" );
+      this.className = XMLHandler.getTagValue( pluginNode, "class" );
+      List<String> idList = new ArrayList<String>();
+      for ( Node idNode : XMLHandler.getNodes( pluginNode, "id" ) ) {
+        idList.add( XMLHandler.getNodeValue( idNode ) );
+      }
+      this.ids = idList.toArray( new String[idList.size()] );
+      this.category = XMLHandler.getTagValue( pluginNode, "category" );
+      this.name = XMLHandler.getTagValue( pluginNode, "name" );
+      this.description = XMLHandler.getTagValue( pluginNode, "description" );
+      this.imageFile = XMLHandler.getTagValue( pluginNode, "image_file" );
+      this.separateClassLoaderNeeded =
+        "Y".equalsIgnoreCase( XMLHandler.getTagValue( pluginNode, "separate_class_loader" ) );
+      this.classLoaderGroup = XMLHandler.getTagValue( pluginNode, "class_loader_group" );
+      this.errorHelpFile = XMLHandler.getTagValue( pluginNode, "error_help_file" );
+      this.documentationUrl = XMLHandler.getTagValue( pluginNode, "documentation_url" );
+      this.casesUrl = XMLHandler.getTagValue( pluginNode, "cases_url" );
+      this.forumUrl = XMLHandler.getTagValue( pluginNode, "forum_url" );
+      this.classMap = new LinkedHashMap<String, String>();
+      for ( Node classNode : XMLHandler.getNodes( pluginNode, "mapped_class" ) ) {
+        classMap.put( XMLHandler.getTagValue( classNode, "type" ), XMLHandler.getTagValue( classNode, "class" ) );
+      }
+      List<Node> patternNodes = XMLHandler.getNodes( pluginNode, "parent_first_pattern" );
+      if ( patternNodes.isEmpty() ) {
+        this.parentFirstPatterns = null;
+      } else {
+        this.parentFirstPatterns = new String[patternNodes.size()];
+        for ( int i = 0; i < parentFirstPatterns.length; i++ ) {
+          parentFirstPatterns[i] = XMLHandler.getNodeValue( patternNodes.get( i ) );
+        }
+      }
+    }
+
+    private void appendXML( StringBuilder xml ) {
+      xml.append( "    " ).append( XMLHandler.openTag( XML_TAG ) ).append( Const.CR );
+      xml.append( "      " ).append( XMLHandler.addTagValue( "type", pluginType ) );
+      xml.append( "      " ).append( XMLHandler.addTagValue( "class", className ) );
+      for ( String id : ids ) {
+        xml.append( "      " ).append( XMLHandler.addTagValue( "id", id ) );
+      }
+      xml.append( "      " ).append( XMLHandler.addTagValue( "category", category ) );
+      xml.append( "      " ).append( XMLHandler.addTagValue( "name", name ) );
+      xml.append( "      " ).append( XMLHandler.addTagValue( "description", description ) );
+      xml.append( "      " ).append( XMLHandler.addTagValue( "image_file", imageFile ) );
+      xml.append( "      " ).append( XMLHandler.addTagValue( "separate_class_loader", separateClassLoaderNeeded ) );
+      xml.append( "      " ).append( XMLHandler.addTagValue( "class_loader_group", classLoaderGroup ) );
+      xml.append( "      " ).append( XMLHandler.addTagValue( "error_help_file", errorHelpFile ) );
+      xml.append( "      " ).append( XMLHandler.addTagValue( "documentation_url", documentationUrl ) );
+      xml.append( "      " ).append( XMLHandler.addTagValue( "cases_url", casesUrl ) );
+      xml.append( "      " ).append( XMLHandler.addTagValue( "forum_url", forumUrl ) );
+      for ( Map.Entry<String, String> entry : classMap.entrySet() ) {
+        xml.append( "      " ).append( XMLHandler.openTag( "mapped_class" ) );
+        xml.append( XMLHandler.addTagValue( "type", entry.getKey(), false ) );
+        xml.append( XMLHandler.addTagValue( "class", entry.getValue(), false ) );
+        xml.append( XMLHandler.closeTag( "mapped_class" ) ).append( Const.CR );
+      }
+      if ( parentFirstPatterns != null ) {
+        for ( String pattern : parentFirstPatterns ) {
+          xml.append( "      " ).append( XMLHandler.addTagValue( "parent_first_pattern", pattern ) );
+        }
+      }
+      xml.append( "    " ).append( XMLHandler.closeTag( XML_TAG ) ).append( Const.CR );
+    }
+
+    /**
+     * Create the plugin described by this descriptor. The classes in the class map are resolved with the given class
+     * loader, the plugin classes themselves are not loaded.
+     *
+     * @param pluginTypeClass
+     *          the plugin type
+     * @param mainType
+     *          the main class type of the plugin type
+     * @param classLoader
+     *          the class loader to resolve the types of the class map with
+     * @param libraries
+     *          the libraries of the plugin
+     * @param pluginFolder
+     *          the folder of the plugin
+     * @return the plugin
+     * @throws ClassNotFoundException
+     *           in case one of the types in the class map can't be resolved
+     */
+    public PluginInterface createPlugin( Class<? extends PluginTypeInterface> pluginTypeClass, Class<?> mainType,
+      ClassLoader classLoader, List<String> libraries, URL pluginFolder ) throws ClassNotFoundException {
+      Map<Class<?>, String> classes = new HashMap<Class<?>, String>();
+      for ( Map.Entry<String, String> entry : classMap.entrySet() ) {
+        classes.put( Class.forName( entry.getKey(), false, classLoader ), entry.getValue() );
+      }
+      return new Plugin( ids, pluginTypeClass, mainType, category, name, description, imageFile,
+        separateClassLoaderNeeded, classLoaderGroup, false, classes, libraries, errorHelpFile, pluginFolder,
+        documentationUrl, casesUrl, forumUrl );
+    }
+
+    /**
+     * @return the parent first class loader patterns of the plugin or null if there are none
+     */
+    public String[] getParentFirstPatterns() {
+      return parentFirstPatterns;
+    }
+
+    /**
+     * @return the annotated plugin class
+     */
+    public String getClassName() {
+      return className;
+    }
+  }
+}
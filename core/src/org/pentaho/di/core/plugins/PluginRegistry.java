@@ -582,6 +582,12 @@ public class PluginRegistry {
      * System.out.println("   - "+duration.toString()+"          Total="+total); }
      */
 
+    // Store what we learned about the plugin jar files for the next startup
+    //
+    log.snap( Metrics.METRIC_PLUGIN_REGISTRY_SAVE_PLUGIN_INDEX_START );
+    JarFileCache.getInstance().saveIndexes();
+    log.snap( Metrics.METRIC_PLUGIN_REGISTRY_SAVE_PLUGIN_INDEX_STOP );
+
     // Clear the jar file cache so that we don't waste memory...
     //
     if ( !keepCache ) {
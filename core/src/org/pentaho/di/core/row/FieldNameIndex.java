@@ -0,0 +1,214 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable, case insensitive field name to index table without collisions (a perfect hash), built once for a
+ * fixed list of names. It uses "hash and displace": the names are spread over buckets with one hash function and every
+ * bucket gets a displacement that moves all of its names to free slots of the table. A lookup is a hash of the name,
+ * two array reads and one string comparison, no locking and no allocation.<br>
+ * <br>
+ * Only the first of several names that are equal ignoring case is stored. Names with the same 32 bit hash as a name
+ * that is already stored are left out as well, {@link #indexOf(String)} returns -1 for them and the caller has to
+ * fall back to a scan.
+ */
+final class FieldNameIndex {
+
+  private static final int GOLDEN = 0x9E3779B9;
+
+  /** The number of displacements to try per bucket before the table is made bigger */
+  private static final int MAX_DISPLACEMENT = 1 << 12;
+
+  private final String[] names;
+  private final int bucketMask;
+  private final int[] displacements;
+  private final int slotMask;
+
+  /** The index of the field + 1 for every slot, 0 for an empty slot */
+  private final int[] slots;
+
+  /**
+   * @param fieldNames
+   *          the names of the fields in the row, may contain nulls
+   */
+  FieldNameIndex( String[] fieldNames ) {
+    this.names = fieldNames.clone();
+
+    // The distinct names and their hashes
+    //
+    final List<Integer> indexes = new ArrayList<Integer>();
+    final Set<Integer> hashes = new HashSet<Integer>();
+    final int[] hashOf = new int[names.length];
+    for ( int i = 0; i < names.length; i++ ) {
+      if ( names[i] == null ) {
+        continue;
+      }
+      hashOf[i] = hash( names[i] );
+      if ( hashes.add( hashOf[i] ) ) {
+        indexes.add( i );
+      }
+    }
+
+    int nrBuckets = Math.max( 1, Integer.highestOneBit( Math.max( 1, indexes.size() ) ) );
+    int nrSlots = Integer.highestOneBit( Math.max( 1, indexes.size() ) ) << 2;
+    int[] bucketDisplacements = null;
+    int[] table = null;
+    while ( table == null ) {
+      bucketDisplacements = new int[nrBuckets];
+      table = build( indexes, hashOf, nrBuckets, nrSlots, bucketDisplacements );
+      nrSlots <<= 1;
+    }
+    this.bucketMask = nrBuckets - 1;
+    this.displacements = bucketDisplacements;
+    this.slotMask = table.length - 1;
+    this.slots = table;
+  }
+
+  /**
+   * Place all the names in a table of the given size.
+   *
+   * @return the table or null if some bucket couldn't be placed
+   */
+  private static int[] build( List<Integer> indexes, final int[] hashOf, int nrBuckets, int nrSlots,
+    int[] bucketDisplacements ) {
+    int mask = nrBuckets - 1;
+    List<List<Integer>> buckets = new ArrayList<List<Integer>>( nrBuckets );
+    for ( int b = 0; b < nrBuckets; b++ ) {
+      buckets.add( new ArrayList<Integer>() );
+    }
+    for ( int index : indexes ) {
+      buckets.get( bucket( hashOf[index], mask ) ).add( index );
+    }
+
+    // Place the biggest buckets first, while the table is still mostly empty
+    //
+    List<Integer> order = new ArrayList<Integer>( nrBuckets );
+    for ( int b = 0; b < nrBuckets; b++ ) {
+      order.add( b );
+    }
+    final List<List<Integer>> finalBuckets = buckets;
+    Collections.sort( order, new Comparator<Integer>() {
+      @Override
+      public int compare( Integer b1, Integer b2 ) {
+        return finalBuckets.get( b2 ).size() - finalBuckets.get( b1 ).size();
+      }
+    } );
+
+    int[] table = new int[nrSlots];
+    int[] placed = new int[nrSlots];
+    for ( int b : order ) {
+      List<Integer> bucket = buckets.get( b );
+      if ( bucket.isEmpty() ) {
+        break;
+      }
+      boolean done = false;
+      for ( int d = 0; d < MAX_DISPLACEMENT && !done; d++ ) {
+        done = true;
+        for ( int i = 0; i < bucket.size(); i++ ) {
+          int slot = slot( hashOf[bucket.get( i )], d, nrSlots - 1 );
+          if ( table[slot] != 0 || placed[slot] == d + 1 ) {
+            done = false;
+            break;
+          }
+          placed[slot] = d + 1;
+        }
+        if ( done ) {
+          bucketDisplacements[b] = d;
+          for ( int index : bucket ) {
+            table[slot( hashOf[index], d, nrSlots - 1 )] = index + 1;
+          }
+        }
+      }
+      if ( !done ) {
+        return null;
+      }
+      Arrays.fill( placed, 0 );
+    }
+    return table;
+  }
+
+  /**
+   * @param name
+   *          the name to look for, ignoring case
+   * @return the index of the field with that name or -1 if it's not in the table
+   */
+  int indexOf( String name ) {
+    int h = hash( name );
+    int d = displacements[bucket( h, bucketMask )];
+    int entry = slots[slot( h, d, slotMask )];
+    if ( entry == 0 ) {
+      return -1;
+    }
+    int index = entry - 1;
+    return name.equalsIgnoreCase( names[index] ) ? index : -1;
+  }
+
+  /**
+   * @return the number of slots in the table
+   */
+  int getTableSize() {
+    return slots.length;
+  }
+
+  private static int bucket( int h, int mask ) {
+    return ( h ^ ( h >>> 16 ) ) & mask;
+  }
+
+  private static int slot( int h, int d, int mask ) {
+    int x = h + d * GOLDEN;
+    x ^= x >>> 16;
+    x *= 0x85EBCA6B;
+    x ^= x >>> 13;
+    x *= 0xC2B2AE35;
+    x ^= x >>> 16;
+    return x & mask;
+  }
+
+  /**
+   * A hash of the name that is the same for all names that are equal ignoring case, folding every character the same
+   * way {@link String#equalsIgnoreCase(String)} does.
+   */
+  static int hash( String name ) {
+    int h = 0;
+    for ( int i = 0; i < name.length(); i++ ) {
+      char c = name.charAt( i );
+      if ( c < 128 ) {
+        if ( c >= 'A' && c <= 'Z' ) {
+          c += 'a' - 'A';
+        }
+      } else {
+        c = Character.toLowerCase( Character.toUpperCase( c ) );
+      }
+      h = 31 * h + c;
+    }
+    return h;
+  }
+}
@@ -0,0 +1,253 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.pentaho.di.core.exception.KettleValueException;
+
+/**
+ * Row metadata with a layout that can't change anymore. Because nothing can be added, removed or replaced, all the
+ * lookups are done without locking: the value metadata is kept in a plain array and the names are found through a
+ * precomputed perfect hash table. With KETTLE_FROZEN_ROW_META=Y steps use it for the metadata they hand to the next
+ * steps through the row sets, where it's read for every row by another thread.<br>
+ * <br>
+ * The value metadata objects themselves are not frozen. A step that renames a field of its input row metadata is still
+ * found by name, the lookup falls back to a scan when the table doesn't give the right answer. All the methods that
+ * would change the layout throw an {@link UnsupportedOperationException}, {@link #clone()} returns a normal, modifiable
+ * copy.
+ */
+public class FrozenRowMeta extends RowMeta {
+
+  private final ValueMetaInterface[] valueMetas;
+  private final List<ValueMetaInterface> valueMetaList;
+  private volatile FieldNameIndex nameIndex;
+
+  /** The indexes of the values that need a real clone in cloneRow() */
+  private final int[] realCloneIndexes;
+
+  /**
+   * Freeze a copy of the given row metadata. The value metadata is cloned, later changes to the given row metadata
+   * don't affect the frozen copy.
+   *
+   * @param rowMeta
+   *          the row metadata to copy
+   */
+  public FrozenRowMeta( RowMetaInterface rowMeta ) {
+    List<ValueMetaInterface> list = rowMeta.getValueMetaList();
+    List<ValueMetaInterface> copy = new ArrayList<ValueMetaInterface>( list.size() );
+    for ( ValueMetaInterface valueMeta : list ) {
+      copy.add( valueMeta.clone() );
+    }
+    super.setValueMetaList( copy );
+
+    this.valueMetas = copy.toArray( new ValueMetaInterface[copy.size()] );
+    this.valueMetaList = Collections.unmodifiableList( Arrays.asList( valueMetas ) );
+    this.nameIndex = new FieldNameIndex( getNames() );
+
+    int nrRealClones = 0;
+    int[] indexes = new int[valueMetas.length];
+    for ( int i = 0; i < valueMetas.length; i++ ) {
+      if ( valueMetas[i].requiresRealClone() ) {
+        indexes[nrRealClones++] = i;
+      }
+    }
+    this.realCloneIndexes = Arrays.copyOf( indexes, nrRealClones );
+  }
+
+  private String[] getNames() {
+    String[] names = new String[valueMetas.length];
+    for ( int i = 0; i < valueMetas.length; i++ ) {
+      names[i] = valueMetas[i].getName();
+    }
+    return names;
+  }
+
+  @Override
+  public List<ValueMetaInterface> getValueMetaList() {
+    return valueMetaList;
+  }
+
+  /**
+   * Only allowed to re-index the same value metadata after some of them were renamed.
+   *
+   * @throws UnsupportedOperationException
+   *           if the list doesn't contain exactly the same value metadata
+   */
+  @Override
+  public void setValueMetaList( List<ValueMetaInterface> valueMetaList ) {
+    if ( valueMetaList.size() != valueMetas.length ) {
+      throw unsupported();
+    }
+    for ( int i = 0; i < valueMetas.length; i++ ) {
+      if ( valueMetaList.get( i ) != valueMetas[i] ) {
+        throw unsupported();
+      }
+    }
+    nameIndex = new FieldNameIndex( getNames() );
+  }
+
+  @Override
+  public int size() {
+    return valueMetas.length;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return valueMetas.length == 0;
+  }
+
+  @Override
+  public ValueMetaInterface getValueMeta( int index ) {
+    if ( index >= 0 && index < valueMetas.length ) {
+      return valueMetas[index];
+    }
+    return null;
+  }
+
+  @Override
+  public int indexOfValue( String valueName ) {
+    if ( valueName == null ) {
+      return -1;
+    }
+    int index = nameIndex.indexOf( valueName );
+    if ( index >= 0 && valueName.equalsIgnoreCase( valueMetas[index].getName() ) ) {
+      return index;
+    }
+
+    // Not in the table or renamed since we were frozen
+    //
+    for ( int i = 0; i < valueMetas.length; i++ ) {
+      if ( valueName.equalsIgnoreCase( valueMetas[i].getName() ) ) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public ValueMetaInterface searchValueMeta( String valueName ) {
+    int index = indexOfValue( valueName );
+    return index < 0 ? null : valueMetas[index];
+  }
+
+  @Override
+  public Object[] cloneRow( Object[] objects, Object[] newObjects ) throws KettleValueException {
+    for ( int i : realCloneIndexes ) {
+      newObjects[i] = valueMetas[i].cloneValueData( objects[i] );
+    }
+    return newObjects;
+  }
+
+  @Override
+  public String[] getFieldNames() {
+    return getNames();
+  }
+
+  @Override
+  public String getString( Object[] row ) throws KettleValueException {
+    StringBuilder buffer = new StringBuilder();
+    for ( int i = 0; i < valueMetas.length; i++ ) {
+      if ( i > 0 ) {
+        buffer.append( ", " );
+      }
+      buffer.append( "[" );
+      buffer.append( getString( row, i ) );
+      buffer.append( "]" );
+    }
+    return buffer.toString();
+  }
+
+  @Override
+  public int compare( Object[] rowData1, Object[] rowData2, int[] fieldnrs ) throws KettleValueException {
+    for ( int fieldnr : fieldnrs ) {
+      int cmp = valueMetas[fieldnr].compare( rowData1[fieldnr], rowData2[fieldnr] );
+      if ( cmp != 0 ) {
+        return cmp;
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public boolean equals( Object[] rowData1, Object[] rowData2, int[] fieldnrs ) throws KettleValueException {
+    for ( int fieldnr : fieldnrs ) {
+      if ( valueMetas[fieldnr].compare( rowData1[fieldnr], rowData2[fieldnr] ) != 0 ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void addValueMeta( ValueMetaInterface meta ) {
+    throw unsupported();
+  }
+
+  @Override
+  public void addValueMeta( int index, ValueMetaInterface meta ) {
+    throw unsupported();
+  }
+
+  @Override
+  public void setValueMeta( int index, ValueMetaInterface valueMeta ) {
+    throw unsupported();
+  }
+
+  @Override
+  public void addRowMeta( RowMetaInterface rowMeta ) {
+    throw unsupported();
+  }
+
+  @Override
+  public void mergeRowMeta( RowMetaInterface r ) {
+    throw unsupported();
+  }
+
+  @Override
+  public void mergeRowMeta( RowMetaInterface r, String originStepName ) {
+    throw unsupported();
+  }
+
+  @Override
+  public void clear() {
+    throw unsupported();
+  }
+
+  @Override
+  public void removeValueMeta( String valueName ) throws KettleValueException {
+    throw unsupported();
+  }
+
+  @Override
+  public void removeValueMeta( int index ) {
+    throw unsupported();
+  }
+
+  private UnsupportedOperationException unsupported() {
+    return new UnsupportedOperationException( "The layout of frozen row metadata can't be changed, clone it first" );
+  }
+}
@@ -22,6 +22,9 @@
 
 package org.pentaho.di.core.row;
 
+import java.math.BigDecimal;
+import java.util.Date;
+
 /**
  * This class of static methods can be used to manipulate rows: add, delete, resize, etc... That way, when we want to go
  * for a metadata driven system with hiding deletes, over sized arrays etc, we can change these methods to find
@@ -42,6 +45,9 @@ package org.pentaho.di.core.row;
 public class RowDataUtil {
   public static int OVER_ALLOCATE_SIZE = 10;
 
+  /** Rough estimate of the size of an object header plus a reference to it */
+  private static final int OBJECT_OVERHEAD = 16;
+
   /**
    * Allocate a new Object array. However, over allocate by a constant factor to make adding values faster.
    *
@@ -202,4 +208,35 @@ public class RowDataUtil {
 
     return data;
   }
+
+  /**
+   * Estimate the number of bytes a row takes on the heap. This is a rough estimate that assumes compressed references,
+   * good enough to keep in-memory caches and lookup tables within a memory budget.
+   *
+   * @param row
+   *          the row to estimate the size of
+   * @return the estimated number of bytes
+   */
+  public static long estimateRowSize( Object[] row ) {
+    long bytes = OBJECT_OVERHEAD + 4L * row.length;
+    for ( Object value : row ) {
+      if ( value == null ) {
+        continue;
+      }
+      if ( value instanceof String ) {
+        bytes += 40 + 2L * ( (String) value ).length();
+      } else if ( value instanceof byte[] ) {
+        bytes += OBJECT_OVERHEAD + ( (byte[]) value ).length;
+      } else if ( value instanceof Long || value instanceof Double || value instanceof Boolean ) {
+        bytes += OBJECT_OVERHEAD;
+      } else if ( value instanceof Date ) {
+        bytes += 24;
+      } else if ( value instanceof BigDecimal ) {
+        bytes += 64;
+      } else {
+        bytes += 32;
+      }
+    }
+    return bytes;
+  }
 }
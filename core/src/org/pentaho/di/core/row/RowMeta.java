@@ -32,6 +32,7 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
 import org.pentaho.di.core.exception.KettlePluginException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.value.ValueMetaBase;
 import org.pentaho.di.core.row.value.ValueMetaFactory;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.w3c.dom.Node;
@@ -353,6 +354,31 @@ public class RowMeta implements RowMetaInterface {
     return meta.getNumber( dataRow[ index ] );
   }
 
+  /**
+   * Convert the values of one field over a block of rows to the normal storage type.
+   *
+   * @param rows    the block of rows
+   * @param nrRows  the number of rows in the block
+   * @param index   the index of the field to convert
+   * @param values  receives the converted value of every row in the block
+   * @throws KettleValueException in case there was a problem converting one of the values
+   */
+  @Override
+  public void convertToNormalStorageType( Object[][] rows, int nrRows, int index, Object[] values )
+    throws KettleValueException {
+    ValueMetaInterface meta = getValueMeta( index );
+    for ( int i = 0; i < nrRows; i++ ) {
+      values[ i ] = rows[ i ][ index ];
+    }
+    if ( meta.isStorageBinaryString() && meta instanceof ValueMetaBase ) {
+      ( (ValueMetaBase) meta ).convertBinaryStringsToNativeType( values, nrRows );
+    } else {
+      for ( int i = 0; i < nrRows; i++ ) {
+        values[ i ] = meta.convertToNormalStorageType( values[ i ] );
+      }
+    }
+  }
+
   /**
    * Get a Date value from a row of data. Convert data if this needed.
    *
@@ -507,25 +533,32 @@ public class RowMeta implements RowMetaInterface {
 
     lock.readLock().lock();
     try {
-      Integer index = cache.findAndCompare( valueName, valueMetaList );
-      for ( int i = 0; ( index == null ) && ( i < valueMetaList.size() ); i++ ) {
-        if ( valueName.equalsIgnoreCase( valueMetaList.get( i ).getName() ) ) {
-          index = i;
-          // it is possible, that several threads can call storing simultaneously
-          // but it makes no harm as they will put the same value,
-          // because valueMetaList is defended from modifications by read lock
-          cache.storeMapping( valueName, index );
-        }
-      }
-      if ( index == null ) {
-        return -1;
-      }
-      return index;
+      return findIndex( valueName );
     } finally {
       lock.readLock().unlock();
     }
   }
 
+  /**
+   * Find the index of a value, the caller holds the read or the write lock.
+   */
+  private int findIndex( String valueName ) {
+    Integer index = cache.findAndCompare( valueName, valueMetaList );
+    for ( int i = 0; ( index == null ) && ( i < valueMetaList.size() ); i++ ) {
+      if ( valueName.equalsIgnoreCase( valueMetaList.get( i ).getName() ) ) {
+        index = i;
+        // it is possible, that several threads can call storing simultaneously
+        // but it makes no harm as they will put the same value,
+        // because valueMetaList is defended from modifications by read lock
+        cache.storeMapping( valueName, index );
+      }
+    }
+    if ( index == null ) {
+      return -1;
+    }
+    return index;
+  }
+
   /**
    * Searches for a value with a certain name in the value meta list
    *
@@ -534,9 +567,12 @@ public class RowMeta implements RowMetaInterface {
    */
   @Override
   public ValueMetaInterface searchValueMeta( String valueName ) {
+    if ( valueName == null ) {
+      return null;
+    }
     lock.readLock().lock();
     try {
-      Integer index = indexOfValue( valueName );
+      int index = findIndex( valueName );
       if ( index < 0 ) {
         return null;
       }
@@ -167,6 +167,31 @@ public interface RowMetaInterface extends Cloneable {
    */
   public Double getNumber( Object[] dataRow, int index ) throws KettleValueException;
 
+  /**
+   * Convert the values of one field over a block of rows to the normal storage type, in a single loop. Lazily converted
+   * (binary string) integers, numbers and dates are parsed with type specialized parsers where possible. The rows
+   * themselves are left untouched, so they can be passed on lazily. The default implementation converts the values one
+   * by one.
+   *
+   * @param rows
+   *          the block of rows
+   * @param nrRows
+   *          the number of rows in the block
+   * @param index
+   *          the index of the field to convert
+   * @param values
+   *          receives the converted value of every row in the block
+   * @throws KettleValueException
+   *           in case there was a problem converting one of the values
+   */
+  public default void convertToNormalStorageType( Object[][] rows, int nrRows, int index, Object[] values )
+    throws KettleValueException {
+    ValueMetaInterface meta = getValueMeta( index );
+    for ( int i = 0; i < nrRows; i++ ) {
+      values[i] = meta.convertToNormalStorageType( rows[i][index] );
+    }
+  }
+
   /**
    * Get a Date value from a row of data. Convert data if this needed.
    *
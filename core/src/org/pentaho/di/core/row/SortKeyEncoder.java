@@ -0,0 +1,266 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.pentaho.di.core.exception.KettleValueException;
+
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * Encodes the sort key of a row into a byte array that sorts (unsigned, byte by byte) in exactly the same order as
+ * {@link RowMetaInterface#compare(Object[], Object[], int[])} would sort the rows. This way the key is converted once
+ * per row and every comparison afterwards is a simple memcmp-style comparison without type switches, null checks or
+ * case conversions.<br>
+ * <br>
+ * Every key field is encoded as a null marker followed by the value:
+ * <ul>
+ * <li>Integer and Date: 8 bytes big-endian with the sign bit flipped</li>
+ * <li>Number: the IEEE 754 bits, flipped so that they sort like {@link Double#compare(double, double)}</li>
+ * <li>Boolean: one byte</li>
+ * <li>String: the UTF-16 characters (upper cased and then lower cased for case insensitive keys) big-endian, with 0x00
+ * escaped as 0x00 0xFF and terminated by 0x00 0x00</li>
+ * </ul>
+ * Descending fields have their value bytes inverted. Nulls always sort first, like they do in ValueMetaBase.<br>
+ * <br>
+ * An encoder that doesn't fold the case writes the characters of case insensitive strings as they are. Its keys can't
+ * be used for sorting, only to check that two keys are exactly equal.<br>
+ * <br>
+ * Big numbers, binary fields, timestamps and strings that are compared with a collator are not supported, see
+ * {@link #isSupported(RowMetaInterface, int[])}. An encoder instance is not thread-safe.
+ */
+public class SortKeyEncoder {
+
+  private static final byte NULL_MARKER = 0x00;
+  private static final byte VALUE_MARKER = 0x01;
+
+  private static final Comparator<byte[]> KEY_COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+  private final RowMetaInterface rowMeta;
+  private final int[] fieldnrs;
+  private final ValueMetaInterface[] valueMetas;
+  private final boolean foldingCase;
+
+  private byte[] buffer;
+  private int length;
+
+  /**
+   * @param rowMeta
+   *          the layout of the rows to encode, including the sort direction and case sensitivity of the key fields
+   * @param fieldnrs
+   *          the indexes of the key fields
+   * @throws KettleValueException
+   *           in case one of the key fields can't be encoded
+   */
+  public SortKeyEncoder( RowMetaInterface rowMeta, int[] fieldnrs ) throws KettleValueException {
+    this( rowMeta, fieldnrs, true );
+  }
+
+  /**
+   * @param rowMeta
+   *          the layout of the rows to encode, including the sort direction and case sensitivity of the key fields
+   * @param fieldnrs
+   *          the indexes of the key fields
+   * @param foldingCase
+   *          true to fold the case of case insensitive strings, false to encode all strings exactly as they are
+   * @throws KettleValueException
+   *           in case one of the key fields can't be encoded
+   */
+  public SortKeyEncoder( RowMetaInterface rowMeta, int[] fieldnrs, boolean foldingCase ) throws KettleValueException {
+    this.rowMeta = rowMeta;
+    this.foldingCase = foldingCase;
+    this.fieldnrs = fieldnrs;
+    this.valueMetas = new ValueMetaInterface[fieldnrs.length];
+    for ( int i = 0; i < fieldnrs.length; i++ ) {
+      valueMetas[i] = rowMeta.getValueMeta( fieldnrs[i] );
+      if ( !isSupported( valueMetas[i] ) ) {
+        throw new KettleValueException( valueMetas[i].toStringMeta() + " : can't be encoded as a binary sort key" );
+      }
+    }
+    this.buffer = new byte[64];
+  }
+
+  /**
+   * @return true if all the given key fields can be encoded in a binary sort key
+   */
+  public static boolean isSupported( RowMetaInterface rowMeta, int[] fieldnrs ) {
+    for ( int fieldnr : fieldnrs ) {
+      if ( !isSupported( rowMeta.getValueMeta( fieldnr ) ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSupported( ValueMetaInterface valueMeta ) {
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_STRING:
+        return valueMeta.isCollatorDisabled();
+      case ValueMetaInterface.TYPE_INTEGER:
+      case ValueMetaInterface.TYPE_NUMBER:
+      case ValueMetaInterface.TYPE_DATE:
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Encode the key fields of the given row.
+   *
+   * @param row
+   *          the row to encode
+   * @return a new byte array holding the binary sort key
+   * @throws KettleValueException
+   *           in case of a conversion error
+   */
+  public byte[] encode( Object[] row ) throws KettleValueException {
+    return Arrays.copyOf( buffer, encodeKey( row ) );
+  }
+
+  /**
+   * Encode the key fields of the given row into the internal buffer of this encoder, without allocating a new array.
+   * The key is valid until the next call to encode or encodeKey.
+   *
+   * @param row
+   *          the row to encode
+   * @return the length of the key in the buffer returned by {@link #getBuffer()}
+   * @throws KettleValueException
+   *           in case of a conversion error
+   */
+  public int encodeKey( Object[] row ) throws KettleValueException {
+    length = 0;
+    for ( int i = 0; i < fieldnrs.length; i++ ) {
+      ValueMetaInterface valueMeta = valueMetas[i];
+      Object data = row[fieldnrs[i]];
+
+      if ( valueMeta.isNull( data ) ) {
+        ensureCapacity( 1 );
+        buffer[length++] = NULL_MARKER;
+        continue;
+      }
+      ensureCapacity( 1 );
+      buffer[length++] = VALUE_MARKER;
+
+      int start = length;
+      switch ( valueMeta.getType() ) {
+        case ValueMetaInterface.TYPE_STRING:
+          writeString( valueMeta.getString( data ), foldingCase && valueMeta.isCaseInsensitive() );
+          break;
+        case ValueMetaInterface.TYPE_INTEGER:
+          writeLong( valueMeta.getInteger( data ).longValue() ^ Long.MIN_VALUE );
+          break;
+        case ValueMetaInterface.TYPE_NUMBER:
+          long bits = Double.doubleToLongBits( valueMeta.getNumber( data ).doubleValue() );
+          writeLong( bits ^ ( ( bits >> 63 ) | Long.MIN_VALUE ) );
+          break;
+        case ValueMetaInterface.TYPE_DATE:
+          writeLong( valueMeta.getDate( data ).getTime() ^ Long.MIN_VALUE );
+          break;
+        case ValueMetaInterface.TYPE_BOOLEAN:
+          ensureCapacity( 1 );
+          buffer[length++] = valueMeta.getBoolean( data ).booleanValue() ? (byte) 1 : (byte) 0;
+          break;
+        default:
+          throw new KettleValueException( valueMeta.toStringMeta() + " : can't be encoded as a binary sort key" );
+      }
+
+      if ( valueMeta.isSortedDescending() ) {
+        for ( int b = start; b < length; b++ ) {
+          buffer[b] = (byte) ~buffer[b];
+        }
+      }
+    }
+    return length;
+  }
+
+  private void writeLong( long value ) {
+    ensureCapacity( 8 );
+    for ( int shift = 56; shift >= 0; shift -= 8 ) {
+      buffer[length++] = (byte) ( value >>> shift );
+    }
+  }
+
+  private void writeString( String string, boolean caseInsensitive ) {
+    int nrChars = string.length();
+    ensureCapacity( nrChars * 4 + 2 );
+    for ( int i = 0; i < nrChars; i++ ) {
+      char c = string.charAt( i );
+      if ( caseInsensitive ) {
+        // Same folding as String.compareToIgnoreCase()
+        //
+        c = Character.toLowerCase( Character.toUpperCase( c ) );
+      }
+      writeEscaped( (byte) ( c >>> 8 ) );
+      writeEscaped( (byte) c );
+    }
+    buffer[length++] = 0x00;
+    buffer[length++] = 0x00;
+  }
+
+  private void writeEscaped( byte b ) {
+    buffer[length++] = b;
+    if ( b == 0x00 ) {
+      buffer[length++] = (byte) 0xFF;
+    }
+  }
+
+  private void ensureCapacity( int extra ) {
+    if ( length + extra > buffer.length ) {
+      buffer = Arrays.copyOf( buffer, Math.max( buffer.length * 2, length + extra ) );
+    }
+  }
+
+  /**
+   * Compare two binary sort keys.
+   *
+   * @return a negative number, zero or a positive number if key1 is smaller, equal to or larger than key2
+   */
+  public static int compare( byte[] key1, byte[] key2 ) {
+    return KEY_COMPARATOR.compare( key1, key2 );
+  }
+
+  /**
+   * @return the comparator for binary sort keys
+   */
+  public static Comparator<byte[]> getComparator() {
+    return KEY_COMPARATOR;
+  }
+
+  /**
+   * @return the buffer holding the key encoded by the last call to {@link #encodeKey(Object[])}
+   */
+  public byte[] getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * @return the layout of the rows this encoder works on
+   */
+  public RowMetaInterface getRowMeta() {
+    return rowMeta;
+  }
+}
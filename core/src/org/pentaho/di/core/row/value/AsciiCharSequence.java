@@ -0,0 +1,98 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.pentaho.di.core.row.value;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * A reusable view on the bytes of a lazily converted (binary string) value that only holds ASCII characters. It lets
+ * the compiled formats parse integers, numbers and dates straight from the bytes, without decoding them into a String
+ * first. Not thread-safe.
+ */
+class AsciiCharSequence implements CharSequence {
+
+  private byte[] bytes;
+  private int offset;
+  private int length;
+
+  /**
+   * Point this view to the given bytes, trimmed the way {@link Const#trimToType(String, int)} would trim them.
+   *
+   * @param binary
+   *          the bytes of the value
+   * @param trimType
+   *          the trim type, ValueMetaInterface.TRIM_TYPE_*
+   * @return false if the bytes are not all ASCII characters, in which case they have to be decoded as usual
+   */
+  public boolean set( byte[] binary, int trimType ) {
+    for ( byte b : binary ) {
+      if ( b < 0 ) {
+        return false;
+      }
+    }
+
+    int start = 0;
+    int end = binary.length;
+    if ( trimType == ValueMetaInterface.TRIM_TYPE_LEFT || trimType == ValueMetaInterface.TRIM_TYPE_BOTH ) {
+      while ( start < end && Const.isSpace( (char) binary[start] ) ) {
+        start++;
+      }
+    }
+    if ( trimType == ValueMetaInterface.TRIM_TYPE_RIGHT || trimType == ValueMetaInterface.TRIM_TYPE_BOTH ) {
+      while ( end > start && Const.isSpace( (char) binary[end - 1] ) ) {
+        end--;
+      }
+    }
+    this.bytes = binary;
+    this.offset = start;
+    this.length = end - start;
+    return true;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt( int index ) {
+    if ( index < 0 || index >= length ) {
+      throw new IndexOutOfBoundsException( "index: " + index + ", length: " + length );
+    }
+    return (char) bytes[offset + index];
+  }
+
+  @Override
+  public CharSequence subSequence( int start, int end ) {
+    return toString().substring( start, end );
+  }
+
+  @Override
+  public String toString() {
+    char[] chars = new char[length];
+    for ( int i = 0; i < length; i++ ) {
+      chars[i] = (char) bytes[offset + i];
+    }
+    return new String( chars );
+  }
+}
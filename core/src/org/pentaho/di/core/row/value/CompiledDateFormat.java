@@ -0,0 +1,399 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.pentaho.di.core.row.value;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * An immutable, thread-safe version of a {@link SimpleDateFormat} for the common numeric masks like
+ * "yyyy/MM/dd HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ss" or "yyyyMMdd". It formats and parses without going through
+ * java.text and without allocating a Calendar, so it can be shared by all the threads that convert values of the same
+ * value metadata without locking.<br>
+ * <br>
+ * Only the pattern letters yyyy, MM, dd, HH, mm, ss and SSS are supported, together with literal text. Both
+ * {@link #format(Date)} and {@link #parse(String)} return null whenever they can't guarantee exactly the same result
+ * as the SimpleDateFormat this format was compiled from: values outside of the range of the masks, dates before 1600
+ * or after 9999, local times close to a daylight saving time transition and strings that don't follow the mask to the
+ * letter. The caller then falls back to the SimpleDateFormat itself, so all the lenient and exotic cases keep working
+ * as before.
+ */
+public class CompiledDateFormat {
+
+  private static final long MILLIS_PER_DAY = 86400000L;
+
+  private static final int LITERAL = 0;
+  private static final int YEAR = 1;
+  private static final int MONTH = 2;
+  private static final int DAY = 3;
+  private static final int HOUR = 4;
+  private static final int MINUTE = 5;
+  private static final int SECOND = 6;
+  private static final int MILLISECOND = 7;
+
+  private static final int[] DAYS_IN_MONTH = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+  private final SimpleDateFormat source;
+  private final boolean supported;
+  private final int[] fields;
+  private final String[] literals;
+  private final int length;
+  private final TimeZone timeZone;
+
+  private CompiledDateFormat( SimpleDateFormat source, int[] fields, String[] literals, int length,
+    TimeZone timeZone ) {
+    this.source = source;
+    this.supported = fields != null;
+    this.fields = fields;
+    this.literals = literals;
+    this.length = length;
+    this.timeZone = timeZone;
+  }
+
+  /**
+   * Compile the given date format. The format is inspected once: changing it afterwards isn't reflected in the
+   * compiled version.
+   *
+   * @param format
+   *          the date format to compile
+   * @return the compiled format, possibly one that doesn't support any fast conversion, see {@link #isSupported()}
+   */
+  public static CompiledDateFormat compile( SimpleDateFormat format ) {
+    if ( format == null || format.getClass() != SimpleDateFormat.class
+      || format.getCalendar().getClass() != GregorianCalendar.class ) {
+      return unsupported( format );
+    }
+    NumberFormat numberFormat = format.getNumberFormat();
+    if ( !( numberFormat instanceof DecimalFormat )
+      || ( (DecimalFormat) numberFormat ).getDecimalFormatSymbols().getZeroDigit() != '0' ) {
+      return unsupported( format );
+    }
+
+    String pattern = format.toPattern();
+    int[] fields = new int[pattern.length()];
+    String[] literals = new String[pattern.length()];
+    int nrFields = 0;
+    int length = 0;
+
+    StringBuilder literal = new StringBuilder();
+    int i = 0;
+    while ( i < pattern.length() ) {
+      char c = pattern.charAt( i );
+      if ( c == '\'' ) {
+        // Quoted text, two quotes are a quote
+        //
+        int end = i + 1;
+        if ( end < pattern.length() && pattern.charAt( end ) == '\'' ) {
+          literal.append( '\'' );
+          i += 2;
+          continue;
+        }
+        while ( end < pattern.length() ) {
+          if ( pattern.charAt( end ) == '\'' ) {
+            if ( end + 1 < pattern.length() && pattern.charAt( end + 1 ) == '\'' ) {
+              literal.append( '\'' );
+              end += 2;
+              continue;
+            }
+            break;
+          }
+          literal.append( pattern.charAt( end++ ) );
+        }
+        if ( end >= pattern.length() ) {
+          return unsupported( format );
+        }
+        i = end + 1;
+      } else if ( ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) ) {
+        int count = 1;
+        while ( i + count < pattern.length() && pattern.charAt( i + count ) == c ) {
+          count++;
+        }
+        int field = getField( c, count );
+        if ( field == LITERAL ) {
+          return unsupported( format );
+        }
+        if ( literal.length() > 0 ) {
+          literals[nrFields] = literal.toString();
+          fields[nrFields++] = LITERAL;
+          length += literal.length();
+          literal.setLength( 0 );
+        }
+        fields[nrFields++] = field;
+        length += count;
+        i += count;
+      } else {
+        literal.append( c );
+        i++;
+      }
+    }
+    if ( literal.length() > 0 ) {
+      literals[nrFields] = literal.toString();
+      fields[nrFields++] = LITERAL;
+      length += literal.length();
+    }
+
+    int[] compiledFields = new int[nrFields];
+    String[] compiledLiterals = new String[nrFields];
+    System.arraycopy( fields, 0, compiledFields, 0, nrFields );
+    System.arraycopy( literals, 0, compiledLiterals, 0, nrFields );
+    return new CompiledDateFormat( format, compiledFields, compiledLiterals, length, (TimeZone) format
+      .getTimeZone().clone() );
+  }
+
+  private static CompiledDateFormat unsupported( SimpleDateFormat format ) {
+    return new CompiledDateFormat( format, null, null, 0, null );
+  }
+
+  private static int getField( char letter, int count ) {
+    switch ( letter ) {
+      case 'y':
+        return count == 4 ? YEAR : LITERAL;
+      case 'M':
+        return count == 2 ? MONTH : LITERAL;
+      case 'd':
+        return count == 2 ? DAY : LITERAL;
+      case 'H':
+        return count == 2 ? HOUR : LITERAL;
+      case 'm':
+        return count == 2 ? MINUTE : LITERAL;
+      case 's':
+        return count == 2 ? SECOND : LITERAL;
+      case 'S':
+        return count == 3 ? MILLISECOND : LITERAL;
+      default:
+        return LITERAL;
+    }
+  }
+
+  private static int getWidth( int field ) {
+    switch ( field ) {
+      case YEAR:
+        return 4;
+      case MILLISECOND:
+        return 3;
+      default:
+        return 2;
+    }
+  }
+
+  /**
+   * @return true if this format can convert values without the SimpleDateFormat it was compiled from
+   */
+  public boolean isSupported() {
+    return supported;
+  }
+
+  /**
+   * @return true if this format was compiled from the given date format instance
+   */
+  public boolean isCompiledFrom( SimpleDateFormat format ) {
+    return source == format;
+  }
+
+  /**
+   * Format a date.
+   *
+   * @param date
+   *          the date to format
+   * @return the formatted date or null if the date can't be formatted without the SimpleDateFormat
+   */
+  public String format( Date date ) {
+    if ( !supported ) {
+      return null;
+    }
+    long millis = date.getTime();
+    long local = millis + timeZone.getOffset( millis );
+    long days = Math.floorDiv( local, MILLIS_PER_DAY );
+    int millisOfDay = (int) ( local - days * MILLIS_PER_DAY );
+
+    // Civil date from the number of days since 1970-01-01 in the proleptic Gregorian calendar
+    //
+    long z = days + 719468;
+    long era = Math.floorDiv( z, 146097L );
+    int dayOfEra = (int) ( z - era * 146097 );
+    int yearOfEra = ( dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096 ) / 365;
+    int dayOfYear = dayOfEra - ( 365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100 );
+    int mp = ( 5 * dayOfYear + 2 ) / 153;
+    int day = dayOfYear - ( 153 * mp + 2 ) / 5 + 1;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    long year = yearOfEra + era * 400 + ( month <= 2 ? 1 : 0 );
+    if ( year < 1600 || year > 9999 ) {
+      return null;
+    }
+
+    char[] chars = new char[length];
+    int pos = 0;
+    for ( int i = 0; i < fields.length; i++ ) {
+      int value;
+      switch ( fields[i] ) {
+        case LITERAL:
+          String literal = literals[i];
+          literal.getChars( 0, literal.length(), chars, pos );
+          pos += literal.length();
+          continue;
+        case YEAR:
+          value = (int) year;
+          break;
+        case MONTH:
+          value = month;
+          break;
+        case DAY:
+          value = day;
+          break;
+        case HOUR:
+          value = millisOfDay / 3600000;
+          break;
+        case MINUTE:
+          value = ( millisOfDay / 60000 ) % 60;
+          break;
+        case SECOND:
+          value = ( millisOfDay / 1000 ) % 60;
+          break;
+        default:
+          value = millisOfDay % 1000;
+          break;
+      }
+      int width = getWidth( fields[i] );
+      for ( int d = pos + width - 1; d >= pos; d-- ) {
+        chars[d] = (char) ( '0' + value % 10 );
+        value /= 10;
+      }
+      pos += width;
+    }
+    return new String( chars );
+  }
+
+  /**
+   * Parse a string that follows the mask to the letter.
+   *
+   * @param string
+   *          the string to parse, a String or a view on lazily converted bytes
+   * @return the date or null if the string can't be parsed without the SimpleDateFormat
+   */
+  public Date parse( CharSequence string ) {
+    if ( !supported || string.length() != length ) {
+      return null;
+    }
+    int year = 1970;
+    int month = 1;
+    int day = 1;
+    int hour = 0;
+    int minute = 0;
+    int second = 0;
+    int millisecond = 0;
+
+    int pos = 0;
+    for ( int i = 0; i < fields.length; i++ ) {
+      int field = fields[i];
+      if ( field == LITERAL ) {
+        String literal = literals[i];
+        if ( !regionMatches( string, pos, literal ) ) {
+          return null;
+        }
+        pos += literal.length();
+        continue;
+      }
+      int value = 0;
+      for ( int end = pos + getWidth( field ); pos < end; pos++ ) {
+        char c = string.charAt( pos );
+        if ( c < '0' || c > '9' ) {
+          return null;
+        }
+        value = value * 10 + ( c - '0' );
+      }
+      switch ( field ) {
+        case YEAR:
+          year = value;
+          break;
+        case MONTH:
+          month = value;
+          break;
+        case DAY:
+          day = value;
+          break;
+        case HOUR:
+          hour = value;
+          break;
+        case MINUTE:
+          minute = value;
+          break;
+        case SECOND:
+          second = value;
+          break;
+        default:
+          millisecond = value;
+          break;
+      }
+    }
+
+    // Anything out of range is left to the (non-)lenient rules of SimpleDateFormat
+    //
+    if ( year < 1600 || month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1] || hour > 23
+      || minute > 59 || second > 59 ) {
+      return null;
+    }
+    if ( month == 2 && day == 29 && !isLeapYear( year ) ) {
+      return null;
+    }
+
+    long local =
+      daysFromCivil( year, month, day ) * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L + second * 1000L
+        + millisecond;
+
+    // Only convert local times that are far enough from a time zone transition to be unambiguous
+    //
+    int offset = timeZone.getOffset( local - MILLIS_PER_DAY );
+    if ( offset != timeZone.getOffset( local + MILLIS_PER_DAY ) || offset != timeZone.getOffset( local - offset ) ) {
+      return null;
+    }
+    return new Date( local - offset );
+  }
+
+  static boolean regionMatches( CharSequence string, int offset, String part ) {
+    if ( offset < 0 || offset + part.length() > string.length() ) {
+      return false;
+    }
+    for ( int i = 0; i < part.length(); i++ ) {
+      if ( string.charAt( offset + i ) != part.charAt( i ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isLeapYear( int year ) {
+    return ( year % 4 == 0 && year % 100 != 0 ) || year % 400 == 0;
+  }
+
+  private static long daysFromCivil( int year, int month, int day ) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = y / 400;
+    int yearOfEra = y - era * 400;
+    int dayOfYear = ( 153 * ( month > 2 ? month - 3 : month + 9 ) + 2 ) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097L + dayOfEra - 719468;
+  }
+}
@@ -0,0 +1,364 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.pentaho.di.core.row.value;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+/**
+ * An immutable, thread-safe version of a {@link DecimalFormat} for plain integers and decimals: masks without
+ * exponent, percent, per mille or currency sign, like "#", "0.00", "#,##0.###" or the default Kettle number masks. It
+ * formats and parses without going through java.text, so it can be shared by all the threads that convert values of
+ * the same value metadata without locking.<br>
+ * <br>
+ * The format and parse methods return null whenever they can't guarantee exactly the same result as the DecimalFormat
+ * this format was compiled from: numbers that need rounding, negative zero, NaN and infinity, strings with grouping
+ * symbols or more than 18 digits and so on. The caller then falls back to the DecimalFormat itself.
+ */
+public class CompiledDecimalFormat {
+
+  private static final int MAX_DIGITS = 18;
+
+  /** The number of integer digits of the largest double, masks that truncate less aren't supported */
+  private static final int MAX_DOUBLE_INTEGER_DIGITS = 309;
+
+  /** The largest number of digits that can be turned into a double exactly with one division */
+  private static final int MAX_EXACT_DIGITS = 15;
+
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+    1e20, 1e21, 1e22, };
+
+  private final DecimalFormat source;
+  private final boolean supported;
+
+  private final String positivePrefix;
+  private final String positiveSuffix;
+  private final String negativePrefix;
+  private final String negativeSuffix;
+  private final char decimalSeparator;
+  private final char groupingSeparator;
+  private final int groupingSize;
+  private final int minimumIntegerDigits;
+  private final int minimumFractionDigits;
+  private final int maximumFractionDigits;
+  private final boolean decimalSeparatorAlwaysShown;
+
+  private CompiledDecimalFormat( DecimalFormat source ) {
+    this.source = source;
+
+    boolean ok = source != null;
+    DecimalFormatSymbols symbols = ok ? source.getDecimalFormatSymbols() : null;
+    if ( ok ) {
+      String pattern = source.toPattern();
+      ok = source.getMultiplier() == 1 && !source.isParseBigDecimal() && !source.isParseIntegerOnly()
+        && source.getMaximumIntegerDigits() >= MAX_DOUBLE_INTEGER_DIGITS && source.getMinimumIntegerDigits() <= MAX_DIGITS
+        && symbols.getZeroDigit() == '0' && pattern.indexOf( 'E' ) < 0 && pattern.indexOf( '\u00A4' ) < 0
+        && pattern.indexOf( '%' ) < 0 && pattern.indexOf( '\u2030' ) < 0;
+    }
+    this.supported = ok;
+
+    if ( ok ) {
+      positivePrefix = source.getPositivePrefix();
+      positiveSuffix = source.getPositiveSuffix();
+      negativePrefix = source.getNegativePrefix();
+      negativeSuffix = source.getNegativeSuffix();
+      decimalSeparator = symbols.getDecimalSeparator();
+      groupingSeparator = symbols.getGroupingSeparator();
+      groupingSize = source.isGroupingUsed() ? source.getGroupingSize() : 0;
+      minimumIntegerDigits = source.getMinimumIntegerDigits();
+      minimumFractionDigits = source.getMinimumFractionDigits();
+      maximumFractionDigits = source.getMaximumFractionDigits();
+      decimalSeparatorAlwaysShown = source.isDecimalSeparatorAlwaysShown();
+    } else {
+      positivePrefix = null;
+      positiveSuffix = null;
+      negativePrefix = null;
+      negativeSuffix = null;
+      decimalSeparator = 0;
+      groupingSeparator = 0;
+      groupingSize = 0;
+      minimumIntegerDigits = 0;
+      minimumFractionDigits = 0;
+      maximumFractionDigits = 0;
+      decimalSeparatorAlwaysShown = false;
+    }
+  }
+
+  /**
+   * Compile the given decimal format. The format is inspected once: changing it afterwards isn't reflected in the
+   * compiled version.
+   *
+   * @param format
+   *          the decimal format to compile
+   * @return the compiled format, possibly one that doesn't support any fast conversion, see {@link #isSupported()}
+   */
+  public static CompiledDecimalFormat compile( DecimalFormat format ) {
+    return new CompiledDecimalFormat( format );
+  }
+
+  /**
+   * @return true if this format can convert values without the DecimalFormat it was compiled from
+   */
+  public boolean isSupported() {
+    return supported;
+  }
+
+  /**
+   * @return true if this format was compiled from the given decimal format instance
+   */
+  public boolean isCompiledFrom( DecimalFormat format ) {
+    return source == format;
+  }
+
+  /**
+   * Format an integer.
+   *
+   * @return the formatted number or null if it can't be formatted without the DecimalFormat
+   */
+  public String format( long number ) {
+    if ( !supported || number == Long.MIN_VALUE ) {
+      return null;
+    }
+    boolean negative = number < 0;
+    return format( negative, Long.toString( negative ? -number : number ), 0, "" );
+  }
+
+  /**
+   * Format a number that doesn't need rounding with the maximum number of fraction digits of the mask.
+   *
+   * @return the formatted number or null if it can't be formatted without the DecimalFormat
+   */
+  public String format( double number ) {
+    if ( !supported || Double.isNaN( number ) || Double.isInfinite( number ) ) {
+      return null;
+    }
+    if ( number == 0.0 && 1.0 / number < 0.0 ) {
+      // Negative zero
+      return null;
+    }
+    boolean negative = number < 0.0;
+
+    // The shortest digits that represent the double, the same ones DecimalFormat starts from
+    //
+    String string = Double.toString( negative ? -number : number );
+    int exponentIndex = string.indexOf( 'E' );
+    int exponent = exponentIndex < 0 ? 0 : Integer.parseInt( string.substring( exponentIndex + 1 ) );
+    String mantissa = exponentIndex < 0 ? string : string.substring( 0, exponentIndex );
+    int dot = mantissa.indexOf( '.' );
+    String digits = mantissa.substring( 0, dot ) + mantissa.substring( dot + 1 );
+    int decimalAt = dot + exponent;
+
+    // Strip leading and trailing zeros
+    //
+    int start = 0;
+    while ( start < digits.length() - 1 && digits.charAt( start ) == '0' ) {
+      start++;
+      decimalAt--;
+    }
+    int end = digits.length();
+    while ( end > start + 1 && digits.charAt( end - 1 ) == '0' ) {
+      end--;
+    }
+    digits = digits.substring( start, end );
+    if ( "0".equals( digits ) ) {
+      return format( negative, "0", 0, "" );
+    }
+
+    if ( digits.length() > MAX_EXACT_DIGITS ) {
+      // Leave the long, not so obviously shortest, representations to DecimalFormat
+      //
+      return null;
+    }
+    int nrFractionDigits = Math.max( 0, digits.length() - decimalAt );
+    if ( nrFractionDigits > maximumFractionDigits ) {
+      // Rounding is needed, that is left to DecimalFormat
+      return null;
+    }
+
+    String integerDigits;
+    String fractionDigits;
+    if ( decimalAt <= 0 ) {
+      integerDigits = "0";
+      StringBuilder fraction = new StringBuilder( nrFractionDigits );
+      for ( int i = decimalAt; i < 0; i++ ) {
+        fraction.append( '0' );
+      }
+      fractionDigits = fraction.append( digits ).toString();
+    } else if ( decimalAt >= digits.length() ) {
+      StringBuilder integer = new StringBuilder( decimalAt ).append( digits );
+      while ( integer.length() < decimalAt ) {
+        integer.append( '0' );
+      }
+      integerDigits = integer.toString();
+      fractionDigits = "";
+    } else {
+      integerDigits = digits.substring( 0, decimalAt );
+      fractionDigits = digits.substring( decimalAt );
+    }
+    return format( negative, integerDigits, 0, fractionDigits );
+  }
+
+  private String format( boolean negative, String integerDigits, int integerStart, String fractionDigits ) {
+    StringBuilder result = new StringBuilder( 32 );
+    result.append( negative ? negativePrefix : positivePrefix );
+
+    // Integer part, padded to the minimum number of digits, an integer part of 0 is only shown when needed
+    //
+    boolean zero = integerDigits.length() - integerStart == 1 && integerDigits.charAt( integerStart ) == '0';
+    int nrDigits = zero ? 0 : integerDigits.length() - integerStart;
+    int nrIntegerDigits = Math.max( minimumIntegerDigits, nrDigits );
+    int sizeBeforeInteger = result.length();
+    for ( int i = nrIntegerDigits - 1; i >= 0; i-- ) {
+      result.append( i < nrDigits ? integerDigits.charAt( integerDigits.length() - 1 - i ) : '0' );
+      if ( groupingSize > 0 && i > 0 && i % groupingSize == 0 ) {
+        result.append( groupingSeparator );
+      }
+    }
+
+    // Fraction part, padded to the minimum number of fraction digits
+    //
+    int nrFractionDigits = Math.max( minimumFractionDigits, fractionDigits.length() );
+    boolean fractionPresent = nrFractionDigits > 0;
+    if ( !fractionPresent && result.length() == sizeBeforeInteger ) {
+      result.append( '0' );
+    }
+    if ( fractionPresent || decimalSeparatorAlwaysShown ) {
+      result.append( decimalSeparator );
+    }
+    for ( int i = 0; i < nrFractionDigits; i++ ) {
+      result.append( i < fractionDigits.length() ? fractionDigits.charAt( i ) : '0' );
+    }
+
+    result.append( negative ? negativeSuffix : positiveSuffix );
+    return result.toString();
+  }
+
+  /**
+   * Parse a plain integer: an optional prefix followed by up to 18 digits.
+   *
+   * @return the integer or null if the string can't be parsed without the DecimalFormat
+   */
+  public Long parseInteger( CharSequence string ) {
+    int sign = getSign( string );
+    if ( sign == 0 ) {
+      return null;
+    }
+    boolean negative = sign < 0;
+    int bodyStart = negative ? negativePrefix.length() : positivePrefix.length();
+    int bodyEnd = string.length() - ( negative ? negativeSuffix.length() : positiveSuffix.length() );
+    int nrDigits = bodyEnd - bodyStart;
+    if ( nrDigits < 1 || nrDigits > MAX_DIGITS ) {
+      return null;
+    }
+    long value = 0;
+    for ( int i = bodyStart; i < bodyEnd; i++ ) {
+      char c = string.charAt( i );
+      if ( c < '0' || c > '9' ) {
+        return null;
+      }
+      value = value * 10 + ( c - '0' );
+    }
+    if ( negative && value == 0 ) {
+      // DecimalFormat parses this as negative zero
+      return null;
+    }
+    return Long.valueOf( negative ? -value : value );
+  }
+
+  /**
+   * Parse a plain decimal: an optional prefix followed by digits, optionally followed by the decimal separator and more
+   * digits, 18 digits at most.
+   *
+   * @return the number or null if the string can't be parsed without the DecimalFormat
+   */
+  public Double parseNumber( CharSequence string ) {
+    int sign = getSign( string );
+    if ( sign == 0 ) {
+      return null;
+    }
+    boolean negative = sign < 0;
+    int bodyStart = negative ? negativePrefix.length() : positivePrefix.length();
+    int bodyEnd = string.length() - ( negative ? negativeSuffix.length() : positiveSuffix.length() );
+
+    long mantissa = 0;
+    int nrDigits = 0;
+    int nrIntegerDigits = -1;
+    for ( int i = bodyStart; i < bodyEnd; i++ ) {
+      char c = string.charAt( i );
+      if ( c >= '0' && c <= '9' ) {
+        if ( ++nrDigits > MAX_DIGITS ) {
+          return null;
+        }
+        mantissa = mantissa * 10 + ( c - '0' );
+      } else if ( c == decimalSeparator && nrIntegerDigits < 0 ) {
+        nrIntegerDigits = nrDigits;
+      } else {
+        return null;
+      }
+    }
+    if ( nrIntegerDigits < 0 ) {
+      nrIntegerDigits = nrDigits;
+    }
+    int nrFractionDigits = nrDigits - nrIntegerDigits;
+    if ( nrIntegerDigits == 0 || string.charAt( bodyEnd - 1 ) == decimalSeparator ) {
+      return null;
+    }
+
+    double value;
+    if ( nrDigits <= MAX_EXACT_DIGITS ) {
+      // Both values are exact doubles, so the division is rounded correctly
+      //
+      value = mantissa / POWERS_OF_TEN[nrFractionDigits];
+    } else {
+      value =
+        Double.parseDouble( string.subSequence( bodyStart, bodyEnd ).toString().replace( decimalSeparator, '.' ) );
+    }
+    return Double.valueOf( negative ? -value : value );
+  }
+
+  /**
+   * @return 1 for a positive number, -1 for a negative one or 0 if the prefix and suffix don't tell
+   */
+  private int getSign( CharSequence string ) {
+    if ( !supported ) {
+      return 0;
+    }
+    boolean positive = matches( string, positivePrefix, positiveSuffix );
+    boolean negative = matches( string, negativePrefix, negativeSuffix );
+    if ( positive && negative ) {
+      // Like DecimalFormat, the longest prefix wins
+      //
+      if ( negativePrefix.length() == positivePrefix.length() ) {
+        return 0;
+      }
+      return negativePrefix.length() > positivePrefix.length() ? -1 : 1;
+    }
+    return positive ? 1 : ( negative ? -1 : 0 );
+  }
+
+  private static boolean matches( CharSequence string, String prefix, String suffix ) {
+    return string.length() >= prefix.length() + suffix.length()
+      && CompiledDateFormat.regionMatches( string, 0, prefix )
+      && CompiledDateFormat.regionMatches( string, string.length() - suffix.length(), suffix );
+  }
+}
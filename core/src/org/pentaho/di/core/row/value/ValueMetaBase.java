@@ -132,6 +132,12 @@ public class ValueMetaBase implements ValueMetaInterface {
   protected DecimalFormat decimalFormat;
   protected boolean decimalFormatChanged;
 
+  /** The lock-free version of the date format, for the masks that support it */
+  private volatile CompiledDateFormat compiledDateFormat;
+
+  /** The lock-free version of the decimal format, for the masks that support it */
+  private volatile CompiledDecimalFormat compiledDecimalFormat;
+
   protected ValueMetaInterface storageMetadata;
   protected boolean identicalFormat;
 
@@ -295,6 +301,8 @@ public class ValueMetaBase implements ValueMetaInterface {
       ValueMetaBase valueMeta = (ValueMetaBase) super.clone();
       valueMeta.dateFormat = null;
       valueMeta.decimalFormat = null;
+      valueMeta.compiledDateFormat = null;
+      valueMeta.compiledDecimalFormat = null;
       if ( dateFormatLocale != null ) {
         valueMeta.dateFormatLocale = (Locale) dateFormatLocale.clone();
       }
@@ -748,24 +756,50 @@ public class ValueMetaBase implements ValueMetaInterface {
 
   // DATE + STRING
 
-  protected synchronized String convertDateToString( Date date ) {
+  protected String convertDateToString( Date date ) {
     if ( date == null ) {
       return null;
     }
 
-    return getDateFormat().format( date );
+    // Most masks can be formatted without locking, the rest goes through the SimpleDateFormat
+    //
+    CompiledDateFormat compiled = getCompiledDateFormat();
+    if ( compiled != null ) {
+      String string = compiled.format( date );
+      if ( string != null ) {
+        return string;
+      }
+    }
+    synchronized ( this ) {
+      return getDateFormat().format( date );
+    }
   }
 
   protected static SimpleDateFormat compatibleDateFormat = new SimpleDateFormat( "yyyy/MM/dd HH:mm:ss.SSS" );
 
-  protected synchronized String convertDateToCompatibleString( Date date ) {
+  private static volatile CompiledDateFormat compiledCompatibleDateFormat = CompiledDateFormat
+      .compile( compatibleDateFormat );
+
+  protected String convertDateToCompatibleString( Date date ) {
     if ( date == null ) {
       return null;
     }
-    return compatibleDateFormat.format( date );
+    SimpleDateFormat format = compatibleDateFormat;
+    CompiledDateFormat compiled = compiledCompatibleDateFormat;
+    if ( !compiled.isCompiledFrom( format ) ) {
+      compiled = CompiledDateFormat.compile( format );
+      compiledCompatibleDateFormat = compiled;
+    }
+    String string = compiled.format( date );
+    if ( string != null ) {
+      return string;
+    }
+    synchronized ( format ) {
+      return format.format( date );
+    }
   }
 
-  protected synchronized Date convertStringToDate( String string ) throws KettleValueException {
+  protected Date convertStringToDate( String string ) throws KettleValueException {
     string = Const.trimToType( string, getTrimType() ); // see if trimming needs
     // to be performed before
     // conversion
@@ -774,6 +808,19 @@ public class ValueMetaBase implements ValueMetaInterface {
       return null;
     }
 
+    CompiledDateFormat compiled = getCompiledDateFormat();
+    if ( compiled != null ) {
+      Date date = compiled.parse( string );
+      if ( date != null ) {
+        return date;
+      }
+    }
+    synchronized ( this ) {
+      return parseDate( string );
+    }
+  }
+
+  private Date parseDate( String string ) throws KettleValueException {
     try {
       ParsePosition pp = new ParsePosition( 0 );
       Date result = getDateFormat().parse( string, pp );
@@ -822,7 +869,7 @@ public class ValueMetaBase implements ValueMetaInterface {
     return new Date( number.longValue() );
   }
 
-  protected synchronized String convertNumberToString( Double number ) throws KettleValueException {
+  protected String convertNumberToString( Double number ) throws KettleValueException {
     if ( number == null ) {
       if ( !outputPaddingEnabled || length < 1 ) {
         return null;
@@ -840,10 +887,19 @@ public class ValueMetaBase implements ValueMetaInterface {
       }
     }
 
-    try {
-      return getDecimalFormat( false ).format( number );
-    } catch ( Exception e ) {
-      throw new KettleValueException( toString() + " : couldn't convert Number to String ", e );
+    CompiledDecimalFormat compiled = getCompiledDecimalFormat();
+    if ( compiled != null ) {
+      String string = compiled.format( number.doubleValue() );
+      if ( string != null ) {
+        return string;
+      }
+    }
+    synchronized ( this ) {
+      try {
+        return getDecimalFormat( false ).format( number );
+      } catch ( Exception e ) {
+        throw new KettleValueException( toString() + " : couldn't convert Number to String ", e );
+      }
     }
   }
 
@@ -854,7 +910,7 @@ public class ValueMetaBase implements ValueMetaInterface {
     return Double.toString( number );
   }
 
-  protected synchronized Double convertStringToNumber( String string ) throws KettleValueException {
+  protected Double convertStringToNumber( String string ) throws KettleValueException {
     string = Const.trimToType( string, getTrimType() ); // see if trimming needs
     // to be performed before
     // conversion
@@ -863,6 +919,19 @@ public class ValueMetaBase implements ValueMetaInterface {
       return null;
     }
 
+    CompiledDecimalFormat compiled = getCompiledDecimalFormat();
+    if ( compiled != null ) {
+      Double number = compiled.parseNumber( string );
+      if ( number != null ) {
+        return number;
+      }
+    }
+    synchronized ( this ) {
+      return parseNumber( string );
+    }
+  }
+
+  private Double parseNumber( String string ) throws KettleValueException {
     try {
       Number number;
       if ( lenientStringToNumber ) {
@@ -1055,7 +1124,55 @@ public class ValueMetaBase implements ValueMetaInterface {
     return decimalFormat;
   }
 
-  protected synchronized String convertIntegerToString( Long integer ) throws KettleValueException {
+  /**
+   * Get the lock-free version of the date format of this value metadata. It's compiled again whenever the date format
+   * changes.
+   *
+   * @return the compiled date format or null if the date format can't be compiled at all
+   */
+  protected CompiledDateFormat getCompiledDateFormat() {
+    if ( conversionMetadata != null ) {
+      if ( conversionMetadata instanceof ValueMetaBase ) {
+        return ( (ValueMetaBase) conversionMetadata ).getCompiledDateFormat();
+      }
+      return null;
+    }
+
+    CompiledDateFormat compiled = compiledDateFormat;
+    if ( compiled == null || dateFormatChanged || !compiled.isCompiledFrom( dateFormat ) ) {
+      synchronized ( this ) {
+        compiled = CompiledDateFormat.compile( getDateFormat() );
+        compiledDateFormat = compiled;
+      }
+    }
+    return compiled.isSupported() ? compiled : null;
+  }
+
+  /**
+   * Get the lock-free version of the decimal format of this value metadata. It's compiled again whenever the decimal
+   * format changes.
+   *
+   * @return the compiled decimal format or null if the decimal format can't be compiled at all
+   */
+  protected CompiledDecimalFormat getCompiledDecimalFormat() {
+    if ( conversionMetadata != null ) {
+      if ( conversionMetadata instanceof ValueMetaBase ) {
+        return ( (ValueMetaBase) conversionMetadata ).getCompiledDecimalFormat();
+      }
+      return null;
+    }
+
+    CompiledDecimalFormat compiled = compiledDecimalFormat;
+    if ( compiled == null || decimalFormatChanged || !compiled.isCompiledFrom( decimalFormat ) ) {
+      synchronized ( this ) {
+        compiled = CompiledDecimalFormat.compile( getDecimalFormat( false ) );
+        compiledDecimalFormat = compiled;
+      }
+    }
+    return compiled.isSupported() ? compiled : null;
+  }
+
+  protected String convertIntegerToString( Long integer ) throws KettleValueException {
     if ( integer == null ) {
       if ( !outputPaddingEnabled || length < 1 ) {
         return null;
@@ -1073,10 +1190,19 @@ public class ValueMetaBase implements ValueMetaInterface {
       }
     }
 
-    try {
-      return getDecimalFormat( false ).format( integer );
-    } catch ( Exception e ) {
-      throw new KettleValueException( toString() + " : couldn't convert Long to String ", e );
+    CompiledDecimalFormat compiled = getCompiledDecimalFormat();
+    if ( compiled != null ) {
+      String string = compiled.format( integer.longValue() );
+      if ( string != null ) {
+        return string;
+      }
+    }
+    synchronized ( this ) {
+      try {
+        return getDecimalFormat( false ).format( integer );
+      } catch ( Exception e ) {
+        throw new KettleValueException( toString() + " : couldn't convert Long to String ", e );
+      }
     }
   }
 
@@ -1087,7 +1213,7 @@ public class ValueMetaBase implements ValueMetaInterface {
     return Long.toString( integer );
   }
 
-  protected synchronized Long convertStringToInteger( String string ) throws KettleValueException {
+  protected Long convertStringToInteger( String string ) throws KettleValueException {
     string = Const.trimToType( string, getTrimType() ); // see if trimming needs
     // to be performed before
     // conversion
@@ -1096,6 +1222,19 @@ public class ValueMetaBase implements ValueMetaInterface {
       return null;
     }
 
+    CompiledDecimalFormat compiled = getCompiledDecimalFormat();
+    if ( compiled != null ) {
+      Long integer = compiled.parseInteger( string );
+      if ( integer != null ) {
+        return integer;
+      }
+    }
+    synchronized ( this ) {
+      return parseInteger( string );
+    }
+  }
+
+  private Long parseInteger( String string ) throws KettleValueException {
     try {
       Number number;
       if ( lenientStringToNumber ) {
@@ -1371,6 +1510,87 @@ public class ValueMetaBase implements ValueMetaInterface {
     return convertData( storageMetadata, string );
   }
 
+  /**
+   * Convert a block of lazily converted values (binary strings) to the native data type, in place. The result is the
+   * same as calling {@link #convertBinaryStringToNativeType(byte[])} for every value, but integers, numbers and dates
+   * that only hold ASCII characters are parsed straight from the bytes with the compiled formats of the storage
+   * metadata, without decoding them into a String first. Everything else is converted one value at a time.
+   *
+   * @param values
+   *          the binary strings to convert, replaced by their native values
+   * @param nrValues
+   *          the number of values to convert
+   * @throws KettleValueException
+   *           in case one of the values can't be converted
+   */
+  public void convertBinaryStringsToNativeType( Object[] values, int nrValues ) throws KettleValueException {
+    CompiledDecimalFormat compiledDecimalFormat = null;
+    CompiledDateFormat compiledDateFormat = null;
+    int trimType = TRIM_TYPE_NONE;
+
+    if ( storageMetadata instanceof ValueMetaBase && storageMetadata.getType() == TYPE_STRING
+      && storageMetadata.isStorageNormal()
+      && isAsciiCompatible( identicalFormat ? getStringEncoding() : storageMetadata.getStringEncoding() ) ) {
+      ValueMetaBase stringMeta = (ValueMetaBase) storageMetadata;
+      switch ( getType() ) {
+        case TYPE_INTEGER:
+        case TYPE_NUMBER:
+          compiledDecimalFormat = stringMeta.getCompiledDecimalFormat();
+          break;
+        case TYPE_DATE:
+          compiledDateFormat = stringMeta.getCompiledDateFormat();
+          break;
+        default:
+          break;
+      }
+      trimType = stringMeta.getTrimType();
+    }
+
+    AsciiCharSequence chars = new AsciiCharSequence();
+    for ( int i = 0; i < nrValues; i++ ) {
+      byte[] binary = (byte[]) values[i];
+      if ( binary == null ) {
+        continue;
+      }
+      Object value = null;
+      if ( ( compiledDecimalFormat != null || compiledDateFormat != null ) && chars.set( binary, trimType ) ) {
+        if ( chars.length() == 0 ) {
+          numberOfBinaryStringConversions++;
+          values[i] = null;
+          continue;
+        }
+        if ( compiledDateFormat != null ) {
+          value = compiledDateFormat.parse( chars );
+        } else if ( getType() == TYPE_INTEGER ) {
+          value = compiledDecimalFormat.parseInteger( chars );
+        } else {
+          value = compiledDecimalFormat.parseNumber( chars );
+        }
+      }
+      if ( value != null ) {
+        numberOfBinaryStringConversions++;
+        values[i] = value;
+      } else {
+        values[i] = convertBinaryStringToNativeType( binary );
+      }
+    }
+  }
+
+  /**
+   * @return true if the ASCII characters are encoded as single bytes with the same value in the given encoding
+   */
+  private static boolean isAsciiCompatible( String encoding ) {
+    Charset charset;
+    try {
+      charset = Utils.isEmpty( encoding ) ? Charset.defaultCharset() : Charset.forName( encoding );
+    } catch ( Exception e ) {
+      return false;
+    }
+    String name = charset.name();
+    return "UTF-8".equals( name ) || "US-ASCII".equals( name ) || "ISO-8859-1".equals( name )
+      || "ISO-8859-15".equals( name ) || "windows-1252".equals( name );
+  }
+
   @Override
   public Object convertNormalStorageTypeToBinaryString( Object object ) throws KettleValueException {
     if ( object == null ) {
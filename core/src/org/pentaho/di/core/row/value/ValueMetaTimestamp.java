@@ -618,6 +618,14 @@ public class ValueMetaTimestamp extends ValueMetaDate {
     }
   }
 
+  /**
+   * Timestamps keep their nanoseconds in a {@link SimpleTimestampFormat}, which can't be compiled.
+   */
+  @Override
+  protected CompiledDateFormat getCompiledDateFormat() {
+    return null;
+  }
+
   @Override
   public synchronized SimpleDateFormat getDateFormat() {
     if ( conversionMetadata != null ) {
@@ -0,0 +1,177 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.xml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.vfs2.FileContent;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.w3c.dom.Document;
+
+/**
+ * Loads the XML files of transformations and jobs, optionally with the streaming loader and a cache of parsed
+ * documents. Carte, Mapping, Transformation Executor and friends load the same files over and over again: with the
+ * cache a file is only parsed again when its modification time or its size changed.<br>
+ * <br>
+ * The cache is enabled by setting {@link Const#KETTLE_XML_METADATA_CACHE_SIZE} to the maximum number of documents to
+ * keep. Cached documents are always read with the {@link XMLStreamDocumentLoader} and every caller gets its own copy
+ * so the callers can't influence each other. The streaming loader can also be used without the cache by setting
+ * {@link Const#KETTLE_XML_STREAMING_LOADER} to Y.
+ */
+public class XMLDocumentCache {
+
+  private static XMLDocumentCache instance;
+
+  private final LinkedHashMap<String, CachedDocument> documents;
+
+  private int maxSize;
+
+  /** True once a document was cached, so that a disabled cache doesn't have to lock to see if it's empty */
+  private volatile boolean holdingDocuments;
+
+  private XMLDocumentCache() {
+    documents = new LinkedHashMap<String, CachedDocument>( 16, 0.75f, true ) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry( Map.Entry<String, CachedDocument> eldest ) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  public static synchronized XMLDocumentCache getInstance() {
+    if ( instance == null ) {
+      instance = new XMLDocumentCache();
+    }
+    return instance;
+  }
+
+  /**
+   * Load the XML document in the given file.
+   *
+   * @param fileObject
+   *          the file to load
+   * @return the document, which the caller is free to modify
+   * @throws KettleXMLException
+   *           in case the file can't be read or parsed
+   */
+  public Document loadXMLFile( FileObject fileObject ) throws KettleXMLException {
+    int cacheSize = Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_XML_METADATA_CACHE_SIZE ), 0 );
+    if ( cacheSize <= 0 ) {
+      // Stay clear of the lock: only forget the documents cached before the cache was disabled
+      //
+      if ( holdingDocuments ) {
+        clear();
+      }
+      if ( isStreamingLoaderEnabled() ) {
+        return loadStreaming( fileObject );
+      }
+      return XMLHandler.loadXMLFile( fileObject );
+    }
+
+    String key = fileObject.getName().getURI();
+    long lastModified;
+    long size;
+    try {
+      FileContent content = fileObject.getContent();
+      lastModified = content.getLastModifiedTime();
+      size = content.getSize();
+    } catch ( FileSystemException e ) {
+      // No way to tell if the file changed, so don't cache it
+      //
+      return loadStreaming( fileObject );
+    }
+
+    CachedDocument cached;
+    synchronized ( documents ) {
+      maxSize = cacheSize;
+      cached = documents.get( key );
+    }
+    if ( cached == null || cached.lastModified != lastModified || cached.size != size ) {
+      cached = new CachedDocument( loadStreaming( fileObject ), lastModified, size );
+      synchronized ( documents ) {
+        documents.put( key, cached );
+        holdingDocuments = true;
+      }
+    }
+    return cached.copyDocument();
+  }
+
+  /**
+   * Forget all the cached documents.
+   */
+  public void clear() {
+    synchronized ( documents ) {
+      documents.clear();
+      holdingDocuments = false;
+    }
+  }
+
+  /**
+   * @return the number of cached documents
+   */
+  public int size() {
+    synchronized ( documents ) {
+      return documents.size();
+    }
+  }
+
+  private static boolean isStreamingLoaderEnabled() {
+    return "Y".equalsIgnoreCase( EnvUtil.getSystemProperty( Const.KETTLE_XML_STREAMING_LOADER, "N" ) );
+  }
+
+  private static Document loadStreaming( FileObject fileObject ) throws KettleXMLException {
+    try {
+      return XMLStreamDocumentLoader.loadXMLFile( KettleVFS.getInputStream( fileObject ) );
+    } catch ( FileSystemException e ) {
+      throw new KettleXMLException( "Unable to read file [" + fileObject.toString() + "]", e );
+    }
+  }
+
+  private static class CachedDocument {
+    private final Document document;
+    private final long lastModified;
+    private final long size;
+
+    private CachedDocument( Document document, long lastModified, long size ) {
+      this.document = document;
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+
+    private Document copyDocument() {
+      // Cloning only reads the fully built document, but don't let two threads walk the same node lists at once
+      //
+      synchronized ( document ) {
+        return (Document) document.cloneNode( true );
+      }
+    }
+  }
+}
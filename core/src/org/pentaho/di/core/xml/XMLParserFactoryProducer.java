@@ -29,6 +29,7 @@ import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
 
 public class XMLParserFactoryProducer {
 
@@ -68,4 +69,19 @@ public class XMLParserFactoryProducer {
 
     return factory;
   }
+
+  /**
+   * Creates an instance of {@link XMLInputFactory} class that doesn't process DTDs or external entities, to prevent
+   * the same XXE attacks. Entity and character references are replaced and adjacent text is coalesced.
+   */
+  public static XMLInputFactory createSecureXMLInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty( XMLInputFactory.SUPPORT_DTD, false );
+    factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false );
+    factory.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE, false );
+    factory.setProperty( XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true );
+    factory.setProperty( XMLInputFactory.IS_COALESCING, true );
+
+    return factory;
+  }
 }
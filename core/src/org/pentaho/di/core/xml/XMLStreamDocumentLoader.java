@@ -0,0 +1,178 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Loads an XML document with a streaming (StAX) parser instead of a DOM parser. The result is a regular DOM document
+ * that can be handed to all the existing loadXML() methods, but it is built in a single pass and it is leaner:
+ * <ul>
+ * <li>the whitespace that only indents child elements is left out, which roughly halves the number of child nodes
+ * that {@link XMLHandler#getTagValue(Node, String)} and {@link XMLHandler#getSubNodeByNr(Node, String, int)} have to
+ * scan</li>
+ * <li>comments and processing instructions are left out</li>
+ * <li>adjacent text and CDATA sections end up in a single text node</li>
+ * <li>all nodes are created right away, there is no deferred node expansion. Reading the document doesn't modify it,
+ * so it can be cloned safely by several threads, see {@link XMLDocumentCache}</li>
+ * </ul>
+ * The text of an element without child elements is always kept, even if it is only whitespace (a tab as a field
+ * separator for example). DTDs and external entities are not supported.
+ */
+public class XMLStreamDocumentLoader {
+
+  private XMLStreamDocumentLoader() {
+  }
+
+  /**
+   * Read an XML document from the given input stream. The stream is closed afterwards.
+   *
+   * @param inputStream
+   *          the stream to read the document from
+   * @return the document
+   * @throws KettleXMLException
+   *           in case the document can't be read or isn't well-formed
+   */
+  public static Document loadXMLFile( InputStream inputStream ) throws KettleXMLException {
+    XMLStreamReader reader = null;
+    try {
+      DocumentBuilder documentBuilder = XMLParserFactoryProducer.createSecureDocBuilderFactory().newDocumentBuilder();
+      Document document = documentBuilder.newDocument();
+      document.setStrictErrorChecking( false );
+
+      reader = XMLParserFactoryProducer.createSecureXMLInputFactory().createXMLStreamReader( inputStream );
+
+      Node current = document;
+      StringBuilder text = new StringBuilder();
+
+      // Remembers per depth whether the current element has child elements
+      //
+      BitSet hasChildElements = new BitSet();
+      int depth = 0;
+
+      while ( reader.hasNext() ) {
+        switch ( reader.next() ) {
+          case XMLStreamConstants.START_ELEMENT:
+            if ( depth > 0 ) {
+              hasChildElements.set( depth );
+              appendText( document, current, text, true );
+            }
+            Element element = document.createElement( getName( reader.getPrefix(), reader.getLocalName() ) );
+            for ( int i = 0; i < reader.getAttributeCount(); i++ ) {
+              element.setAttribute( getName( reader.getAttributePrefix( i ), reader.getAttributeLocalName( i ) ),
+                reader.getAttributeValue( i ) );
+            }
+            current.appendChild( element );
+            current = element;
+            depth++;
+            hasChildElements.clear( depth );
+            break;
+
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            if ( depth > 0 ) {
+              text.append( reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength() );
+            }
+            break;
+
+          case XMLStreamConstants.END_ELEMENT:
+            appendText( document, current, text, hasChildElements.get( depth ) );
+            current = current.getParentNode();
+            depth--;
+            break;
+
+          default:
+            // Comments, processing instructions, the DTD, ... are ignored
+            //
+            break;
+        }
+      }
+
+      return document;
+    } catch ( Exception e ) {
+      throw new KettleXMLException( "Error reading information from input stream", e );
+    } finally {
+      closeQuietly( reader, inputStream );
+    }
+  }
+
+  /**
+   * Append the collected text to the given node. Whitespace between child elements is dropped.
+   */
+  private static void appendText( Document document, Node node, StringBuilder text, boolean elementContent ) {
+    if ( text.length() == 0 ) {
+      return;
+    }
+    if ( !elementContent || !isWhitespace( text ) ) {
+      node.appendChild( document.createTextNode( text.toString() ) );
+    }
+    text.setLength( 0 );
+  }
+
+  private static boolean isWhitespace( CharSequence text ) {
+    for ( int i = 0; i < text.length(); i++ ) {
+      char c = text.charAt( i );
+      if ( c != ' ' && c != '\t' && c != '\n' && c != '\r' ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String getName( String prefix, String localName ) {
+    if ( prefix == null || prefix.length() == 0 ) {
+      return localName;
+    }
+    return prefix + ":" + localName;
+  }
+
+  private static void closeQuietly( XMLStreamReader reader, InputStream inputStream ) {
+    if ( reader != null ) {
+      try {
+        reader.close();
+      } catch ( XMLStreamException e ) {
+        // Ignore, we already have the document or an error
+      }
+    }
+    if ( inputStream != null ) {
+      try {
+        inputStream.close();
+      } catch ( IOException e ) {
+        // Ignore, we already have the document or an error
+      }
+    }
+  }
+}
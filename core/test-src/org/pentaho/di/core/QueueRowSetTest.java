@@ -23,6 +23,7 @@ package org.pentaho.di.core;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 import org.pentaho.di.core.row.RowMeta;
 
 import java.util.concurrent.TimeUnit;
@@ -45,6 +46,16 @@ public class QueueRowSetTest {
     assertSame( row, rowSet.getRow() );
   }
 
+  @Test
+  public void testPutRowNotifiesListener() throws Exception {
+    RowSetListener listener = Mockito.mock( RowSetListener.class );
+    rowSet.setRowSetListener( listener );
+    rowSet.putRow( new RowMeta(), row );
+    Mockito.verify( listener ).rowAdded( rowSet );
+    rowSet.setDone();
+    Mockito.verify( listener ).done( rowSet );
+  }
+
   @Test
   public void testPutRowWait() throws Exception {
     rowSet.putRowWait( new RowMeta(), row, 1, TimeUnit.SECONDS );
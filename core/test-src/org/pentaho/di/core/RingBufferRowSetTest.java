@@ -0,0 +1,150 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+public class RingBufferRowSetTest {
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "ROWNR" ) );
+    return rowMeta;
+  }
+
+  @Test
+  public void testBasicCreation() {
+    RowSet set = new RingBufferRowSet( 10 );
+
+    assertFalse( set.isDone() );
+    assertEquals( 0, set.size() );
+    assertNull( set.getRowImmediate() );
+  }
+
+  @Test
+  public void testFifoAndCapacity() {
+    RowSet set = new RingBufferRowSet( 3 );
+    RowMetaInterface rowMeta = createRowMeta();
+
+    Object[] r1 = new Object[] { 1L };
+    Object[] r2 = new Object[] { 2L };
+    Object[] r3 = new Object[] { 3L };
+    Object[] r4 = new Object[] { 4L };
+
+    assertTrue( set.putRow( rowMeta, r1 ) );
+    assertTrue( set.putRow( rowMeta, r2 ) );
+    assertTrue( set.putRow( rowMeta, r3 ) );
+    assertEquals( 3, set.size() );
+    assertSame( rowMeta, set.getRowMeta() );
+
+    // The row set is full, this times out
+    //
+    assertFalse( set.putRowWait( rowMeta, r4, 1, TimeUnit.MILLISECONDS ) );
+    assertEquals( 3, set.size() );
+
+    assertSame( r1, set.getRow() );
+    assertTrue( set.putRow( rowMeta, r4 ) );
+    assertSame( r2, set.getRowImmediate() );
+    assertSame( r3, set.getRowWait( 1, TimeUnit.MILLISECONDS ) );
+    assertSame( r4, set.getRow() );
+    assertEquals( 0, set.size() );
+    assertNull( set.getRowWait( 1, TimeUnit.MILLISECONDS ) );
+  }
+
+  @Test
+  public void testDoneAndClear() {
+    RowSet set = new RingBufferRowSet( 2 );
+    RowMetaInterface rowMeta = createRowMeta();
+
+    set.putRow( rowMeta, new Object[] { 1L } );
+    set.setDone();
+    assertTrue( set.isDone() );
+
+    // Rows put before done are still delivered, after that we don't wait at all
+    //
+    assertEquals( 1L, set.getRow()[0] );
+    assertNull( set.getRowWait( 1, TimeUnit.DAYS ) );
+
+    set.putRow( rowMeta, new Object[] { 2L } );
+    set.clear();
+    assertFalse( set.isDone() );
+    assertEquals( 0, set.size() );
+    assertNull( set.getRowImmediate() );
+  }
+
+  @Test
+  public void testProducerConsumer() throws Exception {
+    final RowSet set = new RingBufferRowSet( 16 );
+    final RowMetaInterface rowMeta = createRowMeta();
+    final int nrRows = 100000;
+    final AtomicLong sum = new AtomicLong();
+
+    Thread consumer = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        long expected = 0;
+        Object[] row = set.getRow();
+        while ( row != null || !set.isDone() ) {
+          if ( row != null ) {
+            assertEquals( expected++, ( (Long) row[0] ).longValue() );
+            sum.addAndGet( (Long) row[0] );
+          }
+          row = set.getRow();
+        }
+      }
+    } );
+    consumer.start();
+
+    for ( long i = 0; i < nrRows; i++ ) {
+      Object[] row = new Object[] { i };
+      while ( !set.putRow( rowMeta, row ) ) {
+        // retry, just like BaseStep does
+      }
+    }
+    set.setDone();
+    consumer.join( 30000 );
+
+    assertFalse( consumer.isAlive() );
+    assertEquals( ( (long) nrRows * ( nrRows - 1 ) ) / 2, sum.get() );
+  }
+
+  @Test
+  public void testNames() {
+    RowSet set = new RingBufferRowSet( 3 );
+    set.setThreadNameFromToCopy( "from", 2, "to", 3 );
+
+    assertEquals( "from.2 - to.3", set.getName() );
+  }
+}
@@ -0,0 +1,194 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.database.DatabaseInterface;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.value.ValueMetaPluginType;
+
+public class PluginIndexTest {
+
+  private static final String FOLDER = "/opt/kettle/plugins";
+  private static final String ANNOTATION = "org.pentaho.di.core.plugins.DatabaseMetaPlugin";
+  private static final String CLASS_NAME = "org.example.SomeDatabaseMeta";
+
+  private File indexFile;
+  private URL jarFile;
+
+  @Before
+  public void setUp() throws Exception {
+    indexFile = File.createTempFile( "plugin-index", ".xml" );
+    indexFile.delete();
+    jarFile = new URL( "file:///opt/kettle/plugins/some-plugin/some-plugin.jar" );
+  }
+
+  @After
+  public void tearDown() {
+    indexFile.delete();
+  }
+
+  @Test
+  public void testSaveAndLoad() throws KettleException {
+    PluginIndex index = new PluginIndex( FOLDER, indexFile );
+    index.load();
+    assertNull( index.getAnnotationIndex( jarFile.toString(), 100L, 200L ) );
+
+    index.putAnnotationIndex( jarFile.toString(), 100L, 200L, createAnnotationIndex() );
+    index.putPlugin( jarFile, DatabasePluginType.class, CLASS_NAME, createPlugin(), new String[] { "org.example.*" } );
+    assertTrue( index.isChanged() );
+    index.save();
+    assertFalse( index.isChanged() );
+
+    PluginIndex loaded = new PluginIndex( FOLDER, indexFile );
+    loaded.load();
+
+    // The plugin is only known once the jar file is found to be unchanged
+    //
+    assertNull( loaded.getPlugin( jarFile, DatabasePluginType.class, CLASS_NAME ) );
+    assertEquals( createAnnotationIndex(), loaded.getAnnotationIndex( jarFile.toString(), 100L, 200L ) );
+
+    PluginIndex.PluginDescriptor descriptor = loaded.getPlugin( jarFile, DatabasePluginType.class, CLASS_NAME );
+    assertEquals( CLASS_NAME, descriptor.getClassName() );
+    assertArrayEquals( new String[] { "org.example.*" }, descriptor.getParentFirstPatterns() );
+    assertNull( loaded.getPlugin( jarFile, ValueMetaPluginType.class, CLASS_NAME ) );
+  }
+
+  @Test
+  public void testCreatePlugin() throws Exception {
+    PluginIndex index = new PluginIndex( FOLDER, indexFile );
+    index.putAnnotationIndex( jarFile.toString(), 100L, 200L, createAnnotationIndex() );
+    index.putPlugin( jarFile, DatabasePluginType.class, CLASS_NAME, createPlugin(), null );
+    index.save();
+
+    PluginIndex loaded = new PluginIndex( FOLDER, indexFile );
+    loaded.load();
+    loaded.getAnnotationIndex( jarFile.toString(), 100L, 200L );
+    PluginIndex.PluginDescriptor descriptor = loaded.getPlugin( jarFile, DatabasePluginType.class, CLASS_NAME );
+    assertNull( descriptor.getParentFirstPatterns() );
+
+    URL pluginFolder = new URL( "file:///opt/kettle/plugins/some-plugin/" );
+    PluginInterface plugin =
+      descriptor.createPlugin( DatabasePluginType.class, DatabaseInterface.class, getClass().getClassLoader(), Arrays
+        .asList( "some-plugin.jar" ), pluginFolder );
+
+    assertArrayEquals( new String[] { "SOMEDB", "SOMEDB2" }, plugin.getIds() );
+    assertEquals( "Some database", plugin.getName() );
+    assertEquals( "A database for testing", plugin.getDescription() );
+    assertNull( plugin.getCategory() );
+    assertFalse( plugin.isNativePlugin() );
+    assertEquals( CLASS_NAME, plugin.getClassMap().get( DatabaseInterface.class ) );
+    assertEquals( Arrays.asList( "some-plugin.jar" ), plugin.getLibraries() );
+    assertEquals( pluginFolder, plugin.getPluginDirectory() );
+    assertEquals( "http://example.org/docs", plugin.getDocumentationUrl() );
+  }
+
+  @Test
+  public void testChangedJarFile() throws KettleException {
+    PluginIndex index = new PluginIndex( FOLDER, indexFile );
+    index.putAnnotationIndex( jarFile.toString(), 100L, 200L, createAnnotationIndex() );
+    index.putPlugin( jarFile, DatabasePluginType.class, CLASS_NAME, createPlugin(), null );
+    index.save();
+
+    PluginIndex loaded = new PluginIndex( FOLDER, indexFile );
+    loaded.load();
+    assertNull( loaded.getAnnotationIndex( jarFile.toString(), 101L, 200L ) );
+    assertNull( loaded.getPlugin( jarFile, DatabasePluginType.class, CLASS_NAME ) );
+    assertTrue( loaded.isChanged() );
+
+    loaded = new PluginIndex( FOLDER, indexFile );
+    loaded.load();
+    assertNull( loaded.getAnnotationIndex( jarFile.toString(), 100L, 201L ) );
+  }
+
+  @Test
+  public void testOtherFolderOrCorruptIndex() throws Exception {
+    PluginIndex index = new PluginIndex( FOLDER, indexFile );
+    index.putAnnotationIndex( jarFile.toString(), 100L, 200L, createAnnotationIndex() );
+    index.save();
+
+    PluginIndex other = new PluginIndex( "/opt/other/plugins", indexFile );
+    other.load();
+    assertNull( other.getAnnotationIndex( jarFile.toString(), 100L, 200L ) );
+
+    Files.write( indexFile.toPath(), "<plugin-index><jar>".getBytes( "UTF-8" ) );
+    PluginIndex corrupt = new PluginIndex( FOLDER, indexFile );
+    corrupt.load();
+    assertNull( corrupt.getAnnotationIndex( jarFile.toString(), 100L, 200L ) );
+    assertTrue( corrupt.isChanged() );
+  }
+
+  @Test
+  public void testUnverifiedJarFilesAreNotSaved() throws KettleException {
+    PluginIndex index = new PluginIndex( FOLDER, indexFile );
+    index.putAnnotationIndex( jarFile.toString(), 100L, 200L, createAnnotationIndex() );
+    index.putAnnotationIndex( "file:///opt/kettle/plugins/removed.jar", 1L, 2L, createAnnotationIndex() );
+    index.save();
+
+    PluginIndex loaded = new PluginIndex( FOLDER, indexFile );
+    loaded.load();
+    loaded.getAnnotationIndex( jarFile.toString(), 100L, 200L );
+    loaded.putAnnotationIndex( "file:///opt/kettle/plugins/new.jar", 3L, 4L, createAnnotationIndex() );
+    loaded.save();
+
+    PluginIndex reloaded = new PluginIndex( FOLDER, indexFile );
+    reloaded.load();
+    assertEquals( createAnnotationIndex(), reloaded.getAnnotationIndex( jarFile.toString(), 100L, 200L ) );
+    assertEquals( createAnnotationIndex(), reloaded.getAnnotationIndex( "file:///opt/kettle/plugins/new.jar", 3L,
+      4L ) );
+    assertNull( reloaded.getAnnotationIndex( "file:///opt/kettle/plugins/removed.jar", 1L, 2L ) );
+  }
+
+  private Map<String, Set<String>> createAnnotationIndex() {
+    Map<String, Set<String>> annotationIndex = new HashMap<String, Set<String>>();
+    annotationIndex.put( ANNOTATION, new LinkedHashSet<String>( Arrays.asList( CLASS_NAME ) ) );
+    annotationIndex.put( "java.lang.Deprecated", Collections.singleton( "org.example.Old" ) );
+    return annotationIndex;
+  }
+
+  private PluginInterface createPlugin() {
+    Map<Class<?>, String> classMap = new HashMap<Class<?>, String>();
+    classMap.put( DatabaseInterface.class, CLASS_NAME );
+    return new Plugin( new String[] { "SOMEDB", "SOMEDB2" }, DatabasePluginType.class, DatabaseInterface.class,
+      null, "Some database", "A database for testing", null, false, false, classMap, null, null, null,
+      "http://example.org/docs", null, null );
+  }
+}
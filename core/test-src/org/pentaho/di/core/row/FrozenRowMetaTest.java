@@ -0,0 +1,178 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.value.ValueMetaBinary;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class FrozenRowMetaTest {
+
+  @Test
+  public void testFieldNameIndexFindsAllNames() {
+    Random random = new Random( 42 );
+    for ( int size : new int[] { 0, 1, 2, 3, 17, 200, 1000 } ) {
+      String[] names = new String[size];
+      for ( int i = 0; i < size; i++ ) {
+        names[i] = "field_" + i + "_" + Integer.toHexString( random.nextInt() );
+      }
+      FieldNameIndex index = new FieldNameIndex( names );
+      for ( int i = 0; i < size; i++ ) {
+        assertEquals( i, index.indexOf( names[i] ) );
+        assertEquals( i, index.indexOf( names[i].toUpperCase() ) );
+      }
+      assertEquals( -1, index.indexOf( "unknown" ) );
+      assertTrue( index.getTableSize() <= Math.max( 4, size * 8 ) );
+    }
+  }
+
+  @Test
+  public void testFieldNameIndexKeepsFirstDuplicate() {
+    FieldNameIndex index = new FieldNameIndex( new String[] { "a", null, "A", "b", "c" } );
+    assertEquals( 0, index.indexOf( "a" ) );
+    assertEquals( 3, index.indexOf( "B" ) );
+    assertEquals( FieldNameIndex.hash( "\u00e9t\u00e9" ), FieldNameIndex.hash( "\u00c9T\u00c9" ) );
+    assertEquals( 0, new FieldNameIndex( new String[] { "\u00e9t\u00e9" } ).indexOf( "\u00c9T\u00c9" ) );
+  }
+
+  @Test
+  public void testLookups() throws Exception {
+    RowMetaInterface rowMeta = createRowMeta( 50 );
+    FrozenRowMeta frozen = new FrozenRowMeta( rowMeta );
+
+    assertEquals( rowMeta.size(), frozen.size() );
+    assertFalse( frozen.isEmpty() );
+    assertArrayEquals( rowMeta.getFieldNames(), frozen.getFieldNames() );
+    for ( int i = 0; i < rowMeta.size(); i++ ) {
+      String name = rowMeta.getValueMeta( i ).getName();
+      assertEquals( i, frozen.indexOfValue( name ) );
+      assertEquals( i, frozen.indexOfValue( name.toUpperCase() ) );
+      assertSame( frozen.getValueMeta( i ), frozen.searchValueMeta( name ) );
+      assertNotSame( rowMeta.getValueMeta( i ), frozen.getValueMeta( i ) );
+    }
+    assertEquals( -1, frozen.indexOfValue( "unknown" ) );
+    assertEquals( -1, frozen.indexOfValue( null ) );
+    assertNull( frozen.searchValueMeta( "unknown" ) );
+    assertNull( frozen.getValueMeta( 50 ) );
+
+    Object[] row = createRow( 50 );
+    assertEquals( rowMeta.getString( row ), frozen.getString( row ) );
+    assertEquals( 0, frozen.compare( row, row.clone(), new int[] { 0, 1, 2 } ) );
+    assertTrue( frozen.equals( row, row.clone(), new int[] { 3 } ) );
+  }
+
+  @Test
+  public void testCloneRow() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "str" ) );
+    rowMeta.addValueMeta( new ValueMetaBinary( "bin" ) );
+    FrozenRowMeta frozen = new FrozenRowMeta( rowMeta );
+
+    Object[] row = new Object[] { "a", new byte[] { 1, 2 } };
+    Object[] clone = frozen.cloneRow( row );
+    assertSame( row[0], clone[0] );
+    assertNotSame( row[1], clone[1] );
+    assertArrayEquals( (byte[]) row[1], (byte[]) clone[1] );
+  }
+
+  @Test
+  public void testLayoutCantChange() throws Exception {
+    FrozenRowMeta frozen = new FrozenRowMeta( createRowMeta( 3 ) );
+    try {
+      frozen.addValueMeta( new ValueMetaString( "extra" ) );
+      fail( "a frozen row meta can't be changed" );
+    } catch ( UnsupportedOperationException e ) {
+      // expected
+    }
+    try {
+      frozen.removeValueMeta( 0 );
+      fail( "a frozen row meta can't be changed" );
+    } catch ( UnsupportedOperationException e ) {
+      // expected
+    }
+    try {
+      frozen.getValueMetaList().clear();
+      fail( "a frozen row meta can't be changed" );
+    } catch ( UnsupportedOperationException e ) {
+      // expected
+    }
+    try {
+      frozen.setValueMetaList( new ArrayList<ValueMetaInterface>() );
+      fail( "a frozen row meta can't be changed" );
+    } catch ( UnsupportedOperationException e ) {
+      // expected
+    }
+
+    // A clone is a normal row meta again
+    //
+    RowMetaInterface clone = frozen.clone();
+    assertFalse( clone instanceof FrozenRowMeta );
+    clone.addValueMeta( new ValueMetaString( "extra" ) );
+    assertEquals( 4, clone.size() );
+    assertEquals( 3, frozen.size() );
+  }
+
+  @Test
+  public void testRenamedValuesAreFound() {
+    FrozenRowMeta frozen = new FrozenRowMeta( createRowMeta( 10 ) );
+    frozen.getValueMeta( 4 ).setName( "renamed" );
+    assertEquals( 4, frozen.indexOfValue( "renamed" ) );
+    assertEquals( -1, frozen.indexOfValue( "field4" ) );
+
+    // Re-indexing the same value metadata is allowed
+    //
+    List<ValueMetaInterface> valueMetaList = frozen.getValueMetaList();
+    frozen.setValueMetaList( valueMetaList );
+    assertEquals( 4, frozen.indexOfValue( "RENAMED" ) );
+  }
+
+  private RowMetaInterface createRowMeta( int nrFields ) {
+    RowMetaInterface rowMeta = new RowMeta();
+    for ( int i = 0; i < nrFields; i++ ) {
+      rowMeta.addValueMeta( i % 2 == 0 ? new ValueMetaString( "field" + i ) : new ValueMetaInteger( "field" + i ) );
+    }
+    return rowMeta;
+  }
+
+  private Object[] createRow( int nrFields ) {
+    Object[] row = new Object[nrFields];
+    for ( int i = 0; i < nrFields; i++ ) {
+      row[i] = i % 2 == 0 ? "value" + i : Long.valueOf( i );
+    }
+    return row;
+  }
+}
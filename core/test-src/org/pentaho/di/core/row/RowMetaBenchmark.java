@@ -0,0 +1,119 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+/**
+ * Compares the per row lookups on a shared {@link RowMeta}, which takes a read lock for every call, to the same
+ * lookups on a {@link FrozenRowMeta}. All the threads share the same row metadata, like the copies of a step reading
+ * from the same previous step do. The main method runs everything with 1 and with 16 threads.<br>
+ * <br>
+ * Run it with the JMH jars on the test class path: java org.pentaho.di.core.row.RowMetaBenchmark
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class RowMetaBenchmark {
+
+  @Param( { "RowMeta", "FrozenRowMeta" } )
+  public String implementation;
+
+  @Param( { "20", "200" } )
+  public int nrFields;
+
+  private RowMetaInterface rowMeta;
+  private Object[] row;
+  private String[] lookupNames;
+
+  @Setup( Level.Trial )
+  public void createRowMeta() {
+    RowMetaInterface source = new RowMeta();
+    row = new Object[nrFields];
+    for ( int i = 0; i < nrFields; i++ ) {
+      if ( i % 2 == 0 ) {
+        source.addValueMeta( new ValueMetaString( "string_field_" + i ) );
+        row[i] = "value " + i;
+      } else {
+        source.addValueMeta( new ValueMetaInteger( "integer_field_" + i ) );
+        row[i] = Long.valueOf( i );
+      }
+    }
+    rowMeta = "FrozenRowMeta".equals( implementation ) ? new FrozenRowMeta( source ) : source;
+
+    // Look up a handful of fields spread over the row, in mixed case like step dialogs often store them
+    //
+    lookupNames = new String[] {
+      "string_field_0", "INTEGER_FIELD_" + ( nrFields / 2 + 1 ), "String_Field_" + ( nrFields - 2 ), };
+  }
+
+  @Benchmark
+  public int indexOfValue() {
+    int sum = 0;
+    for ( String name : lookupNames ) {
+      sum += rowMeta.indexOfValue( name );
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public String getString() throws KettleValueException {
+    return rowMeta.getString( row, nrFields - 2 );
+  }
+
+  @Benchmark
+  public Object[] cloneRow() throws KettleValueException {
+    return rowMeta.cloneRow( row );
+  }
+
+  public static void main( String[] args ) throws RunnerException {
+    for ( int threads : new int[] { 1, 16 } ) {
+      Options options =
+        new OptionsBuilder().include( RowMetaBenchmark.class.getSimpleName() ).threads( threads ).build();
+      new Runner( options ).run();
+    }
+  }
+}
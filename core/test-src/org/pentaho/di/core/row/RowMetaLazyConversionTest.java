@@ -0,0 +1,109 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class RowMetaLazyConversionTest {
+
+  private static final String[] INTEGERS = { "1", " 42 ", "-7", "", "   ", "1,234", "12345678901234567", "\u00e9" };
+  private static final String[] NUMBERS = { "1.5", " -0.25", "1,234.5", "", "3", "123456789012345678.5", "\u00e9" };
+  private static final String[] DATES = { "2016/01/31 12:34:56.789", " 1999/12/31 23:59:59.000 ", "", "\u00e9" };
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    KettleClientEnvironment.init();
+  }
+
+  @Test
+  public void testIntegers() throws Exception {
+    assertSameAsPerValue( createLazyValueMeta( new ValueMetaInteger( "int" ), "#,##0" ), INTEGERS );
+  }
+
+  @Test
+  public void testNumbers() throws Exception {
+    assertSameAsPerValue( createLazyValueMeta( new ValueMetaNumber( "num" ), "#,##0.0#" ), NUMBERS );
+  }
+
+  @Test
+  public void testDates() throws Exception {
+    assertSameAsPerValue( createLazyValueMeta( new ValueMetaDate( "date" ), "yyyy/MM/dd HH:mm:ss.SSS" ), DATES );
+  }
+
+  @Test( expected = KettleValueException.class )
+  public void testConversionError() throws Exception {
+    ValueMetaInterface valueMeta = createLazyValueMeta( new ValueMetaInteger( "int" ), "#" );
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( valueMeta );
+    Object[][] rows = { { "12".getBytes( "UTF-8" ) }, { "twelve".getBytes( "UTF-8" ) } };
+    rowMeta.convertToNormalStorageType( rows, rows.length, 0, new Object[rows.length] );
+  }
+
+  private ValueMetaInterface createLazyValueMeta( ValueMetaInterface valueMeta, String mask ) {
+    ValueMetaInterface storageMeta = new ValueMetaString( valueMeta.getName() );
+    storageMeta.setConversionMask( mask );
+    storageMeta.setTrimType( ValueMetaInterface.TRIM_TYPE_BOTH );
+    storageMeta.setStringEncoding( "UTF-8" );
+    valueMeta.setConversionMask( mask );
+    valueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    valueMeta.setStorageMetadata( storageMeta );
+    return valueMeta;
+  }
+
+  private void assertSameAsPerValue( ValueMetaInterface valueMeta, String[] strings ) throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "other" ) );
+    rowMeta.addValueMeta( valueMeta );
+
+    // Leave out the values that can't be converted at all, they are tested separately
+    //
+    Object[][] rows = new Object[strings.length + 1][];
+    Object[] expected = new Object[rows.length];
+    int nrRows = 0;
+    for ( String string : strings ) {
+      byte[] binary = string.getBytes( "UTF-8" );
+      try {
+        expected[nrRows] = valueMeta.convertBinaryStringToNativeType( binary );
+      } catch ( KettleValueException e ) {
+        continue;
+      }
+      rows[nrRows++] = new Object[] { "x", binary };
+    }
+    rows[nrRows++] = new Object[] { "x", null };
+
+    Object[] values = new Object[rows.length];
+    rowMeta.convertToNormalStorageType( rows, nrRows, 1, values );
+    for ( int i = 0; i < nrRows; i++ ) {
+      assertEquals( "row " + i, expected[i], values[i] );
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+/**
+ * Compares sorting rows with {@link RowMetaInterface#compare(Object[], Object[], int[])} to sorting them on binary
+ * sort keys encoded by {@link SortKeyEncoder}, including the cost of encoding the keys.<br>
+ * <br>
+ * Run it with the JMH jars on the test class path: java org.pentaho.di.core.row.SortKeyEncoderBenchmark
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class SortKeyEncoderBenchmark {
+
+  @Param( { "string", "integer", "date", "mixed" } )
+  public String keyType;
+
+  @Param( { "100000" } )
+  public int nrRows;
+
+  private RowMetaInterface rowMeta;
+  private int[] fieldnrs;
+  private Object[][] source;
+  private Object[][] rows;
+
+  @Setup( Level.Trial )
+  public void createRows() {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "str" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "int" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "payload" ) );
+    rowMeta.getValueMeta( 0 ).setCaseInsensitive( true );
+
+    if ( "string".equals( keyType ) ) {
+      fieldnrs = new int[] { 0 };
+    } else if ( "integer".equals( keyType ) ) {
+      fieldnrs = new int[] { 1 };
+    } else if ( "date".equals( keyType ) ) {
+      fieldnrs = new int[] { 2 };
+    } else {
+      fieldnrs = new int[] { 0, 1, 2 };
+    }
+
+    Random random = new Random( 42 );
+    source = new Object[nrRows][];
+    for ( int i = 0; i < nrRows; i++ ) {
+      source[i] = new Object[] {
+        "Customer-" + random.nextInt( nrRows / 10 ), Long.valueOf( random.nextInt( 1000 ) ),
+        new Date( 1400000000000L + random.nextInt( 100000 ) * 1000L ), "Some payload " + i, };
+    }
+  }
+
+  @Setup( Level.Invocation )
+  public void copyRows() {
+    rows = Arrays.copyOf( source, source.length );
+  }
+
+  @Benchmark
+  public Object[][] sortWithRowMetaCompare() {
+    Arrays.sort( rows, new Comparator<Object[]>() {
+      @Override
+      public int compare( Object[] o1, Object[] o2 ) {
+        try {
+          return rowMeta.compare( o1, o2, fieldnrs );
+        } catch ( KettleValueException e ) {
+          throw new RuntimeException( e );
+        }
+      }
+    } );
+    return rows;
+  }
+
+  @Benchmark
+  public Object[][] sortWithBinarySortKeys() throws KettleValueException {
+    SortKeyEncoder encoder = new SortKeyEncoder( rowMeta, fieldnrs );
+    final int keyIndex = rowMeta.size();
+    for ( int i = 0; i < rows.length; i++ ) {
+      Object[] row = RowDataUtil.resizeArray( rows[i], keyIndex + 1 );
+      row[keyIndex] = encoder.encode( row );
+      rows[i] = row;
+    }
+    Arrays.sort( rows, new Comparator<Object[]>() {
+      @Override
+      public int compare( Object[] o1, Object[] o2 ) {
+        return SortKeyEncoder.compare( (byte[]) o1[keyIndex], (byte[]) o2[keyIndex] );
+      }
+    } );
+    return rows;
+  }
+
+  public static void main( String[] args ) throws RunnerException {
+    Options options = new OptionsBuilder().include( SortKeyEncoderBenchmark.class.getSimpleName() ).build();
+    new Runner( options ).run();
+  }
+}
@@ -0,0 +1,145 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.row;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class SortKeyEncoderTest {
+
+  private static final String[] STRINGS = { "", "a", "A", "ab", "aB", "abc", "b", "\u0000", "a\u0000", "a\u0000b",
+    "\u00e9t\u00e9", "\uffff", "z", "Z" };
+
+  @Test
+  public void testSupported() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "str" ) );
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "big" ) );
+
+    assertTrue( SortKeyEncoder.isSupported( rowMeta, new int[] { 0 } ) );
+    assertFalse( SortKeyEncoder.isSupported( rowMeta, new int[] { 0, 1 } ) );
+
+    rowMeta.getValueMeta( 0 ).setCollatorDisabled( false );
+    assertFalse( SortKeyEncoder.isSupported( rowMeta, new int[] { 0 } ) );
+  }
+
+  @Test
+  public void testStrings() throws KettleValueException {
+    for ( boolean descending : new boolean[] { false, true } ) {
+      for ( boolean caseInsensitive : new boolean[] { false, true } ) {
+        RowMetaInterface rowMeta = new RowMeta();
+        ValueMetaInterface valueMeta = new ValueMetaString( "str" );
+        valueMeta.setSortedDescending( descending );
+        valueMeta.setCaseInsensitive( caseInsensitive );
+        rowMeta.addValueMeta( valueMeta );
+
+        Object[][] rows = new Object[STRINGS.length + 1][];
+        for ( int i = 0; i < STRINGS.length; i++ ) {
+          rows[i] = new Object[] { STRINGS[i] };
+        }
+        rows[STRINGS.length] = new Object[] { null };
+
+        assertSameOrder( rowMeta, new int[] { 0 }, rows );
+      }
+    }
+  }
+
+  @Test
+  public void testStringsWithoutFoldingCase() throws KettleValueException {
+    RowMetaInterface rowMeta = new RowMeta();
+    ValueMetaInterface valueMeta = new ValueMetaString( "str" );
+    valueMeta.setCaseInsensitive( true );
+    rowMeta.addValueMeta( valueMeta );
+
+    SortKeyEncoder folding = new SortKeyEncoder( rowMeta, new int[] { 0 } );
+    SortKeyEncoder exact = new SortKeyEncoder( rowMeta, new int[] { 0 }, false );
+    for ( String string : STRINGS ) {
+      for ( String other : STRINGS ) {
+        byte[] key = exact.encode( new Object[] { string } );
+        byte[] otherKey = exact.encode( new Object[] { other } );
+        assertEquals( string.equals( other ), SortKeyEncoder.compare( key, otherKey ) == 0 );
+      }
+    }
+    assertEquals( 0, SortKeyEncoder.compare( folding.encode( new Object[] { "aB" } ), folding.encode(
+      new Object[] { "Ab" } ) ) );
+  }
+
+  @Test
+  public void testMixedKeys() throws KettleValueException {
+    Random random = new Random( 1234 );
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "int" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "num" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+    rowMeta.addValueMeta( new ValueMetaBoolean( "bool" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "str" ) );
+    rowMeta.getValueMeta( 1 ).setSortedDescending( true );
+    rowMeta.getValueMeta( 4 ).setSortedDescending( true );
+
+    double[] numbers = { Double.NEGATIVE_INFINITY, -1.5, -0.0, 0.0, 1E-300, 2.5, Double.MAX_VALUE, Double.NaN };
+
+    Object[][] rows = new Object[300][];
+    for ( int i = 0; i < rows.length; i++ ) {
+      rows[i] = new Object[] {
+        random.nextInt( 10 ) == 0 ? null : Long.valueOf( random.nextInt( 5 ) - 2 ),
+        random.nextInt( 10 ) == 0 ? null : Double.valueOf( numbers[random.nextInt( numbers.length )] ),
+        random.nextInt( 10 ) == 0 ? null : new Date( ( random.nextInt( 5 ) - 2 ) * 1000000000000L ),
+        random.nextInt( 10 ) == 0 ? null : Boolean.valueOf( random.nextBoolean() ),
+        random.nextInt( 10 ) == 0 ? null : STRINGS[random.nextInt( STRINGS.length )], };
+    }
+
+    assertSameOrder( rowMeta, new int[] { 0, 1, 2, 3, 4 }, rows );
+    assertSameOrder( rowMeta, new int[] { 4, 2, 1 }, rows );
+    assertSameOrder( rowMeta, new int[] { 3, 0 }, rows );
+  }
+
+  private void assertSameOrder( RowMetaInterface rowMeta, int[] fieldnrs, Object[][] rows )
+    throws KettleValueException {
+    SortKeyEncoder encoder = new SortKeyEncoder( rowMeta, fieldnrs );
+    byte[][] keys = new byte[rows.length][];
+    for ( int i = 0; i < rows.length; i++ ) {
+      keys[i] = encoder.encode( rows[i] );
+    }
+
+    for ( int i = 0; i < rows.length; i++ ) {
+      for ( int j = 0; j < rows.length; j++ ) {
+        int expected = Integer.signum( rowMeta.compare( rows[i], rows[j], fieldnrs ) );
+        int actual = Integer.signum( SortKeyEncoder.compare( keys[i], keys[j] ) );
+        assertEquals( rowMeta.getString( rows[i] ) + " <> " + rowMeta.getString( rows[j] ), expected, actual );
+      }
+    }
+  }
+}
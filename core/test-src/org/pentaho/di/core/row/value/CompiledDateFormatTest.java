@@ -0,0 +1,115 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.pentaho.di.core.row.value;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class CompiledDateFormatTest {
+
+  private static final String[] MASKS = { "yyyy/MM/dd HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ss", "yyyyMMdd",
+    "yyyy-MM-dd", "HH:mm", "dd/MM/yyyy", "'Q''s' yyyy" };
+
+  private static final String[] TIME_ZONES = { "UTC", "Europe/Brussels", "America/New_York", "Asia/Kolkata",
+    "Australia/Lord_Howe" };
+
+  @Test
+  public void testSupported() {
+    assertTrue( CompiledDateFormat.compile( new SimpleDateFormat( "yyyy/MM/dd HH:mm:ss.SSS" ) ).isSupported() );
+    assertTrue( CompiledDateFormat.compile( new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss" ) ).isSupported() );
+    assertFalse( CompiledDateFormat.compile( new SimpleDateFormat( "yy/MM/dd" ) ).isSupported() );
+    assertFalse( CompiledDateFormat.compile( new SimpleDateFormat( "yyyy/MMM/dd" ) ).isSupported() );
+    assertFalse( CompiledDateFormat.compile( new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss z" ) ).isSupported() );
+    assertFalse( CompiledDateFormat.compile( new SimpleDateFormat( "yyyy-MM-dd", new Locale( "th", "TH", "TH" ) ) )
+      .isSupported() );
+    assertFalse( CompiledDateFormat.compile( null ).isSupported() );
+  }
+
+  @Test
+  public void testSameResultAsSimpleDateFormat() {
+    Random random = new Random( 42 );
+    for ( String mask : MASKS ) {
+      for ( String timeZone : TIME_ZONES ) {
+        for ( boolean lenient : new boolean[] { false, true } ) {
+          SimpleDateFormat format = new SimpleDateFormat( mask, Locale.US );
+          format.setTimeZone( TimeZone.getTimeZone( timeZone ) );
+          format.setLenient( lenient );
+          CompiledDateFormat compiled = CompiledDateFormat.compile( format );
+          assertTrue( compiled.isCompiledFrom( format ) );
+
+          for ( int i = 0; i < 2000; i++ ) {
+            Date date = new Date( 1300000000000L + (long) ( random.nextGaussian() * 1E12 ) );
+            String expected = format.format( date );
+            String actual = compiled.format( date );
+            if ( actual != null ) {
+              assertEquals( mask + " " + timeZone, expected, actual );
+            }
+
+            // Parse the formatted string and a corrupted version of it
+            //
+            char[] chars = expected.toCharArray();
+            chars[random.nextInt( chars.length )] = (char) ( '0' + random.nextInt( 10 ) );
+            for ( String string : new String[] { expected, new String( chars ) } ) {
+              Date parsed = compiled.parse( string );
+              if ( parsed != null ) {
+                Date reference = format.parse( string, new ParsePosition( 0 ) );
+                assertEquals( mask + " " + timeZone + " [" + string + "]", reference, parsed );
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFallbacks() {
+    SimpleDateFormat format = new SimpleDateFormat( "yyyy-MM-dd HH:mm", Locale.US );
+    format.setTimeZone( TimeZone.getTimeZone( "Europe/Brussels" ) );
+    CompiledDateFormat compiled = CompiledDateFormat.compile( format );
+
+    assertEquals( new Date( 1467368100000L ), compiled.parse( "2016-07-01 12:15" ) );
+    assertEquals( "2016-07-01 12:15", compiled.format( new Date( 1467368100000L ) ) );
+
+    // Around a daylight saving time transition, out of range and not following the mask
+    //
+    assertNull( compiled.parse( "2016-03-27 02:30" ) );
+    assertNull( compiled.parse( "2016-02-30 12:00" ) );
+    assertNull( compiled.parse( "2015-02-29 12:00" ) );
+    assertNull( compiled.parse( "2016-13-01 12:00" ) );
+    assertNull( compiled.parse( "2016-7-01 12:00" ) );
+    assertNull( compiled.parse( "2016-07-01 12:00 trailing" ) );
+    assertNull( compiled.parse( "1500-07-01 12:00" ) );
+    assertNull( compiled.format( new Date( -15000000000000L ) ) );
+  }
+}
@@ -0,0 +1,139 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.pentaho.di.core.row.value;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParsePosition;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompiledDecimalFormatTest {
+
+  private static final String[] MASKS = { " ###############0;-###############0",
+    " ##########0.0########;-#########0.0########", "#.#", "0.00", "#,##0.###", "#", "000000",
+    "#,##0.00;(#,##0.00)", "##0.0#" };
+
+  @Test
+  public void testSupported() {
+    assertTrue( compile( "#,##0.00" ).isSupported() );
+    assertFalse( compile( "0.###E0" ).isSupported() );
+    assertFalse( compile( "#%" ).isSupported() );
+    assertFalse( compile( "\u00A4#,##0.00" ).isSupported() );
+    assertFalse( CompiledDecimalFormat.compile( null ).isSupported() );
+
+    DecimalFormat bigDecimal = new DecimalFormat( "0.00" );
+    bigDecimal.setParseBigDecimal( true );
+    assertFalse( CompiledDecimalFormat.compile( bigDecimal ).isSupported() );
+  }
+
+  @Test
+  public void testSameResultAsDecimalFormat() {
+    Random random = new Random( 42 );
+    for ( String mask : MASKS ) {
+      for ( Locale locale : new Locale[] { Locale.US, Locale.GERMANY, Locale.FRANCE } ) {
+        DecimalFormat format = new DecimalFormat( mask, new DecimalFormatSymbols( locale ) );
+        CompiledDecimalFormat compiled = CompiledDecimalFormat.compile( format );
+        assertTrue( compiled.isCompiledFrom( format ) );
+
+        for ( int i = 0; i < 5000; i++ ) {
+          double number;
+          switch ( random.nextInt( 4 ) ) {
+            case 0:
+              number = random.nextInt( 2000 ) - 1000;
+              break;
+            case 1:
+              number = ( random.nextInt( 200000 ) - 100000 ) / 100.0;
+              break;
+            case 2:
+              number = random.nextGaussian() * 1E6;
+              break;
+            default:
+              number = random.nextDouble() * Math.pow( 10, random.nextInt( 40 ) - 20 );
+              break;
+          }
+          String expected = format.format( number );
+          assertFormatted( mask, expected, compiled.format( number ) );
+          assertFormatted( mask, format.format( (long) number ), compiled.format( (long) number ) );
+
+          for ( String string : new String[] { expected, Long.toString( (long) number ), Double.toString( number ),
+            "-" + expected, " " + expected } ) {
+            ParsePosition parsePosition = new ParsePosition( 0 );
+            Number reference = format.parse( string, parsePosition );
+            boolean parsed = reference != null && parsePosition.getIndex() == string.length();
+
+            Double actualNumber = compiled.parseNumber( string );
+            if ( actualNumber != null ) {
+              assertTrue( mask + " [" + string + "]", parsed );
+              assertEquals( mask + " [" + string + "]", reference.doubleValue(), actualNumber.doubleValue(), 0.0 );
+            }
+            Long actualInteger = compiled.parseInteger( string );
+            if ( actualInteger != null ) {
+              assertTrue( mask + " [" + string + "]", parsed && reference instanceof Long );
+              assertEquals( mask + " [" + string + "]", reference, actualInteger );
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFallbacks() {
+    CompiledDecimalFormat compiled = compile( " ##########0.0########;-#########0.0########" );
+
+    assertEquals( " 1.5", compiled.format( 1.5 ) );
+    assertEquals( "-1234.0", compiled.format( -1234L ) );
+    assertEquals( Double.valueOf( -12.25 ), compiled.parseNumber( "-12.25" ) );
+    assertEquals( Long.valueOf( 12 ), compiled.parseInteger( " 12" ) );
+
+    // Rounding, special values, grouping and ambiguous or missing prefixes go through the DecimalFormat
+    //
+    assertNull( compiled.format( 0.1 + 0.2 ) );
+    assertNull( compiled.format( -0.0 ) );
+    assertNull( compiled.format( Double.NaN ) );
+    assertNull( compiled.format( Long.MIN_VALUE ) );
+    assertNull( compiled.parseNumber( "12" ) );
+    assertNull( compiled.parseNumber( " 1,234.5" ) );
+    assertNull( compiled.parseNumber( " 1.5E3" ) );
+    assertNull( compiled.parseNumber( " 12." ) );
+    assertNull( compiled.parseInteger( " 12.0" ) );
+    assertNull( compiled.parseInteger( " 1234567890123456789" ) );
+  }
+
+  private static void assertFormatted( String mask, String expected, String actual ) {
+    if ( actual != null ) {
+      assertEquals( mask, expected, actual );
+    }
+  }
+
+  private static CompiledDecimalFormat compile( String mask ) {
+    return CompiledDecimalFormat.compile( new DecimalFormat( mask, new DecimalFormatSymbols( Locale.US ) ) );
+  }
+}
@@ -0,0 +1,189 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.pentaho.di.core.row.value;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.pentaho.di.core.exception.KettleValueException;
+
+/**
+ * Compares converting dates, numbers and integers from and to strings the way ValueMetaBase used to, through the
+ * SimpleDateFormat and DecimalFormat while holding the lock on the value metadata, to the current conversions with the
+ * compiled formats. All the threads share the same value metadata, like the copies of a step do.<br>
+ * <br>
+ * Run it with the JMH jars on the test class path: java org.pentaho.di.core.row.value.ValueMetaConversionBenchmark<br>
+ * The main method runs the benchmarks with 1 thread and again with 4 threads.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class ValueMetaConversionBenchmark {
+
+  private static final int NR_VALUES = 1024;
+
+  private ValueMetaDate dateMeta;
+  private ValueMetaNumber numberMeta;
+  private ValueMetaInteger integerMeta;
+
+  private Date[] dates;
+  private String[] dateStrings;
+  private Double[] numbers;
+  private String[] numberStrings;
+  private Long[] integers;
+  private String[] integerStrings;
+
+  @State( Scope.Thread )
+  public static class Position {
+    private int index;
+
+    int next() {
+      index = ( index + 1 ) & ( NR_VALUES - 1 );
+      return index;
+    }
+  }
+
+  @Setup( Level.Trial )
+  public void createValues() throws KettleValueException {
+    dateMeta = new ValueMetaDate( "date" );
+    dateMeta.setConversionMask( "yyyy/MM/dd HH:mm:ss.SSS" );
+    numberMeta = new ValueMetaNumber( "number" );
+    numberMeta.setConversionMask( "#.##" );
+    integerMeta = new ValueMetaInteger( "integer" );
+
+    Random random = new Random( 42 );
+    dates = new Date[NR_VALUES];
+    dateStrings = new String[NR_VALUES];
+    numbers = new Double[NR_VALUES];
+    numberStrings = new String[NR_VALUES];
+    integers = new Long[NR_VALUES];
+    integerStrings = new String[NR_VALUES];
+    for ( int i = 0; i < NR_VALUES; i++ ) {
+      dates[i] = new Date( 1400000000000L + random.nextInt( 1000000000 ) * 100L );
+      dateStrings[i] = dateMeta.getString( dates[i] );
+      numbers[i] = Double.valueOf( ( random.nextInt( 20000000 ) - 10000000 ) / 100.0 );
+      numberStrings[i] = numberMeta.getString( numbers[i] );
+      integers[i] = Long.valueOf( random.nextInt() );
+      integerStrings[i] = integerMeta.getString( integers[i] );
+    }
+  }
+
+  @Benchmark
+  public String formatDateWithJavaText( Position position ) {
+    synchronized ( dateMeta ) {
+      return dateMeta.getDateFormat().format( dates[position.next()] );
+    }
+  }
+
+  @Benchmark
+  public String formatDateCompiled( Position position ) {
+    return dateMeta.convertDateToString( dates[position.next()] );
+  }
+
+  @Benchmark
+  public Date parseDateWithJavaText( Position position ) throws Exception {
+    synchronized ( dateMeta ) {
+      return dateMeta.getDateFormat().parse( dateStrings[position.next()] );
+    }
+  }
+
+  @Benchmark
+  public Date parseDateCompiled( Position position ) throws KettleValueException {
+    return dateMeta.convertStringToDate( dateStrings[position.next()] );
+  }
+
+  @Benchmark
+  public String formatNumberWithJavaText( Position position ) {
+    synchronized ( numberMeta ) {
+      return numberMeta.getDecimalFormat( false ).format( numbers[position.next()] );
+    }
+  }
+
+  @Benchmark
+  public String formatNumberCompiled( Position position ) throws KettleValueException {
+    return numberMeta.convertNumberToString( numbers[position.next()] );
+  }
+
+  @Benchmark
+  public Number parseNumberWithJavaText( Position position ) throws Exception {
+    synchronized ( numberMeta ) {
+      return numberMeta.getDecimalFormat( false ).parse( numberStrings[position.next()] );
+    }
+  }
+
+  @Benchmark
+  public Double parseNumberCompiled( Position position ) throws KettleValueException {
+    return numberMeta.convertStringToNumber( numberStrings[position.next()] );
+  }
+
+  @Benchmark
+  public String formatIntegerWithJavaText( Position position ) {
+    synchronized ( integerMeta ) {
+      return integerMeta.getDecimalFormat( false ).format( integers[position.next()] );
+    }
+  }
+
+  @Benchmark
+  public String formatIntegerCompiled( Position position ) throws KettleValueException {
+    return integerMeta.convertIntegerToString( integers[position.next()] );
+  }
+
+  @Benchmark
+  public Number parseIntegerWithJavaText( Position position ) throws Exception {
+    synchronized ( integerMeta ) {
+      return integerMeta.getDecimalFormat( false ).parse( integerStrings[position.next()] );
+    }
+  }
+
+  @Benchmark
+  public Long parseIntegerCompiled( Position position ) throws KettleValueException {
+    return integerMeta.convertStringToInteger( integerStrings[position.next()] );
+  }
+
+  public static void main( String[] args ) throws RunnerException {
+    for ( int threads : new int[] { 1, 4 } ) {
+      Options options =
+          new OptionsBuilder().include( ValueMetaConversionBenchmark.class.getSimpleName() ).threads( threads )
+              .build();
+      new Runner( options ).run();
+    }
+  }
+}
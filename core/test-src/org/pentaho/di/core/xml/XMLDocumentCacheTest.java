@@ -0,0 +1,121 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.vfs2.FileObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+public class XMLDocumentCacheTest {
+
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    System.setProperty( Const.KETTLE_XML_METADATA_CACHE_SIZE, "2" );
+    XMLDocumentCache.getInstance().clear();
+    file = File.createTempFile( "XMLDocumentCacheTest", ".ktr" );
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty( Const.KETTLE_XML_METADATA_CACHE_SIZE );
+    XMLDocumentCache.getInstance().clear();
+    file.delete();
+  }
+
+  @Test
+  public void testCopiesOfCachedDocument() throws Exception {
+    write( "one", 1000000L );
+    FileObject fileObject = KettleVFS.getFileObject( file.getAbsolutePath() );
+
+    Document first = XMLDocumentCache.getInstance().loadXMLFile( fileObject );
+    Document second = XMLDocumentCache.getInstance().loadXMLFile( fileObject );
+    assertNotSame( first, second );
+    assertEquals( "one", getName( first ) );
+    assertEquals( "one", getName( second ) );
+    assertEquals( 1, XMLDocumentCache.getInstance().size() );
+
+    // Changing a copy doesn't change the cached document
+    //
+    XMLHandler.getSubNode( first, "transformation" ).getFirstChild().getFirstChild().setNodeValue( "changed" );
+    assertEquals( "one", getName( XMLDocumentCache.getInstance().loadXMLFile( fileObject ) ) );
+  }
+
+  @Test
+  public void testModifiedFileIsParsedAgain() throws Exception {
+    write( "one", 1000000L );
+    FileObject fileObject = KettleVFS.getFileObject( file.getAbsolutePath() );
+    assertEquals( "one", getName( XMLDocumentCache.getInstance().loadXMLFile( fileObject ) ) );
+
+    write( "two", 2000000L );
+    fileObject = KettleVFS.getFileObject( file.getAbsolutePath() );
+    fileObject.refresh();
+    assertEquals( "two", getName( XMLDocumentCache.getInstance().loadXMLFile( fileObject ) ) );
+    assertEquals( 1, XMLDocumentCache.getInstance().size() );
+  }
+
+  @Test
+  public void testCacheDisabled() throws Exception {
+    System.setProperty( Const.KETTLE_XML_METADATA_CACHE_SIZE, "0" );
+    write( "one", 1000000L );
+    FileObject fileObject = KettleVFS.getFileObject( file.getAbsolutePath() );
+    assertEquals( "one", getName( XMLDocumentCache.getInstance().loadXMLFile( fileObject ) ) );
+    assertEquals( 0, XMLDocumentCache.getInstance().size() );
+  }
+
+  @Test
+  public void testDisablingTheCacheForgetsTheDocuments() throws Exception {
+    write( "one", 1000000L );
+    FileObject fileObject = KettleVFS.getFileObject( file.getAbsolutePath() );
+    XMLDocumentCache.getInstance().loadXMLFile( fileObject );
+    assertEquals( 1, XMLDocumentCache.getInstance().size() );
+
+    System.setProperty( Const.KETTLE_XML_METADATA_CACHE_SIZE, "0" );
+    assertEquals( "one", getName( XMLDocumentCache.getInstance().loadXMLFile( fileObject ) ) );
+    assertEquals( 0, XMLDocumentCache.getInstance().size() );
+  }
+
+  private void write( String name, long lastModified ) throws Exception {
+    Files.write( file.toPath(), ( "<transformation><name>" + name + "</name></transformation>" )
+      .getBytes( StandardCharsets.UTF_8 ) );
+    file.setLastModified( lastModified );
+  }
+
+  private String getName( Document document ) {
+    Node transNode = XMLHandler.getSubNode( document, "transformation" );
+    return XMLHandler.getTagValue( transNode, "name" );
+  }
+}
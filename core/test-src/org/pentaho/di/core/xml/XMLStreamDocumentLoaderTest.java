@@ -0,0 +1,109 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+public class XMLStreamDocumentLoaderTest {
+
+  private static final String XML =
+    "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<transformation>\n"
+      + "  <!-- a comment -->\n"
+      + "  <info>\n"
+      + "    <name>Some &amp; name &lt;1&gt;</name>\n"
+      + "    <description/>\n"
+      + "  </info>\n"
+      + "  <step>\n"
+      + "    <name>CSV file input</name>\n"
+      + "    <separator>\t</separator>\n"
+      + "    <enclosure> </enclosure>\n"
+      + "    <sql><![CDATA[SELECT * FROM t WHERE a < 1]]></sql>\n"
+      + "    <field id=\"1\" type=\"String\">a<!-- split -->b</field>\n"
+      + "  </step>\n"
+      + "  <step>\n"
+      + "    <name>Dummy</name>\n"
+      + "  </step>\n"
+      + "</transformation>\n";
+
+  @Test
+  public void testSameValuesAsDomParser() throws KettleXMLException {
+    Document document = load( XML );
+    Node transNode = XMLHandler.getSubNode( document, "transformation" );
+
+    Node infoNode = XMLHandler.getSubNode( transNode, "info" );
+    assertEquals( "Some & name <1>", XMLHandler.getTagValue( infoNode, "name" ) );
+    assertNull( XMLHandler.getTagValue( infoNode, "description" ) );
+
+    assertEquals( 2, XMLHandler.countNodes( transNode, "step" ) );
+    Node stepNode = XMLHandler.getSubNodeByNr( transNode, "step", 0, false );
+    assertEquals( "CSV file input", XMLHandler.getTagValue( stepNode, "name" ) );
+    assertEquals( "\t", XMLHandler.getTagValue( stepNode, "separator" ) );
+    assertEquals( " ", XMLHandler.getTagValue( stepNode, "enclosure" ) );
+    assertEquals( "SELECT * FROM t WHERE a < 1", XMLHandler.getTagValue( stepNode, "sql" ) );
+    Node fieldNode = XMLHandler.getSubNode( stepNode, "field" );
+    assertEquals( "ab", XMLHandler.getNodeValue( fieldNode ) );
+    assertEquals( "1", XMLHandler.getTagAttribute( fieldNode, "id" ) );
+    assertEquals( "String", XMLHandler.getTagAttribute( fieldNode, "type" ) );
+    assertEquals( "Dummy", XMLHandler.getTagValue( XMLHandler.getSubNodeByNr( transNode, "step", 1, false ), "name" ) );
+  }
+
+  @Test
+  public void testIndentationIsLeftOut() throws KettleXMLException {
+    Document document = load( XML );
+    Node transNode = XMLHandler.getSubNode( document, "transformation" );
+
+    // info, step and step: no comments and no whitespace text nodes
+    //
+    assertEquals( 3, transNode.getChildNodes().getLength() );
+    assertEquals( 5, XMLHandler.getSubNode( transNode, "step" ).getChildNodes().getLength() );
+  }
+
+  @Test( expected = KettleXMLException.class )
+  public void testEntitiesAreNotExpanded() throws KettleXMLException {
+    load( "<?xml version=\"1.0\"?>\n"
+      + "<!DOCTYPE lolz [\n"
+      + " <!ENTITY lol \"lol\">\n"
+      + " <!ENTITY lol1 \"&lol;&lol;&lol;&lol;&lol;&lol;&lol;&lol;&lol;&lol;\">\n"
+      + "]>\n"
+      + "<lolz>&lol1;</lolz>" );
+  }
+
+  @Test( expected = KettleXMLException.class )
+  public void testNotWellFormed() throws KettleXMLException {
+    load( "<transformation><info></transformation>" );
+  }
+
+  private Document load( String xml ) throws KettleXMLException {
+    return XMLStreamDocumentLoader.loadXMLFile( new ByteArrayInputStream( xml.getBytes( StandardCharsets.UTF_8 ) ) );
+  }
+}
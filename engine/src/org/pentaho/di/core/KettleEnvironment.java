@@ -29,6 +29,9 @@ import org.pentaho.di.core.compress.CompressionPluginType;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettlePluginException;
 import org.pentaho.di.core.lifecycle.KettleLifecycleSupport;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.logging.Metrics;
 import org.pentaho.di.core.logging.LogTablePluginType;
 import org.pentaho.di.core.plugins.CartePluginType;
 import org.pentaho.di.core.plugins.ImportRulePluginType;
@@ -63,6 +66,8 @@ public class KettleEnvironment {
   private static AtomicReference<SettableFuture<Boolean>> initialized = new AtomicReference<SettableFuture<Boolean>>( null );
   private static KettleLifecycleSupport kettleLifecycleSupport;
 
+  private static final LogChannelInterface log = new LogChannel( "KettleEnvironment", true );
+
   /**
    * Initializes the Kettle environment. This method will attempt to configure Simple JNDI, by simply calling
    * init(true).
@@ -90,16 +95,22 @@ public class KettleEnvironment {
     if ( initialized.compareAndSet( null, ready = SettableFuture.create() ) ) {
 
       try {
+        StartupTimer timer = new StartupTimer();
+
         // This creates .kettle and kettle.properties...
         //
+        timer.startPhase( "client environment" );
         if ( !KettleClientEnvironment.isInitialized() ) {
           KettleClientEnvironment.init();
         }
+        timer.stopPhase();
 
         // Configure Simple JNDI when we run in stand-alone mode (spoon, pan, kitchen, carte, ... NOT on the platform
         //
         if ( simpleJndi ) {
+          timer.startPhase( "JNDI" );
           JndiUtil.initJNDI();
+          timer.stopPhase();
         }
 
         // Register the native types and the plugins for the various plugin types...
@@ -117,15 +128,23 @@ public class KettleEnvironment {
         PluginRegistry.addPluginType( CompressionPluginType.getInstance() );
         PluginRegistry.addPluginType( AuthenticationProviderPluginType.getInstance() );
         PluginRegistry.addPluginType( AuthenticationConsumerPluginType.getInstance() );
+        timer.startPhase( "plugins" );
         PluginRegistry.init();
+        timer.stopPhase();
 
         // Also read the list of variables.
         //
+        timer.startPhase( "variables" );
         KettleVariablesList.init();
+        timer.stopPhase();
 
         // Initialize the Lifecycle Listeners
         //
+        timer.startPhase( "lifecycle listeners" );
         initLifecycleListeners();
+        timer.stopPhase();
+
+        timer.logTimings();
         ready.set( true );
       } catch ( Throwable t ) {
         ready.setException( t );
@@ -146,6 +165,38 @@ public class KettleEnvironment {
     }
   }
 
+  /**
+   * Keeps track of the time spent in the phases of the initialization. Every phase is recorded as a metric of the
+   * KettleEnvironment log channel and the timings are logged at the detailed log level.
+   */
+  private static class StartupTimer {
+    private final long startTime = System.currentTimeMillis();
+    private final StringBuilder timings = new StringBuilder();
+    private String phase;
+    private long phaseStartTime;
+
+    private void startPhase( String phase ) {
+      this.phase = phase;
+      this.phaseStartTime = System.currentTimeMillis();
+      log.snap( Metrics.METRIC_KETTLE_ENVIRONMENT_INIT_PHASE_START, phase );
+    }
+
+    private void stopPhase() {
+      log.snap( Metrics.METRIC_KETTLE_ENVIRONMENT_INIT_PHASE_STOP, phase );
+      if ( timings.length() > 0 ) {
+        timings.append( ", " );
+      }
+      timings.append( phase ).append( ": " ).append( System.currentTimeMillis() - phaseStartTime ).append( "ms" );
+    }
+
+    private void logTimings() {
+      if ( log.isDetailed() ) {
+        log.logDetailed( "Kettle environment initialized in "
+          + ( System.currentTimeMillis() - startTime ) + "ms (" + timings + ")" );
+      }
+    }
+  }
+
   /**
    * Alert all Lifecycle plugins that the Kettle environment is being initialized.
    *
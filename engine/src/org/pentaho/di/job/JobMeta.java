@@ -71,6 +71,7 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.util.StringUtil;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.core.xml.XMLDocumentCache;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.core.xml.XMLInterface;
 import org.pentaho.di.i18n.BaseMessages;
@@ -728,7 +729,7 @@ public class JobMeta extends AbstractMeta
     this.metaStore = metaStore;
     try {
       // OK, try to load using the VFS stuff...
-      Document doc = XMLHandler.loadXMLFile( KettleVFS.getFileObject( fname, this ) );
+      Document doc = XMLDocumentCache.getInstance().loadXMLFile( KettleVFS.getFileObject( fname, this ) );
       if ( doc != null ) {
         // The jobnode
         Node jobnode = XMLHandler.getSubNode( doc, XML_TAG );
@@ -991,10 +992,9 @@ public class JobMeta extends AbstractMeta
       //
       // Read the database connections
       //
-      int nr = XMLHandler.countNodes( jobnode, "connection" );
-      Set<String> privateDatabases = new HashSet<String>( nr );
-      for ( int i = 0; i < nr; i++ ) {
-        Node dbnode = XMLHandler.getSubNodeByNr( jobnode, "connection", i );
+      List<Node> connectionNodes = XMLHandler.getNodes( jobnode, "connection" );
+      Set<String> privateDatabases = new HashSet<String>( connectionNodes.size() );
+      for ( Node dbnode : connectionNodes ) {
         DatabaseMeta dbcon = new DatabaseMeta( dbnode );
         dbcon.shareVariablesWith( this );
         if ( !dbcon.isShared() ) {
@@ -1080,10 +1080,11 @@ public class JobMeta extends AbstractMeta
       /*
        * read the job entries...
        */
+      // Get all the entry nodes at once: looking them up by number rescans the children of the entries node as soon
+      // as the lookup cache of XMLHandler is full, which is quadratic for large jobs.
+      //
       Node entriesnode = XMLHandler.getSubNode( jobnode, "entries" );
-      int tr = XMLHandler.countNodes( entriesnode, "entry" );
-      for ( int i = 0; i < tr; i++ ) {
-        Node entrynode = XMLHandler.getSubNodeByNr( entriesnode, "entry", i );
+      for ( Node entrynode : XMLHandler.getNodes( entriesnode, "entry" ) ) {
         // System.out.println("Reading entry:\n"+entrynode);
 
         JobEntryCopy je = new JobEntryCopy( entrynode, databases, slaveServers, rep, metaStore );
@@ -1123,18 +1124,14 @@ public class JobMeta extends AbstractMeta
       }
 
       Node hopsnode = XMLHandler.getSubNode( jobnode, "hops" );
-      int ho = XMLHandler.countNodes( hopsnode, "hop" );
-      for ( int i = 0; i < ho; i++ ) {
-        Node hopnode = XMLHandler.getSubNodeByNr( hopsnode, "hop", i );
+      for ( Node hopnode : XMLHandler.getNodes( hopsnode, "hop" ) ) {
         JobHopMeta hi = new JobHopMeta( hopnode, this );
         jobhops.add( hi );
       }
 
       // Read the notes...
       Node notepadsnode = XMLHandler.getSubNode( jobnode, "notepads" );
-      int nrnotes = XMLHandler.countNodes( notepadsnode, "notepad" );
-      for ( int i = 0; i < nrnotes; i++ ) {
-        Node notepadnode = XMLHandler.getSubNodeByNr( notepadsnode, "notepad", i );
+      for ( Node notepadnode : XMLHandler.getNodes( notepadsnode, "notepad" ) ) {
         NotePadMeta ni = new NotePadMeta( notepadnode );
         notes.add( ni );
       }
@@ -0,0 +1,200 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.repository.ObjectId;
+import org.pentaho.di.repository.Repository;
+import org.w3c.dom.Node;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Partitions rows with consistent hashing. Every partition ID of the partition schema is placed on a hash ring a
+ * number of times (the virtual nodes) and a row goes to the partition that owns the first position on the ring at or
+ * after the hash of its key. When a partition is added to the schema, only the rows that hash to its new positions
+ * move to it: about 1/n of the keys instead of nearly all of them as with a modulo partitioner. Since the ring is built
+ * from the partition IDs, renumbering the partitions doesn't move any keys either.
+ */
+public class ConsistentHashPartitioner extends HashPartitioner {
+
+  public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+  private static final HashFunction RING_HASH_FUNCTION = Hashing.murmur3_32();
+
+  private int virtualNodes;
+  private volatile HashRing ring;
+
+  public ConsistentHashPartitioner() {
+    super();
+    virtualNodes = DEFAULT_VIRTUAL_NODES;
+  }
+
+  public Partitioner getInstance() {
+    Partitioner partitioner = new ConsistentHashPartitioner();
+    partitioner.setId( getId() );
+    partitioner.setDescription( getDescription() );
+    return partitioner;
+  }
+
+  public ConsistentHashPartitioner clone() {
+    ConsistentHashPartitioner partitioner = (ConsistentHashPartitioner) super.clone();
+    partitioner.virtualNodes = virtualNodes;
+
+    return partitioner;
+  }
+
+  public int getPartition( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    init( rowMeta );
+
+    return getRing().getPartition( hashKey( rowMeta, row ) );
+  }
+
+  private HashRing getRing() {
+    HashRing hashRing = ring;
+    if ( hashRing == null ) {
+      synchronized ( this ) {
+        hashRing = ring;
+        if ( hashRing == null ) {
+          hashRing = new HashRing( getPartitionIDs(), virtualNodes );
+          ring = hashRing;
+        }
+      }
+    }
+    return hashRing;
+  }
+
+  private List<String> getPartitionIDs() {
+    List<String> partitionIDs = null;
+    if ( meta != null && meta.getPartitionSchema() != null ) {
+      partitionIDs = meta.getPartitionSchema().getPartitionIDs();
+    }
+    if ( partitionIDs == null || partitionIDs.size() != nrPartitions ) {
+      partitionIDs = new ArrayList<String>( nrPartitions );
+      for ( int i = 0; i < nrPartitions; i++ ) {
+        partitionIDs.add( Integer.toString( i ) );
+      }
+    }
+    return partitionIDs;
+  }
+
+  public String getDescription() {
+    return "Consistent hash partitioner" + getFieldsDescription();
+  }
+
+  public String getXML() {
+    StringBuilder xml = new StringBuilder( super.getXML() );
+    xml.append( "           " ).append( XMLHandler.addTagValue( "virtual_nodes", virtualNodes ) );
+    return xml.toString();
+  }
+
+  public void loadXML( Node partitioningMethodNode ) throws KettleXMLException {
+    super.loadXML( partitioningMethodNode );
+    virtualNodes =
+      Const.toInt( XMLHandler.getTagValue( partitioningMethodNode, "virtual_nodes" ), DEFAULT_VIRTUAL_NODES );
+    ring = null;
+  }
+
+  public void saveRep( Repository rep, ObjectId id_transformation, ObjectId id_step ) throws KettleException {
+    super.saveRep( rep, id_transformation, id_step );
+    rep.saveStepAttribute( id_transformation, id_step, "PARTITIONING_VIRTUAL_NODES", virtualNodes );
+  }
+
+  public void loadRep( Repository rep, ObjectId id_step ) throws KettleException {
+    super.loadRep( rep, id_step );
+    virtualNodes = (int) rep.getStepAttributeInteger( id_step, "PARTITIONING_VIRTUAL_NODES" );
+    if ( virtualNodes <= 0 ) {
+      virtualNodes = DEFAULT_VIRTUAL_NODES;
+    }
+    ring = null;
+  }
+
+  public int getVirtualNodes() {
+    return virtualNodes;
+  }
+
+  public void setVirtualNodes( int virtualNodes ) {
+    this.virtualNodes = virtualNodes;
+    ring = null;
+  }
+
+  /**
+   * The sorted positions of all the virtual nodes on the ring and the partition that owns each of them.
+   */
+  static final class HashRing {
+    private final int[] positions;
+    private final int[] owners;
+
+    HashRing( List<String> partitionIDs, int virtualNodes ) {
+      int nodesPerPartition = Math.max( 1, virtualNodes );
+      long[] nodes = new long[partitionIDs.size() * nodesPerPartition];
+      int n = 0;
+      for ( int partition = 0; partition < partitionIDs.size(); partition++ ) {
+        String partitionID = Const.NVL( partitionIDs.get( partition ), Integer.toString( partition ) );
+        for ( int v = 0; v < nodesPerPartition; v++ ) {
+          int position = RING_HASH_FUNCTION.hashUnencodedChars( partitionID + "#" + v ).asInt();
+          // Sorts on the position first, ties are won by the lowest partition
+          //
+          nodes[n++] = ( (long) position << 32 ) | partition;
+        }
+      }
+      Arrays.sort( nodes );
+
+      positions = new int[nodes.length];
+      owners = new int[nodes.length];
+      for ( int i = 0; i < nodes.length; i++ ) {
+        positions[i] = (int) ( nodes[i] >> 32 );
+        owners[i] = (int) nodes[i];
+      }
+    }
+
+    /**
+     * @return the partition owning the first virtual node at or after the given hash on the ring
+     */
+    int getPartition( int hash ) {
+      if ( positions.length == 0 ) {
+        return 0;
+      }
+      int index = Arrays.binarySearch( positions, hash );
+      if ( index < 0 ) {
+        index = -index - 1;
+      } else {
+        // Take the first of equal positions
+        //
+        while ( index > 0 && positions[index - 1] == hash ) {
+          index--;
+        }
+      }
+      return owners[index == positions.length ? 0 : index];
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.repository.ObjectId;
+import org.pentaho.di.repository.Repository;
+import org.w3c.dom.Node;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Partitions rows on the 32-bit Murmur3 hash of one or more key fields. Unlike the {@link ModPartitioner}, which uses
+ * the Java hash code of a single field, the key is hashed over a binary representation of the values, so similar
+ * strings and dates are spread evenly over the partitions. Equal values always end up in the same partition,
+ * regardless of the storage type of the fields.
+ */
+public class HashPartitioner extends BasePartitioner {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+  private String[] fieldNames;
+  protected volatile int[] partitionColumnIndexes;
+
+  public HashPartitioner() {
+    super();
+    fieldNames = new String[0];
+  }
+
+  public Partitioner getInstance() {
+    Partitioner partitioner = new HashPartitioner();
+    partitioner.setId( getId() );
+    partitioner.setDescription( getDescription() );
+    return partitioner;
+  }
+
+  public HashPartitioner clone() {
+    HashPartitioner hashPartitioner = (HashPartitioner) super.clone();
+    hashPartitioner.fieldNames = fieldNames.clone();
+
+    return hashPartitioner;
+  }
+
+  public String getDialogClassName() {
+    return "org.pentaho.di.ui.trans.dialog.HashPartitionerDialog";
+  }
+
+  public int getPartition( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    init( rowMeta );
+
+    int hash = hashKey( rowMeta, row );
+    return ( hash & Integer.MAX_VALUE ) % nrPartitions;
+  }
+
+  /**
+   * Calculate the Murmur3 hash of the key fields of a row.
+   *
+   * @param rowMeta
+   *          the layout of the row
+   * @param row
+   *          the row to hash
+   * @return the 32-bit hash of the key
+   * @throws KettleException
+   *           in case a key field can't be found or converted
+   */
+  protected int hashKey( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    int[] indexes = getPartitionColumnIndexes( rowMeta );
+    Hasher hasher = HASH_FUNCTION.newHasher();
+    for ( int index : indexes ) {
+      putValue( hasher, rowMeta.getValueMeta( index ), row[index] );
+    }
+    return hasher.hash().asInt();
+  }
+
+  private int[] getPartitionColumnIndexes( RowMetaInterface rowMeta ) throws KettleStepException {
+    int[] indexes = partitionColumnIndexes;
+    if ( indexes == null ) {
+      if ( fieldNames.length == 0 ) {
+        throw new KettleStepException( "No partitioning fields were specified for the " + getDescription() );
+      }
+      indexes = new int[fieldNames.length];
+      for ( int i = 0; i < fieldNames.length; i++ ) {
+        indexes[i] = rowMeta.indexOfValue( fieldNames[i] );
+        if ( indexes[i] < 0 ) {
+          throw new KettleStepException( "Unable to find partitioning field name ["
+            + fieldNames[i] + "] in the output row..." + rowMeta );
+        }
+      }
+      partitionColumnIndexes = indexes;
+    }
+    return indexes;
+  }
+
+  /**
+   * Add the binary representation of a value to the hash. Every value is preceded by a type marker so that the
+   * boundaries between the fields of a multi-field key are unambiguous.
+   */
+  static void putValue( Hasher hasher, ValueMetaInterface valueMeta, Object valueData ) throws KettleException {
+    if ( valueMeta.isNull( valueData ) ) {
+      hasher.putByte( (byte) 0 );
+      return;
+    }
+    hasher.putByte( (byte) valueMeta.getType() );
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        hasher.putLong( valueMeta.getInteger( valueData ).longValue() );
+        break;
+      case ValueMetaInterface.TYPE_NUMBER:
+        double number = valueMeta.getNumber( valueData ).doubleValue();
+        hasher.putDouble( number == 0.0 ? 0.0 : number );
+        break;
+      case ValueMetaInterface.TYPE_DATE:
+      case ValueMetaInterface.TYPE_TIMESTAMP:
+        hasher.putLong( valueMeta.getDate( valueData ).getTime() );
+        break;
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        hasher.putBoolean( valueMeta.getBoolean( valueData ).booleanValue() );
+        break;
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        BigDecimal bigNumber = valueMeta.getBigNumber( valueData );
+        putString( hasher, bigNumber.signum() == 0 ? "0" : bigNumber.stripTrailingZeros().toPlainString() );
+        break;
+      case ValueMetaInterface.TYPE_BINARY:
+        byte[] binary = valueMeta.getBinary( valueData );
+        hasher.putInt( binary.length );
+        hasher.putBytes( binary );
+        break;
+      default:
+        putString( hasher, valueMeta.getString( valueData ) );
+        break;
+    }
+  }
+
+  private static void putString( Hasher hasher, String string ) {
+    hasher.putInt( string.length() );
+    hasher.putUnencodedChars( string );
+  }
+
+  public String getDescription() {
+    return "Hash partitioner" + getFieldsDescription();
+  }
+
+  protected String getFieldsDescription() {
+    if ( fieldNames.length == 0 ) {
+      return "";
+    }
+    StringBuilder description = new StringBuilder( "(" );
+    for ( int i = 0; i < fieldNames.length; i++ ) {
+      description.append( i > 0 ? ", " : "" ).append( Const.NVL( fieldNames[i], "" ) );
+    }
+    return description.append( ")" ).toString();
+  }
+
+  public String getXML() {
+    StringBuilder xml = new StringBuilder( 150 );
+    xml.append( "           " ).append( XMLHandler.openTag( "fields" ) ).append( Const.CR );
+    for ( String fieldName : fieldNames ) {
+      xml.append( "             " ).append( XMLHandler.addTagValue( "field_name", fieldName ) );
+    }
+    xml.append( "           " ).append( XMLHandler.closeTag( "fields" ) ).append( Const.CR );
+    return xml.toString();
+  }
+
+  public void loadXML( Node partitioningMethodNode ) throws KettleXMLException {
+    Node fieldsNode = XMLHandler.getSubNode( partitioningMethodNode, "fields" );
+    int nrFields = fieldsNode == null ? 0 : XMLHandler.countNodes( fieldsNode, "field_name" );
+    fieldNames = new String[nrFields];
+    for ( int i = 0; i < nrFields; i++ ) {
+      fieldNames[i] = XMLHandler.getNodeValue( XMLHandler.getSubNodeByNr( fieldsNode, "field_name", i ) );
+    }
+    partitionColumnIndexes = null;
+  }
+
+  public void saveRep( Repository rep, ObjectId id_transformation, ObjectId id_step ) throws KettleException {
+    for ( int i = 0; i < fieldNames.length; i++ ) {
+      rep.saveStepAttribute( id_transformation, id_step, i, "PARTITIONING_FIELDNAME", fieldNames[i] );
+    }
+  }
+
+  public void loadRep( Repository rep, ObjectId id_step ) throws KettleException {
+    int nrFields = rep.countNrStepAttributes( id_step, "PARTITIONING_FIELDNAME" );
+    fieldNames = new String[nrFields];
+    for ( int i = 0; i < nrFields; i++ ) {
+      fieldNames[i] = rep.getStepAttributeString( id_step, i, "PARTITIONING_FIELDNAME" );
+    }
+    partitionColumnIndexes = null;
+  }
+
+  public String[] getFieldNames() {
+    return fieldNames;
+  }
+
+  public void setFieldNames( String[] fieldNames ) {
+    this.fieldNames = fieldNames == null ? new String[0] : Arrays.copyOf( fieldNames, fieldNames.length );
+    partitionColumnIndexes = null;
+  }
+
+}
@@ -0,0 +1,279 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.repository.ObjectId;
+import org.pentaho.di.repository.Repository;
+import org.w3c.dom.Node;
+
+/**
+ * Partitions rows on ranges of a field. The split points (boundaries) are sorted values of the field: partition 0
+ * receives the values below the first boundary, partition i the values from boundary i-1 up to boundary i and the
+ * last partition everything from the last boundary on. Nulls go to partition 0. Since every partition holds a
+ * contiguous range, sorting each partition and concatenating them in partition order gives a globally sorted result.
+ * <br>
+ * <br>
+ * A partitioner has to decide on the partition of every row as it passes, so the boundaries are sampled up front:
+ * {@link #calculateBoundaries(ValueMetaInterface, List, int)} turns a sample of the field values into evenly
+ * populated ranges. The boundaries are stored as strings in the format of the partitioning field.
+ */
+public class RangePartitioner extends BasePartitioner {
+
+  private String fieldName;
+  private String[] boundaries;
+
+  private volatile RangeIndex rangeIndex;
+
+  public RangePartitioner() {
+    super();
+    boundaries = new String[0];
+  }
+
+  public Partitioner getInstance() {
+    Partitioner partitioner = new RangePartitioner();
+    partitioner.setId( getId() );
+    partitioner.setDescription( getDescription() );
+    return partitioner;
+  }
+
+  public RangePartitioner clone() {
+    RangePartitioner rangePartitioner = (RangePartitioner) super.clone();
+    rangePartitioner.fieldName = fieldName;
+    rangePartitioner.boundaries = boundaries.clone();
+
+    return rangePartitioner;
+  }
+
+  public String getDialogClassName() {
+    return "org.pentaho.di.ui.trans.dialog.RangePartitionerDialog";
+  }
+
+  public int getPartition( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    init( rowMeta );
+
+    RangeIndex index = getRangeIndex( rowMeta );
+    int partition = index.getRange( row[index.fieldIndex] );
+    return Math.min( partition, nrPartitions - 1 );
+  }
+
+  private RangeIndex getRangeIndex( RowMetaInterface rowMeta ) throws KettleException {
+    RangeIndex index = rangeIndex;
+    if ( index == null ) {
+      int fieldIndex = rowMeta.indexOfValue( fieldName );
+      if ( fieldIndex < 0 ) {
+        throw new KettleStepException( "Unable to find partitioning field name ["
+          + fieldName + "] in the output row..." + rowMeta );
+      }
+      index = new RangeIndex( rowMeta.getValueMeta( fieldIndex ), fieldIndex, boundaries );
+      rangeIndex = index;
+    }
+    return index;
+  }
+
+  /**
+   * Calculate the boundaries that split a sample of values in ranges holding the same number of values.
+   *
+   * @param valueMeta
+   *          the metadata of the sampled values
+   * @param sample
+   *          the sampled values, nulls are ignored
+   * @param nrPartitions
+   *          the number of partitions to split the values over
+   * @return the (at most nrPartitions-1) distinct boundaries in the format of the value metadata
+   * @throws KettleValueException
+   *           in case the values can't be compared or converted to a string
+   */
+  public static String[] calculateBoundaries( final ValueMetaInterface valueMeta, List<Object> sample,
+    int nrPartitions ) throws KettleValueException {
+    final ValueMetaInterface compareMeta = getCompareMeta( valueMeta );
+    List<Object> values = new ArrayList<Object>( sample.size() );
+    for ( Object value : sample ) {
+      if ( !valueMeta.isNull( value ) ) {
+        values.add( valueMeta.convertToNormalStorageType( value ) );
+      }
+    }
+    try {
+      Collections.sort( values, new Comparator<Object>() {
+        @Override
+        public int compare( Object o1, Object o2 ) {
+          try {
+            return compareMeta.compare( o1, o2 );
+          } catch ( KettleValueException e ) {
+            throw new RuntimeException( e );
+          }
+        }
+      } );
+    } catch ( RuntimeException e ) {
+      if ( e.getCause() instanceof KettleValueException ) {
+        throw (KettleValueException) e.getCause();
+      }
+      throw e;
+    }
+
+    List<String> result = new ArrayList<String>();
+    Object previous = null;
+    for ( int i = 1; i < nrPartitions && !values.isEmpty(); i++ ) {
+      Object boundary = values.get( (int) ( (long) i * values.size() / nrPartitions ) );
+      if ( previous == null || compareMeta.compare( previous, boundary ) < 0 ) {
+        result.add( compareMeta.getString( boundary ) );
+        previous = boundary;
+      }
+    }
+    return result.toArray( new String[result.size()] );
+  }
+
+  private static ValueMetaInterface getCompareMeta( ValueMetaInterface valueMeta ) {
+    ValueMetaInterface compareMeta = valueMeta.clone();
+    compareMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+    compareMeta.setSortedDescending( false );
+    return compareMeta;
+  }
+
+  public String getDescription() {
+    String description = "Range partitioner";
+    if ( !Utils.isEmpty( fieldName ) ) {
+      description += "(" + fieldName + ")";
+    }
+    return description;
+  }
+
+  public String getXML() {
+    StringBuilder xml = new StringBuilder( 150 );
+    xml.append( "           " ).append( XMLHandler.addTagValue( "field_name", fieldName ) );
+    xml.append( "           " ).append( XMLHandler.openTag( "boundaries" ) ).append( Const.CR );
+    for ( String boundary : boundaries ) {
+      xml.append( "             " ).append( XMLHandler.addTagValue( "boundary", boundary ) );
+    }
+    xml.append( "           " ).append( XMLHandler.closeTag( "boundaries" ) ).append( Const.CR );
+    return xml.toString();
+  }
+
+  public void loadXML( Node partitioningMethodNode ) throws KettleXMLException {
+    fieldName = XMLHandler.getTagValue( partitioningMethodNode, "field_name" );
+    Node boundariesNode = XMLHandler.getSubNode( partitioningMethodNode, "boundaries" );
+    int nrBoundaries = boundariesNode == null ? 0 : XMLHandler.countNodes( boundariesNode, "boundary" );
+    boundaries = new String[nrBoundaries];
+    for ( int i = 0; i < nrBoundaries; i++ ) {
+      boundaries[i] = XMLHandler.getNodeValue( XMLHandler.getSubNodeByNr( boundariesNode, "boundary", i ) );
+    }
+    rangeIndex = null;
+  }
+
+  public void saveRep( Repository rep, ObjectId id_transformation, ObjectId id_step ) throws KettleException {
+    rep.saveStepAttribute( id_transformation, id_step, "PARTITIONING_FIELDNAME", fieldName );
+    for ( int i = 0; i < boundaries.length; i++ ) {
+      rep.saveStepAttribute( id_transformation, id_step, i, "PARTITIONING_BOUNDARY", boundaries[i] );
+    }
+  }
+
+  public void loadRep( Repository rep, ObjectId id_step ) throws KettleException {
+    fieldName = rep.getStepAttributeString( id_step, "PARTITIONING_FIELDNAME" );
+    int nrBoundaries = rep.countNrStepAttributes( id_step, "PARTITIONING_BOUNDARY" );
+    boundaries = new String[nrBoundaries];
+    for ( int i = 0; i < nrBoundaries; i++ ) {
+      boundaries[i] = rep.getStepAttributeString( id_step, i, "PARTITIONING_BOUNDARY" );
+    }
+    rangeIndex = null;
+  }
+
+  public String getFieldName() {
+    return fieldName;
+  }
+
+  public void setFieldName( String fieldName ) {
+    this.fieldName = fieldName;
+    rangeIndex = null;
+  }
+
+  public String[] getBoundaries() {
+    return boundaries;
+  }
+
+  public void setBoundaries( String[] boundaries ) {
+    this.boundaries = boundaries == null ? new String[0] : Arrays.copyOf( boundaries, boundaries.length );
+    rangeIndex = null;
+  }
+
+  /**
+   * The boundaries converted to the data type of the partitioning field.
+   */
+  private static final class RangeIndex {
+    private final ValueMetaInterface valueMeta;
+    private final ValueMetaInterface compareMeta;
+    private final int fieldIndex;
+    private final Object[] boundaries;
+
+    RangeIndex( ValueMetaInterface valueMeta, int fieldIndex, String[] boundaryStrings ) throws KettleException {
+      this.valueMeta = valueMeta;
+      this.compareMeta = getCompareMeta( valueMeta );
+      this.fieldIndex = fieldIndex;
+
+      ValueMetaInterface stringMeta = new ValueMetaString( valueMeta.getName() );
+      boundaries = new Object[boundaryStrings.length];
+      for ( int i = 0; i < boundaryStrings.length; i++ ) {
+        boundaries[i] =
+          compareMeta.convertDataFromString( boundaryStrings[i], stringMeta, null, null,
+            ValueMetaInterface.TRIM_TYPE_NONE );
+        if ( i > 0 && compareMeta.compare( boundaries[i - 1], boundaries[i] ) > 0 ) {
+          throw new KettleStepException( "The boundaries of the range partitioner on field ["
+            + valueMeta.getName() + "] are not sorted: [" + boundaryStrings[i - 1] + "] > [" + boundaryStrings[i]
+            + "]" );
+        }
+      }
+    }
+
+    /**
+     * @return the number of boundaries that are smaller than or equal to the value
+     */
+    int getRange( Object data ) throws KettleValueException {
+      Object value = valueMeta.convertToNormalStorageType( data );
+      int low = 0;
+      int high = boundaries.length;
+      while ( low < high ) {
+        int middle = ( low + high ) >>> 1;
+        if ( compareMeta.compare( boundaries[middle], value ) <= 0 ) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+  }
+}
@@ -26,10 +26,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.pentaho.di.core.Result;
+import org.pentaho.di.core.ResultFile;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.trans.TransMeta.TransformationType;
+import org.pentaho.di.trans.step.BaseStep;
+import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaDataCombi;
 import org.pentaho.di.trans.step.errorhandling.StreamInterface;
 
@@ -41,6 +45,7 @@ public class SingleThreadedTransExecutor {
   private int nrDone;
   private List<List<StreamInterface>> stepInfoStreams;
   private List<List<RowSet>> stepInfoRowSets;
+  private List<List<RowSet>> stepInputRowSets;
   private LogChannelInterface log;
 
   public SingleThreadedTransExecutor( final Trans trans ) {
@@ -75,6 +80,12 @@ public class SingleThreadedTransExecutor {
       stepInfoRowSets.add( infoRowSets );
     }
 
+    // Remember the input row sets, the steps remove the ones that are finished while reading.
+    //
+    stepInputRowSets = new ArrayList<List<RowSet>>();
+    for ( StepMetaDataCombi combi : steps ) {
+      stepInputRowSets.add( new ArrayList<RowSet>( combi.step.getInputRowSets() ) );
+    }
   }
 
   /**
@@ -269,14 +280,7 @@ public class SingleThreadedTransExecutor {
     // See if the steps support the SingleThreaded transformation type...
     //
     for ( StepMetaDataCombi combi : steps ) {
-      TransformationType[] types = combi.stepMeta.getStepMetaInterface().getSupportedTransformationTypes();
-      boolean ok = false;
-      for ( TransformationType type : types ) {
-        if ( type == TransformationType.SingleThreaded ) {
-          ok = true;
-        }
-      }
-      if ( !ok ) {
+      if ( !isSupported( combi.stepMeta ) ) {
         throw new KettleException( "Step '"
           + combi.stepname + "' of type '" + combi.stepMeta.getStepID()
           + "' is not yet supported in a Single Threaded transformation engine." );
@@ -294,12 +298,52 @@ public class SingleThreadedTransExecutor {
 
   }
 
+  /**
+   * @return true if the given step can be executed by the single threaded engine
+   */
+  public static boolean isSupported( StepMeta stepMeta ) {
+    for ( TransformationType type : stepMeta.getStepMetaInterface().getSupportedTransformationTypes() ) {
+      if ( type == TransformationType.SingleThreaded ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the first step of the given transformation that can't be executed by the single threaded engine, null if
+   *         all the steps can be executed
+   */
+  public static StepMeta getUnsupportedStep( TransMeta transMeta ) {
+    for ( StepMeta stepMeta : transMeta.getSteps() ) {
+      if ( !isSupported( stepMeta ) ) {
+        return stepMeta;
+      }
+    }
+    return null;
+  }
+
   /**
    * Give all steps in the transformation the chance to process all rows on input...
    *
    * @return true if more iterations can be performed. False if this is not the case.
    */
   public boolean oneIteration() throws KettleException {
+    return iterate( true );
+  }
+
+  /**
+   * Give all steps in the transformation the chance to process the rows that are available on their input, without
+   * signaling the end of a batch. Steps that work on the complete stream, like sorting or grouping, keep their state
+   * until their input is done. Use {@link #executeToCompletion()} once no more rows will arrive.
+   *
+   * @return true if more iterations can be performed. False if this is not the case.
+   */
+  public boolean processAvailableRows() throws KettleException {
+    return iterate( false );
+  }
+
+  private boolean iterate( boolean completeBatch ) throws KettleException {
 
     for ( int s = 0; s < steps.size() && !trans.isStopped(); s++ ) {
       if ( !done[s] ) {
@@ -364,7 +408,9 @@ public class SingleThreadedTransExecutor {
 
         // Signal the step that a batch of rows has passed for this iteration (sort rows and all)
         //
-        combi.step.batchComplete();
+        if ( completeBatch ) {
+          combi.step.batchComplete();
+        }
 
         // System.out.println(combi.step.toString()+" : input="+getTotalRows(combi.step.getInputRowSets())+",
         // output="+getTotalRows(combi.step.getOutputRowSets()));
@@ -380,6 +426,91 @@ public class SingleThreadedTransExecutor {
     return nrDone < steps.size() && !trans.isStopped();
   }
 
+  /**
+   * Process all the rows available to the transformation in one go: every step, from start to finish, processes rows
+   * until it is done. Because the steps are sorted, all input of a step is complete by the time it runs and nothing
+   * ever waits for rows. Use this to execute a transformation for a complete set of rows, for example the result rows
+   * of a previous execution, instead of feeding it with {@link #oneIteration()}.
+   *
+   * @return true if all the steps finished without errors, false if a step reported an error or the transformation was
+   *         stopped.
+   */
+  public boolean executeToCompletion() throws KettleException {
+
+    for ( int s = 0; s < steps.size() && !trans.isStopped(); s++ ) {
+      if ( done[s] ) {
+        continue;
+      }
+      StepMetaDataCombi combi = steps.get( s );
+
+      boolean stepDone = false;
+      while ( !stepDone && !trans.isStopped() ) {
+        stepDone = !combi.step.processRow( combi.meta, combi.data );
+        if ( combi.step.getErrors() > 0 ) {
+          return false;
+        }
+      }
+
+      // Make sure the next steps don't wait for rows that will never come.
+      //
+      combi.step.setOutputDone();
+
+      done[s] = stepDone;
+      if ( stepDone ) {
+        nrDone++;
+      }
+    }
+
+    return nrDone == steps.size() && !trans.isStopped();
+  }
+
+  /**
+   * Reset the transformation and its steps so that the same, prepared transformation can be executed again. The
+   * steps are disposed, get new step data, are cleared of counters, errors and rows and are initialized again. The
+   * variables and parameters of the transformation are passed to the steps again so that changed values are picked up.
+   * The result rows and files of the transformation are cleared, the previous result is left untouched.
+   *
+   * @return true if all steps were initialized again, false if this was not the case.
+   * @throws KettleException
+   *           in case a step can't be reset
+   */
+  public boolean reset() throws KettleException {
+
+    for ( int s = 0; s < steps.size(); s++ ) {
+      StepMetaDataCombi combi = steps.get( s );
+      if ( !( combi.step instanceof BaseStep ) ) {
+        throw new KettleException( "Step '"
+          + combi.stepname + "' of type '" + combi.stepMeta.getStepID()
+          + "' can't be reset for another execution of the transformation." );
+      }
+      BaseStep step = (BaseStep) combi.step;
+      step.dispose( combi.meta, combi.data );
+
+      List<RowSet> inputRowSets = step.getInputRowSets();
+      inputRowSets.clear();
+      inputRowSets.addAll( stepInputRowSets.get( s ) );
+
+      combi.data = combi.meta.getStepData();
+      step.setStepDataInterface( combi.data );
+      step.resetForNextExecution();
+      step.initializeVariablesFrom( trans );
+    }
+
+    trans.clearError();
+    trans.setResultRows( new ArrayList<RowMetaAndData>() );
+    trans.setResultFiles( new ArrayList<ResultFile>() );
+
+    done = new boolean[steps.size()];
+    nrDone = 0;
+
+    for ( StepMetaDataCombi combi : steps ) {
+      if ( !combi.step.init( combi.meta, combi.data ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   protected int getTotalRows( List<RowSet> rowSets ) {
     int total = 0;
     for ( RowSet rowSet : rowSets ) {
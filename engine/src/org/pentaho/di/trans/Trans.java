@@ -66,6 +66,7 @@ import org.pentaho.di.core.ExecutorInterface;
 import org.pentaho.di.core.ExtensionDataInterface;
 import org.pentaho.di.core.KettleEnvironment;
 import org.pentaho.di.core.QueueRowSet;
+import org.pentaho.di.core.RingBufferRowSet;
 import org.pentaho.di.core.Result;
 import org.pentaho.di.core.ResultFile;
 import org.pentaho.di.core.RowMetaAndData;
@@ -126,9 +127,10 @@ import org.pentaho.di.resource.ResourceUtil;
 import org.pentaho.di.resource.TopLevelResource;
 import org.pentaho.di.trans.cluster.TransSplitter;
 import org.pentaho.di.trans.performance.StepPerformanceSnapShot;
+import org.pentaho.di.trans.TransMeta.StepSchedulerType;
 import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.BaseStepData.StepExecutionStatus;
-import org.pentaho.di.trans.step.RunThread;
+import org.pentaho.di.trans.step.PooledStepScheduler;
 import org.pentaho.di.trans.step.StepAdapter;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInitThread;
@@ -137,6 +139,9 @@ import org.pentaho.di.trans.step.StepListener;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaDataCombi;
 import org.pentaho.di.trans.step.StepPartitioningMeta;
+import org.pentaho.di.trans.step.StepScheduler;
+import org.pentaho.di.trans.step.ThreadStepScheduler;
+import org.pentaho.di.trans.step.VirtualThreadStepScheduler;
 import org.pentaho.di.trans.steps.mappinginput.MappingInput;
 import org.pentaho.di.trans.steps.mappingoutput.MappingOutput;
 import org.pentaho.di.www.AddExportServlet;
@@ -794,6 +799,11 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
                     ValueMetaString.convertStringToBoolean( System.getProperty( Const.KETTLE_BATCHING_ROWSET ) );
                 if ( batchingRowSet != null && batchingRowSet.booleanValue() ) {
                   rowSet = new BlockingBatchingRowSet( transMeta.getSizeRowset() );
+                } else if ( ( dispatchType == TYPE_DISP_1_1 || dispatchType == TYPE_DISP_N_N )
+                    && isUsingRingBufferRowSets() ) {
+                  // Exactly one step copy writes to and one step copy reads from this row set: no locking needed
+                  //
+                  rowSet = new RingBufferRowSet( transMeta.getSizeRowset() );
                 } else {
                   rowSet = new BlockingRowSet( transMeta.getSizeRowset() );
                 }
@@ -1342,11 +1352,9 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
 
         // Now start all the threads...
         //
+        StepScheduler stepScheduler = createStepScheduler();
         for ( int i = 0; i < steps.size(); i++ ) {
           final StepMetaDataCombi combi = steps.get( i );
-          RunThread runThread = new RunThread( combi );
-          Thread thread = new Thread( runThread );
-          thread.setName( getName() + " - " + combi.stepname );
           ExtensionPointHandler.callExtensionPoint( log, KettleExtensionPoint.StepBeforeStart.id, combi );
           // Call an extension point at the end of the step
           //
@@ -1363,7 +1371,7 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
 
           } );
 
-          thread.start();
+          stepScheduler.startStep( combi, getName() + " - " + combi.stepname );
         }
         break;
 
@@ -1785,6 +1793,52 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
     return sid.step.getProcessed();
   }
 
+  /**
+   * Checks whether lock-free ring buffer row sets can be used on hops between single step copies. The
+   * KETTLE_ROWSET_IMPL variable takes precedence over the setting in the transformation metadata.
+   *
+   * @return true if ring buffer row sets should be used, false otherwise
+   */
+  private boolean isUsingRingBufferRowSets() {
+    String rowSetImpl = environmentSubstitute( getVariable( Const.KETTLE_ROWSET_IMPL ) );
+    if ( !Utils.isEmpty( rowSetImpl ) ) {
+      return Const.ROWSET_IMPL_RING_BUFFER.equalsIgnoreCase( rowSetImpl.trim() );
+    }
+    return transMeta.isUsingRingBufferRowSets();
+  }
+
+  /**
+   * Create the scheduler that runs the step copies of a Normal transformation. The step scheduler type of the
+   * transformation is used if it's set, otherwise the KETTLE_STEP_SCHEDULER variable decides.
+   *
+   * @return the step scheduler
+   */
+  private StepScheduler createStepScheduler() {
+    StepSchedulerType type = transMeta.getStepSchedulerType();
+    if ( type == null ) {
+      type = StepSchedulerType.getStepSchedulerTypeByCode( environmentSubstitute( getVariable(
+        Const.KETTLE_STEP_SCHEDULER ) ) );
+    }
+    if ( type == null ) {
+      type = StepSchedulerType.Threads;
+    }
+    if ( type == StepSchedulerType.Virtual && !VirtualThreadStepScheduler.isSupported() ) {
+      log.logBasic( BaseMessages.getString( PKG, "Trans.Log.VirtualThreadsNotSupported" ) );
+    }
+    if ( log.isDetailed() ) {
+      log.logDetailed( BaseMessages.getString( PKG, "Trans.Log.UsingStepScheduler", type.getDescription() ) );
+    }
+
+    switch ( type ) {
+      case Pool:
+        return PooledStepScheduler.getInstance();
+      case Virtual:
+        return new VirtualThreadStepScheduler();
+      default:
+        return new ThreadStepScheduler();
+    }
+  }
+
   /**
    * Finds the RowSet with the specified name.
    *
@@ -92,6 +92,7 @@ import org.pentaho.di.core.undo.TransAction;
 import org.pentaho.di.core.util.StringUtil;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.core.xml.XMLDocumentCache;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.core.xml.XMLInterface;
 import org.pentaho.di.i18n.BaseMessages;
@@ -251,6 +252,9 @@ public class TransMeta extends AbstractMeta
   /** Whether the transformation is using unique connections. */
   protected boolean usingUniqueConnections;
 
+  /** Whether lock-free ring buffer row sets are used on hops between single step copies. */
+  protected boolean usingRingBufferRowSets;
+
   /** Whether the feedback is shown. */
   protected boolean feedbackShown;
 
@@ -383,6 +387,85 @@ public class TransMeta extends AbstractMeta
   /** The transformation type. */
   protected TransformationType transformationType;
 
+  /**
+   * The StepSchedulerType enum describes the ways the step copies of a Normal transformation can be run: each in a
+   * thread of its own, on a pool of worker threads shared by all transformations or each in a virtual thread.
+   */
+  public enum StepSchedulerType {
+
+    /** One thread per step copy. */
+    Threads( "Threads", BaseMessages.getString( PKG, "TransMeta.StepSchedulerType.Threads" ) ),
+
+      /** A shared, bounded pool of worker threads. */
+      Pool( "Pool", BaseMessages.getString( PKG, "TransMeta.StepSchedulerType.Pool" ) ),
+
+      /** One virtual thread per step copy. */
+      Virtual( "Virtual", BaseMessages.getString( PKG, "TransMeta.StepSchedulerType.Virtual" ) );
+
+    /** The code corresponding to the step scheduler type. */
+    private String code;
+
+    /** The description of the step scheduler type. */
+    private String description;
+
+    private StepSchedulerType( String code, String description ) {
+      this.code = code;
+      this.description = description;
+    }
+
+    /**
+     * Gets the code corresponding to the step scheduler type.
+     *
+     * @return the code
+     */
+    public String getCode() {
+      return code;
+    }
+
+    /**
+     * Gets the description of the step scheduler type.
+     *
+     * @return the description
+     */
+    public String getDescription() {
+      return description;
+    }
+
+    /**
+     * Gets the step scheduler type by code.
+     *
+     * @param code
+     *          the step scheduler type code
+     * @return the step scheduler type or null if the code is empty or unknown
+     */
+    public static StepSchedulerType getStepSchedulerTypeByCode( String code ) {
+      if ( code != null ) {
+        for ( StepSchedulerType type : values() ) {
+          if ( type.code.equalsIgnoreCase( code.trim() ) ) {
+            return type;
+          }
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Gets the step scheduler types descriptions.
+     *
+     * @return the step scheduler types descriptions
+     */
+    public static String[] getStepSchedulerTypesDescriptions() {
+      String[] desc = new String[values().length];
+      for ( int i = 0; i < values().length; i++ ) {
+        desc[i] = values()[i].getDescription();
+      }
+      return desc;
+    }
+  }
+
+  /** The step scheduler of a Normal transformation, null to use the KETTLE_STEP_SCHEDULER variable. */
+  protected StepSchedulerType stepSchedulerType;
+
   // //////////////////////////////////////////////////////////////////////////
 
   /** A list of localized strings corresponding to string descriptions of the undo/redo actions. */
@@ -696,6 +779,7 @@ public class TransMeta extends AbstractMeta
     metricsLogTable = MetricsLogTable.getDefault( this, this );
 
     sizeRowset = Const.ROWS_IN_ROWSET;
+    usingRingBufferRowSets = true;
     sleepTimeEmpty = Const.TIMEOUT_GET_MILLIS;
     sleepTimeFull = Const.TIMEOUT_PUT_MILLIS;
 
@@ -739,6 +823,7 @@ public class TransMeta extends AbstractMeta
     stepsFieldsCache = new HashMap<String, RowMetaInterface>();
     loopCache = new HashMap<String, Boolean>();
     transformationType = TransformationType.Normal;
+    stepSchedulerType = null;
 
     log = LogChannel.GENERAL;
   }
@@ -2421,6 +2506,9 @@ public class TransMeta extends AbstractMeta
     retval.append( "    " ).append( XMLHandler.closeTag( "maxdate" ) ).append( Const.CR );
 
     retval.append( "    " ).append( XMLHandler.addTagValue( "size_rowset", sizeRowset ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "ring_buffer_rowsets", usingRingBufferRowSets ) );
+    retval.append( "    " ).append(
+      XMLHandler.addTagValue( "step_scheduler", stepSchedulerType == null ? null : stepSchedulerType.getCode() ) );
 
     retval.append( "    " ).append( XMLHandler.addTagValue( "sleep_time_empty", sleepTimeEmpty ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "sleep_time_full", sleepTimeFull ) );
@@ -2721,7 +2809,7 @@ public class TransMeta extends AbstractMeta
     // OK, try to load using the VFS stuff...
     Document doc = null;
     try {
-      doc = XMLHandler.loadXMLFile( KettleVFS.getFileObject( fname, parentVariableSpace ) );
+      doc = XMLDocumentCache.getInstance().loadXMLFile( KettleVFS.getFileObject( fname, parentVariableSpace ) );
     } catch ( KettleFileException e ) {
       throw new KettleXMLException( BaseMessages.getString(
         PKG, "TransMeta.Exception.ErrorOpeningOrValidatingTheXMLFile", fname ), e );
@@ -2944,7 +3032,8 @@ public class TransMeta extends AbstractMeta
         importFromMetaStore();
 
         // Handle connections
-        int n = XMLHandler.countNodes( transnode, DatabaseMeta.XML_TAG );
+        List<Node> connectionNodes = XMLHandler.getNodes( transnode, DatabaseMeta.XML_TAG );
+        int n = connectionNodes.size();
         Set<String> privateTransformationDatabases = new HashSet<String>( n );
         if ( log.isDebug() ) {
           log.logDebug( BaseMessages.getString( PKG, "TransMeta.Log.WeHaveConnections", String.valueOf( n ) ) );
@@ -2953,7 +3042,7 @@ public class TransMeta extends AbstractMeta
           if ( log.isDebug() ) {
             log.logDebug( BaseMessages.getString( PKG, "TransMeta.Log.LookingAtConnection" ) + i );
           }
-          Node nodecon = XMLHandler.getSubNodeByNr( transnode, DatabaseMeta.XML_TAG, i );
+          Node nodecon = connectionNodes.get( i );
 
           DatabaseMeta dbcon = new DatabaseMeta( nodecon );
           dbcon.shareVariablesWith( this );
@@ -2980,21 +3069,23 @@ public class TransMeta extends AbstractMeta
 
         // Read the notes...
         Node notepadsnode = XMLHandler.getSubNode( transnode, XML_TAG_NOTEPADS );
-        int nrnotes = XMLHandler.countNodes( notepadsnode, NotePadMeta.XML_TAG );
-        for ( int i = 0; i < nrnotes; i++ ) {
-          Node notepadnode = XMLHandler.getSubNodeByNr( notepadsnode, NotePadMeta.XML_TAG, i );
+        for ( Node notepadnode : XMLHandler.getNodes( notepadsnode, NotePadMeta.XML_TAG ) ) {
           NotePadMeta ni = new NotePadMeta( notepadnode );
           notes.add( ni );
         }
 
         // Handle Steps
-        int s = XMLHandler.countNodes( transnode, StepMeta.XML_TAG );
+        // Get all the step nodes at once: looking them up by number rescans the children of the transformation node
+        // as soon as the lookup cache of XMLHandler is full, which is quadratic for large transformations.
+        //
+        List<Node> stepNodes = XMLHandler.getNodes( transnode, StepMeta.XML_TAG );
+        int s = stepNodes.size();
 
         if ( log.isDebug() ) {
           log.logDebug( BaseMessages.getString( PKG, "TransMeta.Log.ReadingSteps" ) + s + " steps..." );
         }
         for ( int i = 0; i < s; i++ ) {
-          Node stepnode = XMLHandler.getSubNodeByNr( transnode, StepMeta.XML_TAG, i );
+          Node stepnode = stepNodes.get( i );
 
           if ( log.isDebug() ) {
             log.logDebug( BaseMessages.getString( PKG, "TransMeta.Log.LookingAtStep" ) + i );
@@ -3028,9 +3119,7 @@ public class TransMeta extends AbstractMeta
         // Read the error handling code of the steps...
         //
         Node errorHandlingNode = XMLHandler.getSubNode( transnode, XML_TAG_STEP_ERROR_HANDLING );
-        int nrErrorHandlers = XMLHandler.countNodes( errorHandlingNode, StepErrorMeta.XML_TAG );
-        for ( int i = 0; i < nrErrorHandlers; i++ ) {
-          Node stepErrorMetaNode = XMLHandler.getSubNodeByNr( errorHandlingNode, StepErrorMeta.XML_TAG, i );
+        for ( Node stepErrorMetaNode : XMLHandler.getNodes( errorHandlingNode, StepErrorMeta.XML_TAG ) ) {
           StepErrorMeta stepErrorMeta = new StepErrorMeta( this, stepErrorMetaNode, steps );
           if ( stepErrorMeta.getSourceStep() != null ) {
             stepErrorMeta.getSourceStep().setStepErrorMeta( stepErrorMeta ); // a bit of a trick, I know.
@@ -3050,7 +3139,8 @@ public class TransMeta extends AbstractMeta
         // Handle Hops
         //
         Node ordernode = XMLHandler.getSubNode( transnode, XML_TAG_ORDER );
-        n = XMLHandler.countNodes( ordernode, TransHopMeta.XML_TAG );
+        List<Node> hopNodes = XMLHandler.getNodes( ordernode, TransHopMeta.XML_TAG );
+        n = hopNodes.size();
 
         if ( log.isDebug() ) {
           log.logDebug( BaseMessages.getString( PKG, "TransMeta.Log.WeHaveHops" ) + n + " hops..." );
@@ -3059,7 +3149,7 @@ public class TransMeta extends AbstractMeta
           if ( log.isDebug() ) {
             log.logDebug( BaseMessages.getString( PKG, "TransMeta.Log.LookingAtHop" ) + i );
           }
-          Node hopnode = XMLHandler.getSubNodeByNr( ordernode, TransHopMeta.XML_TAG, i );
+          Node hopnode = hopNodes.get( i );
 
           TransHopMeta hopinf = new TransHopMeta( hopnode, steps );
           addTransHop( hopinf );
@@ -3306,6 +3396,9 @@ public class TransMeta extends AbstractMeta
 
         String srowset = XMLHandler.getTagValue( infonode, "size_rowset" );
         sizeRowset = Const.toInt( srowset, Const.ROWS_IN_ROWSET );
+        usingRingBufferRowSets = !"N".equalsIgnoreCase( XMLHandler.getTagValue( infonode, "ring_buffer_rowsets" ) );
+        stepSchedulerType =
+          StepSchedulerType.getStepSchedulerTypeByCode( XMLHandler.getTagValue( infonode, "step_scheduler" ) );
         sleepTimeEmpty =
             Const.toInt( XMLHandler.getTagValue( infonode, "sleep_time_empty" ), Const.TIMEOUT_GET_MILLIS );
         sleepTimeFull = Const.toInt( XMLHandler.getTagValue( infonode, "sleep_time_full" ), Const.TIMEOUT_PUT_MILLIS );
@@ -5351,6 +5444,26 @@ public class TransMeta extends AbstractMeta
     this.usingUniqueConnections = usingUniqueConnections;
   }
 
+  /**
+   * Checks if the transformation uses lock-free ring buffer row sets on hops between a single step copy and another
+   * single step copy. The KETTLE_ROWSET_IMPL variable can be used to override this setting.
+   *
+   * @return true if ring buffer row sets are used, false if blocking row sets are used everywhere
+   */
+  public boolean isUsingRingBufferRowSets() {
+    return usingRingBufferRowSets;
+  }
+
+  /**
+   * Sets whether the transformation uses lock-free ring buffer row sets on hops between single step copies.
+   *
+   * @param usingRingBufferRowSets
+   *          true to use ring buffer row sets, false to use blocking row sets everywhere
+   */
+  public void setUsingRingBufferRowSets( boolean usingRingBufferRowSets ) {
+    this.usingRingBufferRowSets = usingRingBufferRowSets;
+  }
+
   /**
    * Gets a list of the cluster schemas used by the transformation.
    *
@@ -6106,6 +6219,26 @@ public class TransMeta extends AbstractMeta
     this.transformationType = transformationType;
   }
 
+  /**
+   * Gets the way the step copies of this transformation are run when it's a Normal transformation. The
+   * KETTLE_STEP_SCHEDULER variable is used when this isn't set.
+   *
+   * @return the step scheduler type or null to use the KETTLE_STEP_SCHEDULER variable
+   */
+  public StepSchedulerType getStepSchedulerType() {
+    return stepSchedulerType;
+  }
+
+  /**
+   * Sets the way the step copies of this transformation are run when it's a Normal transformation.
+   *
+   * @param stepSchedulerType
+   *          the step scheduler type or null to use the KETTLE_STEP_SCHEDULER variable
+   */
+  public void setStepSchedulerType( StepSchedulerType stepSchedulerType ) {
+    this.stepSchedulerType = stepSchedulerType;
+  }
+
   /**
    * Utility method to write the XML of this transformation to a file, mostly for testing purposes.
    *
@@ -37,8 +37,10 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.pentaho.di.core.BlockingRowSet;
@@ -57,6 +59,7 @@ import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.logging.LogLevel;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.logging.LoggingObjectType;
+import org.pentaho.di.core.row.FrozenRowMeta;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -162,6 +165,12 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
   private Object statusCountersLock = new Object();
 
+  /** Used to wait while the step is paused, notified when the step is resumed or stopped */
+  private final Object pauseLock = new Object();
+
+  /** Signaled by the input row sets when rows are available, so that getRow() doesn't have to poll */
+  private final InputRowSetSignal inputRowSetSignal = new InputRowSetSignal();
+
   /**
    * nr of lines read from previous step(s)
    *
@@ -342,6 +351,12 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
   private static int NR_OF_ROWS_IN_BLOCK = 500;
 
+  /** A partition holding twice the average number of rows is reported as skewed by default */
+  private static final double DEFAULT_PARTITION_SKEW_THRESHOLD = 2.0;
+
+  /** Skew is only reported once the partitions received this many rows on average */
+  private static final long MIN_ROWS_PER_PARTITION_FOR_SKEW = 100L;
+
   private int blockPointer;
 
   /**
@@ -354,6 +369,11 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   private boolean clusteredPartitioning;
 
+  /**
+   * The number of rows sent to each partition of the next step, null if this step doesn't partition its output
+   */
+  private volatile AtomicLongArray partitionRowCounts;
+
   private boolean usingThreadPriorityManagment;
 
   private List<StepListener> stepListeners;
@@ -798,6 +818,48 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     }
   }
 
+  /**
+   * Reset the runtime state of this step so that the same step instance can process another complete stream of rows,
+   * for transformations that are prepared once and executed many times by a single threaded engine. The row counters,
+   * the errors, the first row flag, the stopped flag and the result files are reset and the row sets are cleared,
+   * including their done flags. The step itself needs to be initialized again with fresh step data afterwards.
+   */
+  public void resetForNextExecution() {
+    setLinesRead( 0L );
+    setLinesWritten( 0L );
+    setLinesInput( 0L );
+    setLinesOutput( 0L );
+    setLinesUpdated( 0L );
+    setLinesSkipped( 0L );
+    setLinesRejected( 0L );
+    setErrors( 0L );
+
+    first = true;
+    stopped.set( false );
+    paused.set( false );
+    currentInputRowSetNr = 0;
+    currentOutputRowSetNr = 0;
+    blockPointer = 0;
+    inputRowMeta = null;
+
+    for ( RowSet rowSet : inputRowSets ) {
+      rowSet.clear();
+    }
+    for ( RowSet rowSet : outputRowSets ) {
+      rowSet.clear();
+    }
+    if ( errorRowSet != null ) {
+      errorRowSet.clear();
+    }
+
+    resultFilesLock.writeLock().lock();
+    try {
+      resultFiles.clear();
+    } finally {
+      resultFilesLock.writeLock().unlock();
+    }
+  }
+
   static void cleanupRemoteSteps( List<RemoteStep> remoteSteps ) {
     for ( RemoteStep remoteStep : remoteSteps ) {
       remoteStep.cleanup();
@@ -1215,13 +1277,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
   public void putRow( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
     // Are we pausing the step? If so, stall forever...
     //
-    while ( paused.get() && !stopped.get() ) {
-      try {
-        Thread.sleep( 1 );
-      } catch ( InterruptedException e ) {
-        throw new KettleStepException( e );
-      }
-    }
+    waitWhilePaused();
 
     // Right after the pause loop we have to check if this thread is stopped or
     // not.
@@ -1238,16 +1294,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     // Are we running yet? If not, wait a bit until all threads have been
     // started.
     //
-    if ( this.checkTransRunning == false ) {
-      while ( !trans.isRunning() && !stopped.get() ) {
-        try {
-          Thread.sleep( 1 );
-        } catch ( InterruptedException e ) {
-          // Ignore
-        }
-      }
-      this.checkTransRunning = true;
-    }
+    waitUntilTransformationIsStarted();
 
     // call all row listeners...
     //
@@ -1297,6 +1344,82 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     }
   }
 
+  private void countPartitionRow( int partitionNr ) {
+    AtomicLongArray counts = partitionRowCounts;
+    if ( counts == null || partitionNr >= counts.length() ) {
+      int nrPartitions = partitionNr + 1;
+      if ( nextStepPartitioningMeta.getPartitionSchema() != null ) {
+        nrPartitions = Math.max( nrPartitions, nextStepPartitioningMeta.getPartitionSchema().getPartitionIDs().size() );
+      }
+      AtomicLongArray grown = new AtomicLongArray( nrPartitions );
+      for ( int i = 0; counts != null && i < counts.length(); i++ ) {
+        grown.set( i, counts.get( i ) );
+      }
+      partitionRowCounts = counts = grown;
+    }
+    if ( partitionNr >= 0 ) {
+      counts.incrementAndGet( partitionNr );
+    }
+  }
+
+  /**
+   * @return the number of rows this step copy sent to each of the partitions of the next step or null if it doesn't
+   *         partition its output
+   */
+  public long[] getPartitionRowCounts() {
+    AtomicLongArray counts = partitionRowCounts;
+    if ( counts == null ) {
+      return null;
+    }
+    long[] result = new long[counts.length()];
+    for ( int i = 0; i < result.length; i++ ) {
+      result[i] = counts.get( i );
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of rows in the largest partition divided by the average number of rows per partition: 1.0 for a
+   *         perfectly even distribution, 0.0 if no rows were partitioned (yet)
+   */
+  public double getPartitionSkew() {
+    return calculatePartitionSkew( getPartitionRowCounts() );
+  }
+
+  /**
+   * A step copy is considered skewed if it sent enough rows to tell and the skew reaches the threshold set by
+   * KETTLE_PARTITION_SKEW_THRESHOLD.
+   *
+   * @return true if the rows this step copy sent to the partitions of the next step are unevenly distributed
+   */
+  public boolean isPartitionSkewed() {
+    long[] counts = getPartitionRowCounts();
+    if ( counts == null || counts.length < 2 ) {
+      return false;
+    }
+    double threshold =
+      Const.toDouble( getVariable( Const.KETTLE_PARTITION_SKEW_THRESHOLD ), DEFAULT_PARTITION_SKEW_THRESHOLD );
+    long total = 0L;
+    for ( long count : counts ) {
+      total += count;
+    }
+    return threshold > 0.0
+      && total >= MIN_ROWS_PER_PARTITION_FOR_SKEW * counts.length && calculatePartitionSkew( counts ) >= threshold;
+  }
+
+  static double calculatePartitionSkew( long[] counts ) {
+    if ( counts == null || counts.length == 0 ) {
+      return 0.0;
+    }
+    long total = 0L;
+    long max = 0L;
+    for ( long count : counts ) {
+      total += count;
+      max = Math.max( max, count );
+    }
+    return total == 0L ? 0.0 : (double) max * counts.length / total;
+  }
+
   /**
    * Copy always to all target steps/copies
    *
@@ -1331,6 +1454,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       throw new KettleStepException(
         "Unable to convert a value to integer while calculating the partition number", e );
     }
+    countPartitionRow( partitionNr );
 
     RowSet selectedRowSet = null;
 
@@ -1535,17 +1659,69 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     RowMetaInterface toBeSent;
     RowMetaInterface metaFromRs = rs.getRowMeta();
     if ( metaFromRs == null ) {
-      // RowSet is not initialised so far
-      toBeSent = rowMeta.clone();
+      // RowSet is not initialised so far: the next step reads this copy for every row. If asked, freeze it so that
+      // it can do that without locking
+      //
+      toBeSent = isFreezingRowMeta( rowMeta ) ? new FrozenRowMeta( rowMeta ) : rowMeta.clone();
     } else {
       // use the existing
       toBeSent = metaFromRs;
     }
 
-    while ( !rs.putRow( toBeSent, row ) ) {
-      if ( isStopped() ) {
-        return;
-      }
+    if ( !rs.putRow( toBeSent, row ) && !putRowWait( rs, toBeSent, row ) ) {
+      return;
+    }
+  }
+
+  /**
+   * Freezing is opt-in with KETTLE_FROZEN_ROW_META=Y: steps are free to change the layout of their input row metadata
+   * and a frozen copy doesn't allow that. Only plain row metadata is frozen, other implementations of RowMetaInterface
+   * are cloned like they always were.
+   */
+  private boolean isFreezingRowMeta( RowMetaInterface rowMeta ) {
+    if ( rowMeta.getClass() != RowMeta.class && rowMeta.getClass() != FrozenRowMeta.class ) {
+      return false;
+    }
+    return "Y".equalsIgnoreCase( getVariable( Const.KETTLE_FROZEN_ROW_META ) );
+  }
+
+  /**
+   * Keep offering a row to a full row set until it's accepted or until the step is stopped. When the step runs on a
+   * pooled step scheduler the pool is told that this worker is blocked, so that it can compensate with another one.
+   *
+   * @return true if the row was put, false if the step was stopped first
+   */
+  private boolean putRowWait( RowSet rowSet, RowMetaInterface rowMeta, Object[] row ) {
+    PutRowBlocker blocker = new PutRowBlocker( rowSet, rowMeta, row );
+    try {
+      PooledStepScheduler.managedBlock( blocker );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+    return blocker.put;
+  }
+
+  private class PutRowBlocker implements ForkJoinPool.ManagedBlocker {
+    private final RowSet rowSet;
+    private final RowMetaInterface rowMeta;
+    private final Object[] row;
+    private boolean put;
+
+    PutRowBlocker( RowSet rowSet, RowMetaInterface rowMeta, Object[] row ) {
+      this.rowSet = rowSet;
+      this.rowMeta = rowMeta;
+      this.row = row;
+    }
+
+    @Override
+    public boolean block() {
+      put = rowSet.putRow( rowMeta, row );
+      return isReleasable();
+    }
+
+    @Override
+    public boolean isReleasable() {
+      return put || isStopped();
     }
   }
 
@@ -1565,13 +1741,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     // Are we pausing the step? If so, stall forever...
     //
-    while ( paused.get() && !stopped.get() ) {
-      try {
-        Thread.sleep( 1 );
-      } catch ( InterruptedException e ) {
-        throw new KettleStepException( e );
-      }
-    }
+    waitWhilePaused();
 
     // call all row listeners...
     //
@@ -1601,10 +1771,8 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     // Don't distribute or anything, only go to this rowset!
     //
-    while ( !rowSet.putRow( rowMeta, row ) ) {
-      if ( isStopped() ) {
-        break;
-      }
+    if ( !rowSet.putRow( rowMeta, row ) ) {
+      putRowWait( rowSet, rowMeta, row );
     }
     incrementLinesWritten();
   }
@@ -1664,10 +1832,8 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     }
 
     if ( errorRowSet != null ) {
-      while ( !errorRowSet.putRow( errorRowMeta, errorRowData ) ) {
-        if ( isStopped() ) {
-          break;
-        }
+      if ( !errorRowSet.putRow( errorRowMeta, errorRowData ) ) {
+        putRowWait( errorRowSet, errorRowMeta, errorRowData );
       }
       incrementLinesRejected();
     }
@@ -1742,6 +1908,87 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     }
   }
 
+  /**
+   * Block while the step is paused. The thread is woken up when the step is resumed or stopped.
+   *
+   * @throws KettleStepException
+   *           when the thread is interrupted while waiting
+   */
+  private void waitWhilePaused() throws KettleStepException {
+    if ( !paused.get() ) {
+      return;
+    }
+    synchronized ( pauseLock ) {
+      while ( paused.get() && !stopped.get() ) {
+        try {
+          // Time out once in a while in case somebody changed the shared paused flag directly
+          //
+          pauseLock.wait( 100 );
+        } catch ( InterruptedException e ) {
+          throw new KettleStepException( e );
+        }
+      }
+    }
+  }
+
+  /**
+   * Keep asking an empty row set for a row until one arrives, the row set is done or the step is stopped. Like
+   * putRowWait() this lets a pooled step scheduler compensate for the blocked worker.
+   *
+   * @return the row or null if none arrived
+   */
+  private Object[] getRowWait( RowSet rowSet ) {
+    GetRowBlocker blocker = new GetRowBlocker( rowSet );
+    try {
+      PooledStepScheduler.managedBlock( blocker );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+    return blocker.row;
+  }
+
+  private class GetRowBlocker implements ForkJoinPool.ManagedBlocker {
+    private final RowSet rowSet;
+    private Object[] row;
+
+    GetRowBlocker( RowSet rowSet ) {
+      this.rowSet = rowSet;
+    }
+
+    @Override
+    public boolean block() {
+      row = rowSet.getRow();
+      return isReleasable();
+    }
+
+    @Override
+    public boolean isReleasable() {
+      return row != null || rowSet.isDone() || stopped.get();
+    }
+  }
+
+  /**
+   * Run the given action once, as soon as one of the input row sets of this step has rows available or is done, or
+   * when the step is stopped or resumed. Used by step schedulers that don't keep a thread parked per step copy.
+   *
+   * @param action
+   *          the action to run
+   * @return false if one of the input row sets doesn't signal new rows, the caller has to poll the step then
+   */
+  public boolean notifyOnInput( Runnable action ) {
+    return inputRowSetSignal.notifyOnInput( inputRowSets, action );
+  }
+
+  /**
+   * Wake up the step thread if it's waiting for input or waiting while paused.
+   */
+  private void wakeUp() {
+    synchronized ( pauseLock ) {
+      pauseLock.notifyAll();
+    }
+    inputRowSetSignal.signal();
+  }
+
   /**
    * Wait until the transformation is completely running and all threads have been started.
    */
@@ -1771,13 +2018,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     // Are we pausing the step? If so, stall forever...
     //
-    while ( paused.get() && !stopped.get() ) {
-      try {
-        Thread.sleep( 100 );
-      } catch ( InterruptedException e ) {
-        throw new KettleStepException( e );
-      }
-    }
+    waitWhilePaused();
 
     if ( stopped.get() ) {
       if ( log.isDebug() ) {
@@ -1847,14 +2088,14 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     // alternatively.
     // So in THIS particular case it is safe to just read 100 rows from one
     // rowset, then switch to another etc.
-    // We can use timeouts to switch from one to another...
     //
+    int emptyRowSets = 0;
     while ( row == null && !isStopped() ) {
       // Get a row from the input in row set ...
-      // Timeout immediately if nothing is there to read.
+      // Don't wait if nothing is there to read.
       // We will then switch to the next row set to read from...
       //
-      row = inputRowSet.getRowWait( 1, TimeUnit.MILLISECONDS );
+      row = inputRowSet.getRowWait( 0, TimeUnit.MILLISECONDS );
       if ( row != null ) {
         incrementLinesRead();
         blockPointer++;
@@ -1865,7 +2106,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
         // the input stream and move on to the next one...
         //
         if ( inputRowSet.isDone() ) {
-          row = inputRowSet.getRowWait( 1, TimeUnit.MILLISECONDS );
+          row = inputRowSet.getRowWait( 0, TimeUnit.MILLISECONDS );
           if ( row == null ) {
             inputRowSets.remove( currentInputRowSetNr );
             if ( inputRowSets.isEmpty() ) {
@@ -1875,8 +2116,27 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
             incrementLinesRead();
           }
         }
-        nextInputStream();
-        inputRowSet = currentInputStream();
+
+        if ( row == null ) {
+          nextInputStream();
+          inputRowSet = currentInputStream();
+
+          // None of the input row sets has data: sleep until one of them signals us.
+          // A row set that doesn't keep our listener never signals, then we wait for the next row set a moment instead
+          //
+          if ( ++emptyRowSets >= inputRowSets.size() ) {
+            emptyRowSets = 0;
+            if ( inputRowSetSignal.register( inputRowSets ) ) {
+              inputRowSetSignal.await( inputRowSets, Const.TIMEOUT_GET_MILLIS, TimeUnit.MILLISECONDS );
+            } else {
+              row = inputRowSet.getRowWait( 1, TimeUnit.MILLISECONDS );
+              if ( row != null ) {
+                incrementLinesRead();
+                blockPointer++;
+              }
+            }
+          }
+        }
       }
     }
 
@@ -2117,13 +2377,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
   public Object[] getRowFrom( RowSet rowSet ) throws KettleStepException {
     // Are we pausing the step? If so, stall forever...
     //
-    while ( paused.get() && !stopped.get() ) {
-      try {
-        Thread.sleep( 10 );
-      } catch ( InterruptedException e ) {
-        throw new KettleStepException( e );
-      }
-    }
+    waitWhilePaused();
 
     // Have all threads started?
     // Are we running yet? If not, wait a bit until all threads have been
@@ -2156,15 +2410,8 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     // Grab a row... If nothing received after a timeout, try again.
     //
     rowData = rowSet.getRow();
-    while ( rowData == null && !rowSet.isDone() && !stopped.get() ) {
-      rowData = rowSet.getRow();
-
-      // Verify deadlocks!
-      //
-      /*
-       * if (rowData==null) { if (getInputRowSets().size()>1 && getLinesRead()==deadLockCounter) {
-       * verifyInputDeadLock(); } deadLockCounter=getLinesRead(); }
-       */
+    if ( rowData == null && !rowSet.isDone() && !stopped.get() ) {
+      rowData = getRowWait( rowSet );
     }
 
     // Still nothing: no more rows to be had?
@@ -2894,6 +3141,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
   @Override
   public void stopAll() {
     stopped.set( true );
+    wakeUp();
     trans.stopAll();
   }
 
@@ -2935,6 +3183,9 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
   @Override
   public void setStopped( boolean stopped ) {
     this.stopped.set( stopped );
+    if ( stopped ) {
+      wakeUp();
+    }
   }
 
   /*
@@ -2975,6 +3226,9 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   public void setPaused( boolean paused ) {
     this.paused.set( paused );
+    if ( !paused ) {
+      wakeUp();
+    }
   }
 
   /**
@@ -3027,6 +3281,13 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     Calendar cal = Calendar.getInstance();
     stop_time = cal.getTime();
 
+    // There is no warning level: log the skew as an error so it stands out from the row counts. The step goes on.
+    //
+    if ( isPartitionSkewed() ) {
+      logError( BaseMessages.getString( PKG, "BaseStep.Log.PartitionSkew", String.format( "%.2f",
+        getPartitionSkew() ), Arrays.toString( getPartitionRowCounts() ) ) );
+    }
+
     // Here we are completely done with the transformation.
     // Call all the attached listeners and notify the outside world that the step has finished.
     //
@@ -3238,6 +3499,70 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
     return size;
   }
 
+  /**
+   * Read the rows that are already waiting on the input row sets, without waiting for more, so that a step can process
+   * them as a block. This keeps the latency of a single row the same while giving block-wise work like the conversion
+   * of lazily converted fields something to work with under load.
+   *
+   * @param firstRow
+   *          the row that was just read with {@link #getRow()}
+   * @param rows
+   *          receives the first row followed by the rows that were read, at most rows.length
+   * @return the number of rows in the block, at least 1
+   * @throws KettleException
+   *           in case reading a row fails
+   */
+  protected int getAvailableRows( Object[] firstRow, Object[][] rows ) throws KettleException {
+    rows[0] = firstRow;
+    int nrRows = 1;
+    while ( nrRows < rows.length && rowsetInputSize() > 0 ) {
+      Object[] row = getRow();
+      if ( row == null ) {
+        break;
+      }
+      rows[nrRows++] = row;
+    }
+    return nrRows;
+  }
+
+  /**
+   * Wait until one of the input row sets of this step has rows available or is done, without reading a row. Steps that
+   * buffer rows can use this to stop waiting for more input after a while.
+   *
+   * @param timeout
+   *          the maximum time to wait
+   * @param unit
+   *          the unit of the timeout
+   * @return true if there is something to read (or an input row set is done), false if the timeout expired
+   */
+  protected boolean waitForInput( long timeout, TimeUnit unit ) {
+    if ( inputRowSets.isEmpty() ) {
+      return true;
+    }
+    return inputRowSetSignal.await( inputRowSets, timeout, unit );
+  }
+
+  /**
+   * @return the total time in ms that this step spent waiting for rows on its input row sets
+   */
+  public long getInputIdleTime() {
+    return inputRowSetSignal.getIdleTime();
+  }
+
+  /**
+   * @return the number of times this step was woken up by one of its input row sets while waiting for rows
+   */
+  public long getInputWakeups() {
+    return inputRowSetSignal.getWakeups();
+  }
+
+  /**
+   * @return the average time in microseconds between a row arriving on an idle input and this step waking up
+   */
+  public double getAverageInputWakeupLatency() {
+    return inputRowSetSignal.getAverageWakeupLatency();
+  }
+
   /**
    * Perform actions to stop a running step. This can be stopping running SQL queries (cancel), etc. Default it doesn't
    * do anything.
@@ -0,0 +1,325 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.RowSetListener;
+
+/**
+ * A "data available" signal shared by all the input row sets of a step. Instead of polling every input row set in turn
+ * with a short timeout, the reading step parks on this signal and the writing steps wake it up when they add a row to
+ * one of the row sets or when a row set is done.<br>
+ * <br>
+ * Only the thread of the step itself is supposed to call {@link #await(List, long, TimeUnit)}. Step schedulers that
+ * don't keep a thread per step can ask to be called back instead with {@link #notifyOnInput(List, Runnable)}.<br>
+ * <br>
+ * A row set that already has another listener keeps it, and a row set implementation that doesn't support listeners
+ * never signals. The readers of such row sets have to keep polling them, see {@link #register(List)}.
+ */
+public class InputRowSetSignal implements RowSetListener {
+
+  private volatile Thread waiter;
+
+  /** The action to run once on the next signal, see notifyOnInput() */
+  private final AtomicReference<Runnable> callback = new AtomicReference<Runnable>();
+
+  /** A row set only signals a row once it holds this many rows, see awaitRows() */
+  private volatile int signalRows = 1;
+
+  /** The time (System.nanoTime()) at which a parked waiter was last signaled */
+  private volatile long signalTime;
+
+  // These counters are only updated by the waiting thread
+  //
+  private volatile long idleNanos;
+  private volatile long wakeups;
+  private volatile long wakeupLatencyNanos;
+
+  @Override
+  public void isEmpty( RowSet rowSet ) {
+    // Nothing to do here, the reading side has to go looking for data anyway.
+  }
+
+  @Override
+  public void rowAdded( RowSet rowSet ) {
+    if ( signalRows <= 1 || rowSet.size() >= signalRows ) {
+      signal();
+    }
+  }
+
+  @Override
+  public void done( RowSet rowSet ) {
+    signal();
+  }
+
+  /**
+   * Wake up the waiting step thread, if any. Also used to break the wait when the step is stopped.
+   */
+  public void signal() {
+    Thread thread = waiter;
+    if ( thread != null ) {
+      signalTime = System.nanoTime();
+      LockSupport.unpark( thread );
+    }
+    if ( callback.get() != null ) {
+      Runnable action = callback.getAndSet( null );
+      if ( action != null ) {
+        action.run();
+      }
+    }
+  }
+
+  /**
+   * Run the given action once, as soon as one of the given row sets has rows available or is done, or when the step is
+   * woken up. If there is input available right now the action is run immediately by the calling thread. Only one
+   * action can be pending at any time, a new one replaces the previous one.
+   *
+   * @param rowSets
+   *          the input row sets of the step
+   * @param action
+   *          the action to run, typically resubmitting the step to a pool
+   * @return false if not all the row sets signal us, in which case the action is not registered and the caller has to
+   *         poll the row sets
+   */
+  public boolean notifyOnInput( List<RowSet> rowSets, Runnable action ) {
+    if ( !register( rowSets ) ) {
+      return false;
+    }
+    callback.set( action );
+
+    // Don't miss the rows that arrived before we were registered
+    //
+    if ( hasInput( rowSets ) ) {
+      Runnable pending = callback.getAndSet( null );
+      if ( pending != null ) {
+        pending.run();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Block until at least one of the given row sets has rows available or is done, or until the timeout expires.
+   *
+   * @param rowSets
+   *          the input row sets of the step
+   * @param timeout
+   *          the maximum time to wait
+   * @param unit
+   *          the unit of the timeout
+   * @return true if there is something to read (or a row set is done), false if we timed out or were interrupted
+   */
+  public boolean await( List<RowSet> rowSets, long timeout, TimeUnit unit ) {
+    long start = System.nanoTime();
+    long deadline = start + unit.toNanos( timeout );
+
+    // Make sure we're registered with all the input row sets, even the ones that were added after the start.
+    // This has to happen before we look at the row sets to not miss a signal.
+    //
+    register( rowSets );
+
+    waiter = Thread.currentThread();
+    try {
+      while ( true ) {
+        if ( hasInput( rowSets ) ) {
+          return true;
+        }
+        long remaining = deadline - System.nanoTime();
+        if ( remaining <= 0 || Thread.currentThread().isInterrupted() ) {
+          return false;
+        }
+
+        long parkStart = System.nanoTime();
+        park( remaining );
+        long wokenUp = System.nanoTime();
+
+        long lastSignal = signalTime;
+        if ( lastSignal >= parkStart ) {
+          wakeups++;
+          wakeupLatencyNanos += wokenUp - lastSignal;
+        }
+      }
+    } finally {
+      waiter = null;
+      idleNanos += System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * Block until the given row sets hold at least the given number of rows together, until they are all done or until
+   * the timeout expires. While we wait, a row set only wakes us up once it holds its share of the rows: if the row sets
+   * hold enough rows together, at least one of them holds its share.
+   *
+   * @param rowSets
+   *          the input row sets of the step
+   * @param nrRows
+   *          the number of rows to wait for
+   * @param timeout
+   *          the maximum time to wait
+   * @param unit
+   *          the unit of the timeout
+   * @return true if the rows are there or all the row sets are done, false if we timed out or were interrupted
+   */
+  public boolean awaitRows( List<RowSet> rowSets, int nrRows, long timeout, TimeUnit unit ) {
+    long start = System.nanoTime();
+    long deadline = start + unit.toNanos( timeout );
+
+    register( rowSets );
+
+    signalRows = Math.max( 1, ( nrRows + rowSets.size() - 1 ) / Math.max( 1, rowSets.size() ) );
+    waiter = Thread.currentThread();
+    try {
+      while ( true ) {
+        if ( hasRows( rowSets, nrRows ) ) {
+          return true;
+        }
+        long remaining = deadline - System.nanoTime();
+        if ( remaining <= 0 || Thread.currentThread().isInterrupted() ) {
+          return false;
+        }
+
+        long parkStart = System.nanoTime();
+        park( remaining );
+        long wokenUp = System.nanoTime();
+
+        long lastSignal = signalTime;
+        if ( lastSignal >= parkStart ) {
+          wakeups++;
+          wakeupLatencyNanos += wokenUp - lastSignal;
+        }
+      }
+    } finally {
+      waiter = null;
+      signalRows = 1;
+      idleNanos += System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * Register this signal as the listener of the given row sets. A listener that was installed by somebody else is
+   * left in place.
+   *
+   * @param rowSets
+   *          the input row sets of the step
+   * @return true if all the row sets signal us, false if at least one of them has another listener or doesn't keep
+   *         the listener it was given
+   */
+  public boolean register( List<RowSet> rowSets ) {
+    boolean signaling = true;
+    for ( int i = 0; i < rowSets.size(); i++ ) {
+      RowSet rowSet = rowSets.get( i );
+      RowSetListener listener = rowSet.getRowSetListener();
+      if ( listener == null ) {
+        rowSet.setRowSetListener( this );
+        listener = rowSet.getRowSetListener();
+      }
+      if ( listener != this ) {
+        signaling = false;
+      }
+    }
+    return signaling;
+  }
+
+  private void park( final long nanos ) {
+    if ( !( Thread.currentThread() instanceof ForkJoinWorkerThread ) ) {
+      LockSupport.parkNanos( this, nanos );
+      return;
+    }
+
+    // Running on a pooled step scheduler: tell the pool that this worker is blocked so that it can compensate.
+    // Otherwise the steps that have to produce our input might never get a worker thread.
+    //
+    try {
+      PooledStepScheduler.managedBlock( new ForkJoinPool.ManagedBlocker() {
+        private boolean parked;
+
+        @Override
+        public boolean block() {
+          LockSupport.parkNanos( InputRowSetSignal.this, nanos );
+          parked = true;
+          return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+          return parked;
+        }
+      } );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean hasInput( List<RowSet> rowSets ) {
+    for ( int i = 0; i < rowSets.size(); i++ ) {
+      RowSet rowSet = rowSets.get( i );
+      if ( rowSet.size() > 0 || rowSet.isDone() ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean hasRows( List<RowSet> rowSets, int nrRows ) {
+    int size = 0;
+    boolean allDone = true;
+    for ( int i = 0; i < rowSets.size(); i++ ) {
+      RowSet rowSet = rowSets.get( i );
+      size += rowSet.size();
+      allDone &= rowSet.isDone();
+    }
+    return allDone || size >= nrRows;
+  }
+
+  /**
+   * @return the total time in ms that the step spent waiting for input
+   */
+  public long getIdleTime() {
+    return TimeUnit.NANOSECONDS.toMillis( idleNanos );
+  }
+
+  /**
+   * @return the number of times the waiting step was woken up by one of its input row sets
+   */
+  public long getWakeups() {
+    return wakeups;
+  }
+
+  /**
+   * @return the average time in microseconds between a signal and the step thread waking up
+   */
+  public double getAverageWakeupLatency() {
+    long nr = wakeups;
+    if ( nr == 0 ) {
+      return 0.0;
+    }
+    return ( (double) wakeupLatencyNanos ) / nr / 1000.0;
+  }
+}
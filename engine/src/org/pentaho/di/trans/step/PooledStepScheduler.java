@@ -0,0 +1,486 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.util.EnvUtil;
+
+/**
+ * Runs the step copies of all the transformations in the JVM on one shared, bounded pool of worker threads instead of
+ * giving every step copy a thread of its own.<br>
+ * <br>
+ * A step copy is a task that processes rows for a short time slice and then yields its worker to the other tasks. It
+ * only runs while it can make progress: when one of its input row sets has rows or is done (or it has no input at all)
+ * and none of its output row sets is full. A step copy that waits for input is resubmitted as soon as one of its input
+ * row sets signals new rows, one that waits for room in its output or that is paused checks again after a short
+ * back-off.<br>
+ * <br>
+ * When processRow() blocks anyway (for example on a specific info row set or a full output row set) the pool is told
+ * so through {@link #managedBlock(java.util.concurrent.ForkJoinPool.ManagedBlocker)} and temporarily adds a worker, so
+ * the steps that have to make room or produce the rows always get to run. A step can also block where the pool can't
+ * see it, for example on a database or a socket. A watchdog looks for step copies that spend more than
+ * {@link #STALL_MILLIS} ms in one processRow() call outside of a managed block and starts a helper thread for each of
+ * them. A helper runs the step copies that are waiting for a worker until the stalled step copies continue.<br>
+ * <br>
+ * The extra threads, the ones the pool adds for managed blocks and the helpers together, are capped at
+ * {@link #EXTRA_THREADS_PER_WORKER} per worker thread. Beyond the cap a step simply blocks its worker: a lot of
+ * blocking steps then slow the pool down instead of making it grow without bounds.<br>
+ * <br>
+ * The size of the pool is set with the KETTLE_STEP_SCHEDULER_POOL_SIZE variable, it defaults to the number of
+ * available processors.
+ */
+public class PooledStepScheduler implements StepScheduler {
+
+  /** The time a step copy can keep its worker before it yields to the others */
+  private static final long TIME_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos( 10 );
+
+  /** The first and the maximum back-off of a step copy that can't make progress, in microseconds */
+  private static final long MIN_BACKOFF_MICROS = 50;
+  private static final long MAX_BACKOFF_MICROS = TimeUnit.MILLISECONDS.toMicros( Const.TIMEOUT_GET_MILLIS );
+
+  /** A processRow() call that takes longer than this outside of a managed block is considered to block its worker */
+  public static final long STALL_MILLIS = 1000L;
+
+  /** The maximum number of extra threads per worker thread of the pool */
+  public static final int EXTRA_THREADS_PER_WORKER = 4;
+
+  private static final long HELPER_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+  /** The task the current thread is running, if any */
+  private static final ThreadLocal<StepTask> currentTask = new ThreadLocal<StepTask>();
+
+  private static PooledStepScheduler instance;
+
+  private final ForkJoinPool pool;
+  private final ScheduledExecutorService timer;
+  private final ThreadFactory helperFactory;
+  private final int maxExtraThreads;
+
+  private final AtomicInteger extraThreads = new AtomicInteger();
+  private final AtomicInteger helpers = new AtomicInteger();
+
+  /** The step copies that are started and not finished yet */
+  private final Set<StepTask> tasks = ConcurrentHashMap.newKeySet();
+
+  /** The step copies that are waiting for a worker */
+  private final Set<StepTask> scheduledTasks = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Create a scheduler with a pool of its own.
+   *
+   * @param poolSize
+   *          the number of worker threads
+   */
+  public PooledStepScheduler( int poolSize ) {
+    this( poolSize, poolSize * EXTRA_THREADS_PER_WORKER );
+  }
+
+  /**
+   * Create a scheduler with a pool of its own.
+   *
+   * @param poolSize
+   *          the number of worker threads
+   * @param maxExtraThreads
+   *          the maximum number of threads that can be added to compensate for blocked workers
+   */
+  public PooledStepScheduler( int poolSize, int maxExtraThreads ) {
+    this.maxExtraThreads = maxExtraThreads;
+
+    pool = new ForkJoinPool( poolSize, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+      @Override
+      public ForkJoinWorkerThread newThread( ForkJoinPool forkJoinPool ) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( forkJoinPool );
+        thread.setName( "Kettle step pool worker " + thread.getPoolIndex() );
+        return thread;
+      }
+    }, null, true );
+
+    timer = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+      @Override
+      public Thread newThread( Runnable runnable ) {
+        Thread thread = new Thread( runnable, "Kettle step pool timer" );
+        thread.setDaemon( true );
+        return thread;
+      }
+    } );
+
+    helperFactory = new ThreadFactory() {
+      @Override
+      public Thread newThread( Runnable runnable ) {
+        Thread thread = new Thread( runnable, "Kettle step pool helper" );
+        thread.setDaemon( true );
+        return thread;
+      }
+    };
+
+    timer.scheduleWithFixedDelay( new Runnable() {
+      @Override
+      public void run() {
+        checkStalledTasks();
+      }
+    }, STALL_MILLIS / 4, STALL_MILLIS / 4, TimeUnit.MILLISECONDS );
+  }
+
+  /**
+   * @return the scheduler shared by all the transformations in this JVM
+   */
+  public static synchronized PooledStepScheduler getInstance() {
+    if ( instance == null ) {
+      int poolSize =
+        Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_STEP_SCHEDULER_POOL_SIZE ), Runtime.getRuntime()
+          .availableProcessors() );
+      instance = new PooledStepScheduler( Math.max( 1, poolSize ) );
+    }
+    return instance;
+  }
+
+  /**
+   * Block the current thread with the given blocker. When a step copy of a pooled scheduler blocks, the pool can add
+   * a worker for the time being, within the limit of extra threads of the scheduler. Beyond that limit the worker
+   * simply blocks. On any other thread this is the same as
+   * {@link ForkJoinPool#managedBlock(java.util.concurrent.ForkJoinPool.ManagedBlocker)}.
+   *
+   * @param blocker
+   *          the blocker
+   * @throws InterruptedException
+   *           if the blocker was interrupted
+   */
+  public static void managedBlock( ForkJoinPool.ManagedBlocker blocker ) throws InterruptedException {
+    StepTask task = currentTask.get();
+    if ( task == null ) {
+      ForkJoinPool.managedBlock( blocker );
+      return;
+    }
+    task.inManagedBlock = true;
+    try {
+      task.getScheduler().block( blocker );
+    } finally {
+      task.inManagedBlock = false;
+    }
+  }
+
+  private void block( ForkJoinPool.ManagedBlocker blocker ) throws InterruptedException {
+    if ( Thread.currentThread() instanceof ForkJoinWorkerThread && reserveExtraThread() ) {
+      try {
+        ForkJoinPool.managedBlock( blocker );
+      } finally {
+        extraThreads.decrementAndGet();
+      }
+      return;
+    }
+    while ( !blocker.isReleasable() && !blocker.block() ) {
+      // Keep blocking without compensation
+    }
+  }
+
+  private boolean reserveExtraThread() {
+    if ( extraThreads.incrementAndGet() <= maxExtraThreads ) {
+      return true;
+    }
+    extraThreads.decrementAndGet();
+    return false;
+  }
+
+  @Override
+  public void startStep( StepMetaDataCombi combi, String threadName ) {
+    StepTask task = new StepTask( combi, threadName );
+    tasks.add( task );
+    task.schedule();
+  }
+
+  /**
+   * @return the number of worker threads that are currently started, including the ones added to compensate for
+   *         blocked workers
+   */
+  public int getPoolSize() {
+    return pool.getPoolSize();
+  }
+
+  /**
+   * @return the number of worker threads the pool aims for
+   */
+  public int getParallelism() {
+    return pool.getParallelism();
+  }
+
+  /**
+   * @return the number of helper threads that currently run step copies in place of stalled workers
+   */
+  public int getNrHelpers() {
+    return helpers.get();
+  }
+
+  /**
+   * Stop the worker threads of this scheduler once all submitted step copies are done.
+   */
+  public void shutdown() {
+    pool.shutdown();
+    timer.shutdown();
+  }
+
+  private int countStalledTasks() {
+    long now = System.nanoTime();
+    int stalled = 0;
+    for ( StepTask task : tasks ) {
+      if ( task.isStalled( now ) ) {
+        stalled++;
+      }
+    }
+    return stalled;
+  }
+
+  /**
+   * Start a helper for every stalled step copy that doesn't have one yet, within the limit of extra threads.
+   */
+  private void checkStalledTasks() {
+    int stalled = countStalledTasks();
+    while ( helpers.get() < stalled && reserveExtraThread() ) {
+      helpers.incrementAndGet();
+      helperFactory.newThread( new Runnable() {
+        @Override
+        public void run() {
+          runHelper();
+        }
+      } ).start();
+    }
+  }
+
+  /**
+   * Run the step copies that wait for a worker until there are no more stalled step copies than helpers.
+   */
+  private void runHelper() {
+    try {
+      while ( !pool.isShutdown() ) {
+        StepTask next = null;
+        for ( StepTask task : scheduledTasks ) {
+          next = task;
+          break;
+        }
+        if ( next != null ) {
+          next.run();
+        } else if ( countStalledTasks() < helpers.get() ) {
+          return;
+        } else {
+          LockSupport.parkNanos( this, HELPER_IDLE_NANOS );
+        }
+      }
+    } finally {
+      helpers.decrementAndGet();
+      extraThreads.decrementAndGet();
+    }
+  }
+
+  /**
+   * A step copy that runs in time slices on the pool.
+   */
+  private class StepTask extends RunThread {
+    private final String threadName;
+    private final int rowSetSize;
+
+    /** Set while the task is waiting to be resubmitted by either the input signal or the timer */
+    private final AtomicBoolean suspended = new AtomicBoolean();
+
+    /** Set while the task waits for a worker, the pool and the helpers both try to claim it */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final Runnable wakeUp = new Runnable() {
+      @Override
+      public void run() {
+        if ( suspended.compareAndSet( true, false ) ) {
+          schedule();
+        }
+      }
+    };
+
+    // Watched by the stall detection
+    //
+    private volatile long callStart;
+    private volatile Thread callThread;
+    private volatile boolean inManagedBlock;
+
+    // Only used by the thread running the task, the pool takes care of the visibility between workers
+    //
+    private boolean started;
+    private long backoffMicros;
+
+    StepTask( StepMetaDataCombi combi, String threadName ) {
+      super( combi );
+      this.threadName = threadName;
+      this.rowSetSize = combi.step.getTrans().getTransMeta().getSizeRowset();
+    }
+
+    PooledStepScheduler getScheduler() {
+      return PooledStepScheduler.this;
+    }
+
+    void schedule() {
+      scheduled.set( true );
+      scheduledTasks.add( this );
+      pool.execute( this );
+    }
+
+    boolean isStalled( long now ) {
+      Thread thread = callThread;
+      long start = callStart;
+      if ( thread == null || now - start < TimeUnit.MILLISECONDS.toNanos( STALL_MILLIS ) ) {
+        return false;
+      }
+      // A managed block on a worker of the pool is compensated by the pool itself
+      //
+      return !inManagedBlock || !( thread instanceof ForkJoinWorkerThread );
+    }
+
+    @Override
+    public void run() {
+      if ( !scheduled.compareAndSet( true, false ) ) {
+        return; // Claimed by another worker or by a helper
+      }
+      scheduledTasks.remove( this );
+
+      Thread worker = Thread.currentThread();
+      String workerName = worker.getName();
+      worker.setName( threadName );
+      currentTask.set( this );
+      try {
+        runSlice();
+      } finally {
+        currentTask.remove();
+        worker.setName( workerName );
+      }
+    }
+
+    private void runSlice() {
+      StepInterface step = getStep();
+      boolean finished = false;
+      try {
+        if ( !started ) {
+          started = true;
+          startRun();
+        }
+
+        long deadline = System.nanoTime() + TIME_SLICE_NANOS;
+        while ( true ) {
+          if ( step.isStopped() ) {
+            finished = true;
+            return;
+          }
+          if ( !canMakeProgress( step ) ) {
+            suspend( step );
+            return;
+          }
+          backoffMicros = 0;
+          if ( !processRow( step ) ) {
+            finished = true;
+            return;
+          }
+          if ( System.nanoTime() - deadline > 0 ) {
+            // Yield to the other step copies
+            //
+            schedule();
+            return;
+          }
+        }
+      } catch ( Throwable t ) {
+        finished = true;
+        handleError( t );
+      } finally {
+        if ( finished ) {
+          tasks.remove( this );
+          finishRun();
+        }
+      }
+    }
+
+    private boolean processRow( StepInterface step ) throws KettleException {
+      callStart = System.nanoTime();
+      callThread = Thread.currentThread();
+      try {
+        return step.processRow( getMeta(), getData() );
+      } finally {
+        callThread = null;
+      }
+    }
+
+    private boolean canMakeProgress( StepInterface step ) {
+      if ( step.isPaused() ) {
+        return false;
+      }
+      List<RowSet> outputRowSets = step.getOutputRowSets();
+      for ( int i = 0; i < outputRowSets.size(); i++ ) {
+        if ( outputRowSets.get( i ).size() >= rowSetSize ) {
+          return false;
+        }
+      }
+      return hasInput( step );
+    }
+
+    private boolean hasInput( StepInterface step ) {
+      List<RowSet> inputRowSets = step.getInputRowSets();
+      if ( inputRowSets.isEmpty() ) {
+        return true;
+      }
+      for ( int i = 0; i < inputRowSets.size(); i++ ) {
+        RowSet rowSet = inputRowSets.get( i );
+        if ( rowSet.size() > 0 || rowSet.isDone() ) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void suspend( StepInterface step ) {
+      suspended.set( true );
+
+      // Waiting for input: the input row sets wake us up, the timer is only a safety net.
+      // Otherwise, or if one of the input row sets doesn't signal, back off exponentially until there is input, the
+      // downstream steps made room or the step is resumed.
+      //
+      long delay;
+      if ( step instanceof BaseStep && !step.isPaused() && !hasInput( step )
+        && ( (BaseStep) step ).notifyOnInput( wakeUp ) ) {
+        delay = MAX_BACKOFF_MICROS;
+      } else {
+        backoffMicros = backoffMicros == 0 ? MIN_BACKOFF_MICROS : Math.min( backoffMicros * 2, MAX_BACKOFF_MICROS );
+        delay = backoffMicros;
+      }
+      if ( suspended.get() ) {
+        timer.schedule( wakeUp, delay, TimeUnit.MICROSECONDS );
+      }
+    }
+  }
+}
@@ -26,9 +26,11 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -36,6 +38,7 @@ import java.net.SocketTimeoutException;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -44,6 +47,8 @@ import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
 
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.pentaho.di.core.BlockingRowSet;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.encryption.CertificateGenEncryptUtil;
@@ -71,6 +76,25 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 
   private static final long TIMEOUT_IN_SECONDS = 30;
 
+  /** The default number of rows in a block of the block transfer protocol */
+  private static final int DEFAULT_BLOCK_SIZE = 1000;
+
+  /** The default number of blocks a reader accepts before it has passed on the rows of the first one */
+  private static final int DEFAULT_BLOCK_CREDITS = 4;
+
+  /**
+   * How long after the connection was accepted the writer waits for the hello of the reader before it falls back to
+   * sending rows one by one. The reader sends its hello right after connecting, so this only matters for readers from
+   * before the block transfer protocol, and only if the first row is available before the time is up.
+   */
+  private static final int HANDSHAKE_TIMEOUT_MILLIS = 500;
+
+  /** The size of the hello of the reader: magic, protocol version and number of credits */
+  private static final int HELLO_SIZE = 12;
+
+  /** How often the writer checks if it was stopped while it is waiting for a credit */
+  private static final int CREDIT_POLL_MILLIS = 1000;
+
   /** The target or source slave server with which we're exchanging data */
   private String targetSlaveServerName;
 
@@ -112,6 +136,16 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 
   private GZIPOutputStream gzipOutputStream;
 
+  /** The number of bytes of the hello of the reader the writer still has to consume */
+  private int helloBytesLeft;
+
+  /**
+   * The version of the block transfer protocol the writer advertised in the definition of this remote step. Definitions
+   * from before the block transfer protocol don't advertise anything: the writer never reads from the socket then, so
+   * the reader mustn't send its hello.
+   */
+  private int writerProtocolVersion;
+
   private String sourceSlaveServerName;
 
   private GZIPInputStream gzipInputStream;
@@ -156,6 +190,8 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 
     this.rowMeta = rowMeta;
 
+    this.writerProtocolVersion = RowBlockCodec.PROTOCOL_VERSION;
+
     if ( sourceStep.equals( targetStep ) && sourceStepCopyNr == targetStepCopyNr ) {
       throw new RuntimeException(
         "The source and target step/copy can't be the same for a remote step definition." );
@@ -197,6 +233,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
       }
     }
     xml.append( XMLHandler.addTagValue( "encrypted_streams", encryptingStreams, false ) );
+    xml.append( XMLHandler.addTagValue( "writer_protocol_version", writerProtocolVersion, false ) );
     try {
       xml.append( XMLHandler.addTagValue( "key", key ) );
     } catch ( Exception ex ) {
@@ -229,6 +266,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
       rowMeta = new RowMeta( rowMetaNode );
     }
     encryptingStreams = "Y".equalsIgnoreCase( XMLHandler.getTagValue( node, "encrypted_streams" ) );
+    writerProtocolVersion = Const.toInt( XMLHandler.getTagValue( node, "writer_protocol_version" ), 0 );
     key = XMLHandler.stringToBinary( XMLHandler.getTagValue( node, "key" ) );
   }
 
@@ -347,11 +385,21 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
           // This blocks until something comes through...
           //
           socket = serverSocket.accept();
+          long startTime = System.currentTimeMillis();
 
           // Create the output stream...
-          OutputStream socketOut = socket.getOutputStream();
+          CountingOutputStream countingOutputStream = new CountingOutputStream( socket.getOutputStream() );
+          OutputStream socketOut = countingOutputStream;
+
+          // Wait for the first row before choosing the protocol: that gives the hello of the reader time to arrive.
+          // See if the reader wants the rows in blocks, if so it tells us how many blocks it accepts in advance
+          //
+          Object[] firstRow = baseStep.getRowFrom( rowSet );
+          int credits =
+            acceptHandshake( socket.getInputStream(), socketOut, startTime + HANDSHAKE_TIMEOUT_MILLIS );
+          boolean blockTransfer = credits > 0;
 
-          if ( compressingStreams ) {
+          if ( compressingStreams && !blockTransfer ) {
             gzipOutputStream = new GZIPOutputStream( socketOut, 50000 );
             bufferedOutputStream = new BufferedOutputStream( gzipOutputStream, bufferSize );
           } else {
@@ -386,37 +434,25 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
           baseStep.logBasic( "Server socket accepted for port ["
             + port + "], reading from server " + targetSlaveServerName );
 
-          // get a row of data...
-          Object[] rowData = baseStep.getRowFrom( rowSet );
-          if ( rowData != null ) {
-            rowSet.getRowMeta().writeMeta( outputStream );
-          }
-
-          // Send that row to the remote step
-          //
-          while ( rowData != null && !baseStep.isStopped() ) {
-            // It's too confusing to count these twice, so decrement
-            baseStep.decrementLinesRead();
-            baseStep.decrementLinesWritten();
-
-            // Write the row to the remote step via the output stream....
-            //
-            rowSet.getRowMeta().writeData( outputStream, rowData );
-            baseStep.incrementLinesOutput();
-
-            if ( baseStep.log.isDebug() ) {
-              baseStep.logDebug( "Sent row to port " + port + " : " + rowSet.getRowMeta().getString( rowData ) );
-            }
-            rowData = baseStep.getRowFrom( rowSet );
+          long nrRows;
+          if ( blockTransfer ) {
+            nrRows = writeBlocks( rowSet, firstRow, socket.getInputStream(), credits );
+          } else {
+            nrRows = writeRows( rowSet, firstRow );
           }
 
-          if ( compressingStreams ) {
+          if ( gzipOutputStream != null ) {
             outputStream.flush();
             gzipOutputStream.finish();
           } else {
             outputStream.flush();
           }
 
+          // A hello that arrived too late is still consumed: closing a socket with unread data resets the connection
+          //
+          skipLateHello( socket.getInputStream() );
+          logThroughput( "Sent", "to", nrRows, countingOutputStream.getByteCount(), startTime, blockTransfer );
+
         } catch ( Exception e ) {
           baseStep.logError( "Error writing to remote step", e );
           baseStep.setErrors( 1 );
@@ -471,6 +507,278 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
     return rowSet;
   }
 
+  /**
+   * Send the rows one by one: the original protocol.
+   *
+   * @return the number of rows sent
+   */
+  private long writeRows( BlockingRowSet rowSet, Object[] firstRow ) throws KettleException {
+    long nrRows = 0;
+
+    Object[] rowData = firstRow;
+    if ( rowData != null ) {
+      rowSet.getRowMeta().writeMeta( outputStream );
+    }
+
+    // Send that row to the remote step
+    //
+    while ( rowData != null && !baseStep.isStopped() ) {
+      // It's too confusing to count these twice, so decrement
+      baseStep.decrementLinesRead();
+      baseStep.decrementLinesWritten();
+
+      // Write the row to the remote step via the output stream....
+      //
+      rowSet.getRowMeta().writeData( outputStream, rowData );
+      baseStep.incrementLinesOutput();
+      nrRows++;
+
+      if ( baseStep.log.isDebug() ) {
+        baseStep.logDebug( "Sent row to port " + port + " : " + rowSet.getRowMeta().getString( rowData ) );
+      }
+      rowData = baseStep.getRowFrom( rowSet );
+    }
+    return nrRows;
+  }
+
+  /**
+   * Send the rows in blocks. A block is sent as soon as it's full or as soon as no more rows are waiting in the row
+   * set, so batching never adds latency. A block is only sent when the reader has granted a credit for it: the reader
+   * hands out a new credit every time it has passed on the rows of a block.
+   *
+   * @return the number of rows sent
+   */
+  private long writeBlocks( BlockingRowSet rowSet, Object[] firstRow, InputStream creditStream, int credits )
+    throws KettleException, IOException {
+    long nrRows = 0;
+    int blockSize = Math.max( 1, Const.toInt( baseStep.getVariable( Const.KETTLE_REMOTE_STEP_BLOCK_SIZE ),
+      DEFAULT_BLOCK_SIZE ) );
+    Object[][] block = new Object[blockSize][];
+    socket.setSoTimeout( CREDIT_POLL_MILLIS );
+
+    Object[] rowData = firstRow;
+    if ( rowData == null ) {
+      return nrRows;
+    }
+    rowSet.getRowMeta().writeMeta( outputStream );
+    RowBlockCodec codec = new RowBlockCodec( rowSet.getRowMeta(), compressingStreams );
+
+    while ( rowData != null && !baseStep.isStopped() ) {
+      int nrBlockRows = 0;
+      do {
+        // It's too confusing to count these twice, so decrement
+        baseStep.decrementLinesRead();
+        baseStep.decrementLinesWritten();
+        block[nrBlockRows++] = rowData;
+
+        // Only take the rows that are available right now, don't wait for more
+        //
+        rowData = nrBlockRows < blockSize && rowSet.size() > 0 ? baseStep.getRowFrom( rowSet ) : null;
+      } while ( rowData != null );
+
+      credits = waitForCredit( creditStream, credits );
+      if ( baseStep.isStopped() ) {
+        break;
+      }
+      codec.writeBlock( outputStream, block, nrBlockRows );
+      outputStream.flush();
+      for ( int i = 0; i < nrBlockRows; i++ ) {
+        baseStep.incrementLinesOutput();
+      }
+      nrRows += nrBlockRows;
+
+      if ( baseStep.log.isDebug() ) {
+        baseStep.logDebug( "Sent block of " + nrBlockRows + " rows to port " + port );
+      }
+      Arrays.fill( block, 0, nrBlockRows, null );
+      rowData = baseStep.getRowFrom( rowSet );
+    }
+    codec.writeEnd( outputStream );
+    return nrRows;
+  }
+
+  /**
+   * Take the credits the reader sent so far and, if there are none left, wait for the next one.
+   *
+   * @return the number of credits left after taking one for the next block
+   */
+  private int waitForCredit( InputStream creditStream, int credits ) throws IOException {
+    while ( creditStream.available() > 0 ) {
+      credits += readCredit( creditStream );
+    }
+    while ( credits == 0 && !baseStep.isStopped() ) {
+      try {
+        credits += readCredit( creditStream );
+      } catch ( SocketTimeoutException e ) {
+        // See if we were stopped in the mean time
+      }
+    }
+    return credits - 1;
+  }
+
+  private int readCredit( InputStream creditStream ) throws IOException {
+    int credit = creditStream.read();
+    if ( credit < 0 ) {
+      throw new EOFException( "The remote step closed the connection before all rows were sent" );
+    }
+    return credit;
+  }
+
+  /**
+   * The writer half of the handshake: read the hello of the reader and tell it which protocol will be used. The hello
+   * is always consumed, also when the rows are sent one by one. Readers from before the block transfer protocol don't
+   * send anything, in which case we fall back to sending the rows one by one without a reply. Encrypted streams always
+   * use the row by row protocol and never reply.
+   *
+   * @param deadline
+   *          the time until which we wait for the hello, after that we only take what has arrived already
+   * @return the number of blocks the reader accepts in advance or 0 if the rows are to be sent one by one
+   */
+  private int acceptHandshake( InputStream socketIn, OutputStream socketOut, long deadline ) throws IOException {
+    byte[] hello = new byte[HELLO_SIZE];
+    int length = readHello( socketIn, hello, deadline );
+    helloBytesLeft = HELLO_SIZE - length;
+    if ( length < HELLO_SIZE ) {
+      baseStep.logDetailed( "No handshake received on port " + port + ", sending the rows one by one" );
+      return 0;
+    }
+    if ( getInt( hello, 0 ) != RowBlockCodec.MAGIC || isEncrypting() ) {
+      return 0;
+    }
+
+    int version = Math.min( getInt( hello, 4 ), RowBlockCodec.PROTOCOL_VERSION );
+    int credits = getInt( hello, 8 );
+    if ( !isBlockTransferEnabled() || credits <= 0 ) {
+      version = 0;
+    }
+
+    DataOutputStream replyStream = new DataOutputStream( socketOut );
+    replyStream.writeInt( RowBlockCodec.MAGIC );
+    replyStream.writeInt( Math.max( 0, version ) );
+    replyStream.flush();
+    return version > 0 ? credits : 0;
+  }
+
+  /**
+   * Read as much of the hello of the reader as arrives before the deadline. Once the deadline has passed only the
+   * bytes that were received already are read.
+   *
+   * @return the number of bytes read
+   */
+  private int readHello( InputStream socketIn, byte[] hello, long deadline ) throws IOException {
+    int length = 0;
+    try {
+      while ( length < hello.length ) {
+        long wait = deadline - System.currentTimeMillis();
+        int read;
+        if ( wait > 0 ) {
+          socket.setSoTimeout( (int) wait );
+          try {
+            read = socketIn.read( hello, length, hello.length - length );
+          } catch ( SocketTimeoutException e ) {
+            continue;
+          }
+        } else {
+          int available = Math.min( socketIn.available(), hello.length - length );
+          read = available > 0 ? socketIn.read( hello, length, available ) : -1;
+        }
+        if ( read < 0 ) {
+          break;
+        }
+        length += read;
+      }
+    } finally {
+      socket.setSoTimeout( 0 );
+    }
+    return length;
+  }
+
+  /**
+   * Consume what's left of a hello that arrived after we chose to send the rows one by one. Only the bytes that have
+   * been received are read: a reader from before the block transfer protocol never sends anything.
+   */
+  private void skipLateHello( InputStream socketIn ) throws IOException {
+    while ( helloBytesLeft > 0 && socketIn.available() > 0 ) {
+      long skipped = socketIn.skip( Math.min( helloBytesLeft, socketIn.available() ) );
+      if ( skipped <= 0 ) {
+        break;
+      }
+      helloBytesLeft -= skipped;
+    }
+  }
+
+  /**
+   * The reader half of the handshake: offer the block transfer protocol and the number of blocks we accept in advance.
+   * The hello is sent with protocol version 0 if the rows have to come one by one, so that the writer always has the
+   * same number of bytes to consume. It's only sent to writers that advertised the block transfer protocol, see
+   * {@link #isWriterReadingHello()}.
+   */
+  private void sendHandshake( OutputStream socketOut ) throws IOException {
+    boolean offerBlocks = isBlockTransferEnabled() && !isEncrypting();
+    DataOutputStream helloStream = new DataOutputStream( socketOut );
+    helloStream.writeInt( RowBlockCodec.MAGIC );
+    helloStream.writeInt( offerBlocks ? RowBlockCodec.PROTOCOL_VERSION : 0 );
+    helloStream.writeInt( Math.max( 1, Const.toInt( baseStep.getVariable( Const.KETTLE_REMOTE_STEP_BLOCK_CREDITS ),
+      DEFAULT_BLOCK_CREDITS ) ) );
+    helloStream.flush();
+  }
+
+  /**
+   * See if the writer replied to our handshake with the block transfer protocol. A writer that doesn't know about
+   * blocks immediately starts sending rows, in which case we push back what we read and read the rows one by one.
+   *
+   * @return true if the rows will arrive in blocks
+   */
+  private boolean readHandshakeReply( PushbackInputStream socketIn ) throws IOException {
+    if ( isEncrypting() ) {
+      return false;
+    }
+    byte[] reply = new byte[8];
+    int length = 0;
+    while ( length < reply.length ) {
+      int read = socketIn.read( reply, length, reply.length - length );
+      if ( read < 0 ) {
+        break;
+      }
+      length += read;
+    }
+    if ( length == reply.length && getInt( reply, 0 ) == RowBlockCodec.MAGIC ) {
+      return getInt( reply, 4 ) > 0;
+    }
+    socketIn.unread( reply, 0, length );
+    return false;
+  }
+
+  /**
+   * Writers from before the block transfer protocol never read from the socket. Bytes they leave unread make closing
+   * their socket reset the connection, which can drop the last rows they sent. So we only send the hello to writers
+   * that advertised the block transfer protocol in the definition of this remote step.
+   */
+  private boolean isWriterReadingHello() {
+    return writerProtocolVersion > 0;
+  }
+
+  private static int getInt( byte[] bytes, int offset ) {
+    return ( ( bytes[offset] & 0xFF ) << 24 ) | ( ( bytes[offset + 1] & 0xFF ) << 16 )
+      | ( ( bytes[offset + 2] & 0xFF ) << 8 ) | ( bytes[offset + 3] & 0xFF );
+  }
+
+  private boolean isBlockTransferEnabled() {
+    return !"N".equalsIgnoreCase( baseStep.getVariable( Const.KETTLE_REMOTE_STEP_BLOCK_TRANSFER ) );
+  }
+
+  private boolean isEncrypting() {
+    return encryptingStreams && key != null;
+  }
+
+  private void logThroughput( String action, String direction, long nrRows, long nrBytes, long startTime,
+    boolean blockTransfer ) {
+    long millis = Math.max( 1L, System.currentTimeMillis() - startTime );
+    baseStep.logBasic( action + " " + nrRows + " rows (" + nrBytes + " bytes) " + direction + " remote step "
+      + toString() + " in " + millis + "ms using the " + ( blockTransfer ? "block" : "row by row" ) + " protocol: "
+      + ( nrRows * 1000L / millis ) + " rows/s, " + ( nrBytes * 1000L / millis ) + " bytes/s" );
+  }
+
   /**
    * Close left-over sockets, streams and so on.
    */
@@ -539,6 +847,108 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
     return rowData;
   }
 
+  /**
+   * Wrap the socket input in the decompressing, buffering and decrypting streams. The block transfer protocol
+   * compresses the blocks itself so it doesn't need the GZIP stream.
+   */
+  private void openReaderStreams( InputStream socketStream, boolean blockTransfer ) throws IOException {
+    if ( compressingStreams && !blockTransfer ) {
+      gzipInputStream = new GZIPInputStream( socketStream );
+      bufferedInputStream = new BufferedInputStream( gzipInputStream, bufferSize );
+    } else {
+      bufferedInputStream = new BufferedInputStream( socketStream, bufferSize );
+    }
+    socketStream = bufferedInputStream;
+
+    if ( encryptingStreams && key != null ) {
+      byte[] transKey = baseStep.getTransMeta().getKey();
+      Key unwrappedKey = null;
+      try {
+        unwrappedKey = CertificateGenEncryptUtil.decodeTransmittedKey( transKey, key,
+          baseStep.getTransMeta().isPrivateKey() );
+      } catch ( InvalidKeyException ex ) {
+        baseStep.logError( "Invalid key was received", ex );
+      } catch ( InvalidKeySpecException ex ) {
+        baseStep.logError( "Invalid key specification was received. Most probably public key was "
+            + "sent instead of private or vice versa", ex );
+      } catch ( Exception ex ) {
+        baseStep.logError( "Error occurred during encryption initialization", ex );
+      }
+      try {
+        Cipher decryptionCip = CertificateGenEncryptUtil.initDecryptionCipher( unwrappedKey, key );
+        socketStream = cipherInputStream = new CipherInputStream( bufferedInputStream, decryptionCip );
+      } catch ( InvalidKeyException ex ) {
+        baseStep.logError( "Invalid key was received", ex );
+      } catch ( Exception ex ) {
+        baseStep.logError( "Error occurred during encryption initialization", ex );
+      }
+    }
+    inputStream = new DataInputStream( socketStream );
+  }
+
+  /**
+   * Read the rows one by one: the original protocol.
+   *
+   * @return the number of rows read
+   */
+  private long readRows( RowMetaInterface rowMeta, BlockingRowSet rowSet ) throws KettleException {
+    long nrRows = 0;
+
+    // And a first row of data...
+    //
+    Object[] rowData = getRowOfData( rowMeta );
+
+    // Now get the data itself, row by row...
+    //
+    while ( rowData != null && !baseStep.isStopped() ) {
+      baseStep.incrementLinesInput();
+      baseStep.decrementLinesRead();
+
+      if ( baseStep.log.isDebug() ) {
+        baseStep.logDebug( "Received row from remote step: " + rowMeta.getString( rowData ) );
+      }
+
+      baseStep.putRowTo( rowMeta, rowData, rowSet );
+      baseStep.decrementLinesWritten();
+      nrRows++;
+      rowData = getRowOfData( rowMeta );
+    }
+    return nrRows;
+  }
+
+  /**
+   * Read the rows in blocks. Every time the rows of a block are passed on, the writer gets a credit to send the next
+   * one. That way a fast writer can't flood a slow reader.
+   *
+   * @return the number of rows read
+   */
+  private long readBlocks( RowMetaInterface rowMeta, BlockingRowSet rowSet, OutputStream creditStream )
+    throws KettleException, IOException {
+    long nrRows = 0;
+    RowBlockCodec codec = new RowBlockCodec( rowMeta, compressingStreams );
+
+    Object[][] rows = codec.readBlock( inputStream );
+    while ( rows != null && !baseStep.isStopped() ) {
+      for ( Object[] rowData : rows ) {
+        baseStep.incrementLinesInput();
+        baseStep.decrementLinesRead();
+
+        if ( baseStep.log.isDebug() ) {
+          baseStep.logDebug( "Received row from remote step: " + rowMeta.getString( rowData ) );
+        }
+
+        baseStep.putRowTo( rowMeta, rowData, rowSet );
+        baseStep.decrementLinesWritten();
+      }
+      nrRows += rows.length;
+
+      creditStream.write( 1 );
+      creditStream.flush();
+      rows = codec.readBlock( inputStream );
+    }
+    return nrRows;
+  }
+
   public synchronized BlockingRowSet openReaderSocket( final BaseStep baseStep ) throws IOException,
     KettleException {
     this.baseStep = baseStep;
@@ -577,39 +987,11 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 
         connected = true;
 
-        InputStream socketStream = socket.getInputStream();
-        if ( compressingStreams ) {
-          gzipInputStream = new GZIPInputStream( socketStream );
-          bufferedInputStream = new BufferedInputStream( gzipInputStream, bufferSize );
-        } else {
-          bufferedInputStream = new BufferedInputStream( socketStream, bufferSize );
-        }
-        socketStream = bufferedInputStream;
-
-        if ( encryptingStreams && key != null ) {
-          byte[] transKey = baseStep.getTransMeta().getKey();
-          Key unwrappedKey = null;
-          try {
-            unwrappedKey = CertificateGenEncryptUtil.decodeTransmittedKey( transKey, key,
-              baseStep.getTransMeta().isPrivateKey() );
-          } catch ( InvalidKeyException ex ) {
-            baseStep.logError( "Invalid key was received", ex );
-          } catch ( InvalidKeySpecException ex ) {
-            baseStep.logError( "Invalid key specification was received. Most probably public key was "
-                + "sent instead of private or vice versa", ex );
-          } catch ( Exception ex ) {
-            baseStep.logError( "Error occurred during encryption initialization", ex );
-          }
-          try {
-            Cipher decryptionCip = CertificateGenEncryptUtil.initDecryptionCipher( unwrappedKey, key );
-            socketStream = cipherInputStream = new CipherInputStream( bufferedInputStream, decryptionCip );
-          } catch ( InvalidKeyException ex ) {
-            baseStep.logError( "Invalid key was received", ex );
-          } catch ( Exception ex ) {
-            baseStep.logError( "Error occurred during encryption initialization", ex );
-          }
+        // Offer the block transfer protocol, the reply is read in the reader thread
+        //
+        if ( isWriterReadingHello() ) {
+          sendHandshake( socket.getOutputStream() );
         }
-        inputStream = new DataInputStream( socketStream );
 
         lastException = null;
       } catch ( Exception e ) {
@@ -647,7 +1029,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
       }
       throw lastException;
     } else {
-      if ( inputStream == null ) {
+      if ( !connected ) {
         throw new KettleException( "Unable to connect to the SocketWriter in the "
           + TIMEOUT_IN_SECONDS + "s timeout period." );
       }
@@ -665,6 +1047,11 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
     Runnable runnable = new Runnable() {
       public void run() {
         try {
+          long startTime = System.currentTimeMillis();
+          CountingInputStream countingInputStream = new CountingInputStream( socket.getInputStream() );
+          PushbackInputStream pushbackInputStream = new PushbackInputStream( countingInputStream, 8 );
+          boolean blockTransfer = isWriterReadingHello() && readHandshakeReply( pushbackInputStream );
+          openReaderStreams( pushbackInputStream, blockTransfer );
 
           // First read the row meta data from the socket...
           //
@@ -681,24 +1068,13 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
             throw new KettleEOFException(); // leave now.
           }
 
-          // And a first row of data...
-          //
-          Object[] rowData = getRowOfData( rowMeta );
-
-          // Now get the data itself, row by row...
-          //
-          while ( rowData != null && !baseStep.isStopped() ) {
-            baseStep.incrementLinesInput();
-            baseStep.decrementLinesRead();
-
-            if ( baseStep.log.isDebug() ) {
-              baseStep.logDebug( "Received row from remote step: " + rowMeta.getString( rowData ) );
-            }
-
-            baseStep.putRowTo( rowMeta, rowData, rowSet );
-            baseStep.decrementLinesWritten();
-            rowData = getRowOfData( rowMeta );
+          long nrRows;
+          if ( blockTransfer ) {
+            nrRows = readBlocks( rowMeta, rowSet, socket.getOutputStream() );
+          } else {
+            nrRows = readRows( rowMeta, rowSet );
           }
+          logThroughput( "Received", "from", nrRows, countingInputStream.getByteCount(), startTime, blockTransfer );
         } catch ( KettleEOFException e ) {
           // Nothing, we're simply done reading...
           //
@@ -958,4 +1334,19 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
     this.key = key;
   }
 
+  /**
+   * @return the version of the block transfer protocol the writer advertised, 0 if it didn't advertise any
+   */
+  public int getWriterProtocolVersion() {
+    return writerProtocolVersion;
+  }
+
+  /**
+   * @param writerProtocolVersion
+   *          the version of the block transfer protocol the writer advertises, 0 if it doesn't know about blocks
+   */
+  public void setWriterProtocolVersion( int writerProtocolVersion ) {
+    this.writerProtocolVersion = writerProtocolVersion;
+  }
+
 }
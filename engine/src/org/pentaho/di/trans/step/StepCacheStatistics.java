@@ -0,0 +1,50 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+/**
+ * Implemented by steps that keep a cache of lookup results, so that the statistics of the cache show up in the
+ * {@link StepStatus} of the step.
+ */
+public interface StepCacheStatistics {
+
+  /**
+   * @return true if the step uses a cache that keeps statistics, false if the other methods have nothing to report
+   */
+  boolean hasCacheStatistics();
+
+  /**
+   * @return the number of lookups that were answered from the cache
+   */
+  long getCacheHits();
+
+  /**
+   * @return the number of lookups that were not found in the cache
+   */
+  long getCacheMisses();
+
+  /**
+   * @return the number of entries that were removed to stay within the limits of the cache
+   */
+  long getCacheEvictions();
+}
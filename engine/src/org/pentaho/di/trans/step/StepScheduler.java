@@ -0,0 +1,45 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * Decides on which thread(s) the step copies of a Normal transformation run. The classic scheduler gives every step
+ * copy a thread of its own, other implementations share a pool of worker threads or use virtual threads.
+ */
+public interface StepScheduler {
+
+  /**
+   * Start running the given step copy: call processRow() until it returns false or the step is stopped, then dispose
+   * of the step and mark it as stopped, see {@link RunThread}.
+   *
+   * @param combi
+   *          the step copy to run
+   * @param threadName
+   *          the name of the thread running the step copy
+   * @throws KettleException
+   *           in case the step copy can't be started
+   */
+  void startStep( StepMetaDataCombi combi, String threadName ) throws KettleException;
+}
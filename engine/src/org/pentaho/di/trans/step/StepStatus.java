@@ -60,6 +60,16 @@ public class StepStatus {
   private String priority;
   private boolean stopped;
   private boolean paused;
+  private long idleTime;
+  private long wakeups;
+  private double wakeupLatency;
+  private String partitionRowCounts;
+  private double partitionSkew;
+  private boolean partitionSkewed;
+  private boolean cacheStatistics;
+  private long cacheHits;
+  private long cacheMisses;
+  private long cacheEvictions;
 
   private RowMetaInterface sampleRowMeta;
   private List<Object[]> sampleRows;
@@ -103,6 +113,32 @@ public class StepStatus {
       baseStep.isRunning() ? "   " + baseStep.rowsetInputSize() + "/" + baseStep.rowsetOutputSize() : "-";
     this.stopped = baseStep.isStopped();
     this.paused = baseStep.isPaused();
+
+    if ( baseStep instanceof BaseStep ) {
+      BaseStep step = (BaseStep) baseStep;
+      this.idleTime = step.getInputIdleTime();
+      this.wakeups = step.getInputWakeups();
+      this.wakeupLatency = Math.floor( step.getAverageInputWakeupLatency() * 10 ) / 10;
+
+      long[] counts = step.getPartitionRowCounts();
+      if ( counts != null ) {
+        StringBuilder countsString = new StringBuilder();
+        for ( int i = 0; i < counts.length; i++ ) {
+          countsString.append( i > 0 ? "," : "" ).append( counts[i] );
+        }
+        this.partitionRowCounts = countsString.toString();
+        this.partitionSkew = Math.floor( BaseStep.calculatePartitionSkew( counts ) * 100 ) / 100;
+        this.partitionSkewed = step.isPartitionSkewed();
+      }
+    }
+
+    if ( baseStep instanceof StepCacheStatistics && ( (StepCacheStatistics) baseStep ).hasCacheStatistics() ) {
+      StepCacheStatistics statistics = (StepCacheStatistics) baseStep;
+      this.cacheStatistics = true;
+      this.cacheHits = statistics.getCacheHits();
+      this.cacheMisses = statistics.getCacheMisses();
+      this.cacheEvictions = statistics.getCacheEvictions();
+    }
   }
 
   public String getHTMLTableRow( boolean urlInStepname ) {
@@ -136,6 +172,19 @@ public class StepStatus {
       xml.append( XMLHandler.addTagValue( "priority", priority, false ) );
       xml.append( XMLHandler.addTagValue( "stopped", stopped, false ) );
       xml.append( XMLHandler.addTagValue( "paused", paused, false ) );
+      xml.append( XMLHandler.addTagValue( "idleTime", idleTime, false ) );
+      xml.append( XMLHandler.addTagValue( "wakeups", wakeups, false ) );
+      xml.append( XMLHandler.addTagValue( "wakeupLatency", wakeupLatency, false ) );
+      if ( partitionRowCounts != null ) {
+        xml.append( XMLHandler.addTagValue( "partitionRowCounts", partitionRowCounts, false ) );
+        xml.append( XMLHandler.addTagValue( "partitionSkew", partitionSkew, false ) );
+        xml.append( XMLHandler.addTagValue( "partitionSkewed", partitionSkewed, false ) );
+      }
+      if ( cacheStatistics ) {
+        xml.append( XMLHandler.addTagValue( "cacheHits", cacheHits, false ) );
+        xml.append( XMLHandler.addTagValue( "cacheMisses", cacheMisses, false ) );
+        xml.append( XMLHandler.addTagValue( "cacheEvictions", cacheEvictions, false ) );
+      }
 
       if ( sampleRowMeta != null ) {
         xml.append( XMLHandler.openTag( "samples" ) );
@@ -177,6 +226,18 @@ public class StepStatus {
     priority = XMLHandler.getTagValue( node, "priority" );
     stopped = "Y".equalsIgnoreCase( XMLHandler.getTagValue( node, "stopped" ) );
     paused = "Y".equalsIgnoreCase( XMLHandler.getTagValue( node, "paused" ) );
+    // These are not sent by older servers
+    idleTime = Const.toLong( XMLHandler.getTagValue( node, "idleTime" ), 0L );
+    wakeups = Const.toLong( XMLHandler.getTagValue( node, "wakeups" ), 0L );
+    wakeupLatency = Const.toDouble( XMLHandler.getTagValue( node, "wakeupLatency" ), 0.0 );
+    partitionRowCounts = XMLHandler.getTagValue( node, "partitionRowCounts" );
+    partitionSkew = Const.toDouble( XMLHandler.getTagValue( node, "partitionSkew" ), 0.0 );
+    partitionSkewed = "Y".equalsIgnoreCase( XMLHandler.getTagValue( node, "partitionSkewed" ) );
+    String hits = XMLHandler.getTagValue( node, "cacheHits" );
+    cacheStatistics = hits != null;
+    cacheHits = Const.toLong( hits, 0L );
+    cacheMisses = Const.toLong( XMLHandler.getTagValue( node, "cacheMisses" ), 0L );
+    cacheEvictions = Const.toLong( XMLHandler.getTagValue( node, "cacheEvictions" ), 0L );
 
     Node samplesNode = XMLHandler.getSubNode( node, "samples" );
     if ( samplesNode != null ) {
@@ -483,6 +544,157 @@ public class StepStatus {
     this.paused = paused;
   }
 
+  /**
+   * @return the total time in ms that the step spent waiting for input rows
+   */
+  public long getIdleTime() {
+    return idleTime;
+  }
+
+  /**
+   * @param idleTime
+   *          the total time in ms that the step spent waiting for input rows
+   */
+  public void setIdleTime( long idleTime ) {
+    this.idleTime = idleTime;
+  }
+
+  /**
+   * @return the number of times the step was woken up by an input row set while waiting for rows
+   */
+  public long getWakeups() {
+    return wakeups;
+  }
+
+  /**
+   * @param wakeups
+   *          the number of times the step was woken up by an input row set while waiting for rows
+   */
+  public void setWakeups( long wakeups ) {
+    this.wakeups = wakeups;
+  }
+
+  /**
+   * @return the average wake-up latency in microseconds
+   */
+  public double getWakeupLatency() {
+    return wakeupLatency;
+  }
+
+  /**
+   * @param wakeupLatency
+   *          the average wake-up latency in microseconds
+   */
+  public void setWakeupLatency( double wakeupLatency ) {
+    this.wakeupLatency = wakeupLatency;
+  }
+
+  /**
+   * @return the comma separated number of rows sent to each partition of the next step or null if the step doesn't
+   *         partition its output
+   */
+  public String getPartitionRowCounts() {
+    return partitionRowCounts;
+  }
+
+  /**
+   * @param partitionRowCounts
+   *          the comma separated number of rows sent to each partition of the next step
+   */
+  public void setPartitionRowCounts( String partitionRowCounts ) {
+    this.partitionRowCounts = partitionRowCounts;
+  }
+
+  /**
+   * @return the number of rows in the largest partition divided by the average number of rows per partition
+   */
+  public double getPartitionSkew() {
+    return partitionSkew;
+  }
+
+  /**
+   * @param partitionSkew
+   *          the number of rows in the largest partition divided by the average number of rows per partition
+   */
+  public void setPartitionSkew( double partitionSkew ) {
+    this.partitionSkew = partitionSkew;
+  }
+
+  /**
+   * @return true if the partition skew reached the KETTLE_PARTITION_SKEW_THRESHOLD
+   */
+  public boolean isPartitionSkewed() {
+    return partitionSkewed;
+  }
+
+  /**
+   * @param partitionSkewed
+   *          true if the partition skew reached the KETTLE_PARTITION_SKEW_THRESHOLD
+   */
+  public void setPartitionSkewed( boolean partitionSkewed ) {
+    this.partitionSkewed = partitionSkewed;
+  }
+
+  /**
+   * @return true if the step uses a cache that keeps statistics
+   */
+  public boolean isCacheStatistics() {
+    return cacheStatistics;
+  }
+
+  /**
+   * @param cacheStatistics
+   *          true if the step uses a cache that keeps statistics
+   */
+  public void setCacheStatistics( boolean cacheStatistics ) {
+    this.cacheStatistics = cacheStatistics;
+  }
+
+  /**
+   * @return the number of lookups that were answered from the cache of the step
+   */
+  public long getCacheHits() {
+    return cacheHits;
+  }
+
+  /**
+   * @param cacheHits
+   *          the number of lookups that were answered from the cache of the step
+   */
+  public void setCacheHits( long cacheHits ) {
+    this.cacheHits = cacheHits;
+  }
+
+  /**
+   * @return the number of lookups that were not found in the cache of the step
+   */
+  public long getCacheMisses() {
+    return cacheMisses;
+  }
+
+  /**
+   * @param cacheMisses
+   *          the number of lookups that were not found in the cache of the step
+   */
+  public void setCacheMisses( long cacheMisses ) {
+    this.cacheMisses = cacheMisses;
+  }
+
+  /**
+   * @return the number of entries removed from the cache of the step to stay within its limits
+   */
+  public long getCacheEvictions() {
+    return cacheEvictions;
+  }
+
+  /**
+   * @param cacheEvictions
+   *          the number of entries removed from the cache of the step to stay within its limits
+   */
+  public void setCacheEvictions( long cacheEvictions ) {
+    this.cacheEvictions = cacheEvictions;
+  }
+
   public RowMetaInterface getSampleRowMeta() {
     return sampleRowMeta;
   }
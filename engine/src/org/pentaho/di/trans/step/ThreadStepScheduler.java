@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2013 by Pentaho : http://www.pentaho.com
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -20,17 +20,17 @@
  *
  ******************************************************************************/
 
-package org.pentaho.di.trans.steps.sort;
+package org.pentaho.di.trans.step;
 
 /**
- * Keeps track of which temporary file a row is coming from
+ * The classic step scheduler: every step copy runs in a thread of its own.
  */
-public class RowTempFile {
-  public Object[] row;
-  public int fileNumber;
+public class ThreadStepScheduler implements StepScheduler {
 
-  public RowTempFile( Object[] row, int fileNumber ) {
-    this.row = row;
-    this.fileNumber = fileNumber;
+  @Override
+  public void startStep( StepMetaDataCombi combi, String threadName ) {
+    Thread thread = new Thread( new RunThread( combi ) );
+    thread.setName( threadName );
+    thread.start();
   }
 }
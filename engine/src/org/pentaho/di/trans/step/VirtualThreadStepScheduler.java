@@ -0,0 +1,79 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import java.lang.reflect.Method;
+
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * Runs every step copy in a virtual thread of its own. Virtual threads are cheap to create and unmount from their
+ * carrier thread while a step waits on a full or empty row set, so a large number of small transformations doesn't
+ * need a platform thread per step copy.<br>
+ * <br>
+ * Virtual threads are only available on Java 21 or later, they are started through reflection. On older versions of
+ * Java this scheduler falls back to a platform thread per step copy.
+ */
+public class VirtualThreadStepScheduler implements StepScheduler {
+
+  private static final Method START_VIRTUAL_THREAD = findStartVirtualThread();
+
+  private final StepScheduler fallback = new ThreadStepScheduler();
+
+  private static Method findStartVirtualThread() {
+    try {
+      return Thread.class.getMethod( "startVirtualThread", Runnable.class );
+    } catch ( Exception e ) {
+      return null;
+    }
+  }
+
+  /**
+   * @return true if the Java version we run on supports virtual threads
+   */
+  public static boolean isSupported() {
+    return START_VIRTUAL_THREAD != null;
+  }
+
+  @Override
+  public void startStep( StepMetaDataCombi combi, final String threadName ) throws KettleException {
+    if ( START_VIRTUAL_THREAD == null ) {
+      fallback.startStep( combi, threadName );
+      return;
+    }
+
+    final RunThread runThread = new RunThread( combi );
+    Runnable runnable = new Runnable() {
+      @Override
+      public void run() {
+        Thread.currentThread().setName( threadName );
+        runThread.run();
+      }
+    };
+    try {
+      START_VIRTUAL_THREAD.invoke( null, runnable );
+    } catch ( Exception e ) {
+      throw new KettleException( "Unable to start a virtual thread for step " + threadName, e );
+    }
+  }
+}
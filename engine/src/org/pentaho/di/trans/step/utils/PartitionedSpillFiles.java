@@ -0,0 +1,169 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.vfs.KettleVFS;
+
+/**
+ * A set of temporary files, one per hash partition, used by steps that spill rows to disk when they exceed their memory
+ * budget (Stream Lookup, Memory Group By). Every record written to a partition starts with a boolean true, closing the
+ * output writes a boolean false to mark the end of the partition.
+ */
+public class PartitionedSpillFiles {
+
+  private final FileObject[] files;
+  private final OutputStream[] outputStreams;
+  private final DataOutputStream[] dataOutputStreams;
+
+  /**
+   * Create and open the partition files.
+   *
+   * @param prefix
+   *          the prefix of the temporary file names
+   * @param nrPartitions
+   *          the number of partitions
+   * @param directory
+   *          the directory to create the files in
+   * @param space
+   *          the variables to resolve the directory with
+   */
+  public PartitionedSpillFiles( String prefix, int nrPartitions, String directory, VariableSpace space )
+    throws KettleException {
+    files = new FileObject[nrPartitions];
+    outputStreams = new OutputStream[nrPartitions];
+    dataOutputStreams = new DataOutputStream[nrPartitions];
+
+    try {
+      for ( int i = 0; i < nrPartitions; i++ ) {
+        files[i] = KettleVFS.createTempFile( prefix, ".tmp", directory, space );
+        outputStreams[i] = KettleVFS.getOutputStream( files[i], false );
+        dataOutputStreams[i] = new DataOutputStream( new BufferedOutputStream( outputStreams[i], 50000 ) );
+      }
+    } catch ( Exception e ) {
+      delete();
+      throw new KettleException( "Unable to create the spill files", e );
+    }
+  }
+
+  /**
+   * @return the number of partitions
+   */
+  public int getNrPartitions() {
+    return files.length;
+  }
+
+  /**
+   * @return the output streams of all the partitions, indexed by partition number
+   */
+  public DataOutputStream[] getOutputStreams() {
+    return dataOutputStreams;
+  }
+
+  /**
+   * @return the output stream of the given partition
+   */
+  public DataOutputStream getOutputStream( int partition ) {
+    return dataOutputStreams[partition];
+  }
+
+  /**
+   * Mark the end of every partition and close the output streams.
+   */
+  public void closeOutputStreams() throws KettleException {
+    try {
+      for ( int i = 0; i < files.length; i++ ) {
+        if ( dataOutputStreams[i] != null ) {
+          dataOutputStreams[i].writeBoolean( false );
+          dataOutputStreams[i].close();
+          dataOutputStreams[i] = null;
+          outputStreams[i].close();
+          outputStreams[i] = null;
+        }
+      }
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to close the spill files", e );
+    }
+  }
+
+  /**
+   * Open a partition for reading, the caller closes the stream.
+   */
+  public DataInputStream openInputStream( int partition ) throws KettleException {
+    try {
+      return new DataInputStream( new BufferedInputStream( KettleVFS.getInputStream( files[partition] ), 50000 ) );
+    } catch ( Exception e ) {
+      throw new KettleException( "Unable to open spill file " + KettleVFS.getFilename( files[partition] ), e );
+    }
+  }
+
+  /**
+   * @return the total size of the partition files in bytes
+   */
+  public long getSize() {
+    long size = 0;
+    for ( FileObject file : files ) {
+      try {
+        if ( file != null && file.exists() ) {
+          size += file.getContent().getSize();
+        }
+      } catch ( IOException e ) {
+        // Only used for logging
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Close all the streams that are still open and remove the files.
+   */
+  public void delete() {
+    for ( int i = 0; i < files.length; i++ ) {
+      try {
+        if ( dataOutputStreams[i] != null ) {
+          dataOutputStreams[i].close();
+          dataOutputStreams[i] = null;
+        }
+        if ( outputStreams[i] != null ) {
+          outputStreams[i].close();
+          outputStreams[i] = null;
+        }
+        if ( files[i] != null ) {
+          files[i].delete();
+          files[i] = null;
+        }
+      } catch ( IOException e ) {
+        // Best effort, the files are temporary
+      }
+    }
+  }
+}
@@ -22,10 +22,7 @@
 
 package org.pentaho.di.trans.steps.analyticquery;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
-
 import org.pentaho.di.core.exception.KettleException;
-import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.i18n.BaseMessages;
@@ -38,7 +35,8 @@ import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
 
 /**
- * Performs analytic queries (LEAD/LAG, etc) based on a group
+ * Performs analytic queries (LEAD/LAG, SUM/AVERAGE/MIN/MAX over a frame of rows, ROW_NUMBER/RANK/DENSE_RANK) based
+ * on a group
  *
  * @author ngoodman
  * @since 27-jan-2009
@@ -93,15 +91,41 @@ public class AnalyticQuery extends BaseStep implements StepInterface {
         }
       }
 
-      // Setup of "window size" and "queue_size"
-      int max_offset = 0;
-      for ( int i = 0; i < meta.getNumberOfFields(); i++ ) {
-        if ( meta.getValueField()[i] > max_offset ) {
-          max_offset = meta.getValueField()[i];
+      int nrFields = meta.getNumberOfFields();
+      data.subjectnrs = new int[nrFields];
+      data.aggregates = new WindowAggregate[nrFields];
+      data.rank = new long[nrFields];
+      data.denseRank = new long[nrFields];
+      data.rankValue = new Object[nrFields];
+      data.lookAhead = 0;
+      data.lookBehind = 0;
+      for ( int i = 0; i < nrFields; i++ ) {
+        int aggregateType = meta.getAggregateType()[i];
+        data.subjectnrs[i] = data.inputRowMeta.indexOfValue( meta.getSubjectField()[i] );
+        if ( data.subjectnrs[i] < 0 && !AnalyticQueryMeta.isRanking( aggregateType ) ) {
+          logError( BaseMessages.getString(
+            PKG, "AnalyticQuery.Log.AggregateSubjectFieldCouldNotFound", meta.getSubjectField()[i] ) );
+          setErrors( 1 );
+          stopAll();
+          return false;
+        }
+
+        // Setup of how far we need to look ahead and behind the current row
+        //
+        if ( AnalyticQueryMeta.isWindowAggregate( aggregateType ) ) {
+          data.aggregates[i] =
+            new WindowAggregate( aggregateType, data.inputRowMeta.getValueMeta( data.subjectnrs[i] ),
+              data.subjectnrs[i], meta.getFramePreceding()[i], meta.getFrameFollowing()[i] );
+          data.lookAhead = Math.max( data.lookAhead, data.aggregates[i].getLookAhead() );
+          data.lookBehind = Math.max( data.lookBehind, data.aggregates[i].getLookBehind() );
+        } else if ( !AnalyticQueryMeta.isRanking( aggregateType ) ) {
+          int offset = getOffset( i );
+          data.lookAhead = Math.max( data.lookAhead, offset );
+          data.lookBehind = Math.max( data.lookBehind, -offset );
         }
       }
-      data.window_size = max_offset;
-      data.queue_size = ( max_offset * 2 ) + 1;
+      data.data = new RowRingBuffer( data.lookBehind + data.lookAhead + 1 );
+      resetGroup();
 
       // After we've processed the metadata we're all set
       first = false;
@@ -121,10 +145,6 @@ public class AnalyticQuery extends BaseStep implements StepInterface {
       }
       /* Add this row to the end of the queue */
       data.data.add( r );
-      /* Push the extra records off the end of the queue */
-      while ( data.data.size() > data.queue_size ) {
-        data.data.poll();
-      }
 
       data.previous = r.clone();
 
@@ -138,80 +158,98 @@ public class AnalyticQuery extends BaseStep implements StepInterface {
     return true;
   }
 
-  public void processQueue() throws KettleStepException {
-
-    // If we've filled up our queue for processing
-    if ( data.data.size() == data.queue_size ) {
-      // Bring current cursor "up to current"
-      if ( data.queue_cursor <= data.window_size ) {
-        while ( data.queue_cursor <= data.window_size ) {
-          processQueueObjectAt( data.queue_cursor + 1 );
-          data.queue_cursor++;
-        }
-      } else {
-        processQueueObjectAt( data.window_size + 1 );
-      }
+  /**
+   * Pass on the rows of which all the rows we need to look ahead to have been read.
+   */
+  public void processQueue() throws KettleException {
+    while ( data.data.getLastIndex() - data.current >= data.lookAhead ) {
+      processRowAt( data.current++ );
     }
   }
 
-  public void clearQueue() throws KettleStepException {
-
+  /**
+   * Pass on the remaining rows of the group.
+   */
+  public void clearQueue() throws KettleException {
     if ( data.data == null ) {
       return;
     }
-
-    int number_of_rows = data.data.size();
-
-    for ( int i = data.queue_cursor; i < number_of_rows; i++ ) {
-      processQueueObjectAt( i + 1 );
+    while ( data.current <= data.data.getLastIndex() ) {
+      processRowAt( data.current++ );
     }
-
   }
 
-  public void processQueueObjectAt( int i ) throws KettleStepException {
-    int index = i - 1;
-    Object[] rows = data.data.toArray();
+  /**
+   * Calculate the analytic functions for a row of the group and pass it on.
+   *
+   * @param index
+   *          the number of the row in the group
+   */
+  public void processRowAt( long index ) throws KettleException {
+    Object[] row = data.data.get( index );
 
     Object[] fields = new Object[meta.getNumberOfFields()];
     for ( int j = 0; j < meta.getNumberOfFields(); j++ ) {
       // field_index is the location inside a row of the subject of this
       // ie, ORDERTOTAL might be the subject ofthis field lag or lead
       // so we determine that ORDERTOTAL's index in the row
-      int field_index = data.inputRowMeta.indexOfValue( meta.getSubjectField()[j] );
-      int row_index = 0;
+      int field_index = data.subjectnrs[j];
       switch ( meta.getAggregateType()[j] ) {
         case AnalyticQueryMeta.TYPE_FUNCT_LAG:
-          row_index = index - meta.getValueField()[j];
-          break;
         case AnalyticQueryMeta.TYPE_FUNCT_LEAD:
-          row_index = index + meta.getValueField()[j];
+          // Rows before the start or after the end of the group are not in the buffer: set default
+          Object[] singleRow = data.data.get( index + getOffset( j ) );
+          fields[j] = singleRow == null ? null : singleRow[field_index];
+          break;
+        case AnalyticQueryMeta.TYPE_FUNCT_ROW_NUMBER:
+          fields[j] = Long.valueOf( index + 1 );
+          break;
+        case AnalyticQueryMeta.TYPE_FUNCT_RANK:
+        case AnalyticQueryMeta.TYPE_FUNCT_DENSE_RANK:
+          // The rows are sorted on the subject in the group: a new value starts a new rank, ties share it
+          Object value = field_index < 0 ? null : row[field_index];
+          if ( index == 0 ) {
+            data.rank[j] = 1;
+            data.denseRank[j] = 1;
+          } else if ( field_index >= 0
+            && data.inputRowMeta.getValueMeta( field_index ).compare( data.rankValue[j], value ) != 0 ) {
+            data.rank[j] = index + 1;
+            data.denseRank[j]++;
+          }
+          data.rankValue[j] = value;
+          fields[j] = Long.valueOf( meta.getAggregateType()[j] == AnalyticQueryMeta.TYPE_FUNCT_RANK
+            ? data.rank[j] : data.denseRank[j] );
           break;
         default:
+          fields[j] = data.aggregates[j].moveTo( index, data.data );
           break;
       }
-      if ( row_index < rows.length && row_index >= 0 ) {
-        Object[] singleRow = (Object[]) rows[row_index];
-        if ( singleRow != null && singleRow[field_index] != null ) {
-          fields[j] = ( (Object[]) rows[row_index] )[field_index];
-        } else {
-          // set default
-          fields[j] = null;
-        }
-      } else {
-        // set default
-        fields[j] = null;
-      }
     }
 
-    Object[] newRow = RowDataUtil.addRowData( (Object[]) rows[index], data.inputRowMeta.size(), fields );
+    Object[] newRow = RowDataUtil.addRowData( row, data.inputRowMeta.size(), fields );
 
     putRow( data.outputRowMeta, newRow );
 
+    // Push the rows we no longer need off the start of the queue
+    data.data.removeBefore( index + 1 - data.lookBehind );
+  }
+
+  /**
+   * @return the number of rows to go forward (positive) or back (negative) for the LEAD or LAG function
+   */
+  private int getOffset( int fieldnr ) {
+    int offset = meta.getValueField()[fieldnr];
+    return meta.getAggregateType()[fieldnr] == AnalyticQueryMeta.TYPE_FUNCT_LAG ? -offset : offset;
   }
 
   public void resetGroup() {
-    data.data = new ConcurrentLinkedQueue<Object[]>();
-    data.queue_cursor = 0;
+    data.data.clear();
+    data.current = 0;
+    for ( WindowAggregate aggregate : data.aggregates ) {
+      if ( aggregate != null ) {
+        aggregate.reset();
+      }
+    }
   }
 
   // Is the row r of the same group as previous?
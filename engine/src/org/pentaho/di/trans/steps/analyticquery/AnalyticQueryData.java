@@ -22,8 +22,6 @@
 
 package org.pentaho.di.trans.steps.analyticquery;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
-
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -40,18 +38,27 @@ public class AnalyticQueryData extends BaseStepData implements StepDataInterface
   public RowMetaInterface inputRowMeta;
   public RowMetaInterface outputRowMeta;
 
-  // Two Integers for our processing
-  // Window Size (the largest N we need to skip forward/back)
-  public int window_size;
-  // Queue Size (the size of our data queue (Window Size * 2 ) + 1)
-  public int queue_size;
-  // / Queue Cursor (the current processing location in the queue) reset with every group
-  public int queue_cursor;
-
-  // Queue for keeping the data. We will push data onto the queue
-  // and pop it off as we process rows. The queue of data is required
-  // to get the second previous row and the second ahead row, etc.
-  public ConcurrentLinkedQueue<Object[]> data;
+  // Subject Field Indexes, -1 for a ROW_NUMBER/RANK/DENSE_RANK without subject
+  public int[] subjectnrs;
+
+  // The number of rows we need to look ahead: the largest LEAD offset or number of following rows in a frame
+  public int lookAhead;
+  // The number of rows we need to keep behind the current one: the largest LAG offset or number of preceding rows
+  public int lookBehind;
+
+  // Ring buffer keeping the rows of the group from lookBehind rows before the current row up to the last row read.
+  // A row is passed on as soon as the rows lookAhead rows further are read (or the group ends).
+  public RowRingBuffer data;
+  // The number of the next row of the group to pass on
+  public long current;
+
+  // The state of the SUM/AVERAGE/MIN/MAX functions, null for the other ones
+  public WindowAggregate[] aggregates;
+
+  // The state of the RANK/DENSE_RANK functions
+  public long[] rank;
+  public long[] denseRank;
+  public Object[] rankValue;
 
   public Object[] previous;
 
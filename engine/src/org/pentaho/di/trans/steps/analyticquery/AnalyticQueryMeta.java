@@ -34,6 +34,10 @@ import org.pentaho.di.core.exception.KettleXMLException;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.i18n.BaseMessages;
@@ -60,13 +64,30 @@ public class AnalyticQueryMeta extends BaseStepMeta implements StepMetaInterface
 
   public static final int TYPE_FUNCT_LEAD = 0;
   public static final int TYPE_FUNCT_LAG = 1;
+  public static final int TYPE_FUNCT_SUM = 2;
+  public static final int TYPE_FUNCT_AVERAGE = 3;
+  public static final int TYPE_FUNCT_MIN = 4;
+  public static final int TYPE_FUNCT_MAX = 5;
+  public static final int TYPE_FUNCT_ROW_NUMBER = 6;
+  public static final int TYPE_FUNCT_RANK = 7;
+  public static final int TYPE_FUNCT_DENSE_RANK = 8;
+
+  /** The frame of a window aggregate starts at the first row of the group */
+  public static final int FRAME_UNBOUNDED = -1;
 
   public static final String[] typeGroupCode = /* WARNING: DO NOT TRANSLATE THIS. WE ARE SERIOUS, DON'T TRANSLATE! */
-  { "LEAD", "LAG", };
+  { "LEAD", "LAG", "SUM", "AVERAGE", "MIN", "MAX", "ROW_NUMBER", "RANK", "DENSE_RANK", };
 
   public static final String[] typeGroupLongDesc = {
     BaseMessages.getString( PKG, "AnalyticQueryMeta.TypeGroupLongDesc.LEAD" ),
-    BaseMessages.getString( PKG, "AnalyticQueryMeta.TypeGroupLongDesc.LAG" ) };
+    BaseMessages.getString( PKG, "AnalyticQueryMeta.TypeGroupLongDesc.LAG" ),
+    BaseMessages.getString( PKG, "AnalyticQueryMeta.TypeGroupLongDesc.SUM" ),
+    BaseMessages.getString( PKG, "AnalyticQueryMeta.TypeGroupLongDesc.AVERAGE" ),
+    BaseMessages.getString( PKG, "AnalyticQueryMeta.TypeGroupLongDesc.MIN" ),
+    BaseMessages.getString( PKG, "AnalyticQueryMeta.TypeGroupLongDesc.MAX" ),
+    BaseMessages.getString( PKG, "AnalyticQueryMeta.TypeGroupLongDesc.ROW_NUMBER" ),
+    BaseMessages.getString( PKG, "AnalyticQueryMeta.TypeGroupLongDesc.RANK" ),
+    BaseMessages.getString( PKG, "AnalyticQueryMeta.TypeGroupLongDesc.DENSE_RANK" ) };
 
   /** Fields to partition by ie, CUSTOMER, PRODUCT */
   private String[] groupField;
@@ -82,6 +103,13 @@ public class AnalyticQueryMeta extends BaseStepMeta implements StepMetaInterface
   private int[] aggregateType;
   /** Offset "N" of how many rows to go forward/back */
   private int[] valueField;
+  /**
+   * The number of rows before the current one in the frame of a window aggregate (SUM/AVERAGE/MIN/MAX) or
+   * FRAME_UNBOUNDED to start at the first row of the group: ROWS BETWEEN n PRECEDING ...
+   */
+  private int[] framePreceding;
+  /** The number of rows after the current one in the frame of a window aggregate: ... AND m FOLLOWING */
+  private int[] frameFollowing;
 
   /** END arrays are one for each configured analytic function */
 
@@ -164,6 +192,65 @@ public class AnalyticQueryMeta extends BaseStepMeta implements StepMetaInterface
     this.valueField = valueField;
   }
 
+  /**
+   * @return the number of preceding rows in the frame of each window aggregate, FRAME_UNBOUNDED for all of them
+   */
+  public int[] getFramePreceding() {
+    return framePreceding;
+  }
+
+  /**
+   * @param framePreceding
+   *          the number of preceding rows in the frame of each window aggregate, FRAME_UNBOUNDED for all of them
+   */
+  public void setFramePreceding( int[] framePreceding ) {
+    this.framePreceding = framePreceding;
+  }
+
+  /**
+   * @return the number of following rows in the frame of each window aggregate
+   */
+  public int[] getFrameFollowing() {
+    return frameFollowing;
+  }
+
+  /**
+   * @param frameFollowing
+   *          the number of following rows in the frame of each window aggregate
+   */
+  public void setFrameFollowing( int[] frameFollowing ) {
+    this.frameFollowing = frameFollowing;
+  }
+
+  /**
+   * @return true if the analytic function is an aggregate over a frame of rows
+   */
+  public static boolean isWindowAggregate( int aggregateType ) {
+    switch ( aggregateType ) {
+      case TYPE_FUNCT_SUM:
+      case TYPE_FUNCT_AVERAGE:
+      case TYPE_FUNCT_MIN:
+      case TYPE_FUNCT_MAX:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return true if the analytic function numbers the rows of the group, the subject field is optional
+   */
+  public static boolean isRanking( int aggregateType ) {
+    switch ( aggregateType ) {
+      case TYPE_FUNCT_ROW_NUMBER:
+      case TYPE_FUNCT_RANK:
+      case TYPE_FUNCT_DENSE_RANK:
+        return true;
+      default:
+        return false;
+    }
+  }
+
   public void loadXML( Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore ) throws KettleXMLException {
     readData( stepnode );
   }
@@ -174,6 +261,8 @@ public class AnalyticQueryMeta extends BaseStepMeta implements StepMetaInterface
     subjectField = new String[nrfields];
     aggregateType = new int[nrfields];
     valueField = new int[nrfields];
+    framePreceding = new int[nrfields];
+    frameFollowing = new int[nrfields];
 
     number_of_fields = nrfields;
   }
@@ -205,6 +294,8 @@ public class AnalyticQueryMeta extends BaseStepMeta implements StepMetaInterface
         aggregateType[i] = getType( XMLHandler.getTagValue( fnode, "type" ) );
 
         valueField[i] = Integer.parseInt( XMLHandler.getTagValue( fnode, "valuefield" ) );
+        framePreceding[i] = Const.toInt( XMLHandler.getTagValue( fnode, "frame_preceding" ), FRAME_UNBOUNDED );
+        frameFollowing[i] = Const.toInt( XMLHandler.getTagValue( fnode, "frame_following" ), 0 );
       }
 
     } catch ( Exception e ) {
@@ -264,11 +355,28 @@ public class AnalyticQueryMeta extends BaseStepMeta implements StepMetaInterface
       int index_of_subject = -1;
       index_of_subject = r.indexOfValue( subjectField[i] );
 
-      // if we found the subjectField in the RowMetaInterface, and we should....
-      if ( index_of_subject > -1 ) {
-        ValueMetaInterface vmi = r.getValueMeta( index_of_subject ).clone();
+      if ( isRanking( aggregateType[i] ) && ( index_of_subject > -1 || Utils.isEmpty( subjectField[i] ) ) ) {
+        ValueMetaInterface vmi = new ValueMetaInteger( aggregateField[i] );
+        vmi.setLength( ValueMetaInterface.DEFAULT_INTEGER_LENGTH, 0 );
+        vmi.setOrigin( origin );
+        fields.addValueMeta( r.size() + i, vmi );
+      } else if ( index_of_subject > -1 ) {
+        // if we found the subjectField in the RowMetaInterface, and we should....
+        ValueMetaInterface subject = r.getValueMeta( index_of_subject );
+        ValueMetaInterface vmi;
+        if ( aggregateType[i] == TYPE_FUNCT_SUM && ( subject.isInteger() || subject.isBigNumber() ) ) {
+          vmi = subject.isInteger() ? new ValueMetaInteger( aggregateField[i] ) : new ValueMetaBigNumber(
+            aggregateField[i] );
+        } else if ( aggregateType[i] == TYPE_FUNCT_SUM || aggregateType[i] == TYPE_FUNCT_AVERAGE ) {
+          // Averages and sums of anything but integers and big numbers are calculated as numbers
+          //
+          vmi = subject.isBigNumber() ? new ValueMetaBigNumber( aggregateField[i] ) : new ValueMetaNumber(
+            aggregateField[i] );
+        } else {
+          vmi = subject.clone();
+          vmi.setName( aggregateField[i] );
+        }
         vmi.setOrigin( origin );
-        vmi.setName( aggregateField[i] );
         fields.addValueMeta( r.size() + i, vmi );
       } else {
         // we have a condition where the subjectField can't be found from the rowMetaInterface
@@ -306,6 +414,8 @@ public class AnalyticQueryMeta extends BaseStepMeta implements StepMetaInterface
       retval.append( "          " ).append( XMLHandler.addTagValue( "subject", subjectField[i] ) );
       retval.append( "          " ).append( XMLHandler.addTagValue( "type", getTypeDesc( aggregateType[i] ) ) );
       retval.append( "          " ).append( XMLHandler.addTagValue( "valuefield", valueField[i] ) );
+      retval.append( "          " ).append( XMLHandler.addTagValue( "frame_preceding", framePreceding[i] ) );
+      retval.append( "          " ).append( XMLHandler.addTagValue( "frame_following", frameFollowing[i] ) );
       retval.append( "        </field>" ).append( Const.CR );
     }
     retval.append( "      </fields>" ).append( Const.CR );
@@ -330,6 +440,8 @@ public class AnalyticQueryMeta extends BaseStepMeta implements StepMetaInterface
         subjectField[i] = rep.getStepAttributeString( id_step, i, "aggregate_subject" );
         aggregateType[i] = getType( rep.getStepAttributeString( id_step, i, "aggregate_type" ) );
         valueField[i] = (int) rep.getStepAttributeInteger( id_step, i, "aggregate_value_field" );
+        framePreceding[i] = (int) rep.getStepAttributeInteger( id_step, i, "aggregate_frame_preceding" );
+        frameFollowing[i] = (int) rep.getStepAttributeInteger( id_step, i, "aggregate_frame_following" );
       }
 
     } catch ( Exception e ) {
@@ -350,6 +462,8 @@ public class AnalyticQueryMeta extends BaseStepMeta implements StepMetaInterface
         rep.saveStepAttribute( id_transformation, id_step, i, "aggregate_subject", subjectField[i] );
         rep.saveStepAttribute( id_transformation, id_step, i, "aggregate_type", getTypeDesc( aggregateType[i] ) );
         rep.saveStepAttribute( id_transformation, id_step, i, "aggregate_value_field", valueField[i] );
+        rep.saveStepAttribute( id_transformation, id_step, i, "aggregate_frame_preceding", framePreceding[i] );
+        rep.saveStepAttribute( id_transformation, id_step, i, "aggregate_frame_following", frameFollowing[i] );
       }
     } catch ( Exception e ) {
       throw new KettleException( BaseMessages.getString(
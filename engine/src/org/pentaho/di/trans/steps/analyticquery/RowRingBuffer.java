@@ -0,0 +1,136 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.analyticquery;
+
+import java.util.Arrays;
+
+/**
+ * A ring buffer holding the last rows of a group, addressed by their number in the group. Rows are added at the end
+ * and removed from the start, so the memory used is bounded by the number of rows the analytic functions need to
+ * look back and ahead instead of by the size of the group. The buffer only grows if more rows are kept than the
+ * initial capacity.
+ */
+public class RowRingBuffer {
+
+  private Object[][] rows;
+
+  /** The position of the first (oldest) row in the array */
+  private int head;
+  private int size;
+
+  /** The number of the first row in the group */
+  private long firstIndex;
+
+  /**
+   * @param capacity
+   *          the number of rows the buffer can hold without growing
+   */
+  public RowRingBuffer( int capacity ) {
+    rows = new Object[Math.max( 1, capacity )][];
+  }
+
+  /**
+   * Add a row at the end of the buffer.
+   *
+   * @return the number of the row in the group
+   */
+  public long add( Object[] row ) {
+    if ( size == rows.length ) {
+      grow();
+    }
+    rows[( head + size ) % rows.length] = row;
+    size++;
+    return firstIndex + size - 1;
+  }
+
+  /**
+   * @param index
+   *          the number of the row in the group
+   * @return the row or null if it is not (or no longer) in the buffer
+   */
+  public Object[] get( long index ) {
+    if ( index < firstIndex || index >= firstIndex + size ) {
+      return null;
+    }
+    return rows[(int) ( ( head + ( index - firstIndex ) ) % rows.length )];
+  }
+
+  /**
+   * Remove the rows with a number lower than the given one.
+   */
+  public void removeBefore( long index ) {
+    while ( size > 0 && firstIndex < index ) {
+      rows[head] = null;
+      head = ( head + 1 ) % rows.length;
+      size--;
+      firstIndex++;
+    }
+  }
+
+  /**
+   * Remove all the rows and start numbering the rows of a new group at 0.
+   */
+  public void clear() {
+    Arrays.fill( rows, null );
+    head = 0;
+    size = 0;
+    firstIndex = 0;
+  }
+
+  /**
+   * @return the number of the first row in the buffer
+   */
+  public long getFirstIndex() {
+    return firstIndex;
+  }
+
+  /**
+   * @return the number of the last row added to the buffer, -1 if no row of the group was added yet
+   */
+  public long getLastIndex() {
+    return firstIndex + size - 1;
+  }
+
+  /**
+   * @return the number of rows in the buffer
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the number of rows the buffer can hold without growing
+   */
+  public int getCapacity() {
+    return rows.length;
+  }
+
+  private void grow() {
+    Object[][] grown = new Object[rows.length * 2][];
+    for ( int i = 0; i < size; i++ ) {
+      grown[i] = rows[( head + i ) % rows.length];
+    }
+    rows = grown;
+    head = 0;
+  }
+}
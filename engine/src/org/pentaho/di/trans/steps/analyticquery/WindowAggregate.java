@@ -0,0 +1,281 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.analyticquery;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A SUM, AVERAGE, MIN or MAX over a sliding frame of rows: ROWS BETWEEN n PRECEDING AND m FOLLOWING, or UNBOUNDED
+ * PRECEDING to start at the first row of the group. When the current row moves forward, the row entering the frame is
+ * added and the row leaving it is removed, so every row is processed twice at most whatever the size of the frame.
+ * Sums and averages keep a running total, minimums and maximums keep a monotonic deque of the candidate values: a value
+ * is dropped as soon as a later row has a smaller (or larger) value, since it can't be the result of any later frame.
+ * Frames starting at the first row never remove rows, so they only keep the best value seen so far.
+ * <br>
+ * <br>
+ * Null values are ignored, the result of a frame without values is null.
+ */
+public class WindowAggregate {
+
+  private final int aggregateType;
+  private final ValueMetaInterface valueMeta;
+  private final int fieldIndex;
+  private final int preceding;
+  private final int following;
+
+  /** The number of the next row to add to the frame */
+  private long nextAdd;
+
+  /** The number of the next row to remove from the frame */
+  private long nextRemove;
+
+  private long count;
+  private long longSum;
+  private double doubleSum;
+  private BigDecimal bigSum;
+
+  /** The candidates for the minimum or maximum, ordered by row number, null for unbounded preceding frames */
+  private final ArrayDeque<Candidate> candidates;
+
+  /** The minimum or maximum of an unbounded preceding frame */
+  private Object best;
+
+  /**
+   * @param aggregateType
+   *          one of AnalyticQueryMeta.TYPE_FUNCT_SUM, _AVERAGE, _MIN or _MAX
+   * @param valueMeta
+   *          the metadata of the subject field
+   * @param fieldIndex
+   *          the index of the subject field in the rows
+   * @param preceding
+   *          the number of rows before the current row in the frame or AnalyticQueryMeta.FRAME_UNBOUNDED (any negative
+   *          number)
+   * @param following
+   *          the number of rows after the current row in the frame
+   */
+  public WindowAggregate( int aggregateType, ValueMetaInterface valueMeta, int fieldIndex, int preceding,
+    int following ) {
+    this.aggregateType = aggregateType;
+    this.valueMeta = valueMeta;
+    this.fieldIndex = fieldIndex;
+    this.preceding = preceding;
+    this.following = following;
+    this.candidates = isMinMax() && !isUnboundedPreceding() ? new ArrayDeque<Candidate>() : null;
+    reset();
+  }
+
+  /**
+   * @return true if the frame starts at the first row of the group
+   */
+  public boolean isUnboundedPreceding() {
+    return preceding < 0;
+  }
+
+  /**
+   * @return the number of rows before the current one that need to be available to move the frame forward
+   */
+  public int getLookBehind() {
+    return Math.max( isUnboundedPreceding() ? 0 : preceding + 1, -following );
+  }
+
+  /**
+   * @return the number of rows after the current one that need to be available to calculate the aggregate
+   */
+  public int getLookAhead() {
+    return Math.max( 0, following );
+  }
+
+  /**
+   * Start a new group.
+   */
+  public void reset() {
+    nextAdd = 0;
+    nextRemove = 0;
+    count = 0;
+    longSum = 0;
+    doubleSum = 0;
+    bigSum = BigDecimal.ZERO;
+    if ( candidates != null ) {
+      candidates.clear();
+    }
+    best = null;
+  }
+
+  /**
+   * Move the frame to the given row and return the aggregate of the frame.
+   *
+   * @param current
+   *          the number of the current row in the group, the rows are passed in order
+   * @param buffer
+   *          the buffer holding the rows of the group that are entering or leaving the frame
+   * @return the aggregate of the rows in the frame of the current row
+   * @throws KettleValueException
+   *           in case a value can't be converted
+   */
+  public Object moveTo( long current, RowRingBuffer buffer ) throws KettleValueException {
+    long last = Math.min( current + following, buffer.getLastIndex() );
+    while ( nextAdd <= last ) {
+      add( nextAdd, buffer.get( nextAdd )[fieldIndex] );
+      nextAdd++;
+    }
+    if ( !isUnboundedPreceding() ) {
+      long first = Math.min( current - preceding, nextAdd );
+      while ( nextRemove < first ) {
+        remove( nextRemove, buffer.get( nextRemove )[fieldIndex] );
+        nextRemove++;
+      }
+    }
+    return getValue();
+  }
+
+  private boolean isMinMax() {
+    return aggregateType == AnalyticQueryMeta.TYPE_FUNCT_MIN || aggregateType == AnalyticQueryMeta.TYPE_FUNCT_MAX;
+  }
+
+  private void add( long index, Object value ) throws KettleValueException {
+    if ( valueMeta.isNull( value ) ) {
+      return;
+    }
+    count++;
+    if ( isMinMax() && candidates == null ) {
+      if ( best == null || isBetter( value, best ) ) {
+        best = value;
+      }
+      return;
+    }
+    if ( isMinMax() ) {
+      // Drop the candidates that can no longer be the minimum (maximum) as long as this row is in the frame
+      //
+      while ( !candidates.isEmpty() && !isBetter( candidates.peekLast().value, value ) ) {
+        candidates.pollLast();
+      }
+      candidates.addLast( new Candidate( index, value ) );
+      return;
+    }
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        longSum += valueMeta.getInteger( value ).longValue();
+        break;
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        bigSum = bigSum.add( valueMeta.getBigNumber( value ) );
+        break;
+      default:
+        doubleSum += valueMeta.getNumber( value ).doubleValue();
+        break;
+    }
+  }
+
+  private void remove( long index, Object value ) throws KettleValueException {
+    if ( valueMeta.isNull( value ) ) {
+      return;
+    }
+    count--;
+    if ( isMinMax() ) {
+      if ( !candidates.isEmpty() && candidates.peekFirst().index == index ) {
+        candidates.pollFirst();
+      }
+      return;
+    }
+    if ( count == 0 ) {
+      // Start again from zero, without rounding errors
+      //
+      longSum = 0;
+      doubleSum = 0;
+      bigSum = BigDecimal.ZERO;
+      return;
+    }
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        longSum -= valueMeta.getInteger( value ).longValue();
+        break;
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        bigSum = bigSum.subtract( valueMeta.getBigNumber( value ) );
+        break;
+      default:
+        doubleSum -= valueMeta.getNumber( value ).doubleValue();
+        break;
+    }
+  }
+
+  /**
+   * @return true if value1 stays a candidate for the minimum (maximum) after value2 entered the frame
+   */
+  private boolean isBetter( Object value1, Object value2 ) throws KettleValueException {
+    int cmp = valueMeta.compare( value1, value2 );
+    return aggregateType == AnalyticQueryMeta.TYPE_FUNCT_MIN ? cmp < 0 : cmp > 0;
+  }
+
+  /**
+   * @return the aggregate of the rows currently in the frame
+   */
+  public Object getValue() {
+    if ( count == 0 ) {
+      return null;
+    }
+    switch ( aggregateType ) {
+      case AnalyticQueryMeta.TYPE_FUNCT_MIN:
+      case AnalyticQueryMeta.TYPE_FUNCT_MAX:
+        return candidates == null ? best : candidates.peekFirst().value;
+      case AnalyticQueryMeta.TYPE_FUNCT_SUM:
+        switch ( valueMeta.getType() ) {
+          case ValueMetaInterface.TYPE_INTEGER:
+            return Long.valueOf( longSum );
+          case ValueMetaInterface.TYPE_BIGNUMBER:
+            return bigSum;
+          default:
+            return Double.valueOf( doubleSum );
+        }
+      default:
+        switch ( valueMeta.getType() ) {
+          case ValueMetaInterface.TYPE_INTEGER:
+            return Double.valueOf( (double) longSum / count );
+          case ValueMetaInterface.TYPE_BIGNUMBER:
+            return bigSum.divide( BigDecimal.valueOf( count ), MathContext.DECIMAL128 );
+          default:
+            return Double.valueOf( doubleSum / count );
+        }
+    }
+  }
+
+  @VisibleForTesting
+  int getNrCandidates() {
+    return candidates == null ? 0 : candidates.size();
+  }
+
+  private static final class Candidate {
+    private final long index;
+    private final Object value;
+
+    Candidate( long index, Object value ) {
+      this.index = index;
+      this.value = value;
+    }
+  }
+}
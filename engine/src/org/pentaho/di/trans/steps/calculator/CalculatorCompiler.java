@@ -0,0 +1,326 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.calculator;
+
+import java.io.StringReader;
+
+import org.codehaus.janino.ClassBodyEvaluator;
+import org.codehaus.janino.Scanner;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.trans.steps.calculator.Calculator.FieldIndexes;
+
+/**
+ * Compiles the calculations of a Calculator step for one row layout into a {@link CompiledCalculator} with Janino.<br>
+ * <br>
+ * The arithmetic calculations (A+B, A+B+C, A-B, A*B, A/B, A*A, the percentages, A+B*C, ABS, MOD, NVL and copy of a
+ * field) on Integer and Number fields are turned into straight-line code on primitive long and double local variables:
+ * every argument is unboxed once per row and every result is boxed once when it's stored in the row. The null handling,
+ * the conversion of the arguments to the type of the first argument and the conversion of the result to the target
+ * type are the same as those of {@link org.pentaho.di.core.row.ValueDataUtil} and
+ * {@link ValueMetaInterface#convertData(ValueMetaInterface, Object)}. All the other calculations, and the ones on other
+ * data types or storage types, are handed back to the interpreter.
+ */
+public class CalculatorCompiler {
+
+  private static final String GENERATED_CLASS_NAME = "GeneratedCalculator";
+
+  private final CalculatorMetaFunction[] calculations;
+  private final FieldIndexes[] fieldIndexes;
+  private final RowMetaInterface calcRowMeta;
+  private final int inputSize;
+
+  private final boolean[] compiled;
+  private int nrCompiled;
+
+  /**
+   * @param calculations
+   *          the calculations to compile
+   * @param fieldIndexes
+   *          the indexes of the result and the arguments of each calculation in the calculation row
+   * @param calcRowMeta
+   *          the layout of the calculation row: the input fields followed by one field per calculation
+   * @param inputSize
+   *          the number of input fields
+   */
+  public CalculatorCompiler( CalculatorMetaFunction[] calculations, FieldIndexes[] fieldIndexes,
+    RowMetaInterface calcRowMeta, int inputSize ) {
+    this.calculations = calculations;
+    this.fieldIndexes = fieldIndexes;
+    this.calcRowMeta = calcRowMeta;
+    this.inputSize = inputSize;
+
+    compiled = new boolean[calculations.length];
+    for ( int i = 0; i < calculations.length; i++ ) {
+      compiled[i] = isCompilable( i );
+      if ( compiled[i] ) {
+        nrCompiled++;
+      }
+    }
+  }
+
+  private boolean isCompilable( int calculationNr ) {
+    CalculatorMetaFunction fn = calculations[calculationNr];
+    FieldIndexes indexes = fieldIndexes[calculationNr];
+    if ( Utils.isEmpty( fn.getFieldName() ) || !isPrimitive( inputSize + calculationNr ) ) {
+      return false;
+    }
+
+    switch ( fn.getCalcType() ) {
+      case CalculatorMetaFunction.CALC_COPY_OF_FIELD:
+      case CalculatorMetaFunction.CALC_SQUARE:
+      case CalculatorMetaFunction.CALC_ABS:
+        return isPrimitive( indexes.indexA );
+      case CalculatorMetaFunction.CALC_ADD:
+      case CalculatorMetaFunction.CALC_SUBTRACT:
+      case CalculatorMetaFunction.CALC_MULTIPLY:
+      case CalculatorMetaFunction.CALC_DIVIDE:
+      case CalculatorMetaFunction.CALC_PERCENT_1:
+      case CalculatorMetaFunction.CALC_PERCENT_2:
+      case CalculatorMetaFunction.CALC_PERCENT_3:
+      case CalculatorMetaFunction.CALC_REMAINDER:
+      case CalculatorMetaFunction.CALC_NVL:
+        return isPrimitive( indexes.indexA ) && isPrimitive( indexes.indexB );
+      case CalculatorMetaFunction.CALC_ADD3:
+      case CalculatorMetaFunction.CALC_COMBINATION_1:
+        return isPrimitive( indexes.indexA ) && isPrimitive( indexes.indexB ) && isPrimitive( indexes.indexC );
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return true if the field is an Integer or a Number in normal storage, a long or a double in the generated code
+   */
+  private boolean isPrimitive( int index ) {
+    if ( index < 0 || index >= calcRowMeta.size() ) {
+      return false;
+    }
+    ValueMetaInterface valueMeta = calcRowMeta.getValueMeta( index );
+    return ( valueMeta.getType() == ValueMetaInterface.TYPE_INTEGER
+      || valueMeta.getType() == ValueMetaInterface.TYPE_NUMBER )
+      && valueMeta.getStorageType() == ValueMetaInterface.STORAGE_TYPE_NORMAL;
+  }
+
+  private boolean isLong( int index ) {
+    return calcRowMeta.getValueMeta( index ).getType() == ValueMetaInterface.TYPE_INTEGER;
+  }
+
+  /**
+   * @return true if the given calculation is compiled, false if it's left to the interpreter
+   */
+  public boolean isCompiled( int calculationNr ) {
+    return compiled[calculationNr];
+  }
+
+  /**
+   * @return the number of calculations that are compiled
+   */
+  public int getNrCompiled() {
+    return nrCompiled;
+  }
+
+  /**
+   * @return the source code of the body of the generated class
+   */
+  public String generateSource() {
+    boolean[] used = new boolean[calcRowMeta.size()];
+    boolean[] loaded = new boolean[calcRowMeta.size()];
+    StringBuilder code = new StringBuilder();
+
+    for ( int i = 0; i < calculations.length; i++ ) {
+      int index = inputSize + i;
+      if ( !compiled[i] ) {
+        // The interpreter stores the result in the row, read it from there when it's used later on
+        //
+        code.append( "    interpret(r, " ).append( i ).append( ");\n" );
+        loaded[index] = false;
+        continue;
+      }
+
+      FieldIndexes indexes = fieldIndexes[i];
+      int calcType = calculations[i].getCalcType();
+
+      // The calculation is done in the data type of the first argument, like ValueDataUtil does
+      //
+      boolean asLong = isLong( indexes.indexA );
+      String a = argument( indexes.indexA, asLong, code, used, loaded );
+      String b = null;
+      String c = null;
+      String isNull = "n" + indexes.indexA;
+      switch ( calcType ) {
+        case CalculatorMetaFunction.CALC_ADD3:
+        case CalculatorMetaFunction.CALC_COMBINATION_1:
+          c = argument( indexes.indexC, asLong, code, used, loaded );
+          isNull = isNull + " || n" + indexes.indexC;
+          // fall through to the second argument
+        case CalculatorMetaFunction.CALC_ADD:
+        case CalculatorMetaFunction.CALC_SUBTRACT:
+        case CalculatorMetaFunction.CALC_MULTIPLY:
+        case CalculatorMetaFunction.CALC_DIVIDE:
+        case CalculatorMetaFunction.CALC_PERCENT_1:
+        case CalculatorMetaFunction.CALC_PERCENT_2:
+        case CalculatorMetaFunction.CALC_PERCENT_3:
+        case CalculatorMetaFunction.CALC_REMAINDER:
+          b = argument( indexes.indexB, asLong, code, used, loaded );
+          isNull = isNull + " || n" + indexes.indexB;
+          break;
+        case CalculatorMetaFunction.CALC_NVL:
+          b = argument( indexes.indexB, asLong, code, used, loaded );
+          isNull = isNull + " && n" + indexes.indexB;
+          break;
+        default:
+          break;
+      }
+
+      String expression;
+      switch ( calcType ) {
+        case CalculatorMetaFunction.CALC_COPY_OF_FIELD:
+          expression = a;
+          break;
+        case CalculatorMetaFunction.CALC_ADD:
+          expression = "(" + a + " + " + b + ")";
+          break;
+        case CalculatorMetaFunction.CALC_ADD3:
+          expression = "(" + a + " + " + b + " + " + c + ")";
+          break;
+        case CalculatorMetaFunction.CALC_SUBTRACT:
+          expression = "(" + a + " - " + b + ")";
+          break;
+        case CalculatorMetaFunction.CALC_MULTIPLY:
+          expression = "(" + a + " * " + b + ")";
+          break;
+        case CalculatorMetaFunction.CALC_DIVIDE:
+          expression = "(" + a + " / " + b + ")";
+          break;
+        case CalculatorMetaFunction.CALC_SQUARE:
+          expression = "(" + a + " * " + a + ")";
+          break;
+        case CalculatorMetaFunction.CALC_PERCENT_1:
+          expression = "((" + ( asLong ? "100L" : "100.0D" ) + " * " + a + ") / " + b + ")";
+          break;
+        case CalculatorMetaFunction.CALC_PERCENT_2:
+          expression = "(" + a + " - ((" + a + " * " + b + ") / " + ( asLong ? "100L" : "100.0D" ) + "))";
+          break;
+        case CalculatorMetaFunction.CALC_PERCENT_3:
+          expression = "(" + a + " + ((" + a + " * " + b + ") / " + ( asLong ? "100L" : "100.0D" ) + "))";
+          break;
+        case CalculatorMetaFunction.CALC_COMBINATION_1:
+          expression = "(" + a + " + (" + b + " * " + c + "))";
+          break;
+        case CalculatorMetaFunction.CALC_ABS:
+          // The integer version goes through getNumber() and back, like ValueDataUtil.abs()
+          //
+          expression = asLong ? "Math.abs((long) (double) " + a + ")" : "Math.abs(" + a + ")";
+          break;
+        case CalculatorMetaFunction.CALC_REMAINDER:
+          expression = asLong ? "(" + a + " % " + b + ")" : "Math.IEEEremainder(" + a + ", " + b + ")";
+          break;
+        case CalculatorMetaFunction.CALC_NVL:
+          expression = "(n" + indexes.indexA + " ? " + b + " : " + a + ")";
+          break;
+        default:
+          throw new IllegalStateException( "Calculation #" + ( i + 1 ) + " can't be compiled" );
+      }
+
+      // Convert the result to the target data type and store it in the row
+      //
+      boolean targetIsLong = isLong( index );
+      used[index] = true;
+      code.append( "    n" ).append( index ).append( " = " ).append( isNull ).append( ";\n" );
+      code.append( "    v" ).append( index ).append( " = n" ).append( index ).append( " ? " )
+        .append( targetIsLong ? "0L" : "0.0D" ).append( " : " ).append( convert( expression, asLong, targetIsLong ) )
+        .append( ";\n" );
+      code.append( "    if (n" ).append( index ).append( ") r[" ).append( index ).append( "] = null; else r[" )
+        .append( index ).append( "] = " ).append( targetIsLong ? "Long" : "Double" ).append( ".valueOf(v" )
+        .append( index ).append( ");\n" );
+      loaded[index] = true;
+    }
+
+    StringBuilder source = new StringBuilder();
+    source.append( "public void calculate(Object[] r) throws org.pentaho.di.core.exception.KettleValueException {\n" );
+    for ( int index = 0; index < used.length; index++ ) {
+      if ( used[index] ) {
+        source.append( "    " ).append( isLong( index ) ? "long" : "double" ).append( " v" ).append( index )
+          .append( " = " ).append( isLong( index ) ? "0L" : "0.0D" ).append( "; boolean n" ).append( index )
+          .append( " = true;\n" );
+      }
+    }
+    source.append( code );
+    source.append( "}\n" );
+    return source.toString();
+  }
+
+  /**
+   * Unbox the field the first time it's used and return the expression for its value in the calculation type.
+   */
+  private String argument( int index, boolean asLong, StringBuilder code, boolean[] used, boolean[] loaded ) {
+    used[index] = true;
+    if ( !loaded[index] ) {
+      code.append( "    n" ).append( index ).append( " = r[" ).append( index ).append( "] == null;\n" );
+      code.append( "    if (!n" ).append( index ).append( ") v" ).append( index ).append( " = ((" )
+        .append( isLong( index ) ? "Long" : "Double" ).append( ") r[" ).append( index ).append( "])." )
+        .append( isLong( index ) ? "longValue" : "doubleValue" ).append( "();\n" );
+      loaded[index] = true;
+    }
+    return convert( "v" + index, isLong( index ), asLong );
+  }
+
+  /**
+   * Integer to Number is a cast, Number to Integer is rounded, the same as ValueMetaBase.getNumber() and getInteger().
+   */
+  private static String convert( String expression, boolean fromLong, boolean toLong ) {
+    if ( fromLong == toLong ) {
+      return expression;
+    }
+    return toLong ? "Math.round(" + expression + ")" : "((double) " + expression + ")";
+  }
+
+  /**
+   * Generate and compile the class for the calculations.
+   *
+   * @param interpreter
+   *          the interpreter for the calculations that are not compiled
+   * @return the compiled calculations
+   * @throws KettleException
+   *           in case the generated class can't be compiled or instantiated
+   */
+  public CompiledCalculator compile( CompiledCalculator.Interpreter interpreter ) throws KettleException {
+    String source = generateSource();
+    try {
+      ClassBodyEvaluator cbe = new ClassBodyEvaluator();
+      cbe.setParentClassLoader( CompiledCalculator.class.getClassLoader() );
+      cbe.setClassName( GENERATED_CLASS_NAME );
+      cbe.setExtendedType( CompiledCalculator.class );
+      cbe.cook( new Scanner( null, new StringReader( source ) ) );
+
+      CompiledCalculator calculator = (CompiledCalculator) cbe.getClazz().newInstance();
+      calculator.setInterpreter( interpreter );
+      return calculator;
+    } catch ( Exception e ) {
+      throw new KettleException( "Unable to compile the generated class for the calculations", e );
+    }
+  }
+}
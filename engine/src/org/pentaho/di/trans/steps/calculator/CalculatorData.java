@@ -44,6 +44,12 @@ public class CalculatorData extends BaseStepData implements StepDataInterface {
 
   private int[] tempIndexes;
 
+  private int[] lazyFieldIndexes;
+  private Object[][] blockRows;
+  private Object[] blockValues;
+
+  private CompiledCalculator compiledCalculator;
+
   private final Map<Integer, ValueMetaInterface> resultMetaMapping;
 
   public CalculatorData() {
@@ -75,6 +81,44 @@ public class CalculatorData extends BaseStepData implements StepDataInterface {
     this.fieldIndexes = fieldIndexes;
   }
 
+  /**
+   * @return the indexes of the lazily converted input fields used in the calculations, null if there are none
+   */
+  public int[] getLazyFieldIndexes() {
+    return lazyFieldIndexes;
+  }
+
+  public void setLazyFieldIndexes( int[] lazyFieldIndexes ) {
+    this.lazyFieldIndexes = lazyFieldIndexes;
+  }
+
+  public Object[][] getBlockRows() {
+    return blockRows;
+  }
+
+  public void setBlockRows( Object[][] blockRows ) {
+    this.blockRows = blockRows;
+  }
+
+  public Object[] getBlockValues() {
+    return blockValues;
+  }
+
+  public void setBlockValues( Object[] blockValues ) {
+    this.blockValues = blockValues;
+  }
+
+  /**
+   * @return the compiled calculations, null if the calculations are interpreted
+   */
+  public CompiledCalculator getCompiledCalculator() {
+    return compiledCalculator;
+  }
+
+  public void setCompiledCalculator( CompiledCalculator compiledCalculator ) {
+    this.compiledCalculator = compiledCalculator;
+  }
+
   public int[] getTempIndexes() {
     return tempIndexes;
   }
@@ -0,0 +1,77 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.calculator;
+
+import org.pentaho.di.core.exception.KettleValueException;
+
+/**
+ * The base class of the classes that {@link CalculatorCompiler} generates for the calculations of a Calculator step.
+ * A generated class performs all the calculations of one row in straight-line code on primitive local variables. The
+ * calculations it can't compile are handed back to the {@link Interpreter}, one at a time, in their original order.<br>
+ * <br>
+ * The generated classes live in their own class loader, so everything they use has to be public.
+ */
+public abstract class CompiledCalculator {
+
+  /**
+   * Performs a single calculation the interpreted way.
+   */
+  public interface Interpreter {
+    /**
+     * @param calcData
+     *          the row holding the input fields, followed by the calculated fields
+     * @param calculationNr
+     *          the number of the calculation to perform
+     * @throws KettleValueException
+     *           in case there is a calculation error
+     */
+    void calculate( Object[] calcData, int calculationNr ) throws KettleValueException;
+  }
+
+  private Interpreter interpreter;
+
+  /**
+   * Perform all the calculations on the given row.
+   *
+   * @param calcData
+   *          the row holding the input fields, resized to hold the calculated fields
+   * @throws KettleValueException
+   *           in case there is a calculation error
+   */
+  public abstract void calculate( Object[] calcData ) throws KettleValueException;
+
+  /**
+   * Called by the generated code for the calculations that are not compiled.
+   */
+  protected void interpret( Object[] calcData, int calculationNr ) throws KettleValueException {
+    interpreter.calculate( calcData, calculationNr );
+  }
+
+  public Interpreter getInterpreter() {
+    return interpreter;
+  }
+
+  public void setInterpreter( Interpreter interpreter ) {
+    this.interpreter = interpreter;
+  }
+}
@@ -22,16 +22,25 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
+import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.logging.Metrics;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -42,6 +51,7 @@ import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
+import org.pentaho.di.trans.step.StepCacheStatistics;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
@@ -56,12 +66,15 @@ import com.google.common.annotations.VisibleForTesting;
  * @author Matt
  * @since 26-apr-2003
  */
-public class DatabaseLookup extends BaseStep implements StepInterface {
+public class DatabaseLookup extends BaseStep implements StepInterface, StepCacheStatistics {
   private static Class<?> PKG = DatabaseLookupMeta.class; // for i18n purposes, needed by Translator2!!
 
   private DatabaseLookupMeta meta;
   private DatabaseLookupData data;
 
+  /** The LRU cache of this copy, kept after dispose() for its statistics. A shared cache is reported by every copy. */
+  private volatile LruCache statisticsCache;
+
   public DatabaseLookup( StepMeta stepMeta, StepDataInterface stepDataInterface, int copyNr, TransMeta transMeta,
                          Trans trans ) {
     super( stepMeta, stepDataInterface, copyNr, transMeta, trans );
@@ -76,8 +89,55 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
    */
   @VisibleForTesting
   synchronized Object[] lookupValues( RowMetaInterface inputRowMeta, Object[] row ) throws KettleException {
-    Object[] outputRow = RowDataUtil.resizeArray( row, data.outputRowMeta.size() );
+    Object[] lookupRow = createLookupRow( inputRowMeta, row );
+
+    Object[] add;
+    boolean cache_now = false;
+    boolean notFoundCached = false;
+
+    // First, check if we looked up before
+    if ( meta.isCached() ) {
+      add = data.cache.getRowFromCache( data.lookupMeta, lookupRow );
+      if ( add == LruCache.NOT_FOUND ) {
+        // We looked this one up before and the database returned nothing
+        //
+        add = null;
+        notFoundCached = true;
+      }
+    } else {
+      add = null;
+    }
+
+    if ( add == null && !notFoundCached ) {
+      if ( !( meta.isCached() && meta.isLoadingAllDataInCache() ) || data.hasDBCondition ) { // do not go to the
+        // database when all rows
+        // are in (exception LIKE
+        // operator)
+        if ( log.isRowLevel() ) {
+          logRowlevel( BaseMessages.getString( PKG, "DatabaseLookup.Log.AddedValuesToLookupRow1" )
+            + meta.getStreamKeyField1().length
+            + BaseMessages.getString( PKG, "DatabaseLookup.Log.AddedValuesToLookupRow2" )
+            + data.lookupMeta.getString( lookupRow ) );
+        }
+
+        data.db.setValuesLookup( data.lookupMeta, lookupRow );
+        // PDI-8373
+        add = data.db.getLookup( meta.isFailingOnMultipleResults(), meta.getDatabaseMeta().isMySQLVariant() );
+        cache_now = true;
+
+        // Only verify the data types if the data comes from the DB, NOT when we have a cache hit
+        // In that case, we already know the data type is OK.
+        if ( add != null ) {
+          incrementLinesInput();
+          convertReturnedValues( data.db.getReturnRowMeta(), 0, add );
+        }
+      }
+    }
+
+    return addLookupResult( inputRowMeta, row, lookupRow, add, cache_now );
+  }
 
+  private Object[] createLookupRow( RowMetaInterface inputRowMeta, Object[] row ) throws KettleException {
     Object[] lookupRow = new Object[ data.lookupMeta.size() ];
     int lookupIndex = 0;
 
@@ -109,41 +169,59 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         lookupIndex++;
       }
     }
+    return lookupRow;
+  }
 
-    Object[] add;
-    boolean cache_now = false;
-    boolean cacheHit = false;
+  /**
+   * Convert the values returned by the database to the default return types, if any.
+   *
+   * @param returnedMeta the layout of the row returned by the database
+   * @param offset       the index of the first return value in the returned row
+   * @param add          the return values, converted in place
+   */
+  private void convertReturnedValues( RowMetaInterface returnedMeta, int offset, Object[] add )
+    throws KettleException {
+    int[] types = meta.getReturnValueDefaultType();
 
-    // First, check if we looked up before
-    if ( meta.isCached() ) {
-      add = data.cache.getRowFromCache( data.lookupMeta, lookupRow );
-      if ( add != null ) {
-        cacheHit = true;
+    // The assumption here is that the types are in the same order
+    // as the returned lookup row, but since we make the lookup row
+    // that should not be a problem.
+    //
+    for ( int i = 0; i < types.length; i++ ) {
+      ValueMetaInterface returned = returnedMeta.getValueMeta( offset + i );
+      ValueMetaInterface expected = data.returnMeta.getValueMeta( i );
+
+      if ( returned != null && types[ i ] > 0
+        && ( types[ i ] != returned.getType()
+        ||
+          returned.getType() == ValueMetaInterface.TYPE_STRING
+            && returned.getStorageType() == ValueMetaInterface.STORAGE_TYPE_BINARY_STRING ) ) {
+        // Set the type to the default return type
+        add[ i ] = expected.convertData( returned, add[ i ] );
       }
-    } else {
-      add = null;
     }
+  }
 
-    if ( add == null ) {
-      if ( !( meta.isCached() && meta.isLoadingAllDataInCache() ) || data.hasDBCondition ) { // do not go to the
-        // database when all rows
-        // are in (exception LIKE
-        // operator)
-        if ( log.isRowLevel() ) {
-          logRowlevel( BaseMessages.getString( PKG, "DatabaseLookup.Log.AddedValuesToLookupRow1" )
-            + meta.getStreamKeyField1().length
-            + BaseMessages.getString( PKG, "DatabaseLookup.Log.AddedValuesToLookupRow2" )
-            + data.lookupMeta.getString( lookupRow ) );
-        }
-
-        data.db.setValuesLookup( data.lookupMeta, lookupRow );
-        // PDI-8373
-        add = data.db.getLookup( meta.isFailingOnMultipleResults(), meta.getDatabaseMeta().isMySQLVariant() );
-        cache_now = true;
-      }
-    }
+  /**
+   * Handle the result of a lookup: add the default values when nothing was found, store the result in the cache and
+   * add the return values to the row.
+   *
+   * @param lookupRow the values that were looked up
+   * @param add       the values found or null if nothing was found
+   * @param cache_now true if the result came from the database and can be stored in the cache
+   * @return the resulting row or null if the row is eaten or sent to error handling
+   */
+  private Object[] addLookupResult( RowMetaInterface inputRowMeta, Object[] row, Object[] lookupRow, Object[] add,
+                                    boolean cache_now ) throws KettleException {
+    Object[] outputRow = RowDataUtil.resizeArray( row, data.outputRowMeta.size() );
 
     if ( add == null ) { // nothing was found, unknown code: add default values
+      if ( cache_now && meta.isCachingNotFound() && isStoringInCache() ) {
+        // Remember that there is nothing to find, also when the row is eaten or sent to error handling
+        //
+        data.cache.storeRowInCache( meta, data.lookupMeta, lookupRow, LruCache.NOT_FOUND );
+        cache_now = false;
+      }
       if ( meta.isEatingRowOnLookupFailure() ) {
         return null;
       }
@@ -171,38 +249,11 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         logRowlevel( BaseMessages.getString( PKG, "DatabaseLookup.Log.FoundResultsAfterLookup" )
           + Arrays.toString( add ) );
       }
-
-      // Only verify the data types if the data comes from the DB, NOT when we have a cache hit
-      // In that case, we already know the data type is OK.
-      if ( !cacheHit ) {
-        incrementLinesInput();
-
-        int[] types = meta.getReturnValueDefaultType();
-
-        // The assumption here is that the types are in the same order
-        // as the returned lookup row, but since we make the lookup row
-        // that should not be a problem.
-        //
-        for ( int i = 0; i < types.length; i++ ) {
-          ValueMetaInterface returned = data.db.getReturnRowMeta().getValueMeta( i );
-          ValueMetaInterface expected = data.returnMeta.getValueMeta( i );
-
-          if ( returned != null && types[ i ] > 0
-            && ( types[ i ] != returned.getType()
-            ||
-              returned.getType() == ValueMetaInterface.TYPE_STRING
-                && returned.getStorageType() == ValueMetaInterface.STORAGE_TYPE_BINARY_STRING ) ) {
-            // Set the type to the default return type
-            add[ i ] = expected.convertData( returned, add[ i ] );
-          }
-        }
-      }
     }
 
     // Store in cache if we need to!
-    // If we already loaded all data into the cache, storing more makes no sense.
     //
-    if ( meta.isCached() && cache_now && !meta.isLoadingAllDataInCache() && data.allEquals ) {
+    if ( cache_now && isStoringInCache() ) {
       data.cache.storeRowInCache( meta, data.lookupMeta, lookupRow, add );
     }
 
@@ -213,6 +264,14 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     return outputRow;
   }
 
+  private boolean isStoringInCache() {
+    // If we already loaded all data into the cache, storing more makes no sense.
+    // The LRU cache matches the exact lookup values so it can also keep the results of non-equality conditions.
+    //
+    return meta.isCached() && !meta.isLoadingAllDataInCache()
+      && ( data.allEquals || data.cache instanceof LruCache );
+  }
+
   // visible for testing purposes
   void determineFieldsTypesQueryingDb() throws KettleException {
     final String[] keyFields = meta.getTableKeyField();
@@ -314,8 +373,20 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
 
   @Override
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
+    // Don't keep the rows of an incomplete batch waiting for more input too long
+    //
+    if ( data.batchRows != null && !data.batchRows.isEmpty() && data.batchMaxWait > 0 ) {
+      long remaining = data.batchStart + data.batchMaxWait - System.currentTimeMillis();
+      if ( remaining <= 0 || !waitForInput( remaining, TimeUnit.MILLISECONDS ) ) {
+        return lookupBatch();
+      }
+    }
+
     Object[] r = getRow(); // Get row from input rowset & set row busy!
     if ( r == null ) { // no more input to be expected...
+      if ( data.batchRows != null && !data.batchRows.isEmpty() && !lookupBatch() ) {
+        return false;
+      }
       setOutputDone();
       return false;
     }
@@ -373,7 +444,11 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
       }
 
       if ( meta.isCached() ) {
-        data.cache = DefaultCache.newCache( data, meta.getCacheSize() );
+        if ( meta.isLoadingAllDataInCache() ) {
+          data.cache = DefaultCache.newCache( data, meta.getCacheSize() );
+        } else {
+          data.cache = statisticsCache = acquireLruCache();
+        }
       }
 
       determineFieldsTypesQueryingDb();
@@ -384,6 +459,10 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
 
       initReturnMeta();
 
+      if ( meta.isBatchLookup() ) {
+        initBatchLookup();
+      }
+
       // If the user selected to load all data into the cache at startup, that's what we do now...
       //
       if ( meta.isCached() && meta.isLoadingAllDataInCache() ) {
@@ -397,38 +476,419 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
         + getInputRowMeta().getString( r ) );
     }
 
+    if ( data.batchRows != null ) {
+      if ( data.batchRows.isEmpty() ) {
+        data.batchStart = System.currentTimeMillis();
+      }
+      data.batchRows.add( r );
+      if ( data.batchRows.size() >= data.batchSize ) {
+        return lookupBatch();
+      }
+      return true;
+    }
+
     try {
       // add new lookup values to the row
       Object[] outputRow = lookupValues( getInputRowMeta(), r );
+      putLookupResult( r, outputRow );
+    } catch ( KettleException e ) {
+      return handleLookupError( r, e );
+    }
 
-      if ( outputRow != null ) {
-        // copy row to output rowset(s);
-        putRow( data.outputRowMeta, outputRow );
+    return true;
+  }
 
-        if ( log.isRowLevel() ) {
-          logRowlevel( BaseMessages.getString( PKG, "DatabaseLookup.Log.WroteRowToNextStep" )
-            + getInputRowMeta().getString( r ) );
+  private void putLookupResult( Object[] r, Object[] outputRow ) throws KettleStepException {
+    if ( outputRow != null ) {
+      // copy row to output rowset(s);
+      putRow( data.outputRowMeta, outputRow );
+
+      if ( log.isRowLevel() ) {
+        logRowlevel( BaseMessages.getString( PKG, "DatabaseLookup.Log.WroteRowToNextStep" )
+          + getInputRowMeta().getString( r ) );
+      }
+      if ( checkFeedback( getLinesRead() ) ) {
+        logBasic( "linenr " + getLinesRead() );
+        if ( log.isDetailed() && data.cache instanceof LruCache ) {
+          logCacheStatistics( (LruCache) data.cache );
         }
-        if ( checkFeedback( getLinesRead() ) ) {
-          logBasic( "linenr " + getLinesRead() );
+      }
+    }
+  }
+
+  /**
+   * @return true if the step can continue with the next row, false if it was stopped because of the error
+   */
+  private boolean handleLookupError( Object[] r, KettleException e ) throws KettleStepException {
+    if ( getStepMeta().isDoingErrorHandling() ) {
+      putError( getInputRowMeta(), r, 1, e.getMessage(), null, "DBLOOKUPD001" );
+      return true;
+    } else {
+      logError( BaseMessages.getString( PKG, "DatabaseLookup.ERROR003.UnexpectedErrorDuringProcessing" )
+        + e.getMessage() );
+      setErrors( 1 );
+      stopAll();
+      setOutputDone(); // signal end to receiver(s)
+      return false;
+    }
+  }
+
+  /**
+   * Prepare the query that looks up the keys of a batch of rows at once. This is only possible when all the key
+   * conditions are "=", otherwise the rows are looked up one by one.
+   */
+  private void initBatchLookup() throws KettleException {
+    if ( meta.isCached() && meta.isLoadingAllDataInCache() ) {
+      return; // Nothing to look up in the database
+    }
+    boolean possible = data.conditions.length > 0 && data.lookupMeta.size() == data.conditions.length;
+    for ( int condition : data.conditions ) {
+      possible &= condition == DatabaseLookupMeta.CONDITION_EQ;
+    }
+    if ( !possible ) {
+      logBasic( BaseMessages.getString( PKG, "DatabaseLookup.Log.BatchLookupNotPossible" ) );
+      return;
+    }
+
+    data.batchSize = Math.max( 1, Const.toInt( environmentSubstitute( meta.getBatchSize() ), 100 ) );
+    data.batchMaxWait = Const.toLong( environmentSubstitute( meta.getBatchMaxWait() ), 0L );
+
+    DatabaseMeta dbMeta = meta.getDatabaseMeta();
+    String[] keyFields = meta.getTableKeyField();
+
+    // The database tells which key of the batch a row belongs to: the position of the first key it matches. This way
+    // the keys are compared the way the database does it (collation, padding, ...) and not the way Java does.
+    //
+    StringBuilder sql = new StringBuilder( "SELECT CASE" );
+    for ( int b = 0; b < data.batchSize; b++ ) {
+      sql.append( " WHEN " );
+      for ( int i = 0; i < keyFields.length; i++ ) {
+        if ( i > 0 ) {
+          sql.append( " AND " );
+        }
+        sql.append( dbMeta.quoteField( keyFields[ i ] ) ).append( " = ?" );
+      }
+      sql.append( " THEN " ).append( b );
+    }
+    sql.append( " END" );
+    for ( int i = 0; i < meta.getReturnValueField().length; i++ ) {
+      sql.append( ", " ).append( dbMeta.quoteField( meta.getReturnValueField()[ i ] ) );
+    }
+    sql.append( " FROM " ).append( dbMeta.getQuotedSchemaTableCombination(
+      environmentSubstitute( meta.getSchemaName() ), environmentSubstitute( meta.getTablename() ) ) );
+
+    // A single key uses an IN list, combined keys a list of alternatives
+    //
+    sql.append( " WHERE " );
+    if ( keyFields.length == 1 ) {
+      sql.append( dbMeta.quoteField( keyFields[ 0 ] ) ).append( " IN (" );
+      for ( int b = 0; b < data.batchSize; b++ ) {
+        sql.append( b > 0 ? ", ?" : " ?" );
+      }
+      sql.append( " )" );
+    } else {
+      for ( int b = 0; b < data.batchSize; b++ ) {
+        sql.append( b > 0 ? " OR ( " : "( " );
+        for ( int i = 0; i < keyFields.length; i++ ) {
+          if ( i > 0 ) {
+            sql.append( " AND " );
+          }
+          sql.append( dbMeta.quoteField( keyFields[ i ] ) ).append( " = ?" );
+        }
+        sql.append( " )" );
+      }
+    }
+
+    // The first row of every key wins, just like with a single lookup
+    //
+    if ( !Utils.isEmpty( meta.getOrderByClause() ) ) {
+      sql.append( " ORDER BY " ).append( meta.getOrderByClause() );
+    }
+
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "DatabaseLookup.Log.BatchLookupSQL", sql.toString() ) );
+    }
+    data.batchStatement = data.db.prepareSQL( sql.toString() );
+
+    // The keys are bound twice: once for the position and once for the condition
+    //
+    data.batchParamsMeta = new RowMeta();
+    data.batchStringKeys = false;
+    for ( int b = 0; b < data.batchSize * 2; b++ ) {
+      for ( int i = 0; i < data.lookupMeta.size(); i++ ) {
+        ValueMetaInterface param = data.lookupMeta.getValueMeta( i ).clone();
+        param.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+        data.batchParamsMeta.addValueMeta( param );
+        data.batchStringKeys |= param.isString();
+      }
+    }
+    data.batchRows = new ArrayList<Object[]>( data.batchSize );
+  }
+
+  /**
+   * Look up all the buffered rows: the rows are first looked up in the cache, the remaining distinct keys with one
+   * query per batch. The results are passed on in the original order of the rows.
+   *
+   * @return true if the step can continue, false if it was stopped because of an error
+   */
+  private boolean lookupBatch() throws KettleException {
+    List<Object[]> rows = data.batchRows;
+    data.batchRows = new ArrayList<Object[]>( data.batchSize );
+
+    Object[][] lookupRows = new Object[ rows.size() ][];
+    Object[][] results = new Object[ rows.size() ][];
+    boolean[] fromDatabase = new boolean[ rows.size() ];
+    List<Object[]> keys = new ArrayList<Object[]>();
+    Set<RowMetaAndData> queued = new HashSet<RowMetaAndData>();
+
+    for ( int i = 0; i < rows.size(); i++ ) {
+      try {
+        lookupRows[ i ] = createLookupRow( getInputRowMeta(), rows.get( i ) );
+        if ( meta.isCached() ) {
+          Object[] add = data.cache.getRowFromCache( data.lookupMeta, lookupRows[ i ] );
+          if ( add != null ) {
+            results[ i ] = add == LruCache.NOT_FOUND ? null : add;
+            continue;
+          }
+        }
+        fromDatabase[ i ] = true;
+
+        // A null key never matches anything in the database
+        //
+        RowMetaAndData key = new RowMetaAndData( data.lookupMeta, lookupRows[ i ] );
+        if ( !hasNullValue( lookupRows[ i ] ) && queued.add( key ) ) {
+          keys.add( lookupRows[ i ] );
+        }
+      } catch ( KettleException e ) {
+        lookupRows[ i ] = null;
+        if ( !handleLookupError( rows.get( i ), e ) ) {
+          return false;
+        }
+      }
+    }
+
+    Map<RowMetaAndData, Object[]> found = new HashMap<RowMetaAndData, Object[]>();
+    Map<RowMetaAndData, KettleException> multipleResults = new HashMap<RowMetaAndData, KettleException>();
+    try {
+      for ( int start = 0; start < keys.size(); start += data.batchSize ) {
+        List<Object[]> pending = keys.subList( start, Math.min( keys.size(), start + data.batchSize ) );
+
+        // A database row is only reported for the first key it matches. Other keys the database considers equal to
+        // it (a case insensitive collation, trailing spaces, ...) are looked up again with the keys not found yet.
+        //
+        while ( queryBatch( pending, found, multipleResults ) > 0 && data.batchStringKeys ) {
+          List<Object[]> notFound = new ArrayList<Object[]>();
+          for ( Object[] key : pending ) {
+            if ( !found.containsKey( new RowMetaAndData( data.lookupMeta, key ) ) ) {
+              notFound.add( key );
+            }
+          }
+          if ( notFound.isEmpty() || notFound.size() == pending.size() ) {
+            break;
+          }
+          pending = notFound;
         }
       }
     } catch ( KettleException e ) {
-      if ( getStepMeta().isDoingErrorHandling() ) {
-        putError( getInputRowMeta(), r, 1, e.getMessage(), null, "DBLOOKUPD001" );
-      } else {
-        logError( BaseMessages.getString( PKG, "DatabaseLookup.ERROR003.UnexpectedErrorDuringProcessing" )
-          + e.getMessage() );
-        setErrors( 1 );
-        stopAll();
-        setOutputDone(); // signal end to receiver(s)
-        return false;
+      // The query failed for all the rows of the batch
+      //
+      for ( int i = 0; i < rows.size(); i++ ) {
+        if ( lookupRows[ i ] != null && !handleLookupError( rows.get( i ), e ) ) {
+          return false;
+        }
       }
+      return true;
     }
 
+    for ( int i = 0; i < rows.size(); i++ ) {
+      if ( lookupRows[ i ] == null ) {
+        continue; // Already sent to error handling
+      }
+      try {
+        Object[] add = results[ i ];
+        if ( fromDatabase[ i ] ) {
+          RowMetaAndData key = new RowMetaAndData( data.lookupMeta, lookupRows[ i ] );
+          KettleException multipleResultsError = multipleResults.get( key );
+          if ( multipleResultsError != null ) {
+            // Only the rows of this key fail, like they would one at a time
+            //
+            throw multipleResultsError;
+          }
+          add = found.get( key );
+        }
+        Object[] outputRow =
+          addLookupResult( getInputRowMeta(), rows.get( i ), lookupRows[ i ], add, fromDatabase[ i ] );
+        putLookupResult( rows.get( i ), outputRow );
+      } catch ( KettleException e ) {
+        if ( !handleLookupError( rows.get( i ), e ) ) {
+          return false;
+        }
+      }
+    }
     return true;
   }
 
+  private static boolean hasNullValue( Object[] lookupRow ) {
+    for ( Object value : lookupRow ) {
+      if ( value == null ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Look up a number of distinct keys with the batch query. The statement always has room for a full batch, the
+   * remaining parameters repeat the last key. When the step fails on multiple results, a key with more than one
+   * result is kept in found, so it isn't looked up again, and the error for its rows is kept in multipleResults.
+   *
+   * @return the number of keys that were found
+   */
+  private int queryBatch( List<Object[]> keys, Map<RowMetaAndData, Object[]> found,
+                          Map<RowMetaAndData, KettleException> multipleResults ) throws KettleException {
+    int nrKeys = data.lookupMeta.size();
+    int nrParams = data.batchSize * nrKeys;
+    Object[] params = new Object[ nrParams * 2 ];
+    for ( int b = 0; b < data.batchSize; b++ ) {
+      Object[] key = keys.get( Math.min( b, keys.size() - 1 ) );
+      System.arraycopy( key, 0, params, b * nrKeys, nrKeys );
+      System.arraycopy( key, 0, params, nrParams + b * nrKeys, nrKeys );
+    }
+
+    long startTime = System.currentTimeMillis();
+    ResultSet resultSet = data.db.openQuery( data.batchStatement, data.batchParamsMeta, params );
+    RowMetaInterface returnedMeta = data.db.getReturnRowMeta();
+    List<Object[]> rows = data.db.getRows( resultSet, 0, null );
+    long time = System.currentTimeMillis() - startTime;
+
+    int nrFound = 0;
+    for ( Object[] row : rows ) {
+      incrementLinesInput();
+
+      // The first column holds the position of the key the row belongs to
+      //
+      Long position = returnedMeta.getValueMeta( 0 ).getInteger( row[ 0 ] );
+      if ( position == null ) {
+        continue;
+      }
+      Object[] key = keys.get( (int) Math.min( position.longValue(), keys.size() - 1 ) );
+      RowMetaAndData keyRow = new RowMetaAndData( data.lookupMeta, key );
+      if ( found.containsKey( keyRow ) ) {
+        if ( meta.isFailingOnMultipleResults() && !multipleResults.containsKey( keyRow ) ) {
+          multipleResults.put( keyRow, new KettleDatabaseException( BaseMessages.getString(
+            PKG, "DatabaseLookup.ERROR0005.MultipleResults", data.lookupMeta.getString( key ) ) ) );
+        }
+        continue;
+      }
+
+      Object[] add = new Object[ data.returnMeta.size() ];
+      System.arraycopy( row, 1, add, 0, add.length );
+      convertReturnedValues( returnedMeta, 1, add );
+      found.put( keyRow, add );
+      nrFound++;
+    }
+
+    log.snap( Metrics.METRIC_STEP_DATABASE_LOOKUP_BATCHES );
+    log.snap( Metrics.METRIC_STEP_DATABASE_LOOKUP_BATCH_TIME, time );
+    log.snap( Metrics.METRIC_STEP_DATABASE_LOOKUP_BATCH_MAX_TIME, time );
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "DatabaseLookup.Log.BatchLookedUp", String.valueOf( keys.size() ),
+        String.valueOf( rows.size() ), String.valueOf( time ) ) );
+    }
+    return nrFound;
+  }
+
+  /**
+   * Create the LRU cache or, when the copies of this step share their cache, get the one created by the first copy.
+   */
+  private LruCache acquireLruCache() {
+    long maxBytes = Const.toLong( environmentSubstitute( meta.getCacheMemoryLimit() ), 0L ) * 1024 * 1024;
+    long timeToLive = Const.toLong( environmentSubstitute( meta.getCacheTimeToLive() ), 0L ) * 1000;
+
+    if ( !isSharingCache() ) {
+      LruCache cache = new LruCache( meta.getCacheSize(), maxBytes, timeToLive );
+      cache.acquire();
+      return cache;
+    }
+
+    Map<String, Object> extensionData = getTrans().getExtensionDataMap();
+    synchronized ( extensionData ) {
+      LruCache cache = (LruCache) extensionData.get( getSharedCacheKey() );
+      if ( cache == null ) {
+        cache = new LruCache( meta.getCacheSize(), maxBytes, timeToLive );
+        extensionData.put( getSharedCacheKey(), cache );
+      }
+      cache.acquire();
+      return cache;
+    }
+  }
+
+  private void releaseLruCache( LruCache cache ) {
+    int users;
+    if ( isSharingCache() ) {
+      Map<String, Object> extensionData = getTrans().getExtensionDataMap();
+      synchronized ( extensionData ) {
+        users = cache.release();
+        if ( users <= 0 ) {
+          extensionData.remove( getSharedCacheKey() );
+        }
+      }
+    } else {
+      users = cache.release();
+    }
+
+    // The last copy using the cache reports the statistics
+    //
+    if ( users <= 0 ) {
+      logCacheStatistics( cache );
+      log.snap( Metrics.METRIC_STEP_DATABASE_LOOKUP_CACHE_HITS, cache.getHits() );
+      log.snap( Metrics.METRIC_STEP_DATABASE_LOOKUP_CACHE_MISSES, cache.getMisses() );
+      log.snap( Metrics.METRIC_STEP_DATABASE_LOOKUP_CACHE_EVICTIONS, cache.getEvictions() );
+      log.snap( Metrics.METRIC_STEP_DATABASE_LOOKUP_CACHE_MEMORY_USED, cache.getMemoryUsed() );
+      cache.clear();
+    }
+  }
+
+  @Override
+  public boolean hasCacheStatistics() {
+    return statisticsCache != null;
+  }
+
+  @Override
+  public long getCacheHits() {
+    LruCache cache = statisticsCache;
+    return cache == null ? 0L : cache.getHits();
+  }
+
+  @Override
+  public long getCacheMisses() {
+    LruCache cache = statisticsCache;
+    return cache == null ? 0L : cache.getMisses();
+  }
+
+  @Override
+  public long getCacheEvictions() {
+    LruCache cache = statisticsCache;
+    return cache == null ? 0L : cache.getEvictions();
+  }
+
+  private boolean isSharingCache() {
+    // A partitioned database gives different results per partition, so the copies can't share a cache then
+    //
+    return meta.isSharingCache() && !meta.getDatabaseMeta().isPartitioned();
+  }
+
+  private String getSharedCacheKey() {
+    return DatabaseLookup.class.getName() + ".cache." + getStepname();
+  }
+
+  private void logCacheStatistics( LruCache cache ) {
+    logBasic( BaseMessages.getString( PKG, "DatabaseLookup.Log.CacheStatistics", String.valueOf( cache.getHits() ),
+      String.valueOf( cache.getMisses() ), String.valueOf( cache.getEvictions() ),
+      String.valueOf( cache.getExpirations() ), String.valueOf( cache.size() ),
+      String.valueOf( cache.getMemoryUsed() ) ) );
+  }
+
   private void loadAllTableDataIntoTheCache() throws KettleException {
     DatabaseMeta dbMeta = meta.getDatabaseMeta();
 
@@ -557,6 +1017,9 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     if ( data.db != null && !data.isCanceled ) {
       synchronized ( data.db ) {
         data.db.cancelQuery();
+        if ( data.batchStatement != null ) {
+          data.db.cancelStatement( data.batchStatement );
+        }
       }
       data.isCanceled = true;
     }
@@ -611,11 +1074,23 @@ public class DatabaseLookup extends BaseStep implements StepInterface {
     data = (DatabaseLookupData) sdi;
 
     if ( data.db != null ) {
+      if ( data.batchStatement != null ) {
+        try {
+          data.db.closePreparedStatement( data.batchStatement );
+        } catch ( KettleDatabaseException e ) {
+          logError( BaseMessages.getString( PKG, "DatabaseLookup.ERROR0006.UnableToCloseBatchStatement" ), e );
+        }
+        data.batchStatement = null;
+      }
       data.db.disconnect();
     }
+    data.batchRows = null;
 
     // Recover memory immediately, allow in-memory data to be garbage collected
     //
+    if ( data.cache instanceof LruCache ) {
+      releaseLruCache( (LruCache) data.cache );
+    }
     data.cache = null;
 
     super.dispose( smi, sdi );
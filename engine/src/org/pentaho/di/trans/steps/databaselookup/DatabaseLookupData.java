@@ -22,6 +22,9 @@
 
 package org.pentaho.di.trans.steps.databaselookup;
 
+import java.sql.PreparedStatement;
+import java.util.List;
+
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -49,6 +52,16 @@ public class DatabaseLookupData extends BaseStepData implements StepDataInterfac
   public int[] conditions;
   public boolean hasDBCondition;
 
+  /** The rows waiting to be looked up in one query, null if the rows are looked up one by one */
+  public List<Object[]> batchRows;
+  public int batchSize;
+  public long batchMaxWait;
+  public long batchStart;
+  public PreparedStatement batchStatement;
+  public RowMetaInterface batchParamsMeta;
+  /** Keys that differ in Java can be equal in the database, they might need more than one query per batch */
+  public boolean batchStringKeys;
+
   public DatabaseLookupData() {
     super();
 
@@ -120,6 +120,27 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
   /** Flag to make it load all data into the cache at startup */
   private boolean loadingAllDataInCache;
 
+  /** Limit the memory used by the cache to this number of MB, 0 or empty means no limit */
+  private String cacheMemoryLimit;
+
+  /** Expire cached values after this number of seconds, 0 or empty means never */
+  private String cacheTimeToLive;
+
+  /** Also remember the keys for which nothing was found in the cache */
+  private boolean cachingNotFound;
+
+  /** Share one cache between all the copies of the step */
+  private boolean sharingCache;
+
+  /** Look up the keys of a number of rows with one query */
+  private boolean batchLookup;
+
+  /** The number of rows to look up with one query */
+  private String batchSize;
+
+  /** The maximum time in ms to wait for a batch to fill up, 0 or empty means no limit */
+  private String batchMaxWait;
+
   /** Have the lookup fail if multiple results were found, renders the orderByClause useless */
   private boolean failingOnMultipleResults;
 
@@ -397,6 +418,13 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
       loadingAllDataInCache = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "cache_load_all" ) );
       csize = XMLHandler.getTagValue( stepnode, "cache_size" );
       cacheSize = Const.toInt( csize, 0 );
+      cacheMemoryLimit = XMLHandler.getTagValue( stepnode, "cache_memory_limit" );
+      cacheTimeToLive = XMLHandler.getTagValue( stepnode, "cache_ttl" );
+      cachingNotFound = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "cache_not_found" ) );
+      sharingCache = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "cache_shared" ) );
+      batchLookup = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "batch_lookup" ) );
+      batchSize = XMLHandler.getTagValue( stepnode, "batch_size" );
+      batchMaxWait = XMLHandler.getTagValue( stepnode, "batch_max_wait" );
       schemaName = XMLHandler.getTagValue( stepnode, "lookup", "schema" );
       tablename = XMLHandler.getTagValue( stepnode, "lookup", "table" );
 
@@ -451,6 +479,13 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
     databaseMeta = null;
     cached = false;
     cacheSize = 0;
+    cacheMemoryLimit = null;
+    cacheTimeToLive = null;
+    cachingNotFound = false;
+    sharingCache = false;
+    batchLookup = false;
+    batchSize = "100";
+    batchMaxWait = null;
     schemaName = "";
     tablename = BaseMessages.getString( PKG, "DatabaseLookupMeta.Default.TableName" );
 
@@ -516,6 +551,13 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
     retval.append( "    " ).append( XMLHandler.addTagValue( "cache", cached ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "cache_load_all", loadingAllDataInCache ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "cache_size", cacheSize ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "cache_memory_limit", cacheMemoryLimit ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "cache_ttl", cacheTimeToLive ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "cache_not_found", cachingNotFound ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "cache_shared", sharingCache ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "batch_lookup", batchLookup ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "batch_size", batchSize ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "batch_max_wait", batchMaxWait ) );
     retval.append( "    <lookup>" ).append( Const.CR );
     retval.append( "      " ).append( XMLHandler.addTagValue( "schema", schemaName ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "table", tablename ) );
@@ -555,6 +597,13 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
       cached = rep.getStepAttributeBoolean( id_step, "cache" );
       loadingAllDataInCache = rep.getStepAttributeBoolean( id_step, "cache_load_all" );
       cacheSize = (int) rep.getStepAttributeInteger( id_step, "cache_size" );
+      cacheMemoryLimit = rep.getStepAttributeString( id_step, "cache_memory_limit" );
+      cacheTimeToLive = rep.getStepAttributeString( id_step, "cache_ttl" );
+      cachingNotFound = rep.getStepAttributeBoolean( id_step, "cache_not_found" );
+      sharingCache = rep.getStepAttributeBoolean( id_step, "cache_shared" );
+      batchLookup = rep.getStepAttributeBoolean( id_step, "batch_lookup" );
+      batchSize = rep.getStepAttributeString( id_step, "batch_size" );
+      batchMaxWait = rep.getStepAttributeString( id_step, "batch_max_wait" );
       schemaName = rep.getStepAttributeString( id_step, "lookup_schema" );
       tablename = rep.getStepAttributeString( id_step, "lookup_table" );
       orderByClause = rep.getStepAttributeString( id_step, "lookup_orderby" );
@@ -593,6 +642,13 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
       rep.saveStepAttribute( id_transformation, id_step, "cache", cached );
       rep.saveStepAttribute( id_transformation, id_step, "cache_load_all", loadingAllDataInCache );
       rep.saveStepAttribute( id_transformation, id_step, "cache_size", cacheSize );
+      rep.saveStepAttribute( id_transformation, id_step, "cache_memory_limit", cacheMemoryLimit );
+      rep.saveStepAttribute( id_transformation, id_step, "cache_ttl", cacheTimeToLive );
+      rep.saveStepAttribute( id_transformation, id_step, "cache_not_found", cachingNotFound );
+      rep.saveStepAttribute( id_transformation, id_step, "cache_shared", sharingCache );
+      rep.saveStepAttribute( id_transformation, id_step, "batch_lookup", batchLookup );
+      rep.saveStepAttribute( id_transformation, id_step, "batch_size", batchSize );
+      rep.saveStepAttribute( id_transformation, id_step, "batch_max_wait", batchMaxWait );
       rep.saveStepAttribute( id_transformation, id_step, "lookup_schema", schemaName );
       rep.saveStepAttribute( id_transformation, id_step, "lookup_table", tablename );
       rep.saveStepAttribute( id_transformation, id_step, "lookup_orderby", orderByClause );
@@ -895,6 +951,112 @@ public class DatabaseLookupMeta extends BaseStepMeta implements StepMetaInterfac
     this.loadingAllDataInCache = loadingAllDataInCache;
   }
 
+  /**
+   * @return the maximum memory in MB used by the cache, 0 or empty means no limit
+   */
+  public String getCacheMemoryLimit() {
+    return cacheMemoryLimit;
+  }
+
+  /**
+   * @param cacheMemoryLimit
+   *          the maximum memory in MB used by the cache, 0 or empty means no limit
+   */
+  public void setCacheMemoryLimit( String cacheMemoryLimit ) {
+    this.cacheMemoryLimit = cacheMemoryLimit;
+  }
+
+  /**
+   * @return the number of seconds after which a cached value expires, 0 or empty means never
+   */
+  public String getCacheTimeToLive() {
+    return cacheTimeToLive;
+  }
+
+  /**
+   * @param cacheTimeToLive
+   *          the number of seconds after which a cached value expires, 0 or empty means never
+   */
+  public void setCacheTimeToLive( String cacheTimeToLive ) {
+    this.cacheTimeToLive = cacheTimeToLive;
+  }
+
+  /**
+   * @return true if the keys for which nothing was found are cached as well
+   */
+  public boolean isCachingNotFound() {
+    return cachingNotFound;
+  }
+
+  /**
+   * @param cachingNotFound
+   *          true if the keys for which nothing was found should be cached as well
+   */
+  public void setCachingNotFound( boolean cachingNotFound ) {
+    this.cachingNotFound = cachingNotFound;
+  }
+
+  /**
+   * @return true if all the copies of the step share one cache
+   */
+  public boolean isSharingCache() {
+    return sharingCache;
+  }
+
+  /**
+   * @param sharingCache
+   *          true if all the copies of the step should share one cache
+   */
+  public void setSharingCache( boolean sharingCache ) {
+    this.sharingCache = sharingCache;
+  }
+
+  /**
+   * @return true if the keys of a number of rows are looked up with one query. This only applies when all the key
+   *         conditions are "=" and the keys are matched exactly on the values returned by the database.
+   */
+  public boolean isBatchLookup() {
+    return batchLookup;
+  }
+
+  /**
+   * @param batchLookup
+   *          true if the keys of a number of rows should be looked up with one query
+   */
+  public void setBatchLookup( boolean batchLookup ) {
+    this.batchLookup = batchLookup;
+  }
+
+  /**
+   * @return the number of rows to look up with one query
+   */
+  public String getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @param batchSize
+   *          the number of rows to look up with one query
+   */
+  public void setBatchSize( String batchSize ) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @return the maximum time in ms to wait for a batch to fill up, 0 or empty means no limit
+   */
+  public String getBatchMaxWait() {
+    return batchMaxWait;
+  }
+
+  /**
+   * @param batchMaxWait
+   *          the maximum time in ms to wait for a batch to fill up, 0 or empty means no limit
+   */
+  public void setBatchMaxWait( String batchMaxWait ) {
+    this.batchMaxWait = batchMaxWait;
+  }
+
   @Override public RowMeta getRowMeta( StepDataInterface stepData ) {
     return (RowMeta) ( (DatabaseLookupData) stepData ).returnMeta;
   }
@@ -0,0 +1,209 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.pentaho.di.trans.steps.databaselookup;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * A bounded, thread-safe cache for the {@code DatabaseLookup} step. The entries are kept in access order, so the least
+ * recently used entry is always the first one and evicting it is O(1). The cache can be limited in the number of
+ * entries, in the (estimated) number of bytes it uses or both, and entries can be given a time to live after which
+ * they are looked up in the database again.<br>
+ * <br>
+ * The keys are the exact values sent to the database as query parameters. Because the same parameters always give
+ * the same result, this cache can hold the results of every type of condition, not only of equality conditions. A key
+ * for which the database returned nothing can be stored with {@link #NOT_FOUND} as value.<br>
+ * <br>
+ * The cache counts hits, misses, evictions and expired entries. Since all the methods are synchronized one instance
+ * can be shared by all the copies of a step, see {@link #acquire()} and {@link #release()}.
+ */
+public class LruCache implements DatabaseLookupData.Cache {
+
+  /** The value stored for a key for which the database returned nothing */
+  public static final Object[] NOT_FOUND = new Object[0];
+
+  /** Rough estimate of the size of a map entry and the key wrapper around the lookup row */
+  private static final long ENTRY_OVERHEAD = 80;
+
+  private final int maxEntries;
+  private final long maxBytes;
+  private final long timeToLive;
+
+  private final LinkedHashMap<RowMetaAndData, CacheEntry> map;
+
+  private long memoryUsed;
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long expirations;
+  private int users;
+
+  /**
+   * @param maxEntries
+   *          the maximum number of entries in the cache, 0 or less means no limit
+   * @param maxBytes
+   *          the maximum estimated memory used by the cache in bytes, 0 or less means no limit
+   * @param timeToLive
+   *          the number of milliseconds after which an entry expires, 0 or less means never
+   */
+  public LruCache( int maxEntries, long maxBytes, long timeToLive ) {
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.timeToLive = timeToLive;
+    this.map = new LinkedHashMap<RowMetaAndData, CacheEntry>( 16, 0.75f, true );
+  }
+
+  @Override
+  public synchronized Object[] getRowFromCache( RowMetaInterface lookupMeta, Object[] lookupRow ) {
+    RowMetaAndData key = new RowMetaAndData( lookupMeta, lookupRow );
+    CacheEntry entry = map.get( key );
+    if ( entry == null ) {
+      misses++;
+      return null;
+    }
+    if ( timeToLive > 0 && currentTimeMillis() - entry.created > timeToLive ) {
+      map.remove( key );
+      memoryUsed -= entry.bytes;
+      expirations++;
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.row;
+  }
+
+  @Override
+  public synchronized void storeRowInCache( DatabaseLookupMeta meta, RowMetaInterface lookupMeta,
+                                            Object[] lookupRow, Object[] add ) {
+    long bytes = ENTRY_OVERHEAD + RowDataUtil.estimateRowSize( lookupRow );
+    if ( add != NOT_FOUND ) {
+      bytes += RowDataUtil.estimateRowSize( add );
+    }
+    CacheEntry previous = map.put( new RowMetaAndData( lookupMeta, lookupRow ),
+      new CacheEntry( add, currentTimeMillis(), bytes ) );
+    if ( previous != null ) {
+      memoryUsed -= previous.bytes;
+    }
+    memoryUsed += bytes;
+
+    // Evict the least recently used entries, but never the one we just added
+    //
+    Iterator<CacheEntry> iterator = map.values().iterator();
+    while ( map.size() > 1 && isOverLimit() ) {
+      CacheEntry eldest = iterator.next();
+      iterator.remove();
+      memoryUsed -= eldest.bytes;
+      evictions++;
+    }
+  }
+
+  private boolean isOverLimit() {
+    return ( maxEntries > 0 && map.size() > maxEntries ) || ( maxBytes > 0 && memoryUsed > maxBytes );
+  }
+
+  /**
+   * Register a step copy that uses this cache.
+   */
+  public synchronized void acquire() {
+    users++;
+  }
+
+  /**
+   * Unregister a step copy that used this cache.
+   *
+   * @return the number of step copies still using the cache
+   */
+  public synchronized int release() {
+    return --users;
+  }
+
+  /**
+   * Remove all the entries from the cache, the statistics are kept.
+   */
+  public synchronized void clear() {
+    map.clear();
+    memoryUsed = 0;
+  }
+
+  /**
+   * @return the number of entries in the cache
+   */
+  public synchronized int size() {
+    return map.size();
+  }
+
+  /**
+   * @return the estimated number of bytes used by the entries in the cache
+   */
+  public synchronized long getMemoryUsed() {
+    return memoryUsed;
+  }
+
+  /**
+   * @return the number of lookups that were answered from the cache
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of lookups that were not found in the cache, including the expired entries
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return the number of entries that were removed to stay within the limits of the cache
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * @return the number of entries that were removed because their time to live had passed
+   */
+  public synchronized long getExpirations() {
+    return expirations;
+  }
+
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private static class CacheEntry {
+    private final Object[] row;
+    private final long created;
+    private final long bytes;
+
+    CacheEntry( Object[] row, long created, long bytes ) {
+      this.row = row;
+      this.created = created;
+      this.bytes = bytes;
+    }
+  }
+}
@@ -22,12 +22,15 @@
 
 package org.pentaho.di.trans.steps.filterrows;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -72,8 +75,6 @@ public class FilterRows extends BaseStep implements StepInterface {
     meta = (FilterRowsMeta) smi;
     data = (FilterRowsData) sdi;
 
-    boolean keep;
-
     Object[] r = getRow(); // Get next usable row from input rowset(s)!
     if ( r == null ) { // no more input to be expected...
 
@@ -114,9 +115,83 @@ public class FilterRows extends BaseStep implements StepInterface {
           data.falseRowSet = null;
         }
       }
+
+      // The fields of the condition that are lazily converted are converted a block of rows at a time
+      //
+      List<Integer> lazyFields = new ArrayList<Integer>();
+      for ( String fieldName : meta.getCondition().getUsedFields() ) {
+        int index = getInputRowMeta().indexOfValue( fieldName );
+        if ( index >= 0 && getInputRowMeta().getValueMeta( index ).isStorageBinaryString() ) {
+          lazyFields.add( index );
+        }
+      }
+      if ( !lazyFields.isEmpty() ) {
+        data.lazyFieldIndexes = new int[lazyFields.size()];
+        data.conditionRowMeta = getInputRowMeta().clone();
+        for ( int i = 0; i < data.lazyFieldIndexes.length; i++ ) {
+          data.lazyFieldIndexes[i] = lazyFields.get( i );
+          ValueMetaInterface valueMeta = data.conditionRowMeta.getValueMeta( data.lazyFieldIndexes[i] );
+          valueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+          valueMeta.setStorageMetadata( null );
+        }
+        data.blockRows = new Object[Const.LAZY_CONVERSION_BLOCK_SIZE][];
+        data.conditionRows = new Object[Const.LAZY_CONVERSION_BLOCK_SIZE][];
+        data.blockValues = new Object[Const.LAZY_CONVERSION_BLOCK_SIZE];
+      }
+    }
+
+    if ( data.lazyFieldIndexes != null ) {
+      filterBlock( r );
+    } else {
+      boolean keep = keepRow( getInputRowMeta(), r ); // Keep this row?
+      putFilteredRow( r, keep );
     }
 
-    keep = keepRow( getInputRowMeta(), r ); // Keep this row?
+    return true;
+  }
+
+  /**
+   * Filter the given row together with the rows that are already waiting on the input. The lazily converted fields of
+   * the condition are converted for the whole block while the rows themselves are passed on unchanged.
+   */
+  private void filterBlock( Object[] r ) throws KettleException {
+    int nrRows = getAvailableRows( r, data.blockRows );
+
+    boolean converted = true;
+    try {
+      for ( int i = 0; i < nrRows; i++ ) {
+        Object[] row = data.blockRows[i];
+        if ( data.conditionRows[i] == null || data.conditionRows[i].length < row.length ) {
+          data.conditionRows[i] = new Object[row.length];
+        }
+        System.arraycopy( row, 0, data.conditionRows[i], 0, row.length );
+      }
+      for ( int index : data.lazyFieldIndexes ) {
+        getInputRowMeta().convertToNormalStorageType( data.blockRows, nrRows, index, data.blockValues );
+        for ( int i = 0; i < nrRows; i++ ) {
+          data.conditionRows[i][index] = data.blockValues[i];
+        }
+      }
+    } catch ( KettleValueException e ) {
+      // Evaluate the rows one by one so that the error is reported for the right row
+      //
+      converted = false;
+    }
+
+    for ( int i = 0; i < nrRows; i++ ) {
+      Object[] row = data.blockRows[i];
+      data.blockRows[i] = null;
+      boolean keep;
+      if ( converted ) {
+        keep = keepRow( data.conditionRowMeta, data.conditionRows[i] );
+      } else {
+        keep = keepRow( getInputRowMeta(), row );
+      }
+      putFilteredRow( row, keep );
+    }
+  }
+
+  private void putFilteredRow( Object[] r, boolean keep ) throws KettleException {
     if ( !data.chosesTargetSteps ) {
       if ( keep ) {
         putRow( data.outputRowMeta, r ); // copy row to output rowset(s);
@@ -144,8 +219,6 @@ public class FilterRows extends BaseStep implements StepInterface {
         logBasic( BaseMessages.getString( PKG, "FilterRows.Log.LineNumber" ) + getLinesRead() );
       }
     }
-
-    return true;
   }
 
   /**
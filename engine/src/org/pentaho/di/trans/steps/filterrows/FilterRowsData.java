@@ -41,6 +41,13 @@ public class FilterRowsData extends BaseStepData implements StepDataInterface {
   public String trueStepname;
   public String falseStepname;
 
+  // Block-wise conversion of the lazily converted fields of the condition
+  public int[] lazyFieldIndexes;
+  public RowMetaInterface conditionRowMeta;
+  public Object[][] blockRows;
+  public Object[][] conditionRows;
+  public Object[] blockValues;
+
   public FilterRowsData() {
     super();
   }
@@ -0,0 +1,142 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.fuzzymatch;
+
+/**
+ * Computes the Levenshtein or (restricted) Damerau-Levenshtein distance between two strings up to a maximum distance.
+ * Only the diagonal band of the distance matrix that can still lead to a distance within the maximum is calculated and
+ * the calculation stops as soon as a complete row exceeds the maximum. The distances within the maximum are exactly
+ * the same as the ones calculated by {@link org.apache.commons.lang.StringUtils#getLevenshteinDistance(String, String)}
+ * and {@link org.pentaho.di.core.util.Utils#getDamerauLevenshteinDistance(String, String)}.<br>
+ * <br>
+ * The rows of the matrix are kept between calls so an instance is not thread-safe.
+ */
+public class BoundedEditDistance {
+
+  private final boolean damerau;
+
+  private int[] previousPrevious;
+  private int[] previous;
+  private int[] current;
+
+  /**
+   * @param damerau
+   *          true to also count the transposition of two adjacent characters as a single edit
+   */
+  public BoundedEditDistance( boolean damerau ) {
+    this.damerau = damerau;
+    this.previousPrevious = new int[16];
+    this.previous = new int[16];
+    this.current = new int[16];
+  }
+
+  /**
+   * Calculate the distance between two strings.
+   *
+   * @param s
+   *          the first string
+   * @param t
+   *          the second string
+   * @param maxDistance
+   *          the maximum distance that is of interest
+   * @return the distance between the strings or maxDistance+1 if the distance is larger than maxDistance
+   */
+  public int distance( String s, String t, int maxDistance ) {
+    int n = s.length();
+    int m = t.length();
+    int tooFar = maxDistance + 1;
+    if ( Math.abs( n - m ) > maxDistance ) {
+      return tooFar;
+    }
+    if ( n == 0 || m == 0 ) {
+      return Math.min( Math.max( n, m ), tooFar );
+    }
+
+    if ( current.length < m + 2 ) {
+      previousPrevious = new int[m + 2];
+      previous = new int[m + 2];
+      current = new int[m + 2];
+    }
+    int[] pp = previousPrevious;
+    int[] p = previous;
+    int[] c = current;
+
+    int hi = Math.min( m, maxDistance );
+    for ( int j = 0; j <= hi; j++ ) {
+      p[j] = j;
+    }
+    p[hi + 1] = tooFar;
+
+    for ( int i = 1; i <= n; i++ ) {
+      char si = s.charAt( i - 1 );
+      int lo = Math.max( 1, i - maxDistance );
+      hi = Math.min( m, i + maxDistance );
+
+      c[lo - 1] = lo == 1 ? Math.min( i, tooFar ) : tooFar;
+      int rowMin = c[lo - 1];
+      for ( int j = lo; j <= hi; j++ ) {
+        char tj = t.charAt( j - 1 );
+        int cost = si == tj ? 0 : 1;
+
+        // substitution, deletion, insertion
+        //
+        int d = p[j - 1] + cost;
+        if ( p[j] + 1 < d ) {
+          d = p[j] + 1;
+        }
+        if ( c[j - 1] + 1 < d ) {
+          d = c[j - 1] + 1;
+        }
+        // transposition
+        //
+        if ( damerau && i > 1 && j > 1 && si == t.charAt( j - 2 ) && s.charAt( i - 2 ) == tj
+          && pp[j - 2] + cost < d ) {
+          d = pp[j - 2] + cost;
+        }
+        if ( d > tooFar ) {
+          d = tooFar;
+        }
+        c[j] = d;
+        if ( d < rowMin ) {
+          rowMin = d;
+        }
+      }
+      if ( hi < m ) {
+        c[hi + 1] = tooFar;
+      }
+      if ( rowMin > maxDistance ) {
+        return tooFar;
+      }
+
+      int[] tmp = pp;
+      pp = p;
+      p = c;
+      c = tmp;
+    }
+
+    previousPrevious = pp;
+    previous = p;
+    current = c;
+    return Math.min( p[m], tooFar );
+  }
+}
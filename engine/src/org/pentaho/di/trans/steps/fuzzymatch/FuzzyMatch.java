@@ -22,12 +22,12 @@
 
 package org.pentaho.di.trans.steps.fuzzymatch;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
-import org.apache.commons.codec.language.DoubleMetaphone;
-import org.apache.commons.codec.language.Metaphone;
-import org.apache.commons.codec.language.RefinedSoundex;
-import org.apache.commons.codec.language.Soundex;
 import org.apache.commons.lang.StringUtils;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
@@ -205,6 +205,107 @@ public class FuzzyMatch extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Replace the scanned lookup values by an index on them. When the step runs in multiple copies, the copies share one
+   * index on the lookup rows read by all of them.
+   *
+   * @return false if the step was stopped while waiting for the other copies
+   */
+  private boolean buildIndex() throws KettleException {
+    List<Object[]> lookupRows = new ArrayList<Object[]>( data.look );
+    data.look.clear();
+
+    int nrCopies = getTrans().findStepInterfaces( getStepname() ).size();
+    if ( nrCopies <= 1 ) {
+      data.index = new FuzzyMatchIndex( lookupRows, meta.getAlgorithmType(), meta.isCaseSensitive() );
+    } else {
+      // When every copy received all the lookup rows, only the rows read by the first copy are indexed.
+      //
+      StepMeta infoStepMeta = data.infoStream.getStepMeta();
+      int nrInfoCopies = getTrans().findStepInterfaces( infoStepMeta.getName() ).size();
+      boolean copiedToAll = isCopiedToAllCopies( infoStepMeta, nrInfoCopies, getStepMeta(), nrCopies );
+      List<Object[]> noRows = Collections.emptyList();
+      FuzzyMatchIndexBuilder builder = getIndexBuilder( nrCopies );
+      data.sharedIndex = true;
+      builder.addRows( !copiedToAll || getCopy() == 0 ? lookupRows : noRows, data.infoMeta, data.infoCache );
+      lookupRows = null;
+
+      try {
+        while ( data.index == null ) {
+          if ( isStopped() ) {
+            return false;
+          }
+          data.index = builder.waitForIndex( 1000 );
+        }
+      } catch ( InterruptedException e ) {
+        throw new KettleException( e );
+      }
+      if ( data.infoMeta == null ) {
+        data.infoMeta = builder.getInfoMeta();
+        data.infoCache = builder.getInfoCache();
+      }
+    }
+
+    if ( meta.getAlgorithmType() == FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN
+      || meta.getAlgorithmType() == FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN ) {
+      data.searcher = data.index.newSearcher();
+      data.editDistance =
+        new BoundedEditDistance( meta.getAlgorithmType() == FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN );
+    }
+    if ( isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "FuzzyMatch.Log.IndexedValues", data.index.size(), nrCopies ) );
+    }
+    return true;
+  }
+
+  /**
+   * Find out if every copy of a step receives all the rows of the step before it, following the way the transformation
+   * connects the step copies. Copies linked one to one, partitioned steps and steps distributing their rows send every
+   * row to a single copy. Otherwise every copy of the info step sends its rows to all the copies.
+   *
+   * @param infoStepMeta
+   *          the step sending the rows
+   * @param nrInfoCopies
+   *          the number of running copies of the step sending the rows
+   * @param stepMeta
+   *          the step receiving the rows
+   * @param nrCopies
+   *          the number of running copies of the step receiving the rows
+   * @return true if every copy receives all the rows
+   */
+  static boolean isCopiedToAllCopies( StepMeta infoStepMeta, int nrInfoCopies, StepMeta stepMeta, int nrCopies ) {
+    if ( nrCopies <= 1 || infoStepMeta.isDistributes() ) {
+      return false;
+    }
+    boolean repartitioning;
+    if ( infoStepMeta.isPartitioned() ) {
+      repartitioning = !infoStepMeta.getStepPartitioningMeta().equals( stepMeta.getStepPartitioningMeta() );
+    } else {
+      repartitioning = stepMeta.isPartitioned();
+    }
+    if ( repartitioning ) {
+      return false;
+    }
+    return nrInfoCopies != nrCopies;
+  }
+
+  private FuzzyMatchIndexBuilder getIndexBuilder( int nrCopies ) {
+    Map<String, Object> extensionDataMap = getTrans().getExtensionDataMap();
+    String key = getIndexBuilderKey();
+    synchronized ( extensionDataMap ) {
+      FuzzyMatchIndexBuilder builder = (FuzzyMatchIndexBuilder) extensionDataMap.get( key );
+      if ( builder == null ) {
+        builder = new FuzzyMatchIndexBuilder( nrCopies, meta.getAlgorithmType(), meta.isCaseSensitive() );
+        extensionDataMap.put( key, builder );
+      }
+      return builder;
+    }
+  }
+
+  private String getIndexBuilderKey() {
+    return FuzzyMatchIndexBuilder.class.getName() + ":" + getStepname();
+  }
+
   private Object[] getFromCache( Object[] keyRow ) throws KettleValueException {
     if ( isDebug() ) {
       logDebug( BaseMessages.getString( PKG, "FuzzyMatch.Log.ReadingMainStreamRow", getInputRowMeta().getString(
@@ -215,13 +316,13 @@ public class FuzzyMatch extends BaseStep implements StepInterface {
       case FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN:
       case FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN:
       case FuzzyMatchMeta.OPERATION_TYPE_NEEDLEMAN_WUNSH:
-        retval = doDistance( keyRow );
+        retval = data.index != null ? doIndexedDistance( keyRow ) : doDistance( keyRow );
         break;
       case FuzzyMatchMeta.OPERATION_TYPE_DOUBLE_METAPHONE:
       case FuzzyMatchMeta.OPERATION_TYPE_METAPHONE:
       case FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX:
       case FuzzyMatchMeta.OPERATION_TYPE_REFINED_SOUNDEX:
-        retval = doPhonetic( keyRow );
+        retval = data.index != null ? doIndexedPhonetic( keyRow ) : doPhonetic( keyRow );
         break;
       case FuzzyMatchMeta.OPERATION_TYPE_JARO:
       case FuzzyMatchMeta.OPERATION_TYPE_JARO_WINKLER:
@@ -308,6 +409,70 @@ public class FuzzyMatch extends BaseStep implements StepInterface {
     return rowData;
   }
 
+  /**
+   * Same as {@link #doDistance(Object[])} but only the candidates found in the index are compared with the main stream
+   * value, with a distance calculation that gives up beyond the maximal distance. When looking for the closest value,
+   * the maximal distance shrinks to the best distance found so far.
+   */
+  private Object[] doIndexedDistance( Object[] row ) throws KettleValueException {
+    // Reserve room
+    Object[] rowData = buildEmptyRow();
+
+    long distance = -1;
+
+    String lookupvalue = getInputRowMeta().getString( row, data.indexOfMainField );
+    String uselookupvalue = data.index.normalize( lookupvalue );
+
+    int nrCandidates = data.searcher.findCandidates( uselookupvalue, data.maximalDistance );
+    int[] candidates = data.searcher.getCandidates();
+    int maxDistance = data.maximalDistance;
+
+    for ( int c = 0; c < nrCandidates; c++ ) {
+      int id = candidates[c];
+      int cdistance = data.editDistance.distance( data.index.getKey( id ), uselookupvalue, maxDistance );
+      if ( data.minimalDistance > cdistance || cdistance > maxDistance ) {
+        continue;
+      }
+
+      Object[] cachedData = data.index.getRow( id );
+      String cacheValue = (String) cachedData[0];
+      if ( meta.isGetCloserValue() ) {
+        if ( cdistance < distance || distance == -1 ) {
+          distance = cdistance;
+          int index = 0;
+          rowData[index++] = cacheValue;
+          // Add metric value?
+          if ( data.addValueFieldName ) {
+            rowData[index++] = distance;
+          }
+          // Add additional return values?
+          if ( data.addAdditionalFields ) {
+            for ( int i = 0; i < meta.getValue().length; i++ ) {
+              int nr = i + 1;
+              int nf = i + index;
+              rowData[nf] = cachedData[nr];
+            }
+          }
+          // Only a strictly closer value can replace this one
+          //
+          maxDistance = cdistance - 1;
+          if ( maxDistance < data.minimalDistance ) {
+            break;
+          }
+        }
+      } else {
+        // get all values separated by values separator
+        if ( rowData[0] == null ) {
+          rowData[0] = cacheValue;
+        } else {
+          rowData[0] = (String) rowData[0] + data.valueSeparator + cacheValue;
+        }
+      }
+    }
+
+    return rowData;
+  }
+
   private Object[] doPhonetic( Object[] row ) {
     // Reserve room
     Object[] rowData = buildEmptyRow();
@@ -351,25 +516,42 @@ public class FuzzyMatch extends BaseStep implements StepInterface {
     return rowData;
   }
 
-  private String getEncodedMF( String value, Integer algorithmType ) {
-    String encodedValueMF = "";
-    switch ( algorithmType ) {
-      case FuzzyMatchMeta.OPERATION_TYPE_METAPHONE:
-        encodedValueMF = ( new Metaphone() ).metaphone( value );
-        break;
-      case FuzzyMatchMeta.OPERATION_TYPE_DOUBLE_METAPHONE:
-        encodedValueMF = ( ( new DoubleMetaphone() ).doubleMetaphone( value ) );
-        break;
-      case FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX:
-        encodedValueMF = ( new Soundex() ).encode( value );
-        break;
-      case FuzzyMatchMeta.OPERATION_TYPE_REFINED_SOUNDEX:
-        encodedValueMF = ( new RefinedSoundex() ).encode( value );
-        break;
-      default:
-        break;
+  /**
+   * Same as {@link #doPhonetic(Object[])} but the lookup values with the same phonetic code are taken from the index.
+   */
+  private Object[] doIndexedPhonetic( Object[] row ) {
+    // Reserve room
+    Object[] rowData = buildEmptyRow();
+
+    String lookupvalue = (String) row[data.indexOfMainField];
+    String lookupValueMF = getEncodedMF( lookupvalue, meta.getAlgorithmType() );
+
+    for ( int id : data.index.findByCode( lookupValueMF ) ) {
+      Object[] cachedData = data.index.getRow( id );
+
+      // Add match value
+      int index = 0;
+      rowData[index++] = cachedData[0];
+
+      // Add metric value?
+      if ( data.addValueFieldName ) {
+        rowData[index++] = lookupValueMF;
+      }
+      // Add additional return values?
+      if ( data.addAdditionalFields ) {
+        for ( int i = 0; i < meta.getValue().length; i++ ) {
+          int nf = i + index;
+          int nr = i + 1;
+          rowData[nf] = cachedData[nr];
+        }
+      }
     }
-    return encodedValueMF;
+
+    return rowData;
+  }
+
+  private String getEncodedMF( String value, Integer algorithmType ) {
+    return FuzzyMatchIndex.getPhoneticCode( value, algorithmType );
   }
 
   private Object[] doSimilarity( Object[] row ) {
@@ -470,6 +652,12 @@ public class FuzzyMatch extends BaseStep implements StepInterface {
       if ( isDetailed() ) {
         logDetailed( BaseMessages.getString( PKG, "FuzzyMatch.Log.ReadValuesInMemory", data.look.size() ) );
       }
+      if ( meta.isIndexedMatching() && FuzzyMatchIndex.isSupported( meta.getAlgorithmType() ) ) {
+        if ( !buildIndex() ) {
+          setOutputDone();
+          return false;
+        }
+      }
     }
 
     Object[] r = getRow(); // Get row from input rowset & set row busy!
@@ -620,6 +808,14 @@ public class FuzzyMatch extends BaseStep implements StepInterface {
     meta = (FuzzyMatchMeta) smi;
     data = (FuzzyMatchData) sdi;
     data.look.clear();
+    if ( data.sharedIndex ) {
+      Map<String, Object> extensionDataMap = getTrans().getExtensionDataMap();
+      synchronized ( extensionDataMap ) {
+        extensionDataMap.remove( getIndexBuilderKey() );
+      }
+    }
+    data.index = null;
+    data.searcher = null;
     super.dispose( smi, sdi );
   }
 
@@ -23,6 +23,7 @@
 package org.pentaho.di.trans.steps.fuzzymatch;
 
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
@@ -40,6 +41,18 @@ public class FuzzyMatchData extends BaseStepData implements StepDataInterface {
   /** used to store values in used to look up things */
   public HashSet<Object[]> look;
 
+  /** the index on the lookup values, null if the lookup values are scanned for every row */
+  public FuzzyMatchIndex index;
+
+  /** true if the index is shared with the other copies of the step */
+  public boolean sharedIndex;
+
+  /** finds the candidates in the index for this step copy */
+  public FuzzyMatchIndex.Searcher searcher;
+
+  /** calculates the distances in the indexed mode */
+  public BoundedEditDistance editDistance;
+
   public boolean readLookupValues;
 
   /** index of main stream field **/
@@ -69,7 +82,7 @@ public class FuzzyMatchData extends BaseStepData implements StepDataInterface {
 
   public FuzzyMatchData() {
     super();
-    this.look = new HashSet<Object[]>();
+    this.look = new LinkedHashSet<Object[]>();
     this.indexOfMainField = -1;
     this.addValueFieldName = false;
     this.valueSeparator = "";
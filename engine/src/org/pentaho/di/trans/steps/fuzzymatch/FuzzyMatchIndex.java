@@ -0,0 +1,395 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.fuzzymatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.language.DoubleMetaphone;
+import org.apache.commons.codec.language.Metaphone;
+import org.apache.commons.codec.language.RefinedSoundex;
+import org.apache.commons.codec.language.Soundex;
+
+/**
+ * An immutable index on the cached lookup rows of the Fuzzy Match step, so that the main stream values don't have to be
+ * compared with every single lookup value.
+ * <ul>
+ * <li>Levenshtein and Damerau-Levenshtein: an inverted index of the bigrams of the (padded) lookup values. Changing a
+ * single character of a string changes at most 2 of its bigrams (3 for a transposition), so a lookup value within
+ * distance k of the main value has to share a minimal number of bigrams with it. Only the values that pass this count
+ * filter and the length filter are candidates for the actual distance calculation. When the strings are too short for
+ * the count filter to prune anything, all the values with a compatible length are candidates.</li>
+ * <li>Metaphone, Double Metaphone, Soundex and Refined Soundex: a hash index on the phonetic code of the lookup values,
+ * calculated once when the index is built.</li>
+ * </ul>
+ * The candidates are always returned in the order in which the lookup rows were added. The index is never modified
+ * after it is built, so the copies of a step can share it. The search state lives in a {@link Searcher}, one per
+ * thread.
+ */
+public class FuzzyMatchIndex {
+
+  private static final int Q = 2;
+  private static final char PADDING = '\uffff';
+  private static final int[] NO_IDS = new int[0];
+
+  private final int algorithm;
+  private final boolean caseSensitive;
+
+  /** The cached lookup rows, the key is the first value */
+  private final Object[][] rows;
+
+  /** The (lower cased) key of every row, used for the distance algorithms */
+  private final String[] keys;
+
+  /** Bigram to the ids of the rows containing it, an id is repeated for every occurrence of the bigram */
+  private final Map<Integer, int[]> postings;
+
+  /** Length to the ids of the rows with a key of that length */
+  private final int[][] idsByLength;
+
+  /** Phonetic code to the ids of the rows with that code */
+  private final Map<String, int[]> idsByCode;
+
+  /**
+   * Build the index.
+   *
+   * @param lookupRows
+   *          the cached lookup rows, the key (a non-null String) is the first value
+   * @param algorithm
+   *          the algorithm, see {@link #isSupported(int)}
+   * @param caseSensitive
+   *          false to compare the keys of the distance algorithms in lower case
+   */
+  public FuzzyMatchIndex( List<Object[]> lookupRows, int algorithm, boolean caseSensitive ) {
+    if ( !isSupported( algorithm ) ) {
+      throw new IllegalArgumentException( "Fuzzy match algorithm " + algorithm + " can't be indexed" );
+    }
+    this.algorithm = algorithm;
+    this.caseSensitive = caseSensitive;
+    this.rows = lookupRows.toArray( new Object[lookupRows.size()][] );
+
+    if ( isDistanceAlgorithm( algorithm ) ) {
+      keys = new String[rows.length];
+      Map<Integer, IdList> postingLists = new HashMap<Integer, IdList>();
+      List<IdList> lengthLists = new ArrayList<IdList>();
+      for ( int id = 0; id < rows.length; id++ ) {
+        String key = normalize( (String) rows[id][0] );
+        keys[id] = key;
+
+        for ( int gram : getGrams( key ) ) {
+          IdList list = postingLists.get( gram );
+          if ( list == null ) {
+            list = new IdList();
+            postingLists.put( gram, list );
+          }
+          list.add( id );
+        }
+
+        while ( lengthLists.size() <= key.length() ) {
+          lengthLists.add( null );
+        }
+        IdList list = lengthLists.get( key.length() );
+        if ( list == null ) {
+          list = new IdList();
+          lengthLists.set( key.length(), list );
+        }
+        list.add( id );
+      }
+
+      postings = new HashMap<Integer, int[]>( postingLists.size() * 4 / 3 + 1 );
+      for ( Map.Entry<Integer, IdList> entry : postingLists.entrySet() ) {
+        postings.put( entry.getKey(), entry.getValue().toArray() );
+      }
+      idsByLength = new int[lengthLists.size()][];
+      for ( int length = 0; length < idsByLength.length; length++ ) {
+        IdList list = lengthLists.get( length );
+        idsByLength[length] = list == null ? NO_IDS : list.toArray();
+      }
+      idsByCode = null;
+    } else {
+      Map<String, IdList> codeLists = new HashMap<String, IdList>();
+      for ( int id = 0; id < rows.length; id++ ) {
+        String code = getPhoneticCode( (String) rows[id][0], algorithm );
+        if ( code == null ) {
+          continue;
+        }
+        IdList list = codeLists.get( code );
+        if ( list == null ) {
+          list = new IdList();
+          codeLists.put( code, list );
+        }
+        list.add( id );
+      }
+      idsByCode = new HashMap<String, int[]>( codeLists.size() * 4 / 3 + 1 );
+      for ( Map.Entry<String, IdList> entry : codeLists.entrySet() ) {
+        idsByCode.put( entry.getKey(), entry.getValue().toArray() );
+      }
+      keys = null;
+      postings = null;
+      idsByLength = null;
+    }
+  }
+
+  /**
+   * @return true if the lookup values can be indexed for the given algorithm
+   */
+  public static boolean isSupported( int algorithm ) {
+    return isDistanceAlgorithm( algorithm ) || isPhoneticAlgorithm( algorithm );
+  }
+
+  private static boolean isDistanceAlgorithm( int algorithm ) {
+    return algorithm == FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN
+      || algorithm == FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN;
+  }
+
+  private static boolean isPhoneticAlgorithm( int algorithm ) {
+    return algorithm == FuzzyMatchMeta.OPERATION_TYPE_METAPHONE
+      || algorithm == FuzzyMatchMeta.OPERATION_TYPE_DOUBLE_METAPHONE
+      || algorithm == FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX
+      || algorithm == FuzzyMatchMeta.OPERATION_TYPE_REFINED_SOUNDEX;
+  }
+
+  /**
+   * Calculate the phonetic code of a value.
+   *
+   * @param value
+   *          the value to encode
+   * @param algorithm
+   *          the phonetic algorithm
+   * @return the code or an empty string if the algorithm is not a phonetic one
+   */
+  public static String getPhoneticCode( String value, int algorithm ) {
+    switch ( algorithm ) {
+      case FuzzyMatchMeta.OPERATION_TYPE_METAPHONE:
+        return ( new Metaphone() ).metaphone( value );
+      case FuzzyMatchMeta.OPERATION_TYPE_DOUBLE_METAPHONE:
+        return ( new DoubleMetaphone() ).doubleMetaphone( value );
+      case FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX:
+        return ( new Soundex() ).encode( value );
+      case FuzzyMatchMeta.OPERATION_TYPE_REFINED_SOUNDEX:
+        return ( new RefinedSoundex() ).encode( value );
+      default:
+        return "";
+    }
+  }
+
+  /**
+   * @return the key as it is stored in the index and as it has to be passed to
+   *         {@link Searcher#findCandidates(String, int)}
+   */
+  public String normalize( String key ) {
+    return caseSensitive ? key : key.toLowerCase();
+  }
+
+  /**
+   * @return the number of lookup rows in the index
+   */
+  public int size() {
+    return rows.length;
+  }
+
+  /**
+   * @return the cached lookup row with the given id
+   */
+  public Object[] getRow( int id ) {
+    return rows[id];
+  }
+
+  /**
+   * @return the normalized key of the lookup row with the given id, only available for the distance algorithms
+   */
+  public String getKey( int id ) {
+    return keys[id];
+  }
+
+  /**
+   * @return the algorithm this index was built for
+   */
+  public int getAlgorithm() {
+    return algorithm;
+  }
+
+  /**
+   * Find the lookup rows with the given phonetic code.
+   *
+   * @param code
+   *          the phonetic code of the main stream value
+   * @return the ids of the rows in the order they were added, don't modify the returned array
+   */
+  public int[] findByCode( String code ) {
+    int[] ids = code == null ? null : idsByCode.get( code );
+    return ids == null ? NO_IDS : ids;
+  }
+
+  /**
+   * @return a new searcher to find the candidates for the distance algorithms in this index
+   */
+  public Searcher newSearcher() {
+    return new Searcher();
+  }
+
+  private static int[] getGrams( String key ) {
+    int length = key.length();
+    int[] grams = new int[length + Q - 1];
+    char previous = PADDING;
+    for ( int i = 0; i < length; i++ ) {
+      char c = key.charAt( i );
+      grams[i] = ( previous << 16 ) | c;
+      previous = c;
+    }
+    grams[length] = ( previous << 16 ) | PADDING;
+    return grams;
+  }
+
+  /**
+   * @return the minimal number of bigrams a key of the given length has to share with a key of the other length to be
+   *         within the maximal distance
+   */
+  private int getMinimalCommonGrams( int length, int otherLength, int maxDistance ) {
+    int gramsPerEdit = algorithm == FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN ? Q + 1 : Q;
+    return Math.max( length, otherLength ) + Q - 1 - maxDistance * gramsPerEdit;
+  }
+
+  /**
+   * Finds the candidates within a maximal distance, keeping the counters between searches. Not thread-safe.
+   */
+  public class Searcher {
+    private final int[] counts;
+    private final int[] touched;
+    private int[] candidates;
+
+    private Searcher() {
+      counts = new int[rows.length];
+      touched = new int[rows.length];
+      candidates = new int[16];
+    }
+
+    /**
+     * Find the lookup rows that can be within the given distance of a key. The candidates still have to be verified
+     * with the actual distance calculation, see {@link BoundedEditDistance}.
+     *
+     * @param key
+     *          the normalized main stream value, see {@link FuzzyMatchIndex#normalize(String)}
+     * @param maxDistance
+     *          the maximal distance
+     * @return the number of candidates, their ids are in the first elements of {@link #getCandidates()}, in the order
+     *         the rows were added
+     */
+    public int findCandidates( String key, int maxDistance ) {
+      int length = key.length();
+      int minLength = Math.max( 0, length - maxDistance );
+      int maxLength = Math.min( idsByLength.length - 1, length + maxDistance );
+      int nrCandidates = 0;
+
+      // Count the shared bigrams, taking the number of occurrences in both keys into account
+      //
+      int nrTouched = 0;
+      int[] grams = getGrams( key );
+      Arrays.sort( grams );
+      for ( int g = 0; g < grams.length; ) {
+        int gram = grams[g];
+        int occurrences = 0;
+        while ( g < grams.length && grams[g] == gram ) {
+          occurrences++;
+          g++;
+        }
+        int[] ids = postings.get( gram );
+        if ( ids == null ) {
+          continue;
+        }
+        for ( int i = 0; i < ids.length; ) {
+          int id = ids[i];
+          int run = 0;
+          while ( i < ids.length && ids[i] == id ) {
+            run++;
+            i++;
+          }
+          if ( counts[id] == 0 ) {
+            touched[nrTouched++] = id;
+          }
+          counts[id] += Math.min( run, occurrences );
+        }
+      }
+
+      // Keys too short for the count filter: every key with a compatible length is a candidate
+      //
+      for ( int l = minLength; l <= maxLength; l++ ) {
+        if ( getMinimalCommonGrams( length, l, maxDistance ) <= 0 ) {
+          for ( int id : idsByLength[l] ) {
+            nrCandidates = addCandidate( nrCandidates, id );
+          }
+        }
+      }
+
+      for ( int t = 0; t < nrTouched; t++ ) {
+        int id = touched[t];
+        int l = keys[id].length();
+        int minimalCommonGrams = getMinimalCommonGrams( length, l, maxDistance );
+        if ( l >= minLength && l <= maxLength && minimalCommonGrams > 0 && counts[id] >= minimalCommonGrams ) {
+          nrCandidates = addCandidate( nrCandidates, id );
+        }
+        counts[id] = 0;
+      }
+
+      Arrays.sort( candidates, 0, nrCandidates );
+      return nrCandidates;
+    }
+
+    private int addCandidate( int nrCandidates, int id ) {
+      if ( nrCandidates == candidates.length ) {
+        candidates = Arrays.copyOf( candidates, candidates.length * 2 );
+      }
+      candidates[nrCandidates] = id;
+      return nrCandidates + 1;
+    }
+
+    /**
+     * @return the ids found by the last call to {@link #findCandidates(String, int)}
+     */
+    public int[] getCandidates() {
+      return candidates;
+    }
+  }
+
+  /**
+   * A growing list of primitive ids, to keep the memory footprint of the index down.
+   */
+  private static final class IdList {
+    private int[] ids = new int[4];
+    private int size;
+
+    void add( int id ) {
+      if ( size == ids.length ) {
+        ids = Arrays.copyOf( ids, size * 2 );
+      }
+      ids[size++] = id;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf( ids, size );
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.fuzzymatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Collects the lookup rows read by all the copies of a Fuzzy Match step and builds a single {@link FuzzyMatchIndex}
+ * for them once the last copy has finished reading. The copies then share the immutable index instead of each holding
+ * their own copy of the lookup values. The builder is kept in the extension data map of the transformation.
+ */
+public class FuzzyMatchIndexBuilder {
+
+  private final int nrCopies;
+  private final int algorithm;
+  private final boolean caseSensitive;
+
+  private List<Object[]> rows;
+  private int nrFinished;
+  private RowMetaInterface infoMeta;
+  private RowMetaInterface infoCache;
+  private FuzzyMatchIndex index;
+
+  /**
+   * @param nrCopies
+   *          the number of step copies that add their rows
+   * @param algorithm
+   *          the algorithm to build the index for
+   * @param caseSensitive
+   *          the case sensitivity of the distance algorithms
+   */
+  public FuzzyMatchIndexBuilder( int nrCopies, int algorithm, boolean caseSensitive ) {
+    this.nrCopies = nrCopies;
+    this.algorithm = algorithm;
+    this.caseSensitive = caseSensitive;
+    this.rows = new ArrayList<Object[]>();
+  }
+
+  /**
+   * Add the lookup rows read by a step copy and build the index if this was the last copy.
+   *
+   * @param copyRows
+   *          the cached lookup rows of the copy, empty if the lookup rows of this copy are the same as the ones of the
+   *          first copy
+   * @param copyInfoMeta
+   *          the layout of the lookup stream or null if the copy didn't receive any rows
+   * @param copyInfoCache
+   *          the layout of the cached lookup rows or null if the copy didn't receive any rows
+   */
+  public synchronized void addRows( List<Object[]> copyRows, RowMetaInterface copyInfoMeta,
+    RowMetaInterface copyInfoCache ) {
+    rows.addAll( copyRows );
+    if ( infoMeta == null && copyInfoMeta != null ) {
+      infoMeta = copyInfoMeta;
+      infoCache = copyInfoCache;
+    }
+    nrFinished++;
+    if ( nrFinished == nrCopies ) {
+      index = new FuzzyMatchIndex( rows, algorithm, caseSensitive );
+      rows = null;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Wait for the other copies to add their rows.
+   *
+   * @param timeoutMillis
+   *          the maximum time to wait
+   * @return the shared index or null if it's not built yet
+   * @throws InterruptedException
+   *           in case the thread was interrupted while waiting
+   */
+  public synchronized FuzzyMatchIndex waitForIndex( long timeoutMillis ) throws InterruptedException {
+    if ( index == null ) {
+      wait( timeoutMillis );
+    }
+    return index;
+  }
+
+  /**
+   * @return the layout of the lookup stream as seen by the first copy that received rows
+   */
+  public synchronized RowMetaInterface getInfoMeta() {
+    return infoMeta;
+  }
+
+  /**
+   * @return the layout of the cached lookup rows as seen by the first copy that received rows
+   */
+  public synchronized RowMetaInterface getInfoCache() {
+    return infoCache;
+  }
+}
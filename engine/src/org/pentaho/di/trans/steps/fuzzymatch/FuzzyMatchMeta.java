@@ -141,6 +141,9 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
   /** rename to this after lookup */
   private String[] valueName;
 
+  /** index the lookup values instead of comparing every row with all of them **/
+  private boolean indexedMatching;
+
   public FuzzyMatchMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -283,6 +286,22 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
     this.caseSensitive = caseSensitive;
   }
 
+  /**
+   * @return true if the lookup values are indexed to prune the candidates for the edit distance and phonetic
+   *         algorithms, instead of comparing every row with all the lookup values
+   */
+  public boolean isIndexedMatching() {
+    return indexedMatching;
+  }
+
+  /**
+   * @param indexedMatching
+   *          true to index the lookup values
+   */
+  public void setIndexedMatching( boolean indexedMatching ) {
+    this.indexedMatching = indexedMatching;
+  }
+
   /**
    * @return Returns the minimalValue.
    */
@@ -386,6 +405,7 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
 
       caseSensitive = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "caseSensitive" ) );
       closervalue = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "closervalue" ) );
+      indexedMatching = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "indexedMatching" ) );
       minimalValue = XMLHandler.getTagValue( stepnode, "minimalValue" );
       maximalValue = XMLHandler.getTagValue( stepnode, "maximalValue" );
       separator = XMLHandler.getTagValue( stepnode, "separator" );
@@ -431,6 +451,7 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
     minimalValue = "0";
     maximalValue = "1";
     caseSensitive = false;
+    indexedMatching = true;
     lookupfield = null;
     mainstreamfield = null;
     outputmatchfield = BaseMessages.getString( PKG, "FuzzyMatchMeta.OutputMatchFieldname" );
@@ -524,6 +545,7 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
 
     retval.append( "    " + XMLHandler.addTagValue( "caseSensitive", caseSensitive ) );
     retval.append( "    " + XMLHandler.addTagValue( "closervalue", closervalue ) );
+    retval.append( "    " + XMLHandler.addTagValue( "indexedMatching", indexedMatching ) );
     retval.append( "    " + XMLHandler.addTagValue( "minimalValue", minimalValue ) );
     retval.append( "    " + XMLHandler.addTagValue( "maximalValue", maximalValue ) );
     retval.append( "    " + XMLHandler.addTagValue( "separator", separator ) );
@@ -554,6 +576,7 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
 
       caseSensitive = rep.getStepAttributeBoolean( id_step, "caseSensitive" );
       closervalue = rep.getStepAttributeBoolean( id_step, "closervalue" );
+      indexedMatching = rep.getStepAttributeBoolean( id_step, "indexedMatching" );
       minimalValue = rep.getStepAttributeString( id_step, "minimalValue" );
       maximalValue = rep.getStepAttributeString( id_step, "maximalValue" );
       separator = rep.getStepAttributeString( id_step, "separator" );
@@ -584,6 +607,7 @@ public class FuzzyMatchMeta extends BaseStepMeta implements StepMetaInterface {
 
       rep.saveStepAttribute( id_transformation, id_step, "caseSensitive", caseSensitive );
       rep.saveStepAttribute( id_transformation, id_step, "closervalue", closervalue );
+      rep.saveStepAttribute( id_transformation, id_step, "indexedMatching", indexedMatching );
       rep.saveStepAttribute( id_transformation, id_step, "minimalValue", minimalValue );
       rep.saveStepAttribute( id_transformation, id_step, "maximalValue", maximalValue );
       rep.saveStepAttribute( id_transformation, id_step, "separator", separator );
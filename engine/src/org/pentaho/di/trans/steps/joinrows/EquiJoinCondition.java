@@ -0,0 +1,246 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.joinrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * The equality predicates between the main stream and a second stream that have to hold for the join condition of
+ * the Join Rows step to be true. Rows can only be joined if their join keys are equal, so the second stream can be put
+ * in a hash table on its join key and every main row only has to be combined with the rows having the same key. The
+ * complete condition still has to be evaluated on the combined rows, it acts as a residual filter for the other
+ * predicates.<br>
+ * <br>
+ * Only an equality of two fields with the same data type is used and only if the hash key of the values is equal if
+ * and only if {@link ValueMetaInterface#compare(Object, ValueMetaInterface, Object)} considers them equal: strings
+ * compared without collator, integers, numbers, dates and booleans. As in the comparison, two nulls are equal.
+ */
+public class EquiJoinCondition {
+
+  private final String description;
+  private final KeyPart[] mainKey;
+  private final KeyPart[] otherKey;
+
+  private EquiJoinCondition( String description, KeyPart[] mainKey, KeyPart[] otherKey ) {
+    this.description = description;
+    this.mainKey = mainKey;
+    this.otherKey = otherKey;
+  }
+
+  /**
+   * Find the equality predicates between the main stream and the other stream in a join condition.
+   *
+   * @param condition
+   *          the join condition
+   * @param mainRowMeta
+   *          the layout of the main stream rows, the first fields of the joined rows
+   * @param joinedRowMeta
+   *          the layout of the joined rows, the fields of the other stream follow the ones of the main stream
+   * @return the equality predicates or null if the condition doesn't have any usable ones
+   */
+  public static EquiJoinCondition findEqualities( Condition condition, RowMetaInterface mainRowMeta,
+    RowMetaInterface joinedRowMeta ) {
+    if ( condition == null || condition.isEmpty() ) {
+      return null;
+    }
+    List<Condition> conjuncts = new ArrayList<Condition>();
+    addConjuncts( condition, conjuncts );
+
+    StringBuilder description = new StringBuilder();
+    List<KeyPart> mainKey = new ArrayList<KeyPart>();
+    List<KeyPart> otherKey = new ArrayList<KeyPart>();
+    int mainSize = mainRowMeta.size();
+
+    for ( Condition conjunct : conjuncts ) {
+      if ( conjunct.getFunction() != Condition.FUNC_EQUAL || conjunct.getRightValuename() == null
+        || ( conjunct.getRightExact() != null && conjunct.getRightExact().getValueData() != null ) ) {
+        continue;
+      }
+      int left = joinedRowMeta.indexOfValue( conjunct.getLeftValuename() );
+      int right = joinedRowMeta.indexOfValue( conjunct.getRightValuename() );
+      if ( left < 0 || right < 0 || ( left < mainSize ) == ( right < mainSize ) ) {
+        continue;
+      }
+      // The comparison uses the metadata of the left field
+      //
+      ValueMetaInterface compareMeta = joinedRowMeta.getValueMeta( left );
+      ValueMetaInterface otherMeta = joinedRowMeta.getValueMeta( right );
+      if ( !isHashable( compareMeta, otherMeta ) ) {
+        continue;
+      }
+
+      int mainIndex = Math.min( left, right );
+      int otherIndex = Math.max( left, right );
+      boolean caseInsensitive = compareMeta.getType() == ValueMetaInterface.TYPE_STRING
+        && compareMeta.isCaseInsensitive();
+      mainKey.add( new KeyPart( mainIndex, joinedRowMeta.getValueMeta( mainIndex ), caseInsensitive ) );
+      otherKey.add( new KeyPart( otherIndex - mainSize, joinedRowMeta.getValueMeta( otherIndex ), caseInsensitive ) );
+
+      if ( description.length() > 0 ) {
+        description.append( " AND " );
+      }
+      description.append( conjunct.getLeftValuename() ).append( " = " ).append( conjunct.getRightValuename() );
+    }
+
+    if ( mainKey.isEmpty() ) {
+      return null;
+    }
+    return new EquiJoinCondition( description.toString(), mainKey.toArray( new KeyPart[mainKey.size()] ), otherKey
+      .toArray( new KeyPart[otherKey.size()] ) );
+  }
+
+  /**
+   * Add the atomic conditions that have to be true for the condition to be true: the condition itself or the children
+   * of a conjunction, recursively.
+   */
+  private static void addConjuncts( Condition condition, List<Condition> conjuncts ) {
+    if ( condition.isNegated() ) {
+      return;
+    }
+    if ( condition.isAtomic() ) {
+      conjuncts.add( condition );
+      return;
+    }
+
+    // The children are evaluated from left to right: any other operator than AND (NOT) makes the preceding children
+    // optional
+    //
+    List<Condition> children = condition.getChildren();
+    for ( int i = 1; i < children.size(); i++ ) {
+      int operator = children.get( i ).getOperator();
+      if ( operator != Condition.OPERATOR_AND && operator != Condition.OPERATOR_AND_NOT ) {
+        return;
+      }
+    }
+    for ( int i = 0; i < children.size(); i++ ) {
+      Condition child = children.get( i );
+      if ( i == 0 || child.getOperator() == Condition.OPERATOR_AND ) {
+        addConjuncts( child, conjuncts );
+      }
+    }
+  }
+
+  private static boolean isHashable( ValueMetaInterface compareMeta, ValueMetaInterface otherMeta ) {
+    if ( compareMeta.getType() != otherMeta.getType() ) {
+      return false;
+    }
+    switch ( compareMeta.getType() ) {
+      case ValueMetaInterface.TYPE_STRING:
+        return compareMeta.isCollatorDisabled();
+      case ValueMetaInterface.TYPE_INTEGER:
+      case ValueMetaInterface.TYPE_NUMBER:
+      case ValueMetaInterface.TYPE_DATE:
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return the hash key of a main stream row
+   */
+  public Object getMainKey( Object[] mainRow ) throws KettleValueException {
+    return getKey( mainKey, mainRow );
+  }
+
+  /**
+   * @return the hash key of a row of the other stream
+   */
+  public Object getOtherKey( Object[] otherRow ) throws KettleValueException {
+    return getKey( otherKey, otherRow );
+  }
+
+  private static Object getKey( KeyPart[] parts, Object[] row ) throws KettleValueException {
+    if ( parts.length == 1 ) {
+      return parts[0].getValue( row );
+    }
+    Object[] key = new Object[parts.length];
+    for ( int i = 0; i < parts.length; i++ ) {
+      key[i] = parts[i].getValue( row );
+    }
+    return Arrays.asList( key );
+  }
+
+  /**
+   * @return the number of equality predicates
+   */
+  public int size() {
+    return mainKey.length;
+  }
+
+  @Override
+  public String toString() {
+    return description;
+  }
+
+  private static final class KeyPart {
+    private final int index;
+    private final ValueMetaInterface valueMeta;
+    private final boolean caseInsensitive;
+
+    KeyPart( int index, ValueMetaInterface valueMeta, boolean caseInsensitive ) {
+      this.index = index;
+      this.valueMeta = valueMeta;
+      this.caseInsensitive = caseInsensitive;
+    }
+
+    Object getValue( Object[] row ) throws KettleValueException {
+      Object data = row[index];
+      if ( valueMeta.isNull( data ) ) {
+        return null;
+      }
+      switch ( valueMeta.getType() ) {
+        case ValueMetaInterface.TYPE_STRING:
+          String string = valueMeta.getString( data );
+          return caseInsensitive ? foldCase( string ) : string;
+        case ValueMetaInterface.TYPE_INTEGER:
+          return valueMeta.getInteger( data );
+        case ValueMetaInterface.TYPE_NUMBER:
+          return valueMeta.getNumber( data );
+        case ValueMetaInterface.TYPE_DATE:
+          return Long.valueOf( valueMeta.getDate( data ).getTime() );
+        default:
+          return valueMeta.getBoolean( data );
+      }
+    }
+
+    /**
+     * Same folding as String.compareToIgnoreCase()
+     */
+    private static String foldCase( String string ) {
+      char[] chars = new char[string.length()];
+      for ( int i = 0; i < chars.length; i++ ) {
+        chars[i] = Character.toLowerCase( Character.toUpperCase( string.charAt( i ) ) );
+      }
+      return new String( chars );
+    }
+  }
+}
@@ -31,8 +31,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
@@ -56,6 +58,8 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class JoinRows extends BaseStep implements StepInterface {
   private static Class<?> PKG = JoinRowsMeta.class; // for i18n purposes, needed by Translator2!!
 
+  public static final int DEFAULT_BLOCK_SIZE = 10000;
+
   private JoinRowsMeta meta;
   private JoinRowsData data;
 
@@ -80,6 +84,9 @@ public class JoinRows extends BaseStep implements StepInterface {
       // Start at file 1, skip 0 for speed!
       data.filenr = 1;
 
+      data.blockSize =
+        Math.max( 1, Const.toInt( getVariable( Const.KETTLE_JOIN_ROWS_BLOCK_SIZE ), DEFAULT_BLOCK_SIZE ) );
+
       // See if a main step is supplied: in that case move the corresponding rowset to position 0
       for ( int i = 0; i < getInputRowSets().size(); i++ ) {
         RowSet rs = getInputRowSets().get( i );
@@ -231,7 +238,7 @@ public class JoinRows extends BaseStep implements StepInterface {
           }
           return null;
         }
-        rowData = data.cache[filenr].get( data.position[data.filenr] );
+        rowData = data.cache[filenr].get( data.position[filenr] );
 
         // Don't forget to clone the data to protect it against data alteration downstream.
         //
@@ -264,10 +271,14 @@ public class JoinRows extends BaseStep implements StepInterface {
       if ( !cacheInputRow() ) {
         return false;
       }
-    } else {
+    } else if ( meta.getJoinStrategy() == JoinRowsMeta.JOIN_STRATEGY_NESTED_LOOP ) {
       if ( !outputRow() ) {
         return false;
       }
+    } else {
+      if ( !outputBlock() ) {
+        return false;
+      }
     }
     return true;
   }
@@ -293,6 +304,7 @@ public class JoinRows extends BaseStep implements StepInterface {
         }
       }
 
+      logRowsCompared();
       setOutputDone();
       return false;
     }
@@ -305,27 +317,12 @@ public class JoinRows extends BaseStep implements StepInterface {
     if ( data.filenr >= data.file.length - 1 ) {
       if ( data.outputRowMeta == null ) {
         data.outputRowMeta = createOutputRowMeta( data.fileRowMeta );
-      }
-
-      // Stich the output row together
-      Object[] sum = new Object[data.outputRowMeta.size()];
-      int sumIndex = 0;
-      for ( int f = 0; f <= data.filenr; f++ ) {
-        for ( int c = 0; c < data.fileRowMeta[f].size(); c++ ) {
-          sum[sumIndex] = data.joinrow[f][c];
-          sumIndex++;
+        if ( log.isBasic() ) {
+          logBasic( BaseMessages.getString( PKG, "JoinRows.Log.Strategy.NestedLoop" ) );
         }
       }
 
-      if ( meta.getCondition() != null && !meta.getCondition().isEmpty() ) {
-        // Test the specified condition...
-        if ( meta.getCondition().evaluate( data.outputRowMeta, sum ) ) {
-          putRow( data.outputRowMeta, sum );
-        }
-      } else {
-        // Put it out where it belongs!
-        putRow( data.outputRowMeta, sum );
-      }
+      outputJoinedRow();
 
       // Did we reach the last position in the last file?
       // This means that position[] is at 0!
@@ -341,6 +338,177 @@ public class JoinRows extends BaseStep implements StepInterface {
     return true;
   }
 
+  /**
+   * Stitch the current rows of all the streams together and pass the result on if it matches the condition.
+   */
+  private void outputJoinedRow() throws KettleException {
+    Object[] sum = new Object[data.outputRowMeta.size()];
+    int sumIndex = 0;
+    for ( int f = 0; f < data.joinrow.length; f++ ) {
+      for ( int c = 0; c < data.fileRowMeta[f].size(); c++ ) {
+        sum[sumIndex] = data.joinrow[f][c];
+        sumIndex++;
+      }
+    }
+    data.rowsCompared++;
+
+    if ( meta.getCondition() != null && !meta.getCondition().isEmpty() ) {
+      // Test the specified condition...
+      if ( meta.getCondition().evaluate( data.outputRowMeta, sum ) ) {
+        putRow( data.outputRowMeta, sum );
+      }
+    } else {
+      // Put it out where it belongs!
+      putRow( data.outputRowMeta, sum );
+    }
+  }
+
+  /**
+   * Join a block of main stream rows with the other streams: the other streams are read only once for the whole
+   * block, or not at all for a hash join.
+   */
+  private boolean outputBlock() throws KettleException {
+    RowSet rowSet = getInputRowSets().get( 0 );
+    List<Object[]> block = new ArrayList<Object[]>( Math.min( data.blockSize, 1024 ) );
+    while ( !data.mainStreamDone && block.size() < data.blockSize ) {
+      if ( data.partialBlocks && !block.isEmpty() && rowSet.size() == 0 ) {
+        break;
+      }
+      Object[] rowData = getRowFrom( rowSet );
+      if ( rowData == null ) {
+        data.mainStreamDone = true;
+      } else {
+        data.fileRowMeta[0] = rowSet.getRowMeta();
+        block.add( rowData );
+      }
+    }
+    if ( block.isEmpty() ) {
+      logRowsCompared();
+      setOutputDone();
+      return false;
+    }
+
+    if ( data.outputRowMeta == null ) {
+      // 100 x 0 = 0 : don't output when one of the input streams has no rows.
+      //
+      for ( int f = 1; f < data.file.length; f++ ) {
+        if ( data.size[f] == 0 ) {
+          if ( log.isBasic() ) {
+            logBasic( BaseMessages.getString( PKG, "JoinRows.Log.NoRowsComingFromStep" )
+              + data.rs[f].getOriginStepName() + "]" );
+          }
+          while ( getRow() != null ) {
+            // Consume
+            if ( isStopped() ) {
+              break;
+            }
+          }
+          setOutputDone();
+          return false;
+        }
+      }
+      data.outputRowMeta = createOutputRowMeta( data.fileRowMeta );
+      chooseStrategy();
+    }
+
+    if ( data.equiJoin != null ) {
+      probeHashTable( block );
+    } else {
+      joinStreams( 1, block );
+    }
+    return !isStopped();
+  }
+
+  private void chooseStrategy() throws KettleException {
+    // The hash join is only used to join the main stream with a single other stream
+    //
+    if ( meta.getJoinStrategy() == JoinRowsMeta.JOIN_STRATEGY_AUTOMATIC && data.file.length == 2 ) {
+      data.equiJoin =
+        EquiJoinCondition.findEqualities( meta.getCondition(), data.fileRowMeta[0], data.outputRowMeta );
+    }
+
+    if ( data.equiJoin != null ) {
+      if ( log.isBasic() ) {
+        logBasic( BaseMessages.getString( PKG, "JoinRows.Log.Strategy.HashJoin", data.equiJoin.toString() ) );
+      }
+      buildHashTable();
+    } else {
+      if ( log.isBasic() ) {
+        logBasic( BaseMessages.getString( PKG, "JoinRows.Log.Strategy.BlockNestedLoop", String
+          .valueOf( data.blockSize ) ) );
+      }
+    }
+  }
+
+  private void buildHashTable() throws KettleException {
+    data.hashTable = new HashMap<Object, List<Object[]>>();
+    do {
+      Object[] rowData = getRowData( 1 );
+      if ( rowData == null ) {
+        break;
+      }
+      Object key = data.equiJoin.getOtherKey( rowData );
+      List<Object[]> rows = data.hashTable.get( key );
+      if ( rows == null ) {
+        rows = new ArrayList<Object[]>( 1 );
+        data.hashTable.put( key, rows );
+      }
+      rows.add( rowData );
+    } while ( !data.restart[1] && !isStopped() );
+
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "JoinRows.Log.HashTableBuilt", String.valueOf( data.size[1] ), String
+        .valueOf( data.hashTable.size() ) ) );
+    }
+  }
+
+  private void probeHashTable( List<Object[]> block ) throws KettleException {
+    for ( Object[] mainRow : block ) {
+      List<Object[]> rows = data.hashTable.get( data.equiJoin.getMainKey( mainRow ) );
+      if ( rows == null ) {
+        continue;
+      }
+      data.joinrow[0] = mainRow;
+      for ( Object[] row : rows ) {
+        data.joinrow[1] = row;
+        outputJoinedRow();
+      }
+      if ( isStopped() ) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Loop over the rows of the given stream and the ones after it, with the block of main stream rows in the innermost
+   * loop.
+   */
+  private void joinStreams( int filenr, List<Object[]> block ) throws KettleException {
+    if ( filenr >= data.file.length ) {
+      for ( Object[] mainRow : block ) {
+        data.joinrow[0] = mainRow;
+        outputJoinedRow();
+      }
+      return;
+    }
+
+    do {
+      data.joinrow[filenr] = getRowData( filenr );
+      if ( data.joinrow[filenr] == null ) {
+        return;
+      }
+      joinStreams( filenr + 1, block );
+    } while ( !data.restart[filenr] && !isStopped() );
+  }
+
+  private void logRowsCompared() {
+    if ( log.isBasic() && data.joinStartTime > 0 ) {
+      long millis = Math.max( 1, System.currentTimeMillis() - data.joinStartTime );
+      logBasic( BaseMessages.getString( PKG, "JoinRows.Log.RowsCompared", String.valueOf( data.rowsCompared ), String
+        .valueOf( millis ), String.valueOf( data.rowsCompared * 1000 / millis ) ) );
+    }
+  }
+
   private boolean cacheInputRow() throws KettleException {
     // /////////////////////////////
     // Read from input channels //
@@ -353,6 +521,8 @@ public class JoinRows extends BaseStep implements StepInterface {
       // Start back at filenr = 0
       data.filenr = 0;
 
+      data.joinStartTime = System.currentTimeMillis();
+
       return true;
     }
 
@@ -456,6 +626,15 @@ public class JoinRows extends BaseStep implements StepInterface {
   @Override
   public void batchComplete() throws KettleException {
     RowSet rowSet = getInputRowSets().get( 0 );
+    if ( meta.getJoinStrategy() != JoinRowsMeta.JOIN_STRATEGY_NESTED_LOOP ) {
+      // Join the main rows of this batch, without waiting for a full block
+      //
+      data.partialBlocks = true;
+      while ( rowSet.size() > 0 && !isStopped() ) {
+        processRow( meta, data );
+      }
+      return;
+    }
     int repeats = 0;
     for ( int i = 0; i < data.cache.length; i++ ) {
       if ( repeats == 0 ) {
@@ -28,6 +28,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.util.List;
+import java.util.Map;
 
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -65,6 +66,25 @@ public class JoinRowsData extends BaseStepData implements StepDataInterface {
 
   public RowMetaInterface outputRowMeta;
 
+  /** The number of main stream rows joined at once by the block nested loop and hash join strategies */
+  public int blockSize;
+
+  /** Process the main stream rows that are available instead of waiting for a full block */
+  public boolean partialBlocks;
+
+  public boolean mainStreamDone;
+
+  /** The equality predicates of the hash join, null if the streams are joined with (block) nested loops */
+  public EquiJoinCondition equiJoin;
+
+  /** The rows of the second stream by join key */
+  public Map<Object, List<Object[]>> hashTable;
+
+  /** The number of combinations of rows that were tested against the condition */
+  public long rowsCompared;
+
+  public long joinStartTime;
+
   public JoinRowsData() {
     super();
   }
@@ -57,6 +57,22 @@ import org.w3c.dom.Node;
 public class JoinRowsMeta extends BaseStepMeta implements StepMetaInterface {
   private static Class<?> PKG = JoinRowsMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /** Re-read the other streams for every row of the main stream */
+  public static final int JOIN_STRATEGY_NESTED_LOOP = 0;
+
+  /** Re-read the other streams once for every block of rows of the main stream */
+  public static final int JOIN_STRATEGY_BLOCK_NESTED_LOOP = 1;
+
+  /** Hash join on the equality predicates of the condition if there are any, block nested loop otherwise */
+  public static final int JOIN_STRATEGY_AUTOMATIC = 2;
+
+  public static final String[] joinStrategyCodes = { "nested_loop", "block_nested_loop", "automatic" };
+
+  public static final String[] joinStrategyDescs = {
+    BaseMessages.getString( PKG, "JoinRowsMeta.JoinStrategy.NestedLoop" ),
+    BaseMessages.getString( PKG, "JoinRowsMeta.JoinStrategy.BlockNestedLoop" ),
+    BaseMessages.getString( PKG, "JoinRowsMeta.JoinStrategy.Automatic" ) };
+
   private String directory;
   private String prefix;
   private int cacheSize;
@@ -70,6 +86,9 @@ public class JoinRowsMeta extends BaseStepMeta implements StepMetaInterface {
   /** Optional condition to limit the join (where clause) */
   private Condition condition;
 
+  /** How the rows of the streams are combined */
+  private int joinStrategy;
+
   /**
    * @return Returns the lookupFromStep.
    */
@@ -160,6 +179,53 @@ public class JoinRowsMeta extends BaseStepMeta implements StepMetaInterface {
     this.condition = condition;
   }
 
+  /**
+   * @return the join strategy, one of the JOIN_STRATEGY_* constants
+   */
+  public int getJoinStrategy() {
+    return joinStrategy;
+  }
+
+  /**
+   * @param joinStrategy
+   *          the join strategy to set, one of the JOIN_STRATEGY_* constants
+   */
+  public void setJoinStrategy( int joinStrategy ) {
+    this.joinStrategy = joinStrategy;
+  }
+
+  public static int getJoinStrategyByCode( String code ) {
+    for ( int i = 0; i < joinStrategyCodes.length; i++ ) {
+      if ( joinStrategyCodes[i].equalsIgnoreCase( code ) ) {
+        return i;
+      }
+    }
+    return JOIN_STRATEGY_NESTED_LOOP;
+  }
+
+  public static int getJoinStrategyByDesc( String desc ) {
+    for ( int i = 0; i < joinStrategyDescs.length; i++ ) {
+      if ( joinStrategyDescs[i].equalsIgnoreCase( desc ) ) {
+        return i;
+      }
+    }
+    return getJoinStrategyByCode( desc );
+  }
+
+  public static String getJoinStrategyCode( int joinStrategy ) {
+    if ( joinStrategy < 0 || joinStrategy >= joinStrategyCodes.length ) {
+      return joinStrategyCodes[JOIN_STRATEGY_NESTED_LOOP];
+    }
+    return joinStrategyCodes[joinStrategy];
+  }
+
+  public static String getJoinStrategyDesc( int joinStrategy ) {
+    if ( joinStrategy < 0 || joinStrategy >= joinStrategyDescs.length ) {
+      return joinStrategyDescs[JOIN_STRATEGY_NESTED_LOOP];
+    }
+    return joinStrategyDescs[joinStrategy];
+  }
+
   public JoinRowsMeta() {
     super(); // allocate BaseStepMeta
     condition = new Condition();
@@ -184,6 +250,7 @@ public class JoinRowsMeta extends BaseStepMeta implements StepMetaInterface {
       cacheSize = Const.toInt( XMLHandler.getTagValue( stepnode, "cache_size" ), -1 );
 
       mainStepname = XMLHandler.getTagValue( stepnode, "main" );
+      joinStrategy = getJoinStrategyByCode( XMLHandler.getTagValue( stepnode, "join_strategy" ) );
 
       Node compare = XMLHandler.getSubNode( stepnode, "compare" );
       Node condnode = XMLHandler.getSubNode( compare, "condition" );
@@ -206,6 +273,7 @@ public class JoinRowsMeta extends BaseStepMeta implements StepMetaInterface {
     directory = "%%java.io.tmpdir%%";
     prefix = "out";
     cacheSize = 500;
+    joinStrategy = JOIN_STRATEGY_AUTOMATIC;
 
     mainStepname = null;
   }
@@ -222,6 +290,8 @@ public class JoinRowsMeta extends BaseStepMeta implements StepMetaInterface {
       mainStepname = getLookupStepname();
     }
     retval.append( "      " ).append( XMLHandler.addTagValue( "main", mainStepname ) );
+    retval.append( "      " ).append(
+      XMLHandler.addTagValue( "join_strategy", getJoinStrategyCode( joinStrategy ) ) );
 
     retval.append( "    <compare>" ).append( Const.CR );
 
@@ -242,6 +312,7 @@ public class JoinRowsMeta extends BaseStepMeta implements StepMetaInterface {
       cacheSize = (int) rep.getStepAttributeInteger( id_step, "cache_size" );
 
       mainStepname = rep.getStepAttributeString( id_step, "main" );
+      joinStrategy = getJoinStrategyByCode( rep.getStepAttributeString( id_step, "join_strategy" ) );
 
       condition = rep.loadConditionFromStepAttribute( id_step, "id_condition" );
       if ( condition == null ) {
@@ -264,6 +335,7 @@ public class JoinRowsMeta extends BaseStepMeta implements StepMetaInterface {
         mainStepname = getLookupStepname();
       }
       rep.saveStepAttribute( id_transformation, id_step, "main", mainStepname );
+      rep.saveStepAttribute( id_transformation, id_step, "join_strategy", getJoinStrategyCode( joinStrategy ) );
 
       rep.saveConditionStepAttribute( id_transformation, id_step, "id_condition", condition );
     } catch ( Exception e ) {
@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.annotations.VisibleForTesting;
 import org.pentaho.di.core.Const;
@@ -45,6 +46,7 @@ import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.TransMeta.TransformationType;
 import org.pentaho.di.trans.step.BaseStep;
+import org.pentaho.di.trans.step.InputRowSetSignal;
 import org.pentaho.di.trans.step.RemoteStep;
 import org.pentaho.di.trans.step.RowListener;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -54,7 +56,9 @@ import org.pentaho.di.trans.step.StepMetaDataCombi;
 import org.pentaho.di.trans.step.StepMetaInterface;
 import org.pentaho.di.trans.steps.TransStepUtil;
 import org.pentaho.di.trans.steps.mappinginput.MappingInput;
+import org.pentaho.di.trans.steps.mappinginput.MappingInputMeta;
 import org.pentaho.di.trans.steps.mappingoutput.MappingOutput;
+import org.pentaho.di.trans.steps.mappingoutput.MappingOutputMeta;
 
 /**
  * Execute a mapping: a re-usuable transformation
@@ -65,6 +69,9 @@ import org.pentaho.di.trans.steps.mappingoutput.MappingOutput;
 public class Mapping extends BaseStep implements StepInterface {
   private static Class<?> PKG = MappingMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /** The maximum time in ms to wait for a complete batch of rows from the parent in inline mode */
+  private static final long INLINE_BATCH_MAX_WAIT = 50L;
+
   private MappingMeta meta;
   private MappingData data;
 
@@ -231,32 +238,7 @@ public class Mapping extends BaseStep implements StepInterface {
             throw new KettleException(
                 "Multiple input or output steps are not supported for a single threaded mapping." );
           }
-
-          // Object[] row = getRow();
-          // RowMetaInterface rowMeta = getInputRowMeta();
-
-          // for (int count=0;count<(data.mappingTransMeta.getSizeRowset()/2) && row!=null;count++) {
-          // // Pass each row over to the mapping input step, fill the buffer...
-          //
-          // mappingInputs[0].getInputRowSets().get(0).putRow(rowMeta, row);
-          //
-          // row = getRow();
-          // }
-
-          System.out.println( "# of input buffers: " + mappingInputs[0].getInputRowSets().size() );
-          if ( mappingInputs[0].getInputRowSets().size() > 0 ) {
-            System.out.println( "Input buffer 0 size: " + mappingInputs[0].getInputRowSets().get( 0 ).size() );
-          }
-
-          // Now execute one batch...Basic logging
-          //
-          boolean result = getData().singleThreadedTransExcecutor.oneIteration();
-          if ( !result ) {
-            getData().singleThreadedTransExcecutor.dispose();
-            setOutputDone();
-            return false;
-          }
-          return true;
+          return processRowSingleThreaded();
 
         default:
           throw new KettleException( "Transformation type '"
@@ -277,6 +259,119 @@ public class Mapping extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Execute the mapping on the thread of this step with the single threaded engine. We wait until the parent
+   * transformation delivered a batch of rows to the mapping input step, after that every step of the mapping, the
+   * mapping input step included, processes the rows that are available on its input. The mapping output step writes
+   * directly to the next steps of the parent transformation. No threads are started and no rows are handed over between
+   * threads inside the mapping.
+   */
+  private boolean processRowSingleThreaded() throws KettleException {
+    MappingData mappingData = getData();
+    SingleThreadedTransExecutor executor = mappingData.singleThreadedTransExcecutor;
+
+    if ( !mappingData.wasStarted ) {
+      // This doesn't start any threads, it only flags the mapping as running.
+      //
+      mappingData.getMappingTrans().startThreads();
+      mappingData.wasStarted = true;
+    }
+
+    List<RowSet> inputRowSets = mappingData.singleThreadedMappingInput.step.getInputRowSets();
+    waitForInputBatch( inputRowSets );
+    boolean inputDone = isInputDone( inputRowSets );
+
+    if ( !inputDone && executor.processAvailableRows() ) {
+      return true;
+    }
+
+    // Either the parent transformation doesn't send more rows or the mapping failed or was stopped.
+    // In the first case, push the remaining rows through the mapping.
+    //
+    if ( inputDone && !isStopped() && executor.getErrors() == 0 ) {
+      executor.executeToCompletion();
+    }
+    disposeSingleThreadedExecutor();
+
+    // Set some statistics from the mapping...
+    // This will show up in Spoon, etc.
+    //
+    Result result = mappingData.getMappingTrans().getResult();
+    setErrors( result.getNrErrors() );
+    setLinesRead( result.getNrLinesRead() );
+    setLinesWritten( result.getNrLinesWritten() );
+    setLinesInput( result.getNrLinesInput() );
+    setLinesOutput( result.getNrLinesOutput() );
+    setLinesUpdated( result.getNrLinesUpdated() );
+    setLinesRejected( result.getNrLinesRejected() );
+
+    if ( result.getNrErrors() > 0 ) {
+      stopAll();
+    }
+    setOutputDone();
+    return false;
+  }
+
+  /**
+   * Wait until the parent transformation delivered a batch of rows to the given input row sets of the mapping input
+   * step or until they are all done. Once the first row of a batch is there, we wait at most
+   * {@link #INLINE_BATCH_MAX_WAIT} ms for the rest: a slow parent transformation doesn't hold back the rows that are
+   * already there.
+   */
+  private void waitForInputBatch( List<RowSet> rowSets ) {
+    MappingData mappingData = getData();
+    long batchStart = -1L;
+    while ( !isStopped() ) {
+      int nrRows = 0;
+      boolean allDone = true;
+      for ( RowSet rowSet : rowSets ) {
+        nrRows += rowSet.size();
+        allDone &= rowSet.isDone();
+      }
+      if ( allDone || nrRows >= mappingData.singleThreadedBatchSize ) {
+        return;
+      }
+      if ( nrRows == 0 ) {
+        mappingData.singleThreadedInputSignal.await( rowSets, 100, TimeUnit.MILLISECONDS );
+        continue;
+      }
+      long now = System.currentTimeMillis();
+      if ( batchStart < 0 ) {
+        batchStart = now;
+      }
+      long remaining = INLINE_BATCH_MAX_WAIT - ( now - batchStart );
+      if ( remaining <= 0 ) {
+        return;
+      }
+      mappingData.singleThreadedInputSignal.awaitRows(
+        rowSets, mappingData.singleThreadedBatchSize, remaining, TimeUnit.MILLISECONDS );
+      if ( Thread.currentThread().isInterrupted() ) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return true if all the given input row sets of the mapping input step are done and empty
+   */
+  private static boolean isInputDone( List<RowSet> rowSets ) {
+    for ( RowSet rowSet : rowSets ) {
+      if ( !rowSet.isDone() || rowSet.size() > 0 ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void disposeSingleThreadedExecutor() throws KettleException {
+    MappingData mappingData = getData();
+    if ( mappingData.singleThreadedTransExcecutor != null ) {
+      SingleThreadedTransExecutor executor = mappingData.singleThreadedTransExcecutor;
+      mappingData.singleThreadedTransExcecutor = null;
+      executor.dispose();
+    }
+  }
+
   public void setMappingParameters( Trans trans, TransMeta transMeta, MappingParameters mappingParameters )
     throws KettleException {
     if ( mappingParameters == null ) {
@@ -340,6 +435,20 @@ public class Mapping extends BaseStep implements StepInterface {
           throw new KettleException( BaseMessages.getString( PKG,
               "Mapping.Exception.UnableToInitSingleThreadedTransformation" ) );
         }
+        for ( StepMetaDataCombi combi : mappingData.getMappingTrans().getSteps() ) {
+          if ( combi.step instanceof MappingInput ) {
+            mappingData.singleThreadedMappingInput = combi;
+          }
+        }
+        if ( mappingData.singleThreadedMappingInput == null ) {
+          throw new KettleException( BaseMessages.getString( PKG,
+              "MappingDialog.Exception.OneMappingInputStepRequired" ) );
+        }
+
+        // The mapping input step is driven by the executor like every other step, we only wait for batches of rows
+        //
+        mappingData.singleThreadedInputSignal = new InputRowSetSignal();
+        mappingData.singleThreadedBatchSize = Math.max( 1, getTransMeta().getSizeRowset() / 2 );
         break;
       default:
         break;
@@ -600,6 +709,12 @@ public class Mapping extends BaseStep implements StepInterface {
         return false;
       }
 
+      // Run the mapping on the thread of this step if we can.
+      //
+      if ( meta.isExecutingInline() && canExecuteInline( mappingData.mappingTransMeta ) ) {
+        mappingData.mappingTransMeta.setTransformationType( TransformationType.SingleThreaded );
+      }
+
       // OK, now prepare the execution of the mapping.
       // This includes the allocation of RowSet buffers, the creation of the
       // sub-transformation threads, etc.
@@ -616,7 +731,43 @@ public class Mapping extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * See if all the steps of the mapping can be executed on the thread of this step by the single threaded engine.
+   */
+  @VisibleForTesting boolean canExecuteInline( TransMeta mappingTransMeta ) {
+    String reason = null;
+    StepMeta unsupportedStep = SingleThreadedTransExecutor.getUnsupportedStep( mappingTransMeta );
+    if ( unsupportedStep != null ) {
+      reason = BaseMessages.getString( PKG, "Mapping.Log.StepNotSupportedInline", unsupportedStep.getName() );
+    }
+    int nrInputs = 0;
+    int nrOutputs = 0;
+    for ( StepMeta stepMeta : mappingTransMeta.getSteps() ) {
+      if ( stepMeta.getStepMetaInterface() instanceof MappingInputMeta ) {
+        nrInputs++;
+      }
+      if ( stepMeta.getStepMetaInterface() instanceof MappingOutputMeta ) {
+        nrOutputs++;
+      }
+    }
+    if ( reason == null && ( nrInputs > 1 || nrOutputs > 1 ) ) {
+      reason = BaseMessages.getString( PKG, "Mapping.Log.OneMappingInputAndOutputInline" );
+    }
+    if ( reason != null ) {
+      logBasic( BaseMessages.getString( PKG, "Mapping.Log.MappingCantBeExecutedInline", reason ) );
+      return false;
+    }
+    return true;
+  }
+
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    // Stop the single threaded mapping if it didn't finish normally
+    try {
+      disposeSingleThreadedExecutor();
+    } catch ( KettleException e ) {
+      logError( "Unable to dispose of the single threaded mapping", e );
+    }
+
     // Close the running transformation
     if ( getData().wasStarted ) {
       // Wait until the child transformation has finished.
@@ -30,7 +30,9 @@ import org.pentaho.di.trans.SingleThreadedTransExecutor;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStepData;
+import org.pentaho.di.trans.step.InputRowSetSignal;
 import org.pentaho.di.trans.step.StepDataInterface;
+import org.pentaho.di.trans.step.StepMetaDataCombi;
 import org.pentaho.di.trans.steps.mappinginput.MappingInput;
 import org.pentaho.di.trans.steps.mappingoutput.MappingOutput;
 
@@ -56,6 +58,9 @@ public class MappingData extends BaseStepData implements StepDataInterface {
   protected int linesUpdatedStepNr = -1;
   protected int linesRejectedStepNr = -1;
   public SingleThreadedTransExecutor singleThreadedTransExcecutor;
+  public StepMetaDataCombi singleThreadedMappingInput;
+  public InputRowSetSignal singleThreadedInputSignal;
+  public int singleThreadedBatchSize;
 
   public MappingData() {
     super();
@@ -97,6 +97,12 @@ public class MappingMeta extends BaseStepMeta implements StepMetaInterface, HasR
   private boolean allowingMultipleInputs;
   private boolean allowingMultipleOutputs;
 
+  /**
+   * Execute the mapping on the thread of the mapping step with the single threaded engine, instead of starting a thread
+   * for every step of the mapping.
+   */
+  private boolean executingInline;
+
   /*
    * This repository object is injected from the outside at runtime or at design time. It comes from either Spoon or
    * Trans
@@ -224,6 +230,7 @@ public class MappingMeta extends BaseStepMeta implements StepMetaInterface, HasR
       String multiOutput = XMLHandler.getTagValue( stepnode, "allow_multiple_output" );
       allowingMultipleOutputs =
         Utils.isEmpty( multiOutput ) ? outputMappings.size() > 1 : "Y".equalsIgnoreCase( multiOutput );
+      executingInline = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "execute_inline" ) );
 
     } catch ( Exception e ) {
       throw new KettleXMLException( BaseMessages.getString(
@@ -285,6 +292,7 @@ public class MappingMeta extends BaseStepMeta implements StepMetaInterface, HasR
 
     retval.append( "    " ).append( XMLHandler.addTagValue( "allow_multiple_input", allowingMultipleInputs ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "allow_multiple_output", allowingMultipleOutputs ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "execute_inline", executingInline ) );
 
     return retval.toString();
   }
@@ -356,6 +364,7 @@ public class MappingMeta extends BaseStepMeta implements StepMetaInterface, HasR
       rep.getStepAttributeBoolean( id_step, 0, "allow_multiple_input", inputMappings.size() > 1 );
     allowingMultipleOutputs =
       rep.getStepAttributeBoolean( id_step, 0, "allow_multiple_output", outputMappings.size() > 1 );
+    executingInline = rep.getStepAttributeBoolean( id_step, 0, "execute_inline", false );
   }
 
   public void saveRep( Repository rep, IMetaStore metaStore, ObjectId id_transformation, ObjectId id_step ) throws KettleException {
@@ -381,6 +390,7 @@ public class MappingMeta extends BaseStepMeta implements StepMetaInterface, HasR
 
     rep.saveStepAttribute( id_transformation, id_step, 0, "allow_multiple_input", allowingMultipleInputs );
     rep.saveStepAttribute( id_transformation, id_step, 0, "allow_multiple_output", allowingMultipleOutputs );
+    rep.saveStepAttribute( id_transformation, id_step, 0, "execute_inline", executingInline );
   }
 
   public void setDefault() {
@@ -396,6 +406,7 @@ public class MappingMeta extends BaseStepMeta implements StepMetaInterface, HasR
 
     allowingMultipleInputs = false;
     allowingMultipleOutputs = false;
+    executingInline = false;
   }
 
   public void getFields( RowMetaInterface row, String origin, RowMetaInterface[] info, StepMeta nextStep,
@@ -1098,6 +1109,21 @@ public class MappingMeta extends BaseStepMeta implements StepMetaInterface, HasR
     this.allowingMultipleOutputs = allowingMultipleOutputs;
   }
 
+  /**
+   * @return true if the mapping is executed on the thread of the mapping step
+   */
+  public boolean isExecutingInline() {
+    return executingInline;
+  }
+
+  /**
+   * @param executingInline
+   *          true to execute the mapping on the thread of the mapping step
+   */
+  public void setExecutingInline( boolean executingInline ) {
+    this.executingInline = executingInline;
+  }
+
   /**
    * @return The objects referenced in the step, like a mapping, a transformation, a job, ...
    */
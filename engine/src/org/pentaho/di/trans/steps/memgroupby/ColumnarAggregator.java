@@ -0,0 +1,689 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Hash aggregation that keeps the group keys and the running aggregates in columns of primitive arrays instead of a
+ * HashMap with an object graph per group. Every key field and every aggregate is a long[] or double[] column indexed
+ * by group number, strings are replaced by codes from a {@link StringDictionary}. The groups are found through an
+ * open addressing table of group numbers.<br>
+ * <br>
+ * Supported are group fields of type Integer, Number, Date, Boolean and case-sensitive String, and the aggregates SUM,
+ * AVERAGE, MIN, MAX, COUNT_ALL, COUNT_ANY and COUNT_DISTINCT on the same types (SUM and AVERAGE on Integer, Number and
+ * Date only), see {@link #isSupported(RowMetaInterface, int[], int[], int[], RowMetaInterface)}. The results are the
+ * same as those of the generic aggregation in {@link MemoryGroupBy}.<br>
+ * <br>
+ * To support spilling, {@link #add(Object[], boolean)} can refuse rows of new groups. The hash of a group only depends
+ * on the key values, so the spill partition of a refused row ({@link #getPartition(int)}) is the same in every pass.
+ * An aggregator is not thread-safe.
+ */
+public class ColumnarAggregator {
+
+  /** The number of partitions the rows of refused groups are spread over */
+  public static final int NR_PARTITIONS = 16;
+
+  /** The maximum number of times a partition is split again, every level uses 4 more bits of the hash */
+  public static final int MAX_SPILL_DEPTH = 8;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private static final int KIND_INTEGER = 0;
+  private static final int KIND_NUMBER = 1;
+  private static final int KIND_DATE = 2;
+  private static final int KIND_BOOLEAN = 3;
+  private static final int KIND_STRING = 4;
+
+  private final int[] groupnrs;
+  private final ValueMetaInterface[] groupMetas;
+  private final int[] groupKinds;
+
+  private final int[] subjectnrs;
+  private final ValueMetaInterface[] subjectMetas;
+  private final int[] subjectKinds;
+  private final int[] aggregateTypes;
+  private final boolean[] doubleAggregates;
+  private final boolean minNullIsValued;
+
+  /** Normal storage copies of the string subject metadata, used to compare MIN/MAX strings */
+  private final ValueMetaInterface[] compareMetas;
+
+  private final StringDictionary dictionary;
+  private final DistinctValueSet distinctValues;
+
+  private final int bytesPerGroup;
+
+  private int nrGroups;
+  private int capacity;
+
+  private long[][] keys;
+  private boolean[][] keyNulls;
+  private int[] groupHashes;
+
+  /** group + 1 of the group in that slot, 0 for an empty slot */
+  private int[] slots;
+  private int mask;
+
+  private long[][] longValues;
+  private double[][] doubleValues;
+  private long[][] counts;
+  private boolean[][] nullsSeen;
+
+  // The key of the last row passed to add()
+  //
+  private final long[] rowKey;
+  private final boolean[] rowNulls;
+  private long rowHash;
+
+  /**
+   * @param inputRowMeta
+   *          the layout of the input rows
+   * @param groupnrs
+   *          the indexes of the group fields
+   * @param subjectnrs
+   *          the indexes of the subject fields of the aggregates
+   * @param aggregateTypes
+   *          the aggregate types, see MemoryGroupByMeta.TYPE_GROUP_*
+   * @param aggMeta
+   *          the layout of the aggregate results
+   * @param minNullIsValued
+   *          true if a null is the minimum of a group that contains nulls
+   * @throws KettleValueException
+   *           in case the fields or aggregates are not supported
+   */
+  public ColumnarAggregator( RowMetaInterface inputRowMeta, int[] groupnrs, int[] subjectnrs, int[] aggregateTypes,
+    RowMetaInterface aggMeta, boolean minNullIsValued ) throws KettleValueException {
+    if ( !isSupported( inputRowMeta, groupnrs, subjectnrs, aggregateTypes, aggMeta ) ) {
+      throw new KettleValueException( "The group fields or aggregates are not supported by the columnar aggregation" );
+    }
+    this.groupnrs = groupnrs;
+    this.subjectnrs = subjectnrs;
+    this.aggregateTypes = aggregateTypes;
+    this.minNullIsValued = minNullIsValued;
+    this.dictionary = new StringDictionary();
+
+    groupMetas = new ValueMetaInterface[groupnrs.length];
+    groupKinds = new int[groupnrs.length];
+    int bytes = 4;
+    for ( int k = 0; k < groupnrs.length; k++ ) {
+      groupMetas[k] = inputRowMeta.getValueMeta( groupnrs[k] );
+      groupKinds[k] = getKind( groupMetas[k] );
+      bytes += 9;
+    }
+
+    subjectMetas = new ValueMetaInterface[subjectnrs.length];
+    subjectKinds = new int[subjectnrs.length];
+    doubleAggregates = new boolean[subjectnrs.length];
+    compareMetas = new ValueMetaInterface[subjectnrs.length];
+    boolean distinct = false;
+    for ( int i = 0; i < subjectnrs.length; i++ ) {
+      subjectMetas[i] = inputRowMeta.getValueMeta( subjectnrs[i] );
+      subjectKinds[i] = getKind( subjectMetas[i] );
+      switch ( aggregateTypes[i] ) {
+        case MemoryGroupByMeta.TYPE_GROUP_SUM:
+        case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+          doubleAggregates[i] = aggMeta.getValueMeta( i ).getType() == ValueMetaInterface.TYPE_NUMBER;
+          bytes += 16;
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MIN:
+        case MemoryGroupByMeta.TYPE_GROUP_MAX:
+          doubleAggregates[i] = subjectKinds[i] == KIND_NUMBER;
+          if ( subjectMetas[i].isString() ) {
+            compareMetas[i] = subjectMetas[i].clone();
+            compareMetas[i].setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+          }
+          bytes += 17;
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT:
+          distinct = true;
+          bytes += 8;
+          break;
+        default:
+          bytes += 8;
+          break;
+      }
+    }
+    bytesPerGroup = bytes;
+    distinctValues = distinct ? new DistinctValueSet() : null;
+
+    capacity = INITIAL_CAPACITY;
+    keys = new long[groupnrs.length][capacity];
+    keyNulls = new boolean[groupnrs.length][capacity];
+    groupHashes = new int[capacity];
+    slots = new int[capacity * 2];
+    mask = slots.length - 1;
+
+    longValues = new long[subjectnrs.length][];
+    doubleValues = new double[subjectnrs.length][];
+    counts = new long[subjectnrs.length][];
+    nullsSeen = new boolean[subjectnrs.length][];
+    for ( int i = 0; i < subjectnrs.length; i++ ) {
+      counts[i] = new long[capacity];
+      switch ( aggregateTypes[i] ) {
+        case MemoryGroupByMeta.TYPE_GROUP_MIN:
+          nullsSeen[i] = new boolean[capacity];
+          // fall through
+        case MemoryGroupByMeta.TYPE_GROUP_SUM:
+        case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+        case MemoryGroupByMeta.TYPE_GROUP_MAX:
+          if ( doubleAggregates[i] ) {
+            doubleValues[i] = new double[capacity];
+          } else {
+            longValues[i] = new long[capacity];
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    rowKey = new long[groupnrs.length];
+    rowNulls = new boolean[groupnrs.length];
+  }
+
+  /**
+   * @return true if the columnar aggregation can handle the given group fields and aggregates
+   */
+  public static boolean isSupported( RowMetaInterface inputRowMeta, int[] groupnrs, int[] subjectnrs,
+    int[] aggregateTypes, RowMetaInterface aggMeta ) {
+    for ( int groupnr : groupnrs ) {
+      if ( getKind( inputRowMeta.getValueMeta( groupnr ) ) < 0 ) {
+        return false;
+      }
+    }
+    for ( int i = 0; i < subjectnrs.length; i++ ) {
+      ValueMetaInterface subjMeta = inputRowMeta.getValueMeta( subjectnrs[i] );
+      int kind = getKind( subjMeta );
+      switch ( aggregateTypes[i] ) {
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY:
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT:
+          if ( kind < 0 ) {
+            return false;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_SUM:
+        case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+          int aggType = aggMeta.getValueMeta( i ).getType();
+          if ( kind != KIND_INTEGER && kind != KIND_NUMBER && kind != KIND_DATE ) {
+            return false;
+          }
+          if ( aggType != ValueMetaInterface.TYPE_NUMBER
+            && !( aggType == ValueMetaInterface.TYPE_INTEGER && kind == KIND_INTEGER ) ) {
+            return false;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MIN:
+        case MemoryGroupByMeta.TYPE_GROUP_MAX:
+          // Strings are compared with their own metadata so case insensitive ones are fine here
+          //
+          if ( subjMeta.isSortedDescending()
+            || ( kind < 0 && !( subjMeta.isString() && subjMeta.isCollatorDisabled() ) ) ) {
+            return false;
+          }
+          break;
+        default:
+          return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the kind of column used for the value or -1 if it can't be stored in a column by value
+   */
+  private static int getKind( ValueMetaInterface valueMeta ) {
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        return KIND_INTEGER;
+      case ValueMetaInterface.TYPE_NUMBER:
+        return KIND_NUMBER;
+      case ValueMetaInterface.TYPE_DATE:
+        return KIND_DATE;
+      case ValueMetaInterface.TYPE_BOOLEAN:
+        return KIND_BOOLEAN;
+      case ValueMetaInterface.TYPE_STRING:
+        return valueMeta.isCollatorDisabled() && !valueMeta.isCaseInsensitive() ? KIND_STRING : -1;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Aggregate a row in its group.
+   *
+   * @param row
+   *          the input row
+   * @param newGroupsAllowed
+   *          false if the row should be refused when its group isn't in the aggregator yet
+   * @return true if the row was aggregated, false if it was refused
+   * @throws KettleValueException
+   *           in case of a conversion error
+   */
+  public boolean add( Object[] row, boolean newGroupsAllowed ) throws KettleValueException {
+    if ( !extractKey( row, newGroupsAllowed ) ) {
+      return false;
+    }
+
+    int slot = findSlot();
+    int group = slots[slot] - 1;
+    if ( group < 0 ) {
+      if ( !newGroupsAllowed ) {
+        return false;
+      }
+      group = addGroup( slot );
+    }
+
+    aggregate( group, row );
+    return true;
+  }
+
+  /**
+   * @param depth
+   *          the number of times the rows have been partitioned before
+   * @return the spill partition of the row last passed to {@link #add(Object[], boolean)}
+   */
+  public int getPartition( int depth ) {
+    return (int) ( ( rowHash >>> ( 32 + 4 * depth ) ) & ( NR_PARTITIONS - 1 ) );
+  }
+
+  /**
+   * Convert the key of the row into codes and calculate its hash. The hash uses the string values, not their codes.
+   *
+   * @return false if a string isn't in the dictionary and it wasn't added, so the group can't exist
+   */
+  private boolean extractKey( Object[] row, boolean addStrings ) throws KettleValueException {
+    boolean known = true;
+    long hash = 1;
+    for ( int k = 0; k < groupnrs.length; k++ ) {
+      ValueMetaInterface valueMeta = groupMetas[k];
+      Object data = row[groupnrs[k]];
+      long valueHash;
+      if ( valueMeta.isNull( data ) ) {
+        rowNulls[k] = true;
+        rowKey[k] = 0L;
+        valueHash = 0x5BD1E995L;
+      } else {
+        rowNulls[k] = false;
+        if ( groupKinds[k] == KIND_STRING ) {
+          String string = valueMeta.getString( data );
+          int code = addStrings ? dictionary.add( string ) : dictionary.lookup( string );
+          known &= code >= 0;
+          rowKey[k] = code;
+          valueHash = string.hashCode();
+        } else {
+          rowKey[k] = toCode( groupKinds[k], valueMeta, data );
+          valueHash = rowKey[k];
+        }
+      }
+      hash = hash * 31 + mix( valueHash );
+    }
+    rowHash = mix( hash );
+    return known;
+  }
+
+  private int findSlot() {
+    int hash = (int) rowHash;
+    int slot = hash & mask;
+    while ( slots[slot] != 0 ) {
+      int group = slots[slot] - 1;
+      if ( groupHashes[group] == hash && keyEquals( group ) ) {
+        return slot;
+      }
+      slot = ( slot + 1 ) & mask;
+    }
+    return slot;
+  }
+
+  private boolean keyEquals( int group ) {
+    for ( int k = 0; k < rowKey.length; k++ ) {
+      if ( keyNulls[k][group] != rowNulls[k] || keys[k][group] != rowKey[k] ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int addGroup( int slot ) {
+    if ( nrGroups == capacity ) {
+      grow();
+      slot = findSlot();
+    }
+    int group = nrGroups++;
+    for ( int k = 0; k < rowKey.length; k++ ) {
+      keys[k][group] = rowKey[k];
+      keyNulls[k][group] = rowNulls[k];
+    }
+    groupHashes[group] = (int) rowHash;
+    slots[slot] = group + 1;
+    return group;
+  }
+
+  private void grow() {
+    capacity *= 2;
+    for ( int k = 0; k < keys.length; k++ ) {
+      keys[k] = Arrays.copyOf( keys[k], capacity );
+      keyNulls[k] = Arrays.copyOf( keyNulls[k], capacity );
+    }
+    groupHashes = Arrays.copyOf( groupHashes, capacity );
+    for ( int i = 0; i < counts.length; i++ ) {
+      counts[i] = Arrays.copyOf( counts[i], capacity );
+      if ( longValues[i] != null ) {
+        longValues[i] = Arrays.copyOf( longValues[i], capacity );
+      }
+      if ( doubleValues[i] != null ) {
+        doubleValues[i] = Arrays.copyOf( doubleValues[i], capacity );
+      }
+      if ( nullsSeen[i] != null ) {
+        nullsSeen[i] = Arrays.copyOf( nullsSeen[i], capacity );
+      }
+    }
+
+    slots = new int[capacity * 2];
+    mask = slots.length - 1;
+    for ( int group = 0; group < nrGroups; group++ ) {
+      int slot = groupHashes[group] & mask;
+      while ( slots[slot] != 0 ) {
+        slot = ( slot + 1 ) & mask;
+      }
+      slots[slot] = group + 1;
+    }
+  }
+
+  private void aggregate( int group, Object[] row ) throws KettleValueException {
+    for ( int i = 0; i < subjectnrs.length; i++ ) {
+      ValueMetaInterface subjMeta = subjectMetas[i];
+      Object subj = row[subjectnrs[i]];
+
+      switch ( aggregateTypes[i] ) {
+        case MemoryGroupByMeta.TYPE_GROUP_SUM:
+        case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+          if ( !subjMeta.isNull( subj ) ) {
+            if ( doubleAggregates[i] ) {
+              doubleValues[i][group] += subjMeta.getNumber( subj ).doubleValue();
+            } else {
+              longValues[i][group] += subjMeta.getInteger( subj ).longValue();
+            }
+            counts[i][group]++;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL:
+          if ( !subjMeta.isNull( subj ) ) {
+            counts[i][group]++;
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY:
+          counts[i][group]++;
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT:
+          if ( !subjMeta.isNull( subj ) ) {
+            long code;
+            if ( subjectKinds[i] == KIND_STRING ) {
+              code = dictionary.add( subjMeta.getString( subj ) );
+            } else if ( subjectKinds[i] == KIND_NUMBER ) {
+              code = Double.doubleToLongBits( subjMeta.getNumber( subj ).doubleValue() );
+            } else {
+              code = toCode( subjectKinds[i], subjMeta, subj );
+            }
+            if ( distinctValues.add( group, i, code ) ) {
+              counts[i][group]++;
+            }
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MIN:
+          if ( subjMeta.isNull( subj ) ) {
+            if ( minNullIsValued ) {
+              nullsSeen[i][group] = true;
+            }
+          } else {
+            updateExtreme( i, group, subjMeta, subj, -1 );
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MAX:
+          if ( !subjMeta.isNull( subj ) ) {
+            updateExtreme( i, group, subjMeta, subj, 1 );
+          }
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  /**
+   * Keep the smallest (direction -1) or largest (direction 1) value. Like the generic aggregation, the first of equal
+   * values is kept.
+   */
+  private void updateExtreme( int i, int group, ValueMetaInterface subjMeta, Object subj, int direction )
+    throws KettleValueException {
+    boolean first = counts[i][group] == 0;
+    counts[i][group]++;
+
+    switch ( subjectKinds[i] ) {
+      case KIND_NUMBER:
+        double number = subjMeta.getNumber( subj ).doubleValue();
+        if ( first || Double.compare( number, doubleValues[i][group] ) * direction > 0 ) {
+          doubleValues[i][group] = number;
+        }
+        break;
+      case KIND_INTEGER:
+      case KIND_DATE:
+      case KIND_BOOLEAN:
+        long value = toCode( subjectKinds[i], subjMeta, subj );
+        if ( first || Long.compare( value, longValues[i][group] ) * direction > 0 ) {
+          longValues[i][group] = value;
+        }
+        break;
+      default:
+        String string = subjMeta.getString( subj );
+        if ( first
+          || compareMetas[i].compare( string, dictionary.get( (int) longValues[i][group] ) ) * direction > 0 ) {
+          longValues[i][group] = dictionary.add( string );
+        }
+        break;
+    }
+  }
+
+  private static long toCode( int kind, ValueMetaInterface valueMeta, Object data ) throws KettleValueException {
+    switch ( kind ) {
+      case KIND_INTEGER:
+        return valueMeta.getInteger( data ).longValue();
+      case KIND_NUMBER:
+        return Double.doubleToLongBits( valueMeta.getNumber( data ).doubleValue() );
+      case KIND_DATE:
+        return valueMeta.getDate( data ).getTime();
+      case KIND_BOOLEAN:
+        return valueMeta.getBoolean( data ).booleanValue() ? 1L : 0L;
+      default:
+        throw new KettleValueException( valueMeta.toStringMeta() + " : can't be stored in a column" );
+    }
+  }
+
+  private Object toObject( int kind, long code ) {
+    switch ( kind ) {
+      case KIND_INTEGER:
+        return Long.valueOf( code );
+      case KIND_NUMBER:
+        return Double.valueOf( Double.longBitsToDouble( code ) );
+      case KIND_DATE:
+        return new Date( code );
+      case KIND_BOOLEAN:
+        return Boolean.valueOf( code != 0L );
+      default:
+        return dictionary.get( (int) code );
+    }
+  }
+
+  /**
+   * @return the number of groups
+   */
+  public int size() {
+    return nrGroups;
+  }
+
+  /**
+   * @return the values of the group fields of the given group, in normal storage
+   */
+  public Object[] getGroupData( int group ) {
+    Object[] groupData = new Object[groupnrs.length];
+    for ( int k = 0; k < groupnrs.length; k++ ) {
+      groupData[k] = keyNulls[k][group] ? null : toObject( groupKinds[k], keys[k][group] );
+    }
+    return groupData;
+  }
+
+  /**
+   * @return the results of the aggregates of the given group, in normal storage. Empty aggregates are null, counts
+   *         are 0.
+   */
+  public Object[] getAggregateResult( int group ) {
+    Object[] result = new Object[subjectnrs.length];
+    for ( int i = 0; i < subjectnrs.length; i++ ) {
+      long count = counts[i][group];
+      switch ( aggregateTypes[i] ) {
+        case MemoryGroupByMeta.TYPE_GROUP_SUM:
+          if ( count > 0 ) {
+            result[i] = doubleAggregates[i]
+              ? (Object) Double.valueOf( doubleValues[i][group] ) : (Object) Long.valueOf( longValues[i][group] );
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_AVERAGE:
+          if ( count > 0 ) {
+            result[i] = doubleAggregates[i]
+              ? (Object) Double.valueOf( doubleValues[i][group] / count )
+              : (Object) Long.valueOf( longValues[i][group] / count );
+          }
+          break;
+        case MemoryGroupByMeta.TYPE_GROUP_MIN:
+        case MemoryGroupByMeta.TYPE_GROUP_MAX:
+          if ( count > 0 && ( nullsSeen[i] == null || !nullsSeen[i][group] ) ) {
+            if ( doubleAggregates[i] ) {
+              result[i] = Double.valueOf( doubleValues[i][group] );
+            } else {
+              result[i] = toObject( subjectKinds[i], longValues[i][group] );
+            }
+          }
+          break;
+        default:
+          result[i] = Long.valueOf( count );
+          break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return an estimate of the memory used by the aggregator in bytes
+   */
+  public long getMemoryUsed() {
+    long memory = (long) capacity * bytesPerGroup + 4L * slots.length + dictionary.getMemoryUsed();
+    if ( distinctValues != null ) {
+      memory += distinctValues.getMemoryUsed();
+    }
+    return memory;
+  }
+
+  /**
+   * Murmur3 64-bit finalizer
+   */
+  private static long mix( long hash ) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  /**
+   * The distinct values seen per group and aggregate: an open addressing set of (group, aggregate, value code).
+   */
+  private static class DistinctValueSet {
+    private int[] groups;
+    private int[] aggregates;
+    private long[] values;
+    private int size;
+    private int mask;
+
+    DistinctValueSet() {
+      allocate( INITIAL_CAPACITY * 2 );
+    }
+
+    private void allocate( int capacity ) {
+      groups = new int[capacity];
+      aggregates = new int[capacity];
+      values = new long[capacity];
+      mask = capacity - 1;
+    }
+
+    /**
+     * @return true if the value wasn't in the set yet
+     */
+    boolean add( int group, int aggregate, long value ) {
+      int slot = findSlot( group, aggregate, value );
+      if ( groups[slot] != 0 ) {
+        return false;
+      }
+      groups[slot] = group + 1;
+      aggregates[slot] = aggregate;
+      values[slot] = value;
+      size++;
+
+      if ( size > groups.length / 2 ) {
+        int[] oldGroups = groups;
+        int[] oldAggregates = aggregates;
+        long[] oldValues = values;
+        allocate( groups.length * 2 );
+        for ( int i = 0; i < oldGroups.length; i++ ) {
+          if ( oldGroups[i] != 0 ) {
+            int newSlot = findSlot( oldGroups[i] - 1, oldAggregates[i], oldValues[i] );
+            groups[newSlot] = oldGroups[i];
+            aggregates[newSlot] = oldAggregates[i];
+            values[newSlot] = oldValues[i];
+          }
+        }
+      }
+      return true;
+    }
+
+    private int findSlot( int group, int aggregate, long value ) {
+      int slot = (int) mix( value * 31 + group * 0x9E3779B97F4A7C15L + aggregate ) & mask;
+      while ( groups[slot] != 0
+        && ( groups[slot] != group + 1 || aggregates[slot] != aggregate || values[slot] != value ) ) {
+        slot = ( slot + 1 ) & mask;
+      }
+      return slot;
+    }
+
+    long getMemoryUsed() {
+      return 16L * groups.length;
+    }
+  }
+}
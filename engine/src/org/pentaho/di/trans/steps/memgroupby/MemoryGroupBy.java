@@ -22,6 +22,9 @@
 
 package org.pentaho.di.trans.steps.memgroupby;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -33,6 +36,7 @@ import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.logging.Metrics;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -50,6 +54,7 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.utils.PartitionedSpillFiles;
 import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByData.HashEntry;
 
 /**
@@ -169,6 +174,15 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
       data.groupAggMeta = new RowMeta();
       data.groupAggMeta.addRowMeta( data.groupMeta );
       data.groupAggMeta.addRowMeta( data.aggMeta );
+
+      if ( meta.isColumnarAggregation() && r != null ) {
+        if ( ColumnarAggregator.isSupported(
+          data.inputRowMeta, data.groupnrs, data.subjectnrs, meta.getAggregateType(), data.aggMeta ) ) {
+          data.aggregator = newColumnarAggregator();
+        } else {
+          logBasic( BaseMessages.getString( PKG, "MemoryGroupBy.Log.ColumnarAggregationNotSupported" ) );
+        }
+      }
     }
 
     // Here is where we start to do the real work...
@@ -185,7 +199,11 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
       data.newBatch = false;
     }
 
-    addToAggregate( r );
+    if ( data.aggregator != null ) {
+      addToColumnarAggregate( r );
+    } else {
+      addToAggregate( r );
+    }
 
     if ( checkFeedback( getLinesRead() ) ) {
       if ( log.isBasic() ) {
@@ -197,6 +215,13 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
   }
 
   private void handleLastOfGroup() throws KettleException {
+    if ( data.aggregator != null ) {
+      if ( finishColumnarAggregation() == 0 ) {
+        putEmptyAggregateRow();
+      }
+      return;
+    }
+
     // Dump the content of the map...
     //
     for ( HashEntry entry : data.map.keySet() ) {
@@ -214,10 +239,16 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
       putRow( data.outputRowMeta, outputRowData );
     }
 
+    if ( data.map.isEmpty() ) {
+      putEmptyAggregateRow();
+    }
+  }
+
+  private void putEmptyAggregateRow() throws KettleException {
     // What if we always need to give back one row?
     // This means we give back 0 for count all, count distinct, null for everything else
     //
-    if ( data.map.isEmpty() && meta.isAlwaysGivingBackOneRow() ) {
+    if ( meta.isAlwaysGivingBackOneRow() ) {
       Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
       int index = 0;
       for ( int i = 0; i < data.groupMeta.size(); i++ ) {
@@ -236,6 +267,125 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     }
   }
 
+  private ColumnarAggregator newColumnarAggregator() throws KettleValueException {
+    return new ColumnarAggregator(
+      data.inputRowMeta, data.groupnrs, data.subjectnrs, meta.getAggregateType(), data.aggMeta, minNullIsValued );
+  }
+
+  /**
+   * Aggregate a row in the columnar aggregator. Once the memory budget is exceeded no new groups are admitted in the
+   * current pass: the rows of those groups are written to a partition file on disk, to be aggregated in a later pass.
+   */
+  private void addToColumnarAggregate( Object[] r ) throws KettleException {
+    // The memory used only grows, once over budget no new groups are admitted until the end of the pass.
+    // Every pass admits at least one group so that splitting the partitions always makes progress.
+    //
+    boolean newGroupsAllowed = data.memoryBudget <= 0 || data.spillDepth >= ColumnarAggregator.MAX_SPILL_DEPTH
+      || data.aggregator.size() == 0 || data.aggregator.getMemoryUsed() <= data.memoryBudget;
+    if ( data.aggregator.add( r, newGroupsAllowed ) ) {
+      return;
+    }
+
+    if ( data.spill == null ) {
+      startSpilling();
+    }
+
+    DataOutputStream outputStream = data.spill.getOutputStream( data.aggregator.getPartition( data.spillDepth ) );
+    try {
+      outputStream.writeBoolean( true );
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to write a row to the spill file", e );
+    }
+    data.inputRowMeta.writeData( outputStream, r );
+    data.spilledRows++;
+  }
+
+  private void startSpilling() throws KettleException {
+    if ( log.isBasic() ) {
+      logBasic( BaseMessages.getString( PKG, "MemoryGroupBy.Log.SpillingGroups", data.aggregator.getMemoryUsed(),
+        data.memoryBudget, data.aggregator.size(), ColumnarAggregator.NR_PARTITIONS ) );
+    }
+    data.spill = new PartitionedSpillFiles(
+      "memgroupby", ColumnarAggregator.NR_PARTITIONS, getSpillDirectory(), this );
+    data.spilledRows = 0;
+    log.snap( Metrics.METRIC_STEP_MEMORY_GROUP_BY_SPILLS );
+  }
+
+  private String getSpillDirectory() {
+    String directory = meta.getSpillDirectory();
+    return environmentSubstitute( Utils.isEmpty( directory ) ? "%%java.io.tmpdir%%" : directory );
+  }
+
+  /**
+   * Pass the groups of the columnar aggregator on, then aggregate the rows spilled during this pass one partition at
+   * a time. A partition that doesn't fit in the memory budget either is split again on the next bits of the hash.
+   *
+   * @return the number of groups that were passed on
+   */
+  private long finishColumnarAggregation() throws KettleException {
+    ColumnarAggregator aggregator = data.aggregator;
+    log.snap( Metrics.METRIC_STEP_MEMORY_GROUP_BY_PEAK_MEMORY, aggregator.getMemoryUsed() );
+
+    long nrGroups = aggregator.size();
+    for ( int group = 0; group < aggregator.size(); group++ ) {
+      Object[] groupData = aggregator.getGroupData( group );
+      Object[] aggregateResult = aggregator.getAggregateResult( group );
+
+      Object[] outputRowData = RowDataUtil.allocateRowData( data.outputRowMeta.size() );
+      int index = 0;
+      for ( int i = 0; i < groupData.length; i++ ) {
+        outputRowData[index++] = groupData[i];
+      }
+      for ( int i = 0; i < aggregateResult.length; i++ ) {
+        Object ag = aggregateResult[i];
+        if ( ag == null && allNullsAreZero ) {
+          ag = ValueDataUtil.getZeroForValueMetaType( data.aggMeta.getValueMeta( i ) );
+        }
+        outputRowData[index++] = ag;
+      }
+      putRow( data.outputRowMeta, outputRowData );
+    }
+
+    PartitionedSpillFiles spill = data.spill;
+    if ( spill == null ) {
+      return nrGroups;
+    }
+    data.spill = null;
+    int depth = data.spillDepth;
+    log.snap( Metrics.METRIC_STEP_MEMORY_GROUP_BY_SPILLED_ROWS, "depth " + depth, data.spilledRows );
+
+    try {
+      spill.closeOutputStreams();
+      for ( int partition = 0; partition < spill.getNrPartitions() && !isStopped(); partition++ ) {
+        data.aggregator = newColumnarAggregator();
+        data.spillDepth = depth + 1;
+        DataInputStream inputStream = spill.openInputStream( partition );
+        try {
+          while ( inputStream.readBoolean() ) {
+            addToColumnarAggregate( data.inputRowMeta.readData( inputStream ) );
+          }
+        } catch ( IOException e ) {
+          throw new KettleException( "Unable to read memory group by spill partition " + partition, e );
+        } finally {
+          try {
+            inputStream.close();
+          } catch ( IOException e ) {
+            // Ignore, the files are removed anyway
+          }
+        }
+        if ( log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "MemoryGroupBy.Log.ProcessingPartition", partition + 1,
+            spill.getNrPartitions(), depth + 1, data.aggregator.size() ) );
+        }
+        nrGroups += finishColumnarAggregation();
+      }
+    } finally {
+      spill.delete();
+      data.spillDepth = depth;
+    }
+    return nrGroups;
+  }
+
   /**
    * Used for junits in MemoryGroupByAggregationNullsTest
    *
@@ -557,6 +707,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
 
     if ( super.init( smi, sdi ) ) {
       data.map = new HashMap<HashEntry, Aggregate>( 5000 );
+      data.memoryBudget = Const.toLong( environmentSubstitute( meta.getMemoryBudget() ), 0L ) * 1024 * 1024;
       return true;
     }
     return false;
@@ -577,6 +728,9 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     // Clear the complete cache...
     //
     data.map.clear();
+    if ( data.aggregator != null ) {
+      data.aggregator = newColumnarAggregator();
+    }
 
     data.newBatch = true;
   }
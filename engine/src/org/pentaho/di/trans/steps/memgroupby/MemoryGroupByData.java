@@ -29,6 +29,7 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
+import org.pentaho.di.trans.step.utils.PartitionedSpillFiles;
 
 /**
  * @author Matt
@@ -99,6 +100,20 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
 
   public boolean newBatch;
 
+  /** The columnar aggregation, null if the generic HashMap aggregation is used */
+  public ColumnarAggregator aggregator;
+
+  /** The maximum memory of the columnar aggregation in bytes before rows of new groups are spilled, 0 for no limit */
+  public long memoryBudget;
+
+  /** The partition files for the rows of the groups that didn't fit in the current pass, null if not spilling */
+  public PartitionedSpillFiles spill;
+
+  /** The number of times the rows of the current pass have been partitioned before */
+  public int spillDepth;
+
+  public long spilledRows;
+
   public MemoryGroupByData() {
     super();
 
@@ -113,5 +128,10 @@ public class MemoryGroupByData extends BaseStepData implements StepDataInterface
    */
   public void clear() {
     map = new HashMap<MemoryGroupByData.HashEntry, Aggregate>();
+    aggregator = null;
+    if ( spill != null ) {
+      spill.delete();
+      spill = null;
+    }
   }
 }
@@ -145,6 +145,21 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
   /** Flag to indicate that we always give back one row. Defaults to true for existing transformations. */
   private boolean alwaysGivingBackOneRow;
 
+  /** Flag to aggregate in primitive columns instead of a map of objects, when the fields and aggregates allow it */
+  @Injection( name = "COLUMNAR_AGGREGATION" )
+  private boolean columnarAggregation;
+
+  /**
+   * The maximum memory of the columnar aggregation in MB before the rows of new groups are spilled to disk, empty or 0
+   * for no limit
+   */
+  @Injection( name = "MEMORY_BUDGET" )
+  private String memoryBudget;
+
+  /** The directory to write the spill files to once the memory budget is exceeded */
+  @Injection( name = "SPILL_DIRECTORY" )
+  private String spillDirectory;
+
   public MemoryGroupByMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -288,6 +303,9 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
       } else {
         alwaysGivingBackOneRow = "Y".equalsIgnoreCase( giveBackRow );
       }
+      columnarAggregation = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "columnar_aggregation" ) );
+      memoryBudget = XMLHandler.getTagValue( stepnode, "memory_budget" );
+      spillDirectory = XMLHandler.getTagValue( stepnode, "spill_directory" );
     } catch ( Exception e ) {
       throw new KettleXMLException( BaseMessages.getString(
         PKG, "MemoryGroupByMeta.Exception.UnableToLoadStepInfoFromXML" ), e );
@@ -328,6 +346,9 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
     int nrfields = 0;
 
     allocate( sizegroup, nrfields );
+    columnarAggregation = false;
+    memoryBudget = null;
+    spillDirectory = "%%java.io.tmpdir%%";
   }
 
   @Override
@@ -439,6 +460,9 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
     StringBuilder retval = new StringBuilder( 500 );
 
     retval.append( "      " ).append( XMLHandler.addTagValue( "give_back_row", alwaysGivingBackOneRow ) );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "columnar_aggregation", columnarAggregation ) );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "memory_budget", memoryBudget ) );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "spill_directory", spillDirectory ) );
 
     retval.append( "      <group>" ).append( Const.CR );
     for ( int i = 0; i < groupField.length; i++ ) {
@@ -488,6 +512,9 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
       }
 
       alwaysGivingBackOneRow = rep.getStepAttributeBoolean( id_step, 0, "give_back_row", hasNumberOfValues );
+      columnarAggregation = rep.getStepAttributeBoolean( id_step, "columnar_aggregation" );
+      memoryBudget = rep.getStepAttributeString( id_step, "memory_budget" );
+      spillDirectory = rep.getStepAttributeString( id_step, "spill_directory" );
     } catch ( Exception e ) {
       throw new KettleException( BaseMessages.getString(
         PKG, "MemoryGroupByMeta.Exception.UnexpectedErrorInReadingStepInfoFromRepository" ), e );
@@ -498,6 +525,9 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
   public void saveRep( Repository rep, IMetaStore metaStore, ObjectId id_transformation, ObjectId id_step ) throws KettleException {
     try {
       rep.saveStepAttribute( id_transformation, id_step, "give_back_row", alwaysGivingBackOneRow );
+      rep.saveStepAttribute( id_transformation, id_step, "columnar_aggregation", columnarAggregation );
+      rep.saveStepAttribute( id_transformation, id_step, "memory_budget", memoryBudget );
+      rep.saveStepAttribute( id_transformation, id_step, "spill_directory", spillDirectory );
 
       for ( int i = 0; i < groupField.length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, "group_name", groupField[i] );
@@ -560,4 +590,49 @@ public class MemoryGroupByMeta extends BaseStepMeta implements StepMetaInterface
   public void setAlwaysGivingBackOneRow( boolean alwaysGivingBackOneRow ) {
     this.alwaysGivingBackOneRow = alwaysGivingBackOneRow;
   }
+
+  /**
+   * @return true if the groups are aggregated in primitive columns when the fields and aggregates allow it
+   */
+  public boolean isColumnarAggregation() {
+    return columnarAggregation;
+  }
+
+  /**
+   * @param columnarAggregation
+   *          true to aggregate the groups in primitive columns when the fields and aggregates allow it
+   */
+  public void setColumnarAggregation( boolean columnarAggregation ) {
+    this.columnarAggregation = columnarAggregation;
+  }
+
+  /**
+   * @return the maximum memory of the columnar aggregation in MB before rows are spilled to disk, empty for no limit
+   */
+  public String getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * @param memoryBudget
+   *          the maximum memory of the columnar aggregation in MB before rows are spilled to disk, empty for no limit
+   */
+  public void setMemoryBudget( String memoryBudget ) {
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * @return the directory to write the spill files to, empty for the system temporary directory
+   */
+  public String getSpillDirectory() {
+    return spillDirectory;
+  }
+
+  /**
+   * @param spillDirectory
+   *          the directory to write the spill files to, empty for the system temporary directory
+   */
+  public void setSpillDirectory( String spillDirectory ) {
+    this.spillDirectory = spillDirectory;
+  }
 }
@@ -0,0 +1,127 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import java.util.Arrays;
+
+/**
+ * Maps strings to dense int codes (0, 1, 2, ...) so that the columnar aggregation can store string keys and values in
+ * primitive arrays. Every distinct string is kept once; the lookup table is an open addressing int[] of codes, so no
+ * entry objects or boxed integers are allocated. Strings are compared case-sensitively. A dictionary is not
+ * thread-safe.
+ */
+public class StringDictionary {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  private String[] strings;
+  private int size;
+
+  /** code + 1 of the string in that slot, 0 for an empty slot */
+  private int[] slots;
+  private int mask;
+
+  private long stringBytes;
+
+  public StringDictionary() {
+    strings = new String[INITIAL_CAPACITY];
+    slots = new int[INITIAL_CAPACITY * 2];
+    mask = slots.length - 1;
+  }
+
+  /**
+   * @return the code of the given string or -1 if it isn't in the dictionary
+   */
+  public int lookup( String string ) {
+    return slots[findSlot( string )] - 1;
+  }
+
+  /**
+   * Add a string to the dictionary if it isn't in there yet.
+   *
+   * @return the code of the string
+   */
+  public int add( String string ) {
+    int slot = findSlot( string );
+    if ( slots[slot] != 0 ) {
+      return slots[slot] - 1;
+    }
+
+    if ( size == strings.length ) {
+      strings = Arrays.copyOf( strings, size * 2 );
+      rehash( slots.length * 2 );
+      slot = findSlot( string );
+    }
+    int code = size++;
+    strings[code] = string;
+    slots[slot] = code + 1;
+    stringBytes += 40 + 2L * string.length();
+    return code;
+  }
+
+  /**
+   * @return the string with the given code
+   */
+  public String get( int code ) {
+    return strings[code];
+  }
+
+  /**
+   * @return the number of strings in the dictionary
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return an estimate of the memory used by the dictionary in bytes
+   */
+  public long getMemoryUsed() {
+    return 4L * slots.length + 8L * strings.length + stringBytes;
+  }
+
+  private int findSlot( String string ) {
+    int slot = spread( string.hashCode() ) & mask;
+    while ( slots[slot] != 0 && !strings[slots[slot] - 1].equals( string ) ) {
+      slot = ( slot + 1 ) & mask;
+    }
+    return slot;
+  }
+
+  private void rehash( int capacity ) {
+    slots = new int[capacity];
+    mask = capacity - 1;
+    for ( int code = 0; code < size; code++ ) {
+      int slot = spread( strings[code].hashCode() ) & mask;
+      while ( slots[slot] != 0 ) {
+        slot = ( slot + 1 ) & mask;
+      }
+      slots[slot] = code + 1;
+    }
+  }
+
+  private static int spread( int hash ) {
+    hash *= 0x9E3779B9;
+    return hash ^ ( hash >>> 16 );
+  }
+}
@@ -92,6 +92,9 @@ public class ScriptValuesMetaMod extends BaseStepMeta implements StepMetaInterfa
   private boolean compatible;
   private String optimizationLevel;
 
+  /** Compile the scripts once at the highest optimization level, cache them and bind values as JavaScript primitives */
+  private boolean compiledMode;
+
   public ScriptValuesMetaMod() {
     super(); // allocate BaseStepMeta
     compatible = true;
@@ -230,6 +233,7 @@ public class ScriptValuesMetaMod extends BaseStepMeta implements StepMetaInterfa
       String script = XMLHandler.getTagValue( stepnode, "script" );
       String strCompatible = XMLHandler.getTagValue( stepnode, "compatible" );
       optimizationLevel = XMLHandler.getTagValue( stepnode, "optimizationLevel" );
+      compiledMode = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "compiledMode" ) );
 
       if ( strCompatible == null ) {
         compatible = true;
@@ -301,6 +305,7 @@ public class ScriptValuesMetaMod extends BaseStepMeta implements StepMetaInterfa
 
     compatible = false;
     optimizationLevel = OPTIMIZATION_LEVEL_DEFAULT;
+    compiledMode = false;
   }
 
   public void getFields( RowMetaInterface row, String originStepname, RowMetaInterface[] info, StepMeta nextStep,
@@ -362,6 +367,7 @@ public class ScriptValuesMetaMod extends BaseStepMeta implements StepMetaInterfa
 
     retval.append( "    " ).append( XMLHandler.addTagValue( "compatible", compatible ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "optimizationLevel", optimizationLevel ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "compiledMode", compiledMode ) );
 
     retval.append( "    <jsScripts>" );
     for ( int i = 0; i < jsScripts.length; i++ ) {
@@ -396,6 +402,7 @@ public class ScriptValuesMetaMod extends BaseStepMeta implements StepMetaInterfa
       String script = rep.getStepAttributeString( id_step, "script" );
       compatible = rep.getStepAttributeBoolean( id_step, 0, "compatible", true );
       optimizationLevel = rep.getStepAttributeString( id_step, 0, "optimizationLevel" );
+      compiledMode = rep.getStepAttributeBoolean( id_step, 0, "compiledMode", false );
 
       // When in compatibility mode, we load the script, not the other tabs...
       //
@@ -434,6 +441,7 @@ public class ScriptValuesMetaMod extends BaseStepMeta implements StepMetaInterfa
     try {
       rep.saveStepAttribute( id_transformation, id_step, 0, "compatible", compatible );
       rep.saveStepAttribute( id_transformation, id_step, 0, "optimizationLevel", optimizationLevel );
+      rep.saveStepAttribute( id_transformation, id_step, 0, "compiledMode", compiledMode );
 
       for ( int i = 0; i < jsScripts.length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, JSSCRIPT_TAG_NAME, jsScripts[i].getScriptName() );
@@ -967,4 +975,20 @@ public class ScriptValuesMetaMod extends BaseStepMeta implements StepMetaInterfa
   public String getOptimizationLevel() {
     return this.optimizationLevel;
   }
+
+  /**
+   * @return true if the scripts are compiled once at the optimization level of the step, shared between the step
+   *         copies and if the values are bound as JavaScript primitives where possible
+   */
+  public boolean isCompiledMode() {
+    return compiledMode;
+  }
+
+  /**
+   * @param compiledMode
+   *          true to compile the scripts once and bind the values as JavaScript primitives where possible
+   */
+  public void setCompiledMode( boolean compiledMode ) {
+    this.compiledMode = compiledMode;
+  }
 }
@@ -39,6 +39,7 @@ import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.logging.Metrics;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -189,6 +190,10 @@ public class ScriptValuesMod extends BaseStep implements StepInterface {
           logBasic( BaseMessages.getString(
             PKG, "ScriptValuesMod.Optimization.UsingDefault", ScriptValuesMetaMod.OPTIMIZATION_LEVEL_DEFAULT ) );
         }
+        if ( meta.isCompiledMode() ) {
+          logBasic( BaseMessages.getString(
+            PKG, "ScriptValuesMod.Optimization.CompiledMode", String.valueOf( data.cx.getOptimizationLevel() ) ) );
+        }
       } catch ( NumberFormatException nfe ) {
         throw new KettleStepException( BaseMessages.getString(
           PKG, "ScriptValuesMetaMod.Exception.NumberFormatException", environmentSubstitute( meta
@@ -241,12 +246,7 @@ public class ScriptValuesMod extends BaseStep implements StepInterface {
             data.scope.put( valueMeta.getName(), data.scope, jsarg );
           } else {
             Object normalStorageValueData = valueMeta.convertToNormalStorageType( valueData );
-            Scriptable jsarg;
-            if ( normalStorageValueData != null ) {
-              jsarg = Context.toObject( normalStorageValueData, data.scope );
-            } else {
-              jsarg = null;
-            }
+            Object jsarg = toJs( normalStorageValueData, data.scope, meta.isCompiledMode() );
             data.scope.put( valueMeta.getName(), data.scope, jsarg );
           }
         }
@@ -299,7 +299,7 @@ public class ScriptValuesMod extends BaseStep implements StepInterface {
         try {
           // Checking for StartScript
           if ( strStartScript != null && strStartScript.length() > 0 ) {
-            Script startScript = data.cx.compileString( strStartScript, "trans_Start", 1, null );
+            Script startScript = compileScript( strStartScript, "trans_Start" );
             startScript.exec( data.cx, data.scope );
             if ( log.isDetailed() ) {
               logDetailed( ( "Start Script found!" ) );
@@ -316,7 +316,7 @@ public class ScriptValuesMod extends BaseStep implements StepInterface {
 
         }
         // Now Compile our Script
-        data.script = data.cx.compileString( strTransformScript, "script", 1, null );
+        data.script = compileScript( strTransformScript, "script" );
       } catch ( Exception e ) {
         throw new KettleValueException( BaseMessages.getString(
           PKG, "ScriptValuesMod.Log.CouldNotCompileJavascript" ), e );
@@ -367,25 +367,31 @@ public class ScriptValuesMod extends BaseStep implements StepInterface {
             data.scope.put( valueMeta.getName(), data.scope, jsarg );
           } else {
             Object normalStorageValueData = valueMeta.convertToNormalStorageType( valueData );
-            Scriptable jsarg;
-            if ( normalStorageValueData != null ) {
-              jsarg = Context.toObject( normalStorageValueData, data.scope );
-            } else {
-              jsarg = null;
-            }
+            Object jsarg = toJs( normalStorageValueData, data.scope, meta.isCompiledMode() );
             data.scope.put( valueMeta.getName(), data.scope, jsarg );
           }
         }
 
-        // also add the meta information for the hole row
-        Scriptable jsrowMeta = Context.toObject( rowMeta, data.scope );
-        data.scope.put( "rowMeta", data.scope, jsrowMeta );
+        // also add the meta information for the hole row, in compiled mode it was added once for all rows
+        if ( !meta.isCompiledMode() ) {
+          Scriptable jsrowMeta = Context.toObject( rowMeta, data.scope );
+          data.scope.put( "rowMeta", data.scope, jsrowMeta );
+        }
       } catch ( Exception e ) {
         throw new KettleValueException( BaseMessages.getString( PKG, "ScriptValuesMod.Log.UnexpectedeError" ), e );
       }
 
       // Executing our Script
-      data.script.exec( data.cx, data.scope );
+      if ( log.isGatheringMetrics() ) {
+        long startTime = System.nanoTime();
+        data.script.exec( data.cx, data.scope );
+        long time = ( System.nanoTime() - startTime ) / 1000;
+        log.snap( Metrics.METRIC_STEP_SCRIPT_ROW_SUM_TIME, time );
+        log.snap( Metrics.METRIC_STEP_SCRIPT_ROW_MAX_TIME, time );
+        log.snap( Metrics.METRIC_STEP_SCRIPT_ROW_COUNT );
+      } else {
+        data.script.exec( data.cx, data.scope );
+      }
 
       if ( bFirstRun ) {
         bFirstRun = false;
@@ -477,6 +483,40 @@ public class ScriptValuesMod extends BaseStep implements StepInterface {
     return bRC;
   }
 
+  /**
+   * Compile a script. In compiled mode the script is taken from the cache shared by all the step copies.
+   */
+  private Script compileScript( String source, String sourceName ) {
+    if ( meta.isCompiledMode() ) {
+      return ScriptValuesModScriptCache.getScript( data.cx, source, sourceName );
+    }
+    return data.cx.compileString( source, sourceName, 1, null );
+  }
+
+  /**
+   * Convert a field value to the object the script sees. Normally every value is wrapped in a new JavaScript object.
+   * In compiled mode strings, integers, numbers and booleans are passed as JavaScript primitives, which doesn't cost an
+   * allocation and a prototype lookup per value and per row. Other values are wrapped as before.
+   *
+   * @param value
+   *          the value in normal storage, can be null
+   * @param scope
+   *          the scope of the script
+   * @param compiledMode
+   *          true if the step runs in compiled mode
+   * @return the value to put in the scope of the script
+   */
+  static Object toJs( Object value, Scriptable scope, boolean compiledMode ) {
+    if ( value == null ) {
+      return null;
+    }
+    if ( compiledMode
+      && ( value instanceof String || value instanceof Long || value instanceof Double || value instanceof Boolean ) ) {
+      return value;
+    }
+    return Context.toObject( value, scope );
+  }
+
   public Object getValueFromJScript( Object result, int i ) throws KettleValueException {
     String fieldName = meta.getFieldname()[ i ];
     if ( !Utils.isEmpty( fieldName ) ) {
@@ -510,7 +550,7 @@ public class ScriptValuesMod extends BaseStep implements StepInterface {
         if ( data.cx != null ) {
           // Checking for EndScript
           if ( strEndScript != null && strEndScript.length() > 0 ) {
-            Script endScript = data.cx.compileString( strEndScript, "trans_End", 1, null );
+            Script endScript = compileScript( strEndScript, "trans_End" );
             endScript.exec( data.cx, data.scope );
             if ( log.isDetailed() ) {
               logDetailed( ( "End Script found!" ) );
@@ -0,0 +1,97 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.scriptvalues_mod;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+/**
+ * A cache of compiled scripts, keyed by the script text, the script name and the optimization level. Compiling a
+ * script at a positive optimization level generates and loads a Java class, which is costly to do for every copy of a
+ * step and for every execution of the same transformation. A compiled script doesn't hold any state of its own (the
+ * state lives in the scope it's executed in), so the copies of a step can safely share it across threads.<br>
+ * <br>
+ * The cache holds at most {@link #MAX_SCRIPTS} scripts, the least recently used script is dropped first.
+ */
+public class ScriptValuesModScriptCache {
+
+  public static final int MAX_SCRIPTS = 100;
+
+  private static final Map<String, Script> scripts = new LinkedHashMap<String, Script>( 16, 0.75f, true ) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry( Map.Entry<String, Script> eldest ) {
+      return size() > MAX_SCRIPTS;
+    }
+  };
+
+  private ScriptValuesModScriptCache() {
+  }
+
+  /**
+   * Get the compiled script from the cache or compile it with the given context and add it to the cache.
+   *
+   * @param cx
+   *          the context to compile with, its optimization level is part of the key
+   * @param source
+   *          the text of the script
+   * @param sourceName
+   *          the name of the script, used in error messages and stack traces
+   * @return the compiled script
+   */
+  public static Script getScript( Context cx, String source, String sourceName ) {
+    String key = cx.getOptimizationLevel() + "/" + sourceName + "/" + source;
+    synchronized ( scripts ) {
+      Script script = scripts.get( key );
+      if ( script == null ) {
+        // Compile while holding the lock: the copies of a step typically ask for the same script at the same time
+        //
+        script = cx.compileString( source, sourceName, 1, null );
+        scripts.put( key, script );
+      }
+      return script;
+    }
+  }
+
+  /**
+   * @return the number of scripts in the cache
+   */
+  public static int size() {
+    synchronized ( scripts ) {
+      return scripts.size();
+    }
+  }
+
+  /**
+   * Remove all the scripts from the cache.
+   */
+  public static void clear() {
+    synchronized ( scripts ) {
+      scripts.clear();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import java.util.Comparator;
+
+/**
+ * A tournament tree of losers used to merge a number of sorted runs. Every run (source) has one current row at the
+ * leaves of the tree, every internal node remembers the loser of the match that was played there and the overall
+ * winner is kept at the top. Replacing the winner with the next row of the same run only replays the matches on the
+ * path from that leaf to the root: log2(k) comparisons per row instead of the O(k) work of keeping a sorted list.<br>
+ * <br>
+ * A run that is exhausted is represented by a null row, which loses against everything. Ties are won by the run with
+ * the lowest number, so the merge is stable with respect to the order of the runs.
+ */
+public class LoserTree {
+
+  private final Comparator<Object[]> comparator;
+  private final int size;
+
+  /** The current row of every run, null if the run is exhausted */
+  private final Object[][] rows;
+
+  /** tree[0] is the winner, tree[1..size-1] are the losers of the internal nodes */
+  private final int[] tree;
+
+  /**
+   * Build the tree for the first row of each run.
+   *
+   * @param comparator
+   *          the comparator to determine the order of the rows
+   * @param firstRows
+   *          the first row of each of the runs, null for an empty run
+   */
+  public LoserTree( Comparator<Object[]> comparator, Object[][] firstRows ) {
+    this.comparator = comparator;
+    this.size = firstRows.length;
+    this.rows = firstRows.clone();
+    this.tree = new int[Math.max( 1, size )];
+
+    if ( size == 0 ) {
+      tree[0] = -1;
+      return;
+    }
+
+    // Play all the matches bottom up. The leaves of the implicit tree are at positions size..2*size-1
+    //
+    int[] winners = new int[2 * size];
+    for ( int i = 0; i < size; i++ ) {
+      winners[size + i] = i;
+    }
+    for ( int node = size - 1; node > 0; node-- ) {
+      int left = winners[2 * node];
+      int right = winners[2 * node + 1];
+      if ( beats( left, right ) ) {
+        winners[node] = left;
+        tree[node] = right;
+      } else {
+        winners[node] = right;
+        tree[node] = left;
+      }
+    }
+    tree[0] = size == 1 ? 0 : winners[1];
+  }
+
+  /**
+   * @return the number of the run holding the smallest row or -1 if all runs are exhausted
+   */
+  public int getWinner() {
+    int winner = tree[0];
+    if ( winner < 0 || rows[winner] == null ) {
+      return -1;
+    }
+    return winner;
+  }
+
+  /**
+   * @return the smallest row over all the runs or null if all runs are exhausted
+   */
+  public Object[] getWinnerRow() {
+    int winner = tree[0];
+    return winner < 0 ? null : rows[winner];
+  }
+
+  /**
+   * Replace the current winner with the next row of the same run and replay the matches up to the root.
+   *
+   * @param row
+   *          the next row of the winning run or null if the run is exhausted
+   */
+  public void replaceWinner( Object[] row ) {
+    int winner = tree[0];
+    if ( winner < 0 ) {
+      return;
+    }
+    rows[winner] = row;
+
+    for ( int node = ( winner + size ) >> 1; node > 0; node >>= 1 ) {
+      int loser = tree[node];
+      if ( beats( loser, winner ) ) {
+        tree[node] = winner;
+        winner = loser;
+      }
+    }
+    tree[0] = winner;
+  }
+
+  /**
+   * @return the number of runs in this tree
+   */
+  public int size() {
+    return size;
+  }
+
+  private boolean beats( int a, int b ) {
+    Object[] rowA = rows[a];
+    Object[] rowB = rows[b];
+    if ( rowA == null ) {
+      return false;
+    }
+    if ( rowB == null ) {
+      return true;
+    }
+    int cmp = comparator.compare( rowA, rowB );
+    return cmp < 0 || ( cmp == 0 && a < b );
+  }
+}
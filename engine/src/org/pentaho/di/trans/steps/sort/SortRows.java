@@ -31,9 +31,16 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -43,7 +50,10 @@ import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.logging.Metrics;
+import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.SortKeyEncoder;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.i18n.BaseMessages;
@@ -64,6 +74,11 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class SortRows extends BaseStep implements StepInterface {
   private static Class<?> PKG = SortRows.class; // for i18n
 
+  /**
+   * The parallel sort doesn't split a range of rows smaller than this, it's sorted in one go by one thread.
+   */
+  private static final int PARALLEL_SORT_GRANULARITY = 8192;
+
   private SortRowsMeta meta;
   private SortRowsData data;
 
@@ -76,12 +91,53 @@ public class SortRows extends BaseStep implements StepInterface {
   }
 
   void addBuffer( RowMetaInterface rowMeta, Object[] r ) throws KettleException {
-    // we need convert some keys?
+    // we need convert some keys? That's done for a block of rows at a time.
     if ( data.convertKeysToNative != null ) {
-      for ( int i = 0; i < data.convertKeysToNative.length; i++ ) {
-        int index = data.convertKeysToNative[i];
-        r[index] = rowMeta.getValueMeta( index ).convertBinaryStringToNativeType( (byte[]) r[index] );
+      if ( data.convertRows == null ) {
+        data.convertRows = new Object[Const.LAZY_CONVERSION_BLOCK_SIZE][];
+        data.convertValues = new Object[Const.LAZY_CONVERSION_BLOCK_SIZE];
       }
+      data.convertRows[data.nrConvertRows++] = r;
+      if ( data.nrConvertRows == data.convertRows.length ) {
+        convertKeys( rowMeta );
+      }
+      return;
+    }
+
+    storeRow( r );
+  }
+
+  /**
+   * Convert the lazily converted keys of the block of rows that is waiting for it, a key column at a time, and store
+   * the rows in the buffer.
+   */
+  void convertKeys( RowMetaInterface rowMeta ) throws KettleException {
+    int nrRows = data.nrConvertRows;
+    if ( nrRows == 0 ) {
+      return;
+    }
+    data.nrConvertRows = 0;
+
+    for ( int index : data.convertKeysToNative ) {
+      rowMeta.convertToNormalStorageType( data.convertRows, nrRows, index, data.convertValues );
+      for ( int i = 0; i < nrRows; i++ ) {
+        data.convertRows[i][index] = data.convertValues[i];
+      }
+    }
+    for ( int i = 0; i < nrRows; i++ ) {
+      Object[] r = data.convertRows[i];
+      data.convertRows[i] = null;
+      data.convertValues[i] = null;
+      storeRow( r );
+    }
+  }
+
+  private void storeRow( Object[] r ) throws KettleException {
+    // Encode the sort key once, all comparisons are done on the binary key from now on
+    //
+    if ( data.keyEncoder != null ) {
+      r = RowDataUtil.resizeArray( r, data.keyIndex + 1 );
+      r[data.keyIndex] = data.keyEncoder.encode( r );
     }
 
     // Save row
@@ -131,161 +187,372 @@ public class SortRows extends BaseStep implements StepInterface {
     // First sort the rows in buffer[]
     quickSort( data.buffer );
 
-    // Then write them to disk...
-    DataOutputStream dos;
-    GZIPOutputStream gzos;
-    int p;
+    // Only one run can be on its way to disk at any time, this also keeps the order of the files intact
+    //
+    waitForRunWriter();
 
+    // Then write them to disk...
+    final List<Object[]> rows = data.buffer;
+    int bufferSize = rows.size();
+    final FileObject fileObject;
     try {
-      FileObject fileObject =
-          KettleVFS.createTempFile( meta.getPrefix(), ".tmp", environmentSubstitute( meta.getDirectory() ),
-              getTransMeta() );
+      fileObject = createTempFile();
+    } catch ( Exception e ) {
+      throw new KettleException( "Error processing temp-file!", e );
+    }
+    data.files.add( fileObject ); // Remember the files!
 
-      data.files.add( fileObject ); // Remember the files!
-      OutputStream outputStream = KettleVFS.getOutputStream( fileObject, false );
-      if ( data.compressFiles ) {
-        gzos = new GZIPOutputStream( new BufferedOutputStream( outputStream ) );
-        dos = new DataOutputStream( gzos );
-      } else {
-        dos = new DataOutputStream( new BufferedOutputStream( outputStream, 500000 ) );
-        gzos = null;
+    if ( data.runWriter != null ) {
+      // Let the background writer spill this run while we fill a new buffer
+      //
+      data.buffer = new ArrayList<Object[]>( bufferSize );
+      data.pendingRunFile = fileObject;
+      data.pendingRun = data.runWriter.submit( new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          return writeRun( fileObject, rows, data.runWriterRowMeta );
+        }
+      } );
+    } else {
+      try {
+        recordRun( fileObject, writeRun( fileObject, rows, data.outputRowMeta ) );
+      } catch ( Exception e ) {
+        throw new KettleException( "Error processing temp-file!", e );
       }
 
+      // Clear the list
+      data.buffer.clear();
+    }
+
+    if ( data.sortSize < 0 ) {
+      if ( bufferSize > data.minSortSize ) {
+        data.minSortSize = bufferSize; // if we did it once, we can do
+                                       // it again.
+
+        // Memory usage goes up over time, even with garbage collection
+        // We need pointers, file handles, etc.
+        // As such, we're going to lower the min sort size a bit
+        //
+        data.minSortSize = (int) Math.round( data.minSortSize * 0.90 );
+      }
+    }
+
+    // How much memory do we have left?
+    //
+    data.freeMemoryPct = Const.getPercentageFreeMemory();
+    data.freeCounter = 0;
+    if ( data.sortSize <= 0 ) {
+      if ( log.isDetailed() ) {
+        logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.AvailableMemory", data.freeMemoryPct ) );
+      }
+    }
+
+    data.getBufferIndex = 0;
+  }
+
+  /**
+   * Write a sorted run of rows to a temp file. With the parallel sort option this runs on the background writer thread
+   * so it doesn't touch the lists in the step data, and it uses its own copy of the row metadata: the value metadata
+   * isn't thread safe and the step thread keeps sorting with the original.
+   *
+   * @param rowMeta
+   *          the row metadata to compare and write the rows with
+   * @return the number of rows written
+   */
+  private int writeRun( FileObject fileObject, List<Object[]> rows, RowMetaInterface rowMeta )
+    throws KettleException, IOException {
+    OutputStream outputStream = KettleVFS.getOutputStream( fileObject, false );
+    DataOutputStream dos = getDataOutputStream( outputStream );
+    int nrRows = 0;
+
+    try {
       // Just write the data, nothing else
-      List<Integer> duplicates = new ArrayList<Integer>();
       Object[] previousRow = null;
-      if ( meta.isOnlyPassingUniqueRows() ) {
-        int index = 0;
-        while ( index < data.buffer.size() ) {
-          Object[] row = data.buffer.get( index );
-          if ( previousRow != null ) {
-            int result = data.outputRowMeta.compare( row, previousRow, data.fieldnrs );
-            if ( result == 0 ) {
-              duplicates.add( index );
-              if ( log.isRowLevel() ) {
-                logRowlevel( BaseMessages.getString( PKG, "SortRows.RowLevel.DuplicateRowRemoved", data.outputRowMeta
-                    .getString( row ) ) );
-              }
-            }
+      for ( Object[] row : rows ) {
+        if ( meta.isOnlyPassingUniqueRows() && previousRow != null
+            && rowMeta.compare( row, previousRow, data.fieldnrs ) == 0 ) {
+          if ( log.isRowLevel() ) {
+            logRowlevel( BaseMessages.getString( PKG, "SortRows.RowLevel.DuplicateRowRemoved", rowMeta
+                .getString( row ) ) );
           }
-          index++;
-          previousRow = row;
+        } else {
+          writeRunRow( dos, row, rowMeta );
+          nrRows++;
         }
+        previousRow = row;
       }
+    } finally {
+      // Close temp-file
+      dos.close(); // closes the gzip and file stream as well
+      outputStream.close(); // close file stream
+    }
 
-      // How many records do we have left?
-      data.bufferSizes.add( data.buffer.size() - duplicates.size() );
+    return nrRows;
+  }
 
-      int duplicatesIndex = 0;
-      for ( p = 0; p < data.buffer.size(); p++ ) {
-        boolean skip = false;
-        if ( duplicatesIndex < duplicates.size() ) {
-          if ( p == duplicates.get( duplicatesIndex ) ) {
-            skip = true;
-            duplicatesIndex++;
-          }
-        }
-        if ( !skip ) {
-          data.outputRowMeta.writeData( dos, data.buffer.get( p ) );
-        }
-      }
+  /**
+   * Write a row to a run. The binary sort key, if any, is written in front of the row so that we don't have to encode
+   * it again during the merge.
+   */
+  private void writeRunRow( DataOutputStream dos, Object[] row, RowMetaInterface rowMeta ) throws KettleFileException,
+    IOException {
+    if ( data.keyEncoder != null ) {
+      byte[] key = (byte[]) row[data.keyIndex];
+      dos.writeInt( key.length );
+      dos.write( key );
+    }
+    rowMeta.writeData( dos, row );
+  }
+
+  /**
+   * Keep track of the runs we wrote, pass 0 is the initial run generation.
+   */
+  private void recordRun( FileObject fileObject, int nrRows ) throws FileSystemException {
+    long bytes = fileObject.getContent().getSize();
+    data.bufferSizes.add( nrRows );
+    data.nrRuns++;
+    data.spilledBytes += bytes;
+    log.snap( Metrics.METRIC_STEP_SORT_RUNS );
+    log.snap( Metrics.METRIC_STEP_SORT_SPILLED_BYTES, "pass 0", bytes );
+  }
+
+  /**
+   * Wait until the background writer has finished spilling the previous run to disk, if there is one.
+   */
+  private void waitForRunWriter() throws KettleException {
+    if ( data.pendingRun == null ) {
+      return;
+    }
+    try {
+      recordRun( data.pendingRunFile, data.pendingRun.get() );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( "Interrupted while writing temp-file!", e );
+    } catch ( ExecutionException e ) {
+      throw new KettleException( "Error processing temp-file!", e.getCause() );
+    } catch ( FileSystemException e ) {
+      throw new KettleException( "Error processing temp-file!", e );
+    } finally {
+      data.pendingRun = null;
+      data.pendingRunFile = null;
+    }
+  }
+
+  private FileObject createTempFile() throws KettleFileException {
+    return KettleVFS.createTempFile( meta.getPrefix(), ".tmp", environmentSubstitute( meta.getDirectory() ),
+        getTransMeta() );
+  }
+
+  private DataOutputStream getDataOutputStream( OutputStream outputStream ) throws IOException {
+    if ( data.compressFiles ) {
+      return new DataOutputStream( new GZIPOutputStream( new BufferedOutputStream( outputStream ) ) );
+    } else {
+      return new DataOutputStream( new BufferedOutputStream( outputStream, 500000 ) );
+    }
+  }
+
+  /**
+   * Open a temp file for reading. The opened streams are added to the given list so that they can be closed later on.
+   */
+  private DataInputStream openTempFile( FileObject fileObject, List<InputStream> streams ) throws KettleException,
+    IOException {
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.OpeningTempFile",
+          KettleVFS.getFilename( fileObject ) ) );
+    }
+    InputStream fi = KettleVFS.getInputStream( fileObject );
+    streams.add( fi );
+    DataInputStream di;
+    if ( data.compressFiles ) {
+      di = new DataInputStream( new GZIPInputStream( new BufferedInputStream( fi ) ) );
+    } else {
+      di = new DataInputStream( new BufferedInputStream( fi, 50000 ) );
+    }
+    streams.add( di );
+    return di;
+  }
+
+  /**
+   * Read the next row of a run, we know how many rows each run holds so we don't need to wait for an end of file.
+   *
+   * @return the next row or null if the run is exhausted
+   */
+  private Object[] readRunRow( DataInputStream di, int[] rowsLeft, int run ) throws KettleFileException,
+    SocketTimeoutException {
+    if ( rowsLeft[run] <= 0 ) {
+      return null;
+    }
+    rowsLeft[run]--;
+    if ( data.keyEncoder == null ) {
+      return data.outputRowMeta.readData( di );
+    }
 
-      if ( data.sortSize < 0 ) {
-        if ( data.buffer.size() > data.minSortSize ) {
-          data.minSortSize = data.buffer.size(); // if we did it once, we can do
-                                                 // it again.
+    byte[] key;
+    try {
+      key = new byte[di.readInt()];
+      di.readFully( key );
+    } catch ( SocketTimeoutException e ) {
+      throw e;
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to read sort key from temp-file", e );
+    }
+    Object[] row = RowDataUtil.resizeArray( data.outputRowMeta.readData( di ), data.keyIndex + 1 );
+    row[data.keyIndex] = key;
+    return row;
+  }
 
-          // Memory usage goes up over time, even with garbage collection
-          // We need pointers, file handles, etc.
-          // As such, we're going to lower the min sort size a bit
-          //
-          data.minSortSize = (int) Math.round( data.minSortSize * 0.90 );
+  /**
+   * As long as there are more runs on disk than the maximum merge fan-in, merge groups of runs into larger ones. This
+   * keeps the number of simultaneously open temp files (and gzip buffers) under control. Every pass merges only as
+   * many runs as needed to get below the fan-in so that no rows are written more often than they have to be.
+   */
+  void mergeIntermediateRuns() throws KettleException {
+    while ( data.files.size() > data.mergeFanIn && !isStopped() ) {
+      data.mergePasses++;
+      int runsBefore = data.files.size();
+      long bytesSpilled = 0L;
+
+      int f = 0;
+      while ( f < data.files.size() && data.files.size() > data.mergeFanIn && !isStopped() ) {
+        int groupSize =
+            Math.min( Math.min( data.mergeFanIn, data.files.size() - f ), data.files.size() - data.mergeFanIn + 1 );
+        if ( groupSize >= 2 ) {
+          bytesSpilled += mergeRuns( f, f + groupSize );
         }
+        f++;
       }
 
-      // Clear the list
-      data.buffer.clear();
+      data.spilledBytes += bytesSpilled;
+      log.snap( Metrics.METRIC_STEP_SORT_MERGE_PASSES );
+      log.snap( Metrics.METRIC_STEP_SORT_SPILLED_BYTES, "pass " + data.mergePasses, bytesSpilled );
+      if ( log.isBasic() ) {
+        logBasic( BaseMessages.getString( PKG, "SortRows.Basic.IntermediateMergePass", data.mergePasses, runsBefore,
+            data.files.size(), bytesSpilled ) );
+      }
+    }
+  }
 
-      // Close temp-file
-      dos.close(); // close data stream
-      if ( gzos != null ) {
-        gzos.close(); // close gzip stream
+  /**
+   * Merge the runs [from, to[ into a new run that replaces them in the list of files.
+   *
+   * @return the size of the new run in bytes
+   */
+  private long mergeRuns( int from, int to ) throws KettleException {
+    int nrRuns = to - from;
+    List<InputStream> streams = new ArrayList<InputStream>();
+    DataInputStream[] inputs = new DataInputStream[nrRuns];
+    int[] rowsLeft = new int[nrRuns];
+    Object[][] firstRows = new Object[nrRuns][];
+    FileObject fileObject = null;
+    int nrRows = 0;
+    long bytes;
+
+    try {
+      for ( int i = 0; i < nrRuns; i++ ) {
+        inputs[i] = openTempFile( data.files.get( from + i ), streams );
+        rowsLeft[i] = data.bufferSizes.get( from + i );
+        firstRows[i] = readRunRow( inputs[i], rowsLeft, i );
       }
-      outputStream.close(); // close file stream
+      LoserTree tree = new LoserTree( data.rowComparator, firstRows );
 
-      // How much memory do we have left?
-      //
-      data.freeMemoryPct = Const.getPercentageFreeMemory();
-      data.freeCounter = 0;
-      if ( data.sortSize <= 0 ) {
-        if ( log.isDetailed() ) {
-          logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.AvailableMemory", data.freeMemoryPct ) );
+      fileObject = createTempFile();
+      OutputStream outputStream = KettleVFS.getOutputStream( fileObject, false );
+      DataOutputStream dos = getDataOutputStream( outputStream );
+      try {
+        for ( int run = tree.getWinner(); run >= 0 && !isStopped(); run = tree.getWinner() ) {
+          writeRunRow( dos, tree.getWinnerRow(), data.outputRowMeta );
+          nrRows++;
+          tree.replaceWinner( readRunRow( inputs[run], rowsLeft, run ) );
         }
+      } finally {
+        dos.close();
+        outputStream.close();
       }
-
+      bytes = fileObject.getContent().getSize();
     } catch ( Exception e ) {
-      throw new KettleException( "Error processing temp-file!", e );
+      if ( fileObject != null ) {
+        try {
+          fileObject.delete();
+        } catch ( FileSystemException fse ) {
+          logError( fse.getLocalizedMessage(), fse );
+        }
+      }
+      throw new KettleException( "Error merging temp-files!", e );
+    } finally {
+      for ( InputStream stream : streams ) {
+        BaseStep.closeQuietly( stream );
+      }
     }
 
-    data.getBufferIndex = 0;
-  }
+    // Replace the merged runs by the new one
+    //
+    for ( int i = from; i < to; i++ ) {
+      FileObject merged = data.files.get( i );
+      try {
+        merged.delete();
+      } catch ( FileSystemException e ) {
+        logError( BaseMessages.getString( PKG, "SortRows.Error.UnableToCloseFile", i, merged.toString() ) );
+      }
+    }
+    data.files.subList( from, to ).clear();
+    data.bufferSizes.subList( from, to ).clear();
+    data.files.add( from, fileObject );
+    data.bufferSizes.add( from, nrRows );
 
-  private DataInputStream getDataInputStream( GZIPInputStream gzipInputStream ) {
-    DataInputStream result = new DataInputStream( gzipInputStream );
-    data.gzis.add( gzipInputStream );
-    return result;
+    return bytes;
   }
 
-  // get sorted rows from available files in iterative manner.
-  // that means call to this method will continue to return rows
-  // till all temp files will not be read to the end.
-  Object[] getBuffer() throws KettleValueException {
-    Object[] retval;
-
-    // Open all files at once and read one row from each file...
-    if ( data.files.size() > 0 && ( data.dis.size() == 0 || data.fis.size() == 0 ) ) {
-      if ( log.isBasic() ) {
-        logBasic( BaseMessages.getString( PKG, "SortRows.Basic.OpeningTempFiles", data.files.size() ) );
-      }
+  /**
+   * Open the (at most merge fan-in) remaining runs for the final merge and read the first row from each of them.
+   */
+  private void openFinalMerge() throws KettleException {
+    mergeIntermediateRuns();
 
-      try {
-        for ( int f = 0; f < data.files.size() && !isStopped(); f++ ) {
-          FileObject fileObject = data.files.get( f );
-          String filename = KettleVFS.getFilename( fileObject );
-          if ( log.isDetailed() ) {
-            logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.OpeningTempFile", filename ) );
-          }
-          InputStream fi = KettleVFS.getInputStream( fileObject );
-          DataInputStream di;
-          data.fis.add( fi );
-          if ( data.compressFiles ) {
-            di = getDataInputStream( new GZIPInputStream( new BufferedInputStream( fi ) ) );
-          } else {
-            di = new DataInputStream( new BufferedInputStream( fi, 50000 ) );
-          }
-          data.dis.add( di );
+    if ( log.isBasic() ) {
+      logBasic( BaseMessages.getString( PKG, "SortRows.Basic.OpeningTempFiles", data.files.size() ) );
+    }
 
-          // How long is the buffer?
-          int buffersize = data.bufferSizes.get( f );
+    int nrRuns = data.files.size();
+    data.mergeRowsLeft = new int[nrRuns];
+    Object[][] firstRows = new Object[nrRuns][];
+    try {
+      for ( int f = 0; f < nrRuns && !isStopped(); f++ ) {
+        FileObject fileObject = data.files.get( f );
+        List<InputStream> streams = new ArrayList<InputStream>( 2 );
+        DataInputStream di = openTempFile( fileObject, streams );
+        data.fis.add( streams.get( 0 ) );
+        data.dis.add( di );
 
-          if ( log.isDetailed() ) {
-            logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.FromFileExpectingRows",
-                filename, buffersize ) );
-          }
+        // How long is the buffer?
+        data.mergeRowsLeft[f] = data.bufferSizes.get( f );
 
-          if ( buffersize > 0 ) {
-            Object[] row = data.outputRowMeta.readData( di );
-            data.rowbuffer.add( row ); // new row from input stream
-            data.tempRows.add( new RowTempFile( row, f ) );
-          }
+        if ( log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.FromFileExpectingRows",
+              KettleVFS.getFilename( fileObject ), data.mergeRowsLeft[f] ) );
         }
 
-        // Sort the data row buffer
-        Collections.sort( data.tempRows, data.comparator );
-      } catch ( Exception e ) {
-        logError( BaseMessages.getString( PKG, "SortRows.Error.ErrorReadingBackTempFiles" ), e );
+        firstRows[f] = readRunRow( di, data.mergeRowsLeft, f );
       }
+    } catch ( Exception e ) {
+      throw new KettleException( BaseMessages.getString( PKG, "SortRows.Error.ErrorReadingBackTempFiles" ), e );
+    }
+    data.mergeTree = new LoserTree( data.rowComparator, firstRows );
+
+    // The final merge counts as a pass as well
+    //
+    data.mergePasses++;
+    log.snap( Metrics.METRIC_STEP_SORT_MERGE_PASSES );
+    if ( log.isBasic() ) {
+      logBasic( BaseMessages.getString( PKG, "SortRows.Basic.MergeStatistics", data.nrRuns, data.mergePasses,
+          data.spilledBytes ) );
     }
+  }
+
+  // get sorted rows from available files in iterative manner.
+  // that means call to this method will continue to return rows
+  // till all temp files will not be read to the end.
+  Object[] getBuffer() throws KettleException {
+    Object[] retval;
 
     if ( data.files.size() == 0 ) {
       // read from in-memory processing
@@ -296,79 +563,54 @@ public class SortRows extends BaseStep implements StepInterface {
       } else {
         retval = null;
       }
-    } else {
-      // read from disk processing
-
-      if ( data.rowbuffer.size() == 0 ) {
-        retval = null;
-      } else {
-        // We now have "filenr" rows waiting: which one is the smallest?
-        //
-        if ( log.isRowLevel() ) {
-          for ( int i = 0; i < data.rowbuffer.size() && !isStopped(); i++ ) {
-            Object[] b = data.rowbuffer.get( i );
-            logRowlevel( BaseMessages
-                .getString( PKG, "SortRows.RowLevel.PrintRow", i, data.outputRowMeta.getString( b ) ) );
-          }
-        }
-
-        RowTempFile rowTempFile = data.tempRows.remove( 0 );
-        retval = rowTempFile.row;
-        int smallest = rowTempFile.fileNumber;
-
-        // now get another Row for position smallest
+      return retval;
+    }
 
-        FileObject file = data.files.get( smallest );
-        DataInputStream di = data.dis.get( smallest );
-        InputStream fi = data.fis.get( smallest );
+    // read from disk processing
+    //
+    if ( data.mergeTree == null ) {
+      openFinalMerge();
+    }
 
-        try {
-          Object[] row2 = data.outputRowMeta.readData( di );
-          RowTempFile extra = new RowTempFile( row2, smallest );
-
-          int index = Collections.binarySearch( data.tempRows, extra, data.comparator );
-          if ( index < 0 ) {
-            data.tempRows.add( index * ( -1 ) - 1, extra );
-          } else {
-            data.tempRows.add( index, extra );
-          }
-        } catch ( KettleFileException fe ) { // empty file or EOF mostly
-          GZIPInputStream gzfi = ( data.compressFiles ) ? data.gzis.get( smallest ) : null;
-          try {
-            di.close();
-            fi.close();
-            if ( gzfi != null ) {
-              gzfi.close();
-            }
-            file.delete();
-          } catch ( IOException e ) {
-            logError( BaseMessages.getString( PKG, "SortRows.Error.UnableToCloseFile", smallest, file.toString() ) );
-            setErrors( 1 );
-            stopAll();
-            return null;
-          }
+    // The loser tree knows which of the runs holds the smallest row
+    //
+    int smallest = data.mergeTree.getWinner();
+    if ( smallest < 0 ) {
+      return null;
+    }
+    retval = data.mergeTree.getWinnerRow();
 
-          data.files.remove( smallest );
-          data.dis.remove( smallest );
-          data.fis.remove( smallest );
+    if ( log.isRowLevel() ) {
+      logRowlevel( BaseMessages.getString( PKG, "SortRows.RowLevel.PrintRow", smallest, data.outputRowMeta
+          .getString( retval ) ) );
+    }
 
-          if ( gzfi != null ) {
-            data.gzis.remove( smallest );
-          }
+    // now get another Row for position smallest
+    //
+    Object[] next;
+    try {
+      next = readRunRow( data.dis.get( smallest ), data.mergeRowsLeft, smallest );
+    } catch ( SocketTimeoutException e ) {
+      throw new KettleValueException( e ); // should never happen on local files
+    }
 
-          // Also update all file numbers in in data.tempRows if they are larger
-          // than smallest.
-          //
-          for ( RowTempFile rtf : data.tempRows ) {
-            if ( rtf.fileNumber > smallest ) {
-              rtf.fileNumber--;
-            }
-          }
-        } catch ( SocketTimeoutException e ) {
-          throw new KettleValueException( e ); // should never happen on local files
-        }
+    if ( next == null ) {
+      // This run is exhausted, we can remove it from disk already
+      //
+      FileObject file = data.files.get( smallest );
+      try {
+        data.dis.get( smallest ).close();
+        data.fis.get( smallest ).close();
+        file.delete();
+      } catch ( IOException e ) {
+        logError( BaseMessages.getString( PKG, "SortRows.Error.UnableToCloseFile", smallest, file.toString() ) );
+        setErrors( 1 );
+        stopAll();
+        return null;
       }
     }
+    data.mergeTree.replaceWinner( next );
+
     return retval;
   }
 
@@ -418,7 +660,10 @@ public class SortRows extends BaseStep implements StepInterface {
       // Metadata
       data.outputRowMeta = inputRowMeta.clone();
       meta.getFields( data.outputRowMeta, getStepname(), null, null, this, repository, metaStore );
-      data.comparator = new RowTemapFileComparator( data.outputRowMeta, data.fieldnrs );
+      if ( data.runWriter != null ) {
+        // The background writer gets its own copy, it runs while this thread sorts the next buffer
+        data.runWriterRowMeta = data.outputRowMeta.clone();
+      }
 
       for ( int i = 0; i < fieldNames.length; i++ ) {
         data.fieldnrs[i] = inputRowMeta.indexOfValue( fieldNames[i] );
@@ -438,6 +683,16 @@ public class SortRows extends BaseStep implements StepInterface {
         i++;
       }
       data.rowComparator = new RowObjectArrayComparator( data.outputRowMeta, data.fieldnrs );
+
+      if ( meta.isBinarySortKeys() ) {
+        if ( SortKeyEncoder.isSupported( data.outputRowMeta, data.fieldnrs ) ) {
+          data.keyEncoder = new SortKeyEncoder( data.outputRowMeta, data.fieldnrs );
+          data.keyIndex = data.outputRowMeta.size();
+          data.rowComparator = new BinaryKeyComparator( data.keyIndex );
+        } else {
+          logBasic( BaseMessages.getString( PKG, "SortRows.Basic.BinarySortKeysNotSupported" ) );
+        }
+      }
     } // end if first
 
     // it is not first row and it is null
@@ -506,6 +761,12 @@ public class SortRows extends BaseStep implements StepInterface {
     }
 
     while ( r != null && !isStopped() ) {
+      // The binary sort key is of no use to the next steps
+      //
+      if ( data.keyEncoder != null ) {
+        r[data.keyIndex] = null;
+      }
+
       if ( log.isRowLevel() ) {
         logRowlevel( BaseMessages.getString( PKG, "SortRows.RowLevel.ReadRow", getInputRowMeta().getString( r ) ) );
       }
@@ -564,13 +825,27 @@ public class SortRows extends BaseStep implements StepInterface {
     //
     data.buffer = new ArrayList<Object[]>( 5000 );
 
-    // Buffer for reading from disk
-    //
-    data.rowbuffer = new ArrayList<Object[]>( 5000 );
-
     data.compressFiles = getBooleanValueOfVariable( meta.getCompressFilesVariable(), meta.getCompressFiles() );
 
-    data.tempRows = new ArrayList<RowTempFile>();
+    data.parallelSort = meta.isParallelSort();
+    if ( data.parallelSort ) {
+      data.runWriter = Executors.newSingleThreadExecutor( new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+          Thread thread = new Thread( r, "Sort run writer for: " + getStepname() + "." + getCopy() );
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+      // A pool of our own: the common pool is shared by the whole JVM and other steps
+      //
+      data.sortPool = new ForkJoinPool( Runtime.getRuntime().availableProcessors() );
+    }
+
+    // Never merge more than this number of temp files at once
+    //
+    data.mergeFanIn =
+        Math.max( 2, Const.toInt( environmentSubstitute( meta.getMergeFanIn() ), SortRowsMeta.DEFAULT_MERGE_FAN_IN ) );
 
     data.minSortSize = 5000;
 
@@ -579,6 +854,21 @@ public class SortRows extends BaseStep implements StepInterface {
 
   @Override
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    if ( data.runWriter != null ) {
+      // Don't delete the files under the feet of the writer
+      //
+      try {
+        waitForRunWriter();
+      } catch ( KettleException e ) {
+        logError( e.getLocalizedMessage(), e );
+      }
+      data.runWriter.shutdown();
+      data.runWriter = null;
+    }
+    if ( data.sortPool != null ) {
+      data.sortPool.shutdown();
+      data.sortPool = null;
+    }
     clearBuffers();
     super.dispose( smi, sdi );
   }
@@ -588,7 +878,8 @@ public class SortRows extends BaseStep implements StepInterface {
     // Clean out the sort buffer
     data.buffer.clear();
     data.getBufferIndex = 0;
-    data.rowbuffer.clear();
+    data.mergeTree = null;
+    data.mergeRowsLeft = null;
 
     // close any open DataInputStream objects
     if ( ( data.dis != null ) && ( data.dis.size() > 0 ) ) {
@@ -613,6 +904,17 @@ public class SortRows extends BaseStep implements StepInterface {
         logError( e.getLocalizedMessage(), e );
       }
     }
+    data.files.clear();
+    data.bufferSizes.clear();
+    data.fis.clear();
+    data.gzis.clear();
+    data.dis.clear();
+
+    // The statistics are kept per sorted block
+    //
+    data.nrRuns = 0;
+    data.mergePasses = 0;
+    data.spilledBytes = 0L;
   }
 
   /**
@@ -620,12 +922,29 @@ public class SortRows extends BaseStep implements StepInterface {
    */
   void quickSort( List<Object[]> elements ) throws KettleException {
     if ( elements.size() > 0 ) {
-      Collections.sort( elements, data.rowComparator );
+      List<RowMetaInterface> sortRowMetas = new ArrayList<RowMetaInterface>();
+      sortRowMetas.add( data.outputRowMeta );
+
+      if ( data.sortPool != null ) {
+        // Fork-join merge sort on the pool of this step copy
+        //
+        Object[][] rows = elements.toArray( new Object[elements.size()][] );
+        List<RowMetaInterface> forkRowMetas = Collections.synchronizedList( new ArrayList<RowMetaInterface>() );
+        data.sortPool.invoke( new ParallelSortTask( rows, new Object[rows.length][], 0, rows.length, forkRowMetas ) );
+        for ( int i = 0; i < rows.length; i++ ) {
+          elements.set( i, rows[i] );
+        }
+        sortRowMetas.addAll( forkRowMetas );
+      } else {
+        Collections.sort( elements, data.rowComparator );
+      }
 
       long nrConversions = 0L;
-      for ( ValueMetaInterface valueMeta : data.outputRowMeta.getValueMetaList() ) {
-        nrConversions += valueMeta.getNumberOfBinaryStringConversions();
-        valueMeta.setNumberOfBinaryStringConversions( 0L );
+      for ( RowMetaInterface sortRowMeta : sortRowMetas ) {
+        for ( ValueMetaInterface valueMeta : sortRowMeta.getValueMetaList() ) {
+          nrConversions += valueMeta.getNumberOfBinaryStringConversions();
+          valueMeta.setNumberOfBinaryStringConversions( 0L );
+        }
       }
       if ( log.isDetailed() ) {
         logDetailed( BaseMessages.getString( PKG, "SortRows.Detailed.ReportNumberOfBinaryStringConv", nrConversions ) );
@@ -633,6 +952,69 @@ public class SortRows extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Get a comparator for one task of the parallel sort. The binary sort keys are compared without any metadata so
+   * that comparator can be shared. Otherwise the task gets its own copy of the row metadata: the value metadata keeps
+   * conversion counters and collators that aren't thread safe.
+   *
+   * @param forkRowMetas
+   *          the copies of the row metadata handed out so far, to report the conversions with
+   */
+  private Comparator<Object[]> getForkComparator( List<RowMetaInterface> forkRowMetas ) {
+    if ( data.keyEncoder != null ) {
+      return data.rowComparator;
+    }
+    RowMetaInterface forkRowMeta = data.outputRowMeta.clone();
+    forkRowMetas.add( forkRowMeta );
+    return new RowObjectArrayComparator( forkRowMeta, data.fieldnrs );
+  }
+
+  /**
+   * A stable merge sort of a range of rows: both halves are sorted in parallel, after which they are merged.
+   */
+  private class ParallelSortTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Object[][] rows;
+    private final Object[][] work;
+    private final int from;
+    private final int to;
+    private final List<RowMetaInterface> forkRowMetas;
+
+    ParallelSortTask( Object[][] rows, Object[][] work, int from, int to, List<RowMetaInterface> forkRowMetas ) {
+      this.rows = rows;
+      this.work = work;
+      this.from = from;
+      this.to = to;
+      this.forkRowMetas = forkRowMetas;
+    }
+
+    @Override
+    protected void compute() {
+      if ( to - from <= PARALLEL_SORT_GRANULARITY ) {
+        Arrays.sort( rows, from, to, getForkComparator( forkRowMetas ) );
+        return;
+      }
+      int middle = ( from + to ) >>> 1;
+      invokeAll( new ParallelSortTask( rows, work, from, middle, forkRowMetas ),
+          new ParallelSortTask( rows, work, middle, to, forkRowMetas ) );
+
+      // Merge both sorted halves, on equal keys the row of the first half goes first
+      //
+      Comparator<Object[]> comparator = getForkComparator( forkRowMetas );
+      System.arraycopy( rows, from, work, from, to - from );
+      int left = from;
+      int right = middle;
+      for ( int i = from; i < to; i++ ) {
+        if ( right >= to || ( left < middle && comparator.compare( work[left], work[right] ) <= 0 ) ) {
+          rows[i] = work[left++];
+        } else {
+          rows[i] = work[right++];
+        }
+      }
+    }
+  }
+
   /**
    * Calling this method will alert the step that we finished passing records to the step. Specifically for steps like
    * "Sort Rows" it means that the buffered rows can be sorted and passed on.
@@ -645,9 +1027,12 @@ public class SortRows extends BaseStep implements StepInterface {
   }
 
   private void preSortBeforeFlush() throws KettleException {
+    convertKeys( getInputRowMeta() );
+
     if ( data.files.size() > 0 ) {
       // dump to dist and then read from disk
       sortExternalRows();
+      waitForRunWriter();
     } else {
       // sort in memory
       quickSort( data.buffer );
@@ -681,19 +1066,19 @@ public class SortRows extends BaseStep implements StepInterface {
     }
   }
 
-  private class RowTemapFileComparator extends SortRowsComparator implements Comparator<RowTempFile> {
-    RowTemapFileComparator( RowMetaInterface rowMeta, int[] fieldNrs ) {
-      super( rowMeta, fieldNrs );
+  /**
+   * Compares rows on the binary sort key that was stored right after the last field of the row.
+   */
+  private static class BinaryKeyComparator implements Comparator<Object[]> {
+    private final int keyIndex;
+
+    BinaryKeyComparator( int keyIndex ) {
+      this.keyIndex = keyIndex;
     }
 
     @Override
-    public int compare( RowTempFile o1, RowTempFile o2 ) {
-      try {
-        return rowMeta.compare( o1.row, o2.row, fieldNrs );
-      } catch ( KettleValueException e ) {
-        logError( "Error comparing rows: " + e.toString() );
-        return 0;
-      }
+    public int compare( Object[] o1, Object[] o2 ) {
+      return SortKeyEncoder.compare( (byte[]) o1[keyIndex], (byte[]) o2[keyIndex] );
     }
   }
 
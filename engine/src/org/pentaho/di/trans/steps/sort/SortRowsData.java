@@ -27,10 +27,14 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.vfs2.FileObject;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.SortKeyEncoder;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -46,11 +50,25 @@ public class SortRowsData extends BaseStepData implements StepDataInterface {
   public List<InputStream> fis;
   public List<GZIPInputStream> gzis;
   public List<DataInputStream> dis;
-  public List<Object[]> rowbuffer;
   public List<Integer> bufferSizes;
 
-  // To store rows and file references
-  public List<RowTempFile> tempRows;
+  // The tournament tree and the number of rows left in each run during the final merge
+  public LoserTree mergeTree;
+  public int[] mergeRowsLeft;
+
+  public int mergeFanIn;
+
+  // Parallel sort: the pool sorting the buffer, the background writer and the run it's currently writing
+  public boolean parallelSort;
+  public ForkJoinPool sortPool;
+  public ExecutorService runWriter;
+  public Future<Integer> pendingRun;
+  public FileObject pendingRunFile;
+  // The row metadata used by the background writer, a copy of outputRowMeta
+  public RowMetaInterface runWriterRowMeta;
+  public int nrRuns;
+  public int mergePasses;
+  public long spilledBytes;
 
   public int[] fieldnrs; // the corresponding field numbers;
   public FileObject fil;
@@ -60,9 +78,17 @@ public class SortRowsData extends BaseStepData implements StepDataInterface {
   public int[] convertKeysToNative;
   public boolean convertAnyKeysToNative;
 
-  Comparator<RowTempFile> comparator;
+  // The block of rows waiting for the conversion of their lazily converted keys
+  public Object[][] convertRows;
+  public Object[] convertValues;
+  public int nrConvertRows;
+
   Comparator<Object[]> rowComparator;
 
+  // Binary sort keys: the encoder and the position of the key in the row
+  public SortKeyEncoder keyEncoder;
+  public int keyIndex;
+
   public int freeCounter;
   public int freeMemoryPct;
   public int minSortSize;
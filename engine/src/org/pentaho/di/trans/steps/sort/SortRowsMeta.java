@@ -60,6 +60,9 @@ import org.w3c.dom.Node;
 public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
   private static Class<?> PKG = SortRowsMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /** The default maximum number of temp files that are merged at once */
+  public static final int DEFAULT_MERGE_FAN_IN = 100;
+
   /** order by which fields? */
   @Injection( name = "NAME", group = "FIELDS" )
   private String[] fieldName;
@@ -101,6 +104,10 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
   @Injection( name = "FREE_MEMORY_TRESHOLD" )
   private String freeMemoryLimit;
 
+  /** The maximum number of temp files to merge at once, more files lead to intermediate merge passes */
+  @Injection( name = "MERGE_FAN_IN" )
+  private String mergeFanIn;
+
   /** only pass unique rows to the output stream(s) */
   @Injection( name = "ONLY_PASS_UNIQUE_ROWS" )
   private boolean onlyPassingUniqueRows;
@@ -115,6 +122,17 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
   /** The variable to use to set the compressFiles option boolean */
   private String compressFilesVariable;
 
+  /**
+   * Parallel sort: sort the in-memory buffers on all available cores and write the sorted runs to disk on a background
+   * thread while the next buffer is being filled
+   */
+  @Injection( name = "PARALLEL_SORT" )
+  private boolean parallelSort;
+
+  /** Encode the sort keys in an order preserving byte array so that rows can be compared byte by byte */
+  @Injection( name = "BINARY_SORT_KEYS" )
+  private boolean binarySortKeys;
+
   public SortRowsMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -217,9 +235,12 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
       prefix = XMLHandler.getTagValue( stepnode, "prefix" );
       sortSize = XMLHandler.getTagValue( stepnode, "sort_size" );
       freeMemoryLimit = XMLHandler.getTagValue( stepnode, "free_memory" );
+      mergeFanIn = XMLHandler.getTagValue( stepnode, "merge_fan_in" );
       compressFiles = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "compress" ) );
       compressFilesVariable = XMLHandler.getTagValue( stepnode, "compress_variable" );
       onlyPassingUniqueRows = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "unique_rows" ) );
+      parallelSort = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "parallel_sort" ) );
+      binarySortKeys = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "binary_sort_keys" ) );
 
       Node fields = XMLHandler.getSubNode( stepnode, "fields" );
       int nrfields = XMLHandler.countNodes( fields, "field" );
@@ -252,9 +273,12 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
     prefix = "out";
     sortSize = "1000000";
     freeMemoryLimit = null;
+    mergeFanIn = Integer.toString( DEFAULT_MERGE_FAN_IN );
     compressFiles = false;
     compressFilesVariable = null;
     onlyPassingUniqueRows = false;
+    parallelSort = false;
+    binarySortKeys = false;
 
     int nrfields = 0;
 
@@ -277,9 +301,12 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
     retval.append( "      " ).append( XMLHandler.addTagValue( "prefix", prefix ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "sort_size", sortSize ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "free_memory", freeMemoryLimit ) );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "merge_fan_in", mergeFanIn ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "compress", compressFiles ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "compress_variable", compressFilesVariable ) );
     retval.append( "      " ).append( XMLHandler.addTagValue( "unique_rows", onlyPassingUniqueRows ) );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "parallel_sort", parallelSort ) );
+    retval.append( "      " ).append( XMLHandler.addTagValue( "binary_sort_keys", binarySortKeys ) );
 
     retval.append( "    <fields>" ).append( Const.CR );
     for ( int i = 0; i < fieldName.length; i++ ) {
@@ -304,11 +331,14 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
       prefix = rep.getStepAttributeString( id_step, "prefix" );
       sortSize = rep.getStepAttributeString( id_step, "sort_size" );
       freeMemoryLimit = rep.getStepAttributeString( id_step, "free_memory" );
+      mergeFanIn = rep.getStepAttributeString( id_step, "merge_fan_in" );
 
       compressFiles = rep.getStepAttributeBoolean( id_step, "compress" );
       compressFilesVariable = rep.getStepAttributeString( id_step, "compress_variable" );
 
       onlyPassingUniqueRows = rep.getStepAttributeBoolean( id_step, "unique_rows" );
+      parallelSort = rep.getStepAttributeBoolean( id_step, "parallel_sort" );
+      binarySortKeys = rep.getStepAttributeBoolean( id_step, "binary_sort_keys" );
 
       int nrfields = rep.countNrStepAttributes( id_step, "field_name" );
 
@@ -334,9 +364,12 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
       rep.saveStepAttribute( id_transformation, id_step, "prefix", prefix );
       rep.saveStepAttribute( id_transformation, id_step, "sort_size", sortSize );
       rep.saveStepAttribute( id_transformation, id_step, "free_memory", freeMemoryLimit );
+      rep.saveStepAttribute( id_transformation, id_step, "merge_fan_in", mergeFanIn );
       rep.saveStepAttribute( id_transformation, id_step, "compress", compressFiles );
       rep.saveStepAttribute( id_transformation, id_step, "compress_variable", compressFilesVariable );
       rep.saveStepAttribute( id_transformation, id_step, "unique_rows", onlyPassingUniqueRows );
+      rep.saveStepAttribute( id_transformation, id_step, "parallel_sort", parallelSort );
+      rep.saveStepAttribute( id_transformation, id_step, "binary_sort_keys", binarySortKeys );
 
       for ( int i = 0; i < fieldName.length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, "field_name", fieldName[i] );
@@ -516,6 +549,36 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
     this.onlyPassingUniqueRows = onlyPassingUniqueRows;
   }
 
+  /**
+   * @return true if the buffers are sorted in parallel and written to disk on a background thread
+   */
+  public boolean isParallelSort() {
+    return parallelSort;
+  }
+
+  /**
+   * @param parallelSort
+   *          true to sort the buffers in parallel and write them to disk on a background thread
+   */
+  public void setParallelSort( boolean parallelSort ) {
+    this.parallelSort = parallelSort;
+  }
+
+  /**
+   * @return true if the sort keys are encoded in a binary form that can be compared byte by byte
+   */
+  public boolean isBinarySortKeys() {
+    return binarySortKeys;
+  }
+
+  /**
+   * @param binarySortKeys
+   *          true to encode the sort keys in a binary form that can be compared byte by byte
+   */
+  public void setBinarySortKeys( boolean binarySortKeys ) {
+    this.binarySortKeys = binarySortKeys;
+  }
+
   /**
    * @return the compressFilesVariable
    */
@@ -591,6 +654,21 @@ public class SortRowsMeta extends BaseStepMeta implements StepMetaInterface {
     this.freeMemoryLimit = freeMemoryLimit;
   }
 
+  /**
+   * @return the maximum number of temp files to merge at once
+   */
+  public String getMergeFanIn() {
+    return mergeFanIn;
+  }
+
+  /**
+   * @param mergeFanIn
+   *          the maximum number of temp files to merge at once
+   */
+  public void setMergeFanIn( String mergeFanIn ) {
+    this.mergeFanIn = mergeFanIn;
+  }
+
   /**
    * @return the preSortedField
    */
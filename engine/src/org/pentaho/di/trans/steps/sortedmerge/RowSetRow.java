@@ -29,6 +29,7 @@ public class RowSetRow {
   private RowSet rowSet;
   private RowMetaInterface rowMeta;
   private Object[] rowData;
+  private byte[] sortKey;
 
   /**
    * @param rowSet
@@ -71,6 +72,21 @@ public class RowSetRow {
     this.rowData = rowData;
   }
 
+  /**
+   * @return the binary sort key of the row or null if binary sort keys are not used
+   */
+  public byte[] getSortKey() {
+    return sortKey;
+  }
+
+  /**
+   * @param sortKey
+   *          the binary sort key of the row
+   */
+  public void setSortKey( byte[] sortKey ) {
+    this.sortKey = sortKey;
+  }
+
   /**
    * @return the rowMeta
    */
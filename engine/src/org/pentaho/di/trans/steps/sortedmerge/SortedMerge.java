@@ -30,6 +30,7 @@ import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.SortKeyEncoder;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -92,10 +93,6 @@ public class SortedMerge extends BaseStep implements StepInterface {
         RowSet rowSet = getInputRowSets().get( i );
         Object[] row = getRowFrom( rowSet );
         if ( row != null ) {
-          // Add this row to the sortedBuffer...
-          // Which is not yet sorted, we'll get to that later.
-          //
-          data.sortedBuffer.add( new RowSetRow( rowSet, rowSet.getRowMeta(), row ) );
           if ( data.rowMeta == null ) {
             data.rowMeta = rowSet.getRowMeta().clone();
           }
@@ -117,12 +114,30 @@ public class SortedMerge extends BaseStep implements StepInterface {
 
               data.rowMeta.getValueMeta( data.fieldIndices[f] ).setSortedDescending( !meta.getAscending()[f] );
             }
+
+            // The keys are encoded with the metadata of the incoming rows, just like the comparator below does
+            //
+            if ( meta.isBinarySortKeys() ) {
+              if ( SortKeyEncoder.isSupported( rowSet.getRowMeta(), data.fieldIndices ) ) {
+                data.keyEncoder = new SortKeyEncoder( rowSet.getRowMeta(), data.fieldIndices );
+              } else {
+                logBasic( BaseMessages.getString( PKG, "SortedMerge.Log.BinarySortKeysNotSupported" ) );
+              }
+            }
           }
+
+          // Add this row to the sortedBuffer...
+          // Which is not yet sorted, we'll get to that later.
+          //
+          data.sortedBuffer.add( createRowSetRow( rowSet, row ) );
         }
 
         data.comparator = new Comparator<RowSetRow>() {
 
           public int compare( RowSetRow o1, RowSetRow o2 ) {
+            if ( o1.getSortKey() != null ) {
+              return SortKeyEncoder.compare( o1.getSortKey(), o2.getSortKey() );
+            }
             try {
               return o1.getRowMeta().compare( o1.getRowData(), o2.getRowData(), data.fieldIndices );
             } catch ( KettleValueException e ) {
@@ -160,7 +175,7 @@ public class SortedMerge extends BaseStep implements StepInterface {
     if ( extraRow != null ) {
       // Add this one to the sortedBuffer
       //
-      RowSetRow add = new RowSetRow( smallestRow.getRowSet(), smallestRow.getRowSet().getRowMeta(), extraRow );
+      RowSetRow add = createRowSetRow( smallestRow.getRowSet(), extraRow );
       int index = Collections.binarySearch( data.sortedBuffer, add, data.comparator );
       if ( index < 0 ) {
         data.sortedBuffer.add( -index - 1, add );
@@ -183,6 +198,14 @@ public class SortedMerge extends BaseStep implements StepInterface {
     return outputRowData;
   }
 
+  private RowSetRow createRowSetRow( RowSet rowSet, Object[] row ) throws KettleValueException {
+    RowSetRow rowSetRow = new RowSetRow( rowSet, rowSet.getRowMeta(), row );
+    if ( data.keyEncoder != null ) {
+      rowSetRow.setSortKey( data.keyEncoder.encode( row ) );
+    }
+    return rowSetRow;
+  }
+
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (SortedMergeMeta) smi;
     data = (SortedMergeData) sdi;
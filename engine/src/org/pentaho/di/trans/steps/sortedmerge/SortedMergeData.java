@@ -26,6 +26,7 @@ import java.util.Comparator;
 import java.util.List;
 
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.SortKeyEncoder;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -40,6 +41,7 @@ public class SortedMergeData extends BaseStepData implements StepDataInterface {
   public RowMetaInterface rowMeta;
   public List<RowSetRow> sortedBuffer;
   public Comparator<RowSetRow> comparator;
+  public SortKeyEncoder keyEncoder;
 
   public SortedMergeData() {
     super();
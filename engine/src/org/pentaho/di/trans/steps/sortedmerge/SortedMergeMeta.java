@@ -66,6 +66,10 @@ public class SortedMergeMeta extends BaseStepMeta implements StepMetaInterface {
   @Injection( name = "ASCENDING", group = "FIELDS" )
   private boolean[] ascending;
 
+  /** Encode the sort keys in an order preserving byte array so that rows can be compared byte by byte */
+  @Injection( name = "BINARY_SORT_KEYS" )
+  private boolean binarySortKeys;
+
   public void loadXML( Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore ) throws KettleXMLException {
     readData( stepnode );
   }
@@ -79,6 +83,7 @@ public class SortedMergeMeta extends BaseStepMeta implements StepMetaInterface {
     int nrfields = 0;
 
     allocate( nrfields );
+    binarySortKeys = false;
 
     for ( int i = 0; i < nrfields; i++ ) {
       fieldName[i] = "field" + i;
@@ -99,6 +104,8 @@ public class SortedMergeMeta extends BaseStepMeta implements StepMetaInterface {
 
   private void readData( Node stepnode ) throws KettleXMLException {
     try {
+      binarySortKeys = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "binary_sort_keys" ) );
+
       Node fields = XMLHandler.getSubNode( stepnode, "fields" );
       int nrfields = XMLHandler.countNodes( fields, "field" );
 
@@ -123,6 +130,7 @@ public class SortedMergeMeta extends BaseStepMeta implements StepMetaInterface {
   public String getXML() {
     StringBuilder retval = new StringBuilder();
 
+    retval.append( "    " + XMLHandler.addTagValue( "binary_sort_keys", binarySortKeys ) );
     retval.append( "    <fields>" + Const.CR );
     for ( int i = 0; i < fieldName.length; i++ ) {
       retval.append( "      <field>" + Const.CR );
@@ -137,6 +145,8 @@ public class SortedMergeMeta extends BaseStepMeta implements StepMetaInterface {
 
   public void readRep( Repository rep, IMetaStore metaStore, ObjectId id_step, List<DatabaseMeta> databases ) throws KettleException {
     try {
+      binarySortKeys = rep.getStepAttributeBoolean( id_step, "binary_sort_keys" );
+
       int nrfields = rep.countNrStepAttributes( id_step, "field_name" );
 
       allocate( nrfields );
@@ -152,6 +162,8 @@ public class SortedMergeMeta extends BaseStepMeta implements StepMetaInterface {
 
   public void saveRep( Repository rep, IMetaStore metaStore, ObjectId id_transformation, ObjectId id_step ) throws KettleException {
     try {
+      rep.saveStepAttribute( id_transformation, id_step, "binary_sort_keys", binarySortKeys );
+
       for ( int i = 0; i < fieldName.length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, "field_name", fieldName[i] );
         rep.saveStepAttribute( id_transformation, id_step, i, "field_ascending", ascending[i] );
@@ -277,6 +289,21 @@ public class SortedMergeMeta extends BaseStepMeta implements StepMetaInterface {
     this.fieldName = fieldName;
   }
 
+  /**
+   * @return true if the sort keys are encoded in a binary form that can be compared byte by byte
+   */
+  public boolean isBinarySortKeys() {
+    return binarySortKeys;
+  }
+
+  /**
+   * @param binarySortKeys
+   *          true to encode the sort keys in a binary form that can be compared byte by byte
+   */
+  public void setBinarySortKeys( boolean binarySortKeys ) {
+    this.binarySortKeys = binarySortKeys;
+  }
+
   public TransformationType[] getSupportedTransformationTypes() {
     return new TransformationType[] { TransformationType.Normal, };
   }
@@ -0,0 +1,302 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.streamlookup;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.SortKeyEncoder;
+
+/**
+ * Lookup table for composite keys. Every key is serialized once with a {@link SortKeyEncoder} (equal keys give equal
+ * bytes) and the bytes are appended to an arena of large byte slabs. The table itself only holds the hash, the offset
+ * in the arena and the length of every key. A lookup encodes the key into the reusable buffer of the encoder, so it
+ * doesn't allocate any objects.<br>
+ * <br>
+ * The case of case insensitive strings is not folded: like the hash map this table replaces, only keys with exactly
+ * the same characters match.
+ */
+public class BinaryKeyLookupTable extends CompactLookupTable {
+
+  private static final int SLAB_BITS = 20;
+  private static final int SLAB_SIZE = 1 << SLAB_BITS;
+
+  private final SortKeyEncoder encoder;
+
+  private int[] hashes;
+  private long[] offsets;
+  private int[] lengths;
+  private int mask;
+
+  /** The arena holding the key bytes, the offset of a key is (slab number << SLAB_BITS) + position in the slab */
+  private byte[][] slabs;
+  private int nrSlabs;
+  private int slabPosition;
+  private long arenaBytes;
+
+  private byte[] readBuffer;
+
+  /**
+   * @param keyMeta
+   *          the layout of the keys, see {@link SortKeyEncoder#isSupported(RowMetaInterface, int[])}
+   * @throws KettleValueException
+   *           in case the keys can't be serialized
+   */
+  public BinaryKeyLookupTable( RowMetaInterface keyMeta ) throws KettleValueException {
+    super( keyMeta );
+    this.encoder = new SortKeyEncoder( keyMeta, getKeyFieldnrs( keyMeta ), false );
+    this.readBuffer = new byte[64];
+    allocate( INITIAL_CAPACITY );
+    clearArena();
+  }
+
+  /**
+   * @return true if the given keys can be stored in this type of table
+   */
+  public static boolean isSupported( RowMetaInterface keyMeta ) {
+    return SortKeyEncoder.isSupported( keyMeta, getKeyFieldnrs( keyMeta ) );
+  }
+
+  private static int[] getKeyFieldnrs( RowMetaInterface keyMeta ) {
+    int[] fieldnrs = new int[keyMeta.size()];
+    for ( int i = 0; i < fieldnrs.length; i++ ) {
+      fieldnrs[i] = i;
+    }
+    return fieldnrs;
+  }
+
+  private void allocate( int capacity ) {
+    hashes = new int[capacity];
+    offsets = new long[capacity];
+    lengths = new int[capacity];
+    values = new Object[capacity][];
+    mask = capacity - 1;
+    resizeThreshold = (int) ( capacity * MAX_LOAD_FACTOR );
+  }
+
+  private void clearArena() {
+    slabs = new byte[16][];
+    nrSlabs = 0;
+    slabPosition = SLAB_SIZE;
+    arenaBytes = 0;
+  }
+
+  @Override
+  public void put( Object[] keyData, Object[] valueData ) throws KettleValueException {
+    int length = encoder.encodeKey( keyData );
+    byte[] key = encoder.getBuffer();
+    put( key, length, hash( key, length ), valueData );
+  }
+
+  private void put( byte[] key, int length, long hash, Object[] valueData ) {
+    int slot = findSlot( key, length, (int) hash );
+    if ( values[slot] == null ) {
+      if ( size >= resizeThreshold ) {
+        resize();
+        slot = findSlot( key, length, (int) hash );
+      }
+      hashes[slot] = (int) hash;
+      offsets[slot] = append( key, length );
+      lengths[slot] = length;
+    }
+    addValue( slot, valueData );
+  }
+
+  @Override
+  public Object[] get( Object[] keyData ) throws KettleValueException {
+    int length = encoder.encodeKey( keyData );
+    byte[] key = encoder.getBuffer();
+    return values[findSlot( key, length, (int) hash( key, length ) )];
+  }
+
+  /**
+   * @return the slot holding the key or the empty slot where it should go
+   */
+  private int findSlot( byte[] key, int length, int hash ) {
+    int slot = hash & mask;
+    int probeLength = 1;
+    while ( values[slot] != null && !( hashes[slot] == hash && equalsKey( slot, key, length ) ) ) {
+      slot = ( slot + 1 ) & mask;
+      probeLength++;
+    }
+    recordProbe( probeLength );
+    return slot;
+  }
+
+  private boolean equalsKey( int slot, byte[] key, int length ) {
+    if ( lengths[slot] != length ) {
+      return false;
+    }
+    byte[] slab = slabs[(int) ( offsets[slot] >>> SLAB_BITS )];
+    int position = (int) ( offsets[slot] & ( SLAB_SIZE - 1 ) );
+    for ( int i = 0; i < length; i++ ) {
+      if ( slab[position + i] != key[i] ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long append( byte[] key, int length ) {
+    if ( length > SLAB_SIZE ) {
+      // A key that doesn't fit in a slab gets a slab of its own
+      //
+      addSlab( length );
+      slabPosition = SLAB_SIZE;
+      System.arraycopy( key, 0, slabs[nrSlabs - 1], 0, length );
+      return (long) ( nrSlabs - 1 ) << SLAB_BITS;
+    }
+    if ( slabPosition + length > SLAB_SIZE ) {
+      addSlab( SLAB_SIZE );
+      slabPosition = 0;
+    }
+    long offset = ( (long) ( nrSlabs - 1 ) << SLAB_BITS ) + slabPosition;
+    System.arraycopy( key, 0, slabs[nrSlabs - 1], slabPosition, length );
+    slabPosition += length;
+    return offset;
+  }
+
+  private void addSlab( int slabSize ) {
+    if ( nrSlabs == slabs.length ) {
+      slabs = Arrays.copyOf( slabs, slabs.length * 2 );
+    }
+    slabs[nrSlabs++] = new byte[slabSize];
+    arenaBytes += slabSize;
+  }
+
+  private void resize() {
+    int[] oldHashes = hashes;
+    long[] oldOffsets = offsets;
+    int[] oldLengths = lengths;
+    Object[][] oldValues = values;
+    allocate( nextCapacity( oldHashes.length ) );
+
+    for ( int i = 0; i < oldHashes.length; i++ ) {
+      if ( oldValues[i] != null ) {
+        int slot = oldHashes[i] & mask;
+        while ( values[slot] != null ) {
+          slot = ( slot + 1 ) & mask;
+        }
+        hashes[slot] = oldHashes[i];
+        offsets[slot] = oldOffsets[i];
+        lengths[slot] = oldLengths[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * FNV-1a over the key bytes, finished with the MurmurHash3 finalizer
+   */
+  private static long hash( byte[] key, int length ) {
+    return hash( key, 0, length );
+  }
+
+  private static long hash( byte[] key, int position, int length ) {
+    long hash = 0xcbf29ce484222325L;
+    for ( int i = position; i < position + length; i++ ) {
+      hash ^= key[i] & 0xFF;
+      hash *= 0x100000001b3L;
+    }
+    return mix( hash );
+  }
+
+  @Override
+  public int getPartition( Object[] keyData, int nrPartitions ) throws KettleValueException {
+    int length = encoder.encodeKey( keyData );
+    return partitionFor( hash( encoder.getBuffer(), length ), nrPartitions );
+  }
+
+  @Override
+  public void writeEntry( DataOutputStream[] partitions, Object[] keyData, Object[] valueData,
+    RowMetaInterface valueMeta ) throws KettleException {
+    int length = encoder.encodeKey( keyData );
+    byte[] key = encoder.getBuffer();
+    DataOutputStream outputStream = partitions[partitionFor( hash( key, length ), partitions.length )];
+    writeEntry( outputStream, key, 0, length, valueData, valueMeta );
+  }
+
+  @Override
+  public void spill( DataOutputStream[] partitions, RowMetaInterface valueMeta ) throws KettleException {
+    for ( int i = 0; i < values.length; i++ ) {
+      if ( values[i] != null ) {
+        byte[] slab = slabs[(int) ( offsets[i] >>> SLAB_BITS )];
+        int position = (int) ( offsets[i] & ( SLAB_SIZE - 1 ) );
+        long hash = hash( slab, position, lengths[i] );
+        DataOutputStream outputStream = partitions[partitionFor( hash, partitions.length )];
+        writeEntry( outputStream, slab, position, lengths[i], values[i], valueMeta );
+      }
+    }
+    clear();
+  }
+
+  private void writeEntry( DataOutputStream outputStream, byte[] key, int position, int length, Object[] valueData,
+    RowMetaInterface valueMeta ) throws KettleException {
+    try {
+      outputStream.writeBoolean( true );
+      outputStream.writeInt( length );
+      outputStream.write( key, position, length );
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to write a lookup row to the spill file", e );
+    }
+    valueMeta.writeData( outputStream, valueData );
+  }
+
+  @Override
+  public boolean readEntry( DataInputStream inputStream, RowMetaInterface valueMeta ) throws KettleException,
+    SocketTimeoutException {
+    int length;
+    try {
+      if ( !inputStream.readBoolean() ) {
+        return false;
+      }
+      length = inputStream.readInt();
+      if ( length > readBuffer.length ) {
+        readBuffer = new byte[length];
+      }
+      inputStream.readFully( readBuffer, 0, length );
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to read a lookup row from the spill file", e );
+    }
+    Object[] valueData = valueMeta.readData( inputStream );
+    put( readBuffer, length, hash( readBuffer, length ), valueData );
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    clearArena();
+  }
+
+  @Override
+  protected long getKeyMemoryUsed() {
+    return (long) hashes.length * ( 4 + 8 + 4 ) + arenaBytes;
+  }
+}
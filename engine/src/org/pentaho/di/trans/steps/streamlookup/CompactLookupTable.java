@@ -0,0 +1,249 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.streamlookup;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.SocketTimeoutException;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * An open addressing hash table (linear probing) that maps the keys of the lookup rows onto the values to return. The
+ * keys are stored in primitive arrays instead of one wrapper object per row, the value rows are kept as they are.
+ * Probing the table doesn't allocate any objects.<br>
+ * <br>
+ * The table keeps track of an estimate of the memory it uses so that the step can spill the lookup rows to disk when
+ * the memory budget is exceeded. For that purpose the entries can be written to and read back from partition files,
+ * the partition of a key is derived from hash bits that are not used to address the table. In a partition file every
+ * entry is preceded by a boolean true, the end of the partition is marked with a boolean false (see
+ * {@link org.pentaho.di.trans.step.utils.PartitionedSpillFiles}). A table is not thread-safe.
+ */
+public abstract class CompactLookupTable {
+
+  protected static final int INITIAL_CAPACITY = 1024;
+  protected static final float MAX_LOAD_FACTOR = 0.7f;
+
+  protected final RowMetaInterface keyMeta;
+
+  /** The value rows, a null value marks an empty slot */
+  protected Object[][] values;
+
+  protected int size;
+  protected int resizeThreshold;
+
+  private long valueBytes;
+  private long nrProbes;
+  private long probeLength;
+  private int maxProbeLength;
+
+  /** The number of times the spilled partitions were split, selects the hash bits the partition is taken from */
+  private int partitionLevel;
+
+  protected CompactLookupTable( RowMetaInterface keyMeta ) {
+    this.keyMeta = keyMeta;
+  }
+
+  /**
+   * Add a lookup row to the table, a previous value for the same key is replaced.
+   *
+   * @param keyData
+   *          the key, in normal storage
+   * @param valueData
+   *          the values to return for the key
+   */
+  public abstract void put( Object[] keyData, Object[] valueData ) throws KettleValueException;
+
+  /**
+   * @param keyData
+   *          the key to look up, in normal storage
+   * @return the values for the given key or null if the key isn't in the table
+   */
+  public abstract Object[] get( Object[] keyData ) throws KettleValueException;
+
+  /**
+   * @return the partition of the given key, in the range 0..nrPartitions-1
+   */
+  public abstract int getPartition( Object[] keyData, int nrPartitions ) throws KettleValueException;
+
+  /**
+   * Write a lookup row to the partition of its key.
+   */
+  public abstract void writeEntry( DataOutputStream[] partitions, Object[] keyData, Object[] valueData,
+    RowMetaInterface valueMeta ) throws KettleException;
+
+  /**
+   * Write all the entries of this table to the partitions of their keys and clear the table.
+   */
+  public abstract void spill( DataOutputStream[] partitions, RowMetaInterface valueMeta ) throws KettleException;
+
+  /**
+   * Read an entry written by {@link #writeEntry(DataOutputStream[], Object[], Object[], RowMetaInterface)} or
+   * {@link #spill(DataOutputStream[], RowMetaInterface)} and add it to the table.
+   *
+   * @return false if there are no more entries in the stream
+   */
+  public abstract boolean readEntry( DataInputStream inputStream, RowMetaInterface valueMeta ) throws KettleException,
+    SocketTimeoutException;
+
+  /**
+   * Remove all entries, keeping the allocated capacity.
+   */
+  public void clear() {
+    values = new Object[values.length][];
+    size = 0;
+    valueBytes = 0;
+  }
+
+  /**
+   * @return the number of keys in the table
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the number of slots in the table
+   */
+  public int getCapacity() {
+    return values.length;
+  }
+
+  /**
+   * @return the fraction of the slots that is in use
+   */
+  public float getLoadFactor() {
+    return (float) size / values.length;
+  }
+
+  /**
+   * @return the estimated number of bytes used by the table, including the value rows
+   */
+  public long getMemoryUsed() {
+    return (long) values.length * 4 + valueBytes + getKeyMemoryUsed();
+  }
+
+  /**
+   * @return the number of bytes used to store the keys
+   */
+  protected abstract long getKeyMemoryUsed();
+
+  /**
+   * @return the number of times the spilled partitions were split
+   */
+  public int getPartitionLevel() {
+    return partitionLevel;
+  }
+
+  /**
+   * Select the hash bits the partitions are taken from. A spilled partition that doesn't fit in memory is split on the
+   * next level: its keys are spread over all the partitions of that level.
+   *
+   * @param partitionLevel
+   *          the number of times the spilled partitions were split, 0 for the first partitioning
+   */
+  public void setPartitionLevel( int partitionLevel ) {
+    this.partitionLevel = partitionLevel;
+  }
+
+  /**
+   * @return the highest partition level that still has hash bits left to spread the keys over the given number of
+   *         partitions
+   */
+  public static int getMaxPartitionLevel( int nrPartitions ) {
+    int level = 0;
+    long divisor = nrPartitions;
+    while ( divisor * nrPartitions <= 1L << 32 ) {
+      divisor *= nrPartitions;
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * @return the average number of slots inspected per lookup
+   */
+  public double getAverageProbeLength() {
+    return nrProbes == 0 ? 0.0 : (double) probeLength / nrProbes;
+  }
+
+  /**
+   * @return the maximum number of slots inspected by a single lookup
+   */
+  public int getMaxProbeLength() {
+    return maxProbeLength;
+  }
+
+  protected void recordProbe( int length ) {
+    nrProbes++;
+    probeLength += length;
+    if ( length > maxProbeLength ) {
+      maxProbeLength = length;
+    }
+  }
+
+  protected void addValue( int slot, Object[] valueData ) {
+    if ( values[slot] != null ) {
+      valueBytes -= RowDataUtil.estimateRowSize( values[slot] );
+    } else {
+      size++;
+    }
+    values[slot] = valueData;
+    valueBytes += RowDataUtil.estimateRowSize( valueData );
+  }
+
+  protected static int nextCapacity( int capacity ) {
+    if ( capacity >= 1 << 30 ) {
+      throw new IllegalStateException( "The stream lookup table can't grow beyond " + capacity + " slots" );
+    }
+    return capacity << 1;
+  }
+
+  /**
+   * The 64-bit finalizer of MurmurHash3, spreads all the bits of the key over the hash.
+   */
+  protected static long mix( long key ) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return key;
+  }
+
+  /**
+   * The slot is taken from the lower 32 bits of the hash, the partition from the upper 32 bits. That way all the slots
+   * of a table remain usable after the rows have been partitioned. Every partition level uses the next digit of the
+   * upper bits in base nrPartitions.
+   */
+  protected int partitionFor( long hash, int nrPartitions ) {
+    long bits = hash >>> 32;
+    for ( int i = 0; i < partitionLevel; i++ ) {
+      bits /= nrPartitions;
+    }
+    return (int) ( bits % nrPartitions );
+  }
+}
@@ -0,0 +1,219 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.streamlookup;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Lookup table for a single Integer key. The keys are kept in a long[], so there is no boxing and no entry object per
+ * row.
+ */
+public class LongKeyLookupTable extends CompactLookupTable {
+
+  private final ValueMetaInterface keyValueMeta;
+
+  private long[] keys;
+  private int mask;
+
+  /** The value for the null key, which doesn't fit in the long[] */
+  private Object[] nullKeyValue;
+
+  /**
+   * @param keyMeta
+   *          the layout of the key: a single Integer
+   */
+  public LongKeyLookupTable( RowMetaInterface keyMeta ) {
+    super( keyMeta );
+    this.keyValueMeta = keyMeta.getValueMeta( 0 );
+    allocate( INITIAL_CAPACITY );
+  }
+
+  private void allocate( int capacity ) {
+    keys = new long[capacity];
+    values = new Object[capacity][];
+    mask = capacity - 1;
+    resizeThreshold = (int) ( capacity * MAX_LOAD_FACTOR );
+  }
+
+  @Override
+  public void put( Object[] keyData, Object[] valueData ) throws KettleValueException {
+    if ( keyValueMeta.isNull( keyData[0] ) ) {
+      nullKeyValue = valueData;
+      return;
+    }
+    put( keyValueMeta.getInteger( keyData[0] ).longValue(), valueData );
+  }
+
+  /**
+   * Add a value for the given key, a previous value for the same key is replaced.
+   */
+  public void put( long key, Object[] valueData ) {
+    int slot = findSlot( key );
+    if ( values[slot] == null ) {
+      if ( size >= resizeThreshold ) {
+        resize();
+        slot = findSlot( key );
+      }
+      keys[slot] = key;
+    }
+    addValue( slot, valueData );
+  }
+
+  @Override
+  public Object[] get( Object[] keyData ) throws KettleValueException {
+    if ( keyValueMeta.isNull( keyData[0] ) ) {
+      return nullKeyValue;
+    }
+    return get( keyValueMeta.getInteger( keyData[0] ).longValue() );
+  }
+
+  /**
+   * @return the values for the given key or null if the key isn't in the table
+   */
+  public Object[] get( long key ) {
+    return values[findSlot( key )];
+  }
+
+  /**
+   * @return the slot holding the key or the empty slot where it should go
+   */
+  private int findSlot( long key ) {
+    int slot = (int) mix( key ) & mask;
+    int length = 1;
+    while ( values[slot] != null && keys[slot] != key ) {
+      slot = ( slot + 1 ) & mask;
+      length++;
+    }
+    recordProbe( length );
+    return slot;
+  }
+
+  private void resize() {
+    long[] oldKeys = keys;
+    Object[][] oldValues = values;
+    allocate( nextCapacity( oldKeys.length ) );
+
+    for ( int i = 0; i < oldKeys.length; i++ ) {
+      if ( oldValues[i] != null ) {
+        int slot = (int) mix( oldKeys[i] ) & mask;
+        while ( values[slot] != null ) {
+          slot = ( slot + 1 ) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  @Override
+  public int getPartition( Object[] keyData, int nrPartitions ) throws KettleValueException {
+    if ( keyValueMeta.isNull( keyData[0] ) ) {
+      return 0;
+    }
+    return partitionFor( mix( keyValueMeta.getInteger( keyData[0] ).longValue() ), nrPartitions );
+  }
+
+  @Override
+  public void writeEntry( DataOutputStream[] partitions, Object[] keyData, Object[] valueData,
+    RowMetaInterface valueMeta ) throws KettleException {
+    if ( keyValueMeta.isNull( keyData[0] ) ) {
+      writeEntry( partitions[0], true, 0L, valueData, valueMeta );
+    } else {
+      long key = keyValueMeta.getInteger( keyData[0] ).longValue();
+      writeEntry( partitions[partitionFor( mix( key ), partitions.length )], false, key, valueData, valueMeta );
+    }
+  }
+
+  @Override
+  public void spill( DataOutputStream[] partitions, RowMetaInterface valueMeta ) throws KettleException {
+    if ( nullKeyValue != null ) {
+      writeEntry( partitions[0], true, 0L, nullKeyValue, valueMeta );
+    }
+    for ( int i = 0; i < keys.length; i++ ) {
+      if ( values[i] != null ) {
+        writeEntry( partitions[partitionFor( mix( keys[i] ), partitions.length )], false, keys[i], values[i],
+          valueMeta );
+      }
+    }
+    clear();
+  }
+
+  private void writeEntry( DataOutputStream outputStream, boolean nullKey, long key, Object[] valueData,
+    RowMetaInterface valueMeta ) throws KettleException {
+    try {
+      outputStream.writeBoolean( true );
+      outputStream.writeBoolean( nullKey );
+      outputStream.writeLong( key );
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to write a lookup row to the spill file", e );
+    }
+    valueMeta.writeData( outputStream, valueData );
+  }
+
+  @Override
+  public boolean readEntry( DataInputStream inputStream, RowMetaInterface valueMeta ) throws KettleException,
+    SocketTimeoutException {
+    boolean nullKey;
+    long key;
+    try {
+      if ( !inputStream.readBoolean() ) {
+        return false;
+      }
+      nullKey = inputStream.readBoolean();
+      key = inputStream.readLong();
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to read a lookup row from the spill file", e );
+    }
+    Object[] valueData = valueMeta.readData( inputStream );
+    if ( nullKey ) {
+      nullKeyValue = valueData;
+    } else {
+      put( key, valueData );
+    }
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    nullKeyValue = null;
+  }
+
+  @Override
+  public int size() {
+    return nullKeyValue == null ? size : size + 1;
+  }
+
+  @Override
+  protected long getKeyMemoryUsed() {
+    return (long) keys.length * 8;
+  }
+}
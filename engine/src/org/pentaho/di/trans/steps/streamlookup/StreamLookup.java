@@ -22,16 +22,21 @@
 
 package org.pentaho.di.trans.steps.streamlookup;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.util.Collections;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.hash.ByteArrayHashIndex;
+import org.pentaho.di.core.logging.Metrics;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -46,6 +51,7 @@ import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.utils.PartitionedSpillFiles;
 
 /**
  * Looks up information by first reading data into a hash table (in memory)
@@ -59,6 +65,9 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class StreamLookup extends BaseStep implements StepInterface {
   private static Class<?> PKG = StreamLookupMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /** The number of hash partitions the lookup and input rows are spread over once the memory budget is exceeded */
+  private static final int NR_SPILL_PARTITIONS = 16;
+
   private StreamLookupMeta meta;
   private StreamLookupData data;
 
@@ -198,6 +207,10 @@ public class StreamLookup extends BaseStep implements StepInterface {
 
         data.cacheKeyMeta = cacheKeyMeta;
         data.cacheValueMeta = cacheValueMeta;
+
+        if ( !meta.isMemoryPreservationActive() ) {
+          data.table = createLookupTable( cacheKeyMeta );
+        }
       }
 
       Object[] keyData = new Object[keyNrs.length];
@@ -218,15 +231,69 @@ public class StreamLookup extends BaseStep implements StepInterface {
       rowData = getRowFrom( rowSet );
     }
 
+    if ( data.lookupSpill != null ) {
+      // The input rows need to be partitioned the same way as the lookup rows
+      //
+      data.lookupSpill.closeOutputStreams();
+      data.inputSpill =
+        new PartitionedSpillFiles( "streamlookup", data.lookupSpill.getNrPartitions(), getSpillDirectory(), this );
+    }
+
     return true;
   }
 
+  /**
+   * @return a compact lookup table for the given keys or null if the keys can't be stored in one
+   */
+  private CompactLookupTable createLookupTable( RowMetaInterface keyMeta ) throws KettleValueException {
+    if ( keyMeta.size() == 1 && keyMeta.getValueMeta( 0 ).isInteger() ) {
+      return new LongKeyLookupTable( keyMeta );
+    }
+    if ( BinaryKeyLookupTable.isSupported( keyMeta ) ) {
+      return new BinaryKeyLookupTable( keyMeta );
+    }
+    return null;
+  }
+
+  private String getSpillDirectory() {
+    String directory = meta.getSpillDirectory();
+    return environmentSubstitute( Utils.isEmpty( directory ) ? "%%java.io.tmpdir%%" : directory );
+  }
+
   private Object[] lookupValues( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
     // See if we need to stop.
     if ( isStopped() ) {
       return null;
     }
 
+    Object[] lu = getLookupKey( rowMeta, row );
+
+    Object[] add = null;
+
+    if ( data.hasLookupRows ) {
+      try {
+        if ( meta.getKeystream().length > 0 ) {
+          add = getFromCache( data.cacheKeyMeta, lu );
+        } else {
+   // Just take the first element in the hashtable...
+          throw new KettleStepException( BaseMessages.getString( PKG, "StreamLookup.Log.GotRowWithoutKeys" ) );
+        }
+      } catch ( Exception e ) {
+        throw new KettleStepException( e );
+      }
+    }
+
+    if ( add == null ) { // nothing was found, unknown code: add the specified default value...
+      add = data.nullIf;
+    }
+
+    return RowDataUtil.addRowData( row, rowMeta.size(), add );
+  }
+
+  /**
+   * @return the key values of the given input row, converted to the types of the lookup keys
+   */
+  private Object[] getLookupKey( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
     if ( data.lookupColumnIndex == null ) {
       String[] names = data.lookupMeta.getFieldNames();
       data.lookupColumnIndex = new int[names.length];
@@ -270,30 +337,11 @@ public class StreamLookup extends BaseStep implements StepInterface {
       }
     }
 
-    Object[] add = null;
-
-    if ( data.hasLookupRows ) {
-      try {
-        if ( meta.getKeystream().length > 0 ) {
-          add = getFromCache( data.cacheKeyMeta, lu );
-        } else {
-   // Just take the first element in the hashtable...
-          throw new KettleStepException( BaseMessages.getString( PKG, "StreamLookup.Log.GotRowWithoutKeys" ) );
-        }
-      } catch ( Exception e ) {
-        throw new KettleStepException( e );
-      }
-    }
-
-    if ( add == null ) { // nothing was found, unknown code: add the specified default value...
-      add = data.nullIf;
-    }
-
-    return RowDataUtil.addRowData( row, rowMeta.size(), add );
+    return lu;
   }
 
   private void addToCache( RowMetaInterface keyMeta, Object[] keyData, RowMetaInterface valueMeta,
-    Object[] valueData ) throws KettleValueException {
+    Object[] valueData ) throws KettleException {
     if ( meta.isMemoryPreservationActive() ) {
       if ( meta.isUsingSortedList() ) {
         KeyValue keyValue = new KeyValue( keyData, valueData );
@@ -328,6 +376,15 @@ public class StreamLookup extends BaseStep implements StepInterface {
             .put( RowMeta.extractData( keyMeta, keyData ), RowMeta.extractData( valueMeta, valueData ) );
         }
       }
+    } else if ( data.table != null ) {
+      if ( data.lookupSpill != null ) {
+        data.table.writeEntry( data.lookupSpill.getOutputStreams(), keyData, valueData, valueMeta );
+      } else {
+        data.table.put( keyData, valueData );
+        if ( data.memoryBudget > 0 && data.table.getMemoryUsed() > data.memoryBudget ) {
+          spillLookupTable();
+        }
+      }
     } else {
       // We can't just put Object[] in the map The compare function is not in it.
       // We need to wrap in and use that. Let's use RowMetaAndData for this one.
@@ -366,11 +423,183 @@ public class StreamLookup extends BaseStep implements StepInterface {
           }
         }
       }
+    } else if ( data.table != null ) {
+      return data.table.get( keyData );
     } else {
       return data.look.get( new RowMetaAndData( keyMeta, keyData ) );
     }
   }
 
+  /**
+   * The lookup table exceeds the memory budget: move its content to partition files on disk. From now on the lookup
+   * rows and the input rows are partitioned on the hash of the key and every partition is joined separately once all
+   * the input rows are read (grace hash join).
+   */
+  private void spillLookupTable() throws KettleException {
+    if ( log.isBasic() ) {
+      logBasic( BaseMessages.getString( PKG, "StreamLookup.Log.SpillingLookupRows", data.table.getMemoryUsed(),
+        data.memoryBudget, NR_SPILL_PARTITIONS ) );
+    }
+    data.lookupSpill = new PartitionedSpillFiles( "streamlookup", NR_SPILL_PARTITIONS, getSpillDirectory(), this );
+    data.table.spill( data.lookupSpill.getOutputStreams(), data.cacheValueMeta );
+  }
+
+  private void spillInputRow( PartitionedSpillFiles inputSpill, Object[] row ) throws KettleException {
+    Object[] key = getLookupKey( getInputRowMeta(), row );
+    DataOutputStream outputStream =
+      inputSpill.getOutputStream( data.table.getPartition( key, inputSpill.getNrPartitions() ) );
+    try {
+      outputStream.writeBoolean( true );
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to write an input row to the spill file", e );
+    }
+    getInputRowMeta().writeData( outputStream, row );
+  }
+
+  /**
+   * Load the lookup rows of every partition in the table and look up the input rows of the same partition.
+   */
+  private void processSpilledPartitions() throws KettleException {
+    data.inputSpill.closeOutputStreams();
+    processSpilledPartitions( data.lookupSpill, data.inputSpill, 0 );
+    deleteSpillFiles();
+  }
+
+  /**
+   * Join the partitions of one partition level. A partition whose lookup rows exceed the memory budget is split on the
+   * next level and its partitions are joined in turn.
+   */
+  private void processSpilledPartitions( PartitionedSpillFiles lookupSpill, PartitionedSpillFiles inputSpill,
+    int level ) throws KettleException {
+    int nrPartitions = inputSpill.getNrPartitions();
+    for ( int partition = 0; partition < nrPartitions && !isStopped(); partition++ ) {
+      data.table.clear();
+      DataInputStream lookupStream = lookupSpill.openInputStream( partition );
+      DataInputStream inputStream = null;
+      try {
+        boolean fits = true;
+        while ( fits && data.table.readEntry( lookupStream, data.cacheValueMeta ) ) {
+          fits = data.memoryBudget <= 0 || data.table.getMemoryUsed() <= data.memoryBudget;
+        }
+        if ( !fits ) {
+          splitPartition( lookupStream, inputSpill, partition, level + 1 );
+          continue;
+        }
+        log.snap( Metrics.METRIC_STEP_STREAM_LOOKUP_SPILLED_PARTITIONS );
+        if ( log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "StreamLookup.Log.ProcessingPartition", partition + 1,
+            nrPartitions, data.table.size() ) );
+        }
+
+        inputStream = inputSpill.openInputStream( partition );
+        while ( inputStream.readBoolean() ) {
+          Object[] outputRow = lookupValues( getInputRowMeta(), getInputRowMeta().readData( inputStream ) );
+          if ( outputRow == null ) {
+            break; // stopped
+          }
+          putRow( data.outputRowMeta, outputRow );
+        }
+        recordTableStatistics();
+      } catch ( IOException e ) {
+        throw new KettleException( "Unable to read stream lookup spill partition " + partition, e );
+      } finally {
+        try {
+          lookupStream.close();
+          if ( inputStream != null ) {
+            inputStream.close();
+          }
+        } catch ( IOException e ) {
+          // Ignore, the files are removed anyway
+        }
+      }
+    }
+  }
+
+  /**
+   * Spread the lookup and input rows of a spilled partition over the partitions of the next level and join those.
+   *
+   * @param lookupStream
+   *          the lookup rows of the partition, the rows read so far are in the table
+   * @param inputSpill
+   *          the partitions holding the input rows
+   * @param partition
+   *          the partition to split
+   * @param level
+   *          the partition level to split the partition on
+   */
+  private void splitPartition( DataInputStream lookupStream, PartitionedSpillFiles inputSpill, int partition,
+    int level ) throws KettleException, IOException {
+    if ( level > CompactLookupTable.getMaxPartitionLevel( NR_SPILL_PARTITIONS ) ) {
+      throw new KettleException( BaseMessages.getString( PKG, "StreamLookup.Exception.PartitionTooLarge",
+        partition + 1, data.memoryBudget, level - 1 ) );
+    }
+    if ( log.isBasic() ) {
+      logBasic( BaseMessages.getString( PKG, "StreamLookup.Log.SplittingPartition", partition + 1,
+        NR_SPILL_PARTITIONS ) );
+    }
+
+    int parentLevel = data.table.getPartitionLevel();
+    PartitionedSpillFiles lookupSplit = null;
+    PartitionedSpillFiles inputSplit = null;
+    DataInputStream inputStream = null;
+    try {
+      data.table.setPartitionLevel( level );
+      lookupSplit = new PartitionedSpillFiles( "streamlookup", NR_SPILL_PARTITIONS, getSpillDirectory(), this );
+      do {
+        if ( data.table.getMemoryUsed() > data.memoryBudget ) {
+          data.table.spill( lookupSplit.getOutputStreams(), data.cacheValueMeta );
+        }
+      } while ( data.table.readEntry( lookupStream, data.cacheValueMeta ) );
+      data.table.spill( lookupSplit.getOutputStreams(), data.cacheValueMeta );
+      lookupSplit.closeOutputStreams();
+
+      inputSplit = new PartitionedSpillFiles( "streamlookup", NR_SPILL_PARTITIONS, getSpillDirectory(), this );
+      inputStream = inputSpill.openInputStream( partition );
+      while ( inputStream.readBoolean() ) {
+        spillInputRow( inputSplit, getInputRowMeta().readData( inputStream ) );
+      }
+      inputSplit.closeOutputStreams();
+
+      processSpilledPartitions( lookupSplit, inputSplit, level );
+    } finally {
+      data.table.setPartitionLevel( parentLevel );
+      if ( inputStream != null ) {
+        inputStream.close();
+      }
+      if ( lookupSplit != null ) {
+        lookupSplit.delete();
+      }
+      if ( inputSplit != null ) {
+        inputSplit.delete();
+      }
+    }
+  }
+
+  private void deleteSpillFiles() {
+    if ( data.lookupSpill != null ) {
+      data.lookupSpill.delete();
+      data.lookupSpill = null;
+    }
+    if ( data.inputSpill != null ) {
+      data.inputSpill.delete();
+      data.inputSpill = null;
+    }
+  }
+
+  private void recordTableStatistics() {
+    if ( data.table == null ) {
+      return;
+    }
+    log.snap( Metrics.METRIC_STEP_STREAM_LOOKUP_MEMORY_USED, data.table.getMemoryUsed() );
+    log.snap( Metrics.METRIC_STEP_STREAM_LOOKUP_LOAD_FACTOR, Math.round( data.table.getLoadFactor() * 100 ) );
+    log.snap( Metrics.METRIC_STEP_STREAM_LOOKUP_PROBE_LENGTH, data.table.getMaxProbeLength() );
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "StreamLookup.Log.TableStatistics", data.table.size(),
+        data.table.getMemoryUsed(), String.format( "%.2f", data.table.getLoadFactor() ),
+        String.format( "%.2f", data.table.getAverageProbeLength() ), data.table.getMaxProbeLength() ) );
+    }
+  }
+
   @Override
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (StreamLookupMeta) smi;
@@ -394,6 +623,12 @@ public class StreamLookup extends BaseStep implements StepInterface {
     if ( r == null ) {
       // no more input to be expected...
 
+      if ( data.inputSpill != null ) {
+        processSpilledPartitions();
+      } else {
+        recordTableStatistics();
+      }
+
       if ( log.isDetailed() ) {
         logDetailed( BaseMessages.getString( PKG, "StreamLookup.Log.StoppedProcessingWithEmpty", getLinesRead()
           + "" ) );
@@ -443,6 +678,13 @@ public class StreamLookup extends BaseStep implements StepInterface {
       handleNullIf();
     }
 
+    if ( data.inputSpill != null ) {
+      // The lookup rows didn't fit in memory, the row is looked up once all the input is read
+      //
+      spillInputRow( data.inputSpill, r );
+      return true;
+    }
+
     Object[] outputRow = lookupValues( getInputRowMeta(), r ); // Do the actual lookup in the hastable.
     if ( outputRow == null ) {
       setOutputDone(); // signal end to receiver(s)
@@ -468,6 +710,7 @@ public class StreamLookup extends BaseStep implements StepInterface {
 
     if ( super.init( smi, sdi ) ) {
       data.readLookupValues = true;
+      data.memoryBudget = Const.toLong( environmentSubstitute( meta.getMemoryBudget() ), 0L ) * 1024 * 1024;
 
       return true;
     }
@@ -483,6 +726,8 @@ public class StreamLookup extends BaseStep implements StepInterface {
     data.list = null;
     data.hashIndex = null;
     data.longIndex = null;
+    data.table = null;
+    deleteSpillFiles();
 
     super.dispose( smi, sdi );
   }
@@ -36,6 +36,7 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.errorhandling.StreamInterface;
+import org.pentaho.di.trans.step.utils.PartitionedSpillFiles;
 
 /**
  * @author Matt
@@ -74,6 +75,18 @@ public class StreamLookupData extends BaseStepData implements StepDataInterface
   public ByteArrayHashIndex hashIndex;
   public LongHashIndex longIndex;
 
+  /** The compact lookup table, null if memory preservation is active or the keys can't be stored in one */
+  public CompactLookupTable table;
+
+  /** The maximum estimated size of the lookup table in bytes, 0 means no limit */
+  public long memoryBudget;
+
+  /** The partitioned lookup rows once the memory budget is exceeded, null as long as they fit in memory */
+  public PartitionedSpillFiles lookupSpill;
+
+  /** The partitioned input rows, waiting to be joined with the lookup partition with the same number */
+  public PartitionedSpillFiles inputSpill;
+
   public RowMetaInterface lookupMeta;
 
   public RowMetaInterface infoMeta;
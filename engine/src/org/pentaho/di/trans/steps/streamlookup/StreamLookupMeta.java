@@ -101,6 +101,17 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
   @Injection( name = "INTEGER_PAIR" )
   private boolean usingIntegerPair;
 
+  /**
+   * The maximum size of the lookup table in MB before the lookup rows are spilled to disk, empty or 0 for no limit. Only
+   * used when memory preservation isn't active.
+   */
+  @Injection( name = "MEMORY_BUDGET" )
+  private String memoryBudget;
+
+  /** The directory to write the spill files to once the memory budget is exceeded */
+  @Injection( name = "SPILL_DIRECTORY" )
+  private String spillDirectory;
+
   public StreamLookupMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -165,6 +176,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
       setMemoryPreservationActive( "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "preserve_memory" ) ) );
       setUsingSortedList( "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "sorted_list" ) ) );
       setUsingIntegerPair( "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "integer_pair" ) ) );
+      setMemoryBudget( XMLHandler.getTagValue( stepnode, "memory_budget" ) );
+      setSpillDirectory( XMLHandler.getTagValue( stepnode, "spill_directory" ) );
 
       Node lookup = XMLHandler.getSubNode( stepnode, "lookup" );
       nrkeys = XMLHandler.countNodes( lookup, "key" );
@@ -212,6 +225,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
     setMemoryPreservationActive( true );
     setUsingSortedList( false );
     setUsingIntegerPair( false );
+    setMemoryBudget( null );
+    setSpillDirectory( "%%java.io.tmpdir%%" );
 
     allocate( 0, 0 );
   }
@@ -255,6 +270,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
     retval.append( "    " ).append( XMLHandler.addTagValue( "preserve_memory", isMemoryPreservationActive() ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "sorted_list", isUsingSortedList() ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "integer_pair", isUsingIntegerPair() ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "memory_budget", getMemoryBudget() ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "spill_directory", getSpillDirectory() ) );
 
     retval.append( "    <lookup>" ).append( Const.CR );
     for ( int i = 0; i < getKeystream().length; i++ ) {
@@ -289,6 +306,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
       setMemoryPreservationActive( rep.getStepAttributeBoolean( id_step, "preserve_memory" ) );
       setUsingSortedList( rep.getStepAttributeBoolean( id_step, "sorted_list" ) );
       setUsingIntegerPair( rep.getStepAttributeBoolean( id_step, "integer_pair" ) );
+      setMemoryBudget( rep.getStepAttributeString( id_step, "memory_budget" ) );
+      setSpillDirectory( rep.getStepAttributeString( id_step, "spill_directory" ) );
 
       int nrkeys = rep.countNrStepAttributes( id_step, "lookup_key_name" );
       int nrvalues = rep.countNrStepAttributes( id_step, "return_value_name" );
@@ -325,6 +344,8 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
       rep.saveStepAttribute( id_transformation, id_step, "preserve_memory", isMemoryPreservationActive() );
       rep.saveStepAttribute( id_transformation, id_step, "sorted_list", isUsingSortedList() );
       rep.saveStepAttribute( id_transformation, id_step, "integer_pair", isUsingIntegerPair() );
+      rep.saveStepAttribute( id_transformation, id_step, "memory_budget", getMemoryBudget() );
+      rep.saveStepAttribute( id_transformation, id_step, "spill_directory", getSpillDirectory() );
 
       for ( int i = 0; i < getKeystream().length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, "lookup_key_name", getKeystream()[i] );
@@ -664,4 +685,34 @@ public class StreamLookupMeta extends BaseStepMeta implements StepMetaInterface
   public void setUsingIntegerPair( boolean usingIntegerPair ) {
     this.usingIntegerPair = usingIntegerPair;
   }
+
+  /**
+   * @return the maximum size of the lookup table in MB before the lookup rows are spilled to disk, empty for no limit
+   */
+  public String getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * @param memoryBudget
+   *          the maximum size of the lookup table in MB before the lookup rows are spilled to disk, empty for no limit
+   */
+  public void setMemoryBudget( String memoryBudget ) {
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * @return the directory to write the spill files to, empty for the system temporary directory
+   */
+  public String getSpillDirectory() {
+    return spillDirectory;
+  }
+
+  /**
+   * @param spillDirectory
+   *          the directory to write the spill files to, empty for the system temporary directory
+   */
+  public void setSpillDirectory( String spillDirectory ) {
+    this.spillDirectory = spillDirectory;
+  }
 }
@@ -0,0 +1,558 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.pentaho.di.trans.steps.tableoutput;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleDatabaseBatchException;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Writes the rows of the Table Output step with a small pool of writer threads, each with its own database
+ * connection. The step thread fills a batch of commit size rows per table and hands it over to the next writer, so
+ * building rows and waiting on the database overlap.<br>
+ * <br>
+ * Every writer executes and commits its batches one after the other in the order they were handed over: commits are
+ * ordered per connection. The number of batches that are handed over but not yet completed is bounded, the step
+ * thread blocks when the limit is reached. Completed batches are handed back to the step thread in the order they were
+ * handed over. Since a batch only holds the rows of one table, the rows that are passed on to the next steps keep their
+ * order within each table. When the table name comes from a field, the rows of different tables can be passed on in
+ * another order than they came in.<br>
+ * <br>
+ * The failed rows of a batch are reported in the batch itself, the step thread sends them to the error handling. If
+ * there is no error handling, the batch is rolled back on its connection and the failure is reported instead. A
+ * writer doesn't write any of its later batches after such a failure, they are reported as failed as well.
+ */
+public class PipelinedTableWriter {
+
+  /**
+   * A batch of rows for one table, written and committed as one unit by a single writer.
+   */
+  public static class Batch {
+    private final String tableName;
+    private final List<Object[]> insertRows;
+    private final List<Object[]> outputRows;
+
+    private String[] errors;
+    private String[] errorCodes;
+    private KettleException failure;
+
+    Batch( String tableName, int size ) {
+      this.tableName = tableName;
+      this.insertRows = new ArrayList<Object[]>( size );
+      this.outputRows = new ArrayList<Object[]>( size );
+    }
+
+    void add( Object[] insertRow, Object[] outputRow ) {
+      insertRows.add( insertRow );
+      outputRows.add( outputRow );
+    }
+
+    void setError( int rowNr, String error, String errorCode ) {
+      if ( errors == null ) {
+        errors = new String[insertRows.size()];
+        errorCodes = new String[insertRows.size()];
+      }
+      errors[rowNr] = error;
+      errorCodes[rowNr] = errorCode;
+    }
+
+    /**
+     * @return the name of the table the rows are written to
+     */
+    public String getTableName() {
+      return tableName;
+    }
+
+    /**
+     * @return the number of rows in this batch
+     */
+    public int size() {
+      return outputRows.size();
+    }
+
+    /**
+     * @return the row to pass on to the next steps for the given row of this batch
+     */
+    public Object[] getOutputRow( int rowNr ) {
+      return outputRows.get( rowNr );
+    }
+
+    /**
+     * @return the error description if the given row couldn't be written or null if it was written
+     */
+    public String getError( int rowNr ) {
+      return errors == null ? null : errors[rowNr];
+    }
+
+    /**
+     * @return the error code if the given row couldn't be written or null if it was written
+     */
+    public String getErrorCode( int rowNr ) {
+      return errorCodes == null ? null : errorCodes[rowNr];
+    }
+
+    /**
+     * @return the exception that made the whole batch fail or null if the batch was committed
+     */
+    public KettleException getFailure() {
+      return failure;
+    }
+  }
+
+  /**
+   * One writer thread with its own connection and prepared statements.
+   */
+  private class Writer {
+    private final ExecutorService executor;
+    private final Database db;
+    private final RowMetaInterface rowMeta;
+    private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
+    // Set once a batch failed or the writer is closed without commit: the batches still queued are skipped
+    //
+    private volatile boolean stopped;
+
+    // The lazily converted fields are converted a batch at a time, the values are bound with the native metadata
+    //
+    private final int[] lazyFieldIndexes;
+    private final RowMetaInterface nativeRowMeta;
+
+    Writer( final int writerNr, Database db ) {
+      this.db = db;
+      // Conversions during setValues() aren't thread-safe, every writer needs its own metadata
+      //
+      this.rowMeta = insertRowMeta.clone();
+
+      List<Integer> lazyFields = new ArrayList<Integer>();
+      for ( int i = 0; i < rowMeta.size(); i++ ) {
+        if ( rowMeta.getValueMeta( i ).isStorageBinaryString() ) {
+          lazyFields.add( i );
+        }
+      }
+      if ( lazyFields.isEmpty() ) {
+        this.lazyFieldIndexes = null;
+        this.nativeRowMeta = null;
+      } else {
+        this.lazyFieldIndexes = new int[lazyFields.size()];
+        this.nativeRowMeta = rowMeta.clone();
+        for ( int i = 0; i < lazyFieldIndexes.length; i++ ) {
+          lazyFieldIndexes[i] = lazyFields.get( i );
+          ValueMetaInterface valueMeta = nativeRowMeta.getValueMeta( lazyFieldIndexes[i] );
+          valueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+          valueMeta.setStorageMetadata( null );
+        }
+      }
+      this.executor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+          Thread thread = new Thread( r, "Table output writer " + writerNr + " for: " + threadName );
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+    }
+
+    Future<Batch> submit( final Batch batch ) {
+      return executor.submit( new Callable<Batch>() {
+        @Override
+        public Batch call() {
+          if ( stopped ) {
+            batch.failure = new KettleException( "Batch of rows for table [" + batch.tableName
+              + "] not written, the writer was stopped after an earlier failure or a rollback" );
+            return batch;
+          }
+          try {
+            write( batch );
+          } catch ( KettleException e ) {
+            stopped = true;
+            batch.failure = e;
+          } catch ( Exception e ) {
+            stopped = true;
+            batch.failure = new KettleException( "Unexpected error writing a batch of rows to table ["
+              + batch.tableName + "]", e );
+          }
+          return batch;
+        }
+      } );
+    }
+
+    private void write( Batch batch ) throws KettleException {
+      PreparedStatement ps = statements.get( batch.tableName );
+      if ( ps == null ) {
+        ps = db.prepareSQL( db.getInsertStatement( schemaName, batch.tableName, rowMeta ) );
+        statements.put( batch.tableName, ps );
+      }
+
+      // The position of every row in the JDBC batch, -1 if it couldn't be added
+      //
+      int[] positions = new int[batch.insertRows.size()];
+      Object[][] nativeRows = convertLazyFields( batch.insertRows );
+      int nrAdded = 0;
+      for ( int i = 0; i < positions.length; i++ ) {
+        Object[] row = batch.insertRows.get( i );
+        try {
+          if ( nativeRows != null ) {
+            db.setValues( nativeRowMeta, nativeRows[i], ps );
+          } else {
+            db.setValues( rowMeta, row, ps );
+          }
+          db.insertRow( ps, true, false );
+          positions[i] = nrAdded++;
+        } catch ( KettleDatabaseException e ) {
+          failRow( batch, positions, i, e );
+        }
+      }
+
+      try {
+        if ( db.getUseBatchInsert( true ) ) {
+          ps.executeBatch();
+          db.commit();
+          ps.clearBatch();
+        } else {
+          db.commit();
+        }
+      } catch ( SQLException ex ) {
+        KettleDatabaseBatchException be = Database.createKettleDatabaseBatchException( "Error updating batch", ex );
+        db.clearBatch( ps );
+        if ( !errorHandling ) {
+          db.rollback();
+          throw new KettleException( getBatchErrorMessage( batch.tableName, be ), be );
+        }
+        db.commit( true );
+        failRows( batch, positions, be );
+      }
+    }
+
+    /**
+     * @return copies of the rows with the lazily converted fields converted, or null if there are no such fields or if
+     *         one of the values can't be converted. The rows are then converted one by one while they're bound.
+     */
+    private Object[][] convertLazyFields( List<Object[]> insertRows ) {
+      if ( lazyFieldIndexes == null ) {
+        return null;
+      }
+      Object[][] rows = insertRows.toArray( new Object[insertRows.size()][] );
+      Object[][] nativeRows = new Object[rows.length][];
+      for ( int i = 0; i < rows.length; i++ ) {
+        nativeRows[i] = rows[i].clone();
+      }
+      Object[] values = new Object[rows.length];
+      try {
+        for ( int index : lazyFieldIndexes ) {
+          rowMeta.convertToNormalStorageType( rows, rows.length, index, values );
+          for ( int i = 0; i < rows.length; i++ ) {
+            nativeRows[i][index] = values[i];
+          }
+        }
+      } catch ( KettleValueException e ) {
+        return null;
+      }
+      return nativeRows;
+    }
+
+    private void failRow( Batch batch, int[] positions, int rowNr, KettleDatabaseException e )
+      throws KettleException {
+      positions[rowNr] = -1;
+      if ( errorHandling ) {
+        batch.setError( rowNr, e.toString(), "TOP001" );
+      } else if ( ignoreErrors ) {
+        // The row is simply not written, the step thread logs the warning
+        //
+        batch.setError( rowNr, e.getMessage(), null );
+      } else {
+        db.clearBatch( statements.get( batch.tableName ) );
+        db.rollback();
+        throw new KettleException( "Error inserting row into table [" + batch.tableName + "] with values: "
+          + rowMeta.getString( batch.insertRows.get( rowNr ) ), e );
+      }
+    }
+
+    private void failRows( Batch batch, int[] positions, KettleDatabaseBatchException be ) {
+      int[] updateCounts = be.getUpdateCounts();
+      List<Exception> exceptions = be.getExceptionsList();
+      int errNr = 0;
+      for ( int i = 0; i < positions.length; i++ ) {
+        int position = positions[i];
+        if ( position < 0 ) {
+          continue;
+        }
+        if ( updateCounts == null ) {
+          // Without update counts we can't tell which rows made it, consider them all to be in error.
+          //
+          batch.setError( i, be.toString(), "TOP0003" );
+        } else if ( position >= updateCounts.length || updateCounts[position] == Statement.EXECUTE_FAILED ) {
+          String message = be.toString();
+          if ( exceptions != null && errNr < exceptions.size() ) {
+            message = exceptions.get( errNr++ ).toString();
+          }
+          batch.setError( i, message, "TOP0002" );
+        }
+      }
+    }
+
+    void close( boolean commit ) throws KettleException {
+      if ( !commit ) {
+        stopped = true;
+      }
+      executor.shutdown();
+      try {
+        while ( !executor.awaitTermination( 1, TimeUnit.SECONDS ) ) {
+          // Wait for the batch that is being written, the queued batches are skipped if stopped
+        }
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+      }
+      try {
+        for ( PreparedStatement ps : statements.values() ) {
+          db.closePreparedStatement( ps );
+        }
+        if ( !commit ) {
+          db.rollback();
+        }
+      } finally {
+        db.disconnect();
+      }
+    }
+  }
+
+  private final RowMetaInterface insertRowMeta;
+  private final String schemaName;
+  private final int batchSize;
+  private final int maxInFlight;
+  private final boolean errorHandling;
+  private final boolean ignoreErrors;
+  private final String threadName;
+
+  private final List<Writer> writers;
+  private final Map<String, Batch> openBatches;
+  private final LinkedList<Future<Batch>> inFlight;
+  private final List<Batch> completed;
+
+  private int nextWriter;
+  private int nrBatches;
+  private long waitTime;
+
+  /**
+   * @param insertRowMeta
+   *          the layout of the rows to insert
+   * @param schemaName
+   *          the schema of the target tables
+   * @param batchSize
+   *          the number of rows per batch, one commit per batch
+   * @param maxInFlight
+   *          the maximum number of batches that are handed over to the writers but not yet completed
+   * @param errorHandling
+   *          true if the failed rows are sent to the error handling of the step
+   * @param ignoreErrors
+   *          true if rows that can't be inserted are skipped
+   * @param threadName
+   *          used to name the writer threads
+   */
+  public PipelinedTableWriter( RowMetaInterface insertRowMeta, String schemaName, int batchSize, int maxInFlight,
+    boolean errorHandling, boolean ignoreErrors, String threadName ) {
+    this.insertRowMeta = insertRowMeta;
+    this.schemaName = schemaName;
+    this.batchSize = Math.max( 1, batchSize );
+    this.maxInFlight = Math.max( 1, maxInFlight );
+    this.errorHandling = errorHandling;
+    this.ignoreErrors = ignoreErrors;
+    this.threadName = threadName;
+
+    this.writers = new ArrayList<Writer>();
+    this.openBatches = new LinkedHashMap<String, Batch>();
+    this.inFlight = new LinkedList<Future<Batch>>();
+    this.completed = new ArrayList<Batch>();
+  }
+
+  /**
+   * Start one writer per connection. The writers own the connections from now on and disconnect them in
+   * {@link #close(boolean)}.
+   *
+   * @param connections
+   *          the database connections for the writers, connected and with auto-commit disabled
+   */
+  public void start( List<Database> connections ) {
+    for ( Database db : connections ) {
+      writers.add( new Writer( writers.size() + 1, db ) );
+    }
+  }
+
+  /**
+   * Add a row to the batch of its table. A full batch is handed over to the next writer.
+   *
+   * @param tableName
+   *          the table to insert the row into
+   * @param insertRow
+   *          the values to insert
+   * @param outputRow
+   *          the row to pass on to the next steps once the batch is committed
+   * @throws KettleException
+   *           in case the step thread got interrupted while waiting for the writers
+   */
+  public void addRow( String tableName, Object[] insertRow, Object[] outputRow ) throws KettleException {
+    Batch batch = openBatches.get( tableName );
+    if ( batch == null ) {
+      batch = new Batch( tableName, batchSize );
+      openBatches.put( tableName, batch );
+    }
+    batch.add( insertRow, outputRow );
+    if ( batch.size() >= batchSize ) {
+      openBatches.remove( tableName );
+      submit( batch );
+    }
+  }
+
+  private void submit( Batch batch ) throws KettleException {
+    while ( inFlight.size() >= maxInFlight ) {
+      completeFirst();
+    }
+    Writer writer = writers.get( nextWriter );
+    nextWriter = ( nextWriter + 1 ) % writers.size();
+    inFlight.add( writer.submit( batch ) );
+  }
+
+  private void completeFirst() throws KettleException {
+    long start = System.currentTimeMillis();
+    try {
+      completed.add( inFlight.removeFirst().get() );
+      nrBatches++;
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( "Interrupted while waiting for a table output writer", e );
+    } catch ( ExecutionException e ) {
+      throw new KettleException( "Unexpected error in a table output writer", e.getCause() );
+    } finally {
+      waitTime += System.currentTimeMillis() - start;
+    }
+  }
+
+  /**
+   * @return the batches that are completed, in the order they were handed over. The step thread doesn't wait for the
+   *         writers.
+   */
+  public List<Batch> getCompletedBatches() throws KettleException {
+    while ( !inFlight.isEmpty() && inFlight.getFirst().isDone() ) {
+      completeFirst();
+    }
+    return takeCompleted();
+  }
+
+  /**
+   * Hand over the batches that aren't full yet and wait until all batches are written.
+   *
+   * @return the batches that are completed, in the order they were handed over
+   */
+  public List<Batch> flush() throws KettleException {
+    for ( Batch batch : new ArrayList<Batch>( openBatches.values() ) ) {
+      submit( batch );
+    }
+    openBatches.clear();
+    while ( !inFlight.isEmpty() ) {
+      completeFirst();
+    }
+    return takeCompleted();
+  }
+
+  private List<Batch> takeCompleted() {
+    if ( completed.isEmpty() ) {
+      return new ArrayList<Batch>();
+    }
+    List<Batch> batches = new ArrayList<Batch>( completed );
+    completed.clear();
+    return batches;
+  }
+
+  /**
+   * Stop the writers and close their connections. Batches that aren't handed over yet are discarded. Without commit,
+   * the batches the writers didn't start yet are skipped as well.
+   *
+   * @param commit
+   *          false to roll back the work that isn't committed yet
+   * @throws KettleException
+   *           in case one or more connections couldn't be closed properly
+   */
+  public void close( boolean commit ) throws KettleException {
+    openBatches.clear();
+    KettleException exception = null;
+    for ( Writer writer : writers ) {
+      try {
+        writer.close( commit );
+      } catch ( KettleException e ) {
+        exception = e;
+      }
+    }
+    writers.clear();
+    inFlight.clear();
+    if ( exception != null ) {
+      throw exception;
+    }
+  }
+
+  /**
+   * @return the number of batches the writers completed
+   */
+  public int getNrBatches() {
+    return nrBatches;
+  }
+
+  /**
+   * @return the time in ms the step thread spent waiting for the writers
+   */
+  public long getWaitTime() {
+    return waitTime;
+  }
+
+  static String getBatchErrorMessage( String tableName, KettleDatabaseBatchException be ) {
+    StringBuilder msg = new StringBuilder( "Error batch inserting rows into table [" + tableName + "]." );
+    msg.append( Const.CR );
+    msg.append( "Errors encountered (first 10):" ).append( Const.CR );
+    for ( int x = 0; x < be.getExceptionsList().size() && x < 10; x++ ) {
+      Exception exception = be.getExceptionsList().get( x );
+      if ( exception.getMessage() != null ) {
+        msg.append( exception.getMessage() ).append( Const.CR );
+      }
+    }
+    return msg.toString();
+  }
+}
@@ -25,6 +25,7 @@ package org.pentaho.di.trans.steps.tableoutput;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -74,6 +75,16 @@ public class TableOutput extends BaseStep implements StepInterface {
     Object[] r = getRow(); // this also waits for a previous step to be finished.
     if ( r == null ) { // no more input to be expected...
 
+      if ( data.writer != null ) {
+        try {
+          processWrittenBatches( data.writer.flush() );
+        } catch ( KettleException e ) {
+          logError( "Because of an error, this step can't continue: ", e );
+          setErrors( 1 );
+          stopAll();
+          setOutputDone(); // signal end to receiver(s)
+        }
+      }
       return false;
     }
 
@@ -233,6 +244,15 @@ public class TableOutput extends BaseStep implements StepInterface {
       throw new KettleStepException( "The tablename is not defined (empty)" );
     }
 
+    if ( data.pipelinedWrite ) {
+      if ( data.writer == null ) {
+        data.writer = startPipelinedWriter();
+      }
+      data.writer.addRow( tableName, insertRowData, outputRowData );
+      processWrittenBatches( data.writer.getCompletedBatches() );
+      return null;
+    }
+
     insertStatement = data.preparedStatements.get( tableName );
     if ( insertStatement == null ) {
       String sql =
@@ -426,6 +446,82 @@ public class TableOutput extends BaseStep implements StepInterface {
     return log.isRowLevel();
   }
 
+  /**
+   * Start the writer threads of the pipelined write mode, each with its own connection.
+   */
+  protected PipelinedTableWriter startPipelinedWriter() throws KettleException {
+    List<Database> connections = new ArrayList<Database>( data.writerThreads );
+    try {
+      for ( int i = 0; i < data.writerThreads; i++ ) {
+        connections.add( connectWriter() );
+      }
+    } catch ( KettleException e ) {
+      for ( Database db : connections ) {
+        db.disconnect();
+      }
+      throw e;
+    }
+
+    PipelinedTableWriter writer =
+      new PipelinedTableWriter( data.insertRowMeta, environmentSubstitute( meta.getSchemaName() ), data.commitSize,
+        data.maxInFlightBatches, getStepMeta().isDoingErrorHandling(), meta.ignoreErrors(), getStepname() + "."
+          + getCopy() );
+    writer.start( connections );
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "TableOutput.Log.PipelinedWriteStarted", data.writerThreads,
+        data.maxInFlightBatches ) );
+    }
+    return writer;
+  }
+
+  /**
+   * @return a new connection for a writer thread of the pipelined write mode
+   */
+  protected Database connectWriter() throws KettleException {
+    Database db = new Database( this, meta.getDatabaseMeta() );
+    db.shareVariablesWith( this );
+    db.connect( getPartitionID() );
+    db.setCommit( data.commitSize );
+    return db;
+  }
+
+  /**
+   * Pass on the rows of the batches the writer threads completed. The rows keep their input order within each table,
+   * the rows of different tables can be passed on in another order. Failed rows go to the error handling.
+   */
+  protected void processWrittenBatches( List<PipelinedTableWriter.Batch> batches ) throws KettleException {
+    for ( PipelinedTableWriter.Batch batch : batches ) {
+      if ( batch.getFailure() != null ) {
+        throw batch.getFailure();
+      }
+      for ( int i = 0; i < batch.size(); i++ ) {
+        Object[] row = batch.getOutputRow( i );
+        String error = batch.getError( i );
+        if ( error == null ) {
+          putRow( data.outputRowMeta, row );
+          incrementLinesOutput();
+        } else if ( batch.getErrorCode( i ) != null ) {
+          putError( data.outputRowMeta, row, 1L, error, null, batch.getErrorCode( i ) );
+        } else {
+          // Ignored insert error
+          //
+          if ( data.warnings < 20 ) {
+            if ( log.isBasic() ) {
+              logBasic( "WARNING: Couldn't insert row into table: "
+                + data.outputRowMeta.getString( row ) + Const.CR + error );
+            }
+          } else if ( data.warnings == 20 ) {
+            if ( log.isBasic() ) {
+              logBasic( "FINAL WARNING (no more then 20 displayed): Couldn't insert row into table: "
+                + data.outputRowMeta.getString( row ) + Const.CR + error );
+            }
+          }
+          data.warnings++;
+        }
+      }
+    }
+  }
+
   private void processBatchException( String errorMessage, int[] updateCounts, List<Exception> exceptionsList ) throws KettleException {
     // There was an error with the commit
     // We should put all the failing rows out there...
@@ -496,6 +592,17 @@ public class TableOutput extends BaseStep implements StepInterface {
             && data.commitSize > 0 && !meta.isReturningGeneratedKeys()
             && !getTransMeta().isUsingUniqueConnections() && !data.useSafePoints;
 
+        // The pipelined write mode hands full batches over to writer threads with their own connections.
+        // It builds on the batch mode: one batch per commit.
+        //
+        data.pipelinedWrite = meta.isPipelinedWrite() && data.batchMode;
+        if ( meta.isPipelinedWrite() && !data.batchMode ) {
+          logBasic( BaseMessages.getString( PKG, "TableOutput.Log.PipelinedWriteNotPossible" ) );
+        }
+        data.writerThreads = Math.max( 1, Const.toInt( environmentSubstitute( meta.getWriterThreads() ), 2 ) );
+        data.maxInFlightBatches =
+          Math.max( 1, Const.toInt( environmentSubstitute( meta.getMaxInFlightBatches() ), 4 ) );
+
         // Per PDI-6211 : give a warning that batch mode operation in combination with step error handling can lead to
         // incorrectly processed rows.
         //
@@ -543,6 +650,12 @@ public class TableOutput extends BaseStep implements StepInterface {
             && ( ( getCopy() == 0 && getUniqueStepNrAcrossSlaves() == 0 ) || !Utils.isEmpty( getPartitionID() ) ) ) {
             data.db.truncateTable( environmentSubstitute( meta.getSchemaName() ), environmentSubstitute( meta
               .getTableName() ) );
+
+            // The writer threads use other connections, don't keep them waiting for the truncate
+            //
+            if ( data.pipelinedWrite ) {
+              data.db.commit( true );
+            }
           }
         }
 
@@ -562,6 +675,20 @@ public class TableOutput extends BaseStep implements StepInterface {
 
     if ( data.db != null ) {
       try {
+        if ( data.writer != null ) {
+          try {
+            if ( getErrors() == 0 ) {
+              processWrittenBatches( data.writer.flush() );
+            }
+          } finally {
+            data.writer.close( getErrors() == 0 );
+            if ( log.isDetailed() ) {
+              logDetailed( BaseMessages.getString( PKG, "TableOutput.Log.PipelinedWriteStatistics", data.writer
+                .getNrBatches(), data.writerThreads, data.writer.getWaitTime() ) );
+            }
+            data.writer = null;
+          }
+        }
         for ( String schemaTable : data.preparedStatements.keySet() ) {
           // Get a commit counter per prepared statement to keep track of separate tables, etc.
           //
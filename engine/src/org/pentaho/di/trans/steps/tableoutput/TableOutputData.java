@@ -78,6 +78,14 @@ public class TableOutputData extends BaseStepData implements StepDataInterface {
 
   public int commitSize;
 
+  /** Hand the batches over to a pool of writer threads? */
+  public boolean pipelinedWrite;
+  public int writerThreads;
+  public int maxInFlightBatches;
+
+  /** The pool of writer threads in pipelined write mode, started with the first row */
+  public PipelinedTableWriter writer;
+
   public TableOutputData() {
     super();
 
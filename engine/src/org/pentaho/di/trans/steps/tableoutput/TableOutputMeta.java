@@ -79,6 +79,15 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
   private boolean ignoreErrors;
   private boolean useBatchUpdate;
 
+  /** Write the batches with a pool of writer threads, each with its own connection */
+  private boolean pipelinedWrite;
+
+  /** The number of writer threads in pipelined write mode */
+  private String writerThreads;
+
+  /** The maximum number of batches handed over to the writers but not yet committed */
+  private String maxInFlightBatches;
+
   private boolean partitioningEnabled;
   private String partitioningField;
   private boolean partitioningDaily;
@@ -242,6 +251,8 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
     super(); // allocate BaseStepMeta
     useBatchUpdate = true;
     commitSize = "1000";
+    writerThreads = "2";
+    maxInFlightBatches = "4";
 
     fieldStream = new String[0];
     fieldDatabase = new String[0];
@@ -402,6 +413,52 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
     return useBatchUpdate;
   }
 
+  /**
+   * @return true if the batches are written by a pool of writer threads, each with its own connection. Only used in
+   *         batch mode.
+   */
+  public boolean isPipelinedWrite() {
+    return pipelinedWrite;
+  }
+
+  /**
+   * @param pipelinedWrite
+   *          true to write the batches with a pool of writer threads
+   */
+  public void setPipelinedWrite( boolean pipelinedWrite ) {
+    this.pipelinedWrite = pipelinedWrite;
+  }
+
+  /**
+   * @return the number of writer threads (and connections) in pipelined write mode
+   */
+  public String getWriterThreads() {
+    return writerThreads;
+  }
+
+  /**
+   * @param writerThreads
+   *          the number of writer threads (and connections) in pipelined write mode
+   */
+  public void setWriterThreads( String writerThreads ) {
+    this.writerThreads = writerThreads;
+  }
+
+  /**
+   * @return the maximum number of batches that are handed over to the writers but not yet committed
+   */
+  public String getMaxInFlightBatches() {
+    return maxInFlightBatches;
+  }
+
+  /**
+   * @param maxInFlightBatches
+   *          the maximum number of batches that are handed over to the writers but not yet committed
+   */
+  public void setMaxInFlightBatches( String maxInFlightBatches ) {
+    this.maxInFlightBatches = maxInFlightBatches;
+  }
+
   private void readData( Node stepnode, List<? extends SharedObjectInterface> databases ) throws KettleXMLException {
     try {
       String con = XMLHandler.getTagValue( stepnode, "connection" );
@@ -412,6 +469,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
       truncateTable = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "truncate" ) );
       ignoreErrors = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "ignore_errors" ) );
       useBatchUpdate = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "use_batch" ) );
+      pipelinedWrite = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "pipelined_write" ) );
+      writerThreads = Const.NVL( XMLHandler.getTagValue( stepnode, "writer_threads" ), "2" );
+      maxInFlightBatches = Const.NVL( XMLHandler.getTagValue( stepnode, "max_in_flight_batches" ), "4" );
 
       // If not present it will be false to be compatible with pre-v3.2
       specifyFields = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "specify_fields" ) );
@@ -448,6 +508,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
     databaseMeta = null;
     tableName = "";
     commitSize = "1000";
+    pipelinedWrite = false;
+    writerThreads = "2";
+    maxInFlightBatches = "4";
 
     partitioningEnabled = false;
     partitioningMonthly = true;
@@ -470,6 +533,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
     retval.append( "    " + XMLHandler.addTagValue( "truncate", truncateTable ) );
     retval.append( "    " + XMLHandler.addTagValue( "ignore_errors", ignoreErrors ) );
     retval.append( "    " + XMLHandler.addTagValue( "use_batch", useBatchUpdate ) );
+    retval.append( "    " + XMLHandler.addTagValue( "pipelined_write", pipelinedWrite ) );
+    retval.append( "    " + XMLHandler.addTagValue( "writer_threads", writerThreads ) );
+    retval.append( "    " + XMLHandler.addTagValue( "max_in_flight_batches", maxInFlightBatches ) );
     retval.append( "    " + XMLHandler.addTagValue( "specify_fields", specifyFields ) );
 
     retval.append( "    " + XMLHandler.addTagValue( "partitioning_enabled", partitioningEnabled ) );
@@ -506,6 +572,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
       truncateTable = rep.getStepAttributeBoolean( id_step, "truncate" );
       ignoreErrors = rep.getStepAttributeBoolean( id_step, "ignore_errors" );
       useBatchUpdate = rep.getStepAttributeBoolean( id_step, "use_batch" );
+      pipelinedWrite = rep.getStepAttributeBoolean( id_step, "pipelined_write" );
+      writerThreads = Const.NVL( rep.getStepAttributeString( id_step, "writer_threads" ), "2" );
+      maxInFlightBatches = Const.NVL( rep.getStepAttributeString( id_step, "max_in_flight_batches" ), "4" );
       specifyFields = rep.getStepAttributeBoolean( id_step, "specify_fields" );
 
       partitioningEnabled = rep.getStepAttributeBoolean( id_step, "partitioning_enabled" );
@@ -544,6 +613,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
       rep.saveStepAttribute( id_transformation, id_step, "truncate", truncateTable );
       rep.saveStepAttribute( id_transformation, id_step, "ignore_errors", ignoreErrors );
       rep.saveStepAttribute( id_transformation, id_step, "use_batch", useBatchUpdate );
+      rep.saveStepAttribute( id_transformation, id_step, "pipelined_write", pipelinedWrite );
+      rep.saveStepAttribute( id_transformation, id_step, "writer_threads", writerThreads );
+      rep.saveStepAttribute( id_transformation, id_step, "max_in_flight_batches", maxInFlightBatches );
       rep.saveStepAttribute( id_transformation, id_step, "specify_fields", specifyFields );
 
       rep.saveStepAttribute( id_transformation, id_step, "partitioning_enabled", partitioningEnabled );
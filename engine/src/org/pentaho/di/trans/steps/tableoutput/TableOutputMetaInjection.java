@@ -48,6 +48,9 @@ public class TableOutputMetaInjection implements StepMetaInjectionInterface {
       SPECIFY_DATABASE_FIELDS( ValueMetaInterface.TYPE_STRING, "Specify database fields? (Y/N)" ),
       IGNORE_INSERT_ERRORS( ValueMetaInterface.TYPE_STRING, "Ignore insert errors? (Y/N)" ),
       USE_BATCH_UPDATE( ValueMetaInterface.TYPE_STRING, "Use batch update for inserts? (Y/N)" ),
+      PIPELINED_WRITE( ValueMetaInterface.TYPE_STRING, "Write the batches with a pool of writer threads? (Y/N)" ),
+      WRITER_THREADS( ValueMetaInterface.TYPE_STRING, "The number of writer threads" ),
+      MAX_IN_FLIGHT_BATCHES( ValueMetaInterface.TYPE_STRING, "The maximum number of batches being written" ),
 
       PARTITION_OVER_TABLES( ValueMetaInterface.TYPE_STRING, "Partition data over tables? (Y/N)" ),
       PARTITIONING_FIELD( ValueMetaInterface.TYPE_STRING, "Partitioning field" ),
@@ -107,6 +110,7 @@ public class TableOutputMetaInjection implements StepMetaInjectionInterface {
       new Entry[] {
         Entry.TARGET_SCHEMA, Entry.TARGET_TABLE, Entry.COMMIT_SIZE, Entry.TRUNCATE_TABLE,
         Entry.SPECIFY_DATABASE_FIELDS, Entry.IGNORE_INSERT_ERRORS, Entry.USE_BATCH_UPDATE,
+        Entry.PIPELINED_WRITE, Entry.WRITER_THREADS, Entry.MAX_IN_FLIGHT_BATCHES,
         Entry.PARTITION_OVER_TABLES, Entry.PARTITIONING_FIELD, Entry.PARTITION_DATA_PER,
         Entry.TABLE_NAME_DEFINED_IN_FIELD, Entry.TABLE_NAME_FIELD, Entry.STORE_TABLE_NAME,
         Entry.RETURN_AUTO_GENERATED_KEY, Entry.AUTO_GENERATED_KEY_FIELD, };
@@ -203,6 +207,15 @@ public class TableOutputMetaInjection implements StepMetaInjectionInterface {
         case USE_BATCH_UPDATE:
           meta.setUseBatchUpdate( "Y".equalsIgnoreCase( lookValue ) );
           break;
+        case PIPELINED_WRITE:
+          meta.setPipelinedWrite( "Y".equalsIgnoreCase( lookValue ) );
+          break;
+        case WRITER_THREADS:
+          meta.setWriterThreads( lookValue );
+          break;
+        case MAX_IN_FLIGHT_BATCHES:
+          meta.setMaxInFlightBatches( lookValue );
+          break;
         case PARTITION_OVER_TABLES:
           meta.setPartitioningEnabled( "Y".equalsIgnoreCase( lookValue ) );
           break;
@@ -251,6 +264,9 @@ public class TableOutputMetaInjection implements StepMetaInjectionInterface {
     list.add( StepInjectionUtil.getEntry( Entry.SPECIFY_DATABASE_FIELDS, meta.specifyFields() ) );
     list.add( StepInjectionUtil.getEntry( Entry.IGNORE_INSERT_ERRORS, meta.ignoreErrors() ) );
     list.add( StepInjectionUtil.getEntry( Entry.USE_BATCH_UPDATE, meta.useBatchUpdate() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.PIPELINED_WRITE, meta.isPipelinedWrite() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.WRITER_THREADS, meta.getWriterThreads() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.MAX_IN_FLIGHT_BATCHES, meta.getMaxInFlightBatches() ) );
 
     list.add( StepInjectionUtil.getEntry( Entry.PARTITION_OVER_TABLES, meta.isPartitioningEnabled() ) );
     list.add( StepInjectionUtil.getEntry( Entry.PARTITIONING_FIELD, meta.getPartitioningField() ) );
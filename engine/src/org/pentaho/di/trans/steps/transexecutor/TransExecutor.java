@@ -34,13 +34,16 @@ import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.KettleLogStore;
 import org.pentaho.di.core.logging.LoggingRegistry;
+import org.pentaho.di.core.logging.Metrics;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.job.DelegationListener;
+import org.pentaho.di.trans.SingleThreadedTransExecutor;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransExecutionConfiguration;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransMeta.TransformationType;
 import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
@@ -187,6 +190,32 @@ public class TransExecutor extends BaseStep implements StepInterface {
       return;
     }
     transExecutorData.groupTimeStart = System.currentTimeMillis();
+    long groupStart = System.nanoTime();
+
+    Result result;
+    if ( transExecutorData.reuseTransformation ) {
+      result = executeReusedTransformation( groupStart );
+    } else {
+      result = executeNewTransformation( groupStart );
+    }
+
+    collectTransResults( result );
+    collectExecutionResults( result );
+    collectExecutionResultFiles( result );
+
+    transExecutorData.groupBuffer.clear();
+
+    if ( log.isGatheringMetrics() ) {
+      log.snap( Metrics.METRIC_STEP_TRANS_EXECUTOR_GROUP_SUM_TIME, ( System.nanoTime() - groupStart ) / 1000 );
+      log.snap( Metrics.METRIC_STEP_TRANS_EXECUTOR_GROUP_COUNT );
+    }
+  }
+
+  /**
+   * Build, prepare and run a new transformation for the current group of rows.
+   */
+  private Result executeNewTransformation( long groupStart ) throws KettleException {
+    TransExecutorData transExecutorData = getData();
 
     discardLogLines( transExecutorData );
 
@@ -205,16 +234,13 @@ public class TransExecutor extends BaseStep implements StepInterface {
 
     try {
       executorTrans.prepareExecution( getTrans().getArguments() );
+      snapGroupOverhead( groupStart );
 
       // run transformation
       executorTrans.startThreads();
 
       // Inform the parent transformation we started something here...
-      for ( DelegationListener delegationListener : getTrans().getDelegationListeners() ) {
-        // TODO: copy some settings in the transformation execution configuration, not strictly needed
-        // but the execution configuration information is useful in case of a transformation re-start on Carte
-        delegationListener.transformationDelegationStarted( executorTrans, new TransExecutionConfiguration() );
-      }
+      fireTransformationDelegationStarted( executorTrans );
 
       // Wait a while until we're done with the transformation
       executorTrans.waitUntilFinished();
@@ -225,12 +251,85 @@ public class TransExecutor extends BaseStep implements StepInterface {
       result.setResult( false );
       result.setNrErrors( 1 );
     }
+    return result;
+  }
 
-    collectTransResults( result );
-    collectExecutionResults( result );
-    collectExecutionResultFiles( result );
+  /**
+   * Run the current group of rows through the transformation that is prepared once for this step copy. The first group
+   * builds and prepares the transformation, the next groups only reset it. The rows are processed on the single
+   * threaded engine, in the thread of this step.
+   */
+  private Result executeReusedTransformation( long groupStart ) throws KettleException {
+    TransExecutorData transExecutorData = getData();
+    SingleThreadedTransExecutor executor = transExecutorData.getReusedTransExecutor();
 
-    transExecutorData.groupBuffer.clear();
+    Trans executorTrans;
+    if ( executor == null ) {
+      executorTrans = createInternalTrans();
+      transExecutorData.setExecutorTrans( executorTrans );
+
+      // keep track for drill down in Spoon...
+      getTrans().addActiveSubTransformation( getStepname(), executorTrans );
+    } else {
+      executorTrans = executor.getTrans();
+
+      // Only keep the logging of the current group around
+      KettleLogStore.discardLines( executorTrans.getLogChannelId(), false );
+    }
+
+    // Pass parameter values
+    passParametersToTrans();
+
+    Result result = new Result();
+    result.setRows( transExecutorData.groupBuffer );
+    executorTrans.setPreviousResult( result );
+
+    try {
+      boolean ok;
+      if ( executor == null ) {
+        executorTrans.prepareExecution( getTrans().getArguments() );
+        executorTrans.startThreads();
+        fireTransformationDelegationStarted( executorTrans );
+
+        executor = new SingleThreadedTransExecutor( executorTrans );
+        transExecutorData.setReusedTransExecutor( executor );
+        ok = executor.init();
+      } else {
+        ok = executor.reset();
+      }
+      snapGroupOverhead( groupStart );
+
+      if ( ok ) {
+        ok = executor.executeToCompletion();
+      }
+
+      result = executorTrans.getResult();
+      if ( !ok ) {
+        result.setResult( false );
+        result.setNrErrors( Math.max( 1, result.getNrErrors() ) );
+      }
+    } catch ( KettleException e ) {
+      log.logError( "An error occurred executing the transformation: ", e );
+      result.setResult( false );
+      result.setNrErrors( 1 );
+    }
+    return result;
+  }
+
+  private void fireTransformationDelegationStarted( Trans executorTrans ) {
+    for ( DelegationListener delegationListener : getTrans().getDelegationListeners() ) {
+      // TODO: copy some settings in the transformation execution configuration, not strictly needed
+      // but the execution configuration information is useful in case of a transformation re-start on Carte
+      delegationListener.transformationDelegationStarted( executorTrans, new TransExecutionConfiguration() );
+    }
+  }
+
+  private void snapGroupOverhead( long groupStart ) {
+    if ( log.isGatheringMetrics() ) {
+      long overhead = ( System.nanoTime() - groupStart ) / 1000;
+      log.snap( Metrics.METRIC_STEP_TRANS_EXECUTOR_OVERHEAD_SUM_TIME, overhead );
+      log.snap( Metrics.METRIC_STEP_TRANS_EXECUTOR_OVERHEAD_MAX_TIME, overhead );
+    }
   }
 
   @VisibleForTesting
@@ -413,6 +512,15 @@ public class TransExecutor extends BaseStep implements StepInterface {
           }
           transExecutorData.groupTimeStart = System.currentTimeMillis();
 
+          // Can we prepare the transformation once and reuse it for every group?
+          transExecutorData.reuseTransformation = false;
+          if ( meta.isReusingTransformation() ) {
+            transExecutorData.reuseTransformation = isSingleThreadedSupported( transExecutorData.getExecutorTransMeta() );
+            if ( transExecutorData.reuseTransformation ) {
+              transExecutorData.getExecutorTransMeta().setTransformationType( TransformationType.SingleThreaded );
+            }
+          }
+
           // Is there a grouping field set?
           if ( !Utils.isEmpty( meta.getGroupField() ) ) {
             transExecutorData.groupField = environmentSubstitute( meta.getGroupField() );
@@ -431,6 +539,16 @@ public class TransExecutor extends BaseStep implements StepInterface {
     return false;
   }
 
+  private boolean isSingleThreadedSupported( TransMeta executorTransMeta ) {
+    StepMeta unsupportedStep = SingleThreadedTransExecutor.getUnsupportedStep( executorTransMeta );
+    if ( unsupportedStep != null ) {
+      logBasic( BaseMessages.getString( PKG, "TransExecutor.Log.TransformationCantBeReused",
+        unsupportedStep.getName() ) );
+      return false;
+    }
+    return true;
+  }
+
   @VisibleForTesting
   TransMeta loadExecutorTransMeta() throws KettleException {
     return TransExecutorMeta.loadTransMeta( meta, meta.getRepository(), meta.getMetaStore(), this );
@@ -439,6 +557,14 @@ public class TransExecutor extends BaseStep implements StepInterface {
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     TransExecutorData transExecutorData = getData();
     transExecutorData.groupBuffer = null;
+    if ( transExecutorData.getReusedTransExecutor() != null ) {
+      try {
+        transExecutorData.getReusedTransExecutor().dispose();
+      } catch ( KettleException e ) {
+        logError( "Unable to dispose of the reused transformation", e );
+      }
+      transExecutorData.setReusedTransExecutor( null );
+    }
     super.dispose( smi, sdi );
   }
 
@@ -28,6 +28,7 @@ import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.SingleThreadedTransExecutor;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStepData;
@@ -42,6 +43,9 @@ public class TransExecutorData extends BaseStepData implements StepDataInterface
   private Trans executorTrans;
   private TransMeta executorTransMeta;
 
+  /** The executor of the prepared transformation that is reused for every group, null if it isn't reused */
+  private SingleThreadedTransExecutor reusedTransExecutor;
+
   private RowMetaInterface inputRowMeta;
 
   private RowMetaInterface executorStepOutputRowMeta;
@@ -54,6 +58,7 @@ public class TransExecutorData extends BaseStepData implements StepDataInterface
   public int groupTime;
   public long groupTimeStart;
   public String groupField;
+  public boolean reuseTransformation;
   public int groupFieldIndex;
   public ValueMetaInterface groupFieldMeta;
 
@@ -84,6 +89,14 @@ public class TransExecutorData extends BaseStepData implements StepDataInterface
     this.executorTransMeta = executorTransMeta;
   }
 
+  public SingleThreadedTransExecutor getReusedTransExecutor() {
+    return reusedTransExecutor;
+  }
+
+  public void setReusedTransExecutor( SingleThreadedTransExecutor reusedTransExecutor ) {
+    this.reusedTransExecutor = reusedTransExecutor;
+  }
+
   public RowMetaInterface getInputRowMeta() {
     return inputRowMeta;
   }
@@ -115,6 +115,12 @@ public class TransExecutorMeta extends BaseStepMeta implements StepMetaInterface
    */
   private String groupTime;
 
+  /**
+   * Prepare the transformation once per step copy and execute every group of rows with the same (reset) instance on
+   * the single threaded engine, instead of building a new transformation for every group (false default)
+   */
+  private boolean reusingTransformation;
+
   private TransExecutorParameters parameters;
 
   private String executionResultTargetStep;
@@ -284,6 +290,7 @@ public class TransExecutorMeta extends BaseStepMeta implements StepMetaInterface
     retval.append( "    " ).append( XMLHandler.addTagValue( "group_size", groupSize ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "group_field", groupField ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "group_time", groupTime ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "reuse_transformation", reusingTransformation ) );
 
     // Add the mapping parameters too
     //
@@ -351,6 +358,7 @@ public class TransExecutorMeta extends BaseStepMeta implements StepMetaInterface
       groupSize = XMLHandler.getTagValue( stepnode, "group_size" );
       groupField = XMLHandler.getTagValue( stepnode, "group_field" );
       groupTime = XMLHandler.getTagValue( stepnode, "group_time" );
+      reusingTransformation = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "reuse_transformation" ) );
 
       // Load the mapping parameters too..
       //
@@ -412,6 +420,7 @@ public class TransExecutorMeta extends BaseStepMeta implements StepMetaInterface
     groupSize = rep.getStepAttributeString( id_step, "group_size" );
     groupField = rep.getStepAttributeString( id_step, "group_field" );
     groupTime = rep.getStepAttributeString( id_step, "group_time" );
+    reusingTransformation = rep.getStepAttributeBoolean( id_step, "reuse_transformation" );
 
     parameters = new TransExecutorParameters( rep, id_step );
 
@@ -460,6 +469,7 @@ public class TransExecutorMeta extends BaseStepMeta implements StepMetaInterface
     rep.saveStepAttribute( id_transformation, id_step, "group_size", groupSize );
     rep.saveStepAttribute( id_transformation, id_step, "group_field", groupField );
     rep.saveStepAttribute( id_transformation, id_step, "group_time", groupTime );
+    rep.saveStepAttribute( id_transformation, id_step, "reuse_transformation", reusingTransformation );
 
     // save the mapping parameters too
     //
@@ -512,6 +522,7 @@ public class TransExecutorMeta extends BaseStepMeta implements StepMetaInterface
     groupSize = "1";
     groupField = "";
     groupTime = "";
+    reusingTransformation = false;
 
     executionTimeField = "ExecutionTime";
     executionResultField = "ExecutionResult";
@@ -1289,6 +1300,21 @@ public class TransExecutorMeta extends BaseStepMeta implements StepMetaInterface
     this.groupTime = groupTime;
   }
 
+  /**
+   * @return true if a prepared transformation is reused for every group of rows
+   */
+  public boolean isReusingTransformation() {
+    return reusingTransformation;
+  }
+
+  /**
+   * @param reusingTransformation
+   *          true to prepare the transformation once and reuse it for every group of rows
+   */
+  public void setReusingTransformation( boolean reusingTransformation ) {
+    this.reusingTransformation = reusingTransformation;
+  }
+
   @Override
   public boolean excludeFromCopyDistributeVerification() {
     return true;
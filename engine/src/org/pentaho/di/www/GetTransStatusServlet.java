@@ -374,10 +374,17 @@ public class GetTransStatusServlet extends BaseHttpServlet implements CartePlugi
             + BaseMessages.getString( PKG, "TransStatusServlet.Speed" ) + "</th> <th>"
             + BaseMessages.getString( PKG, "TransStatusServlet.prinout" ) + "</th> </tr>" );
 
+          StringBuilder skewedSteps = new StringBuilder();
           for ( int i = 0; i < trans.nrSteps(); i++ ) {
             StepInterface step = trans.getRunThread( i );
             if ( ( step.isRunning() ) || step.getStatus() != StepExecutionStatus.STATUS_EMPTY ) {
               StepStatus stepStatus = new StepStatus( step );
+              if ( stepStatus.isPartitionSkewed() ) {
+                skewedSteps.append( "<br>" ).append( BaseMessages.getString( PKG, "TransStatusServlet.PartitionSkew",
+                  encoder.encodeForHTML( stepStatus.getStepname() + "." + stepStatus.getCopy() ),
+                  Double.toString( stepStatus.getPartitionSkew() ),
+                  encoder.encodeForHTML( stepStatus.getPartitionRowCounts() ) ) );
+              }
               boolean snif = false;
               if ( step.isRunning() && !step.isStopped() && !step.isPaused() ) {
                 snif = true;
@@ -395,6 +402,9 @@ public class GetTransStatusServlet extends BaseHttpServlet implements CartePlugi
             }
           }
           out.println( "</table>" );
+          if ( skewedSteps.length() > 0 ) {
+            out.println( "<p>" + skewedSteps.substring( "<br>".length() ) );
+          }
           out.println( "<p>" );
 
           out.print( "<a href=\""
@@ -0,0 +1,105 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.partition.PartitionSchema;
+import org.pentaho.di.trans.step.StepPartitioningMeta;
+
+public class ConsistentHashPartitionerTest {
+
+  @Test
+  public void testSerialization() throws KettleException {
+    List<String> attributes = Arrays.asList( "FieldNames", "VirtualNodes" );
+    LoadSaveTester<ConsistentHashPartitioner> tester =
+      new LoadSaveTester<ConsistentHashPartitioner>( ConsistentHashPartitioner.class, attributes );
+
+    tester.testSerialization();
+  }
+
+  @Test
+  public void testFewKeysMoveWhenAPartitionIsAdded() throws KettleException {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+
+    ConsistentHashPartitioner tenPartitions = createPartitioner( 10 );
+    ConsistentHashPartitioner elevenPartitions = createPartitioner( 11 );
+
+    int nrKeys = 50000;
+    int moved = 0;
+    long[] counts = new long[11];
+    for ( long id = 0; id < nrKeys; id++ ) {
+      Object[] row = new Object[] { id };
+      int before = tenPartitions.getPartition( rowMeta, row );
+      int after = elevenPartitions.getPartition( rowMeta, row );
+      if ( before != after ) {
+        moved++;
+        // Keys only ever move to the new partition
+        //
+        assertEquals( 10, after );
+      }
+      counts[after]++;
+    }
+
+    // About 1/11 of the keys should move, a modulo partitioner would move about 10/11 of them
+    //
+    assertTrue( "moved " + moved, moved > nrKeys / 20 && moved < nrKeys / 6 );
+    for ( long count : counts ) {
+      assertTrue( Arrays.toString( counts ), count > nrKeys / 11 / 2 && count < nrKeys / 11 * 2 );
+    }
+  }
+
+  @Test
+  public void testRingWrapsAround() {
+    ConsistentHashPartitioner.HashRing ring =
+      new ConsistentHashPartitioner.HashRing( Arrays.asList( "P1", "P2", "P3" ), 16 );
+    int partition = ring.getPartition( Integer.MIN_VALUE );
+    assertEquals( partition, ring.getPartition( Integer.MIN_VALUE ) );
+    assertTrue( ring.getPartition( Integer.MAX_VALUE ) >= 0 && ring.getPartition( Integer.MAX_VALUE ) < 3 );
+  }
+
+  private ConsistentHashPartitioner createPartitioner( int nrPartitions ) {
+    List<String> partitionIDs = new ArrayList<String>();
+    for ( int i = 0; i < nrPartitions; i++ ) {
+      partitionIDs.add( "P" + i );
+    }
+    StepPartitioningMeta meta = new StepPartitioningMeta();
+    meta.setPartitionSchema( new PartitionSchema( "schema", partitionIDs ) );
+
+    ConsistentHashPartitioner partitioner = new ConsistentHashPartitioner();
+    partitioner.setFieldNames( new String[] { "id" } );
+    partitioner.setMeta( meta );
+    return partitioner;
+  }
+}
@@ -0,0 +1,110 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class HashPartitionerTest {
+
+  @Test
+  public void testSerialization() throws KettleException {
+    List<String> attributes = Arrays.asList( "FieldNames" );
+    LoadSaveTester<HashPartitioner> tester =
+      new LoadSaveTester<HashPartitioner>( HashPartitioner.class, attributes );
+
+    tester.testSerialization();
+  }
+
+  @Test
+  public void testEvenDistributionOfSimilarStrings() throws KettleException {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "customer" ) );
+
+    HashPartitioner partitioner = createPartitioner( 8, "customer" );
+    long[] counts = new long[8];
+    for ( int i = 0; i < 80000; i++ ) {
+      counts[partitioner.getPartition( rowMeta, new Object[] { "CUST-" + i } )]++;
+    }
+    for ( long count : counts ) {
+      assertTrue( Arrays.toString( counts ), count > 9000 && count < 11000 );
+    }
+  }
+
+  @Test
+  public void testMultiFieldKeyIsStable() throws KettleException {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "country" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "payload" ) );
+
+    HashPartitioner partitioner = createPartitioner( 5, "country", "id" );
+    int partition = partitioner.getPartition( rowMeta, new Object[] { "BE", 42L, "a" } );
+    assertEquals( partition, partitioner.getPartition( rowMeta, new Object[] { "BE", 42L, "b" } ) );
+    assertEquals( partition, createPartitioner( 5, "country", "id" ).getPartition( rowMeta, new Object[] {
+      "BE", 42L, null } ) );
+  }
+
+  @Test
+  public void testStorageTypeDoesNotChangeThePartition() throws KettleException {
+    RowMetaInterface normal = new RowMeta();
+    normal.addValueMeta( new ValueMetaInteger( "id" ) );
+
+    RowMetaInterface binary = new RowMeta();
+    ValueMetaInterface lazy = new ValueMetaInteger( "id" );
+    lazy.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    ValueMetaInterface storage = new ValueMetaString( "id" );
+    lazy.setStorageMetadata( storage );
+    binary.addValueMeta( lazy );
+
+    for ( long id = 0; id < 100; id++ ) {
+      assertEquals( createPartitioner( 7, "id" ).getPartition( normal, new Object[] { id } ),
+        createPartitioner( 7, "id" ).getPartition( binary, new Object[] { Long.toString( id ).getBytes() } ) );
+    }
+  }
+
+  @Test( expected = KettleException.class )
+  public void testUnknownField() throws KettleException {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    createPartitioner( 2, "missing" ).getPartition( rowMeta, new Object[] { "x" } );
+  }
+
+  private HashPartitioner createPartitioner( int nrPartitions, String... fieldNames ) {
+    HashPartitioner partitioner = new HashPartitioner();
+    partitioner.setFieldNames( fieldNames );
+    partitioner.setNrPartitions( nrPartitions );
+    return partitioner;
+  }
+}
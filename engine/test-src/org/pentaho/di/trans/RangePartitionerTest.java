@@ -0,0 +1,115 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class RangePartitionerTest {
+
+  @Test
+  public void testSerialization() throws KettleException {
+    List<String> attributes = Arrays.asList( "FieldName", "Boundaries" );
+    LoadSaveTester<RangePartitioner> tester =
+      new LoadSaveTester<RangePartitioner>( RangePartitioner.class, attributes );
+
+    tester.testSerialization();
+  }
+
+  @Test
+  public void testRanges() throws KettleException {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "amount" ) );
+
+    RangePartitioner partitioner = new RangePartitioner();
+    partitioner.setFieldName( "amount" );
+    partitioner.setBoundaries( new String[] { "10", "100" } );
+    partitioner.setNrPartitions( 3 );
+
+    assertEquals( 0, partitioner.getPartition( rowMeta, new Object[] { null } ) );
+    assertEquals( 0, partitioner.getPartition( rowMeta, new Object[] { -5L } ) );
+    assertEquals( 0, partitioner.getPartition( rowMeta, new Object[] { 9L } ) );
+    assertEquals( 1, partitioner.getPartition( rowMeta, new Object[] { 10L } ) );
+    assertEquals( 1, partitioner.getPartition( rowMeta, new Object[] { 99L } ) );
+    assertEquals( 2, partitioner.getPartition( rowMeta, new Object[] { 100L } ) );
+    assertEquals( 2, partitioner.getPartition( rowMeta, new Object[] { Long.MAX_VALUE } ) );
+  }
+
+  @Test
+  public void testMoreBoundariesThanPartitions() throws KettleException {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+
+    RangePartitioner partitioner = new RangePartitioner();
+    partitioner.setFieldName( "name" );
+    partitioner.setBoundaries( new String[] { "b", "c", "d" } );
+    partitioner.setNrPartitions( 2 );
+
+    assertEquals( 0, partitioner.getPartition( rowMeta, new Object[] { "a" } ) );
+    assertEquals( 1, partitioner.getPartition( rowMeta, new Object[] { "z" } ) );
+  }
+
+  @Test( expected = KettleException.class )
+  public void testUnsortedBoundaries() throws KettleException {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "amount" ) );
+
+    RangePartitioner partitioner = new RangePartitioner();
+    partitioner.setFieldName( "amount" );
+    partitioner.setBoundaries( new String[] { "100", "10" } );
+    partitioner.setNrPartitions( 3 );
+    partitioner.getPartition( rowMeta, new Object[] { 1L } );
+  }
+
+  @Test
+  public void testCalculateBoundaries() throws KettleException {
+    List<Object> sample = new ArrayList<Object>();
+    for ( long i = 100; i > 0; i-- ) {
+      sample.add( i );
+    }
+    sample.add( null );
+
+    assertArrayEquals( new String[] { "26", "51", "76" }, RangePartitioner.calculateBoundaries(
+      new ValueMetaInteger( "id" ), sample, 4 ) );
+
+    // Duplicate boundaries would produce empty ranges, they are only kept once
+    //
+    List<Object> duplicates = new ArrayList<Object>();
+    for ( int i = 0; i < 100; i++ ) {
+      duplicates.add( i < 90 ? 1L : 2L );
+    }
+    assertArrayEquals( new String[] { "1" }, RangePartitioner.calculateBoundaries(
+      new ValueMetaInteger( "id" ), duplicates, 4 ) );
+  }
+}
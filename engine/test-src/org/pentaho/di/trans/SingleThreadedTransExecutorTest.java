@@ -0,0 +1,207 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.Result;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.trans.TransMeta.TransformationType;
+import org.pentaho.di.trans.step.StepDataInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaDataCombi;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByMeta;
+import org.pentaho.di.trans.steps.mergerows.MergeRowsMeta;
+import org.pentaho.di.trans.steps.rowsfromresult.RowsFromResultMeta;
+import org.pentaho.di.trans.steps.rowstoresult.RowsToResultMeta;
+
+public class SingleThreadedTransExecutorTest {
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  @Test
+  public void testResetForTheNextExecution() throws Exception {
+    Trans trans = createTrans( 3 );
+
+    SingleThreadedTransExecutor executor = new SingleThreadedTransExecutor( trans );
+    assertTrue( executor.init() );
+    assertTrue( executor.executeToCompletion() );
+    assertResultRows( 3, trans.getResult() );
+
+    for ( int nrRows : new int[] { 5, 0, 2 } ) {
+      List<StepDataInterface> stepData = new ArrayList<StepDataInterface>();
+      for ( StepMetaDataCombi combi : trans.getSteps() ) {
+        stepData.add( combi.data );
+      }
+
+      trans.setPreviousResult( createResult( nrRows ) );
+      assertTrue( executor.reset() );
+      assertTrue( executor.executeToCompletion() );
+      assertResultRows( nrRows, trans.getResult() );
+      assertEquals( nrRows, trans.findRunThread( "from result" ).getLinesRead() );
+
+      // Every execution starts with fresh step data
+      for ( int s = 0; s < trans.getSteps().size(); s++ ) {
+        assertNotSame( stepData.get( s ), trans.getSteps().get( s ).data );
+      }
+    }
+
+    executor.dispose();
+  }
+
+  @Test
+  public void testStepStateDoesNotLeakIntoTheNextExecution() throws Exception {
+    // Memory Group By keeps its groups in the step data
+    MemoryGroupByMeta groupByMeta = new MemoryGroupByMeta();
+    groupByMeta.setDefault();
+    groupByMeta.allocate( 1, 1 );
+    groupByMeta.setGroupField( new String[] { "id" } );
+    groupByMeta.setAggregateField( new String[] { "count" } );
+    groupByMeta.setSubjectField( new String[] { "id" } );
+    groupByMeta.setAggregateType( new int[] { MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL } );
+    groupByMeta.setValueField( new String[] { null } );
+    Trans trans = createTrans( 5, createStepMeta( "group by", groupByMeta ) );
+
+    SingleThreadedTransExecutor executor = new SingleThreadedTransExecutor( trans );
+    assertTrue( executor.init() );
+    assertTrue( executor.executeToCompletion() );
+    assertGroupedRows( 5, trans.getResult() );
+
+    for ( int nrRows : new int[] { 2, 0, 3 } ) {
+      trans.setPreviousResult( createResult( nrRows ) );
+      assertTrue( executor.reset() );
+      assertTrue( executor.executeToCompletion() );
+      assertGroupedRows( nrRows, trans.getResult() );
+    }
+
+    executor.dispose();
+  }
+
+  @Test
+  public void testUnsupportedStep() {
+    TransMeta transMeta = new TransMeta();
+    transMeta.addStep( createStepMeta( "input", new RowsFromResultMeta() ) );
+    transMeta.addStep( createStepMeta( "output", new RowsToResultMeta() ) );
+    assertNull( SingleThreadedTransExecutor.getUnsupportedStep( transMeta ) );
+
+    StepMeta merge = createStepMeta( "merge", new MergeRowsMeta() );
+    transMeta.addStep( merge );
+    assertFalse( SingleThreadedTransExecutor.isSupported( merge ) );
+    assertSame( merge, SingleThreadedTransExecutor.getUnsupportedStep( transMeta ) );
+  }
+
+  /**
+   * Create a single threaded transformation that reads the rows of the previous result, passes them through the
+   * given steps and puts them in its result.
+   */
+  private Trans createTrans( int nrRows, StepMeta... steps ) throws Exception {
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName( "reused" );
+    transMeta.setTransformationType( TransformationType.SingleThreaded );
+
+    RowsFromResultMeta fromResultMeta = new RowsFromResultMeta();
+    fromResultMeta.setDefault();
+    StepMeta previous = createStepMeta( "from result", fromResultMeta );
+    transMeta.addStep( previous );
+    for ( StepMeta step : steps ) {
+      transMeta.addStep( step );
+      transMeta.addTransHop( new TransHopMeta( previous, step ) );
+      previous = step;
+    }
+    RowsToResultMeta toResultMeta = new RowsToResultMeta();
+    toResultMeta.setDefault();
+    StepMeta toResult = createStepMeta( "to result", toResultMeta );
+    transMeta.addStep( toResult );
+    transMeta.addTransHop( new TransHopMeta( previous, toResult ) );
+
+    Trans trans = new Trans( transMeta );
+    trans.setPreviousResult( createResult( nrRows ) );
+    trans.prepareExecution( null );
+    trans.startThreads();
+    return trans;
+  }
+
+  private StepMeta createStepMeta( String name, StepMetaInterface stepMetaInterface ) {
+    String id = PluginRegistry.getInstance().getPluginId( StepPluginType.class, stepMetaInterface );
+    return new StepMeta( id, name, stepMetaInterface );
+  }
+
+  private Result createResult( int nrRows ) {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    List<RowMetaAndData> rows = new ArrayList<RowMetaAndData>();
+    for ( int i = 0; i < nrRows; i++ ) {
+      rows.add( new RowMetaAndData( rowMeta, new Object[] { Long.valueOf( i ) } ) );
+    }
+    Result result = new Result();
+    result.setRows( rows );
+    return result;
+  }
+
+  /**
+   * Every id of the execution is counted once, none of the ids of an earlier execution shows up.
+   */
+  private void assertGroupedRows( int nrRows, Result result ) throws Exception {
+    assertEquals( 0, result.getNrErrors() );
+    assertEquals( nrRows, result.getRows().size() );
+    Set<Long> ids = new TreeSet<Long>();
+    for ( RowMetaAndData row : result.getRows() ) {
+      ids.add( row.getInteger( "id", -1L ) );
+      assertEquals( 1L, row.getInteger( "count", -1L ) );
+    }
+    assertEquals( nrRows, ids.size() );
+    for ( long id : ids ) {
+      assertTrue( id >= 0 && id < nrRows );
+    }
+  }
+
+  private void assertResultRows( int nrRows, Result result ) throws Exception {
+    assertEquals( 0, result.getNrErrors() );
+    assertEquals( nrRows, result.getRows().size() );
+    for ( int i = 0; i < nrRows; i++ ) {
+      assertEquals( Long.valueOf( i ), result.getRows().get( i ).getInteger( 0 ) );
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.trans.TransMeta.StepSchedulerType;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+
+/**
+ * Runs many small transformations at the same time with each of the step schedulers and measures the time it takes
+ * until they are all finished. After every iteration the peak number of live threads and the used heap are printed,
+ * run with "-prof gc" to compare the allocation rates as well.<br>
+ * <br>
+ * Run it with the JMH jars on the test class path: java org.pentaho.di.trans.StepSchedulerBenchmark
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class StepSchedulerBenchmark {
+
+  @Param( { "Threads", "Pool", "Virtual" } )
+  public String scheduler;
+
+  @Param( { "200" } )
+  public int nrTransformations;
+
+  @Param( { "1000" } )
+  public int nrRows;
+
+  @Param( { "5" } )
+  public int nrSteps;
+
+  private List<TransMeta> transMetas;
+
+  private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+  private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+
+  @Setup( Level.Trial )
+  public void createTransformations() throws KettleException {
+    KettleEnvironment.init( false );
+
+    transMetas = new ArrayList<TransMeta>();
+    for ( int i = 0; i < nrTransformations; i++ ) {
+      transMetas.add( createTransMeta( "benchmark " + i ) );
+    }
+  }
+
+  @Setup( Level.Iteration )
+  public void resetPeakThreadCount() {
+    threadBean.resetPeakThreadCount();
+  }
+
+  @TearDown( Level.Iteration )
+  public void printResources() {
+    System.out.println( "  [" + scheduler + "] peak threads: " + threadBean.getPeakThreadCount() + ", heap used: "
+      + ( memoryBean.getHeapMemoryUsage().getUsed() >> 20 ) + "MB" );
+  }
+
+  @Benchmark
+  public long runConcurrentTransformations() throws KettleException {
+    List<Trans> transList = new ArrayList<Trans>( transMetas.size() );
+    for ( TransMeta transMeta : transMetas ) {
+      Trans trans = new Trans( transMeta );
+      trans.execute( null );
+      transList.add( trans );
+    }
+    long errors = 0;
+    for ( Trans trans : transList ) {
+      trans.waitUntilFinished();
+      errors += trans.getErrors();
+    }
+    if ( errors > 0 ) {
+      throw new KettleException( errors + " errors running the transformations" );
+    }
+    return errors;
+  }
+
+  private TransMeta createTransMeta( String name ) {
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName( name );
+    transMeta.setStepSchedulerType( StepSchedulerType.getStepSchedulerTypeByCode( scheduler ) );
+
+    RowGeneratorMeta generatorMeta = new RowGeneratorMeta();
+    generatorMeta.setDefault();
+    generatorMeta.setRowLimit( Integer.toString( nrRows ) );
+    StepMeta previous = createStepMeta( "generator", generatorMeta );
+    transMeta.addStep( previous );
+
+    for ( int i = 1; i < nrSteps; i++ ) {
+      StepMeta dummy = createStepMeta( "dummy " + i, new DummyTransMeta() );
+      transMeta.addStep( dummy );
+      transMeta.addTransHop( new TransHopMeta( previous, dummy ) );
+      previous = dummy;
+    }
+    return transMeta;
+  }
+
+  private StepMeta createStepMeta( String name, StepMetaInterface stepMetaInterface ) {
+    String id = PluginRegistry.getInstance().getPluginId( StepPluginType.class, stepMetaInterface );
+    return new StepMeta( id, name, stepMetaInterface );
+  }
+
+  public static void main( String[] args ) throws RunnerException {
+    Options options = new OptionsBuilder().include( StepSchedulerBenchmark.class.getSimpleName() ).build();
+    new Runner( options ).run();
+  }
+}
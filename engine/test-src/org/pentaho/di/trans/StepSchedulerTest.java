@@ -0,0 +1,157 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.trans.TransMeta.StepSchedulerType;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+
+public class StepSchedulerTest {
+
+  private static final int NR_ROWS = 20000;
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  @Test
+  public void testStepSchedulerTypeByCode() {
+    assertEquals( StepSchedulerType.Pool, StepSchedulerType.getStepSchedulerTypeByCode( "POOL" ) );
+    assertEquals( StepSchedulerType.Virtual, StepSchedulerType.getStepSchedulerTypeByCode( " virtual " ) );
+    assertEquals( StepSchedulerType.Threads, StepSchedulerType.getStepSchedulerTypeByCode( "Threads" ) );
+    assertNull( StepSchedulerType.getStepSchedulerTypeByCode( "" ) );
+    assertNull( StepSchedulerType.getStepSchedulerTypeByCode( null ) );
+  }
+
+  @Test
+  public void testStepSchedulerInXml() throws Exception {
+    TransMeta transMeta = createTransMeta( "xml" );
+    transMeta.setStepSchedulerType( StepSchedulerType.Pool );
+    TransMeta copy = reload( transMeta );
+    assertEquals( StepSchedulerType.Pool, copy.getStepSchedulerType() );
+
+    transMeta.setStepSchedulerType( null );
+    copy = reload( transMeta );
+    assertNull( copy.getStepSchedulerType() );
+  }
+
+  @Test
+  public void testAllSchedulersRunAllRows() throws Exception {
+    for ( StepSchedulerType type : StepSchedulerType.values() ) {
+      TransMeta transMeta = createTransMeta( type.getCode() );
+      transMeta.setStepSchedulerType( type );
+      assertAllRowsPassed( runTransformation( transMeta ) );
+    }
+  }
+
+  @Test
+  public void testSchedulerSelectedByVariable() throws Exception {
+    TransMeta transMeta = createTransMeta( "variable" );
+    Trans trans = new Trans( transMeta );
+    trans.setVariable( Const.KETTLE_STEP_SCHEDULER, "POOL" );
+    trans.execute( null );
+    trans.waitUntilFinished();
+    assertAllRowsPassed( trans );
+  }
+
+  @Test
+  public void testManyConcurrentTransformationsOnThePool() throws Exception {
+    List<Trans> transList = new ArrayList<Trans>();
+    for ( int i = 0; i < 50; i++ ) {
+      TransMeta transMeta = createTransMeta( "concurrent " + i );
+      transMeta.setStepSchedulerType( StepSchedulerType.Pool );
+      Trans trans = new Trans( transMeta );
+      trans.execute( null );
+      transList.add( trans );
+    }
+    for ( Trans trans : transList ) {
+      trans.waitUntilFinished();
+      assertAllRowsPassed( trans );
+    }
+  }
+
+  private TransMeta reload( TransMeta transMeta ) throws Exception {
+    return new TransMeta( XMLHandler.getSubNode(
+      XMLHandler.loadXMLString( transMeta.getXML() ), TransMeta.XML_TAG ), null );
+  }
+
+  private Trans runTransformation( TransMeta transMeta ) throws Exception {
+    Trans trans = new Trans( transMeta );
+    trans.execute( null );
+    trans.waitUntilFinished();
+    return trans;
+  }
+
+  private void assertAllRowsPassed( Trans trans ) {
+    assertTrue( trans.isFinished() );
+    assertEquals( 0, trans.getErrors() );
+    assertEquals( NR_ROWS, trans.findRunThread( "dummy 2" ).getLinesWritten() );
+  }
+
+  /**
+   * Generate rows and pass them through two steps, with small row sets so that steps have to wait for room in their
+   * output as well as for input.
+   */
+  private TransMeta createTransMeta( String name ) {
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName( name );
+    transMeta.setSizeRowset( 10 );
+
+    RowGeneratorMeta generatorMeta = new RowGeneratorMeta();
+    generatorMeta.setDefault();
+    generatorMeta.setRowLimit( Integer.toString( NR_ROWS ) );
+    StepMeta generator = createStepMeta( "generator", generatorMeta );
+    transMeta.addStep( generator );
+
+    StepMeta previous = generator;
+    for ( int i = 1; i <= 2; i++ ) {
+      StepMeta dummy = createStepMeta( "dummy " + i, new DummyTransMeta() );
+      transMeta.addStep( dummy );
+      transMeta.addTransHop( new TransHopMeta( previous, dummy ) );
+      previous = dummy;
+    }
+    return transMeta;
+  }
+
+  private StepMeta createStepMeta( String name, StepMetaInterface stepMetaInterface ) {
+    String id = PluginRegistry.getInstance().getPluginId( StepPluginType.class, stepMetaInterface );
+    return new StepMeta( id, name, stepMetaInterface );
+  }
+}
@@ -43,6 +43,7 @@ import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.ResultFile;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
@@ -52,6 +53,7 @@ import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.fileinput.NonAccessibleFileObject;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.row.FrozenRowMeta;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
@@ -285,6 +287,89 @@ public class BaseStepTest {
     assertFalse( meta1 == meta2 );
   }
 
+  @Test
+  public void outputRowMetaIsModifiableByDefault() throws Exception {
+    RowSet rs = new SingleRowRowSet();
+    BaseStep baseStep = createStepWithOutput( rs );
+
+    RowMetaInterface rowMeta = createStringIntegerRowMeta();
+    baseStep.putRow( rowMeta, new Object[] { "a", 1 } );
+
+    RowMetaInterface sent = rs.getRowMeta();
+    assertFalse( sent instanceof FrozenRowMeta );
+    assertNotSame( rowMeta, sent );
+    // the next step is allowed to change the layout of its input row metadata
+    sent.addValueMeta( new ValueMetaString( "added" ) );
+    assertEquals( 3, sent.size() );
+    assertEquals( 2, rowMeta.size() );
+  }
+
+  @Test
+  public void outputRowMetaIsFrozenWhenAskedFor() throws Exception {
+    RowSet rs = new SingleRowRowSet();
+    BaseStep baseStep = createStepWithOutput( rs );
+    baseStep.setVariable( Const.KETTLE_FROZEN_ROW_META, "Y" );
+
+    RowMetaInterface rowMeta = createStringIntegerRowMeta();
+    baseStep.putRow( rowMeta, new Object[] { "a", 1 } );
+
+    RowMetaInterface sent = rs.getRowMeta();
+    assertTrue( sent instanceof FrozenRowMeta );
+    assertEquals( 0, sent.indexOfValue( "string" ) );
+    assertEquals( 1, sent.indexOfValue( "integer" ) );
+    try {
+      sent.addValueMeta( new ValueMetaString( "added" ) );
+      fail( "The layout of frozen row metadata can't change" );
+    } catch ( UnsupportedOperationException e ) {
+      // expected
+    }
+    // a clone is modifiable again
+    RowMetaInterface copy = sent.clone();
+    assertFalse( copy instanceof FrozenRowMeta );
+    copy.addValueMeta( new ValueMetaString( "added" ) );
+    assertEquals( 3, copy.size() );
+    assertEquals( 2, sent.size() );
+
+    // the step keeps its own metadata modifiable
+    rowMeta.addValueMeta( new ValueMetaString( "later" ) );
+    assertEquals( 2, sent.size() );
+  }
+
+  @Test
+  public void onlyPlainOutputRowMetaIsFrozen() throws Exception {
+    RowSet rs = new SingleRowRowSet();
+    BaseStep baseStep = createStepWithOutput( rs );
+    baseStep.setVariable( Const.KETTLE_FROZEN_ROW_META, "Y" );
+
+    RowMetaInterface rowMeta = new RowMeta() {
+    };
+    rowMeta.addValueMeta( new ValueMetaString( "string" ) );
+    baseStep.putRow( rowMeta, new Object[] { "a" } );
+
+    assertFalse( rs.getRowMeta() instanceof FrozenRowMeta );
+    rs.getRowMeta().addValueMeta( new ValueMetaString( "added" ) );
+    assertEquals( 2, rs.getRowMeta().size() );
+  }
+
+  private BaseStep createStepWithOutput( RowSet rs ) {
+    when( mockHelper.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) ).thenReturn(
+      mockHelper.logChannelInterface );
+    when( mockHelper.trans.isRunning() ).thenReturn( true );
+    BaseStep baseStep =
+      new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface, 0, mockHelper.transMeta, mockHelper.trans );
+    baseStep.setStopped( false );
+    baseStep.setRepartitioning( StepPartitioningMeta.PARTITIONING_METHOD_NONE );
+    baseStep.setOutputRowSets( Collections.singletonList( rs ) );
+    return baseStep;
+  }
+
+  private RowMetaInterface createStringIntegerRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "string" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "integer" ) );
+    return rowMeta;
+  }
+
   @Test
   public void testBuildLog() throws KettleValueException {
     when( mockHelper.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) ).thenReturn(
@@ -0,0 +1,167 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.RingBufferRowSet;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.RowSetListener;
+
+public class InputRowSetSignalTest {
+
+  @Test
+  public void testAwaitTimesOutWithoutInput() {
+    InputRowSetSignal signal = new InputRowSetSignal();
+    List<RowSet> rowSets = Arrays.<RowSet>asList( new BlockingRowSet( 10 ), new RingBufferRowSet( 10 ) );
+
+    assertFalse( signal.await( rowSets, 10, TimeUnit.MILLISECONDS ) );
+    assertSame( signal, rowSets.get( 0 ).getRowSetListener() );
+    assertSame( signal, rowSets.get( 1 ).getRowSetListener() );
+    assertEquals( 0, signal.getWakeups() );
+  }
+
+  @Test
+  public void testAwaitReturnsImmediatelyWithInput() {
+    InputRowSetSignal signal = new InputRowSetSignal();
+    RowSet rowSet = new BlockingRowSet( 10 );
+    rowSet.putRow( null, new Object[] { 1L } );
+
+    assertTrue( signal.await( Arrays.asList( rowSet ), 1, TimeUnit.DAYS ) );
+
+    RowSet done = new BlockingRowSet( 10 );
+    done.setDone();
+    assertTrue( signal.await( Arrays.asList( done ), 1, TimeUnit.DAYS ) );
+  }
+
+  @Test
+  public void testRegisterKeepsTheListenerOfSomebodyElse() {
+    InputRowSetSignal signal = new InputRowSetSignal();
+    RowSetListener other = new RowSetListener() {
+      @Override
+      public void isEmpty( RowSet rowSet ) {
+      }
+    };
+    RowSet rowSet = new BlockingRowSet( 10 );
+    rowSet.setRowSetListener( other );
+    List<RowSet> rowSets = Arrays.asList( new BlockingRowSet( 10 ), rowSet );
+
+    assertFalse( signal.register( rowSets ) );
+    assertSame( signal, rowSets.get( 0 ).getRowSetListener() );
+    assertSame( other, rowSet.getRowSetListener() );
+    assertFalse( signal.notifyOnInput( rowSets, new Runnable() {
+      @Override
+      public void run() {
+      }
+    } ) );
+  }
+
+  @Test
+  public void testRegisterDetectsRowSetsWithoutListenerSupport() {
+    InputRowSetSignal signal = new InputRowSetSignal();
+    RowSet rowSet = new BlockingRowSet( 10 ) {
+      // Like a row set that only has the default listener methods of the interface
+      @Override
+      public void setRowSetListener( RowSetListener rowSetListener ) {
+      }
+
+      @Override
+      public RowSetListener getRowSetListener() {
+        return null;
+      }
+    };
+
+    assertFalse( signal.register( Arrays.asList( rowSet ) ) );
+    assertTrue( signal.register( Arrays.<RowSet>asList( new RingBufferRowSet( 10 ) ) ) );
+  }
+
+  @Test
+  public void testAwaitIsWokenUpByAnyRowSet() throws Exception {
+    final InputRowSetSignal signal = new InputRowSetSignal();
+    final RowSet first = new BlockingRowSet( 10 );
+    final RowSet second = new RingBufferRowSet( 10 );
+
+    Thread producer = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep( 100 );
+        } catch ( InterruptedException e ) {
+          // ignore
+        }
+        second.putRow( null, new Object[] { 1L } );
+      }
+    } );
+    producer.start();
+
+    long start = System.currentTimeMillis();
+    assertTrue( signal.await( Arrays.asList( first, second ), 1, TimeUnit.MINUTES ) );
+    assertTrue( System.currentTimeMillis() - start < 30000 );
+    producer.join();
+
+    assertEquals( 1, second.size() );
+    assertEquals( 1, signal.getWakeups() );
+    assertTrue( signal.getIdleTime() > 0 );
+    assertTrue( signal.getAverageWakeupLatency() >= 0.0 );
+  }
+
+  @Test
+  public void testAwaitRowsIsOnlyWokenUpByAFullBatch() throws Exception {
+    final InputRowSetSignal signal = new InputRowSetSignal();
+    final RowSet rowSet = new BlockingRowSet( 10 );
+
+    Thread producer = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        for ( long i = 0; i < 5; i++ ) {
+          try {
+            Thread.sleep( 20 );
+          } catch ( InterruptedException e ) {
+            // ignore
+          }
+          rowSet.putRow( null, new Object[] { i } );
+        }
+      }
+    } );
+    producer.start();
+
+    assertTrue( signal.awaitRows( Arrays.asList( rowSet ), 5, 1, TimeUnit.MINUTES ) );
+    producer.join();
+
+    assertEquals( 5, rowSet.size() );
+    assertEquals( 1, signal.getWakeups() );
+    assertFalse( signal.awaitRows( Arrays.asList( rowSet ), 6, 10, TimeUnit.MILLISECONDS ) );
+
+    rowSet.setDone();
+    assertTrue( signal.awaitRows( Arrays.asList( rowSet ), 6, 1, TimeUnit.DAYS ) );
+  }
+}
@@ -0,0 +1,142 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.rowgenerator.RowGeneratorMeta;
+
+public class PooledStepSchedulerTest {
+
+  private static final int NR_ROWS = 100;
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  /**
+   * A step that blocks its only worker without telling the pool, waiting for a step that still has to get a worker,
+   * only continues because the stalled worker is noticed and a helper runs the other step.
+   */
+  @Test
+  public void testStepBlockingOutsideManagedBlock() throws Exception {
+    TransMeta transMeta = new TransMeta();
+    transMeta.setName( "blocking" );
+    transMeta.setSizeRowset( 10 );
+    addBranch( transMeta, "a" );
+    addBranch( transMeta, "b" );
+
+    Trans trans = new Trans( transMeta );
+    trans.prepareExecution( null );
+
+    final CountDownLatch blocked = new CountDownLatch( 1 );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    trans.findRunThread( "dummy a" ).addRowListener( new RowAdapter() {
+      @Override
+      public void rowReadEvent( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+        blocked.countDown();
+        try {
+          release.await( 30, TimeUnit.SECONDS );
+        } catch ( InterruptedException e ) {
+          throw new KettleStepException( e );
+        }
+      }
+    } );
+    trans.findRunThread( "dummy b" ).addRowListener( new RowAdapter() {
+      @Override
+      public void rowReadEvent( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+        release.countDown();
+      }
+    } );
+
+    final CountDownLatch finished = new CountDownLatch( trans.getSteps().size() );
+    for ( StepMetaDataCombi combi : trans.getSteps() ) {
+      combi.step.addStepListener( new StepAdapter() {
+        @Override
+        public void stepFinished( Trans trans, StepMeta stepMeta, StepInterface step ) {
+          finished.countDown();
+        }
+      } );
+    }
+
+    PooledStepScheduler scheduler = new PooledStepScheduler( 1, 1 );
+    try {
+      startBranch( scheduler, trans, "a" );
+      assertTrue( blocked.await( 10, TimeUnit.SECONDS ) );
+
+      // The only worker is blocked now, branch b has to wait for a helper
+      //
+      startBranch( scheduler, trans, "b" );
+      assertTrue( "Branch b never got a thread", release.await( 10 * PooledStepScheduler.STALL_MILLIS,
+        TimeUnit.MILLISECONDS ) );
+      assertTrue( finished.await( 30, TimeUnit.SECONDS ) );
+    } finally {
+      release.countDown();
+      scheduler.shutdown();
+    }
+
+    assertEquals( 0, trans.getErrors() );
+    assertEquals( NR_ROWS, trans.findRunThread( "dummy a" ).getLinesWritten() );
+    assertEquals( NR_ROWS, trans.findRunThread( "dummy b" ).getLinesWritten() );
+  }
+
+  private void addBranch( TransMeta transMeta, String name ) {
+    RowGeneratorMeta generatorMeta = new RowGeneratorMeta();
+    generatorMeta.setDefault();
+    generatorMeta.setRowLimit( Integer.toString( NR_ROWS ) );
+    StepMeta generator = createStepMeta( "generator " + name, generatorMeta );
+    transMeta.addStep( generator );
+    StepMeta dummy = createStepMeta( "dummy " + name, new DummyTransMeta() );
+    transMeta.addStep( dummy );
+    transMeta.addTransHop( new TransHopMeta( generator, dummy ) );
+  }
+
+  private void startBranch( PooledStepScheduler scheduler, Trans trans, String name ) {
+    for ( StepMetaDataCombi combi : trans.getSteps() ) {
+      if ( combi.stepname.endsWith( " " + name ) ) {
+        scheduler.startStep( combi, combi.stepname );
+      }
+    }
+  }
+
+  private StepMeta createStepMeta( String name, StepMetaInterface stepMetaInterface ) {
+    String id = PluginRegistry.getInstance().getPluginId( StepPluginType.class, stepMetaInterface );
+    return new StepMeta( id, name, stepMetaInterface );
+  }
+}
@@ -0,0 +1,378 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.encryption.CertificateGenEncryptUtil;
+import org.pentaho.di.core.exception.KettleEOFException;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.trans.steps.mock.StepMockHelper;
+import org.pentaho.di.www.SocketRepository;
+
+/**
+ * Runs the handshake of the remote steps over local sockets, between new writers and readers and against peers from
+ * before the block transfer protocol. The old peers are written out here the way they used to be in RemoteStep.
+ */
+public class RemoteStepTest {
+  private static final int NR_ROWS = 2500;
+
+  private StepMockHelper<StepMetaInterface, StepDataInterface> mockHelper;
+  private RowMetaInterface rowMeta;
+  private List<ServerSocket> serverSockets;
+  private List<Socket> sockets;
+
+  @Before
+  public void setUp() {
+    mockHelper =
+      new StepMockHelper<StepMetaInterface, StepDataInterface>( "REMOTE STEP", StepMetaInterface.class,
+        StepDataInterface.class );
+    when( mockHelper.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) ).thenReturn(
+      mockHelper.logChannelInterface );
+    when( mockHelper.trans.isRunning() ).thenReturn( true );
+    when( mockHelper.transMeta.getSizeRowset() ).thenReturn( 100 );
+
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+
+    serverSockets = new ArrayList<ServerSocket>();
+    sockets = new ArrayList<Socket>();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    for ( Socket socket : sockets ) {
+      socket.close();
+    }
+    for ( ServerSocket serverSocket : serverSockets ) {
+      serverSocket.close();
+    }
+    mockHelper.cleanUp();
+  }
+
+  @Test( timeout = 30000 )
+  public void newWriterAndReaderUseBlocks() throws Exception {
+    RemoteStep writer = createWriter( createStep(), true );
+    feed( writer.openWriterSocket(), NR_ROWS );
+
+    RowSet rowSet = createRemoteStep( writer.getPort(), true ).openReaderSocket( createStep() );
+
+    assertRows( readAll( rowSet ), NR_ROWS );
+    assertReceivedUsing( "block" );
+  }
+
+  @Test( timeout = 30000 )
+  public void writerWithBlocksDisabledConsumesTheHello() throws Exception {
+    BaseStep writerStep = createStep();
+    writerStep.setVariable( Const.KETTLE_REMOTE_STEP_BLOCK_TRANSFER, "N" );
+    RemoteStep writer = createWriter( writerStep, true );
+    feed( writer.openWriterSocket(), NR_ROWS );
+
+    RowSet rowSet = createRemoteStep( writer.getPort(), true ).openReaderSocket( createStep() );
+
+    assertRows( readAll( rowSet ), NR_ROWS );
+    assertReceivedUsing( "row by row" );
+    assertEquals( 0, writer.getSocket().getInputStream().available() );
+  }
+
+  @Test( timeout = 30000 )
+  public void readerWithBlocksDisabledGetsRows() throws Exception {
+    RemoteStep writer = createWriter( createStep(), false );
+    feed( writer.openWriterSocket(), NR_ROWS );
+
+    BaseStep readerStep = createStep();
+    readerStep.setVariable( Const.KETTLE_REMOTE_STEP_BLOCK_TRANSFER, "N" );
+    RowSet rowSet = createRemoteStep( writer.getPort(), false ).openReaderSocket( readerStep );
+
+    assertRows( readAll( rowSet ), NR_ROWS );
+    assertReceivedUsing( "row by row" );
+    assertEquals( 0, writer.getSocket().getInputStream().available() );
+  }
+
+  @Test( timeout = 30000 )
+  public void newReaderFallsBackForOldWriter() throws Exception {
+    final ServerSocket serverSocket = createServerSocket();
+    Thread oldWriter = new Thread( new Runnable() {
+      public void run() {
+        try {
+          // Never reads from the socket and only closes it during the clean up of the transformation
+          Socket socket = serverSocket.accept();
+          sockets.add( socket );
+          GZIPOutputStream gzipOutputStream = new GZIPOutputStream( socket.getOutputStream(), 50000 );
+          DataOutputStream outputStream = new DataOutputStream( new BufferedOutputStream( gzipOutputStream, 5000 ) );
+          rowMeta.writeMeta( outputStream );
+          for ( int i = 0; i < NR_ROWS; i++ ) {
+            rowMeta.writeData( outputStream, createRow( i ) );
+          }
+          outputStream.flush();
+          gzipOutputStream.finish();
+          socket.shutdownOutput();
+        } catch ( Exception e ) {
+          throw new RuntimeException( e );
+        }
+      }
+    } );
+    oldWriter.start();
+
+    RowSet rowSet =
+      createRemoteStep( Integer.toString( serverSocket.getLocalPort() ), true ).openReaderSocket( createStep() );
+
+    assertRows( readAll( rowSet ), NR_ROWS );
+    assertReceivedUsing( "row by row" );
+    oldWriter.join();
+  }
+
+  @Test( timeout = 30000 )
+  public void newReaderSendsNothingToAnOldWriter() throws Exception {
+    final ServerSocket serverSocket = createServerSocket();
+    final int[] unreadBytes = { -1 };
+    Thread oldWriter = new Thread( new Runnable() {
+      public void run() {
+        try {
+          // Never reads from the socket and closes it as soon as the rows are sent
+          Socket socket = serverSocket.accept();
+          GZIPOutputStream gzipOutputStream = new GZIPOutputStream( socket.getOutputStream(), 50000 );
+          DataOutputStream outputStream = new DataOutputStream( new BufferedOutputStream( gzipOutputStream, 5000 ) );
+          rowMeta.writeMeta( outputStream );
+          for ( int i = 0; i < NR_ROWS; i++ ) {
+            rowMeta.writeData( outputStream, createRow( i ) );
+          }
+          outputStream.flush();
+          gzipOutputStream.finish();
+          unreadBytes[0] = socket.getInputStream().available();
+          socket.shutdownOutput();
+          socket.close();
+        } catch ( Exception e ) {
+          throw new RuntimeException( e );
+        }
+      }
+    } );
+    oldWriter.start();
+
+    // The definition of an old writer doesn't advertise the block transfer protocol
+    RemoteStep definition = createRemoteStep( Integer.toString( serverSocket.getLocalPort() ), true );
+    String xml = definition.getXML().replaceAll( "<writer_protocol_version>.*</writer_protocol_version>", "" );
+    RemoteStep reader = new RemoteStep( XMLHandler.loadXMLString( xml, RemoteStep.XML_TAG ) );
+    assertEquals( 0, reader.getWriterProtocolVersion() );
+    RowSet rowSet = reader.openReaderSocket( createStep() );
+
+    assertRows( readAll( rowSet ), NR_ROWS );
+    assertReceivedUsing( "row by row" );
+    oldWriter.join();
+    assertEquals( 0, unreadBytes[0] );
+  }
+
+  @Test( timeout = 30000 )
+  public void newWriterFallsBackForOldReaderWithoutWaiting() throws Exception {
+    RemoteStep writer = createWriter( createStep(), true );
+    feed( writer.openWriterSocket(), NR_ROWS );
+
+    // The old reader connects and reads right away, it never sends a hello
+    long startTime = System.currentTimeMillis();
+    Socket socket = connect( writer.getPort() );
+    DataInputStream inputStream =
+      new DataInputStream( new BufferedInputStream( new GZIPInputStream( socket.getInputStream() ), 5000 ) );
+    RowMetaInterface receivedRowMeta = new RowMeta( inputStream );
+    assertTrue( System.currentTimeMillis() - startTime < 2000 );
+
+    List<Object[]> rows = new ArrayList<Object[]>();
+    try {
+      while ( true ) {
+        rows.add( receivedRowMeta.readData( inputStream ) );
+      }
+    } catch ( KettleEOFException e ) {
+      // all rows are in
+    }
+    assertRows( rows, NR_ROWS );
+  }
+
+  @Test( timeout = 30000 )
+  public void encryptingWriterConsumesTheHelloWithoutReply() throws Exception {
+    byte[] key = CertificateGenEncryptUtil.generateSingleKey().getEncoded();
+    RemoteStep writer = createWriter( createStep(), false );
+    writer.setEncryptingStreams( true );
+    writer.setKey( key );
+    feed( writer.openWriterSocket(), 10 );
+
+    Socket socket = connect( writer.getPort() );
+    sendHello( socket, RowBlockCodec.PROTOCOL_VERSION );
+
+    // No reply in front of the rows, the very first bytes are the encrypted row metadata
+    Cipher cipher = Cipher.getInstance( CertificateGenEncryptUtil.SINGLE_KEY_ALGORITHM );
+    cipher.init( Cipher.DECRYPT_MODE, new SecretKeySpec( key, CertificateGenEncryptUtil.SINGLE_KEY_ALGORITHM ) );
+    DataInputStream inputStream = new DataInputStream( new CipherInputStream( socket.getInputStream(), cipher ) );
+    RowMetaInterface receivedRowMeta = new RowMeta( inputStream );
+    assertEquals( rowMeta.toStringMeta(), receivedRowMeta.toStringMeta() );
+    assertEquals( 0L, receivedRowMeta.getInteger( receivedRowMeta.readData( inputStream ), 0 ).longValue() );
+    assertEquals( 0, writer.getSocket().getInputStream().available() );
+  }
+
+  @Test( timeout = 30000 )
+  public void encryptingReaderDoesNotOfferBlocks() throws Exception {
+    ServerSocket serverSocket = createServerSocket();
+    RemoteStep reader = createRemoteStep( Integer.toString( serverSocket.getLocalPort() ), false );
+    reader.setEncryptingStreams( true );
+    reader.setKey( CertificateGenEncryptUtil.generateSingleKey().getEncoded() );
+    RowSet rowSet = reader.openReaderSocket( createStep() );
+
+    Socket socket = serverSocket.accept();
+    sockets.add( socket );
+    DataInputStream helloStream = new DataInputStream( socket.getInputStream() );
+    assertEquals( RowBlockCodec.MAGIC, helloStream.readInt() );
+    assertEquals( 0, helloStream.readInt() );
+    assertTrue( helloStream.readInt() > 0 );
+
+    // A writer without rows, the reader doesn't wait for a reply
+    socket.shutdownOutput();
+    assertTrue( readAll( rowSet ).isEmpty() );
+  }
+
+  private BaseStep createStep() {
+    BaseStep step =
+      new BaseStep( mockHelper.stepMeta, mockHelper.stepDataInterface, 0, mockHelper.transMeta, mockHelper.trans );
+    step.setStopped( false );
+    return step;
+  }
+
+  private ServerSocket createServerSocket() throws IOException {
+    ServerSocket serverSocket = new ServerSocket( 0 );
+    serverSockets.add( serverSocket );
+    return serverSocket;
+  }
+
+  private RemoteStep createRemoteStep( String port, boolean compressing ) {
+    return new RemoteStep( "localhost", "localhost", port, "source", 0, "target", 0, "master", "slave", 5000,
+      compressing, rowMeta );
+  }
+
+  private RemoteStep createWriter( BaseStep step, boolean compressing ) throws IOException {
+    ServerSocket serverSocket = createServerSocket();
+    SocketRepository socketRepository = mock( SocketRepository.class );
+    when( socketRepository.openServerSocket( anyInt(), anyString() ) ).thenReturn( serverSocket );
+    step.setSocketRepository( socketRepository );
+
+    RemoteStep writer = createRemoteStep( Integer.toString( serverSocket.getLocalPort() ), compressing );
+    writer.openServerSocket( step );
+    return writer;
+  }
+
+  private Socket connect( String port ) throws IOException {
+    Socket socket = new Socket();
+    sockets.add( socket );
+    socket.connect( new InetSocketAddress( "localhost", Integer.parseInt( port ) ), 5000 );
+    return socket;
+  }
+
+  private void sendHello( Socket socket, int version ) throws IOException {
+    DataOutputStream helloStream = new DataOutputStream( socket.getOutputStream() );
+    helloStream.writeInt( RowBlockCodec.MAGIC );
+    helloStream.writeInt( version );
+    helloStream.writeInt( 4 );
+    helloStream.flush();
+  }
+
+  private Object[] createRow( int i ) {
+    return new Object[] { Long.valueOf( i ), i % 10 == 0 ? null : "name " + ( i % 7 ) };
+  }
+
+  private void feed( final BlockingRowSet rowSet, final int nrRows ) {
+    new Thread( new Runnable() {
+      public void run() {
+        for ( int i = 0; i < nrRows; i++ ) {
+          Object[] row = createRow( i );
+          while ( !rowSet.putRowWait( rowMeta, row, 100, TimeUnit.MILLISECONDS ) ) {
+            // wait for the writer to catch up
+          }
+        }
+        rowSet.setDone();
+      }
+    } ).start();
+  }
+
+  private List<Object[]> readAll( RowSet rowSet ) {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    Object[] row = rowSet.getRowWait( 100, TimeUnit.MILLISECONDS );
+    while ( row != null || !rowSet.isDone() ) {
+      if ( row != null ) {
+        rows.add( row );
+      }
+      row = rowSet.getRowWait( 100, TimeUnit.MILLISECONDS );
+    }
+    return rows;
+  }
+
+  private void assertRows( List<Object[]> rows, int nrRows ) {
+    assertEquals( nrRows, rows.size() );
+    for ( int i = 0; i < nrRows; i++ ) {
+      Object[] expected = createRow( i );
+      assertEquals( expected[0], rows.get( i )[0] );
+      assertEquals( expected[1], rows.get( i )[1] );
+    }
+  }
+
+  private void assertReceivedUsing( String protocol ) {
+    ArgumentCaptor<String> messages = ArgumentCaptor.forClass( String.class );
+    verify( mockHelper.logChannelInterface, atLeastOnce() ).logBasic( messages.capture() );
+    for ( String message : messages.getAllValues() ) {
+      if ( message.startsWith( "Received " ) && message.contains( "using the " + protocol + " protocol" ) ) {
+        return;
+      }
+    }
+    fail( "The rows were not received using the " + protocol + " protocol: " + messages.getAllValues() );
+  }
+}
@@ -0,0 +1,186 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.step;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleEOFException;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaBoolean;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class RowBlockCodecTest {
+
+  private static final String[] COUNTRIES = { "Belgium", "France", "Germany", "\u00c9tats-Unis", "" };
+
+  @Test
+  public void testRoundTrip() throws KettleException {
+    RowMetaInterface rowMeta = createRowMeta();
+    Object[][] rows = createRows( 2500, new Random( 42 ) );
+    for ( boolean compressing : new boolean[] { false, true } ) {
+      assertRoundTrip( rowMeta, rows, compressing );
+    }
+  }
+
+  @Test
+  public void testAllNullsAndSingleRow() throws KettleException {
+    RowMetaInterface rowMeta = createRowMeta();
+    Object[][] rows = new Object[][] { new Object[rowMeta.size()] };
+    assertRoundTrip( rowMeta, rows, true );
+
+    rows = new Object[3][];
+    for ( int i = 0; i < rows.length; i++ ) {
+      rows[i] = new Object[rowMeta.size()];
+    }
+    assertRoundTrip( rowMeta, rows, false );
+  }
+
+  @Test
+  public void testExtremeIntegers() throws KettleException {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "int" ) );
+    Object[][] rows = new Object[][] {
+      { Long.MAX_VALUE }, { Long.MIN_VALUE }, { 0L }, { -1L }, { Long.MAX_VALUE }, { null }, { Long.MIN_VALUE }, };
+    assertRoundTrip( rowMeta, rows, false );
+  }
+
+  @Test
+  public void testNoFields() throws KettleException {
+    RowMetaInterface rowMeta = new RowMeta();
+    Object[][] rows = new Object[][] { {}, {}, {} };
+    Object[][] read = roundTrip( rowMeta, rows, true );
+    assertEquals( 3, read.length );
+  }
+
+  @Test
+  public void testBinaryStringStorage() throws KettleException {
+    RowMetaInterface rowMeta = new RowMeta();
+    ValueMetaInterface valueMeta = new ValueMetaString( "lazy" );
+    valueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_BINARY_STRING );
+    valueMeta.setStorageMetadata( new ValueMetaString( "lazy" ) );
+    rowMeta.addValueMeta( valueMeta );
+
+    Object[][] read = roundTrip( rowMeta, new Object[][] { { "abc".getBytes() }, { null } }, false );
+    assertArrayEquals( "abc".getBytes(), (byte[]) read[0][0] );
+    assertNull( read[1][0] );
+  }
+
+  @Test
+  public void testCompressionMakesBlocksSmaller() throws KettleException {
+    RowMetaInterface rowMeta = createRowMeta();
+    Object[][] rows = createRows( 1000, new Random( 1 ) );
+
+    RowBlockCodec plain = new RowBlockCodec( rowMeta, false );
+    RowBlockCodec compressing = new RowBlockCodec( rowMeta, true );
+    DataOutputStream out = new DataOutputStream( new ByteArrayOutputStream() );
+    int plainLength = plain.writeBlock( out, rows, rows.length );
+    int compressedLength = compressing.writeBlock( out, rows, rows.length );
+    assertTrue( compressedLength + " >= " + plainLength, !compressing.isCompressing()
+      || compressedLength < plainLength );
+  }
+
+  @Test( expected = KettleEOFException.class )
+  public void testTruncatedStream() throws KettleException {
+    RowMetaInterface rowMeta = createRowMeta();
+    RowBlockCodec codec = new RowBlockCodec( rowMeta, false );
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    codec.writeBlock( new DataOutputStream( bytes ), createRows( 10, new Random( 2 ) ), 10 );
+
+    byte[] truncated = new byte[bytes.size() - 1];
+    System.arraycopy( bytes.toByteArray(), 0, truncated, 0, truncated.length );
+    codec.readBlock( new DataInputStream( new ByteArrayInputStream( truncated ) ) );
+  }
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "country" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "amount" ) );
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "big" ) );
+    rowMeta.addValueMeta( new ValueMetaBoolean( "flag" ) );
+    return rowMeta;
+  }
+
+  private Object[][] createRows( int nrRows, Random random ) {
+    Object[][] rows = new Object[nrRows][];
+    for ( int i = 0; i < nrRows; i++ ) {
+      rows[i] = new Object[] {
+        random.nextInt( 20 ) == 0 ? null : Long.valueOf( 1000000L + i * 3 - random.nextInt( 5 ) ),
+        random.nextInt( 20 ) == 0 ? null : COUNTRIES[( i / 7 ) % COUNTRIES.length],
+        random.nextInt( 20 ) == 0 ? null : "Customer " + random.nextInt(),
+        random.nextInt( 20 ) == 0 ? null : new Date( 1400000000000L + random.nextInt( 1000000 ) * 1000L ),
+        random.nextInt( 20 ) == 0 ? null : Double.valueOf( random.nextDouble() ),
+        random.nextInt( 20 ) == 0 ? null : new BigDecimal( random.nextInt() ).movePointLeft( 2 ),
+        random.nextInt( 20 ) == 0 ? null : Boolean.valueOf( random.nextBoolean() ), };
+    }
+    return rows;
+  }
+
+  private Object[][] roundTrip( RowMetaInterface rowMeta, Object[][] rows, boolean compressing )
+    throws KettleException {
+    RowBlockCodec writer = new RowBlockCodec( rowMeta, compressing );
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream( bytes );
+    writer.writeBlock( out, rows, rows.length );
+    writer.writeEnd( out );
+
+    RowBlockCodec reader = new RowBlockCodec( rowMeta, compressing );
+    DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) );
+    Object[][] read = reader.readBlock( in );
+    assertNull( reader.readBlock( in ) );
+    return read;
+  }
+
+  private void assertRoundTrip( RowMetaInterface rowMeta, Object[][] rows, boolean compressing )
+    throws KettleException {
+    Object[][] read = roundTrip( rowMeta, rows, compressing );
+    assertEquals( rows.length, read.length );
+    for ( int r = 0; r < rows.length; r++ ) {
+      assertTrue( read[r].length >= rowMeta.size() );
+      for ( int i = 0; i < rowMeta.size(); i++ ) {
+        assertEquals( "row " + r + ", field " + i, rows[r][i], read[r][i] );
+      }
+    }
+  }
+}
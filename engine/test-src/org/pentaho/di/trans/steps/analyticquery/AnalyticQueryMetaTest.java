@@ -48,7 +48,7 @@ public class AnalyticQueryMetaTest {
   @Test
   public void testRoundTrip() throws KettleException {
     List<String> attributes = Arrays.asList( "groupField", "aggregateField", "subjectField",
-      "aggregateType", "valueField" );
+      "aggregateType", "valueField", "framePreceding", "frameFollowing" );
 
     Map<String, String> getterMap = new HashMap<String, String>();
     Map<String, String> setterMap = new HashMap<String, String>();
@@ -60,6 +60,10 @@ public class AnalyticQueryMetaTest {
     fieldValidators.put( "aggregateType", new PrimitiveIntArrayLoadSaveValidator(
       new IntLoadSaveValidator( AnalyticQueryMeta.typeGroupCode.length ), 50 ) );
     fieldValidators.put( "valueField", new PrimitiveIntArrayLoadSaveValidator( new IntLoadSaveValidator(), 50 ) );
+    fieldValidators.put( "framePreceding", new PrimitiveIntArrayLoadSaveValidator(
+      new IntLoadSaveValidator(), 50 ) );
+    fieldValidators.put( "frameFollowing", new PrimitiveIntArrayLoadSaveValidator(
+      new IntLoadSaveValidator(), 50 ) );
 
     LoadSaveTester loadSaveTester =
       new LoadSaveTester( AnalyticQueryMeta.class, attributes, getterMap, setterMap, fieldValidators, typeValidators );
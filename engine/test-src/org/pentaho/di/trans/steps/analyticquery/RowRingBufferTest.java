@@ -0,0 +1,80 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.analyticquery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class RowRingBufferTest {
+
+  @Test
+  public void testAddAndRemove() {
+    RowRingBuffer buffer = new RowRingBuffer( 3 );
+    assertEquals( -1, buffer.getLastIndex() );
+
+    for ( long i = 0; i < 10; i++ ) {
+      assertEquals( i, buffer.add( new Object[] { i } ) );
+      buffer.removeBefore( i - 2 );
+      assertEquals( Math.min( i + 1, 3 ), buffer.size() );
+      assertEquals( i, buffer.getLastIndex() );
+      assertNull( buffer.get( i + 1 ) );
+      assertNull( buffer.get( i - 3 ) );
+      for ( long j = Math.max( 0, i - 2 ); j <= i; j++ ) {
+        assertEquals( j, buffer.get( j )[0] );
+      }
+    }
+    assertEquals( 3, buffer.getCapacity() );
+  }
+
+  @Test
+  public void testGrow() {
+    RowRingBuffer buffer = new RowRingBuffer( 2 );
+    buffer.add( new Object[] { 0L } );
+    buffer.add( new Object[] { 1L } );
+    buffer.removeBefore( 1 );
+    for ( long i = 2; i < 7; i++ ) {
+      buffer.add( new Object[] { i } );
+    }
+    assertEquals( 6, buffer.size() );
+    assertEquals( 1, buffer.getFirstIndex() );
+    for ( long i = 1; i < 7; i++ ) {
+      assertEquals( i, buffer.get( i )[0] );
+    }
+  }
+
+  @Test
+  public void testClear() {
+    RowRingBuffer buffer = new RowRingBuffer( 2 );
+    buffer.add( new Object[] { "a" } );
+    buffer.add( new Object[] { "b" } );
+    buffer.removeBefore( 1 );
+    buffer.clear();
+
+    assertEquals( 0, buffer.size() );
+    assertEquals( -1, buffer.getLastIndex() );
+    assertEquals( 0, buffer.add( new Object[] { "c" } ) );
+    assertEquals( "c", buffer.get( 0 )[0] );
+  }
+}
@@ -0,0 +1,200 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.analyticquery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+
+public class WindowAggregateTest {
+
+  private static final int[] TYPES = {
+    AnalyticQueryMeta.TYPE_FUNCT_SUM, AnalyticQueryMeta.TYPE_FUNCT_AVERAGE, AnalyticQueryMeta.TYPE_FUNCT_MIN,
+    AnalyticQueryMeta.TYPE_FUNCT_MAX, };
+
+  @Test
+  public void testRunningSum() throws KettleValueException {
+    Object[][] rows = integerRows( 5L, null, 3L, 4L );
+    WindowAggregate aggregate =
+      new WindowAggregate( AnalyticQueryMeta.TYPE_FUNCT_SUM, new ValueMetaInteger( "v" ), 0,
+        AnalyticQueryMeta.FRAME_UNBOUNDED, 0 );
+    RowRingBuffer buffer = fill( rows );
+
+    assertEquals( 5L, aggregate.moveTo( 0, buffer ) );
+    assertEquals( 5L, aggregate.moveTo( 1, buffer ) );
+    assertEquals( 8L, aggregate.moveTo( 2, buffer ) );
+    assertEquals( 12L, aggregate.moveTo( 3, buffer ) );
+  }
+
+  @Test
+  public void testMovingAverage() throws KettleValueException {
+    Object[][] rows = integerRows( 1L, 2L, 3L, 4L, 5L );
+    WindowAggregate aggregate =
+      new WindowAggregate( AnalyticQueryMeta.TYPE_FUNCT_AVERAGE, new ValueMetaInteger( "v" ), 0, 1, 1 );
+    RowRingBuffer buffer = fill( rows );
+
+    assertEquals( 1.5, aggregate.moveTo( 0, buffer ) );
+    assertEquals( 2.0, aggregate.moveTo( 1, buffer ) );
+    assertEquals( 3.0, aggregate.moveTo( 2, buffer ) );
+    assertEquals( 4.0, aggregate.moveTo( 3, buffer ) );
+    assertEquals( 4.5, aggregate.moveTo( 4, buffer ) );
+  }
+
+  @Test
+  public void testEmptyFrame() throws KettleValueException {
+    Object[][] rows = integerRows( null, null, 7L );
+    WindowAggregate aggregate =
+      new WindowAggregate( AnalyticQueryMeta.TYPE_FUNCT_MAX, new ValueMetaInteger( "v" ), 0, 2, -1 );
+    RowRingBuffer buffer = fill( rows );
+
+    assertNull( aggregate.moveTo( 0, buffer ) );
+    assertNull( aggregate.moveTo( 1, buffer ) );
+    assertNull( aggregate.moveTo( 2, buffer ) );
+  }
+
+  /**
+   * A running minimum over increasing values never drops a candidate, only the best value may be kept.
+   */
+  @Test
+  public void testRunningMinMaxOverMonotonicValues() throws KettleValueException {
+    ValueMetaInterface valueMeta = new ValueMetaInteger( "v" );
+    WindowAggregate min =
+      new WindowAggregate( AnalyticQueryMeta.TYPE_FUNCT_MIN, valueMeta, 0, AnalyticQueryMeta.FRAME_UNBOUNDED, 0 );
+    WindowAggregate max =
+      new WindowAggregate( AnalyticQueryMeta.TYPE_FUNCT_MAX, valueMeta, 0, AnalyticQueryMeta.FRAME_UNBOUNDED, 0 );
+    RowRingBuffer buffer = new RowRingBuffer( 1 );
+    for ( int current = 0; current < 10000; current++ ) {
+      buffer.add( new Object[] { Long.valueOf( current ) } );
+      assertEquals( 0L, min.moveTo( current, buffer ) );
+      assertEquals( Long.valueOf( current ), max.moveTo( current, buffer ) );
+      buffer.removeBefore( current + 1 );
+    }
+    assertEquals( 0, min.getNrCandidates() );
+    assertEquals( 0, max.getNrCandidates() );
+
+    min.reset();
+    buffer.clear();
+    buffer.add( new Object[] { 5L } );
+    assertEquals( 5L, min.moveTo( 0, buffer ) );
+  }
+
+  @Test
+  public void testBigNumbers() throws KettleValueException {
+    Object[][] rows = { { new BigDecimal( "1.1" ) }, { new BigDecimal( "2.2" ) }, { new BigDecimal( "3.3" ) } };
+    RowRingBuffer buffer = fill( rows );
+    WindowAggregate sum =
+      new WindowAggregate( AnalyticQueryMeta.TYPE_FUNCT_SUM, new ValueMetaBigNumber( "v" ), 0, 0, 1 );
+    assertEquals( new BigDecimal( "3.3" ), sum.moveTo( 0, buffer ) );
+    assertEquals( new BigDecimal( "5.5" ), sum.moveTo( 1, buffer ) );
+    assertEquals( new BigDecimal( "3.3" ), sum.moveTo( 2, buffer ) );
+  }
+
+  /**
+   * Compare the sliding aggregates with aggregates calculated over the complete frame for every row, reading the rows
+   * through a buffer that only keeps the rows the aggregate needs.
+   */
+  @Test
+  public void testRandomFrames() throws KettleValueException {
+    Random random = new Random( 42 );
+    ValueMetaInterface valueMeta = new ValueMetaNumber( "v" );
+    for ( int test = 0; test < 500; test++ ) {
+      int nrRows = random.nextInt( 30 );
+      Object[][] rows = new Object[nrRows][];
+      for ( int i = 0; i < nrRows; i++ ) {
+        rows[i] = new Object[] { random.nextInt( 5 ) == 0 ? null : Double.valueOf( random.nextInt( 20 ) - 10 ) };
+      }
+      int type = TYPES[random.nextInt( TYPES.length )];
+      int preceding = random.nextInt( 6 ) - 1;
+      int following = random.nextInt( 5 ) - ( preceding < 0 ? 2 : Math.min( 2, preceding ) );
+
+      WindowAggregate aggregate = new WindowAggregate( type, valueMeta, 0, preceding, following );
+      RowRingBuffer buffer = new RowRingBuffer( aggregate.getLookBehind() + aggregate.getLookAhead() + 1 );
+      int read = 0;
+      for ( int current = 0; current < nrRows; current++ ) {
+        while ( read < nrRows && read <= current + aggregate.getLookAhead() ) {
+          buffer.add( rows[read++] );
+        }
+        Object expected = aggregate( type, rows, preceding < 0 ? 0 : current - preceding, current + following );
+        Object actual = aggregate.moveTo( current, buffer );
+        String message = "type=" + type + " frame=[" + preceding + "," + following + "] row=" + current;
+        if ( expected == null ) {
+          assertNull( message, actual );
+        } else {
+          assertEquals( message, (Double) expected, (Double) actual, 1E-9 );
+        }
+        buffer.removeBefore( current + 1 - aggregate.getLookBehind() );
+      }
+      assertEquals( aggregate.getLookBehind() + aggregate.getLookAhead() + 1, buffer.getCapacity() );
+    }
+  }
+
+  private Object aggregate( int type, Object[][] rows, int first, int last ) {
+    Double result = null;
+    int count = 0;
+    for ( int i = Math.max( 0, first ); i <= Math.min( last, rows.length - 1 ); i++ ) {
+      Double value = (Double) rows[i][0];
+      if ( value == null ) {
+        continue;
+      }
+      count++;
+      if ( result == null ) {
+        result = value;
+      } else if ( type == AnalyticQueryMeta.TYPE_FUNCT_MIN ) {
+        result = Math.min( result, value );
+      } else if ( type == AnalyticQueryMeta.TYPE_FUNCT_MAX ) {
+        result = Math.max( result, value );
+      } else {
+        result = result + value;
+      }
+    }
+    if ( result != null && type == AnalyticQueryMeta.TYPE_FUNCT_AVERAGE ) {
+      result = result / count;
+    }
+    return result;
+  }
+
+  private Object[][] integerRows( Long... values ) {
+    Object[][] rows = new Object[values.length][];
+    for ( int i = 0; i < values.length; i++ ) {
+      rows[i] = new Object[] { values[i] };
+    }
+    return rows;
+  }
+
+  private RowRingBuffer fill( Object[][] rows ) {
+    RowRingBuffer buffer = new RowRingBuffer( rows.length );
+    for ( Object[] row : rows ) {
+      buffer.add( row );
+    }
+    return buffer;
+  }
+}
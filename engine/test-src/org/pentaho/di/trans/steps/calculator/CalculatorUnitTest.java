@@ -194,6 +194,93 @@ public class CalculatorUnitTest {
     verify( data ).clearValuesMetaMapping();
   }
 
+  @Test
+  public void compiledCalculationsGiveTheSameResults() throws KettleException {
+    RowMeta inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "i1" ) );
+    inputRowMeta.addValueMeta( new ValueMetaInteger( "i2" ) );
+    inputRowMeta.addValueMeta( new ValueMetaNumber( "d1" ) );
+    inputRowMeta.addValueMeta( new ValueMetaNumber( "d2" ) );
+    inputRowMeta.addValueMeta( new ValueMetaString( "s" ) );
+
+    CalculatorMetaFunction[] calculations = new CalculatorMetaFunction[] {
+      calculation( "sum", CalculatorMetaFunction.CALC_ADD, "i1", "i2", null, ValueMetaInterface.TYPE_INTEGER ),
+      calculation( "diff", CalculatorMetaFunction.CALC_SUBTRACT, "d1", "i1", null, ValueMetaInterface.TYPE_NUMBER ),
+      calculation( "product", CalculatorMetaFunction.CALC_MULTIPLY, "i1", "d1", null,
+        ValueMetaInterface.TYPE_INTEGER ),
+      calculation( "ratio", CalculatorMetaFunction.CALC_DIVIDE, "d1", "d2", null, ValueMetaInterface.TYPE_NUMBER ),
+      calculation( "quotient", CalculatorMetaFunction.CALC_DIVIDE, "i1", "i2", null, ValueMetaInterface.TYPE_NUMBER ),
+      calculation( "pct1", CalculatorMetaFunction.CALC_PERCENT_1, "i1", "i2", null, ValueMetaInterface.TYPE_INTEGER ),
+      calculation( "pct2", CalculatorMetaFunction.CALC_PERCENT_2, "d1", "d2", null, ValueMetaInterface.TYPE_NUMBER ),
+      calculation( "pct3", CalculatorMetaFunction.CALC_PERCENT_3, "i1", "i2", null, ValueMetaInterface.TYPE_INTEGER ),
+      calculation( "comb", CalculatorMetaFunction.CALC_COMBINATION_1, "sum", "diff", "d1",
+        ValueMetaInterface.TYPE_NUMBER ),
+      calculation( "abs", CalculatorMetaFunction.CALC_ABS, "diff", null, null, ValueMetaInterface.TYPE_INTEGER ),
+      calculation( "mod", CalculatorMetaFunction.CALC_REMAINDER, "i1", "i2", null, ValueMetaInterface.TYPE_INTEGER ),
+      calculation( "dmod", CalculatorMetaFunction.CALC_REMAINDER, "d1", "d2", null, ValueMetaInterface.TYPE_NUMBER ),
+      calculation( "nvl", CalculatorMetaFunction.CALC_NVL, "i1", "d2", null, ValueMetaInterface.TYPE_INTEGER ),
+      calculation( "upper", CalculatorMetaFunction.CALC_UPPER_CASE, "s", null, null, ValueMetaInterface.TYPE_STRING ),
+      calculation( "len", CalculatorMetaFunction.CALC_STRING_LEN, "upper", null, null,
+        ValueMetaInterface.TYPE_INTEGER ),
+      calculation( "lenPlus", CalculatorMetaFunction.CALC_ADD, "len", "i1", null, ValueMetaInterface.TYPE_INTEGER ),
+      calculation( "square", CalculatorMetaFunction.CALC_SQUARE, "d1", null, null, ValueMetaInterface.TYPE_NUMBER ),
+      calculation( "copy", CalculatorMetaFunction.CALC_COPY_OF_FIELD, "square", null, null,
+        ValueMetaInterface.TYPE_INTEGER ),
+      calculation( "add3", CalculatorMetaFunction.CALC_ADD3, "i1", "i2", "d1", ValueMetaInterface.TYPE_NUMBER ), };
+    calculations[16].setRemovedFromResult( true );
+
+    CalculatorData interpretedData = new CalculatorData();
+    List<Object[]> interpreted = calculate( inputRowMeta, calculations, false, interpretedData );
+    assertNull( interpretedData.getCompiledCalculator() );
+
+    CalculatorData compiledData = new CalculatorData();
+    List<Object[]> compiled = calculate( inputRowMeta, calculations, true, compiledData );
+    assertNotNull( compiledData.getCompiledCalculator() );
+
+    assertEquals( interpreted.size(), compiled.size() );
+    for ( int i = 0; i < interpreted.size(); i++ ) {
+      assertArrayEquals( "row " + i, interpreted.get( i ), compiled.get( i ) );
+    }
+  }
+
+  private CalculatorMetaFunction calculation( String name, int calcType, String fieldA, String fieldB,
+    String fieldC, int valueType ) {
+    return new CalculatorMetaFunction( name, calcType, fieldA, fieldB, fieldC, valueType, 0, 0, false, "", "", "", "" );
+  }
+
+  private List<Object[]> calculate( RowMetaInterface inputRowMeta, CalculatorMetaFunction[] calculations,
+    boolean compile, CalculatorData data ) throws KettleException {
+    RowSet inputRowSet = smh.getMockInputRowSet( new Object[][] {
+      { 7L, 3L, 2.5, 0.75, "abc" },
+      { -7L, 2L, -2.5, -1.5, "" },
+      { null, 5L, 1.25, 4.0, "x" },
+      { 100L, -3L, null, 0.5, null },
+      { 1L, 1L, 1E10, null, "Kettle" },
+      { Long.MAX_VALUE, 7L, -0.5, 3.0, "z" }, } );
+    inputRowSet.setRowMeta( inputRowMeta );
+
+    Calculator calculator = new Calculator( smh.stepMeta, smh.stepDataInterface, 0, smh.transMeta, smh.trans );
+    calculator.setVariable( Const.KETTLE_COMPILE_CALCULATIONS, compile ? "Y" : "N" );
+    calculator.getInputRowSets().add( inputRowSet );
+    calculator.setInputRowMeta( inputRowMeta );
+    calculator.init( smh.initStepMetaInterface, smh.initStepDataInterface );
+
+    CalculatorMeta meta = new CalculatorMeta();
+    meta.setCalculation( calculations );
+
+    final List<Object[]> rows = new ArrayList<Object[]>();
+    calculator.addRowListener( new RowAdapter() {
+      @Override
+      public void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+        rows.add( row );
+      }
+    } );
+    while ( calculator.processRow( meta, data ) ) {
+      // process all the rows
+    }
+    return rows;
+  }
+
   @Test
   public void testRound1() throws KettleException {
     assertRound1( 1.0, 1.2 );
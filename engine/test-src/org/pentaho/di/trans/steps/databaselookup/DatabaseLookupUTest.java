@@ -25,7 +25,10 @@ package org.pentaho.di.trans.steps.databaselookup;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -40,6 +43,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockingDetails;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -47,17 +51,22 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.ProgressMonitorListener;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
@@ -76,6 +85,7 @@ import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepStatus;
 import org.pentaho.di.trans.steps.databaselookup.readallcache.ReadAllCache;
 import org.pentaho.di.trans.steps.mock.StepMockHelper;
 import org.pentaho.metastore.api.IMetaStore;
@@ -338,6 +348,66 @@ public class DatabaseLookupUTest {
     assertThat( data.cache, is( instanceOf( DefaultCache.class ) ) );
   }
 
+  @Test
+  public void createsLruCache_WhenNotReadAll() throws Exception {
+    Database db = mock( Database.class );
+
+    StepMockHelper<DatabaseLookupMeta, DatabaseLookupData> mockHelper = createMockHelper();
+    DatabaseLookupMeta meta = createTestMeta();
+    meta.setLoadingAllDataInCache( false );
+    DatabaseLookupData data = new DatabaseLookupData();
+
+    DatabaseLookup step = createSpiedStep( db, mockHelper, meta );
+    step.init( meta, data );
+
+    data.db = db;
+    data.keytypes = new int[] { ValueMetaInterface.TYPE_INTEGER };
+    data.allEquals = false;
+    data.conditions = new int[] { DatabaseLookupMeta.CONDITION_LT };
+    step.processRow( meta, data );
+
+    assertThat( data.cache, is( instanceOf( LruCache.class ) ) );
+  }
+
+  @Test
+  public void lruCacheStatisticsShowInTheStepStatus() throws Exception {
+    Database db = mock( Database.class );
+
+    StepMockHelper<DatabaseLookupMeta, DatabaseLookupData> mockHelper = createMockHelper();
+    DatabaseLookupMeta meta = createTestMeta();
+    meta.setLoadingAllDataInCache( false );
+    DatabaseLookupData data = new DatabaseLookupData();
+
+    DatabaseLookup step = createSpiedStep( db, mockHelper, meta );
+    step.init( meta, data );
+    assertFalse( new StepStatus( step ).isCacheStatistics() );
+
+    data.db = db;
+    data.keytypes = new int[] { ValueMetaInterface.TYPE_INTEGER };
+    data.allEquals = false;
+    data.conditions = new int[] { DatabaseLookupMeta.CONDITION_LT };
+    step.processRow( meta, data );
+
+    RowMeta lookupMeta = new RowMeta();
+    lookupMeta.addValueMeta( new ValueMetaInteger( "Test" ) );
+    assertNull( data.cache.getRowFromCache( lookupMeta, new Object[] { 1L } ) );
+    data.cache.storeRowInCache( meta, lookupMeta, new Object[] { 1L }, new Object[] { "one" } );
+    assertNotNull( data.cache.getRowFromCache( lookupMeta, new Object[] { 1L } ) );
+
+    // The statistics are still there once the step is done
+    step.dispose( meta, data );
+    StepStatus status = new StepStatus( step );
+    assertTrue( status.isCacheStatistics() );
+    assertEquals( 1L, status.getCacheHits() );
+    assertEquals( 1L, status.getCacheMisses() );
+    assertEquals( 0L, status.getCacheEvictions() );
+
+    StepStatus fromXml = new StepStatus().fromXML( status.getXML() );
+    assertTrue( fromXml.isCacheStatistics() );
+    assertEquals( 1L, fromXml.getCacheHits() );
+    assertEquals( 1L, fromXml.getCacheMisses() );
+  }
+
   private DatabaseLookupData getCreatedData( boolean allEquals ) throws Exception {
     Database db = mock( Database.class );
     when( db.getRows( anyString(), anyInt() ) )
@@ -426,6 +496,279 @@ public class DatabaseLookupUTest {
     assertNotNull( data.cache.getRowFromCache( data.lookupMeta, new Object[] { 2L } ) );
   }
 
+  @Test
+  public void batchLookupKeepsTheOrderOfTheRows() throws Exception {
+    Database db = mock( Database.class );
+    PreparedStatement ps = mock( PreparedStatement.class );
+    ResultSet rs = mock( ResultSet.class );
+    when( db.prepareSQL( anyString() ) ).thenReturn( ps );
+    when( db.openQuery( eq( ps ), any( RowMetaInterface.class ), any( Object[].class ) ) ).thenReturn( rs );
+
+    // The first column is the position of the key in the batch
+    //
+    RowMeta returnRowMeta = new RowMeta();
+    returnRowMeta.addValueMeta( new ValueMetaInteger( "position" ) );
+    returnRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    when( db.getReturnRowMeta() ).thenReturn( returnRowMeta );
+    when( db.getRows( eq( rs ), anyInt(), any( ProgressMonitorListener.class ) ) )
+      .thenReturn( Arrays.asList( new Object[] { 2L, "three" }, new Object[] { 0L, "one" } ) )
+      .thenReturn( Collections.singletonList( new Object[] { 0L, "one" } ) );
+
+    DatabaseLookupMeta meta = new DatabaseLookupMeta();
+    meta.setDefault();
+    meta.setDatabaseMeta( mock( DatabaseMeta.class ) );
+    meta.allocate( 1, 1 );
+    meta.setStreamKeyField1( new String[] { ID_FIELD } );
+    meta.setStreamKeyField2( new String[] { null } );
+    meta.setTableKeyField( new String[] { ID_FIELD } );
+    meta.setKeyCondition( new String[] { "=" } );
+    meta.setReturnValueField( new String[] { "name" } );
+    meta.setReturnValueNewName( new String[] { "name" } );
+    meta.setReturnValueDefault( new String[] { "none" } );
+    meta.setReturnValueDefaultType( new int[] { ValueMetaInterface.TYPE_STRING } );
+    meta.setBatchLookup( true );
+    meta.setBatchSize( "3" );
+
+    StepMockHelper<DatabaseLookupMeta, DatabaseLookupData> mockHelper = createMockHelper();
+    DatabaseLookupData data = new DatabaseLookupData();
+    DatabaseLookup step = spyLookup( mockHelper, db, meta.getDatabaseMeta() );
+    doNothing().when( step ).determineFieldsTypesQueryingDb();
+    doReturn( new Object[] { 1L } ).doReturn( new Object[] { 2L } ).doReturn( new Object[] { 3L } )
+      .doReturn( new Object[] { 1L } ).doReturn( null ).when( step ).getRow();
+    doNothing().when( step ).putRow( any( RowMetaInterface.class ), any( Object[].class ) );
+
+    RowMeta input = new RowMeta();
+    input.addValueMeta( new ValueMetaInteger( ID_FIELD ) );
+    step.setInputRowMeta( input );
+
+    assertTrue( step.init( meta, data ) );
+    data.keytypes = new int[] { ValueMetaInterface.TYPE_INTEGER };
+    int nrCalls = 0;
+    while ( step.processRow( meta, data ) ) {
+      nrCalls++;
+    }
+    assertEquals( 4, nrCalls );
+
+    ArgumentCaptor<Object[]> rows = ArgumentCaptor.forClass( Object[].class );
+    verify( step, times( 4 ) ).putRow( any( RowMetaInterface.class ), rows.capture() );
+    List<Object[]> output = rows.getAllValues();
+    String[] expected = { "one", "none", "three", "one" };
+    for ( int i = 0; i < expected.length; i++ ) {
+      assertEquals( expected[ i ], output.get( i )[ 1 ] );
+    }
+
+    // One statement, one query per batch
+    //
+    verify( db, times( 1 ) ).prepareSQL( anyString() );
+    verify( db, times( 2 ) ).openQuery( eq( ps ), any( RowMetaInterface.class ), any( Object[].class ) );
+    assertTrue( data.batchRows.isEmpty() );
+  }
+
+  @Test
+  public void batchLookupOnlyFailsTheRowsWithMultipleResults() throws Exception {
+    Database db = mock( Database.class );
+    PreparedStatement ps = mock( PreparedStatement.class );
+    ResultSet rs = mock( ResultSet.class );
+    when( db.prepareSQL( anyString() ) ).thenReturn( ps );
+    when( db.openQuery( eq( ps ), any( RowMetaInterface.class ), any( Object[].class ) ) ).thenReturn( rs );
+
+    // Key 2, the second of the batch, has two results
+    //
+    RowMeta returnRowMeta = new RowMeta();
+    returnRowMeta.addValueMeta( new ValueMetaInteger( "position" ) );
+    returnRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    when( db.getReturnRowMeta() ).thenReturn( returnRowMeta );
+    when( db.getRows( eq( rs ), anyInt(), any( ProgressMonitorListener.class ) ) ).thenReturn( Arrays.asList(
+      new Object[] { 0L, "one" }, new Object[] { 1L, "two" }, new Object[] { 1L, "two again" },
+      new Object[] { 2L, "three" } ) );
+
+    DatabaseLookupMeta meta = new DatabaseLookupMeta();
+    meta.setDefault();
+    meta.setDatabaseMeta( mock( DatabaseMeta.class ) );
+    meta.allocate( 1, 1 );
+    meta.setStreamKeyField1( new String[] { ID_FIELD } );
+    meta.setStreamKeyField2( new String[] { null } );
+    meta.setTableKeyField( new String[] { ID_FIELD } );
+    meta.setKeyCondition( new String[] { "=" } );
+    meta.setReturnValueField( new String[] { "name" } );
+    meta.setReturnValueNewName( new String[] { "name" } );
+    meta.setReturnValueDefault( new String[] { "none" } );
+    meta.setReturnValueDefaultType( new int[] { ValueMetaInterface.TYPE_STRING } );
+    meta.setFailingOnMultipleResults( true );
+    meta.setBatchLookup( true );
+    meta.setBatchSize( "4" );
+
+    StepMockHelper<DatabaseLookupMeta, DatabaseLookupData> mockHelper = createMockHelper();
+    when( mockHelper.stepMeta.isDoingErrorHandling() ).thenReturn( true );
+    DatabaseLookupData data = new DatabaseLookupData();
+    DatabaseLookup step = spyLookup( mockHelper, db, meta.getDatabaseMeta() );
+    doNothing().when( step ).determineFieldsTypesQueryingDb();
+    doReturn( new Object[] { 1L } ).doReturn( new Object[] { 2L } ).doReturn( new Object[] { 3L } )
+      .doReturn( new Object[] { 2L } ).doReturn( null ).when( step ).getRow();
+    doNothing().when( step ).putRow( any( RowMetaInterface.class ), any( Object[].class ) );
+    doNothing().when( step ).putError( any( RowMetaInterface.class ), any( Object[].class ), anyLong(),
+      anyString(), anyString(), anyString() );
+
+    RowMeta input = new RowMeta();
+    input.addValueMeta( new ValueMetaInteger( ID_FIELD ) );
+    step.setInputRowMeta( input );
+
+    assertTrue( step.init( meta, data ) );
+    data.keytypes = new int[] { ValueMetaInterface.TYPE_INTEGER };
+    while ( step.processRow( meta, data ) ) {
+      // keep going
+    }
+
+    ArgumentCaptor<Object[]> rows = ArgumentCaptor.forClass( Object[].class );
+    verify( step, times( 2 ) ).putRow( any( RowMetaInterface.class ), rows.capture() );
+    assertEquals( "one", rows.getAllValues().get( 0 )[ 1 ] );
+    assertEquals( "three", rows.getAllValues().get( 1 )[ 1 ] );
+
+    ArgumentCaptor<Object[]> errorRows = ArgumentCaptor.forClass( Object[].class );
+    verify( step, times( 2 ) ).putError( any( RowMetaInterface.class ), errorRows.capture(), anyLong(),
+      anyString(), anyString(), anyString() );
+    for ( Object[] errorRow : errorRows.getAllValues() ) {
+      assertEquals( 2L, errorRow[ 0 ] );
+    }
+    assertEquals( 0, step.getErrors() );
+  }
+
+  @Test
+  public void batchLookupMatchesLikeTheDatabase() throws Exception {
+    // A case insensitive table that ignores trailing spaces
+    //
+    String[][] table = { { "abc", "first" }, { "Def ", "second" } };
+    String[] keys = { "ABC", "abc", "def", "zzz", "Abc", "DEF", "abc" };
+
+    List<Object[]> single = lookupInFakeTable( table, keys, false );
+    List<Object[]> batched = lookupInFakeTable( table, keys, true );
+
+    assertEquals( keys.length, single.size() );
+    assertEquals( keys.length, batched.size() );
+    for ( int i = 0; i < keys.length; i++ ) {
+      assertArrayEquals( single.get( i ), batched.get( i ) );
+    }
+    assertEquals( "first", batched.get( 1 )[ 1 ] );
+    assertEquals( "second", batched.get( 2 )[ 1 ] );
+    assertEquals( "none", batched.get( 3 )[ 1 ] );
+    assertEquals( "first", batched.get( 4 )[ 1 ] );
+  }
+
+  private static boolean fakeEquals( Object tableKey, Object key ) {
+    return key != null && tableKey.toString().trim().equalsIgnoreCase( key.toString().trim() );
+  }
+
+  private List<Object[]> lookupInFakeTable( final String[][] table, String[] keys, final boolean batch )
+    throws Exception {
+    final int batchSize = 10;
+    Database db = mock( Database.class );
+    final Object[][] params = new Object[ 1 ][];
+
+    RowMeta returnRowMeta = new RowMeta();
+    if ( batch ) {
+      returnRowMeta.addValueMeta( new ValueMetaInteger( "position" ) );
+    }
+    returnRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    when( db.getReturnRowMeta() ).thenReturn( returnRowMeta );
+
+    // One row at a time: the key set on the lookup statement
+    //
+    doAnswer( new Answer<Void>() {
+      @Override
+      public Void answer( InvocationOnMock invocation ) throws Throwable {
+        params[ 0 ] = (Object[]) invocation.getArguments()[ 1 ];
+        return null;
+      }
+    } ).when( db ).setValuesLookup( any( RowMetaInterface.class ), any( Object[].class ) );
+    when( db.getLookup( anyBoolean(), anyBoolean() ) ).thenAnswer( new Answer<Object[]>() {
+      @Override
+      public Object[] answer( InvocationOnMock invocation ) throws Throwable {
+        for ( String[] tableRow : table ) {
+          if ( fakeEquals( tableRow[ 0 ], params[ 0 ][ 0 ] ) ) {
+            return new Object[] { tableRow[ 1 ] };
+          }
+        }
+        return null;
+      }
+    } );
+
+    // In batches: the CASE keys come first, then the IN list
+    //
+    PreparedStatement ps = mock( PreparedStatement.class );
+    ResultSet rs = mock( ResultSet.class );
+    when( db.prepareSQL( anyString() ) ).thenReturn( ps );
+    when( db.openQuery( eq( ps ), any( RowMetaInterface.class ), any( Object[].class ) ) ).thenAnswer(
+      new Answer<ResultSet>() {
+        @Override
+        public ResultSet answer( InvocationOnMock invocation ) throws Throwable {
+          params[ 0 ] = (Object[]) invocation.getArguments()[ 2 ];
+          return rs;
+        }
+      } );
+    when( db.getRows( eq( rs ), anyInt(), any( ProgressMonitorListener.class ) ) ).thenAnswer(
+      new Answer<List<Object[]>>() {
+        @Override
+        public List<Object[]> answer( InvocationOnMock invocation ) throws Throwable {
+          List<Object[]> rows = new ArrayList<Object[]>();
+          for ( String[] tableRow : table ) {
+            for ( int b = 0; b < batchSize; b++ ) {
+              if ( fakeEquals( tableRow[ 0 ], params[ 0 ][ b ] ) ) {
+                rows.add( new Object[] { (long) b, tableRow[ 1 ] } );
+                break;
+              }
+            }
+          }
+          return rows;
+        }
+      } );
+
+    DatabaseLookupMeta meta = new DatabaseLookupMeta();
+    meta.setDefault();
+    meta.setDatabaseMeta( mock( DatabaseMeta.class ) );
+    meta.allocate( 1, 1 );
+    meta.setStreamKeyField1( new String[] { "code" } );
+    meta.setStreamKeyField2( new String[] { null } );
+    meta.setTableKeyField( new String[] { "code" } );
+    meta.setKeyCondition( new String[] { "=" } );
+    meta.setReturnValueField( new String[] { "name" } );
+    meta.setReturnValueNewName( new String[] { "name" } );
+    meta.setReturnValueDefault( new String[] { "none" } );
+    meta.setReturnValueDefaultType( new int[] { ValueMetaInterface.TYPE_STRING } );
+    meta.setBatchLookup( batch );
+    meta.setBatchSize( String.valueOf( batchSize ) );
+
+    StepMockHelper<DatabaseLookupMeta, DatabaseLookupData> mockHelper = createMockHelper();
+    DatabaseLookupData data = new DatabaseLookupData();
+    DatabaseLookup step = spyLookup( mockHelper, db, meta.getDatabaseMeta() );
+    doNothing().when( step ).determineFieldsTypesQueryingDb();
+    final Iterator<String> input = Arrays.asList( keys ).iterator();
+    doAnswer( new Answer<Object[]>() {
+      @Override
+      public Object[] answer( InvocationOnMock invocation ) throws Throwable {
+        return input.hasNext() ? new Object[] { input.next() } : null;
+      }
+    } ).when( step ).getRow();
+    doNothing().when( step ).putRow( any( RowMetaInterface.class ), any( Object[].class ) );
+
+    RowMeta inputRowMeta = new RowMeta();
+    inputRowMeta.addValueMeta( new ValueMetaString( "code" ) );
+    step.setInputRowMeta( inputRowMeta );
+
+    assertTrue( step.init( meta, data ) );
+    data.keytypes = new int[] { ValueMetaInterface.TYPE_STRING };
+    while ( step.processRow( meta, data ) ) {
+      // keep going
+    }
+
+    ArgumentCaptor<Object[]> rows = ArgumentCaptor.forClass( Object[].class );
+    verify( step, times( keys.length ) ).putRow( any( RowMetaInterface.class ), rows.capture() );
+    List<Object[]> output = new ArrayList<Object[]>();
+    for ( Object[] row : rows.getAllValues() ) {
+      output.add( Arrays.copyOf( row, 2 ) );
+    }
+    return output;
+  }
+
   public class MockDatabaseLookup extends DatabaseLookup {
     public MockDatabaseLookup( StepMeta stepMeta, StepDataInterface stepDataInterface, int copyNr, TransMeta transMeta, Trans trans ) {
       super( stepMeta, stepDataInterface, copyNr, transMeta, trans );
@@ -0,0 +1,141 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.pentaho.di.trans.steps.databaselookup;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+public class LruCacheTest {
+
+  private RowMetaInterface lookupMeta;
+  private DatabaseLookupMeta meta;
+
+  @Before
+  public void setUp() {
+    lookupMeta = new RowMeta();
+    lookupMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    meta = new DatabaseLookupMeta();
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEntryIsEvicted() {
+    LruCache cache = new LruCache( 2, 0, 0 );
+    store( cache, 1L, 10L );
+    store( cache, 2L, 20L );
+
+    // Touch 1, so 2 becomes the least recently used entry
+    //
+    assertArrayEquals( new Object[] { 10L }, get( cache, 1L ) );
+    store( cache, 3L, 30L );
+
+    assertEquals( 2, cache.size() );
+    assertNull( get( cache, 2L ) );
+    assertArrayEquals( new Object[] { 10L }, get( cache, 1L ) );
+    assertArrayEquals( new Object[] { 30L }, get( cache, 3L ) );
+    assertEquals( 1, cache.getEvictions() );
+  }
+
+  @Test
+  public void testMemoryLimit() {
+    LruCache cache = new LruCache( 0, 2000, 0 );
+    for ( long i = 0; i < 1000; i++ ) {
+      store( cache, i, i * 10 );
+    }
+
+    assertTrue( cache.getMemoryUsed() <= 2000 );
+    assertTrue( cache.size() > 1 && cache.size() < 1000 );
+    assertEquals( 1000 - cache.size(), cache.getEvictions() );
+    assertArrayEquals( new Object[] { 9990L }, get( cache, 999L ) );
+    assertNull( get( cache, 0L ) );
+  }
+
+  @Test
+  public void testReplacingAnEntryKeepsTheMemoryUsed() {
+    LruCache cache = new LruCache( 0, 0, 0 );
+    store( cache, 1L, 10L );
+    long memoryUsed = cache.getMemoryUsed();
+    store( cache, 1L, 20L );
+
+    assertEquals( 1, cache.size() );
+    assertEquals( memoryUsed, cache.getMemoryUsed() );
+    assertArrayEquals( new Object[] { 20L }, get( cache, 1L ) );
+  }
+
+  @Test
+  public void testTimeToLive() {
+    final long[] now = new long[] { 1000L };
+    LruCache cache = new LruCache( 0, 0, 500 ) {
+      @Override
+      protected long currentTimeMillis() {
+        return now[0];
+      }
+    };
+    store( cache, 1L, 10L );
+    now[0] = 1500L;
+    assertArrayEquals( new Object[] { 10L }, get( cache, 1L ) );
+    now[0] = 1501L;
+    assertNull( get( cache, 1L ) );
+
+    assertEquals( 0, cache.size() );
+    assertEquals( 0, cache.getMemoryUsed() );
+    assertEquals( 1, cache.getExpirations() );
+    assertEquals( 1, cache.getHits() );
+    assertEquals( 1, cache.getMisses() );
+  }
+
+  @Test
+  public void testNotFoundIsCached() {
+    LruCache cache = new LruCache( 0, 0, 0 );
+    cache.storeRowInCache( meta, lookupMeta, new Object[] { 1L }, LruCache.NOT_FOUND );
+
+    assertSame( LruCache.NOT_FOUND, get( cache, 1L ) );
+    assertNull( get( cache, 2L ) );
+    assertEquals( 1, cache.getHits() );
+    assertEquals( 1, cache.getMisses() );
+  }
+
+  @Test
+  public void testSharing() {
+    LruCache cache = new LruCache( 0, 0, 0 );
+    cache.acquire();
+    cache.acquire();
+    assertEquals( 1, cache.release() );
+    assertEquals( 0, cache.release() );
+  }
+
+  private void store( LruCache cache, long key, long value ) {
+    cache.storeRowInCache( meta, lookupMeta, new Object[] { key }, new Object[] { value } );
+  }
+
+  private Object[] get( LruCache cache, long key ) {
+    return cache.getRowFromCache( lookupMeta, new Object[] { key } );
+  }
+}
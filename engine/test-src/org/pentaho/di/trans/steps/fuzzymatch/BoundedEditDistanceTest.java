@@ -0,0 +1,100 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.fuzzymatch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+import org.pentaho.di.core.util.Utils;
+
+public class BoundedEditDistanceTest {
+
+  @Test
+  public void testSameAsUnboundedDistances() {
+    Random random = new Random( 42 );
+    BoundedEditDistance levenshtein = new BoundedEditDistance( false );
+    BoundedEditDistance damerau = new BoundedEditDistance( true );
+    for ( int i = 0; i < 20000; i++ ) {
+      String s = randomString( random );
+      String t = random.nextInt( 3 ) == 0 ? mutate( s, random ) : randomString( random );
+      int maxDistance = random.nextInt( 6 );
+
+      assertEquals( s + " / " + t, Math.min( StringUtils.getLevenshteinDistance( s, t ), maxDistance + 1 ),
+        levenshtein.distance( s, t, maxDistance ) );
+      assertEquals( s + " / " + t, Math.min( Utils.getDamerauLevenshteinDistance( s, t ), maxDistance + 1 ),
+        damerau.distance( s, t, maxDistance ) );
+    }
+  }
+
+  @Test
+  public void testTransposition() {
+    assertEquals( 2, new BoundedEditDistance( false ).distance( "kettle", "ktetle", 3 ) );
+    assertEquals( 1, new BoundedEditDistance( true ).distance( "kettle", "ktetle", 3 ) );
+    assertEquals( 2, new BoundedEditDistance( true ).distance( "kettle", "ktetle", 1 ) );
+    assertEquals( 0, new BoundedEditDistance( true ).distance( "", "", 0 ) );
+    assertEquals( 3, new BoundedEditDistance( true ).distance( "", "abc", 5 ) );
+  }
+
+  static String randomString( Random random ) {
+    StringBuilder string = new StringBuilder();
+    int length = random.nextInt( 12 );
+    for ( int i = 0; i < length; i++ ) {
+      string.append( (char) ( 'a' + random.nextInt( 4 ) ) );
+    }
+    return string.toString();
+  }
+
+  static String mutate( String s, Random random ) {
+    StringBuilder string = new StringBuilder( s );
+    int nrEdits = random.nextInt( 4 );
+    for ( int i = 0; i < nrEdits; i++ ) {
+      int position = string.length() == 0 ? 0 : random.nextInt( string.length() );
+      switch ( random.nextInt( 4 ) ) {
+        case 0:
+          string.insert( position, (char) ( 'a' + random.nextInt( 4 ) ) );
+          break;
+        case 1:
+          if ( string.length() > 0 ) {
+            string.deleteCharAt( position );
+          }
+          break;
+        case 2:
+          if ( string.length() > 0 ) {
+            string.setCharAt( position, (char) ( 'a' + random.nextInt( 4 ) ) );
+          }
+          break;
+        default:
+          if ( position + 1 < string.length() ) {
+            char c = string.charAt( position );
+            string.setCharAt( position, string.charAt( position + 1 ) );
+            string.setCharAt( position + 1, c );
+          }
+          break;
+      }
+    }
+    return string.toString();
+  }
+}
@@ -0,0 +1,123 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.fuzzymatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+import org.pentaho.di.core.util.Utils;
+
+public class FuzzyMatchIndexTest {
+
+  @Test
+  public void testSupported() {
+    assertTrue( FuzzyMatchIndex.isSupported( FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN ) );
+    assertTrue( FuzzyMatchIndex.isSupported( FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN ) );
+    assertTrue( FuzzyMatchIndex.isSupported( FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX ) );
+    assertFalse( FuzzyMatchIndex.isSupported( FuzzyMatchMeta.OPERATION_TYPE_NEEDLEMAN_WUNSH ) );
+    assertFalse( FuzzyMatchIndex.isSupported( FuzzyMatchMeta.OPERATION_TYPE_JARO_WINKLER ) );
+  }
+
+  @Test
+  public void testCandidatesIncludeAllMatches() {
+    Random random = new Random( 1234 );
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( int i = 0; i < 2000; i++ ) {
+      String value = BoundedEditDistanceTest.randomString( random );
+      if ( i > 0 && random.nextBoolean() ) {
+        value = BoundedEditDistanceTest.mutate( (String) rows.get( random.nextInt( i ) )[0], random );
+      }
+      rows.add( new Object[] { value, i } );
+    }
+
+    for ( int algorithm : new int[] {
+      FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN, FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN } ) {
+      FuzzyMatchIndex index = new FuzzyMatchIndex( rows, algorithm, true );
+      FuzzyMatchIndex.Searcher searcher = index.newSearcher();
+      for ( int q = 0; q < 300; q++ ) {
+        String key = BoundedEditDistanceTest.mutate( (String) rows.get( random.nextInt( rows.size() ) )[0], random );
+        int maxDistance = random.nextInt( 4 );
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for ( int id = 0; id < rows.size(); id++ ) {
+          String value = (String) rows.get( id )[0];
+          int distance = algorithm == FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN
+            ? StringUtils.getLevenshteinDistance( value, key ) : Utils.getDamerauLevenshteinDistance( value, key );
+          if ( distance <= maxDistance ) {
+            expected.add( id );
+          }
+        }
+
+        int nrCandidates = searcher.findCandidates( key, maxDistance );
+        int[] candidates = Arrays.copyOf( searcher.getCandidates(), nrCandidates );
+        for ( int c = 1; c < nrCandidates; c++ ) {
+          assertTrue( candidates[c - 1] < candidates[c] );
+        }
+        for ( int id : expected ) {
+          assertTrue( key + " should find " + rows.get( id )[0], Arrays.binarySearch( candidates, id ) >= 0 );
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCandidatesArePruned() {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    for ( int i = 0; i < 10000; i++ ) {
+      rows.add( new Object[] { "Customer number " + i } );
+    }
+    FuzzyMatchIndex index = new FuzzyMatchIndex( rows, FuzzyMatchMeta.OPERATION_TYPE_LEVENSHTEIN, false );
+    FuzzyMatchIndex.Searcher searcher = index.newSearcher();
+
+    int nrCandidates = searcher.findCandidates( index.normalize( "CUSTOMER NUMBR 1234" ), 1 );
+    assertTrue( "candidates: " + nrCandidates, nrCandidates < 100 );
+    int[] candidates = Arrays.copyOf( searcher.getCandidates(), nrCandidates );
+    assertTrue( Arrays.binarySearch( candidates, 1234 ) >= 0 );
+    assertEquals( "customer number 1234", index.getKey( 1234 ) );
+  }
+
+  @Test
+  public void testPhoneticCodes() {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    rows.add( new Object[] { "Robert" } );
+    rows.add( new Object[] { "Smith" } );
+    rows.add( new Object[] { "Rupert" } );
+    rows.add( new Object[] { "" } );
+    FuzzyMatchIndex index = new FuzzyMatchIndex( rows, FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX, false );
+
+    String code = FuzzyMatchIndex.getPhoneticCode( "Rubin", FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX );
+    assertArrayEquals( new int[0], index.findByCode( code ) );
+    code = FuzzyMatchIndex.getPhoneticCode( "Robbert", FuzzyMatchMeta.OPERATION_TYPE_SOUNDEX );
+    assertArrayEquals( new int[] { 0, 2 }, index.findByCode( code ) );
+    assertArrayEquals( new int[0], index.findByCode( null ) );
+  }
+}
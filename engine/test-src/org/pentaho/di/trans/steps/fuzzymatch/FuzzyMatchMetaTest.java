@@ -44,7 +44,7 @@ public class FuzzyMatchMetaTest {
     List<String> attributes =
         Arrays.asList( "value", "valueName", "algorithm", "lookupfield", "mainstreamfield",
             "outputmatchfield", "outputvaluefield", "caseSensitive", "minimalValue",
-            "maximalValue", "separator", "closervalue" );
+            "maximalValue", "separator", "closervalue", "indexedMatching" );
 
     Map<String, String> getterMap = new HashMap<String, String>() {
       {
@@ -60,6 +60,7 @@ public class FuzzyMatchMetaTest {
         put( "maximalValue", "getMaximalValue" );
         put( "separator", "getSeparator" );
         put( "closervalue", "isGetCloserValue" );
+        put( "indexedMatching", "isIndexedMatching" );
       }
     };
 
@@ -77,6 +78,7 @@ public class FuzzyMatchMetaTest {
         put( "maximalValue", "setMaximalValue" );
         put( "separator", "setSeparator" );
         put( "closervalue", "setGetCloserValue" );
+        put( "indexedMatching", "setIndexedMatching" );
       }
     };
     FieldLoadSaveValidator<String[]> stringArrayLoadSaveValidator =
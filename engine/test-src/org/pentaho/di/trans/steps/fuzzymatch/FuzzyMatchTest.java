@@ -139,6 +139,23 @@ public class FuzzyMatchTest {
     Assert.assertEquals( fuzzyMatch.resultRow[0], row3[0] );
   }
 
+  @Test
+  public void testLookupRowsCopiedToAllCopies() {
+    StepMeta lookup = new StepMeta( "lookup", null );
+    StepMeta fuzzy = new StepMeta( "fuzzy", null );
+
+    lookup.setDistributes( true );
+    Assert.assertFalse( FuzzyMatch.isCopiedToAllCopies( lookup, 1, fuzzy, 3 ) );
+    Assert.assertFalse( FuzzyMatch.isCopiedToAllCopies( lookup, 2, fuzzy, 3 ) );
+
+    lookup.setDistributes( false );
+    Assert.assertFalse( FuzzyMatch.isCopiedToAllCopies( lookup, 1, fuzzy, 1 ) );
+    Assert.assertTrue( FuzzyMatch.isCopiedToAllCopies( lookup, 1, fuzzy, 3 ) );
+    Assert.assertTrue( FuzzyMatch.isCopiedToAllCopies( lookup, 2, fuzzy, 3 ) );
+    // The copies are linked one to one, every copy receives the rows of its own lookup step copy
+    Assert.assertFalse( FuzzyMatch.isCopiedToAllCopies( lookup, 3, fuzzy, 3 ) );
+  }
+
   @Test
   public void testReadLookupValues() throws Exception {
     FuzzyMatchData data = spy( new FuzzyMatchData() );
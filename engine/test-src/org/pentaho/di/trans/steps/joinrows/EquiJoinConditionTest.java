@@ -0,0 +1,181 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.joinrows;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class EquiJoinConditionTest {
+
+  private RowMetaInterface mainRowMeta;
+  private RowMetaInterface joinedRowMeta;
+
+  @Before
+  public void setUp() {
+    mainRowMeta = new RowMeta();
+    mainRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    mainRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    mainRowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+
+    joinedRowMeta = mainRowMeta.clone();
+    joinedRowMeta.addValueMeta( new ValueMetaInteger( "other_id" ) );
+    joinedRowMeta.addValueMeta( new ValueMetaString( "other_name" ) );
+    joinedRowMeta.addValueMeta( new ValueMetaDate( "other_date" ) );
+    joinedRowMeta.addValueMeta( new ValueMetaString( "other_code" ) );
+  }
+
+  @Test
+  public void testSingleEquality() throws Exception {
+    EquiJoinCondition equiJoin = find( equal( "id", "other_id" ) );
+    assertNotNull( equiJoin );
+    assertEquals( 1, equiJoin.size() );
+    assertEquals( "id = other_id", equiJoin.toString() );
+
+    Object[] mainRow = { 5L, "a", null };
+    Object[] otherRow = { 5L, "b", null, "c" };
+    assertEquals( equiJoin.getMainKey( mainRow ), equiJoin.getOtherKey( otherRow ) );
+  }
+
+  @Test
+  public void testEqualityFromOtherStream() throws Exception {
+    EquiJoinCondition equiJoin = find( equal( "other_id", "id" ) );
+    assertNotNull( equiJoin );
+    assertEquals( equiJoin.getMainKey( new Object[] { 7L, null, null } ), equiJoin.getOtherKey( new Object[] {
+      7L, null, null, null } ) );
+  }
+
+  @Test
+  public void testConjunction() throws Exception {
+    Condition condition = new Condition();
+    condition.addCondition( equal( "id", "other_id" ) );
+    condition.addCondition( new Condition( Condition.OPERATOR_AND, "name", Condition.FUNC_LARGER, "other_name",
+      null ) );
+    condition.addCondition( new Condition( Condition.OPERATOR_AND, "date", Condition.FUNC_EQUAL, "other_date", null ) );
+
+    EquiJoinCondition equiJoin = find( condition );
+    assertNotNull( equiJoin );
+    assertEquals( 2, equiJoin.size() );
+    assertEquals( "id = other_id AND date = other_date", equiJoin.toString() );
+
+    Object[] mainRow = { 1L, "x", new Date( 1000L ) };
+    assertEquals( equiJoin.getMainKey( mainRow ), equiJoin.getOtherKey( new Object[] {
+      1L, "y", new Date( 1000L ), null } ) );
+    assertFalse( equiJoin.getMainKey( mainRow ).equals( equiJoin.getOtherKey( new Object[] {
+      1L, "y", new Date( 2000L ), null } ) ) );
+  }
+
+  @Test
+  public void testDisjunctionIsNotUsed() {
+    Condition condition = new Condition();
+    condition.addCondition( equal( "id", "other_id" ) );
+    condition.addCondition( new Condition( Condition.OPERATOR_OR, "name", Condition.FUNC_EQUAL, "other_name",
+      null ) );
+
+    assertNull( find( condition ) );
+  }
+
+  @Test
+  public void testNegationIsNotUsed() {
+    Condition condition = equal( "id", "other_id" );
+    condition.setNegated( true );
+    assertNull( find( condition ) );
+
+    Condition composite = new Condition();
+    composite.addCondition( equal( "name", "other_name" ) );
+    composite.addCondition( new Condition( Condition.OPERATOR_AND_NOT, "id", Condition.FUNC_EQUAL, "other_id",
+      null ) );
+    EquiJoinCondition equiJoin = find( composite );
+    assertNotNull( equiJoin );
+    assertEquals( "name = other_name", equiJoin.toString() );
+  }
+
+  @Test
+  public void testUnusablePredicates() {
+    // Different data types
+    assertNull( find( equal( "name", "other_id" ) ) );
+    // Both fields of the same stream
+    assertNull( find( equal( "id", "id" ) ) );
+    assertNull( find( equal( "other_name", "other_code" ) ) );
+    // Not an equality
+    assertNull( find( new Condition( "id", Condition.FUNC_SMALLER, "other_id", null ) ) );
+    // Unknown field
+    assertNull( find( equal( "id", "unknown" ) ) );
+    // Empty condition
+    assertNull( find( new Condition() ) );
+    assertNull( find( null ) );
+
+    // Strings compared with a collator
+    joinedRowMeta.getValueMeta( 1 ).setCollatorDisabled( false );
+    assertNull( find( equal( "name", "other_name" ) ) );
+  }
+
+  @Test
+  public void testCaseInsensitiveKeys() throws Exception {
+    joinedRowMeta.getValueMeta( 1 ).setCaseInsensitive( true );
+    EquiJoinCondition equiJoin = find( equal( "name", "other_name" ) );
+    assertNotNull( equiJoin );
+    assertEquals( equiJoin.getMainKey( new Object[] { null, "Stra\u00dfe", null } ), equiJoin.getOtherKey(
+      new Object[] { null, "STRA\u00dfE", null, null } ) );
+
+    // The comparison uses the metadata of the left field
+    equiJoin = find( equal( "other_name", "name" ) );
+    assertFalse( equiJoin.getMainKey( new Object[] { null, "abc", null } ).equals( equiJoin.getOtherKey(
+      new Object[] { null, "ABC", null, null } ) ) );
+  }
+
+  @Test
+  public void testNullKeys() throws Exception {
+    EquiJoinCondition equiJoin = find( equal( "id", "other_id" ) );
+    assertNull( equiJoin.getMainKey( new Object[] { null, null, null } ) );
+    assertNull( equiJoin.getOtherKey( new Object[] { null, null, null, null } ) );
+
+    Condition condition = new Condition();
+    condition.addCondition( equal( "id", "other_id" ) );
+    condition.addCondition( equal( "name", "other_name" ) );
+    equiJoin = find( condition );
+    assertTrue( equiJoin.getMainKey( new Object[] { 1L, null, null } ).equals( equiJoin.getOtherKey(
+      new Object[] { 1L, null, null, null } ) ) );
+  }
+
+  private Condition equal( String left, String right ) {
+    return new Condition( left, Condition.FUNC_EQUAL, right, null );
+  }
+
+  private EquiJoinCondition find( Condition condition ) {
+    return EquiJoinCondition.findEqualities( condition, mainRowMeta, joinedRowMeta );
+  }
+}
@@ -34,6 +34,7 @@ import org.pentaho.di.core.plugins.PluginRegistry;
 import org.pentaho.di.trans.steps.loadsave.LoadSaveTester;
 import org.pentaho.di.trans.steps.loadsave.validator.ConditionLoadSaveValidator;
 import org.pentaho.di.trans.steps.loadsave.validator.FieldLoadSaveValidator;
+import org.pentaho.di.trans.steps.loadsave.validator.IntLoadSaveValidator;
 
 public class JoinRowsMetaTest {
   LoadSaveTester loadSaveTester;
@@ -44,13 +45,14 @@ public class JoinRowsMetaTest {
     KettleEnvironment.init();
     PluginRegistry.init( true );
     List<String> attributes =
-        Arrays.asList( "directory", "prefix", "cacheSize", "mainStepname", "condition" );
+        Arrays.asList( "directory", "prefix", "cacheSize", "mainStepname", "condition", "joinStrategy" );
 
     Map<String, String> getterMap = new HashMap<String, String>();
     Map<String, String> setterMap = new HashMap<String, String>();
 
     Map<String, FieldLoadSaveValidator<?>> attrValidatorMap = new HashMap<String, FieldLoadSaveValidator<?>>();
     attrValidatorMap.put( "condition", new ConditionLoadSaveValidator() );
+    attrValidatorMap.put( "joinStrategy", new IntLoadSaveValidator( JoinRowsMeta.joinStrategyCodes.length ) );
 
     Map<String, FieldLoadSaveValidator<?>> typeValidatorMap = new HashMap<String, FieldLoadSaveValidator<?>>();
 
@@ -0,0 +1,238 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.joinrows;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.QueueRowSet;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.step.RowAdapter;
+import org.pentaho.di.trans.steps.mock.StepMockHelper;
+
+/**
+ * Runs the block nested loop and the hash join on the same input as the nested loop: apart from the order of the
+ * rows, all the join strategies have to give the same result.
+ */
+public class JoinRowsStrategiesTest {
+
+  private static final String[] STEP_NAMES = { "main", "other", "third" };
+
+  private static final Object[][] MAIN_ROWS = {
+    { 1L, 1L, "a" }, { 2L, 2L, "b" }, { 3L, 2L, "c" }, { 4L, null, "d" }, { 5L, 3L, "e" }, { 6L, null, "f" },
+    { 7L, 5L, "g" } };
+
+  private static final Object[][] OTHER_ROWS = {
+    { 10L, 2L, "b" }, { 11L, 2L, "z" }, { 12L, null, "a" }, { 13L, 1L, "x" }, { 14L, 4L, "y" }, { 15L, null, "c" },
+    { 16L, 2L, "a" } };
+
+  private static final Object[][] THIRD_ROWS = { { 1L, "p" }, { 2L, "q" }, { null, "r" } };
+
+  private static final Object[][] NO_ROWS = {};
+
+  private StepMockHelper<JoinRowsMeta, JoinRowsData> mockHelper;
+  private RowMetaInterface[] rowMetas;
+
+  @Before
+  public void setUp() {
+    mockHelper =
+      new StepMockHelper<JoinRowsMeta, JoinRowsData>( "Join Rows", JoinRowsMeta.class, JoinRowsData.class );
+    when( mockHelper.logChannelInterfaceFactory.create( any(), any( LoggingObjectInterface.class ) ) ).thenReturn(
+      mockHelper.logChannelInterface );
+    when( mockHelper.trans.isRunning() ).thenReturn( true );
+
+    RowMetaInterface mainRowMeta = new RowMeta();
+    mainRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    mainRowMeta.addValueMeta( new ValueMetaInteger( "key" ) );
+    mainRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+
+    RowMetaInterface otherRowMeta = new RowMeta();
+    otherRowMeta.addValueMeta( new ValueMetaInteger( "o_id" ) );
+    otherRowMeta.addValueMeta( new ValueMetaInteger( "o_key" ) );
+    otherRowMeta.addValueMeta( new ValueMetaString( "o_name" ) );
+
+    RowMetaInterface thirdRowMeta = new RowMeta();
+    thirdRowMeta.addValueMeta( new ValueMetaInteger( "p_key" ) );
+    thirdRowMeta.addValueMeta( new ValueMetaString( "p_name" ) );
+
+    rowMetas = new RowMetaInterface[] { mainRowMeta, otherRowMeta, thirdRowMeta };
+  }
+
+  @After
+  public void tearDown() {
+    mockHelper.cleanUp();
+  }
+
+  @Test
+  public void testNullAndDuplicateKeys() throws Exception {
+    Condition condition = equal( "key", "o_key" );
+
+    List<String> expected = join( JoinRowsMeta.JOIN_STRATEGY_NESTED_LOOP, condition, 500, MAIN_ROWS, OTHER_ROWS );
+    // key 1: 1 x 1, key 2: 2 x 3, null: 2 x 2 as two nulls are equal
+    assertEquals( 11, expected.size() );
+    assertAllStrategiesGive( expected, condition, 500, MAIN_ROWS, OTHER_ROWS );
+  }
+
+  @Test
+  public void testResidualCondition() throws Exception {
+    Condition condition = equal( "key", "o_key" );
+    condition.addCondition( new Condition( Condition.OPERATOR_AND, "name", Condition.FUNC_SMALLER, "o_name", null ) );
+
+    List<String> expected = join( JoinRowsMeta.JOIN_STRATEGY_NESTED_LOOP, condition, 500, MAIN_ROWS, OTHER_ROWS );
+    assertTrue( expected.size() > 0 && expected.size() < 11 );
+    assertAllStrategiesGive( expected, condition, 500, MAIN_ROWS, OTHER_ROWS );
+  }
+
+  @Test
+  public void testRowsReadBackFromTheTemporaryFiles() throws Exception {
+    Condition condition = equal( "key", "o_key" );
+
+    List<String> expected = join( JoinRowsMeta.JOIN_STRATEGY_NESTED_LOOP, condition, 1, MAIN_ROWS, OTHER_ROWS );
+    assertEquals( 11, expected.size() );
+    assertAllStrategiesGive( expected, condition, 1, MAIN_ROWS, OTHER_ROWS );
+  }
+
+  @Test
+  public void testSeveralStreams() throws Exception {
+    Condition condition = equal( "key", "o_key" );
+    condition.addCondition( new Condition( Condition.OPERATOR_AND, "key", Condition.FUNC_EQUAL, "p_key", null ) );
+
+    for ( int cacheSize : new int[] { 500, 1 } ) {
+      List<String> expected =
+        join( JoinRowsMeta.JOIN_STRATEGY_NESTED_LOOP, condition, cacheSize, MAIN_ROWS, OTHER_ROWS, THIRD_ROWS );
+      // key 1: 1 x 1 x 1, key 2: 2 x 3 x 1, null: 2 x 2 x 1
+      assertEquals( 11, expected.size() );
+      assertAllStrategiesGive( expected, condition, cacheSize, MAIN_ROWS, OTHER_ROWS, THIRD_ROWS );
+    }
+  }
+
+  @Test
+  public void testCartesianProduct() throws Exception {
+    for ( int cacheSize : new int[] { 500, 1 } ) {
+      List<String> expected =
+        join( JoinRowsMeta.JOIN_STRATEGY_NESTED_LOOP, null, cacheSize, MAIN_ROWS, OTHER_ROWS, THIRD_ROWS );
+      assertEquals( MAIN_ROWS.length * OTHER_ROWS.length * THIRD_ROWS.length, expected.size() );
+      assertAllStrategiesGive( expected, null, cacheSize, MAIN_ROWS, OTHER_ROWS, THIRD_ROWS );
+    }
+  }
+
+  @Test
+  public void testEmptyOtherStream() throws Exception {
+    Condition condition = equal( "key", "o_key" );
+
+    assertAllStrategiesGive( Collections.<String>emptyList(), condition, 500, MAIN_ROWS, NO_ROWS );
+    assertAllStrategiesGive( Collections.<String>emptyList(), condition, 500, MAIN_ROWS, OTHER_ROWS, NO_ROWS );
+  }
+
+  @Test
+  public void testEmptyMainStream() throws Exception {
+    Condition condition = equal( "key", "o_key" );
+
+    assertAllStrategiesGive( Collections.<String>emptyList(), condition, 500, NO_ROWS, OTHER_ROWS );
+    assertAllStrategiesGive( Collections.<String>emptyList(), null, 500, NO_ROWS, OTHER_ROWS, THIRD_ROWS );
+  }
+
+  private Condition equal( String left, String right ) {
+    Condition condition = new Condition();
+    condition.addCondition( new Condition( left, Condition.FUNC_EQUAL, right, null ) );
+    return condition;
+  }
+
+  private void assertAllStrategiesGive( List<String> expected, Condition condition, int cacheSize,
+    Object[][]... rows ) throws KettleException {
+    for ( int strategy : new int[] {
+      JoinRowsMeta.JOIN_STRATEGY_NESTED_LOOP, JoinRowsMeta.JOIN_STRATEGY_BLOCK_NESTED_LOOP,
+      JoinRowsMeta.JOIN_STRATEGY_AUTOMATIC } ) {
+      assertEquals( "Join strategy " + strategy, expected, join( strategy, condition, cacheSize, rows ) );
+    }
+  }
+
+  /**
+   * Join the rows of the given streams, the first one is the main stream.
+   *
+   * @return the joined rows, sorted
+   */
+  private List<String> join( int strategy, Condition condition, int cacheSize, Object[][]... rows )
+    throws KettleException {
+    JoinRowsMeta meta = new JoinRowsMeta();
+    meta.setDirectory( System.getProperty( "java.io.tmpdir" ) );
+    meta.setPrefix( "joinrows" );
+    meta.setCacheSize( cacheSize );
+    meta.setMainStepname( STEP_NAMES[0] );
+    meta.setCondition( condition );
+    meta.setJoinStrategy( strategy );
+    JoinRowsData data = new JoinRowsData();
+
+    JoinRows joinRows = new JoinRows( mockHelper.stepMeta, data, 0, mockHelper.transMeta, mockHelper.trans );
+    // Small blocks so that the main stream is split over several of them
+    joinRows.setVariable( Const.KETTLE_JOIN_ROWS_BLOCK_SIZE, "2" );
+
+    // Add the main stream last: the step has to put it in front itself
+    for ( int i = rows.length - 1; i >= 0; i-- ) {
+      RowSet rowSet = new QueueRowSet();
+      rowSet.setThreadNameFromToCopy( STEP_NAMES[i], 0, "Join Rows", 0 );
+      for ( Object[] row : rows[i] ) {
+        rowSet.putRow( rowMetas[i], row );
+      }
+      rowSet.setDone();
+      joinRows.getInputRowSets().add( rowSet );
+    }
+
+    final List<String> joined = new ArrayList<String>();
+    joinRows.addRowListener( new RowAdapter() {
+      @Override
+      public void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+        joined.add( Arrays.toString( Arrays.copyOf( row, rowMeta.size() ) ) );
+      }
+    } );
+
+    try {
+      while ( joinRows.processRow( meta, data ) ) {
+        // join the next rows
+      }
+    } finally {
+      joinRows.dispose( meta, data );
+    }
+    Collections.sort( joined );
+    return joined;
+  }
+}
@@ -0,0 +1,138 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.mapping;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.ObjectLocationSpecificationMethod;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransTestFactory;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.steps.addsequence.AddSequenceMeta;
+import org.pentaho.di.trans.steps.mappinginput.MappingInputMeta;
+import org.pentaho.di.trans.steps.mappingoutput.MappingOutputMeta;
+
+public class MappingInlineTest {
+
+  private static final int NR_ROWS = 2500;
+
+  @BeforeClass
+  public static void initKettle() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  @Test
+  public void inlineMappingGivesTheSameRowsAsTheThreadedMapping() throws Exception {
+    File mappingFile = writeMapping();
+    try {
+      List<RowMetaAndData> threaded = executeMapping( mappingFile, false );
+      List<RowMetaAndData> inline = executeMapping( mappingFile, true );
+
+      assertEquals( NR_ROWS, threaded.size() );
+      assertEquals( threaded.size(), inline.size() );
+      for ( int i = 0; i < threaded.size(); i++ ) {
+        assertEquals( Long.valueOf( i ), inline.get( i ).getInteger( "id" ) );
+        assertEquals( threaded.get( i ).getInteger( "id" ), inline.get( i ).getInteger( "id" ) );
+        assertEquals( threaded.get( i ).getInteger( "seq" ), inline.get( i ).getInteger( "seq" ) );
+      }
+    } finally {
+      mappingFile.delete();
+    }
+  }
+
+  private List<RowMetaAndData> executeMapping( File mappingFile, boolean inline ) throws Exception {
+    MappingMeta mappingMeta = new MappingMeta();
+    mappingMeta.setDefault();
+    mappingMeta.setSpecificationMethod( ObjectLocationSpecificationMethod.FILENAME );
+    mappingMeta.setFileName( mappingFile.getAbsolutePath() );
+    mappingMeta.setExecutingInline( inline );
+
+    TransMeta transMeta = TransTestFactory.generateTestTransformation( null, mappingMeta, "mapping" );
+
+    // Small row sets, so the inline mapping has to work through many batches
+    //
+    transMeta.setSizeRowset( 100 );
+
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    List<RowMetaAndData> input = new ArrayList<RowMetaAndData>();
+    for ( long i = 0; i < NR_ROWS; i++ ) {
+      input.add( new RowMetaAndData( rowMeta, new Object[] { i } ) );
+    }
+    return TransTestFactory.executeTestTransformation( transMeta, "mapping", input );
+  }
+
+  /**
+   * A mapping that numbers the rows: mapping input, add sequence, mapping output.
+   */
+  private File writeMapping() throws Exception {
+    TransMeta mappingTransMeta = new TransMeta();
+    mappingTransMeta.setName( "numbering" );
+
+    MappingInputMeta inputMeta = new MappingInputMeta();
+    inputMeta.setDefault();
+    StepMeta input = createStepMeta( "input", inputMeta );
+    mappingTransMeta.addStep( input );
+
+    AddSequenceMeta sequenceMeta = new AddSequenceMeta();
+    sequenceMeta.setDefault();
+    sequenceMeta.setValuename( "seq" );
+    StepMeta sequence = createStepMeta( "sequence", sequenceMeta );
+    mappingTransMeta.addStep( sequence );
+
+    MappingOutputMeta outputMeta = new MappingOutputMeta();
+    outputMeta.setDefault();
+    StepMeta output = createStepMeta( "output", outputMeta );
+    mappingTransMeta.addStep( output );
+
+    mappingTransMeta.addTransHop( new TransHopMeta( input, sequence ) );
+    mappingTransMeta.addTransHop( new TransHopMeta( sequence, output ) );
+
+    File file = File.createTempFile( "inline-mapping", ".ktr" );
+    file.deleteOnExit();
+    FileUtils.writeStringToFile( file, XMLHandler.getXMLHeader() + mappingTransMeta.getXML(), "UTF-8" );
+    return file;
+  }
+
+  private StepMeta createStepMeta( String name, StepMetaInterface stepMetaInterface ) {
+    String id = PluginRegistry.getInstance().getPluginId( StepPluginType.class, stepMetaInterface );
+    return new StepMeta( id, name, stepMetaInterface );
+  }
+}
@@ -49,7 +49,7 @@ public class MappingMetaTest {
     PluginRegistry.init( true );
     List<String> attributes =
         Arrays.asList( "transName", "fileName", "directoryPath", "allowingMultipleInputs", "allowingMultipleOutputs",
-            "specificationMethod", "transObjectId", "inputMappings", "outputMappings", "mappingParameters" );
+            "executingInline", "specificationMethod", "transObjectId", "inputMappings", "outputMappings", "mappingParameters" );
 
     Map<String, FieldLoadSaveValidator<?>> attrValidatorMap = new HashMap<String, FieldLoadSaveValidator<?>>();
     attrValidatorMap.put( "specificationMethod", new ObjectLocationSpecificationMethodLoadSaveValidator() );
@@ -25,16 +25,23 @@ package org.pentaho.di.trans.steps.mapping;
 import org.junit.Before;
 import org.junit.Test;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.steps.StepMockUtil;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.mappinginput.MappingInputMeta;
+import org.pentaho.di.trans.steps.mappingoutput.MappingOutputMeta;
+import org.pentaho.di.trans.steps.mergerows.MergeRowsMeta;
 import org.pentaho.di.trans.steps.mock.StepMockHelper;
 
 import java.util.Arrays;
 import java.util.Collections;
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import org.junit.matchers.JUnitMatchers;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -93,4 +100,20 @@ public class MappingUnitTest {
     MappingIODefinition definition = new MappingIODefinition( null, "non-existing" );
     mapping.pickupTargetStepsFor( definition );
   }
+
+  @Test
+  public void canExecuteInline() throws Exception {
+    TransMeta mappingTransMeta = new TransMeta();
+    mappingTransMeta.addStep( new StepMeta( "input", new MappingInputMeta() ) );
+    mappingTransMeta.addStep( new StepMeta( "dummy", new DummyTransMeta() ) );
+    mappingTransMeta.addStep( new StepMeta( "output", new MappingOutputMeta() ) );
+    assertTrue( mapping.canExecuteInline( mappingTransMeta ) );
+
+    mappingTransMeta.addStep( new StepMeta( "second input", new MappingInputMeta() ) );
+    assertFalse( "Only one mapping input step is supported", mapping.canExecuteInline( mappingTransMeta ) );
+
+    mappingTransMeta.removeStep( 3 );
+    mappingTransMeta.addStep( new StepMeta( "merge", new MergeRowsMeta() ) );
+    assertFalse( "Merge rows only runs on the normal engine", mapping.canExecuteInline( mappingTransMeta ) );
+  }
 }
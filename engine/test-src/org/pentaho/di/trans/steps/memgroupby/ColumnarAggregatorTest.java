@@ -0,0 +1,185 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.memgroupby;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class ColumnarAggregatorTest {
+
+  private static final int[] AGGREGATE_TYPES = {
+    MemoryGroupByMeta.TYPE_GROUP_SUM, MemoryGroupByMeta.TYPE_GROUP_AVERAGE, MemoryGroupByMeta.TYPE_GROUP_MIN,
+    MemoryGroupByMeta.TYPE_GROUP_MAX, MemoryGroupByMeta.TYPE_GROUP_COUNT_ALL, MemoryGroupByMeta.TYPE_GROUP_COUNT_ANY,
+    MemoryGroupByMeta.TYPE_GROUP_COUNT_DISTINCT, MemoryGroupByMeta.TYPE_GROUP_MIN, };
+
+  private RowMetaInterface getInputRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "str" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "intg" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "num" ) );
+    rowMeta.addValueMeta( new ValueMetaDate( "date" ) );
+    return rowMeta;
+  }
+
+  private RowMetaInterface getAggMeta() {
+    RowMetaInterface aggMeta = new RowMeta();
+    aggMeta.addValueMeta( new ValueMetaInteger( "sum" ) );
+    aggMeta.addValueMeta( new ValueMetaNumber( "avg" ) );
+    aggMeta.addValueMeta( new ValueMetaDate( "min" ) );
+    aggMeta.addValueMeta( new ValueMetaNumber( "max" ) );
+    aggMeta.addValueMeta( new ValueMetaInteger( "count" ) );
+    aggMeta.addValueMeta( new ValueMetaInteger( "count_any" ) );
+    aggMeta.addValueMeta( new ValueMetaInteger( "count_distinct" ) );
+    aggMeta.addValueMeta( new ValueMetaString( "min_str" ) );
+    return aggMeta;
+  }
+
+  private ColumnarAggregator createAggregator( boolean minNullIsValued ) throws KettleValueException {
+    return new ColumnarAggregator( getInputRowMeta(), new int[] { 0, 1 }, new int[] { 1, 2, 3, 2, 0, 0, 0, 0 },
+      AGGREGATE_TYPES, getAggMeta(), minNullIsValued );
+  }
+
+  @Test
+  public void testSupported() {
+    RowMetaInterface rowMeta = getInputRowMeta();
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "big" ) );
+    RowMetaInterface aggMeta = getAggMeta();
+
+    assertTrue( ColumnarAggregator.isSupported(
+      rowMeta, new int[] { 0, 1 }, new int[] { 1, 2, 3, 2, 0, 0, 0, 0 }, AGGREGATE_TYPES, aggMeta ) );
+    assertFalse( ColumnarAggregator.isSupported( rowMeta, new int[] { 4 }, new int[0], new int[0], aggMeta ) );
+    assertFalse( ColumnarAggregator.isSupported( rowMeta, new int[] { 0 }, new int[] { 0 },
+      new int[] { MemoryGroupByMeta.TYPE_GROUP_SUM }, aggMeta ) );
+    assertFalse( ColumnarAggregator.isSupported( rowMeta, new int[] { 0 }, new int[] { 1 },
+      new int[] { MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA }, aggMeta ) );
+
+    rowMeta.getValueMeta( 0 ).setCaseInsensitive( true );
+    assertFalse( ColumnarAggregator.isSupported( rowMeta, new int[] { 0 }, new int[0], new int[0], aggMeta ) );
+  }
+
+  @Test
+  public void testAggregates() throws KettleValueException {
+    ColumnarAggregator aggregator = createAggregator( false );
+    aggregator.add( new Object[] { "a", 1L, 2.5, new Date( 20L ) }, true );
+    aggregator.add( new Object[] { "b", 2L, null, null }, true );
+    aggregator.add( new Object[] { "a", 1L, 1.5, new Date( 10L ) }, true );
+    aggregator.add( new Object[] { "a", 1L, 1.5, new Date( 30L ) }, true );
+    aggregator.add( new Object[] { null, null, 4.0, null }, true );
+
+    assertEquals( 3, aggregator.size() );
+    Map<Object, Integer> groups = getGroups( aggregator );
+
+    int a = groups.get( "a" );
+    assertArrayEquals( new Object[] { "a", 1L }, aggregator.getGroupData( a ) );
+    assertArrayEquals(
+      new Object[] { 3L, 5.5 / 3, new Date( 10L ), 2.5, 3L, 3L, 1L, "a" }, aggregator.getAggregateResult( a ) );
+
+    int b = groups.get( "b" );
+    assertArrayEquals(
+      new Object[] { 2L, null, null, null, 1L, 1L, 1L, "b" }, aggregator.getAggregateResult( b ) );
+
+    int empty = groups.get( null );
+    assertArrayEquals( new Object[] { null, null }, aggregator.getGroupData( empty ) );
+    assertArrayEquals(
+      new Object[] { null, 4.0, null, 4.0, 0L, 1L, 0L, null }, aggregator.getAggregateResult( empty ) );
+  }
+
+  @Test
+  public void testMinNullIsValued() throws KettleValueException {
+    ColumnarAggregator aggregator = createAggregator( true );
+    aggregator.add( new Object[] { "a", 1L, 2.5, new Date( 20L ) }, true );
+    aggregator.add( new Object[] { "a", 1L, 1.5, null }, true );
+
+    Object[] result = aggregator.getAggregateResult( 0 );
+    assertNull( result[2] );
+    assertEquals( "a", result[7] );
+  }
+
+  @Test
+  public void testRefusedGroups() throws KettleValueException {
+    ColumnarAggregator aggregator = createAggregator( false );
+    assertTrue( aggregator.add( new Object[] { "a", 1L, 1.0, null }, true ) );
+    assertTrue( aggregator.add( new Object[] { "a", 1L, 1.0, null }, false ) );
+    assertFalse( aggregator.add( new Object[] { "a", 2L, 1.0, null }, false ) );
+    assertFalse( aggregator.add( new Object[] { "unknown", 1L, 1.0, null }, false ) );
+    assertEquals( 1, aggregator.size() );
+    assertEquals( 2L, aggregator.getAggregateResult( 0 )[4] );
+  }
+
+  @Test
+  public void testPartitionsAreStable() throws KettleValueException {
+    ColumnarAggregator first = createAggregator( false );
+    ColumnarAggregator second = createAggregator( false );
+    second.add( new Object[] { "other", 5L, null, null }, true );
+
+    for ( int i = 0; i < 1000; i++ ) {
+      Object[] row = new Object[] { "key" + ( i % 77 ), Long.valueOf( i % 13 ), null, null };
+      first.add( row, false );
+      second.add( row, true );
+      for ( int depth = 0; depth < ColumnarAggregator.MAX_SPILL_DEPTH; depth++ ) {
+        int partition = first.getPartition( depth );
+        assertEquals( partition, second.getPartition( depth ) );
+        assertTrue( partition >= 0 && partition < ColumnarAggregator.NR_PARTITIONS );
+      }
+    }
+  }
+
+  @Test
+  public void testGrowth() throws KettleValueException {
+    ColumnarAggregator aggregator = createAggregator( false );
+    long initialMemory = aggregator.getMemoryUsed();
+    for ( int i = 0; i < 5000; i++ ) {
+      aggregator.add( new Object[] { "key" + ( i % 2500 ), 1L, 1.0, null }, true );
+    }
+    assertEquals( 2500, aggregator.size() );
+    assertTrue( aggregator.getMemoryUsed() > initialMemory );
+
+    Map<Object, Integer> groups = getGroups( aggregator );
+    assertEquals( 2L, aggregator.getAggregateResult( groups.get( "key1234" ) )[4] );
+  }
+
+  private Map<Object, Integer> getGroups( ColumnarAggregator aggregator ) {
+    Map<Object, Integer> groups = new HashMap<Object, Integer>();
+    for ( int group = 0; group < aggregator.size(); group++ ) {
+      groups.put( aggregator.getGroupData( group )[0], group );
+    }
+    return groups;
+  }
+}
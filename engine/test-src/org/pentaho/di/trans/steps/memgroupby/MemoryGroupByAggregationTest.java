@@ -23,10 +23,13 @@
 package org.pentaho.di.trans.steps.memgroupby;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -38,6 +41,7 @@ import static org.mockito.Mockito.when;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -69,6 +73,7 @@ import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Range;
 import com.google.common.collect.TreeBasedTable;
@@ -101,6 +106,11 @@ public class MemoryGroupByAggregationTest {
   private RowMeta rowMeta;
   private TreeBasedTable<Integer, Integer, Optional<Object>> data;
 
+  private List<String> groupFields;
+  private boolean columnar;
+  private long memoryBudget;
+  private MemoryGroupByData stepData;
+
   @BeforeClass
   public static void setUpBeforeClass() throws KettleException {
     KettleClientEnvironment.init();
@@ -112,6 +122,9 @@ public class MemoryGroupByAggregationTest {
     data = TreeBasedTable.create();
     variables = new Variables();
     aggregates = Maps.newHashMap( default_aggregates );
+    groupFields = ImmutableList.of();
+    columnar = false;
+    memoryBudget = 0L;
   }
 
   @Test
@@ -322,25 +335,122 @@ public class MemoryGroupByAggregationTest {
     assertThat( output.getInteger( "value_count_distinct" ), is( 3L ) );
   }
 
+  @Test
+  public void testDefaultColumnar() throws Exception {
+    columnar = true;
+    testDefault();
+    assertThat( stepData.aggregator, notNullValue() );
+  }
+
+  @Test
+  public void testCompatibilityColumnar() throws Exception {
+    columnar = true;
+    testCompatibility();
+    assertThat( stepData.aggregator, notNullValue() );
+  }
+
+  @Test
+  public void testNullMinColumnar() throws Exception {
+    columnar = true;
+    testNullMin();
+    assertThat( stepData.aggregator, notNullValue() );
+  }
+
+  @Test
+  public void testNullsAreZeroDefaultColumnar() throws Exception {
+    columnar = true;
+    testNullsAreZeroDefault();
+    assertThat( stepData.aggregator, notNullValue() );
+  }
+
+  @Test
+  public void testSQLCompatibleColumnar() throws Exception {
+    columnar = true;
+    testSQLCompatible();
+    assertThat( stepData.aggregator, notNullValue() );
+  }
+
+  @Test
+  public void testColumnarSpill() throws Exception {
+    Random random = new Random( 42 );
+    int nrRows = 300;
+    Object[] keys = new Object[nrRows];
+    Object[] integers = new Object[nrRows];
+    Object[] numbers = new Object[nrRows];
+    Object[] dates = new Object[nrRows];
+    for ( int i = 0; i < nrRows; i++ ) {
+      keys[i] = random.nextInt( 10 ) == 0 ? null : "key" + random.nextInt( 20 );
+      integers[i] = random.nextInt( 5 ) == 0 ? null : Long.valueOf( random.nextInt( 20 ) - 10 );
+      numbers[i] = random.nextInt( 5 ) == 0 ? null : Double.valueOf( random.nextInt( 100 ) / 4.0 );
+      dates[i] = random.nextInt( 5 ) == 0 ? null : new Date( random.nextInt( 10 ) * 1000L );
+    }
+    addColumn( new ValueMetaString( "key" ), keys );
+    addColumn( new ValueMetaInteger( "intg" ), integers );
+    addColumn( new ValueMetaNumber( "num" ), numbers );
+    addColumn( new ValueMetaDate( "date" ), dates );
+    groupFields = ImmutableList.of( "key" );
+
+    Map<Object, Object[]> expected = runGroupedStep();
+
+    // Every pass only admits its first group, all other groups are spilled and partitioned again
+    //
+    columnar = true;
+    memoryBudget = 1L;
+    Map<Object, Object[]> actual = runGroupedStep();
+
+    assertThat( stepData.aggregator, notNullValue() );
+    assertThat( stepData.spill, nullValue() );
+    assertEquals( expected.keySet(), actual.keySet() );
+    for ( Object key : expected.keySet() ) {
+      assertArrayEquals( String.valueOf( key ), expected.get( key ), actual.get( key ) );
+    }
+  }
+
+  private Map<Object, Object[]> runGroupedStep() throws KettleException {
+    Map<Object, Object[]> groups = Maps.newHashMap();
+    for ( RowMetaAndData row : runStepForAllGroups() ) {
+      Object key = row.getData()[0];
+      assertThat( groups.containsKey( key ), is( false ) );
+      groups.put( key, row.getData() );
+    }
+    return groups;
+  }
+
   private RowMetaAndData runStep() throws KettleException {
+    List<RowMetaAndData> output = runStepForAllGroups();
+    assertThat( output.size(), is( 1 ) );
+    return output.get( 0 );
+  }
+
+  private List<RowMetaAndData> runStepForAllGroups() throws KettleException {
     // Allocate meta
     List<String> aggKeys = ImmutableList.copyOf( aggregates.keySet() );
     MemoryGroupByMeta meta = new MemoryGroupByMeta();
-    meta.allocate( 0, rowMeta.size() * aggKeys.size() );
+    meta.allocate( groupFields.size(), ( rowMeta.size() - groupFields.size() ) * aggKeys.size() );
+    for ( int i = 0; i < groupFields.size(); i++ ) {
+      meta.getGroupField()[i] = groupFields.get( i );
+    }
+    int index = 0;
     for ( int i = 0; i < rowMeta.size(); i++ ) {
       String name = rowMeta.getValueMeta( i ).getName();
+      if ( groupFields.contains( name ) ) {
+        continue;
+      }
       for ( int j = 0; j < aggKeys.size(); j++ ) {
         String aggKey = aggKeys.get( j );
-        int index = i * aggKeys.size() + j;
 
         meta.getAggregateField()[index] = name + "_" + aggKey;
         meta.getSubjectField()[index] = name;
         meta.getAggregateType()[index] = aggregates.get( aggKey );
+        index++;
       }
     }
+    meta.setColumnarAggregation( columnar );
 
     MemoryGroupByData data = new MemoryGroupByData();
     data.map = Maps.newHashMap();
+    data.memoryBudget = memoryBudget;
+    stepData = data;
 
     // Add to trans
     TransMeta transMeta = mock( TransMeta.class );
@@ -369,9 +479,13 @@ public class MemoryGroupByAggregationTest {
     // Collect output
     ArgumentCaptor<RowMetaInterface> rowMetaCaptor = ArgumentCaptor.forClass( RowMetaInterface.class );
     ArgumentCaptor<Object[]> rowCaptor = ArgumentCaptor.forClass( Object[].class );
-    verify( step ).putRow( rowMetaCaptor.capture(), rowCaptor.capture() );
+    verify( step, atLeastOnce() ).putRow( rowMetaCaptor.capture(), rowCaptor.capture() );
 
-    return new RowMetaAndData( rowMetaCaptor.getValue(), rowCaptor.getValue() );
+    List<RowMetaAndData> output = Lists.newArrayList();
+    for ( Object[] row : rowCaptor.getAllValues() ) {
+      output.add( new RowMetaAndData( rowMetaCaptor.getValue(), row ) );
+    }
+    return output;
   }
 
   private void addColumn( ValueMetaInterface meta, Object... values ) {
@@ -74,5 +74,23 @@ public class MemoryGroupByMetaInjectionTest extends BaseMetadataInjectionTest<Me
           return meta.isAlwaysGivingBackOneRow();
         }
       } );
+    check( "COLUMNAR_AGGREGATION", new BooleanGetter() {
+      @Override
+      public boolean get() {
+        return meta.isColumnarAggregation();
+      }
+    } );
+    check( "MEMORY_BUDGET", new StringGetter() {
+      @Override
+      public String get() {
+        return meta.getMemoryBudget();
+      }
+    } );
+    check( "SPILL_DIRECTORY", new StringGetter() {
+      @Override
+      public String get() {
+        return meta.getSpillDirectory();
+      }
+    } );
   }
 }
@@ -55,7 +55,8 @@ public class ScriptValuesMetaModTest implements InitializerInterface<StepMetaInt
     KettleEnvironment.init();
     PluginRegistry.init( true );
     List<String> attributes =
-        Arrays.asList( "fieldname", "rename", "type", "length", "precision", "replace", "jsScripts", "compatible", "optimizationLevel" );
+        Arrays.asList( "fieldname", "rename", "type", "length", "precision", "replace", "jsScripts", "compatible", "optimizationLevel",
+          "compiledMode" );
 
     Map<String, String> getterMap = new HashMap<String, String>() {
       {
@@ -67,6 +68,7 @@ public class ScriptValuesMetaModTest implements InitializerInterface<StepMetaInt
         put( "replace", "getReplace" );
         put( "compatible", "isCompatible" );
         put( "optimizationLevel", "getOptimizationLevel" );
+        put( "compiledMode", "isCompiledMode" );
         put( "jsScripts", "getJSScripts" );
       }
     };
@@ -80,6 +82,7 @@ public class ScriptValuesMetaModTest implements InitializerInterface<StepMetaInt
         put( "replace", "setReplace" );
         put( "compatible", "setCompatible" );
         put( "optimizationLevel", "setOptimizationLevel" );
+        put( "compiledMode", "setCompiledMode" );
         put( "jsScripts", "setJSScripts" );
       }
     };
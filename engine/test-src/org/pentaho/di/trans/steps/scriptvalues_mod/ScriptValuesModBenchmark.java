@@ -0,0 +1,177 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.scriptvalues_mod;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.util.JavaScriptUtils;
+
+/**
+ * Compares the ways the Modified Java Script Value step can run a typical field manipulation script for a block of
+ * rows, binding the fields and reading the results the same way the step does:
+ * <ul>
+ * <li>interpreted: optimization level -1, every value wrapped in a new JavaScript object</li>
+ * <li>optimized: optimization level 9, every value wrapped in a new JavaScript object (the default)</li>
+ * <li>compiled: compiled mode, the cached script at level 9 and the values bound as JavaScript primitives</li>
+ * </ul>
+ * Run it with the JMH jars on the test class path: java
+ * org.pentaho.di.trans.steps.scriptvalues_mod.ScriptValuesModBenchmark
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class ScriptValuesModBenchmark {
+
+  private static final int NR_ROWS = 1000;
+
+  private static final String[] SCRIPTS = {
+    // strings
+    "var full_name = trim(first_name) + ' ' + last_name.toUpperCase();\n"
+      + "var initials = first_name.substring(0, 1) + last_name.substring(0, 1);",
+    // numbers
+    "var total = quantity * price;\n" + "var discounted = quantity > 10 ? total * 0.9 : total;",
+    // mixed
+    "var label = last_name + '#' + quantity;\n" + "var total = quantity * price;\n"
+      + "var expensive = price > 50 && first_name != null;", };
+
+  private static final String[][] OUTPUT_FIELDS = {
+    { "full_name", "initials" }, { "total", "discounted" }, { "label", "total", "expensive" }, };
+
+  private static final int[][] OUTPUT_TYPES = {
+    { ValueMetaInterface.TYPE_STRING, ValueMetaInterface.TYPE_STRING },
+    { ValueMetaInterface.TYPE_NUMBER, ValueMetaInterface.TYPE_NUMBER },
+    { ValueMetaInterface.TYPE_STRING, ValueMetaInterface.TYPE_NUMBER, ValueMetaInterface.TYPE_BOOLEAN }, };
+
+  @Param( { "interpreted", "optimized", "compiled" } )
+  public String mode;
+
+  @Param( { "0", "1", "2" } )
+  public int scriptNr;
+
+  private boolean compiledMode;
+  private RowMetaInterface rowMeta;
+  private Object[][] rows;
+  private Context cx;
+  private Scriptable scope;
+  private Script script;
+
+  @Setup( Level.Trial )
+  public void setUp() throws Exception {
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "first_name" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "last_name" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "quantity" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "price" ) );
+
+    Random random = new Random( 42 );
+    rows = new Object[NR_ROWS][];
+    for ( int i = 0; i < NR_ROWS; i++ ) {
+      rows[i] = new Object[] {
+        " First" + random.nextInt( 100 ) + " ", "Last" + random.nextInt( 1000 ), Long.valueOf( random.nextInt( 20 ) ),
+        Double.valueOf( random.nextInt( 10000 ) / 100.0 ), };
+    }
+
+    compiledMode = "compiled".equals( mode );
+    cx = ContextFactory.getGlobal().enterContext();
+    cx.setOptimizationLevel( "interpreted".equals( mode ) ? -1 : 9 );
+    scope = cx.initStandardObjects( null, false );
+    ( (ScriptableObject) scope ).defineFunctionProperties(
+      ScriptValuesAddedFunctions.jsFunctionList, ScriptValuesAddedFunctions.class,
+      ScriptableObject.DONTENUM );
+    scope.put( "rowMeta", scope, Context.toObject( rowMeta, scope ) );
+
+    if ( compiledMode ) {
+      script = ScriptValuesModScriptCache.getScript( cx, SCRIPTS[scriptNr], "script" );
+    } else {
+      script = cx.compileString( SCRIPTS[scriptNr], "script", 1, null );
+    }
+  }
+
+  @TearDown( Level.Trial )
+  public void tearDown() {
+    Context.exit();
+  }
+
+  @Benchmark
+  public Object[] executeScript() throws KettleValueException {
+    String[] outputFields = OUTPUT_FIELDS[scriptNr];
+    int[] outputTypes = OUTPUT_TYPES[scriptNr];
+    Object[] result = new Object[outputFields.length];
+
+    for ( Object[] row : rows ) {
+      scope.put( "row", scope, Context.toObject( row, scope ) );
+      for ( int i = 0; i < row.length; i++ ) {
+        scope.put( rowMeta.getValueMeta( i ).getName(), scope, ScriptValuesMod.toJs( row[i], scope, compiledMode ) );
+      }
+      if ( !compiledMode ) {
+        scope.put( "rowMeta", scope, Context.toObject( rowMeta, scope ) );
+      }
+
+      script.exec( cx, scope );
+
+      for ( int i = 0; i < outputFields.length; i++ ) {
+        Object value = scope.get( outputFields[i], scope );
+        result[i] = value == null ? null : JavaScriptUtils.convertFromJs( value, outputTypes[i], outputFields[i] );
+      }
+    }
+    return result;
+  }
+
+  public static void main( String[] args ) throws RunnerException {
+    Options options = new OptionsBuilder().include( ScriptValuesModBenchmark.class.getSimpleName() ).build();
+    new Runner( options ).run();
+  }
+}
@@ -28,11 +28,16 @@ import org.pentaho.di.core.KettleEnvironment;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.trans.TransTestingUtil;
 import org.pentaho.di.trans.steps.StepMockUtil;
 
 import java.math.BigDecimal;
+import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
 
@@ -77,4 +82,54 @@ public class ScriptValuesModTest {
     Object[] row = TransTestingUtil.execute( step, meta, data, 1, false ).get( 0 );
     TransTestingUtil.assertResult( expectedRow, row );
   }
+
+  @Test
+  public void compiledModeGivesTheSameResults() throws Exception {
+    ScriptValuesModScriptCache.clear();
+
+    List<Object[]> interpreted = executeFieldScript( false );
+    List<Object[]> compiled = executeFieldScript( true );
+    TransTestingUtil.assertResult( interpreted, compiled );
+    TransTestingUtil.assertResult( new Object[] { "abc", 5L, 12.5, null, "ABC-5", 30.0, true }, compiled.get( 0 ) );
+
+    // A second copy uses the script compiled by the first one
+    //
+    executeFieldScript( true );
+    assertEquals( 1, ScriptValuesModScriptCache.size() );
+  }
+
+  private List<Object[]> executeFieldScript( boolean compiledMode ) throws Exception {
+    ScriptValuesMod step = StepMockUtil.getStep( ScriptValuesMod.class, ScriptValuesMetaMod.class, "test" );
+
+    RowMeta input = new RowMeta();
+    input.addValueMeta( new ValueMetaString( "name" ) );
+    input.addValueMeta( new ValueMetaInteger( "id" ) );
+    input.addValueMeta( new ValueMetaNumber( "amount" ) );
+    input.addValueMeta( new ValueMetaString( "comment" ) );
+    step.setInputRowMeta( input );
+
+    step = spy( step );
+    doReturn( new Object[] { "abc", 5L, 12.5, null } ).when( step ).getRow();
+
+    ScriptValuesMetaMod meta = new ScriptValuesMetaMod();
+    meta.setCompatible( false );
+    meta.setCompiledMode( compiledMode );
+    meta.allocate( 3 );
+    meta.setFieldname( new String[] { "upper", "total", "big" } );
+    meta.setRename( new String[] { "upper", "total", "big" } );
+    meta.setType( new int[] {
+      ValueMetaInterface.TYPE_STRING, ValueMetaInterface.TYPE_NUMBER, ValueMetaInterface.TYPE_BOOLEAN } );
+    meta.setReplace( new boolean[] { false, false, false } );
+
+    meta.setJSScripts( new ScriptValuesScript[] {
+      new ScriptValuesScript( ScriptValuesScript.TRANSFORM_SCRIPT, "script",
+        "var upper = name.toUpperCase() + '-' + id;\n"
+          + "var total = amount * 2 + id;\n"
+          + "var big = amount > 10 && comment == null;" )
+    } );
+
+    ScriptValuesModData data = new ScriptValuesModData();
+    step.init( meta, data );
+    return TransTestingUtil.execute( step, meta, data, 2, false );
+  }
 }
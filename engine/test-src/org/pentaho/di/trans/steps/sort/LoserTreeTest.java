@@ -0,0 +1,119 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.sort;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LoserTreeTest {
+
+  private static final Comparator<Object[]> COMPARATOR = new Comparator<Object[]>() {
+    @Override
+    public int compare( Object[] o1, Object[] o2 ) {
+      return ( (Long) o1[0] ).compareTo( (Long) o2[0] );
+    }
+  };
+
+  @Test
+  public void testEmpty() {
+    LoserTree tree = new LoserTree( COMPARATOR, new Object[0][] );
+    assertEquals( -1, tree.getWinner() );
+    assertNull( tree.getWinnerRow() );
+  }
+
+  @Test
+  public void testAllRunsEmpty() {
+    LoserTree tree = new LoserTree( COMPARATOR, new Object[3][] );
+    assertEquals( -1, tree.getWinner() );
+  }
+
+  @Test
+  public void testMergeRandomRuns() {
+    Random random = new Random( 42 );
+    for ( int nrRuns = 1; nrRuns <= 17; nrRuns++ ) {
+      List<List<Long>> runs = new ArrayList<List<Long>>();
+      List<Long> expected = new ArrayList<Long>();
+      for ( int r = 0; r < nrRuns; r++ ) {
+        List<Long> run = new ArrayList<Long>();
+        int size = random.nextInt( 50 );
+        for ( int i = 0; i < size; i++ ) {
+          run.add( (long) random.nextInt( 100 ) );
+        }
+        Collections.sort( run );
+        runs.add( run );
+        expected.addAll( run );
+      }
+      Collections.sort( expected );
+
+      assertEquals( expected, merge( runs ) );
+    }
+  }
+
+  @Test
+  public void testTiesAreWonByLowestRun() {
+    Object[][] firstRows = new Object[][] { { 1L, "a" }, { 1L, "b" }, { 0L, "c" } };
+    LoserTree tree = new LoserTree( COMPARATOR, firstRows );
+
+    assertEquals( 2, tree.getWinner() );
+    tree.replaceWinner( null );
+    assertEquals( 0, tree.getWinner() );
+    tree.replaceWinner( new Object[] { 1L, "d" } );
+    assertEquals( 0, tree.getWinner() );
+    assertEquals( "d", tree.getWinnerRow()[1] );
+    tree.replaceWinner( null );
+    assertEquals( 1, tree.getWinner() );
+    tree.replaceWinner( null );
+    assertEquals( -1, tree.getWinner() );
+  }
+
+  private List<Long> merge( List<List<Long>> runs ) {
+    int[] positions = new int[runs.size()];
+    Object[][] firstRows = new Object[runs.size()][];
+    for ( int r = 0; r < runs.size(); r++ ) {
+      firstRows[r] = next( runs.get( r ), positions, r );
+    }
+
+    List<Long> result = new ArrayList<Long>();
+    LoserTree tree = new LoserTree( COMPARATOR, firstRows );
+    for ( int run = tree.getWinner(); run >= 0; run = tree.getWinner() ) {
+      result.add( (Long) tree.getWinnerRow()[0] );
+      tree.replaceWinner( next( runs.get( run ), positions, run ) );
+    }
+    return result;
+  }
+
+  private Object[] next( List<Long> run, int[] positions, int r ) {
+    if ( positions[r] >= run.size() ) {
+      return null;
+    }
+    return new Object[] { run.get( positions[r]++ ) };
+  }
+}
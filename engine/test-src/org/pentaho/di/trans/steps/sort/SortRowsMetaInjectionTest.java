@@ -58,12 +58,30 @@ public class SortRowsMetaInjectionTest extends BaseMetadataInjectionTest<SortRow
         return meta.getFreeMemoryLimit();
       }
     } );
+    check( "MERGE_FAN_IN", new StringGetter() {
+      @Override
+      public String get() {
+        return meta.getMergeFanIn();
+      }
+    } );
     check( "ONLY_PASS_UNIQUE_ROWS", new BooleanGetter() {
       @Override
       public boolean get() {
         return meta.isOnlyPassingUniqueRows();
       }
     } );
+    check( "PARALLEL_SORT", new BooleanGetter() {
+      @Override
+      public boolean get() {
+        return meta.isParallelSort();
+      }
+    } );
+    check( "BINARY_SORT_KEYS", new BooleanGetter() {
+      @Override
+      public boolean get() {
+        return meta.isBinarySortKeys();
+      }
+    } );
     check( "COMPRESS_TEMP_FILES", new BooleanGetter() {
       @Override
       public boolean get() {
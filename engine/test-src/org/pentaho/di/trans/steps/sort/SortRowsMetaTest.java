@@ -46,9 +46,9 @@ public class SortRowsMetaTest {
    */
   @Test
   public void testRoundTrips() throws KettleException {
-    List<String> attributes = Arrays.asList( "Directory", "Prefix", "SortSize", "FreeMemoryLimit", "CompressFiles",
-      "CompressFilesVariable", "OnlyPassingUniqueRows", "FieldName", "Ascending", "CaseSensitive", "CollatorEnabled",
-      "CollatorStrength", "PreSortedField" );
+    List<String> attributes = Arrays.asList( "Directory", "Prefix", "SortSize", "FreeMemoryLimit", "MergeFanIn",
+      "CompressFiles", "CompressFilesVariable", "OnlyPassingUniqueRows", "ParallelSort", "BinarySortKeys", "FieldName",
+      "Ascending", "CaseSensitive", "CollatorEnabled", "CollatorStrength", "PreSortedField" );
 
     Map<String, String> getterMap = new HashMap<String, String>();
     Map<String, String> setterMap = new HashMap<String, String>();
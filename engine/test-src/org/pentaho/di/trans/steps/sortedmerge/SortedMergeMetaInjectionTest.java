@@ -44,5 +44,10 @@ public class SortedMergeMetaInjectionTest extends BaseMetadataInjectionTest<Sort
         return meta.getAscending()[0];
       }
     } );
+    check( "BINARY_SORT_KEYS", new BooleanGetter() {
+      public boolean get() {
+        return meta.isBinarySortKeys();
+      }
+    } );
   }
 }
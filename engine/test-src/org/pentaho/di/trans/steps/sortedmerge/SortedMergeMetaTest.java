@@ -40,15 +40,17 @@ public class SortedMergeMetaTest {
 
   @Test
   public void testRoundTrips() throws KettleException {
-    List<String> attributes = Arrays.asList( "name", "ascending" );
+    List<String> attributes = Arrays.asList( "name", "ascending", "binarySortKeys" );
 
     Map<String, String> getterMap = new HashMap<String, String>();
     getterMap.put( "name", "getFieldName" );
     getterMap.put( "ascending", "getAscending" );
+    getterMap.put( "binarySortKeys", "isBinarySortKeys" );
 
     Map<String, String> setterMap = new HashMap<String, String>();
     setterMap.put( "name", "setFieldName" );
     setterMap.put( "ascending", "setAscending" );
+    setterMap.put( "binarySortKeys", "setBinarySortKeys" );
 
     Map<String, FieldLoadSaveValidator<?>> fieldLoadSaveValidatorAttributeMap =
       new HashMap<String, FieldLoadSaveValidator<?>>();
@@ -0,0 +1,205 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.streamlookup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class CompactLookupTableTest {
+
+  private static final int NR_KEYS = 10000;
+
+  @Test
+  public void testLongKeys() throws Exception {
+    RowMetaInterface keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    LongKeyLookupTable table = new LongKeyLookupTable( keyMeta );
+
+    for ( long i = 0; i < NR_KEYS; i++ ) {
+      table.put( new Object[] { i * 7919 }, new Object[] { "value" + i } );
+    }
+    table.put( new Object[] { 0L }, new Object[] { "replaced" } );
+    table.put( new Object[] { null }, new Object[] { "null key" } );
+
+    assertEquals( NR_KEYS + 1, table.size() );
+    assertEquals( "replaced", table.get( new Object[] { 0L } )[0] );
+    assertEquals( "value42", table.get( new Object[] { 42L * 7919 } )[0] );
+    assertEquals( "null key", table.get( new Object[] { null } )[0] );
+    assertNull( table.get( new Object[] { 1L } ) );
+    assertStatistics( table );
+  }
+
+  @Test
+  public void testCompositeKeys() throws Exception {
+    BinaryKeyLookupTable table = new BinaryKeyLookupTable( createCompositeKeyMeta() );
+
+    for ( long i = 0; i < NR_KEYS; i++ ) {
+      table.put( new Object[] { "Key" + ( i % 100 ), i / 100 }, new Object[] { i } );
+    }
+    table.put( new Object[] { "key5", 0L }, new Object[] { -1L } );
+    table.put( new Object[] { null, 0L }, new Object[] { -2L } );
+
+    assertEquals( NR_KEYS + 1, table.size() );
+    assertEquals( 1234L, table.get( new Object[] { "Key34", 12L } )[0] );
+    assertEquals( -1L, table.get( new Object[] { "key5", 0L } )[0] );
+    assertEquals( 500L, table.get( new Object[] { "Key0", 5L } )[0] );
+    assertNull( table.get( new Object[] { "KEY5", 0L } ) );
+    assertEquals( -2L, table.get( new Object[] { null, 0L } )[0] );
+    assertNull( table.get( new Object[] { "Key34", 100L } ) );
+    assertNull( table.get( new Object[] { "Key", 0L } ) );
+    assertStatistics( table );
+  }
+
+  @Test
+  public void testSupportedKeys() {
+    assertTrue( BinaryKeyLookupTable.isSupported( createCompositeKeyMeta() ) );
+
+    RowMetaInterface keyMeta = createCompositeKeyMeta();
+    keyMeta.addValueMeta( new ValueMetaBigNumber( "amount" ) );
+    assertFalse( BinaryKeyLookupTable.isSupported( keyMeta ) );
+  }
+
+  @Test
+  public void testSpillAndReload() throws Exception {
+    RowMetaInterface valueMeta = new RowMeta();
+    valueMeta.addValueMeta( new ValueMetaInteger( "value" ) );
+    int nrPartitions = 4;
+
+    CompactLookupTable[] tables = new CompactLookupTable[] {
+      new LongKeyLookupTable( createLongKeyMeta() ), new BinaryKeyLookupTable( createCompositeKeyMeta() ) };
+    for ( CompactLookupTable table : tables ) {
+      ByteArrayOutputStream[] bytes = new ByteArrayOutputStream[nrPartitions];
+      DataOutputStream[] partitions = new DataOutputStream[nrPartitions];
+      for ( int p = 0; p < nrPartitions; p++ ) {
+        bytes[p] = new ByteArrayOutputStream();
+        partitions[p] = new DataOutputStream( bytes[p] );
+      }
+
+      // Half of the rows go through the table, the other half are written straight to the partitions
+      //
+      for ( long i = 0; i < NR_KEYS / 2; i++ ) {
+        table.put( createKey( table, i ), new Object[] { i } );
+      }
+      table.spill( partitions, valueMeta );
+      assertEquals( 0, table.size() );
+      for ( long i = NR_KEYS / 2; i < NR_KEYS; i++ ) {
+        table.writeEntry( partitions, createKey( table, i ), new Object[] { i }, valueMeta );
+      }
+      for ( DataOutputStream partition : partitions ) {
+        partition.writeBoolean( false );
+        partition.close();
+      }
+
+      int total = 0;
+      for ( int p = 0; p < nrPartitions; p++ ) {
+        table.clear();
+        DataInputStream inputStream = new DataInputStream( new ByteArrayInputStream( bytes[p].toByteArray() ) );
+        while ( table.readEntry( inputStream, valueMeta ) ) {
+          // load the partition
+        }
+        total += table.size();
+
+        for ( long i = 0; i < NR_KEYS; i++ ) {
+          Object[] key = createKey( table, i );
+          Object[] value = table.get( key );
+          if ( table.getPartition( key, nrPartitions ) == p ) {
+            assertEquals( i, value[0] );
+          } else {
+            assertNull( value );
+          }
+        }
+      }
+      assertEquals( NR_KEYS, total );
+    }
+  }
+
+  /**
+   * The keys of a partition that doesn't fit in memory are spread over all the partitions of the next level.
+   */
+  @Test
+  public void testSplitPartitionOnTheNextLevel() throws Exception {
+    int nrPartitions = 4;
+    assertEquals( 7, CompactLookupTable.getMaxPartitionLevel( 16 ) );
+    assertEquals( 15, CompactLookupTable.getMaxPartitionLevel( nrPartitions ) );
+
+    CompactLookupTable[] tables = new CompactLookupTable[] {
+      new LongKeyLookupTable( createLongKeyMeta() ), new BinaryKeyLookupTable( createCompositeKeyMeta() ) };
+    for ( CompactLookupTable table : tables ) {
+      int[] counts = new int[nrPartitions];
+      for ( long i = 0; i < NR_KEYS; i++ ) {
+        Object[] key = createKey( table, i );
+        table.setPartitionLevel( 0 );
+        if ( table.getPartition( key, nrPartitions ) == 1 ) {
+          table.setPartitionLevel( 1 );
+          counts[table.getPartition( key, nrPartitions )]++;
+        }
+      }
+      for ( int count : counts ) {
+        assertTrue( count > NR_KEYS / nrPartitions / nrPartitions / 2 );
+      }
+    }
+  }
+
+  private void assertStatistics( CompactLookupTable table ) {
+    assertTrue( table.getLoadFactor() > 0.3f && table.getLoadFactor() <= 0.7f );
+    assertTrue( table.getMemoryUsed() > 0 );
+    assertTrue( table.getAverageProbeLength() >= 1.0 );
+    assertTrue( table.getMaxProbeLength() >= 1 );
+  }
+
+  private Object[] createKey( CompactLookupTable table, long i ) {
+    if ( table instanceof LongKeyLookupTable ) {
+      return new Object[] { i };
+    }
+    return new Object[] { "Key" + ( i % 100 ), i / 100 };
+  }
+
+  private RowMetaInterface createLongKeyMeta() {
+    RowMetaInterface keyMeta = new RowMeta();
+    keyMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    return keyMeta;
+  }
+
+  private RowMetaInterface createCompositeKeyMeta() {
+    RowMetaInterface keyMeta = new RowMeta();
+    ValueMetaString code = new ValueMetaString( "code" );
+    code.setCaseInsensitive( true );
+    keyMeta.addValueMeta( code );
+    keyMeta.addValueMeta( new ValueMetaInteger( "version" ) );
+    return keyMeta;
+  }
+}
@@ -0,0 +1,224 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.pentaho.di.trans.steps.tableoutput;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+public class PipelinedTableWriterTest {
+
+  @Test
+  public void completedBatchesKeepTheOrderOfTheRows() throws Exception {
+    PreparedStatement ps1 = mock( PreparedStatement.class );
+    PreparedStatement ps2 = mock( PreparedStatement.class );
+    Database db1 = mockDatabase( ps1 );
+    Database db2 = mockDatabase( ps2 );
+
+    PipelinedTableWriter writer = new PipelinedTableWriter( createRowMeta(), null, 2, 1, false, false, "test" );
+    writer.start( Arrays.asList( db1, db2 ) );
+
+    List<PipelinedTableWriter.Batch> batches = new ArrayList<PipelinedTableWriter.Batch>();
+    for ( long i = 0; i < 5; i++ ) {
+      writer.addRow( "table", new Object[] { i }, new Object[] { i } );
+      batches.addAll( writer.getCompletedBatches() );
+    }
+    batches.addAll( writer.flush() );
+    writer.close( true );
+
+    assertEquals( 3, batches.size() );
+    assertEquals( 3, writer.getNrBatches() );
+    long expected = 0;
+    for ( PipelinedTableWriter.Batch batch : batches ) {
+      assertNull( batch.getFailure() );
+      for ( int i = 0; i < batch.size(); i++ ) {
+        assertNull( batch.getError( i ) );
+        assertEquals( expected++, batch.getOutputRow( i )[0] );
+      }
+    }
+    assertEquals( 5, expected );
+
+    // The batches are handed over round robin, each writer commits its own batches
+    //
+    verify( ps1, times( 2 ) ).executeBatch();
+    verify( ps2, times( 1 ) ).executeBatch();
+    verify( db1, times( 2 ) ).commit();
+    verify( db2, times( 1 ) ).commit();
+    verify( db1 ).disconnect();
+    verify( db2 ).disconnect();
+  }
+
+  @Test
+  public void failedRowsAreReportedWithErrorHandling() throws Exception {
+    PreparedStatement ps = mock( PreparedStatement.class );
+    when( ps.executeBatch() ).thenThrow(
+      new BatchUpdateException( "duplicate key", new int[] { 1, Statement.EXECUTE_FAILED } ) );
+    Database db = mockDatabase( ps );
+
+    PipelinedTableWriter writer = new PipelinedTableWriter( createRowMeta(), null, 2, 2, true, false, "test" );
+    writer.start( Arrays.asList( db ) );
+    writer.addRow( "table", new Object[] { 1L }, new Object[] { 1L } );
+    writer.addRow( "table", new Object[] { 2L }, new Object[] { 2L } );
+    List<PipelinedTableWriter.Batch> batches = writer.flush();
+    writer.close( true );
+
+    assertEquals( 1, batches.size() );
+    PipelinedTableWriter.Batch batch = batches.get( 0 );
+    assertNull( batch.getFailure() );
+    assertNull( batch.getError( 0 ) );
+    assertNotNull( batch.getError( 1 ) );
+    assertEquals( "TOP0002", batch.getErrorCode( 1 ) );
+    verify( db ).commit( true );
+  }
+
+  @Test
+  public void failedBatchIsRolledBackWithoutErrorHandling() throws Exception {
+    PreparedStatement ps = mock( PreparedStatement.class );
+    when( ps.executeBatch() ).thenThrow(
+      new BatchUpdateException( "duplicate key", new int[] { 1, Statement.EXECUTE_FAILED } ) );
+    Database db = mockDatabase( ps );
+
+    PipelinedTableWriter writer = new PipelinedTableWriter( createRowMeta(), null, 2, 2, false, false, "test" );
+    writer.start( Arrays.asList( db ) );
+    writer.addRow( "table", new Object[] { 1L }, new Object[] { 1L } );
+    writer.addRow( "table", new Object[] { 2L }, new Object[] { 2L } );
+    List<PipelinedTableWriter.Batch> batches = writer.flush();
+    writer.close( false );
+
+    assertEquals( 1, batches.size() );
+    assertNotNull( batches.get( 0 ).getFailure() );
+    verify( db, times( 2 ) ).rollback();
+  }
+
+  @Test
+  public void failedWriterDoesNotCommitLaterBatches() throws Exception {
+    PreparedStatement ps = mock( PreparedStatement.class );
+    when( ps.executeBatch() )
+      .thenThrow( new BatchUpdateException( "duplicate key", new int[] { Statement.EXECUTE_FAILED } ) )
+      .thenReturn( new int[] { 1 } );
+    Database db = mockDatabase( ps );
+
+    PipelinedTableWriter writer = new PipelinedTableWriter( createRowMeta(), null, 1, 3, false, false, "test" );
+    writer.start( Arrays.asList( db ) );
+    writer.addRow( "table", new Object[] { 1L }, new Object[] { 1L } );
+    writer.addRow( "table", new Object[] { 2L }, new Object[] { 2L } );
+    writer.addRow( "table", new Object[] { 3L }, new Object[] { 3L } );
+    List<PipelinedTableWriter.Batch> batches = writer.flush();
+    writer.close( false );
+
+    assertEquals( 3, batches.size() );
+    for ( PipelinedTableWriter.Batch batch : batches ) {
+      assertNotNull( batch.getFailure() );
+    }
+    verify( ps, times( 1 ) ).executeBatch();
+    verify( db, never() ).commit();
+  }
+
+  @Test
+  public void closeWithoutCommitSkipsQueuedBatches() throws Exception {
+    final CountDownLatch started = new CountDownLatch( 1 );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    PreparedStatement ps = mock( PreparedStatement.class );
+    when( ps.executeBatch() ).thenAnswer( new Answer<int[]>() {
+      @Override
+      public int[] answer( InvocationOnMock invocation ) throws Throwable {
+        started.countDown();
+        release.await();
+        return new int[] { 1 };
+      }
+    } );
+    Database db = mockDatabase( ps );
+
+    final PipelinedTableWriter writer = new PipelinedTableWriter( createRowMeta(), null, 1, 3, false, false, "test" );
+    writer.start( Arrays.asList( db ) );
+    writer.addRow( "table", new Object[] { 1L }, new Object[] { 1L } );
+    writer.addRow( "table", new Object[] { 2L }, new Object[] { 2L } );
+    writer.addRow( "table", new Object[] { 3L }, new Object[] { 3L } );
+    assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+
+    // Close while the first batch is being written, the other two are still queued
+    //
+    Thread closer = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        try {
+          writer.close( false );
+        } catch ( KettleException e ) {
+          throw new RuntimeException( e );
+        }
+      }
+    } );
+    closer.start();
+    while ( closer.getState() != Thread.State.TIMED_WAITING ) {
+      Thread.sleep( 10 );
+    }
+    release.countDown();
+    closer.join( 10000 );
+
+    assertFalse( closer.isAlive() );
+    verify( ps, times( 1 ) ).executeBatch();
+    verify( db ).rollback();
+    verify( db ).disconnect();
+  }
+
+  private RowMetaInterface createRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    return rowMeta;
+  }
+
+  private Database mockDatabase( PreparedStatement ps ) throws Exception {
+    Database db = mock( Database.class );
+    when( db.getInsertStatement( any( String.class ), anyString(), any( RowMetaInterface.class ) ) )
+      .thenReturn( "INSERT INTO table(id) VALUES (?)" );
+    when( db.prepareSQL( anyString() ) ).thenReturn( ps );
+    when( db.getUseBatchInsert( true ) ).thenReturn( true );
+    return db;
+  }
+}
@@ -49,6 +49,7 @@ public class TableOutputMetaLoadSaveTest implements InitializerInterface<StepMet
     PluginRegistry.init( true );
     List<String> attributes =
         Arrays.asList( "databaseMeta", "schemaName", "tableName", "commitSize", "truncateTable", "ignoreErrors", "useBatchUpdate",
+            "pipelinedWrite", "writerThreads", "maxInFlightBatches",
             "partitioningEnabled", "partitioningField", "partitioningDaily", "partitioningMonthly", "tableNameInField", "tableNameField",
             "tableNameInTable", "returningGeneratedKeys", "generatedKeyField", "specifyFields", "fieldStream", "fieldDatabase" );
 
@@ -157,6 +157,9 @@ public class TableOutputMetaTest {
       + "    <truncate>Y</truncate>\n"
       + "    <ignore_errors>N</ignore_errors>\n"
       + "    <use_batch>Y</use_batch>\n"
+      + "    <pipelined_write>N</pipelined_write>\n"
+      + "    <writer_threads>2</writer_threads>\n"
+      + "    <max_in_flight_batches>4</max_in_flight_batches>\n"
       + "    <specify_fields>Y</specify_fields>\n"
       + "    <partitioning_enabled>N</partitioning_enabled>\n"
       + "    <partitioning_field/>\n"
@@ -200,6 +203,9 @@ public class TableOutputMetaTest {
     verify( rep ).saveStepAttribute( id_transformation, id_step, "truncate", true );
     verify( rep ).saveStepAttribute( id_transformation, id_step, "ignore_errors", false );
     verify( rep ).saveStepAttribute( id_transformation, id_step, "use_batch", true );
+    verify( rep ).saveStepAttribute( id_transformation, id_step, "pipelined_write", false );
+    verify( rep ).saveStepAttribute( id_transformation, id_step, "writer_threads", "2" );
+    verify( rep ).saveStepAttribute( id_transformation, id_step, "max_in_flight_batches", "4" );
     verify( rep ).saveStepAttribute( id_transformation, id_step, "specify_fields", true );
 
     verify( rep ).saveStepAttribute( id_transformation, id_step, "partitioning_enabled", false );
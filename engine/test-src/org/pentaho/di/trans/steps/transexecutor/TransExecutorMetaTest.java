@@ -64,7 +64,7 @@ public class TransExecutorMetaTest {
 
     List<String> attributes =
       Arrays.asList( "fileName", "transName", "directoryPath", "groupSize", "groupField", "groupTime",
-        "executionTimeField", "executionFilesRetrievedField", "executionLogTextField",
+        "reusingTransformation", "executionTimeField", "executionFilesRetrievedField", "executionLogTextField",
         "executionLogChannelIdField", "executionResultField", "executionNrErrorsField", "executionLinesReadField",
         "executionLinesWrittenField", "executionLinesInputField", "executionLinesOutputField",
         "executionLinesRejectedField", "executionLinesUpdatedField", "executionLinesDeletedField",
@@ -0,0 +1,274 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.ui.trans.dialog;
+
+import java.util.Arrays;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.events.ShellAdapter;
+import org.eclipse.swt.events.ShellEvent;
+import org.eclipse.swt.layout.FormAttachment;
+import org.eclipse.swt.layout.FormData;
+import org.eclipse.swt.layout.FormLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Text;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.plugins.PartitionerPluginType;
+import org.pentaho.di.core.plugins.PluginInterface;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.ConsistentHashPartitioner;
+import org.pentaho.di.trans.HashPartitioner;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.BaseStepMeta;
+import org.pentaho.di.trans.step.StepDialogInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepPartitioningMeta;
+import org.pentaho.di.ui.core.dialog.ErrorDialog;
+import org.pentaho.di.ui.core.gui.GUIResource;
+import org.pentaho.di.ui.core.widget.ColumnInfo;
+import org.pentaho.di.ui.core.widget.TableView;
+import org.pentaho.di.ui.trans.step.BaseStepDialog;
+
+/**
+ * Edits the key fields of the hash and consistent hash partitioners, and the number of virtual nodes per partition
+ * of the latter.
+ */
+public class HashPartitionerDialog extends BaseStepDialog implements StepDialogInterface {
+  private static Class<?> PKG = TransDialog.class; // for i18n purposes, needed by Translator2!!
+
+  private StepPartitioningMeta partitioningMeta;
+  private HashPartitioner partitioner;
+
+  private Label wlFields;
+  private TableView wFields;
+  private FormData fdlFields, fdFields;
+
+  private Label wlVirtualNodes;
+  private Text wVirtualNodes;
+  private FormData fdlVirtualNodes, fdVirtualNodes;
+
+  public HashPartitionerDialog( Shell parent, StepMeta stepMeta, StepPartitioningMeta partitioningMeta,
+                                TransMeta transMeta ) {
+    super( parent, (BaseStepMeta) stepMeta.getStepMetaInterface(), transMeta, partitioningMeta
+      .getPartitioner().getDescription() );
+    this.stepMeta = stepMeta;
+    this.partitioningMeta = partitioningMeta;
+    partitioner = (HashPartitioner) partitioningMeta.getPartitioner();
+  }
+
+  public String open() {
+    Shell parent = getParent();
+    Display display = parent.getDisplay();
+
+    shell = new Shell( parent, SWT.DIALOG_TRIM | SWT.RESIZE | SWT.MIN | SWT.MAX );
+    props.setLook( shell );
+    setShellImage( shell );
+
+    ModifyListener lsMod = new ModifyListener() {
+      public void modifyText( ModifyEvent e ) {
+        partitioningMeta.hasChanged( true );
+      }
+    };
+    changed = partitioningMeta.hasChanged();
+
+    FormLayout formLayout = new FormLayout();
+    formLayout.marginWidth = Const.FORM_MARGIN;
+    formLayout.marginHeight = Const.FORM_MARGIN;
+
+    shell.setLayout( formLayout );
+    shell.setText( partitioner.getDescription() );
+
+    int margin = Const.MARGIN;
+
+    int middle = props.getMiddlePct();
+
+    Control lastControl = null;
+    if ( partitioner instanceof ConsistentHashPartitioner ) {
+      wlVirtualNodes = new Label( shell, SWT.RIGHT );
+      wlVirtualNodes.setText( BaseMessages.getString( PKG, "HashPartitionerDialog.VirtualNodes.Label" ) );
+      wlVirtualNodes.setToolTipText( BaseMessages.getString( PKG, "HashPartitionerDialog.VirtualNodes.Tooltip" ) );
+      props.setLook( wlVirtualNodes );
+      fdlVirtualNodes = new FormData();
+      fdlVirtualNodes.left = new FormAttachment( 0, 0 );
+      fdlVirtualNodes.right = new FormAttachment( middle, -margin );
+      fdlVirtualNodes.top = new FormAttachment( 0, margin );
+      wlVirtualNodes.setLayoutData( fdlVirtualNodes );
+      wVirtualNodes = new Text( shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+      props.setLook( wVirtualNodes );
+      wVirtualNodes.addModifyListener( lsMod );
+      fdVirtualNodes = new FormData();
+      fdVirtualNodes.left = new FormAttachment( middle, 0 );
+      fdVirtualNodes.top = new FormAttachment( 0, margin );
+      fdVirtualNodes.right = new FormAttachment( 100, 0 );
+      wVirtualNodes.setLayoutData( fdVirtualNodes );
+      lastControl = wVirtualNodes;
+    }
+
+    // Some buttons
+    wOK = new Button( shell, SWT.PUSH );
+    wOK.setText( BaseMessages.getString( PKG, "System.Button.OK" ) );
+    wCancel = new Button( shell, SWT.PUSH );
+    wCancel.setText( BaseMessages.getString( PKG, "System.Button.Cancel" ) );
+    fdOK = new FormData();
+
+    setButtonPositions( new Button[] { wOK, wCancel }, margin, null );
+
+    wlFields = new Label( shell, SWT.NONE );
+    wlFields.setText( BaseMessages.getString( PKG, "HashPartitionerDialog.Fields.Label" ) );
+    props.setLook( wlFields );
+    fdlFields = new FormData();
+    fdlFields.left = new FormAttachment( 0, 0 );
+    fdlFields.top = lastControl == null ? new FormAttachment( 0, margin ) : new FormAttachment( lastControl, margin );
+    wlFields.setLayoutData( fdlFields );
+
+    ColumnInfo[] colinf =
+      new ColumnInfo[] { new ColumnInfo(
+        BaseMessages.getString( PKG, "HashPartitionerDialog.Fieldname.Column" ), ColumnInfo.COLUMN_TYPE_CCOMBO,
+        new String[] { "" }, false ) };
+    wFields =
+      new TableView( transMeta, shell, SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI, colinf, partitioner
+        .getFieldNames().length, lsMod, props );
+    fdFields = new FormData();
+    fdFields.left = new FormAttachment( 0, 0 );
+    fdFields.top = new FormAttachment( wlFields, margin );
+    fdFields.right = new FormAttachment( 100, 0 );
+    fdFields.bottom = new FormAttachment( wOK, -2 * margin );
+    wFields.setLayoutData( fdFields );
+
+    try {
+      RowMetaInterface inputFields = transMeta.getPrevStepFields( stepMeta );
+      if ( inputFields != null ) {
+        String[] fieldNames = inputFields.getFieldNames();
+        Arrays.sort( fieldNames );
+        colinf[0].setComboValues( fieldNames );
+      }
+    } catch ( Exception e ) {
+      new ErrorDialog( shell, "Error", "Error obtaining list of input fields:", e );
+    }
+
+    // Add listeners
+    lsCancel = new Listener() {
+      public void handleEvent( Event e ) {
+        cancel();
+      }
+    };
+    lsOK = new Listener() {
+      public void handleEvent( Event e ) {
+        ok();
+      }
+    };
+
+    wCancel.addListener( SWT.Selection, lsCancel );
+    wOK.addListener( SWT.Selection, lsOK );
+
+    lsDef = new SelectionAdapter() {
+      public void widgetDefaultSelected( SelectionEvent e ) {
+        ok();
+      }
+    };
+    if ( wVirtualNodes != null ) {
+      wVirtualNodes.addSelectionListener( lsDef );
+    }
+
+    // Detect X or ALT-F4 or something that kills this window...
+    shell.addShellListener( new ShellAdapter() {
+      public void shellClosed( ShellEvent e ) {
+        cancel();
+      }
+    } );
+
+    // Set the shell size, based upon previous time...
+    setSize();
+    getData();
+    partitioningMeta.hasChanged( changed );
+
+    shell.open();
+    while ( !shell.isDisposed() ) {
+      if ( !display.readAndDispatch() ) {
+        display.sleep();
+      }
+    }
+    return stepname;
+  }
+
+  /**
+   * Copy information from the meta-data input to the dialog fields.
+   */
+  public void getData() {
+    String[] fieldNames = partitioner.getFieldNames();
+    for ( int i = 0; i < fieldNames.length; i++ ) {
+      TableItem item = wFields.table.getItem( i );
+      item.setText( 1, Const.NVL( fieldNames[i], "" ) );
+    }
+    wFields.setRowNums();
+    wFields.optWidth( true );
+
+    if ( wVirtualNodes != null ) {
+      wVirtualNodes.setText( Integer.toString( ( (ConsistentHashPartitioner) partitioner ).getVirtualNodes() ) );
+    }
+  }
+
+  private void cancel() {
+    stepname = null;
+    partitioningMeta.hasChanged( changed );
+    dispose();
+  }
+
+  private void ok() {
+    int nrFields = wFields.nrNonEmpty();
+    String[] fieldNames = new String[nrFields];
+    for ( int i = 0; i < nrFields; i++ ) {
+      fieldNames[i] = wFields.getNonEmpty( i ).getText( 1 );
+    }
+    partitioner.setFieldNames( fieldNames );
+
+    if ( wVirtualNodes != null ) {
+      ( (ConsistentHashPartitioner) partitioner ).setVirtualNodes( Const.toInt(
+        wVirtualNodes.getText(), ConsistentHashPartitioner.DEFAULT_VIRTUAL_NODES ) );
+    }
+    dispose();
+  }
+
+  private void setShellImage( Shell shell ) {
+    PluginInterface plugin = PluginRegistry.getInstance().getPlugin( PartitionerPluginType.class, partitioner.getId() );
+    if ( !Utils.isEmpty( plugin.getDocumentationUrl() ) ) {
+      createHelpButton( shell, stepMeta, plugin );
+    }
+
+    shell.setImage( GUIResource.getInstance().getImageSpoon() );
+  }
+}
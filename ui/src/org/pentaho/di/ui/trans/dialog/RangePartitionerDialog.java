@@ -0,0 +1,380 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2016 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.ui.trans.dialog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.CCombo;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.events.ShellAdapter;
+import org.eclipse.swt.events.ShellEvent;
+import org.eclipse.swt.layout.FormAttachment;
+import org.eclipse.swt.layout.FormData;
+import org.eclipse.swt.layout.FormLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.MessageBox;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.TableItem;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.plugins.PartitionerPluginType;
+import org.pentaho.di.core.plugins.PluginInterface;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.util.StringUtil;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.RangePartitioner;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.BaseStepMeta;
+import org.pentaho.di.trans.step.StepDialogInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepPartitioningMeta;
+import org.pentaho.di.ui.core.dialog.EnterNumberDialog;
+import org.pentaho.di.ui.core.dialog.EnterTextDialog;
+import org.pentaho.di.ui.core.dialog.ErrorDialog;
+import org.pentaho.di.ui.core.gui.GUIResource;
+import org.pentaho.di.ui.core.widget.ColumnInfo;
+import org.pentaho.di.ui.core.widget.TableView;
+import org.pentaho.di.ui.trans.step.BaseStepDialog;
+
+/**
+ * Edits the partitioning field and the sorted boundaries of the range partitioner.
+ */
+public class RangePartitionerDialog extends BaseStepDialog implements StepDialogInterface {
+  private static Class<?> PKG = TransDialog.class; // for i18n purposes, needed by Translator2!!
+
+  private StepPartitioningMeta partitioningMeta;
+  private RangePartitioner partitioner;
+
+  private Label wlFieldname;
+  private CCombo wFieldname;
+  private FormData fdlFieldname, fdFieldname;
+
+  private Label wlBoundaries;
+  private TableView wBoundaries;
+  private FormData fdlBoundaries, fdBoundaries;
+
+  public RangePartitionerDialog( Shell parent, StepMeta stepMeta, StepPartitioningMeta partitioningMeta,
+                                 TransMeta transMeta ) {
+    super( parent, (BaseStepMeta) stepMeta.getStepMetaInterface(), transMeta, partitioningMeta
+      .getPartitioner().getDescription() );
+    this.stepMeta = stepMeta;
+    this.partitioningMeta = partitioningMeta;
+    partitioner = (RangePartitioner) partitioningMeta.getPartitioner();
+  }
+
+  public String open() {
+    Shell parent = getParent();
+    Display display = parent.getDisplay();
+
+    shell = new Shell( parent, SWT.DIALOG_TRIM | SWT.RESIZE | SWT.MIN | SWT.MAX );
+    props.setLook( shell );
+    setShellImage( shell );
+
+    ModifyListener lsMod = new ModifyListener() {
+      public void modifyText( ModifyEvent e ) {
+        partitioningMeta.hasChanged( true );
+      }
+    };
+    changed = partitioningMeta.hasChanged();
+
+    FormLayout formLayout = new FormLayout();
+    formLayout.marginWidth = Const.FORM_MARGIN;
+    formLayout.marginHeight = Const.FORM_MARGIN;
+
+    shell.setLayout( formLayout );
+    shell.setText( partitioner.getDescription() );
+
+    int margin = Const.MARGIN;
+
+    int middle = props.getMiddlePct();
+
+    wlFieldname = new Label( shell, SWT.RIGHT );
+    wlFieldname.setText( BaseMessages.getString( PKG, "RangePartitionerDialog.Fieldname.Label" ) );
+    props.setLook( wlFieldname );
+    fdlFieldname = new FormData();
+    fdlFieldname.left = new FormAttachment( 0, 0 );
+    fdlFieldname.right = new FormAttachment( middle, -margin );
+    fdlFieldname.top = new FormAttachment( 0, margin );
+    wlFieldname.setLayoutData( fdlFieldname );
+    wFieldname = new CCombo( shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wFieldname );
+    wFieldname.addModifyListener( lsMod );
+    fdFieldname = new FormData();
+    fdFieldname.left = new FormAttachment( middle, 0 );
+    fdFieldname.top = new FormAttachment( 0, margin );
+    fdFieldname.right = new FormAttachment( 100, 0 );
+    wFieldname.setLayoutData( fdFieldname );
+    try {
+      RowMetaInterface inputFields = transMeta.getPrevStepFields( stepMeta );
+      if ( inputFields != null ) {
+        String[] fieldNames = inputFields.getFieldNames();
+        Arrays.sort( fieldNames );
+        wFieldname.setItems( fieldNames );
+      }
+    } catch ( Exception e ) {
+      new ErrorDialog( shell, "Error", "Error obtaining list of input fields:", e );
+    }
+
+    // Some buttons
+    wOK = new Button( shell, SWT.PUSH );
+    wOK.setText( BaseMessages.getString( PKG, "System.Button.OK" ) );
+    wGet = new Button( shell, SWT.PUSH );
+    wGet.setText( BaseMessages.getString( PKG, "RangePartitionerDialog.SampleBoundaries.Button" ) );
+    wGet.setToolTipText( BaseMessages.getString( PKG, "RangePartitionerDialog.SampleBoundaries.Tooltip" ) );
+    wCancel = new Button( shell, SWT.PUSH );
+    wCancel.setText( BaseMessages.getString( PKG, "System.Button.Cancel" ) );
+    fdOK = new FormData();
+
+    setButtonPositions( new Button[] { wOK, wGet, wCancel }, margin, null );
+
+    wlBoundaries = new Label( shell, SWT.NONE );
+    wlBoundaries.setText( BaseMessages.getString( PKG, "RangePartitionerDialog.Boundaries.Label" ) );
+    wlBoundaries.setToolTipText( BaseMessages.getString( PKG, "RangePartitionerDialog.Boundaries.Tooltip" ) );
+    props.setLook( wlBoundaries );
+    fdlBoundaries = new FormData();
+    fdlBoundaries.left = new FormAttachment( 0, 0 );
+    fdlBoundaries.top = new FormAttachment( wFieldname, margin );
+    wlBoundaries.setLayoutData( fdlBoundaries );
+
+    ColumnInfo[] colinf =
+      new ColumnInfo[] { new ColumnInfo(
+        BaseMessages.getString( PKG, "RangePartitionerDialog.Boundary.Column" ), ColumnInfo.COLUMN_TYPE_TEXT,
+        false ) };
+    wBoundaries =
+      new TableView( transMeta, shell, SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI, colinf, partitioner
+        .getBoundaries().length, lsMod, props );
+    fdBoundaries = new FormData();
+    fdBoundaries.left = new FormAttachment( 0, 0 );
+    fdBoundaries.top = new FormAttachment( wlBoundaries, margin );
+    fdBoundaries.right = new FormAttachment( 100, 0 );
+    fdBoundaries.bottom = new FormAttachment( wOK, -2 * margin );
+    wBoundaries.setLayoutData( fdBoundaries );
+
+    // Add listeners
+    lsCancel = new Listener() {
+      public void handleEvent( Event e ) {
+        cancel();
+      }
+    };
+    lsOK = new Listener() {
+      public void handleEvent( Event e ) {
+        ok();
+      }
+    };
+    lsGet = new Listener() {
+      public void handleEvent( Event e ) {
+        sampleBoundaries();
+      }
+    };
+
+    wCancel.addListener( SWT.Selection, lsCancel );
+    wOK.addListener( SWT.Selection, lsOK );
+    wGet.addListener( SWT.Selection, lsGet );
+
+    lsDef = new SelectionAdapter() {
+      public void widgetDefaultSelected( SelectionEvent e ) {
+        ok();
+      }
+    };
+
+    // Detect X or ALT-F4 or something that kills this window...
+    shell.addShellListener( new ShellAdapter() {
+      public void shellClosed( ShellEvent e ) {
+        cancel();
+      }
+    } );
+
+    // Set the shell size, based upon previous time...
+    setSize();
+    getData();
+    partitioningMeta.hasChanged( changed );
+
+    wOK.setEnabled( !StringUtil.isEmpty( wFieldname.getText() ) );
+    wGet.setEnabled( !StringUtil.isEmpty( wFieldname.getText() ) );
+    ModifyListener modifyListener = new ModifyListener() {
+      @Override public void modifyText( ModifyEvent modifyEvent ) {
+        wOK.setEnabled( !StringUtil.isEmpty( wFieldname.getText() ) );
+        wGet.setEnabled( !StringUtil.isEmpty( wFieldname.getText() ) );
+      }
+    };
+    wFieldname.addModifyListener( modifyListener );
+
+    shell.open();
+    while ( !shell.isDisposed() ) {
+      if ( !display.readAndDispatch() ) {
+        display.sleep();
+      }
+    }
+    return stepname;
+  }
+
+  /**
+   * Copy information from the meta-data input to the dialog fields.
+   */
+  public void getData() {
+    wFieldname.setText( Const.NVL( partitioner.getFieldName(), "" ) );
+
+    String[] boundaries = partitioner.getBoundaries();
+    for ( int i = 0; i < boundaries.length; i++ ) {
+      TableItem item = wBoundaries.table.getItem( i );
+      item.setText( 1, Const.NVL( boundaries[i], "" ) );
+    }
+    wBoundaries.setRowNums();
+    wBoundaries.optWidth( true );
+  }
+
+  /**
+   * Preview the rows going into the step and replace the boundaries by the ones splitting the sampled values of the
+   * partitioning field in evenly populated ranges.
+   */
+  private void sampleBoundaries() {
+    int nrPartitions = 0;
+    if ( partitioningMeta.getPartitionSchema() != null
+      && partitioningMeta.getPartitionSchema().getPartitionIDs() != null ) {
+      nrPartitions = partitioningMeta.getPartitionSchema().getPartitionIDs().size();
+    }
+    if ( nrPartitions < 2 ) {
+      MessageBox mb = new MessageBox( shell, SWT.OK | SWT.ICON_ERROR );
+      mb.setMessage( BaseMessages.getString( PKG, "RangePartitionerDialog.SampleBoundaries.NoPartitions.Message" ) );
+      mb.setText( BaseMessages.getString( PKG, "RangePartitionerDialog.SampleBoundaries.DialogTitle" ) );
+      mb.open();
+      return;
+    }
+
+    EnterNumberDialog numberDialog =
+      new EnterNumberDialog( shell, props.getDefaultPreviewSize(), BaseMessages.getString(
+        PKG, "RangePartitionerDialog.SampleBoundaries.DialogTitle" ), BaseMessages.getString(
+        PKG, "RangePartitionerDialog.SampleBoundaries.DialogMessage" ) );
+    int sampleSize = numberDialog.open();
+    if ( sampleSize <= 0 ) {
+      return;
+    }
+
+    List<StepMeta> previousSteps = transMeta.findPreviousSteps( stepMeta, false );
+    String[] stepNames = new String[previousSteps.size()];
+    int[] sizes = new int[previousSteps.size()];
+    for ( int i = 0; i < stepNames.length; i++ ) {
+      stepNames[i] = previousSteps.get( i ).getName();
+      sizes[i] = sampleSize;
+    }
+    TransPreviewProgressDialog progressDialog = new TransPreviewProgressDialog( shell, transMeta, stepNames, sizes );
+    progressDialog.open();
+    if ( progressDialog.isCancelled() ) {
+      return;
+    }
+    Trans trans = progressDialog.getTrans();
+    if ( trans != null && trans.getResult() != null && trans.getResult().getNrErrors() > 0 ) {
+      EnterTextDialog etd =
+        new EnterTextDialog( shell, BaseMessages.getString( PKG, "System.Dialog.PreviewError.Title" ), BaseMessages
+          .getString( PKG, "System.Dialog.PreviewError.Message" ), progressDialog.getLoggingText(), true );
+      etd.setReadOnly();
+      etd.open();
+      return;
+    }
+
+    try {
+      String fieldName = wFieldname.getText();
+      ValueMetaInterface valueMeta = null;
+      List<Object> sample = new ArrayList<Object>();
+      for ( String stepName : stepNames ) {
+        RowMetaInterface rowMeta = progressDialog.getPreviewRowsMeta( stepName );
+        List<Object[]> rows = progressDialog.getPreviewRows( stepName );
+        int index = rowMeta == null ? -1 : rowMeta.indexOfValue( fieldName );
+        if ( index < 0 || rows == null ) {
+          continue;
+        }
+        // The steps may store the field differently, the sample only holds normal values
+        //
+        ValueMetaInterface stepValueMeta = rowMeta.getValueMeta( index );
+        for ( Object[] row : rows ) {
+          sample.add( stepValueMeta.convertToNormalStorageType( row[index] ) );
+        }
+        if ( valueMeta == null ) {
+          valueMeta = stepValueMeta.clone();
+          valueMeta.setStorageType( ValueMetaInterface.STORAGE_TYPE_NORMAL );
+        }
+      }
+      if ( valueMeta == null ) {
+        throw new KettleException( BaseMessages.getString(
+          PKG, "RangePartitionerDialog.SampleBoundaries.FieldNotFound", fieldName ) );
+      }
+
+      String[] boundaries = RangePartitioner.calculateBoundaries( valueMeta, sample, nrPartitions );
+      wBoundaries.table.removeAll();
+      for ( String boundary : boundaries ) {
+        TableItem item = new TableItem( wBoundaries.table, SWT.NONE );
+        item.setText( 1, boundary );
+      }
+      if ( boundaries.length == 0 ) {
+        new TableItem( wBoundaries.table, SWT.NONE );
+      }
+      wBoundaries.setRowNums();
+      wBoundaries.optWidth( true );
+      partitioningMeta.hasChanged( true );
+    } catch ( KettleException e ) {
+      new ErrorDialog( shell, BaseMessages.getString( PKG, "RangePartitionerDialog.SampleBoundaries.DialogTitle" ),
+        BaseMessages.getString( PKG, "RangePartitionerDialog.SampleBoundaries.Error" ), e );
+    }
+  }
+
+  private void cancel() {
+    stepname = null;
+    partitioningMeta.hasChanged( changed );
+    dispose();
+  }
+
+  private void ok() {
+    partitioner.setFieldName( wFieldname.getText() );
+
+    int nrBoundaries = wBoundaries.nrNonEmpty();
+    String[] boundaries = new String[nrBoundaries];
+    for ( int i = 0; i < nrBoundaries; i++ ) {
+      boundaries[i] = wBoundaries.getNonEmpty( i ).getText( 1 );
+    }
+    partitioner.setBoundaries( boundaries );
+    dispose();
+  }
+
+  private void setShellImage( Shell shell ) {
+    PluginInterface plugin = PluginRegistry.getInstance().getPlugin( PartitionerPluginType.class, partitioner.getId() );
+    if ( !Utils.isEmpty( plugin.getDocumentationUrl() ) ) {
+      createHelpButton( shell, stepMeta, plugin );
+    }
+
+    shell.setImage( GUIResource.getInstance().getImageSpoon() );
+  }
+}
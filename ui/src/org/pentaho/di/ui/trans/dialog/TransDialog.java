@@ -77,6 +77,7 @@ import org.pentaho.di.repository.Repository;
 import org.pentaho.di.repository.RepositoryDirectoryInterface;
 import org.pentaho.di.trans.TransDependency;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransMeta.StepSchedulerType;
 import org.pentaho.di.trans.TransMeta.TransformationType;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
@@ -200,6 +201,8 @@ public class TransDialog extends Dialog {
 
   private Button wManageThreads;
 
+  private Button wRingBufferRowSets;
+
   private boolean directoryChangeAllowed;
 
   private Label wlDirectory;
@@ -210,6 +213,8 @@ public class TransDialog extends Dialog {
 
   private CCombo wTransformationType;
 
+  private CCombo wStepScheduler;
+
   private Tabs currentTab = null;
 
   protected boolean changed;
@@ -1951,6 +1956,26 @@ public class TransDialog extends Dialog {
     fdManageThreads.right = new FormAttachment( 100, 0 );
     wManageThreads.setLayoutData( fdManageThreads );
 
+    // Use lock-free row sets between single step copies?
+    Label wlRingBufferRowSets = new Label( wMiscComp, SWT.RIGHT );
+    wlRingBufferRowSets.setText( BaseMessages.getString( PKG, "TransDialog.RingBufferRowSets.Label" ) );
+    wlRingBufferRowSets.setToolTipText( BaseMessages.getString( PKG, "TransDialog.RingBufferRowSets.Tooltip" ) );
+    props.setLook( wlRingBufferRowSets );
+    FormData fdlRingBufferRowSets = new FormData();
+    fdlRingBufferRowSets.left = new FormAttachment( 0, 0 );
+    fdlRingBufferRowSets.top = new FormAttachment( wManageThreads, margin );
+    fdlRingBufferRowSets.right = new FormAttachment( middle, -margin );
+    wlRingBufferRowSets.setLayoutData( fdlRingBufferRowSets );
+    wRingBufferRowSets = new Button( wMiscComp, SWT.CHECK );
+    wRingBufferRowSets.setToolTipText( BaseMessages.getString( PKG, "TransDialog.RingBufferRowSets.Tooltip" ) );
+    wRingBufferRowSets.addSelectionListener( lsModSel );
+    props.setLook( wRingBufferRowSets );
+    FormData fdRingBufferRowSets = new FormData();
+    fdRingBufferRowSets.left = new FormAttachment( middle, 0 );
+    fdRingBufferRowSets.top = new FormAttachment( wManageThreads, margin );
+    fdRingBufferRowSets.right = new FormAttachment( 100, 0 );
+    wRingBufferRowSets.setLayoutData( fdRingBufferRowSets );
+
     // Single threaded option ...
     Label wlTransformationType = new Label( wMiscComp, SWT.RIGHT );
     wlTransformationType.setText( BaseMessages.getString( PKG, "TransDialog.TransformationType.Label" ) );
@@ -1960,7 +1985,7 @@ public class TransDialog extends Dialog {
     FormData fdlTransformationType = new FormData();
     fdlTransformationType.left = new FormAttachment( 0, 0 );
     fdlTransformationType.right = new FormAttachment( middle, -margin );
-    fdlTransformationType.top = new FormAttachment( wManageThreads, margin );
+    fdlTransformationType.top = new FormAttachment( wRingBufferRowSets, margin );
     wlTransformationType.setLayoutData( fdlTransformationType );
     wTransformationType = new CCombo( wMiscComp, SWT.NORMAL );
     wTransformationType.setToolTipText( BaseMessages.getString(
@@ -1969,11 +1994,35 @@ public class TransDialog extends Dialog {
     props.setLook( wTransformationType );
     FormData fdTransformationType = new FormData();
     fdTransformationType.left = new FormAttachment( middle, 0 );
-    fdTransformationType.top = new FormAttachment( wManageThreads, margin );
+    fdTransformationType.top = new FormAttachment( wRingBufferRowSets, margin );
     fdTransformationType.right = new FormAttachment( 100, 0 );
     wTransformationType.setLayoutData( fdTransformationType );
     wTransformationType.setItems( TransformationType.getTransformationTypesDescriptions() );
 
+    // Step scheduler of Normal transformations ...
+    Label wlStepScheduler = new Label( wMiscComp, SWT.RIGHT );
+    wlStepScheduler.setText( BaseMessages.getString( PKG, "TransDialog.StepScheduler.Label" ) );
+    wlStepScheduler.setToolTipText( BaseMessages.getString( PKG, "TransDialog.StepScheduler.Tooltip" ) );
+    props.setLook( wlStepScheduler );
+    FormData fdlStepScheduler = new FormData();
+    fdlStepScheduler.left = new FormAttachment( 0, 0 );
+    fdlStepScheduler.right = new FormAttachment( middle, -margin );
+    fdlStepScheduler.top = new FormAttachment( wTransformationType, margin );
+    wlStepScheduler.setLayoutData( fdlStepScheduler );
+    wStepScheduler = new CCombo( wMiscComp, SWT.NORMAL );
+    wStepScheduler.setToolTipText( BaseMessages.getString( PKG, "TransDialog.StepScheduler.Tooltip" ) );
+    wStepScheduler.addSelectionListener( lsModSel );
+    props.setLook( wStepScheduler );
+    FormData fdStepScheduler = new FormData();
+    fdStepScheduler.left = new FormAttachment( middle, 0 );
+    fdStepScheduler.top = new FormAttachment( wTransformationType, margin );
+    fdStepScheduler.right = new FormAttachment( 100, 0 );
+    wStepScheduler.setLayoutData( fdStepScheduler );
+    wStepScheduler.add( BaseMessages.getString( PKG, "TransDialog.StepScheduler.Default" ) );
+    for ( String description : StepSchedulerType.getStepSchedulerTypesDescriptions() ) {
+      wStepScheduler.add( description );
+    }
+
     FormData fdMiscComp = new FormData();
     fdMiscComp.left = new FormAttachment( 0, 0 );
     fdMiscComp.top = new FormAttachment( 0, 0 );
@@ -2177,7 +2226,10 @@ public class TransDialog extends Dialog {
     wFeedbackSize.setText( Integer.toString( transMeta.getFeedbackSize() ) );
     wSharedObjectsFile.setText( Const.NVL( transMeta.getSharedObjectsFile(), "" ) );
     wManageThreads.setSelection( transMeta.isUsingThreadPriorityManagment() );
+    wRingBufferRowSets.setSelection( transMeta.isUsingRingBufferRowSets() );
     wTransformationType.setText( transMeta.getTransformationType().getDescription() );
+    wStepScheduler.select( transMeta.getStepSchedulerType() == null ? 0 : transMeta
+      .getStepSchedulerType().ordinal() + 1 );
 
     wFields.setRowNums();
     wFields.optWidth( true );
@@ -2313,8 +2365,12 @@ public class TransDialog extends Dialog {
     transMeta.setFeedbackSize( Const.toInt( wFeedbackSize.getText(), Const.ROWS_UPDATE ) );
     transMeta.setSharedObjectsFile( wSharedObjectsFile.getText() );
     transMeta.setUsingThreadPriorityManagment( wManageThreads.getSelection() );
+    transMeta.setUsingRingBufferRowSets( wRingBufferRowSets.getSelection() );
     transMeta.setTransformationType( TransformationType.values()[Const.indexOfString( wTransformationType
       .getText(), TransformationType.getTransformationTypesDescriptions() )] );
+    int schedulerIndex = Const.indexOfString( wStepScheduler.getText(), StepSchedulerType
+      .getStepSchedulerTypesDescriptions() );
+    transMeta.setStepSchedulerType( schedulerIndex < 0 ? null : StepSchedulerType.values()[schedulerIndex] );
 
     if ( directoryChangeAllowed && transMeta.getObjectId() != null ) {
       if ( newDirectory != null ) {
@@ -182,7 +182,7 @@ public class AnalyticQueryDialog extends BaseStepDialog implements StepDialogInt
     fdlAgg.top = new FormAttachment( wGroup, margin );
     wlAgg.setLayoutData( fdlAgg );
 
-    int UpInsCols = 4;
+    int UpInsCols = 6;
     int UpInsRows = ( input.getAggregateField() != null ? input.getAggregateField().length : 1 );
 
     ciReturn = new ColumnInfo[UpInsCols];
@@ -203,6 +203,16 @@ public class AnalyticQueryDialog extends BaseStepDialog implements StepDialogInt
         BaseMessages.getString( PKG, "AnalyticQueryDialog.ColumnInfo.Value" ), ColumnInfo.COLUMN_TYPE_TEXT,
         false );
     ciReturn[3].setToolTip( BaseMessages.getString( PKG, "AnalyticQueryDialog.ColumnInfo.Value.Tooltip" ) );
+    ciReturn[4] =
+      new ColumnInfo(
+        BaseMessages.getString( PKG, "AnalyticQueryDialog.ColumnInfo.FramePreceding" ), ColumnInfo.COLUMN_TYPE_TEXT,
+        false );
+    ciReturn[4].setToolTip( BaseMessages.getString( PKG, "AnalyticQueryDialog.ColumnInfo.FramePreceding.Tooltip" ) );
+    ciReturn[5] =
+      new ColumnInfo(
+        BaseMessages.getString( PKG, "AnalyticQueryDialog.ColumnInfo.FrameFollowing" ), ColumnInfo.COLUMN_TYPE_TEXT,
+        false );
+    ciReturn[5].setToolTip( BaseMessages.getString( PKG, "AnalyticQueryDialog.ColumnInfo.FrameFollowing.Tooltip" ) );
 
     wAgg =
       new TableView(
@@ -361,6 +371,11 @@ public class AnalyticQueryDialog extends BaseStepDialog implements StepDialogInt
         if ( valuetext != null ) {
           item.setText( 4, valuetext );
         }
+        if ( AnalyticQueryMeta.isWindowAggregate( input.getAggregateType()[i] ) ) {
+          int preceding = input.getFramePreceding()[i];
+          item.setText( 5, preceding < 0 ? "" : Integer.toString( preceding ) );
+          item.setText( 6, Integer.toString( input.getFrameFollowing()[i] ) );
+        }
       }
     }
 
@@ -402,6 +417,8 @@ public class AnalyticQueryDialog extends BaseStepDialog implements StepDialogInt
       input.getSubjectField()[i] = item.getText( 2 );
       input.getAggregateType()[i] = AnalyticQueryMeta.getType( item.getText( 3 ) );
       input.getValueField()[i] = Const.toInt( item.getText( 4 ), 1 );
+      input.getFramePreceding()[i] = Const.toInt( item.getText( 5 ), AnalyticQueryMeta.FRAME_UNBOUNDED );
+      input.getFrameFollowing()[i] = Const.toInt( item.getText( 6 ), 0 );
     }
 
     stepname = wStepname.getText();
@@ -87,6 +87,34 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
   private Text wCachesize;
   private FormData fdlCachesize, fdCachesize;
 
+  private Label wlCacheMemoryLimit;
+  private TextVar wCacheMemoryLimit;
+  private FormData fdlCacheMemoryLimit, fdCacheMemoryLimit;
+
+  private Label wlCacheTimeToLive;
+  private TextVar wCacheTimeToLive;
+  private FormData fdlCacheTimeToLive, fdCacheTimeToLive;
+
+  private Label wlCacheNotFound;
+  private Button wCacheNotFound;
+  private FormData fdlCacheNotFound, fdCacheNotFound;
+
+  private Label wlCacheShared;
+  private Button wCacheShared;
+  private FormData fdlCacheShared, fdCacheShared;
+
+  private Label wlBatchLookup;
+  private Button wBatchLookup;
+  private FormData fdlBatchLookup, fdBatchLookup;
+
+  private Label wlBatchSize;
+  private TextVar wBatchSize;
+  private FormData fdlBatchSize, fdBatchSize;
+
+  private Label wlBatchMaxWait;
+  private TextVar wBatchMaxWait;
+  private FormData fdlBatchMaxWait, fdBatchMaxWait;
+
   private Label wlKey;
   private TableView wKey;
   private FormData fdlKey, fdKey;
@@ -333,12 +361,148 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
       }
     } );
 
+    // Cache memory limit line
+    wlCacheMemoryLimit = new Label( shell, SWT.RIGHT );
+    wlCacheMemoryLimit.setText( BaseMessages.getString( PKG, "DatabaseLookupDialog.CacheMemoryLimit.Label" ) );
+    props.setLook( wlCacheMemoryLimit );
+    fdlCacheMemoryLimit = new FormData();
+    fdlCacheMemoryLimit.left = new FormAttachment( 0, 0 );
+    fdlCacheMemoryLimit.right = new FormAttachment( middle, -margin );
+    fdlCacheMemoryLimit.top = new FormAttachment( wCacheLoadAll, margin );
+    wlCacheMemoryLimit.setLayoutData( fdlCacheMemoryLimit );
+    wCacheMemoryLimit = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wCacheMemoryLimit );
+    wCacheMemoryLimit.addModifyListener( lsMod );
+    fdCacheMemoryLimit = new FormData();
+    fdCacheMemoryLimit.left = new FormAttachment( middle, 0 );
+    fdCacheMemoryLimit.right = new FormAttachment( 100, 0 );
+    fdCacheMemoryLimit.top = new FormAttachment( wCacheLoadAll, margin );
+    wCacheMemoryLimit.setLayoutData( fdCacheMemoryLimit );
+
+    // Cache time to live line
+    wlCacheTimeToLive = new Label( shell, SWT.RIGHT );
+    wlCacheTimeToLive.setText( BaseMessages.getString( PKG, "DatabaseLookupDialog.CacheTimeToLive.Label" ) );
+    props.setLook( wlCacheTimeToLive );
+    fdlCacheTimeToLive = new FormData();
+    fdlCacheTimeToLive.left = new FormAttachment( 0, 0 );
+    fdlCacheTimeToLive.right = new FormAttachment( middle, -margin );
+    fdlCacheTimeToLive.top = new FormAttachment( wCacheMemoryLimit, margin );
+    wlCacheTimeToLive.setLayoutData( fdlCacheTimeToLive );
+    wCacheTimeToLive = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wCacheTimeToLive );
+    wCacheTimeToLive.addModifyListener( lsMod );
+    fdCacheTimeToLive = new FormData();
+    fdCacheTimeToLive.left = new FormAttachment( middle, 0 );
+    fdCacheTimeToLive.right = new FormAttachment( 100, 0 );
+    fdCacheTimeToLive.top = new FormAttachment( wCacheMemoryLimit, margin );
+    wCacheTimeToLive.setLayoutData( fdCacheTimeToLive );
+
+    // Cache : remember lookups without result?
+    wlCacheNotFound = new Label( shell, SWT.RIGHT );
+    wlCacheNotFound.setText( BaseMessages.getString( PKG, "DatabaseLookupDialog.CacheNotFound.Label" ) );
+    props.setLook( wlCacheNotFound );
+    fdlCacheNotFound = new FormData();
+    fdlCacheNotFound.left = new FormAttachment( 0, 0 );
+    fdlCacheNotFound.right = new FormAttachment( middle, -margin );
+    fdlCacheNotFound.top = new FormAttachment( wCacheTimeToLive, margin );
+    wlCacheNotFound.setLayoutData( fdlCacheNotFound );
+    wCacheNotFound = new Button( shell, SWT.CHECK );
+    props.setLook( wCacheNotFound );
+    fdCacheNotFound = new FormData();
+    fdCacheNotFound.left = new FormAttachment( middle, 0 );
+    fdCacheNotFound.top = new FormAttachment( wCacheTimeToLive, margin );
+    wCacheNotFound.setLayoutData( fdCacheNotFound );
+    wCacheNotFound.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+      }
+    } );
+
+    // Cache : share between step copies?
+    wlCacheShared = new Label( shell, SWT.RIGHT );
+    wlCacheShared.setText( BaseMessages.getString( PKG, "DatabaseLookupDialog.CacheShared.Label" ) );
+    props.setLook( wlCacheShared );
+    fdlCacheShared = new FormData();
+    fdlCacheShared.left = new FormAttachment( 0, 0 );
+    fdlCacheShared.right = new FormAttachment( middle, -margin );
+    fdlCacheShared.top = new FormAttachment( wCacheNotFound, margin );
+    wlCacheShared.setLayoutData( fdlCacheShared );
+    wCacheShared = new Button( shell, SWT.CHECK );
+    props.setLook( wCacheShared );
+    fdCacheShared = new FormData();
+    fdCacheShared.left = new FormAttachment( middle, 0 );
+    fdCacheShared.top = new FormAttachment( wCacheNotFound, margin );
+    wCacheShared.setLayoutData( fdCacheShared );
+    wCacheShared.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+      }
+    } );
+
+    // Batch lookup?
+    wlBatchLookup = new Label( shell, SWT.RIGHT );
+    wlBatchLookup.setText( BaseMessages.getString( PKG, "DatabaseLookupDialog.BatchLookup.Label" ) );
+    props.setLook( wlBatchLookup );
+    fdlBatchLookup = new FormData();
+    fdlBatchLookup.left = new FormAttachment( 0, 0 );
+    fdlBatchLookup.right = new FormAttachment( middle, -margin );
+    fdlBatchLookup.top = new FormAttachment( wCacheShared, margin );
+    wlBatchLookup.setLayoutData( fdlBatchLookup );
+    wBatchLookup = new Button( shell, SWT.CHECK );
+    props.setLook( wBatchLookup );
+    fdBatchLookup = new FormData();
+    fdBatchLookup.left = new FormAttachment( middle, 0 );
+    fdBatchLookup.top = new FormAttachment( wCacheShared, margin );
+    wBatchLookup.setLayoutData( fdBatchLookup );
+    wBatchLookup.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+        enableFields();
+      }
+    } );
+
+    // Batch size line
+    wlBatchSize = new Label( shell, SWT.RIGHT );
+    wlBatchSize.setText( BaseMessages.getString( PKG, "DatabaseLookupDialog.BatchSize.Label" ) );
+    props.setLook( wlBatchSize );
+    fdlBatchSize = new FormData();
+    fdlBatchSize.left = new FormAttachment( 0, 0 );
+    fdlBatchSize.right = new FormAttachment( middle, -margin );
+    fdlBatchSize.top = new FormAttachment( wBatchLookup, margin );
+    wlBatchSize.setLayoutData( fdlBatchSize );
+    wBatchSize = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wBatchSize );
+    wBatchSize.addModifyListener( lsMod );
+    fdBatchSize = new FormData();
+    fdBatchSize.left = new FormAttachment( middle, 0 );
+    fdBatchSize.right = new FormAttachment( 100, 0 );
+    fdBatchSize.top = new FormAttachment( wBatchLookup, margin );
+    wBatchSize.setLayoutData( fdBatchSize );
+
+    // Batch maximum wait line
+    wlBatchMaxWait = new Label( shell, SWT.RIGHT );
+    wlBatchMaxWait.setText( BaseMessages.getString( PKG, "DatabaseLookupDialog.BatchMaxWait.Label" ) );
+    props.setLook( wlBatchMaxWait );
+    fdlBatchMaxWait = new FormData();
+    fdlBatchMaxWait.left = new FormAttachment( 0, 0 );
+    fdlBatchMaxWait.right = new FormAttachment( middle, -margin );
+    fdlBatchMaxWait.top = new FormAttachment( wBatchSize, margin );
+    wlBatchMaxWait.setLayoutData( fdlBatchMaxWait );
+    wBatchMaxWait = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wBatchMaxWait );
+    wBatchMaxWait.addModifyListener( lsMod );
+    fdBatchMaxWait = new FormData();
+    fdBatchMaxWait.left = new FormAttachment( middle, 0 );
+    fdBatchMaxWait.right = new FormAttachment( 100, 0 );
+    fdBatchMaxWait.top = new FormAttachment( wBatchSize, margin );
+    wBatchMaxWait.setLayoutData( fdBatchMaxWait );
+
     wlKey = new Label( shell, SWT.NONE );
     wlKey.setText( BaseMessages.getString( PKG, "DatabaseLookupDialog.Keys.Label" ) );
     props.setLook( wlKey );
     fdlKey = new FormData();
     fdlKey.left = new FormAttachment( 0, 0 );
-    fdlKey.top = new FormAttachment( wCacheLoadAll, margin );
+    fdlKey.top = new FormAttachment( wBatchMaxWait, margin );
     wlKey.setLayoutData( fdlKey );
 
     int nrKeyCols = 4;
@@ -641,6 +805,25 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
     wlCachesize.setEnabled( wCache.getSelection() && !wCacheLoadAll.getSelection() );
     wCacheLoadAll.setEnabled( wCache.getSelection() );
     wlCacheLoadAll.setEnabled( wCache.getSelection() );
+
+    boolean lruCache = wCache.getSelection() && !wCacheLoadAll.getSelection();
+    wCacheMemoryLimit.setEnabled( lruCache );
+    wlCacheMemoryLimit.setEnabled( lruCache );
+    wCacheTimeToLive.setEnabled( lruCache );
+    wlCacheTimeToLive.setEnabled( lruCache );
+    wCacheNotFound.setEnabled( lruCache );
+    wlCacheNotFound.setEnabled( lruCache );
+    wCacheShared.setEnabled( lruCache );
+    wlCacheShared.setEnabled( lruCache );
+
+    boolean loadAll = wCache.getSelection() && wCacheLoadAll.getSelection();
+    boolean batchLookup = wBatchLookup.getSelection() && !loadAll;
+    wBatchLookup.setEnabled( !loadAll );
+    wlBatchLookup.setEnabled( !loadAll );
+    wBatchSize.setEnabled( batchLookup );
+    wlBatchSize.setEnabled( batchLookup );
+    wBatchMaxWait.setEnabled( batchLookup );
+    wlBatchMaxWait.setEnabled( batchLookup );
     wFailMultiple.setEnabled( !wCache.getSelection() );
     wlFailMultiple.setEnabled( !wCache.getSelection() );
   }
@@ -654,6 +837,13 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
     wCache.setSelection( input.isCached() );
     wCachesize.setText( "" + input.getCacheSize() );
     wCacheLoadAll.setSelection( input.isLoadingAllDataInCache() );
+    wCacheMemoryLimit.setText( Const.NVL( input.getCacheMemoryLimit(), "" ) );
+    wCacheTimeToLive.setText( Const.NVL( input.getCacheTimeToLive(), "" ) );
+    wCacheNotFound.setSelection( input.isCachingNotFound() );
+    wCacheShared.setSelection( input.isSharingCache() );
+    wBatchLookup.setSelection( input.isBatchLookup() );
+    wBatchSize.setText( Const.NVL( input.getBatchSize(), "" ) );
+    wBatchMaxWait.setText( Const.NVL( input.getBatchMaxWait(), "" ) );
 
     if ( input.getStreamKeyField1() != null ) {
       for ( int i = 0; i < input.getStreamKeyField1().length; i++ ) {
@@ -738,6 +928,13 @@ public class DatabaseLookupDialog extends BaseStepDialog implements StepDialogIn
     input.setCached( wCache.getSelection() );
     input.setCacheSize( Const.toInt( wCachesize.getText(), 0 ) );
     input.setLoadingAllDataInCache( wCacheLoadAll.getSelection() );
+    input.setCacheMemoryLimit( wCacheMemoryLimit.getText() );
+    input.setCacheTimeToLive( wCacheTimeToLive.getText() );
+    input.setCachingNotFound( wCacheNotFound.getSelection() );
+    input.setSharingCache( wCacheShared.getSelection() );
+    input.setBatchLookup( wBatchLookup.getSelection() );
+    input.setBatchSize( wBatchSize.getText() );
+    input.setBatchMaxWait( wBatchMaxWait.getText() );
 
     logDebug( BaseMessages.getString( PKG, "DatabaseLookupDialog.Log.FoundKeys", String.valueOf( nrkeys ) ) );
     //CHECKSTYLE:Indentation:OFF
@@ -65,6 +65,7 @@ import org.pentaho.di.trans.step.BaseStepMeta;
 import org.pentaho.di.trans.step.StepDialogInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.errorhandling.StreamInterface;
+import org.pentaho.di.trans.steps.fuzzymatch.FuzzyMatchIndex;
 import org.pentaho.di.trans.steps.fuzzymatch.FuzzyMatchMeta;
 import org.pentaho.di.ui.core.dialog.ErrorDialog;
 import org.pentaho.di.ui.core.widget.ColumnInfo;
@@ -130,6 +131,10 @@ public class FuzzyMatchDialog extends BaseStepDialog implements StepDialogInterf
   private Button wgetCloserValue;
   private FormData fdlgetCloserValue, fdgetCloserValue;
 
+  private Label wlindexedMatching;
+  private Button windexedMatching;
+  private FormData fdlindexedMatching, fdindexedMatching;
+
   private Label wlminValue;
   private TextVar wminValue;
   private FormData fdminValue, fdlminValue;
@@ -448,12 +453,31 @@ public class FuzzyMatchDialog extends BaseStepDialog implements StepDialogInterf
     };
     wgetCloserValue.addSelectionListener( lgetCloserValue );
 
+    // Index the lookup values?
+    wlindexedMatching = new Label( wSettingsGroup, SWT.RIGHT );
+    wlindexedMatching.setText( BaseMessages.getString( PKG, "FuzzyMatchDialog.indexedMatching.Label" ) );
+    props.setLook( wlindexedMatching );
+    fdlindexedMatching = new FormData();
+    fdlindexedMatching.left = new FormAttachment( 0, 0 );
+    fdlindexedMatching.top = new FormAttachment( wgetCloserValue, margin );
+    fdlindexedMatching.right = new FormAttachment( middle, -2 * margin );
+    wlindexedMatching.setLayoutData( fdlindexedMatching );
+
+    windexedMatching = new Button( wSettingsGroup, SWT.CHECK );
+    props.setLook( windexedMatching );
+    windexedMatching.setToolTipText( BaseMessages.getString( PKG, "FuzzyMatchDialog.indexedMatching.Tooltip" ) );
+    fdindexedMatching = new FormData();
+    fdindexedMatching.left = new FormAttachment( middle, 0 );
+    fdindexedMatching.top = new FormAttachment( wgetCloserValue, margin );
+    windexedMatching.setLayoutData( fdindexedMatching );
+    windexedMatching.addSelectionListener( lcaseSensitive );
+
     wlminValue = new Label( wSettingsGroup, SWT.RIGHT );
     wlminValue.setText( BaseMessages.getString( PKG, "FuzzyMatchDialog.minValue.Label" ) );
     props.setLook( wlminValue );
     fdlminValue = new FormData();
     fdlminValue.left = new FormAttachment( 0, 0 );
-    fdlminValue.top = new FormAttachment( wgetCloserValue, margin );
+    fdlminValue.top = new FormAttachment( windexedMatching, margin );
     fdlminValue.right = new FormAttachment( middle, -margin );
     wlminValue.setLayoutData( fdlminValue );
     wminValue = new TextVar( transMeta, wSettingsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
@@ -462,7 +486,7 @@ public class FuzzyMatchDialog extends BaseStepDialog implements StepDialogInterf
     wminValue.addModifyListener( lsMod );
     fdminValue = new FormData();
     fdminValue.left = new FormAttachment( middle, 0 );
-    fdminValue.top = new FormAttachment( wgetCloserValue, margin );
+    fdminValue.top = new FormAttachment( windexedMatching, margin );
     fdminValue.right = new FormAttachment( 100, 0 );
     wminValue.setLayoutData( fdminValue );
 
@@ -737,6 +761,7 @@ public class FuzzyMatchDialog extends BaseStepDialog implements StepDialogInterf
     }
     wcaseSensitive.setSelection( input.isCaseSensitive() );
     wgetCloserValue.setSelection( input.isGetCloserValue() );
+    windexedMatching.setSelection( input.isIndexedMatching() );
     if ( input.getMinimalValue() != null ) {
       wminValue.setText( input.getMinimalValue() );
     }
@@ -792,6 +817,7 @@ public class FuzzyMatchDialog extends BaseStepDialog implements StepDialogInterf
     input.setAlgorithmType( FuzzyMatchMeta.getAlgorithmTypeByDesc( wAlgorithm.getText() ) );
     input.setCaseSensitive( wcaseSensitive.getSelection() );
     input.setGetCloserValue( wgetCloserValue.getSelection() );
+    input.setIndexedMatching( windexedMatching.getSelection() );
     input.setMaximalValue( wmaxValue.getText() );
     input.setMinimalValue( wminValue.getText() );
 
@@ -960,6 +986,10 @@ public class FuzzyMatchDialog extends BaseStepDialog implements StepDialogInterf
         .getAlgorithmTypeByDesc( wAlgorithm.getText() ) == FuzzyMatchMeta.OPERATION_TYPE_DAMERAU_LEVENSHTEIN );
     wlcaseSensitive.setEnabled( enableCaseSensitive );
     wcaseSensitive.setEnabled( enableCaseSensitive );
+    boolean enableIndexedMatching =
+      FuzzyMatchIndex.isSupported( FuzzyMatchMeta.getAlgorithmTypeByDesc( wAlgorithm.getText() ) );
+    wlindexedMatching.setEnabled( enableIndexedMatching );
+    windexedMatching.setEnabled( enableIndexedMatching );
     activegetCloserValue();
   }
 
@@ -76,6 +76,10 @@ public class JoinRowsDialog extends BaseStepDialog implements StepDialogInterfac
   private Text wCache;
   private FormData fdlCache, fdCache;
 
+  private Label wlJoinStrategy;
+  private CCombo wJoinStrategy;
+  private FormData fdlJoinStrategy, fdJoinStrategy;
+
   private Label wlMainStep;
   private CCombo wMainStep;
   private FormData fdlMainStep, fdMainStep;
@@ -223,6 +227,26 @@ public class JoinRowsDialog extends BaseStepDialog implements StepDialogInterfac
     fdCache.right = new FormAttachment( 100, 0 );
     wCache.setLayoutData( fdCache );
 
+    // Join strategy...
+    wlJoinStrategy = new Label( shell, SWT.RIGHT );
+    wlJoinStrategy.setText( BaseMessages.getString( PKG, "JoinRowsDialog.JoinStrategy.Label" ) );
+    props.setLook( wlJoinStrategy );
+    fdlJoinStrategy = new FormData();
+    fdlJoinStrategy.left = new FormAttachment( 0, 0 );
+    fdlJoinStrategy.right = new FormAttachment( middle, -margin );
+    fdlJoinStrategy.top = new FormAttachment( wCache, margin );
+    wlJoinStrategy.setLayoutData( fdlJoinStrategy );
+    wJoinStrategy = new CCombo( shell, SWT.BORDER | SWT.READ_ONLY );
+    props.setLook( wJoinStrategy );
+    wJoinStrategy.setItems( JoinRowsMeta.joinStrategyDescs );
+    wJoinStrategy.setToolTipText( BaseMessages.getString( PKG, "JoinRowsDialog.JoinStrategy.Tooltip" ) );
+    wJoinStrategy.addModifyListener( lsMod );
+    fdJoinStrategy = new FormData();
+    fdJoinStrategy.left = new FormAttachment( middle, 0 );
+    fdJoinStrategy.top = new FormAttachment( wCache, margin );
+    fdJoinStrategy.right = new FormAttachment( 100, 0 );
+    wJoinStrategy.setLayoutData( fdJoinStrategy );
+
     // Read date from...
     wlMainStep = new Label( shell, SWT.RIGHT );
     wlMainStep.setText( BaseMessages.getString( PKG, "JoinRowsDialog.MainStep.Label" ) );
@@ -230,7 +254,7 @@ public class JoinRowsDialog extends BaseStepDialog implements StepDialogInterfac
     fdlMainStep = new FormData();
     fdlMainStep.left = new FormAttachment( 0, 0 );
     fdlMainStep.right = new FormAttachment( middle, -margin );
-    fdlMainStep.top = new FormAttachment( wCache, margin );
+    fdlMainStep.top = new FormAttachment( wJoinStrategy, margin );
     wlMainStep.setLayoutData( fdlMainStep );
     wMainStep = new CCombo( shell, SWT.BORDER );
     props.setLook( wMainStep );
@@ -243,7 +267,7 @@ public class JoinRowsDialog extends BaseStepDialog implements StepDialogInterfac
     wMainStep.addModifyListener( lsMod );
     fdMainStep = new FormData();
     fdMainStep.left = new FormAttachment( middle, 0 );
-    fdMainStep.top = new FormAttachment( wCache, margin );
+    fdMainStep.top = new FormAttachment( wJoinStrategy, margin );
     fdMainStep.right = new FormAttachment( 100, 0 );
     wMainStep.setLayoutData( fdMainStep );
 
@@ -341,6 +365,7 @@ public class JoinRowsDialog extends BaseStepDialog implements StepDialogInterfac
       wSortDir.setText( input.getDirectory() );
     }
     wCache.setText( "" + input.getCacheSize() );
+    wJoinStrategy.setText( JoinRowsMeta.getJoinStrategyDesc( input.getJoinStrategy() ) );
     if ( input.getLookupStepname() != null ) {
       wMainStep.setText( input.getLookupStepname() );
     }
@@ -369,6 +394,7 @@ public class JoinRowsDialog extends BaseStepDialog implements StepDialogInterfac
       input.setPrefix( wPrefix.getText() );
       input.setDirectory( wSortDir.getText() );
       input.setCacheSize( Const.toInt( wCache.getText(), -1 ) );
+      input.setJoinStrategy( JoinRowsMeta.getJoinStrategyByDesc( wJoinStrategy.getText() ) );
       input.setMainStep( transMeta.findStep( wMainStep.getText() ) );
 
       dispose();
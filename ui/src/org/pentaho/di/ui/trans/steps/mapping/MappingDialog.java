@@ -147,6 +147,8 @@ public class MappingDialog extends BaseStepDialog implements StepDialogInterface
 
   private Button wMultiInput, wMultiOutput;
 
+  private Button wExecuteInline;
+
   private interface ApplyChanges {
     public void applyChanges();
   }
@@ -541,6 +543,17 @@ public class MappingDialog extends BaseStepDialog implements StepDialogInterface
     } );
     lastControl = wMultiOutput;
 
+    wExecuteInline = new Button( shell, SWT.CHECK );
+    props.setLook( wExecuteInline );
+    wExecuteInline.setText( BaseMessages.getString( PKG, "MappingDialog.ExecuteInline.Label" ) );
+    wExecuteInline.setToolTipText( BaseMessages.getString( PKG, "MappingDialog.ExecuteInline.Tooltip" ) );
+    FormData fdExecuteInline = new FormData();
+    fdExecuteInline.left = new FormAttachment( 0, 0 );
+    fdExecuteInline.right = new FormAttachment( 100, 0 );
+    fdExecuteInline.top = new FormAttachment( lastControl, margin );
+    wExecuteInline.setLayoutData( fdExecuteInline );
+    lastControl = wExecuteInline;
+
     //
     // Add a tab folder for the parameters and various input and output
     // streams
@@ -973,6 +986,7 @@ public class MappingDialog extends BaseStepDialog implements StepDialogInterface
 
     wMultiInput.setSelection( mappingMeta.isAllowingMultipleInputs() );
     wMultiOutput.setSelection( mappingMeta.isAllowingMultipleOutputs() );
+    wExecuteInline.setSelection( mappingMeta.isExecutingInline() );
 
     // Now add the input stream tabs: where is our data coming from?
     for ( int i = 0; i < inputMappings.size(); i++ ) {
@@ -1733,6 +1747,7 @@ public class MappingDialog extends BaseStepDialog implements StepDialogInterface
 
     mappingMeta.setAllowingMultipleInputs( wMultiInput.getSelection() );
     mappingMeta.setAllowingMultipleOutputs( wMultiOutput.getSelection() );
+    mappingMeta.setExecutingInline( wExecuteInline.getSelection() );
 
     mappingMeta.setChanged( true );
 
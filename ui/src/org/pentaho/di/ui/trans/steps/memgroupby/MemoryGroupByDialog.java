@@ -40,6 +40,7 @@ import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Label;
@@ -60,6 +61,7 @@ import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByMeta;
 import org.pentaho.di.ui.core.dialog.ErrorDialog;
 import org.pentaho.di.ui.core.widget.ColumnInfo;
 import org.pentaho.di.ui.core.widget.TableView;
+import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
 
 public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInterface {
@@ -77,6 +79,19 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
   private Button wAlwaysAddResult;
   private FormData fdlAlwaysAddResult, fdAlwaysAddResult;
 
+  private Label wlColumnarAggregation;
+  private Button wColumnarAggregation;
+  private FormData fdlColumnarAggregation, fdColumnarAggregation;
+
+  private Label wlMemoryBudget;
+  private TextVar wMemoryBudget;
+  private FormData fdlMemoryBudget, fdMemoryBudget;
+
+  private Label wlSpillDirectory;
+  private Button wbSpillDirectory;
+  private TextVar wSpillDirectory;
+  private FormData fdlSpillDirectory, fdbSpillDirectory, fdSpillDirectory;
+
   private Button wGet, wGetAgg;
   private FormData fdGet, fdGetAgg;
   private Listener lsGet, lsGetAgg;
@@ -168,12 +183,95 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
     wAlwaysAddResult.setLayoutData( fdAlwaysAddResult );
     wAlwaysAddResult.addSelectionListener( lsSel );
 
+    // Aggregate in primitive columns
+    //
+    wlColumnarAggregation = new Label( shell, SWT.RIGHT );
+    wlColumnarAggregation.setText( BaseMessages.getString( PKG, "MemoryGroupByDialog.ColumnarAggregation.Label" ) );
+    wlColumnarAggregation.setToolTipText(
+      BaseMessages.getString( PKG, "MemoryGroupByDialog.ColumnarAggregation.Tooltip" ) );
+    props.setLook( wlColumnarAggregation );
+    fdlColumnarAggregation = new FormData();
+    fdlColumnarAggregation.left = new FormAttachment( 0, 0 );
+    fdlColumnarAggregation.top = new FormAttachment( wAlwaysAddResult, margin );
+    fdlColumnarAggregation.right = new FormAttachment( middle, -margin );
+    wlColumnarAggregation.setLayoutData( fdlColumnarAggregation );
+    wColumnarAggregation = new Button( shell, SWT.CHECK );
+    wColumnarAggregation.setToolTipText(
+      BaseMessages.getString( PKG, "MemoryGroupByDialog.ColumnarAggregation.Tooltip" ) );
+    props.setLook( wColumnarAggregation );
+    fdColumnarAggregation = new FormData();
+    fdColumnarAggregation.left = new FormAttachment( middle, 0 );
+    fdColumnarAggregation.top = new FormAttachment( wAlwaysAddResult, margin );
+    fdColumnarAggregation.right = new FormAttachment( 100, 0 );
+    wColumnarAggregation.setLayoutData( fdColumnarAggregation );
+    wColumnarAggregation.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+        setMemoryBudgetEnabled();
+      }
+    } );
+
+    wlMemoryBudget = new Label( shell, SWT.RIGHT );
+    wlMemoryBudget.setText( BaseMessages.getString( PKG, "MemoryGroupByDialog.MemoryBudget.Label" ) );
+    props.setLook( wlMemoryBudget );
+    fdlMemoryBudget = new FormData();
+    fdlMemoryBudget.left = new FormAttachment( 0, 0 );
+    fdlMemoryBudget.top = new FormAttachment( wColumnarAggregation, margin );
+    fdlMemoryBudget.right = new FormAttachment( middle, -margin );
+    wlMemoryBudget.setLayoutData( fdlMemoryBudget );
+    wMemoryBudget = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wMemoryBudget.setToolTipText( BaseMessages.getString( PKG, "MemoryGroupByDialog.MemoryBudget.Tooltip" ) );
+    props.setLook( wMemoryBudget );
+    wMemoryBudget.addModifyListener( lsMod );
+    fdMemoryBudget = new FormData();
+    fdMemoryBudget.left = new FormAttachment( middle, 0 );
+    fdMemoryBudget.top = new FormAttachment( wColumnarAggregation, margin );
+    fdMemoryBudget.right = new FormAttachment( 100, 0 );
+    wMemoryBudget.setLayoutData( fdMemoryBudget );
+
+    wlSpillDirectory = new Label( shell, SWT.RIGHT );
+    wlSpillDirectory.setText( BaseMessages.getString( PKG, "MemoryGroupByDialog.SpillDirectory.Label" ) );
+    props.setLook( wlSpillDirectory );
+    fdlSpillDirectory = new FormData();
+    fdlSpillDirectory.left = new FormAttachment( 0, 0 );
+    fdlSpillDirectory.top = new FormAttachment( wMemoryBudget, margin );
+    fdlSpillDirectory.right = new FormAttachment( middle, -margin );
+    wlSpillDirectory.setLayoutData( fdlSpillDirectory );
+    wbSpillDirectory = new Button( shell, SWT.PUSH | SWT.CENTER );
+    props.setLook( wbSpillDirectory );
+    wbSpillDirectory.setText( BaseMessages.getString( PKG, "System.Button.Browse" ) );
+    fdbSpillDirectory = new FormData();
+    fdbSpillDirectory.right = new FormAttachment( 100, 0 );
+    fdbSpillDirectory.top = new FormAttachment( wMemoryBudget, margin );
+    wbSpillDirectory.setLayoutData( fdbSpillDirectory );
+    wSpillDirectory = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wSpillDirectory.setToolTipText( BaseMessages.getString( PKG, "MemoryGroupByDialog.SpillDirectory.Tooltip" ) );
+    props.setLook( wSpillDirectory );
+    wSpillDirectory.addModifyListener( lsMod );
+    fdSpillDirectory = new FormData();
+    fdSpillDirectory.left = new FormAttachment( middle, 0 );
+    fdSpillDirectory.top = new FormAttachment( wMemoryBudget, margin );
+    fdSpillDirectory.right = new FormAttachment( wbSpillDirectory, -margin );
+    wSpillDirectory.setLayoutData( fdSpillDirectory );
+
+    wbSpillDirectory.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent arg0 ) {
+        DirectoryDialog dd = new DirectoryDialog( shell, SWT.NONE );
+        dd.setFilterPath( wSpillDirectory.getText() );
+        String dir = dd.open();
+        if ( dir != null ) {
+          wSpillDirectory.setText( dir );
+        }
+      }
+    } );
+
     wlGroup = new Label( shell, SWT.NONE );
     wlGroup.setText( BaseMessages.getString( PKG, "MemoryGroupByDialog.Group.Label" ) );
     props.setLook( wlGroup );
     fdlGroup = new FormData();
     fdlGroup.left = new FormAttachment( 0, 0 );
-    fdlGroup.top = new FormAttachment( wAlwaysAddResult, margin );
+    fdlGroup.top = new FormAttachment( wSpillDirectory, margin );
     wlGroup.setLayoutData( fdlGroup );
 
     int nrKeyCols = 1;
@@ -375,6 +473,10 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
     logDebug( BaseMessages.getString( PKG, "MemoryGroupByDialog.Log.GettingKeyInfo" ) );
 
     wAlwaysAddResult.setSelection( input.isAlwaysGivingBackOneRow() );
+    wColumnarAggregation.setSelection( input.isColumnarAggregation() );
+    wMemoryBudget.setText( Const.NVL( input.getMemoryBudget(), "" ) );
+    wSpillDirectory.setText( Const.NVL( input.getSpillDirectory(), "" ) );
+    setMemoryBudgetEnabled();
 
     if ( input.getGroupField() != null ) {
       for ( int i = 0; i < input.getGroupField().length; i++ ) {
@@ -416,6 +518,14 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
     dispose();
   }
 
+  private void setMemoryBudgetEnabled() {
+    wlMemoryBudget.setEnabled( wColumnarAggregation.getSelection() );
+    wMemoryBudget.setEnabled( wColumnarAggregation.getSelection() );
+    wlSpillDirectory.setEnabled( wColumnarAggregation.getSelection() );
+    wSpillDirectory.setEnabled( wColumnarAggregation.getSelection() );
+    wbSpillDirectory.setEnabled( wColumnarAggregation.getSelection() );
+  }
+
   private void ok() {
     if ( Utils.isEmpty( wStepname.getText() ) ) {
       return;
@@ -425,6 +535,9 @@ public class MemoryGroupByDialog extends BaseStepDialog implements StepDialogInt
     int nrfields = wAgg.nrNonEmpty();
 
     input.setAlwaysGivingBackOneRow( wAlwaysAddResult.getSelection() );
+    input.setColumnarAggregation( wColumnarAggregation.getSelection() );
+    input.setMemoryBudget( wMemoryBudget.getText() );
+    input.setSpillDirectory( wSpillDirectory.getText() );
 
     input.allocate( sizegroup, nrfields );
 
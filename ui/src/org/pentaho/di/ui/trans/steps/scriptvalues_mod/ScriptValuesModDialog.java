@@ -215,6 +215,7 @@ public class ScriptValuesModDialog extends BaseStepDialog implements StepDialogI
   private ScriptValuesHelp scVHelp;
   private ScriptValuesHighlight lineStyler = new ScriptValuesHighlight();
   private Button wCompatible;
+  private Button wCompiledMode;
   private TextVar wOptimizationLevel;
 
   private TreeItem iteminput;
@@ -400,11 +401,33 @@ public class ScriptValuesModDialog extends BaseStepDialog implements StepDialogI
       }
     } );
 
+    Label wlCompiledMode = new Label( wTop, SWT.NONE );
+    wlCompiledMode.setText( BaseMessages.getString( PKG, "ScriptValuesDialogMod.CompiledMode.Label" ) );
+    props.setLook( wlCompiledMode );
+    FormData fdlCompiledMode = new FormData();
+    fdlCompiledMode.left = new FormAttachment( wCompatible, margin * 2 );
+    fdlCompiledMode.top = new FormAttachment( wlPosition, margin );
+    wlCompiledMode.setLayoutData( fdlCompiledMode );
+
+    wCompiledMode = new Button( wTop, SWT.CHECK );
+    wCompiledMode.setToolTipText( BaseMessages.getString( PKG, "ScriptValuesDialogMod.CompiledMode.Tooltip" ) );
+    props.setLook( wCompiledMode );
+    FormData fdCompiledMode = new FormData();
+    fdCompiledMode.left = new FormAttachment( wlCompiledMode, margin );
+    fdCompiledMode.top = new FormAttachment( wlPosition, margin );
+    wCompiledMode.setLayoutData( fdCompiledMode );
+    wCompiledMode.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        wOptimizationLevel.setEnabled( !wCompiledMode.getSelection() );
+        input.setChanged( true );
+      }
+    } );
+
     Label wlOptimizationLevel = new Label( wTop, SWT.NONE );
     wlOptimizationLevel.setText( BaseMessages.getString( PKG, "ScriptValuesDialogMod.OptimizationLevel.Label" ) );
     props.setLook( wlOptimizationLevel );
     FormData fdlOptimizationLevel = new FormData();
-    fdlOptimizationLevel.left = new FormAttachment( wCompatible, margin * 2 );
+    fdlOptimizationLevel.left = new FormAttachment( wCompiledMode, margin * 2 );
     fdlOptimizationLevel.top = new FormAttachment( wlPosition, margin );
     wlOptimizationLevel.setLayoutData( fdlOptimizationLevel );
 
@@ -947,6 +970,8 @@ public class ScriptValuesModDialog extends BaseStepDialog implements StepDialogI
     } else {
       wOptimizationLevel.setText( ScriptValuesMetaMod.OPTIMIZATION_LEVEL_DEFAULT );
     }
+    wCompiledMode.setSelection( input.isCompiledMode() );
+    wOptimizationLevel.setEnabled( !input.isCompiledMode() );
 
     for ( int i = 0; i < input.getFieldname().length; i++ ) {
       if ( input.getFieldname()[i] != null && input.getFieldname()[i].length() > 0 ) {
@@ -1042,6 +1067,7 @@ public class ScriptValuesModDialog extends BaseStepDialog implements StepDialogI
   private void getInfo( ScriptValuesMetaMod meta ) {
     meta.setCompatible( wCompatible.getSelection() );
     meta.setOptimizationLevel( wOptimizationLevel.getText() );
+    meta.setCompiledMode( wCompiledMode.getSelection() );
     int nrfields = wFields.nrNonEmpty();
     meta.allocate( nrfields );
     //CHECKSTYLE:Indentation:OFF
@@ -88,6 +88,10 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
   private TextVar wFreeMemory;
   private FormData fdlFreeMemory, fdFreeMemory;
 
+  private Label wlMergeFanIn;
+  private TextVar wMergeFanIn;
+  private FormData fdlMergeFanIn, fdMergeFanIn;
+
   private Label wlCompress;
   private CheckBoxVar wCompress;
   private FormData fdlCompress, fdCompress;
@@ -96,6 +100,14 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
   private Button wUniqueRows;
   private FormData fdlUniqueRows, fdUniqueRows;
 
+  private Label wlParallelSort;
+  private Button wParallelSort;
+  private FormData fdlParallelSort, fdParallelSort;
+
+  private Label wlBinarySortKeys;
+  private Button wBinarySortKeys;
+  private FormData fdlBinarySortKeys, fdBinarySortKeys;
+
   private Label wlFields;
   private TableView wFields;
   private FormData fdlFields, fdFields;
@@ -261,6 +273,26 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     fdFreeMemory.right = new FormAttachment( 100, 0 );
     wFreeMemory.setLayoutData( fdFreeMemory );
 
+    // Merge fan-in
+    wlMergeFanIn = new Label( shell, SWT.RIGHT );
+    wlMergeFanIn.setText( BaseMessages.getString( PKG, "SortRowsDialog.MergeFanIn.Label" ) );
+    wlMergeFanIn.setToolTipText( BaseMessages.getString( PKG, "SortRowsDialog.MergeFanIn.ToolTip" ) );
+    props.setLook( wlMergeFanIn );
+    fdlMergeFanIn = new FormData();
+    fdlMergeFanIn.left = new FormAttachment( 0, 0 );
+    fdlMergeFanIn.right = new FormAttachment( middle, -margin );
+    fdlMergeFanIn.top = new FormAttachment( wFreeMemory, margin * 2 );
+    wlMergeFanIn.setLayoutData( fdlMergeFanIn );
+    wMergeFanIn = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wMergeFanIn.setToolTipText( BaseMessages.getString( PKG, "SortRowsDialog.MergeFanIn.ToolTip" ) );
+    props.setLook( wMergeFanIn );
+    wMergeFanIn.addModifyListener( lsMod );
+    fdMergeFanIn = new FormData();
+    fdMergeFanIn.left = new FormAttachment( middle, 0 );
+    fdMergeFanIn.top = new FormAttachment( wFreeMemory, margin * 2 );
+    fdMergeFanIn.right = new FormAttachment( 100, 0 );
+    wMergeFanIn.setLayoutData( fdMergeFanIn );
+
     // Using compression for temporary files?
     wlCompress = new Label( shell, SWT.RIGHT );
     wlCompress.setText( BaseMessages.getString( PKG, "SortRowsDialog.Compress.Label" ) );
@@ -268,13 +300,13 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     fdlCompress = new FormData();
     fdlCompress.left = new FormAttachment( 0, 0 );
     fdlCompress.right = new FormAttachment( middle, -margin );
-    fdlCompress.top = new FormAttachment( wFreeMemory, margin * 2 );
+    fdlCompress.top = new FormAttachment( wMergeFanIn, margin * 2 );
     wlCompress.setLayoutData( fdlCompress );
     wCompress = new CheckBoxVar( transMeta, shell, SWT.CHECK, "" );
     props.setLook( wCompress );
     fdCompress = new FormData();
     fdCompress.left = new FormAttachment( middle, 0 );
-    fdCompress.top = new FormAttachment( wFreeMemory, margin * 2 );
+    fdCompress.top = new FormAttachment( wMergeFanIn, margin * 2 );
     fdCompress.right = new FormAttachment( 100, 0 );
     wCompress.setLayoutData( fdCompress );
     wCompress.addSelectionListener( new SelectionAdapter() {
@@ -303,6 +335,42 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     fdUniqueRows.right = new FormAttachment( 100, 0 );
     wUniqueRows.setLayoutData( fdUniqueRows );
 
+    // Sort in parallel?
+    wlParallelSort = new Label( shell, SWT.RIGHT );
+    wlParallelSort.setText( BaseMessages.getString( PKG, "SortRowsDialog.ParallelSort.Label" ) );
+    props.setLook( wlParallelSort );
+    fdlParallelSort = new FormData();
+    fdlParallelSort.left = new FormAttachment( 0, 0 );
+    fdlParallelSort.right = new FormAttachment( middle, -margin );
+    fdlParallelSort.top = new FormAttachment( wUniqueRows, margin );
+    wlParallelSort.setLayoutData( fdlParallelSort );
+    wParallelSort = new Button( shell, SWT.CHECK );
+    wParallelSort.setToolTipText( BaseMessages.getString( PKG, "SortRowsDialog.ParallelSort.Tooltip" ) );
+    props.setLook( wParallelSort );
+    fdParallelSort = new FormData();
+    fdParallelSort.left = new FormAttachment( middle, 0 );
+    fdParallelSort.top = new FormAttachment( wUniqueRows, margin );
+    fdParallelSort.right = new FormAttachment( 100, 0 );
+    wParallelSort.setLayoutData( fdParallelSort );
+
+    // Compare binary sort keys?
+    wlBinarySortKeys = new Label( shell, SWT.RIGHT );
+    wlBinarySortKeys.setText( BaseMessages.getString( PKG, "SortRowsDialog.BinarySortKeys.Label" ) );
+    props.setLook( wlBinarySortKeys );
+    fdlBinarySortKeys = new FormData();
+    fdlBinarySortKeys.left = new FormAttachment( 0, 0 );
+    fdlBinarySortKeys.right = new FormAttachment( middle, -margin );
+    fdlBinarySortKeys.top = new FormAttachment( wParallelSort, margin );
+    wlBinarySortKeys.setLayoutData( fdlBinarySortKeys );
+    wBinarySortKeys = new Button( shell, SWT.CHECK );
+    wBinarySortKeys.setToolTipText( BaseMessages.getString( PKG, "SortRowsDialog.BinarySortKeys.Tooltip" ) );
+    props.setLook( wBinarySortKeys );
+    fdBinarySortKeys = new FormData();
+    fdBinarySortKeys.left = new FormAttachment( middle, 0 );
+    fdBinarySortKeys.top = new FormAttachment( wParallelSort, margin );
+    fdBinarySortKeys.right = new FormAttachment( 100, 0 );
+    wBinarySortKeys.setLayoutData( fdBinarySortKeys );
+
     wOK = new Button( shell, SWT.PUSH );
     wOK.setText( BaseMessages.getString( PKG, "System.Button.OK" ) );
     wGet = new Button( shell, SWT.PUSH );
@@ -318,7 +386,7 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     props.setLook( wlFields );
     fdlFields = new FormData();
     fdlFields.left = new FormAttachment( 0, 0 );
-    fdlFields.top = new FormAttachment( wUniqueRows, margin );
+    fdlFields.top = new FormAttachment( wBinarySortKeys, margin );
     wlFields.setLayoutData( fdlFields );
 
     final int FieldsRows = input.getFieldName().length;
@@ -427,6 +495,7 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     wPrefix.addSelectionListener( lsDef );
     wSortSize.addSelectionListener( lsDef );
     wFreeMemory.addSelectionListener( lsDef );
+    wMergeFanIn.addSelectionListener( lsDef );
 
     // Detect X or ALT-F4 or something that kills this window...
     shell.addShellListener( new ShellAdapter() {
@@ -491,9 +560,12 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     }
     wSortSize.setText( Const.NVL( input.getSortSize(), "" ) );
     wFreeMemory.setText( Const.NVL( input.getFreeMemoryLimit(), "" ) );
+    wMergeFanIn.setText( Const.NVL( input.getMergeFanIn(), "" ) );
     wCompress.setSelection( input.getCompressFiles() );
     wCompress.setVariableName( input.getCompressFilesVariable() );
     wUniqueRows.setSelection( input.isOnlyPassingUniqueRows() );
+    wParallelSort.setSelection( input.isParallelSort() );
+    wBinarySortKeys.setSelection( input.isBinarySortKeys() );
 
     Table table = wFields.table;
     if ( input.getFieldName().length > 0 ) {
@@ -540,10 +612,13 @@ public class SortRowsDialog extends BaseStepDialog implements StepDialogInterfac
     input.setDirectory( wSortDir.getText() );
     input.setSortSize( wSortSize.getText() );
     input.setFreeMemoryLimit( wFreeMemory.getText() );
+    input.setMergeFanIn( wMergeFanIn.getText() );
     log.logDetailed( "Sort rows", "Compression is set to " + wCompress.getSelection() );
     input.setCompressFiles( wCompress.getSelection() );
     input.setCompressFilesVariable( wCompress.getVariableName() );
     input.setOnlyPassingUniqueRows( wUniqueRows.getSelection() );
+    input.setParallelSort( wParallelSort.getSelection() );
+    input.setBinarySortKeys( wBinarySortKeys.getSelection() );
 
     // Table table = wFields.table;
     int nrfields = wFields.nrNonEmpty();
@@ -72,6 +72,10 @@ public class SortedMergeDialog extends BaseStepDialog implements StepDialogInter
 
   public static final String STRING_SORT_WARNING_PARAMETER = "SortedMergeSortWarning";
 
+  private Label wlBinarySortKeys;
+  private Button wBinarySortKeys;
+  private FormData fdlBinarySortKeys, fdBinarySortKeys;
+
   private Label wlFields;
   private TableView wFields;
   private FormData fdlFields, fdFields;
@@ -142,12 +146,30 @@ public class SortedMergeDialog extends BaseStepDialog implements StepDialogInter
 
     setButtonPositions( new Button[] { wOK, wCancel, wGet }, margin, null );
 
+    // Compare binary sort keys?
+    wlBinarySortKeys = new Label( shell, SWT.RIGHT );
+    wlBinarySortKeys.setText( BaseMessages.getString( PKG, "SortedMergeDialog.BinarySortKeys.Label" ) );
+    props.setLook( wlBinarySortKeys );
+    fdlBinarySortKeys = new FormData();
+    fdlBinarySortKeys.left = new FormAttachment( 0, 0 );
+    fdlBinarySortKeys.right = new FormAttachment( middle, -margin );
+    fdlBinarySortKeys.top = new FormAttachment( wStepname, margin );
+    wlBinarySortKeys.setLayoutData( fdlBinarySortKeys );
+    wBinarySortKeys = new Button( shell, SWT.CHECK );
+    wBinarySortKeys.setToolTipText( BaseMessages.getString( PKG, "SortedMergeDialog.BinarySortKeys.Tooltip" ) );
+    props.setLook( wBinarySortKeys );
+    fdBinarySortKeys = new FormData();
+    fdBinarySortKeys.left = new FormAttachment( middle, 0 );
+    fdBinarySortKeys.top = new FormAttachment( wStepname, margin );
+    fdBinarySortKeys.right = new FormAttachment( 100, 0 );
+    wBinarySortKeys.setLayoutData( fdBinarySortKeys );
+
     wlFields = new Label( shell, SWT.NONE );
     wlFields.setText( BaseMessages.getString( PKG, "SortedMergeDialog.Fields.Label" ) );
     props.setLook( wlFields );
     fdlFields = new FormData();
     fdlFields.left = new FormAttachment( 0, 0 );
-    fdlFields.top = new FormAttachment( wStepname, margin );
+    fdlFields.top = new FormAttachment( wBinarySortKeys, margin );
     wlFields.setLayoutData( fdlFields );
 
     final int FieldsCols = 2;
@@ -282,6 +304,8 @@ public class SortedMergeDialog extends BaseStepDialog implements StepDialogInter
     wFields.setRowNums();
     wFields.optWidth( true );
 
+    wBinarySortKeys.setSelection( input.isBinarySortKeys() );
+
     wStepname.selectAll();
     wStepname.setFocus();
   }
@@ -302,6 +326,7 @@ public class SortedMergeDialog extends BaseStepDialog implements StepDialogInter
     int nrfields = wFields.nrNonEmpty();
 
     input.allocate( nrfields );
+    input.setBinarySortKeys( wBinarySortKeys.getSelection() );
 
     //CHECKSTYLE:Indentation:OFF
     for ( int i = 0; i < nrfields; i++ ) {
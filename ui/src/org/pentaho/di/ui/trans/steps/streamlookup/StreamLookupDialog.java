@@ -41,6 +41,7 @@ import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Label;
@@ -64,6 +65,7 @@ import org.pentaho.di.trans.steps.streamlookup.StreamLookupMeta;
 import org.pentaho.di.ui.core.dialog.ErrorDialog;
 import org.pentaho.di.ui.core.widget.ColumnInfo;
 import org.pentaho.di.ui.core.widget.TableView;
+import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
 
 public class StreamLookupDialog extends BaseStepDialog implements StepDialogInterface {
@@ -93,6 +95,15 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
   private Button wIntegerPair;
   private FormData fdlIntegerPair, fdIntegerPair;
 
+  private Label wlMemoryBudget;
+  private TextVar wMemoryBudget;
+  private FormData fdlMemoryBudget, fdMemoryBudget;
+
+  private Label wlSpillDirectory;
+  private Button wbSpillDirectory;
+  private TextVar wSpillDirectory;
+  private FormData fdlSpillDirectory, fdbSpillDirectory, fdSpillDirectory;
+
   private StreamLookupMeta input;
 
   private Button wGetLU;
@@ -258,7 +269,7 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
     fdReturn.left = new FormAttachment( 0, 0 );
     fdReturn.top = new FormAttachment( wlReturn, margin );
     fdReturn.right = new FormAttachment( 100, 0 );
-    fdReturn.bottom = new FormAttachment( 100, -125 );
+    fdReturn.bottom = new FormAttachment( 100, -185 );
     wReturn.setLayoutData( fdReturn );
 
     wlPreserveMemory = new Label( shell, SWT.RIGHT );
@@ -325,6 +336,63 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
         input.setChanged();
       }
     } );
+
+    // The memory budget only applies to the compact lookup table, not to the memory preserving structures
+    //
+    wlMemoryBudget = new Label( shell, SWT.RIGHT );
+    wlMemoryBudget.setText( BaseMessages.getString( PKG, "StreamLookupDialog.MemoryBudget.Label" ) );
+    props.setLook( wlMemoryBudget );
+    fdlMemoryBudget = new FormData();
+    fdlMemoryBudget.left = new FormAttachment( 0, 0 );
+    fdlMemoryBudget.top = new FormAttachment( wSortedList, margin );
+    fdlMemoryBudget.right = new FormAttachment( middle, -margin );
+    wlMemoryBudget.setLayoutData( fdlMemoryBudget );
+    wMemoryBudget = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wMemoryBudget.setToolTipText( BaseMessages.getString( PKG, "StreamLookupDialog.MemoryBudget.Tooltip" ) );
+    props.setLook( wMemoryBudget );
+    wMemoryBudget.addModifyListener( lsMod );
+    fdMemoryBudget = new FormData();
+    fdMemoryBudget.left = new FormAttachment( middle, 0 );
+    fdMemoryBudget.top = new FormAttachment( wSortedList, margin );
+    fdMemoryBudget.right = new FormAttachment( 100, 0 );
+    wMemoryBudget.setLayoutData( fdMemoryBudget );
+
+    wlSpillDirectory = new Label( shell, SWT.RIGHT );
+    wlSpillDirectory.setText( BaseMessages.getString( PKG, "StreamLookupDialog.SpillDirectory.Label" ) );
+    props.setLook( wlSpillDirectory );
+    fdlSpillDirectory = new FormData();
+    fdlSpillDirectory.left = new FormAttachment( 0, 0 );
+    fdlSpillDirectory.top = new FormAttachment( wMemoryBudget, margin );
+    fdlSpillDirectory.right = new FormAttachment( middle, -margin );
+    wlSpillDirectory.setLayoutData( fdlSpillDirectory );
+    wbSpillDirectory = new Button( shell, SWT.PUSH | SWT.CENTER );
+    props.setLook( wbSpillDirectory );
+    wbSpillDirectory.setText( BaseMessages.getString( PKG, "System.Button.Browse" ) );
+    fdbSpillDirectory = new FormData();
+    fdbSpillDirectory.right = new FormAttachment( 100, 0 );
+    fdbSpillDirectory.top = new FormAttachment( wMemoryBudget, margin );
+    wbSpillDirectory.setLayoutData( fdbSpillDirectory );
+    wSpillDirectory = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wSpillDirectory.setToolTipText( BaseMessages.getString( PKG, "StreamLookupDialog.SpillDirectory.Tooltip" ) );
+    props.setLook( wSpillDirectory );
+    wSpillDirectory.addModifyListener( lsMod );
+    fdSpillDirectory = new FormData();
+    fdSpillDirectory.left = new FormAttachment( middle, 0 );
+    fdSpillDirectory.top = new FormAttachment( wMemoryBudget, margin );
+    fdSpillDirectory.right = new FormAttachment( wbSpillDirectory, -margin );
+    wSpillDirectory.setLayoutData( fdSpillDirectory );
+
+    wbSpillDirectory.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent arg0 ) {
+        DirectoryDialog dd = new DirectoryDialog( shell, SWT.NONE );
+        dd.setFilterPath( wSpillDirectory.getText() );
+        String dir = dd.open();
+        if ( dir != null ) {
+          wSpillDirectory.setText( dir );
+        }
+      }
+    } );
+
     // PDI-2107 preserve memory should be enabled to have this options on.
     wPreserveMemory.addListener( SWT.Selection, new Listener() {
       @Override
@@ -332,6 +400,9 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
         boolean selection = wPreserveMemory.getSelection();
         wSortedList.setEnabled( selection );
         wIntegerPair.setEnabled( selection );
+        wMemoryBudget.setEnabled( !selection );
+        wSpillDirectory.setEnabled( !selection );
+        wbSpillDirectory.setEnabled( !selection );
       }
     } );
 
@@ -537,6 +608,11 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
     // but user will be forced to choose only one option later.
     wSortedList.setSelection( input.isUsingSortedList() );
     wIntegerPair.setSelection( input.isUsingIntegerPair() );
+    wMemoryBudget.setText( Const.NVL( input.getMemoryBudget(), "" ) );
+    wMemoryBudget.setEnabled( !isPreserveMemory );
+    wSpillDirectory.setText( Const.NVL( input.getSpillDirectory(), "" ) );
+    wSpillDirectory.setEnabled( !isPreserveMemory );
+    wbSpillDirectory.setEnabled( !isPreserveMemory );
 
     wKey.setRowNums();
     wKey.optWidth( true );
@@ -564,6 +640,8 @@ public class StreamLookupDialog extends BaseStepDialog implements StepDialogInte
     input.setMemoryPreservationActive( wPreserveMemory.getSelection() );
     input.setUsingSortedList( wSortedList.getSelection() );
     input.setUsingIntegerPair( wIntegerPair.getSelection() );
+    input.setMemoryBudget( wMemoryBudget.getText() );
+    input.setSpillDirectory( wSpillDirectory.getText() );
 
     if ( log.isDebug() ) {
       logDebug( BaseMessages.getString( PKG, "StreamLookupDialog.Log.FoundKeys", nrkeys + "" ) );
@@ -134,6 +134,15 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
   private Button wBatch;
   private FormData fdlBatch, fdBatch;
 
+  private Label wlPipelinedWrite;
+  private Button wPipelinedWrite;
+
+  private Label wlWriterThreads;
+  private TextVar wWriterThreads;
+
+  private Label wlMaxInFlightBatches;
+  private TextVar wMaxInFlightBatches;
+
   private Label wlUsePart;
   private Button wUsePart;
   private FormData fdlUsePart, fdUsePart;
@@ -564,20 +573,80 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
       }
     } );
 
+    // Pipelined write
+    wlPipelinedWrite = new Label( wMainComp, SWT.RIGHT );
+    wlPipelinedWrite.setText( BaseMessages.getString( PKG, "TableOutputDialog.PipelinedWrite.Label" ) );
+    wlPipelinedWrite.setToolTipText( BaseMessages.getString( PKG, "TableOutputDialog.PipelinedWrite.Tooltip" ) );
+    props.setLook( wlPipelinedWrite );
+    FormData fdlPipelinedWrite = new FormData();
+    fdlPipelinedWrite.left = new FormAttachment( 0, 0 );
+    fdlPipelinedWrite.top = new FormAttachment( wBatch, margin );
+    fdlPipelinedWrite.right = new FormAttachment( middle, -margin );
+    wlPipelinedWrite.setLayoutData( fdlPipelinedWrite );
+    wPipelinedWrite = new Button( wMainComp, SWT.CHECK );
+    props.setLook( wPipelinedWrite );
+    FormData fdPipelinedWrite = new FormData();
+    fdPipelinedWrite.left = new FormAttachment( middle, 0 );
+    fdPipelinedWrite.top = new FormAttachment( wBatch, margin );
+    fdPipelinedWrite.right = new FormAttachment( 100, 0 );
+    wPipelinedWrite.setLayoutData( fdPipelinedWrite );
+    wPipelinedWrite.addSelectionListener( lsSelMod );
+    wPipelinedWrite.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent arg0 ) {
+        setFlags();
+      }
+    } );
+
+    // Number of writer threads
+    wlWriterThreads = new Label( wMainComp, SWT.RIGHT );
+    wlWriterThreads.setText( BaseMessages.getString( PKG, "TableOutputDialog.WriterThreads.Label" ) );
+    props.setLook( wlWriterThreads );
+    FormData fdlWriterThreads = new FormData();
+    fdlWriterThreads.left = new FormAttachment( 0, 0 );
+    fdlWriterThreads.top = new FormAttachment( wPipelinedWrite, margin );
+    fdlWriterThreads.right = new FormAttachment( middle, -margin );
+    wlWriterThreads.setLayoutData( fdlWriterThreads );
+    wWriterThreads = new TextVar( transMeta, wMainComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wWriterThreads );
+    wWriterThreads.addModifyListener( lsMod );
+    FormData fdWriterThreads = new FormData();
+    fdWriterThreads.left = new FormAttachment( middle, 0 );
+    fdWriterThreads.top = new FormAttachment( wPipelinedWrite, margin );
+    fdWriterThreads.right = new FormAttachment( 100, 0 );
+    wWriterThreads.setLayoutData( fdWriterThreads );
+
+    // Maximum number of batches in flight
+    wlMaxInFlightBatches = new Label( wMainComp, SWT.RIGHT );
+    wlMaxInFlightBatches.setText( BaseMessages.getString( PKG, "TableOutputDialog.MaxInFlightBatches.Label" ) );
+    props.setLook( wlMaxInFlightBatches );
+    FormData fdlMaxInFlightBatches = new FormData();
+    fdlMaxInFlightBatches.left = new FormAttachment( 0, 0 );
+    fdlMaxInFlightBatches.top = new FormAttachment( wWriterThreads, margin );
+    fdlMaxInFlightBatches.right = new FormAttachment( middle, -margin );
+    wlMaxInFlightBatches.setLayoutData( fdlMaxInFlightBatches );
+    wMaxInFlightBatches = new TextVar( transMeta, wMainComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wMaxInFlightBatches );
+    wMaxInFlightBatches.addModifyListener( lsMod );
+    FormData fdMaxInFlightBatches = new FormData();
+    fdMaxInFlightBatches.left = new FormAttachment( middle, 0 );
+    fdMaxInFlightBatches.top = new FormAttachment( wWriterThreads, margin );
+    fdMaxInFlightBatches.right = new FormAttachment( 100, 0 );
+    wMaxInFlightBatches.setLayoutData( fdMaxInFlightBatches );
+
     // NameInField
     wlNameInField = new Label( wMainComp, SWT.RIGHT );
     wlNameInField.setText( BaseMessages.getString( PKG, "TableOutputDialog.NameInField.Label" ) );
     props.setLook( wlNameInField );
     fdlNameInField = new FormData();
     fdlNameInField.left = new FormAttachment( 0, 0 );
-    fdlNameInField.top = new FormAttachment( wBatch, margin * 5 );
+    fdlNameInField.top = new FormAttachment( wMaxInFlightBatches, margin * 5 );
     fdlNameInField.right = new FormAttachment( middle, -margin );
     wlNameInField.setLayoutData( fdlNameInField );
     wNameInField = new Button( wMainComp, SWT.CHECK );
     props.setLook( wNameInField );
     fdNameInField = new FormData();
     fdNameInField.left = new FormAttachment( middle, 0 );
-    fdNameInField.top = new FormAttachment( wBatch, margin * 5 );
+    fdNameInField.top = new FormAttachment( wMaxInFlightBatches, margin * 5 );
     fdNameInField.right = new FormAttachment( 100, 0 );
     wNameInField.setLayoutData( fdNameInField );
     wNameInField.addSelectionListener( new SelectionAdapter() {
@@ -1196,6 +1265,15 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
     wlBatch.setEnabled( enableBatch );
     wBatch.setEnabled( enableBatch );
 
+    // Pipelined writes are only possible in batch mode
+    boolean usePipelinedWrite = useBatch && wPipelinedWrite.getSelection();
+    wlPipelinedWrite.setEnabled( useBatch );
+    wPipelinedWrite.setEnabled( useBatch );
+    wlWriterThreads.setEnabled( usePipelinedWrite );
+    wWriterThreads.setEnabled( usePipelinedWrite );
+    wlMaxInFlightBatches.setEnabled( usePipelinedWrite );
+    wMaxInFlightBatches.setEnabled( usePipelinedWrite );
+
     boolean specifyFields = wSpecifyFields.getSelection();
     wFields.setEnabled( specifyFields );
     wGetFields.setEnabled( specifyFields );
@@ -1241,6 +1319,9 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
     wTruncate.setSelection( input.truncateTable() );
     wIgnore.setSelection( input.ignoreErrors() );
     wBatch.setSelection( input.useBatchUpdate() );
+    wPipelinedWrite.setSelection( input.isPipelinedWrite() );
+    wWriterThreads.setText( Const.NVL( input.getWriterThreads(), "" ) );
+    wMaxInFlightBatches.setText( Const.NVL( input.getMaxInFlightBatches(), "" ) );
 
     wCommit.setText( input.getCommitSize() );
 
@@ -1294,6 +1375,9 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
     info.setTruncateTable( wTruncate.getSelection() );
     info.setIgnoreErrors( wIgnore.getSelection() );
     info.setUseBatchUpdate( wBatch.getSelection() );
+    info.setPipelinedWrite( wPipelinedWrite.getSelection() );
+    info.setWriterThreads( wWriterThreads.getText() );
+    info.setMaxInFlightBatches( wMaxInFlightBatches.getText() );
     info.setPartitioningEnabled( wUsePart.getSelection() );
     info.setPartitioningField( wPartField.getText() );
     info.setPartitioningDaily( wPartDaily.getSelection() );
@@ -137,6 +137,8 @@ public class TransExecutorDialog extends BaseStepDialog implements StepDialogInt
   private CCombo wGroupField;
   private Label wlGroupTime;
   private TextVar wGroupTime;
+  private Label wlReuseTransformation;
+  private Button wReuseTransformation;
 
   private Label wlExecutionResultTarget;
   private Label wlExecutionTimeField;
@@ -767,6 +769,7 @@ public class TransExecutorDialog extends BaseStepDialog implements StepDialogInt
     wGroupSize.setText( Const.NVL( transExecutorMeta.getGroupSize(), "" ) );
     wGroupTime.setText( Const.NVL( transExecutorMeta.getGroupTime(), "" ) );
     wGroupField.setText( Const.NVL( transExecutorMeta.getGroupField(), "" ) );
+    wReuseTransformation.setSelection( transExecutorMeta.isReusingTransformation() );
 
     wExecutionResultTarget.setText( transExecutorMeta.getExecutionResultTargetStepMeta() == null ? ""
       : transExecutorMeta.getExecutionResultTargetStepMeta().getName() );
@@ -1010,7 +1013,35 @@ public class TransExecutorDialog extends BaseStepDialog implements StepDialogInt
     fdGroupTime.left = new FormAttachment( middle, 0 ); // To the right of
     fdGroupTime.right = new FormAttachment( 100, 0 );
     wGroupTime.setLayoutData( fdGroupTime );
-    // lastControl = wGroupTime;
+    lastControl = wGroupTime;
+
+    // Reuse the prepared transformation
+    //
+    wlReuseTransformation = new Label( wInputComposite, SWT.RIGHT );
+    props.setLook( wlReuseTransformation );
+    wlReuseTransformation.setText( BaseMessages.getString( PKG, "TransExecutorDialog.ReuseTransformation.Label" ) );
+    wlReuseTransformation.setToolTipText( BaseMessages.getString(
+      PKG, "TransExecutorDialog.ReuseTransformation.Tooltip" ) );
+    FormData fdlReuseTransformation = new FormData();
+    fdlReuseTransformation.top = new FormAttachment( lastControl, margin );
+    fdlReuseTransformation.left = new FormAttachment( 0, 0 ); // First one in the left
+    fdlReuseTransformation.right = new FormAttachment( middle, -margin );
+    wlReuseTransformation.setLayoutData( fdlReuseTransformation );
+    wReuseTransformation = new Button( wInputComposite, SWT.CHECK );
+    props.setLook( wReuseTransformation );
+    wReuseTransformation.setToolTipText( BaseMessages.getString(
+      PKG, "TransExecutorDialog.ReuseTransformation.Tooltip" ) );
+    FormData fdReuseTransformation = new FormData();
+    fdReuseTransformation.top = new FormAttachment( lastControl, margin );
+    fdReuseTransformation.left = new FormAttachment( middle, 0 ); // To the right of
+    fdReuseTransformation.right = new FormAttachment( 100, 0 );
+    wReuseTransformation.setLayoutData( fdReuseTransformation );
+    wReuseTransformation.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        transExecutorMeta.setChanged();
+      }
+    } );
+    // lastControl = wReuseTransformation;
 
     wTab.setControl( wInputComposite );
     wTabFolder.setSelection( wTab );
@@ -1604,6 +1635,7 @@ public class TransExecutorDialog extends BaseStepDialog implements StepDialogInt
     transExecutorMeta.setGroupSize( wGroupSize.getText() );
     transExecutorMeta.setGroupField( wGroupField.getText() );
     transExecutorMeta.setGroupTime( wGroupTime.getText() );
+    transExecutorMeta.setReusingTransformation( wReuseTransformation.getSelection() );
 
     transExecutorMeta.setExecutionResultTargetStep( wExecutionResultTarget.getText() );
     transExecutorMeta.setExecutionResultTargetStepMeta( transMeta.findStep( wExecutionResultTarget.getText() ) );